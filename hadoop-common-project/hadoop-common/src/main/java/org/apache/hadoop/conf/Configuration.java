@@ -679,6 +679,11 @@ private void handleDeprecation() {
   private Properties properties;
   private Properties overlay;
   private ClassLoader classLoader;
+  /**
+   * The snapshot this configuration shares its settings with until the
+   * first update, while {@link #properties} is null.
+   */
+  private volatile ConfigurationSnapshot sharedSnapshot;
   {
     classLoader = Thread.currentThread().getContextClassLoader();
     if (classLoader == null) {
@@ -711,27 +716,51 @@ public Configuration(boolean loadDefaults) {
    * 
    * @param other the configuration from which to clone settings.
    */
-  @SuppressWarnings("unchecked")
   public Configuration(Configuration other) {
+    this(other, true);
+  }
+
+  /**
+   * A new configuration with the same settings cloned from another. A copy
+   * of a {@link ConfigurationSnapshot} shares the settings of the snapshot
+   * until it is first updated.
+   *
+   * @param other the configuration from which to clone settings.
+   * @param register whether the new configuration is reloaded when a default
+   *                 resource is added.
+   */
+  @SuppressWarnings("unchecked")
+  Configuration(Configuration other, boolean register) {
    this.resources = (ArrayList<Resource>) other.resources.clone();
    synchronized(other) {
-     if (other.properties != null) {
+     if (other instanceof ConfigurationSnapshot) {
+       this.sharedSnapshot = (ConfigurationSnapshot) other;
+     } else if (other.properties != null) {
        this.properties = (Properties)other.properties.clone();
+     } else {
+       this.sharedSnapshot = other.sharedSnapshot;
      }
 
      if (other.overlay!=null) {
        this.overlay = (Properties)other.overlay.clone();
      }
 
-     this.updatingResource = new ConcurrentHashMap<String, String[]>(
-         other.updatingResource);
+     if (this.sharedSnapshot != null) {
+       // only updated after getProps() has copied it
+       this.updatingResource = other.updatingResource;
+     } else {
+       this.updatingResource = new ConcurrentHashMap<String, String[]>(
+           other.updatingResource);
+     }
      this.finalParameters = Collections.newSetFromMap(
          new ConcurrentHashMap<String, Boolean>());
      this.finalParameters.addAll(other.finalParameters);
    }
    
-    synchronized(Configuration.class) {
-      REGISTRY.put(this, null);
+    if (register) {
+      synchronized(Configuration.class) {
+        REGISTRY.put(this, null);
+      }
     }
     this.classLoader = other.classLoader;
     this.loadDefaults = other.loadDefaults;
@@ -850,6 +879,7 @@ public void addResource(Configuration conf) {
    */
   public synchronized void reloadConfiguration() {
     properties = null;                            // trigger reload
+    sharedSnapshot = null;
     finalParameters.clear();                      // clear site-limits
   }
   
@@ -945,7 +975,7 @@ private static int[] findSubVariable(String eval) {
    * @throws IllegalArgumentException when more than
    * {@link Configuration#MAX_SUBST} replacements are required
    */
-  private String substituteVars(String expr) {
+  String substituteVars(String expr) {
     if (expr == null) {
       return null;
     }
@@ -1037,6 +1067,10 @@ String getProperty(String key) {
    *         or null if no such property exists.
    */
   public String get(String name) {
+    ConfigurationSnapshot snapshot = sharedSnapshot;
+    if (snapshot != null) {
+      return snapshot.get(name);
+    }
     String[] names = handleDeprecation(deprecationContext.get(), name);
     String result = null;
     for(String n : names) {
@@ -1125,6 +1159,10 @@ public String getTrimmed(String name, String defaultValue) {
    *         its replacing property and null if no such property exists.
    */
   public String getRaw(String name) {
+    ConfigurationSnapshot snapshot = sharedSnapshot;
+    if (snapshot != null) {
+      return snapshot.getRaw(name);
+    }
     String[] names = handleDeprecation(deprecationContext.get(), name);
     String result = null;
     for(String n : names) {
@@ -1229,13 +1267,18 @@ public void set(String name, String value, String source) {
     }
   }
 
-  private void warnOnceIfDeprecated(DeprecationContext deprecations, String name) {
+  private static void warnOnceIfDeprecated(DeprecationContext deprecations,
+      String name) {
     DeprecatedKeyInfo keyInfo = deprecations.getDeprecatedKeyMap().get(name);
     if (keyInfo != null && !keyInfo.getAndSetAccessed()) {
       LOG_DEPRECATION.info(keyInfo.getWarningMessage(name));
     }
   }
 
+  static void warnOnceIfDeprecated(String name) {
+    warnOnceIfDeprecated(deprecationContext.get(), name);
+  }
+
   /**
    * Unset a previously set property.
    */
@@ -1288,6 +1331,10 @@ private synchronized Properties getOverlay() {
    *         doesn't exist.                    
    */
   public String get(String name, String defaultValue) {
+    ConfigurationSnapshot snapshot = sharedSnapshot;
+    if (snapshot != null) {
+      return snapshot.get(name, defaultValue);
+    }
     String[] names = handleDeprecation(deprecationContext.get(), name);
     String result = null;
     for(String n : names) {
@@ -2462,7 +2509,14 @@ public Set<String> getFinalParameters() {
   }
 
   protected synchronized Properties getProps() {
-    if (properties == null) {
+    final ConfigurationSnapshot snapshot = sharedSnapshot;
+    if (properties == null && snapshot != null) {
+      // copy on write: stop sharing the settings of the snapshot
+      properties = (Properties) snapshot.getProps().clone();
+      updatingResource =
+          new ConcurrentHashMap<String, String[]>(updatingResource);
+      sharedSnapshot = null;
+    } else if (properties == null) {
       properties = new Properties();
       Map<String, String[]> backup =
           new ConcurrentHashMap<String, String[]>(updatingResource);
@@ -2482,6 +2536,66 @@ protected synchronized Properties getProps() {
     return properties;
   }
 
+  /**
+   * Get the raw values of all the properties and of all the deprecated keys,
+   * as {@link #getRaw(String)} returns them; a deprecated key maps to the
+   * value of its replacing key, or to null. The values of deprecated keys
+   * set in the overlay are first carried over to their replacing keys.
+   */
+  synchronized Map<String, String> getRawProps() {
+    DeprecationContext deprecations = deprecationContext.get();
+    Properties props = getProps();
+    Properties overlay = getOverlay();
+    for (Map.Entry<String, String> entry :
+        deprecations.getReverseDeprecatedKeyMap().entrySet()) {
+      String newKey = entry.getKey();
+      String deprecatedKey = entry.getValue();
+      if (!overlay.containsKey(newKey) && overlay.containsKey(deprecatedKey)) {
+        props.setProperty(newKey, overlay.getProperty(deprecatedKey));
+        overlay.setProperty(newKey, overlay.getProperty(deprecatedKey));
+      }
+    }
+
+    Map<String, String> result = new HashMap<String, String>();
+    for (Map.Entry<Object, Object> item : props.entrySet()) {
+      if (item.getKey() instanceof String &&
+          item.getValue() instanceof String) {
+        result.put((String) item.getKey(), (String) item.getValue());
+      }
+    }
+    for (Map.Entry<String, DeprecatedKeyInfo> entry :
+        deprecations.getDeprecatedKeyMap().entrySet()) {
+      String name = entry.getKey();
+      for (String newKey : entry.getValue().newKeys) {
+        if (newKey != null) {
+          name = newKey;
+        }
+      }
+      result.put(entry.getKey(), props.getProperty(name));
+    }
+    return result;
+  }
+
+  /**
+   * Get an immutable snapshot of this configuration, with the deprecations
+   * applied and the variables expanded once, that can be read concurrently
+   * without locking. The copies of a snapshot made with
+   * {@link #Configuration(Configuration)} share its settings until they are
+   * first updated, and are as cheap to read.
+   * <p>
+   * The snapshot does not see later updates of this configuration, nor the
+   * resources or deprecations added later.
+   *
+   * @return the snapshot of this configuration.
+   */
+  public ConfigurationSnapshot snapshot() {
+    ConfigurationSnapshot snapshot = sharedSnapshot;
+    if (snapshot != null && snapshot.getClassLoader() == getClassLoader()) {
+      return snapshot;
+    }
+    return new ConfigurationSnapshot(this);
+  }
+
   /**
    * Return the number of keys in the configuration.
    *
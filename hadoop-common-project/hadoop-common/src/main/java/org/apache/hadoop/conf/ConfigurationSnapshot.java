@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.conf;
+
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * An immutable snapshot of a {@link Configuration}, taken with
+ * {@link Configuration#snapshot()}.
+ * <p>
+ * The values of the properties are looked up in a flat open addressing hash
+ * table, built once with the deprecated keys mapped to the values of their
+ * replacing keys and with the <a href="Configuration.html#VariableExpansion">
+ * variables</a> already expanded, so the lookups take no lock. The system
+ * properties and the environment variables are expanded as they are when the
+ * snapshot is taken.
+ * <p>
+ * The methods updating the settings throw an
+ * {@link UnsupportedOperationException}; a {@link Configuration} copied from
+ * the snapshot shares its settings until it is first updated.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class ConfigurationSnapshot extends Configuration {
+  private final int mask;
+  private final String[] keys;
+  /** The values of the properties before the expansion of the variables. */
+  private final String[] rawValues;
+  /** The expanded values, or null where the expansion fails. */
+  private final String[] values;
+  private final boolean[] deprecated;
+
+  ConfigurationSnapshot(Configuration other) {
+    super(other, false);
+    final Map<String, String> props = getRawProps();
+    int capacity = 16;
+    while (capacity < 2 * props.size()) {
+      capacity <<= 1;
+    }
+    mask = capacity - 1;
+    keys = new String[capacity];
+    rawValues = new String[capacity];
+    values = new String[capacity];
+    deprecated = new boolean[capacity];
+
+    for (Map.Entry<String, String> entry : props.entrySet()) {
+      int i = hash(entry.getKey()) & mask;
+      while (keys[i] != null) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = entry.getKey();
+      rawValues[i] = entry.getValue();
+      deprecated[i] = isDeprecated(entry.getKey());
+    }
+    for (int i = 0; i < capacity; i++) {
+      if (rawValues[i] != null) {
+        try {
+          values[i] = substituteVars(rawValues[i]);
+        } catch (IllegalStateException e) {
+          // expanded again by each get, which throws the exception
+        }
+      }
+    }
+  }
+
+  private static int hash(String key) {
+    final int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /** Get the slot of the given key in the table, or -1. */
+  private int indexOf(String name) {
+    for (int i = hash(name) & mask; keys[i] != null; i = (i + 1) & mask) {
+      if (keys[i].equals(name)) {
+        if (deprecated[i]) {
+          warnOnceIfDeprecated(name);
+        }
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private String getValue(int i) {
+    final String value = values[i];
+    return value != null ? value : substituteVars(rawValues[i]);
+  }
+
+  @Override
+  public String get(String name) {
+    final int i = indexOf(name.trim());
+    return i < 0 ? null : getValue(i);
+  }
+
+  @Override
+  public String get(String name, String defaultValue) {
+    final int i = indexOf(name.trim());
+    if (i < 0 || rawValues[i] == null) {
+      return substituteVars(defaultValue);
+    }
+    return getValue(i);
+  }
+
+  @Override
+  public String getRaw(String name) {
+    final int i = indexOf(name.trim());
+    return i < 0 ? null : rawValues[i];
+  }
+
+  /** @return this snapshot. */
+  @Override
+  public ConfigurationSnapshot snapshot() {
+    return this;
+  }
+
+  @Override
+  public void set(String name, String value, String source) {
+    throw new UnsupportedOperationException(
+        "Cannot set " + name + " in a configuration snapshot");
+  }
+
+  @Override
+  public synchronized void unset(String name) {
+    throw new UnsupportedOperationException(
+        "Cannot unset " + name + " in a configuration snapshot");
+  }
+
+  @Override
+  public void setDeprecatedProperties() {
+    throw new UnsupportedOperationException(
+        "Cannot update a configuration snapshot");
+  }
+
+  @Override
+  public synchronized void reloadConfiguration() {
+    throw new UnsupportedOperationException(
+        "Cannot reload a configuration snapshot");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException(
+        "Cannot clear a configuration snapshot");
+  }
+}
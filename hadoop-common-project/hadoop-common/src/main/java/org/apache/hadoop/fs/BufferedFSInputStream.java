@@ -21,9 +21,13 @@
 import java.io.EOFException;
 import java.io.FileDescriptor;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.ByteBufferPool;
 
 
 /**
@@ -33,7 +37,7 @@
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
 public class BufferedFSInputStream extends BufferedInputStream
-implements Seekable, PositionedReadable, HasFileDescriptor {
+implements Seekable, PositionedReadable, HasFileDescriptor, VectoredReadable {
   /**
    * Creates a <code>BufferedFSInputStream</code>
    * with the specified buffer size,
@@ -126,4 +130,16 @@ public FileDescriptor getFileDescriptor() throws IOException {
       return null;
     }
   }
+
+  @Override
+  public List<Future<ByteBuffer>> readVectored(List<FileRange> ranges,
+      ByteBufferPool bufferPool) throws IOException {
+    if (in == null) {
+      throw new IOException(FSExceptionMessages.STREAM_IS_CLOSED);
+    }
+    if (in instanceof VectoredReadable) {
+      return ((VectoredReadable) in).readVectored(ranges, bufferPool);
+    }
+    return VectoredReadUtils.readInSequence(this, ranges, bufferPool);
+  }
 }
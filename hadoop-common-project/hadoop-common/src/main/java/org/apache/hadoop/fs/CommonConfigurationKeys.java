@@ -76,6 +76,24 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   
   public static final int IPC_MAXIMUM_DATA_LENGTH_DEFAULT = 64 * 1024 * 1024;
 
+  /** Whether the RPC server reuses the buffers of requests and responses */
+  public static final String  IPC_SERVER_BUFFER_POOL_ENABLED_KEY =
+    "ipc.server.buffer.pool.enabled";
+  /** Default value for IPC_SERVER_BUFFER_POOL_ENABLED_KEY */
+  public static final boolean IPC_SERVER_BUFFER_POOL_ENABLED_DEFAULT = true;
+  /** Size of the largest buffer pooled by the RPC server */
+  public static final String  IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY =
+    "ipc.server.buffer.pool.max.buffer.size";
+  /** Default value for IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY */
+  public static final int     IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_DEFAULT =
+    1024*1024;
+  /** Total size of the buffers the RPC server keeps in its pool */
+  public static final String  IPC_SERVER_BUFFER_POOL_CAPACITY_KEY =
+    "ipc.server.buffer.pool.capacity";
+  /** Default value for IPC_SERVER_BUFFER_POOL_CAPACITY_KEY */
+  public static final long    IPC_SERVER_BUFFER_POOL_CAPACITY_DEFAULT =
+    64*1024*1024;
+
   /** How many calls per handler are allowed in the queue. */
   public static final String  IPC_SERVER_HANDLER_QUEUE_SIZE_KEY =
     "ipc.server.handler.queue.size";
@@ -93,6 +111,23 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String IPC_BACKOFF_ENABLE = "backoff.enable";
   public static final boolean IPC_BACKOFF_ENABLE_DEFAULT = false;
 
+  /**
+   * Handler pool related settings, combined with a namespace and port like
+   * the CallQueue settings. The names of the pools are listed under
+   * IPC_CALLQUEUE_NAMESPACE + ".8020." + IPC_HANDLER_POOLS_KEY, and the
+   * settings of a pool, including its CallQueue settings, are under
+   * IPC_CALLQUEUE_NAMESPACE + ".8020.<pool>."
+   */
+  public static final String IPC_HANDLER_POOLS_KEY = "handler.pools";
+  public static final String IPC_HANDLER_POOL_CLASSIFIER_KEY =
+      "handler.pool.classifier.impl";
+  public static final String IPC_HANDLER_POOL_HANDLER_COUNT_KEY =
+      "handler.count";
+  public static final int IPC_HANDLER_POOL_HANDLER_COUNT_DEFAULT = 1;
+  public static final String IPC_HANDLER_POOL_PROTOCOLS_KEY = "protocols";
+  public static final String IPC_HANDLER_POOL_METHODS_KEY = "methods";
+  public static final String IPC_HANDLER_POOL_USERS_KEY = "users";
+
   /** This is for specifying the implementation for the mappings from
    * hostnames to the racks they belong to
    */
@@ -136,6 +171,18 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final boolean IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT =
       false;
 
+  /**
+   * The raw coder factory of an erasure codec is configured by
+   * io.erasurecode.codec.&lt;codec&gt;.rawcoder
+   */
+  public static final String IO_ERASURECODE_CODEC_PREFIX =
+      "io.erasurecode.codec.";
+  public static final String IO_ERASURECODE_RAWCODER_SUFFIX = ".rawcoder";
+
+  /** Raw coder factory of the Reed-Solomon codec */
+  public static final String IO_ERASURECODE_CODEC_RS_RAWCODER_KEY =
+      IO_ERASURECODE_CODEC_PREFIX + "rs" + IO_ERASURECODE_RAWCODER_SUFFIX;
+
   /**
    * Service Authorization
    */
@@ -282,6 +329,24 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final int IPC_CLIENT_CONNECTION_IDLESCANINTERVAL_DEFAULT =
       10000;
 
+  /** Maximum number of outstanding asynchronous calls per connection */
+  public static final String IPC_CLIENT_ASYNC_CALLS_MAX_KEY =
+      "ipc.client.async.calls.max";
+  /** Default value for IPC_CLIENT_ASYNC_CALLS_MAX_KEY */
+  public static final int IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT = 100;
+
+  /** Number of connections a client opens to the same connection id */
+  public static final String IPC_CLIENT_CONNECTION_POOL_SIZE_KEY =
+      "ipc.client.connection.pool.size";
+  /** Default value for IPC_CLIENT_CONNECTION_POOL_SIZE_KEY */
+  public static final int IPC_CLIENT_CONNECTION_POOL_SIZE_DEFAULT = 1;
+  /** How calls are dispatched over the connections of a pool */
+  public static final String IPC_CLIENT_CONNECTION_POOL_DISPATCH_KEY =
+      "ipc.client.connection.pool.dispatch";
+  /** Default value for IPC_CLIENT_CONNECTION_POOL_DISPATCH_KEY */
+  public static final String IPC_CLIENT_CONNECTION_POOL_DISPATCH_DEFAULT =
+      "round-robin";
+
   public static final String HADOOP_USER_GROUP_METRICS_PERCENTILES_INTERVALS =
     "hadoop.user.group.metrics.percentiles.intervals";
 
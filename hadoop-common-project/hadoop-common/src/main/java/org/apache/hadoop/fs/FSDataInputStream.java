@@ -21,6 +21,8 @@
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -35,7 +37,7 @@
 public class FSDataInputStream extends DataInputStream
     implements Seekable, PositionedReadable, 
       ByteBufferReadable, HasFileDescriptor, CanSetDropBehind, CanSetReadahead,
-      HasEnhancedByteBufferAccess, CanUnbuffer {
+      HasEnhancedByteBufferAccess, CanUnbuffer, VectoredReadable {
   /**
    * Map ByteBuffers that we have handed out to readers to ByteBufferPool 
    * objects
@@ -221,6 +223,19 @@ public void releaseBuffer(ByteBuffer buffer) {
     }
   }
 
+  /**
+   * Read the given ranges of the file, through the wrapped stream if it is
+   * {@link VectoredReadable}, or else with a positioned read of each range.
+   */
+  @Override
+  public List<Future<ByteBuffer>> readVectored(List<FileRange> ranges,
+      ByteBufferPool bufferPool) throws IOException {
+    if (in instanceof VectoredReadable) {
+      return ((VectoredReadable) in).readVectored(ranges, bufferPool);
+    }
+    return VectoredReadUtils.readInSequence(this, ranges, bufferPool);
+  }
+
   @Override
   public void unbuffer() {
     try {
@@ -20,6 +20,7 @@
 package org.apache.hadoop.fs;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.BufferedOutputStream;
 import java.io.DataOutput;
@@ -33,19 +34,26 @@
 import java.io.FileDescriptor;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.util.Progressable;
@@ -105,12 +113,17 @@ public void initialize(URI uri, Configuration conf) throws IOException {
   /*******************************************************
    * For open()'s FSInputStream.
    *******************************************************/
-  class LocalFSFileInputStream extends FSInputStream implements HasFileDescriptor {
+  class LocalFSFileInputStream extends FSInputStream
+      implements HasFileDescriptor, VectoredReadable {
+    private final File file;
     private FileInputStream fis;
     private long position;
+    /** The channel of the vectored reads, opened by the first one */
+    private AsynchronousFileChannel asyncChannel;
 
     public LocalFSFileInputStream(Path f) throws IOException {
-      fis = new FileInputStream(pathToFile(f));
+      file = pathToFile(f);
+      fis = new FileInputStream(file);
     }
     
     @Override
@@ -139,7 +152,13 @@ public boolean seekToNewSource(long targetPos) throws IOException {
     @Override
     public int available() throws IOException { return fis.available(); }
     @Override
-    public void close() throws IOException { fis.close(); }
+    public void close() throws IOException {
+      synchronized (this) {
+        IOUtils.cleanup(LOG, asyncChannel);
+        asyncChannel = null;
+      }
+      fis.close();
+    }
     @Override
     public boolean markSupported() { return false; }
     
@@ -199,6 +218,80 @@ public long skip(long n) throws IOException {
     public FileDescriptor getFileDescriptor() throws IOException {
       return fis.getFD();
     }
+
+    /**
+     * Read the ranges with asynchronous reads of the file, which the
+     * channel of the file runs in parallel.
+     */
+    @Override
+    public List<Future<ByteBuffer>> readVectored(List<FileRange> ranges,
+        ByteBufferPool bufferPool) throws IOException {
+      VectoredReadUtils.sortRanges(ranges);
+      List<SettableFuture<ByteBuffer>> futures =
+          VectoredReadUtils.newFutures(ranges.size());
+      final AsynchronousFileChannel channel;
+      synchronized (this) {
+        if (asyncChannel == null) {
+          asyncChannel = AsynchronousFileChannel.open(file.toPath(),
+              StandardOpenOption.READ);
+        }
+        channel = asyncChannel;
+      }
+      for (int i = 0; i < ranges.size(); i++) {
+        FileRange range = ranges.get(i);
+        ByteBuffer buf = bufferPool.getBuffer(false, range.getLength());
+        buf.clear();
+        buf.limit(range.getLength());
+        new AsyncRangeRead(channel, range, buf, futures.get(i)).read();
+      }
+      return Collections.<Future<ByteBuffer>>unmodifiableList(futures);
+    }
+  }
+
+  /** Reads a range of a vectored read until its buffer is full. */
+  private class AsyncRangeRead implements CompletionHandler<Integer, Void> {
+    private final AsynchronousFileChannel channel;
+    private final FileRange range;
+    private final ByteBuffer buf;
+    private final SettableFuture<ByteBuffer> future;
+
+    AsyncRangeRead(AsynchronousFileChannel channel, FileRange range,
+        ByteBuffer buf, SettableFuture<ByteBuffer> future) {
+      this.channel = channel;
+      this.range = range;
+      this.buf = buf;
+      this.future = future;
+    }
+
+    void read() {
+      if (!buf.hasRemaining()) {
+        buf.flip();
+        statistics.incrementBytesRead(range.getLength());
+        future.set(buf);
+        return;
+      }
+      try {
+        channel.read(buf, range.getOffset() + buf.position(), null, this);
+      } catch (RuntimeException e) {
+        // the channel was closed
+        future.setException(e);
+      }
+    }
+
+    @Override
+    public void completed(Integer result, Void attachment) {
+      if (result < 0) {
+        future.setException(new EOFException(
+            "End of file reached before reading fully " + range));
+      } else {
+        read();
+      }
+    }
+
+    @Override
+    public void failed(Throwable exc, Void attachment) {
+      future.setException(exc);
+    }
   }
   
   @Override
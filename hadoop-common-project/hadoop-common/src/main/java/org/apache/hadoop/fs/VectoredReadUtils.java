@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.ByteBufferPool;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Helpers of the implementations of {@link VectoredReadable}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public final class VectoredReadUtils {
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * A range of a file covering nearby ranges of a vectored read, which is
+   * read at once.
+   */
+  public static final class CombinedRange {
+    private final long offset;
+    private long end;
+    /** The indexes in the vectored read of the ranges it covers */
+    private final List<Integer> indexes = new ArrayList<Integer>();
+
+    private CombinedRange(FileRange range, int index) {
+      this.offset = range.getOffset();
+      this.end = range.getEnd();
+      indexes.add(index);
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public int getLength() {
+      return (int) (end - offset);
+    }
+
+    public List<Integer> getIndexes() {
+      return indexes;
+    }
+  }
+
+  /**
+   * Check the ranges of a vectored read.
+   * @return the indexes of the ranges, in order of offset
+   * @throws IllegalArgumentException if a range is invalid, or ranges overlap
+   */
+  public static List<Integer> sortRanges(final List<FileRange> ranges) {
+    List<Integer> sorted = new ArrayList<Integer>(ranges.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      FileRange range = ranges.get(i);
+      Preconditions.checkArgument(range.getOffset() >= 0
+          && range.getLength() >= 0, "Invalid range %s", range);
+      sorted.add(i);
+    }
+    Collections.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        long diff = ranges.get(a).getOffset() - ranges.get(b).getOffset();
+        return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+      }
+    });
+    for (int i = 1; i < sorted.size(); i++) {
+      FileRange prev = ranges.get(sorted.get(i - 1));
+      FileRange range = ranges.get(sorted.get(i));
+      Preconditions.checkArgument(prev.getEnd() <= range.getOffset(),
+          "Overlapping ranges %s and %s", prev, range);
+    }
+    return sorted;
+  }
+
+  /**
+   * Combine the nearby ranges of a vectored read.
+   *
+   * @param sorted the indexes of the ranges in order of offset
+   * @param minSeek ranges separated by at most this many bytes are combined
+   * @param maxSize ranges are not combined beyond this size
+   * @return the combined ranges, in order of offset
+   */
+  public static List<CombinedRange> combineRanges(List<FileRange> ranges,
+      List<Integer> sorted, int minSeek, int maxSize) {
+    List<CombinedRange> combined = new ArrayList<CombinedRange>();
+    CombinedRange current = null;
+    for (int i : sorted) {
+      FileRange range = ranges.get(i);
+      if (current != null && range.getOffset() - current.end <= minSeek
+          && range.getEnd() - current.offset <= maxSize) {
+        current.end = range.getEnd();
+        current.indexes.add(i);
+      } else {
+        current = new CombinedRange(range, i);
+        combined.add(current);
+      }
+    }
+    return combined;
+  }
+
+  /** @return a new future for the data of each range */
+  public static List<SettableFuture<ByteBuffer>> newFutures(int numRanges) {
+    List<SettableFuture<ByteBuffer>> futures =
+        new ArrayList<SettableFuture<ByteBuffer>>(numRanges);
+    for (int i = 0; i < numRanges; i++) {
+      futures.add(SettableFuture.<ByteBuffer>create());
+    }
+    return futures;
+  }
+
+  /**
+   * Set the data of a range from the bytes it was read into.
+   *
+   * @param data the bytes of a combined range, or of the range itself
+   * @param dataOffset the offset in the file of the first byte of data
+   */
+  public static void setData(FileRange range, SettableFuture<ByteBuffer> future,
+      byte[] data, long dataOffset, ByteBufferPool bufferPool) {
+    ByteBuffer buf = bufferPool.getBuffer(false, range.getLength());
+    buf.clear();
+    buf.put(data, (int) (range.getOffset() - dataOffset), range.getLength());
+    buf.flip();
+    future.set(buf);
+  }
+
+  /**
+   * Set the data of the ranges of a combined range once it was read, or
+   * fail them with the error reading it.
+   */
+  public static void setData(CombinedRange combined, byte[] data,
+      Throwable error, List<FileRange> ranges,
+      List<SettableFuture<ByteBuffer>> futures, ByteBufferPool bufferPool) {
+    for (int i : combined.getIndexes()) {
+      if (error != null) {
+        futures.get(i).setException(error);
+      } else {
+        setData(ranges.get(i), futures.get(i), data, combined.getOffset(),
+            bufferPool);
+      }
+    }
+  }
+
+  /**
+   * Read the ranges of a vectored read one by one with positioned reads,
+   * in the calling thread.
+   */
+  public static List<Future<ByteBuffer>> readInSequence(PositionedReadable in,
+      List<FileRange> ranges, ByteBufferPool bufferPool) {
+    sortRanges(ranges);
+    List<SettableFuture<ByteBuffer>> futures = newFutures(ranges.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      FileRange range = ranges.get(i);
+      byte[] data = new byte[range.getLength()];
+      try {
+        in.readFully(range.getOffset(), data, 0, data.length);
+        setData(range, futures.get(i), data, range.getOffset(), bufferPool);
+      } catch (IOException e) {
+        futures.get(i).setException(e);
+      }
+    }
+    return Collections.<Future<ByteBuffer>>unmodifiableList(futures);
+  }
+}
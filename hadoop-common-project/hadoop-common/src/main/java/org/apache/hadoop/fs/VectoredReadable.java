@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.ByteBufferPool;
+
+/**
+ * Streams which read many ranges of a file at once implement this
+ * interface, which positioned reads of the ranges one by one would do with
+ * a lot more seeks or requests. A stream may coalesce nearby ranges into one
+ * read, and read the ranges in parallel.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface VectoredReadable {
+  /**
+   * Read the given ranges of the file, without changing the current
+   * position of the stream. The ranges must not overlap.
+   *
+   * Each range is read into a heap buffer of the pool, flipped to be read,
+   * which the caller should give back to the pool once done with it. A range
+   * beyond the end of the file fails with an {@link java.io.EOFException}.
+   *
+   * @param ranges the ranges to read, in any order
+   * @param bufferPool the pool of the buffers of the ranges
+   * @return the futures of the data of the ranges, in the order of the ranges
+   * @throws IOException if the ranges could not be read at all
+   * @throws IllegalArgumentException if the ranges are invalid or overlap
+   */
+  List<Future<ByteBuffer>> readVectored(List<FileRange> ranges,
+      ByteBufferPool bufferPool) throws IOException;
+}
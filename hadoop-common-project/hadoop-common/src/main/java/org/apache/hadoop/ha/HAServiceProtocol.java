@@ -45,12 +45,14 @@ public interface HAServiceProtocol {
   /**
    * An HA service may be in active or standby state. During startup, it is in
    * an unknown INITIALIZING state. During shutdown, it is in the STOPPING state
-   * and can no longer return to active/standby states.
+   * and can no longer return to active/standby states. A service in OBSERVER
+   * state is a standby that also serves reads, and never becomes active.
    */
   public enum HAServiceState {
     INITIALIZING("initializing"),
     ACTIVE("active"),
     STANDBY("standby"),
+    OBSERVER("observer"),
     STOPPING("stopping");
 
     private String name;
@@ -148,6 +150,23 @@ public void transitionToStandby(StateChangeRequestInfo reqInfo)
                                            AccessControlException,
                                            IOException;
 
+  /**
+   * Request service to transition to observer state. No operation, if the
+   * service is already in observer state.
+   *
+   * @throws ServiceFailedException
+   *           if transition to observer fails, e.g. as the service is active.
+   * @throws AccessControlException
+   *           if access is denied.
+   * @throws IOException
+   *           if other errors happen
+   */
+  @Idempotent
+  public void transitionToObserver(StateChangeRequestInfo reqInfo)
+                                    throws ServiceFailedException,
+                                           AccessControlException,
+                                           IOException;
+
   /**
    * Return the current status of the service. The status indicates
    * the current <em>state</em> (e.g ACTIVE/STANDBY) as well as
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawErasureCoderFactory;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureCoderFactory;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureEncoder;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Creates the raw coders of a schema, with the implementation of its codec
+ * configured by io.erasurecode.codec.&lt;codec&gt;.rawcoder.
+ */
+@InterfaceAudience.Private
+public final class CodecUtil {
+  private CodecUtil() {
+  }
+
+  public static RawErasureEncoder createRawEncoder(Configuration conf,
+      ECSchema schema) {
+    return getFactory(conf, schema.getCodecName()).createEncoder(
+        schema.getNumDataUnits(), schema.getNumParityUnits());
+  }
+
+  public static RawErasureDecoder createRawDecoder(Configuration conf,
+      ECSchema schema) {
+    return getFactory(conf, schema.getCodecName()).createDecoder(
+        schema.getNumDataUnits(), schema.getNumParityUnits());
+  }
+
+  private static RawErasureCoderFactory getFactory(Configuration conf,
+      String codecName) {
+    Class<? extends RawErasureCoderFactory> factoryClass = conf.getClass(
+        CommonConfigurationKeys.IO_ERASURECODE_CODEC_PREFIX + codecName
+            + CommonConfigurationKeys.IO_ERASURECODE_RAWCODER_SUFFIX,
+        ECSchema.RS_CODEC_NAME.equals(codecName)
+            ? RSRawErasureCoderFactory.class : null,
+        RawErasureCoderFactory.class);
+    if (factoryClass == null) {
+      throw new IllegalArgumentException("No raw coder configured for codec "
+          + codecName);
+    }
+    return ReflectionUtils.newInstance(factoryClass, conf);
+  }
+}
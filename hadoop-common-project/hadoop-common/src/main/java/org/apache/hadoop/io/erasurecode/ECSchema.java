@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The schema of an erasure code: the codec, and the number of data and
+ * parity units each group of units is coded with.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class ECSchema {
+  /** The name of the Reed-Solomon codec */
+  public static final String RS_CODEC_NAME = "rs";
+
+  private final String codecName;
+  private final int numDataUnits;
+  private final int numParityUnits;
+
+  public ECSchema(String codecName, int numDataUnits, int numParityUnits) {
+    Preconditions.checkArgument(codecName != null && !codecName.isEmpty(),
+        "No codec name");
+    Preconditions.checkArgument(numDataUnits > 0 && numParityUnits > 0,
+        "Invalid number of data units %s or parity units %s", numDataUnits,
+        numParityUnits);
+    this.codecName = codecName.toLowerCase();
+    this.numDataUnits = numDataUnits;
+    this.numParityUnits = numParityUnits;
+  }
+
+  public String getCodecName() {
+    return codecName;
+  }
+
+  public int getNumDataUnits() {
+    return numDataUnits;
+  }
+
+  public int getNumParityUnits() {
+    return numParityUnits;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ECSchema)) {
+      return false;
+    }
+    ECSchema that = (ECSchema) o;
+    return codecName.equals(that.codecName)
+        && numDataUnits == that.numDataUnits
+        && numParityUnits == that.numParityUnits;
+  }
+
+  @Override
+  public int hashCode() {
+    return (codecName.hashCode() * 31 + numDataUnits) * 31 + numParityUnits;
+  }
+
+  @Override
+  public String toString() {
+    return "ECSchema=[codec=" + codecName + ", numDataUnits=" + numDataUnits
+        + ", numParityUnits=" + numParityUnits + "]";
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Base of the raw coders: coding buffers is done with the bytes of heap
+ * buffers in place, and through copies of the bytes of direct buffers.
+ */
+@InterfaceAudience.Private
+public abstract class AbstractRawErasureCoder implements RawErasureCoder {
+  private final int numDataUnits;
+  private final int numParityUnits;
+
+  protected AbstractRawErasureCoder(int numDataUnits, int numParityUnits) {
+    Preconditions.checkArgument(numDataUnits > 0 && numParityUnits > 0,
+        "Invalid number of data units %s or parity units %s", numDataUnits,
+        numParityUnits);
+    this.numDataUnits = numDataUnits;
+    this.numParityUnits = numParityUnits;
+  }
+
+  @Override
+  public int getNumDataUnits() {
+    return numDataUnits;
+  }
+
+  @Override
+  public int getNumParityUnits() {
+    return numParityUnits;
+  }
+
+  /** @return the number of data and parity units of a group */
+  protected int getNumAllUnits() {
+    return numDataUnits + numParityUnits;
+  }
+
+  /** @return the offsets of the given arrays, all zero */
+  protected static int[] zeroOffsets(int num) {
+    return new int[num];
+  }
+
+  /**
+   * Check the given buffers have as many units as expected, each with at
+   * least the given length from its offset.
+   */
+  protected static void checkBuffers(byte[][] buffers, int[] offsets,
+      int dataLen, int expected, boolean allowNull) {
+    Preconditions.checkArgument(buffers.length == expected,
+        "Invalid number of buffers %s, expected %s", buffers.length,
+        expected);
+    Preconditions.checkArgument(offsets.length == buffers.length,
+        "Invalid number of offsets %s", offsets.length);
+    for (int i = 0; i < buffers.length; i++) {
+      if (buffers[i] == null) {
+        Preconditions.checkArgument(allowNull, "Null buffer %s", i);
+      } else {
+        Preconditions.checkArgument(offsets[i] >= 0
+            && offsets[i] + dataLen <= buffers[i].length,
+            "Buffer %s is shorter than %s bytes", i, dataLen);
+      }
+    }
+  }
+
+  /** @return the number of remaining bytes all the buffers have */
+  protected static int getRemaining(ByteBuffer[] buffers) {
+    int dataLen = -1;
+    for (ByteBuffer buf : buffers) {
+      if (buf == null) {
+        continue;
+      }
+      if (dataLen < 0) {
+        dataLen = buf.remaining();
+      }
+      Preconditions.checkArgument(buf.remaining() == dataLen,
+          "Buffers with different remaining bytes %s and %s",
+          buf.remaining(), dataLen);
+    }
+    return Math.max(dataLen, 0);
+  }
+
+  /**
+   * Get the arrays and offsets of the remaining bytes of the buffers: the
+   * backing array of a heap buffer, or a copy of a direct buffer when
+   * copyDirect is set, or an array to copy back into it otherwise.
+   */
+  protected static byte[][] toArrays(ByteBuffer[] buffers, int[] offsets,
+      int dataLen, boolean copyDirect) {
+    byte[][] arrays = new byte[buffers.length][];
+    for (int i = 0; i < buffers.length; i++) {
+      ByteBuffer buf = buffers[i];
+      if (buf == null) {
+        continue;
+      }
+      if (buf.hasArray()) {
+        arrays[i] = buf.array();
+        offsets[i] = buf.arrayOffset() + buf.position();
+      } else {
+        arrays[i] = new byte[dataLen];
+        if (copyDirect) {
+          buf.duplicate().get(arrays[i]);
+        }
+      }
+    }
+    return arrays;
+  }
+
+  /** Copy the coded bytes back into the direct output buffers. */
+  protected static void copyToDirect(byte[][] arrays, ByteBuffer[] buffers) {
+    for (int i = 0; i < buffers.length; i++) {
+      if (!buffers[i].hasArray()) {
+        buffers[i].duplicate().put(arrays[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Base of the raw decoders, which only implement the decoding of arrays.
+ */
+@InterfaceAudience.Private
+public abstract class AbstractRawErasureDecoder extends AbstractRawErasureCoder
+    implements RawErasureDecoder {
+
+  protected AbstractRawErasureDecoder(int numDataUnits, int numParityUnits) {
+    super(numDataUnits, numParityUnits);
+  }
+
+  @Override
+  public void decode(byte[][] inputs, int[] erasedIndexes, byte[][] outputs) {
+    int dataLen = 0;
+    for (byte[] input : inputs) {
+      if (input != null) {
+        dataLen = input.length;
+        break;
+      }
+    }
+    decode(inputs, zeroOffsets(inputs.length), dataLen, erasedIndexes,
+        outputs, zeroOffsets(outputs.length));
+  }
+
+  @Override
+  public void decode(byte[][] inputs, int[] inputOffsets, int dataLen,
+      int[] erasedIndexes, byte[][] outputs, int[] outputOffsets) {
+    checkBuffers(inputs, inputOffsets, dataLen, getNumAllUnits(), true);
+    checkBuffers(outputs, outputOffsets, dataLen, erasedIndexes.length,
+        false);
+    int numValid = 0;
+    for (byte[] input : inputs) {
+      if (input != null) {
+        numValid++;
+      }
+    }
+    Preconditions.checkArgument(numValid >= getNumDataUnits(),
+        "Only %s units available, %s needed", numValid, getNumDataUnits());
+    for (int erased : erasedIndexes) {
+      Preconditions.checkArgument(erased >= 0 && erased < getNumAllUnits(),
+          "Invalid erased index %s", erased);
+    }
+    doDecode(inputs, inputOffsets, dataLen, erasedIndexes, outputs,
+        outputOffsets);
+  }
+
+  @Override
+  public void decode(ByteBuffer[] inputs, int[] erasedIndexes,
+      ByteBuffer[] outputs) {
+    int dataLen = getRemaining(inputs);
+    int[] inputOffsets = zeroOffsets(inputs.length);
+    int[] outputOffsets = zeroOffsets(outputs.length);
+    byte[][] inputArrays = toArrays(inputs, inputOffsets, dataLen, true);
+    byte[][] outputArrays = toArrays(outputs, outputOffsets, dataLen, false);
+    decode(inputArrays, inputOffsets, dataLen, erasedIndexes, outputArrays,
+        outputOffsets);
+    copyToDirect(outputArrays, outputs);
+  }
+
+  /** Decode the checked units. */
+  protected abstract void doDecode(byte[][] inputs, int[] inputOffsets,
+      int dataLen, int[] erasedIndexes, byte[][] outputs,
+      int[] outputOffsets);
+}
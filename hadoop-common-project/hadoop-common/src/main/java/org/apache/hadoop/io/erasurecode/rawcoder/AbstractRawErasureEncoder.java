@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Base of the raw encoders, which only implement the encoding of arrays.
+ */
+@InterfaceAudience.Private
+public abstract class AbstractRawErasureEncoder extends AbstractRawErasureCoder
+    implements RawErasureEncoder {
+
+  protected AbstractRawErasureEncoder(int numDataUnits, int numParityUnits) {
+    super(numDataUnits, numParityUnits);
+  }
+
+  @Override
+  public void encode(byte[][] inputs, byte[][] outputs) {
+    int dataLen = inputs.length == 0 || inputs[0] == null ? 0
+        : inputs[0].length;
+    encode(inputs, zeroOffsets(inputs.length), dataLen, outputs,
+        zeroOffsets(outputs.length));
+  }
+
+  @Override
+  public void encode(byte[][] inputs, int[] inputOffsets, int dataLen,
+      byte[][] outputs, int[] outputOffsets) {
+    checkBuffers(inputs, inputOffsets, dataLen, getNumDataUnits(), false);
+    checkBuffers(outputs, outputOffsets, dataLen, getNumParityUnits(), false);
+    doEncode(inputs, inputOffsets, dataLen, outputs, outputOffsets);
+  }
+
+  @Override
+  public void encode(ByteBuffer[] inputs, ByteBuffer[] outputs) {
+    int dataLen = getRemaining(inputs);
+    int[] inputOffsets = zeroOffsets(inputs.length);
+    int[] outputOffsets = zeroOffsets(outputs.length);
+    byte[][] inputArrays = toArrays(inputs, inputOffsets, dataLen, true);
+    byte[][] outputArrays = toArrays(outputs, outputOffsets, dataLen, false);
+    encode(inputArrays, inputOffsets, dataLen, outputArrays, outputOffsets);
+    copyToDirect(outputArrays, outputs);
+  }
+
+  /** Encode the checked units. */
+  protected abstract void doEncode(byte[][] inputs, int[] inputOffsets,
+      int dataLen, byte[][] outputs, int[] outputOffsets);
+}
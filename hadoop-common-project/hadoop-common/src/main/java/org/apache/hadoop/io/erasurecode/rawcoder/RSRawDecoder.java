@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.GF256;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+/**
+ * A pure Java Reed-Solomon decoder, for the units encoded by
+ * {@link RSRawEncoder}. The erased units are computed from the first
+ * available units, as many as the data units, with the inverse of their
+ * rows of the encoding matrix. The decoding matrix is kept for the next
+ * calls as long as the same units are available and erased.
+ */
+@InterfaceAudience.Private
+public class RSRawDecoder extends AbstractRawErasureDecoder {
+  private final byte[] encodeMatrix;
+
+  /** The units the decoding matrix was computed for */
+  private int[] validIndexes;
+  private int[] erasedIndexes;
+  /** The erasedIndexes.length x numDataUnits decoding matrix */
+  private byte[] decodeMatrix;
+
+  public RSRawDecoder(int numDataUnits, int numParityUnits) {
+    super(numDataUnits, numParityUnits);
+    encodeMatrix = RSUtil.genCauchyMatrix(numDataUnits, numParityUnits);
+  }
+
+  @Override
+  protected void doDecode(byte[][] inputs, int[] inputOffsets, int dataLen,
+      int[] erasedIndexes, byte[][] outputs, int[] outputOffsets) {
+    int numDataUnits = getNumDataUnits();
+    int[] valid = new int[numDataUnits];
+    byte[][] validInputs = new byte[numDataUnits][];
+    int[] validOffsets = new int[numDataUnits];
+    for (int i = 0, n = 0; n < numDataUnits; i++) {
+      if (inputs[i] != null) {
+        valid[n] = i;
+        validInputs[n] = inputs[i];
+        validOffsets[n] = inputOffsets[i];
+        n++;
+      }
+    }
+    if (!Arrays.equals(valid, validIndexes)
+        || !Arrays.equals(erasedIndexes, this.erasedIndexes)) {
+      decodeMatrix = generateDecodeMatrix(valid, erasedIndexes);
+      this.validIndexes = valid;
+      this.erasedIndexes = erasedIndexes.clone();
+    }
+    RSUtil.encodeData(decodeMatrix, validInputs, validOffsets, dataLen,
+        outputs, outputOffsets);
+  }
+
+  private byte[] generateDecodeMatrix(int[] valid, int[] erased) {
+    int k = getNumDataUnits();
+    // the rows of the encoding matrix of the valid units give them from
+    // the data, so their inverse gives the data from them
+    byte[] subMatrix = new byte[k * k];
+    for (int i = 0; i < k; i++) {
+      System.arraycopy(encodeMatrix, valid[i] * k, subMatrix, i * k, k);
+    }
+    byte[] inverse = new byte[k * k];
+    GF256.invertMatrix(subMatrix, inverse, k);
+
+    byte[] matrix = new byte[erased.length * k];
+    for (int e = 0; e < erased.length; e++) {
+      if (erased[e] < k) {
+        System.arraycopy(inverse, erased[e] * k, matrix, e * k, k);
+        continue;
+      }
+      // a parity unit is its row of the encoding matrix applied to the data
+      for (int j = 0; j < k; j++) {
+        byte sum = 0;
+        for (int d = 0; d < k; d++) {
+          sum ^= GF256.mul(encodeMatrix[erased[e] * k + d], inverse[d * k + j]);
+        }
+        matrix[e * k + j] = sum;
+      }
+    }
+    return matrix;
+  }
+}
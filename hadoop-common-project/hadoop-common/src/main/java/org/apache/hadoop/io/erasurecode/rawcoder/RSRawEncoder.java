@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+/**
+ * A pure Java Reed-Solomon encoder, with a systematic Cauchy encoding
+ * matrix.
+ */
+@InterfaceAudience.Private
+public class RSRawEncoder extends AbstractRawErasureEncoder {
+  /** The rows of the encoding matrix of the parity units */
+  private final byte[] parityMatrix;
+
+  public RSRawEncoder(int numDataUnits, int numParityUnits) {
+    super(numDataUnits, numParityUnits);
+    byte[] matrix = RSUtil.genCauchyMatrix(numDataUnits, numParityUnits);
+    parityMatrix = Arrays.copyOfRange(matrix, numDataUnits * numDataUnits,
+        matrix.length);
+  }
+
+  @Override
+  protected void doEncode(byte[][] inputs, int[] inputOffsets, int dataLen,
+      byte[][] outputs, int[] outputOffsets) {
+    RSUtil.encodeData(parityMatrix, inputs, inputOffsets, dataLen, outputs,
+        outputOffsets);
+  }
+}
@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A raw erasure coder codes the bytes of a group of units at a time: the
+ * data units, followed by the parity units computed from them. Units are
+ * indexed in that order, data units first. Raw coders keep no state of the
+ * data between calls, but are not thread safe.
+ */
+@InterfaceAudience.Private
+public interface RawErasureCoder {
+  /** @return the number of data units of a group */
+  int getNumDataUnits();
+
+  /** @return the number of parity units of a group */
+  int getNumParityUnits();
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Recovers erased units of a group, data or parity, from any of its units
+ * as many as its data units.
+ */
+@InterfaceAudience.Private
+public interface RawErasureDecoder extends RawErasureCoder {
+  /**
+   * Decode the erased units of a group. All the units have the same length.
+   *
+   * @param inputs the units of the group, data units first, with null for
+   *               the units which are not available. At least as many units
+   *               as the data units must be available.
+   * @param erasedIndexes the indexes of the units to recover
+   * @param outputs the recovered units, in the order of erasedIndexes
+   */
+  void decode(byte[][] inputs, int[] erasedIndexes, byte[][] outputs);
+
+  /**
+   * Decode the given length of the erased units, reading the available units
+   * from the given offsets and writing the recovered ones at the given
+   * offsets.
+   */
+  void decode(byte[][] inputs, int[] inputOffsets, int dataLen,
+      int[] erasedIndexes, byte[][] outputs, int[] outputOffsets);
+
+  /**
+   * Decode the remaining bytes of the available units into the recovered
+   * units, which have as many bytes remaining. The positions of the buffers
+   * are not changed.
+   */
+  void decode(ByteBuffer[] inputs, int[] erasedIndexes, ByteBuffer[] outputs);
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder.util;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Arithmetic of the Galois field GF(2^8), with the primitive polynomial
+ * x^8 + x^4 + x^3 + x^2 + 1. Addition is exclusive or; multiplication is
+ * done with a full table of the products, so multiplying a whole unit by a
+ * coefficient is a lookup per byte.
+ */
+@InterfaceAudience.Private
+public final class GF256 {
+  private static final int PRIMITIVE_POLYNOMIAL = 0x11d;
+
+  private static final int[] EXP = new int[512];
+  private static final int[] LOG = new int[256];
+  private static final byte[][] MUL_TABLE = new byte[256][256];
+
+  static {
+    int x = 1;
+    for (int i = 0; i < 255; i++) {
+      EXP[i] = x;
+      LOG[x] = i;
+      x <<= 1;
+      if ((x & 0x100) != 0) {
+        x ^= PRIMITIVE_POLYNOMIAL;
+      }
+    }
+    // doubled, so the sum of two logarithms needs no modulo
+    for (int i = 255; i < EXP.length; i++) {
+      EXP[i] = EXP[i - 255];
+    }
+    for (int a = 1; a < 256; a++) {
+      for (int b = 1; b < 256; b++) {
+        MUL_TABLE[a][b] = (byte) EXP[LOG[a] + LOG[b]];
+      }
+    }
+  }
+
+  private GF256() {
+  }
+
+  /** @return the product of a and b */
+  public static byte mul(byte a, byte b) {
+    return MUL_TABLE[a & 0xff][b & 0xff];
+  }
+
+  /** @return the products of the coefficient with each byte value */
+  public static byte[] mulTable(byte coefficient) {
+    return MUL_TABLE[coefficient & 0xff];
+  }
+
+  /** @return the multiplicative inverse of a non-zero a */
+  public static byte inverse(byte a) {
+    int v = a & 0xff;
+    if (v == 0) {
+      throw new ArithmeticException("Zero has no inverse");
+    }
+    return (byte) EXP[255 - LOG[v]];
+  }
+
+  /**
+   * Invert a square matrix, by Gauss-Jordan elimination.
+   *
+   * @param matrix the n x n matrix, in row order; destroyed
+   * @param inverse the inverse of the matrix, in row order
+   * @throws IllegalArgumentException if the matrix is singular
+   */
+  public static void invertMatrix(byte[] matrix, byte[] inverse, int n) {
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        inverse[i * n + j] = (byte) (i == j ? 1 : 0);
+      }
+    }
+    for (int col = 0; col < n; col++) {
+      // find a row with a non-zero pivot, and swap it in
+      int pivot = col;
+      while (pivot < n && matrix[pivot * n + col] == 0) {
+        pivot++;
+      }
+      if (pivot == n) {
+        throw new IllegalArgumentException("The matrix is singular");
+      }
+      if (pivot != col) {
+        swapRows(matrix, n, pivot, col);
+        swapRows(inverse, n, pivot, col);
+      }
+      // scale the row so the pivot is one
+      byte[] scale = mulTable(inverse(matrix[col * n + col]));
+      for (int j = 0; j < n; j++) {
+        matrix[col * n + j] = scale[matrix[col * n + j] & 0xff];
+        inverse[col * n + j] = scale[inverse[col * n + j] & 0xff];
+      }
+      // eliminate the column from the other rows
+      for (int row = 0; row < n; row++) {
+        byte factor = matrix[row * n + col];
+        if (row == col || factor == 0) {
+          continue;
+        }
+        byte[] mul = mulTable(factor);
+        for (int j = 0; j < n; j++) {
+          matrix[row * n + j] ^= mul[matrix[col * n + j] & 0xff];
+          inverse[row * n + j] ^= mul[inverse[col * n + j] & 0xff];
+        }
+      }
+    }
+  }
+
+  private static void swapRows(byte[] matrix, int n, int a, int b) {
+    for (int j = 0; j < n; j++) {
+      byte t = matrix[a * n + j];
+      matrix[a * n + j] = matrix[b * n + j];
+      matrix[b * n + j] = t;
+    }
+  }
+}
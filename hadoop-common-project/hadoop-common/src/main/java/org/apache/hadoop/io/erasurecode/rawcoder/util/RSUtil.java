@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder.util;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Helpers of the Reed-Solomon coders, over {@link GF256}.
+ */
+@InterfaceAudience.Private
+public final class RSUtil {
+  /** The maximum number of data and parity units of a group */
+  public static final int MAX_UNITS = 256;
+
+  private RSUtil() {
+  }
+
+  /**
+   * Generate the systematic encoding matrix of a Reed-Solomon code: the
+   * identity for the data units, followed by a Cauchy matrix for the parity
+   * units. Every square submatrix of a Cauchy matrix is invertible, so the
+   * data can be recovered from any numDataUnits rows.
+   *
+   * @return the (numDataUnits + numParityUnits) x numDataUnits matrix, in
+   * row order
+   */
+  public static byte[] genCauchyMatrix(int numDataUnits, int numParityUnits) {
+    int numAllUnits = numDataUnits + numParityUnits;
+    if (numAllUnits > MAX_UNITS) {
+      throw new IllegalArgumentException("Too many units: " + numAllUnits);
+    }
+    byte[] matrix = new byte[numAllUnits * numDataUnits];
+    for (int i = 0; i < numDataUnits; i++) {
+      matrix[i * numDataUnits + i] = 1;
+    }
+    for (int i = numDataUnits; i < numAllUnits; i++) {
+      for (int j = 0; j < numDataUnits; j++) {
+        matrix[i * numDataUnits + j] = GF256.inverse((byte) (i ^ j));
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * Compute each output unit as the sum of the input units multiplied by
+   * the coefficients of its row.
+   *
+   * @param coefficients the outputs.length x inputs.length coefficients, in
+   *                     row order
+   */
+  public static void encodeData(byte[] coefficients, byte[][] inputs,
+      int[] inputOffsets, int dataLen, byte[][] outputs,
+      int[] outputOffsets) {
+    int numInputs = inputs.length;
+    for (int o = 0; o < outputs.length; o++) {
+      byte[] out = outputs[o];
+      int outOff = outputOffsets[o];
+      Arrays.fill(out, outOff, outOff + dataLen, (byte) 0);
+      for (int i = 0; i < numInputs; i++) {
+        byte coefficient = coefficients[o * numInputs + i];
+        if (coefficient == 0) {
+          continue;
+        }
+        byte[] in = inputs[i];
+        int inOff = inputOffsets[i];
+        if (coefficient == 1) {
+          for (int j = 0; j < dataLen; j++) {
+            out[outOff + j] ^= in[inOff + j];
+          }
+        } else {
+          byte[] mul = GF256.mulTable(coefficient);
+          for (int j = 0; j < dataLen; j++) {
+            out[outOff + j] ^= mul[in[inOff + j] & 0xff];
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * Aligns the state of a client with the state of the servers it talks to.
+ * The server puts the id of its current state in every response header and
+ * the client puts the highest state id it has seen in every request header,
+ * so that a server that lags behind can hold back a call until it has
+ * caught up with what the client has already observed elsewhere.
+ *
+ * A client and a server use different implementations; each of them only
+ * uses the methods for its own side.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Evolving
+public interface AlignmentContext {
+
+  /**
+   * Server side: add the current state id of the server to the header of a
+   * response.
+   */
+  void updateResponseState(RpcResponseHeaderProto.Builder header);
+
+  /**
+   * Client side: record the state id from the header of a response.
+   */
+  void receiveResponseState(RpcResponseHeaderProto header);
+
+  /**
+   * Client side: add the last state id seen by the client to the header of a
+   * request.
+   */
+  void updateRequestState(RpcRequestHeaderProto.Builder header);
+
+  /**
+   * Server side: read the state id the client has seen from the header of a
+   * request.
+   *
+   * @return the client state id, which the server has to reach before
+   *         serving the call
+   * @throws IOException if the call cannot be served
+   */
+  long receiveRequestState(RpcRequestHeaderProto header) throws IOException;
+
+  /**
+   * @return the state id of the server, or the last state id seen by the
+   *         client
+   */
+  long getLastSeenStateId();
+
+  /**
+   * Server side: wait until the state id of the server is above the given
+   * one, or the timeout elapses, to serve the calls held back for it.
+   *
+   * @param stateId the state id to wait to be passed
+   * @param timeoutMs the maximum time to wait in milliseconds
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void waitForStateIdAbove(long stateId, long timeoutMs)
+      throws InterruptedException;
+
+  /**
+   * Server side: whether a call has to wait for the server to reach the
+   * state id of the client.
+   *
+   * @param protocolName the name of the protocol of the call
+   * @param methodName the name of the method called
+   */
+  boolean isCoordinatedCall(String protocolName, String methodName);
+}
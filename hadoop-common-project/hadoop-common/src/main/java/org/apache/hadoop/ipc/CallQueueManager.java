@@ -136,6 +136,18 @@ public int size() {
     return takeRef.get().size();
   }
 
+  /**
+   * Report the cost of a processed call to the scheduler of the queue, if
+   * the queue schedules calls by the costs of past ones.
+   */
+  @SuppressWarnings("unchecked")
+  public void addCost(E e, long cost) {
+    BlockingQueue<E> q = takeRef.get();
+    if (q instanceof FairCallQueue && e instanceof Schedulable) {
+      ((FairCallQueue<Schedulable>) q).addCost((Schedulable) e, cost);
+    }
+  }
+
   /**
    * Replaces active queue with the newly requested one and transfers
    * all calls to the newQ before returning.
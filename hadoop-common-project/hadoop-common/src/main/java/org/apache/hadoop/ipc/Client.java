@@ -39,7 +39,9 @@
 import java.security.PrivilegedExceptionAction;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
@@ -75,6 +77,8 @@
 import org.apache.hadoop.ipc.ProtobufRpcEngine.RpcRequestMessageWrapper;
 import org.apache.hadoop.ipc.RPC.RpcKind;
 import org.apache.hadoop.ipc.Server.AuthProtocol;
+import org.apache.hadoop.ipc.metrics.RpcClientMetrics;
+import org.apache.hadoop.ipc.metrics.RpcClientMetrics.ConnectionMetrics;
 import org.apache.hadoop.ipc.protobuf.IpcConnectionContextProtos.IpcConnectionContextProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto.OperationProto;
@@ -96,6 +100,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
@@ -117,6 +123,47 @@ public class Client {
   private static final ThreadLocal<Integer> callId = new ThreadLocal<Integer>();
   private static final ThreadLocal<Integer> retryCount = new ThreadLocal<Integer>();
 
+  private static final ThreadLocal<Boolean> asynchronousMode =
+      new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+          return false;
+        }
+      };
+  private static final ThreadLocal<ListenableFuture<Writable>>
+      asyncRpcResponse = new ThreadLocal<ListenableFuture<Writable>>();
+
+  /**
+   * Set whether the calls made by the current thread are asynchronous. An
+   * asynchronous call returns null once the request is sent, and the future
+   * of its response is then returned by {@link #getAsyncRpcResponse()}.
+   */
+  @InterfaceStability.Unstable
+  public static void setAsynchronousMode(boolean async) {
+    asynchronousMode.set(async);
+  }
+
+  @InterfaceStability.Unstable
+  public static boolean isAsynchronousMode() {
+    return asynchronousMode.get();
+  }
+
+  /**
+   * Get the future of the response of the last asynchronous call made by the
+   * current thread, and forget it. The future fails with the
+   * {@link IOException} the call would have thrown.
+   * Listeners added without an executor run on the thread receiving the
+   * response, so they must not block.
+   *
+   * @return the future of the response, or null if there is none
+   */
+  @InterfaceStability.Unstable
+  public static ListenableFuture<Writable> getAsyncRpcResponse() {
+    ListenableFuture<Writable> response = asyncRpcResponse.get();
+    asyncRpcResponse.remove();
+    return response;
+  }
+
   /** Set call id and retry count for the next call. */
   public static void setCallIdAndRetryCount(int cid, int rc) {
     Preconditions.checkArgument(cid != RpcConstants.INVALID_CALL_ID);
@@ -127,7 +174,7 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
     retryCount.set(rc);
   }
 
-  private final Cache<ConnectionId, Connection> connections =
+  private final Cache<ConnectionId, ConnectionPool> connections =
       CacheBuilder.newBuilder().build();
 
   private Class<? extends Writable> valueClass;   // class of call values
@@ -138,6 +185,10 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
   private int refCount = 1;
 
   private final int connectionTimeout;
+  private final int maxAsyncCalls;
+  private final int connectionPoolSize;
+  private final boolean leastOutstandingDispatch;
+  private final RpcClientMetrics clientMetrics;
 
   private final boolean fallbackAllowed;
   private final byte[] clientId;
@@ -314,6 +365,13 @@ static class Call {
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
+    AlignmentContext alignmentContext; // state id exchange, null if none
+    // set for asynchronous calls only
+    SettableFuture<Writable> asyncResponse;
+    private InetSocketAddress server;
+    private AtomicInteger asyncCalls; // outstanding calls of the connection
+    private ConnectionMetrics connectionMetrics; // null until sent
+    private long startTime; // when the call was queued on its connection
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -340,6 +398,17 @@ private Call(RPC.RpcKind rpcKind, Writable param) {
     protected synchronized void callComplete() {
       this.done = true;
       notify();                                 // notify caller
+      if (connectionMetrics != null) {
+        connectionMetrics.addCallLatency(Time.monotonicNow() - startTime);
+      }
+      if (asyncResponse != null) {
+        asyncCalls.decrementAndGet();
+        if (error != null) {
+          asyncResponse.setException(wrapException(this, server));
+        } else {
+          asyncResponse.set(rpcResponse);
+        }
+      }
     }
 
     /** Set the exception when there is an error.
@@ -387,6 +456,9 @@ private class Connection extends Thread {
     private final RetryPolicy connectionRetryPolicy;
     private final int maxRetriesOnSasl;
     private int maxRetriesOnSocketTimeouts;
+    private final ConnectionPool pool; // the pool this connection is in
+    private final int index; // the index of this connection in its pool
+    private final ConnectionMetrics metrics;
     private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
     private final boolean tcpLowLatency; // if T then use low-delay QoS
     private boolean doPing; //do we need to send ping message
@@ -395,13 +467,16 @@ private class Connection extends Thread {
     
     // currently active calls
     private Hashtable<Integer, Call> calls = new Hashtable<Integer, Call>();
+    // currently active asynchronous calls
+    private final AtomicInteger asyncCalls = new AtomicInteger();
     private AtomicLong lastActivity = new AtomicLong();// last I/O activity time
     private AtomicBoolean shouldCloseConnection = new AtomicBoolean();  // indicate if the connection is closed
     private IOException closeException; // close reason
     
     private final Object sendRpcRequestLock = new Object();
 
-    public Connection(ConnectionId remoteId, int serviceClass) throws IOException {
+    public Connection(ConnectionId remoteId, int serviceClass,
+        ConnectionPool pool, int index) throws IOException {
       this.remoteId = remoteId;
       this.server = remoteId.getAddress();
       if (server.isUnresolved()) {
@@ -416,6 +491,8 @@ public Connection(ConnectionId remoteId, int serviceClass) throws IOException {
       this.connectionRetryPolicy = remoteId.connectionRetryPolicy;
       this.maxRetriesOnSasl = remoteId.getMaxRetriesOnSasl();
       this.maxRetriesOnSocketTimeouts = remoteId.getMaxRetriesOnSocketTimeouts();
+      this.pool = pool;
+      this.index = index;
       this.tcpNoDelay = remoteId.getTcpNoDelay();
       this.tcpLowLatency = remoteId.getTcpLowLatency();
       this.doPing = remoteId.getDoPing();
@@ -443,8 +520,13 @@ public Connection(ConnectionId remoteId, int serviceClass) throws IOException {
       
       this.setName("IPC Client (" + socketFactory.hashCode() +") connection to " +
           server.toString() +
-          " from " + ((ticket==null)?"an unknown user":ticket.getUserName()));
+          " from " + ((ticket==null)?"an unknown user":ticket.getUserName()) +
+          (connectionPoolSize > 1 ? " #" + index : ""));
       this.setDaemon(true);
+      this.metrics = clientMetrics.addConnection(server.toString(),
+          remoteId.getProtocol() == null ? null
+              : RPC.getProtocolName(remoteId.getProtocol()),
+          ticket == null ? null : ticket.getUserName(), index);
     }
 
     /** Update lastActivity with the current time. */
@@ -458,15 +540,36 @@ private void touch() {
      * Returns false if called during shutdown.
      * @param call to add
      * @return true if the call was added.
+     * @throws AsyncCallLimitExceededException if the call is asynchronous and
+     *         too many asynchronous calls are outstanding
      */
-    private synchronized boolean addCall(Call call) {
+    private synchronized boolean addCall(Call call)
+        throws AsyncCallLimitExceededException {
       if (shouldCloseConnection.get())
         return false;
+      if (call.asyncResponse != null) {
+        if (asyncCalls.get() >= maxAsyncCalls) {
+          throw new AsyncCallLimitExceededException("The number of "
+              + "outstanding asynchronous calls to " + server
+              + " has reached the limit of " + maxAsyncCalls);
+        }
+        asyncCalls.incrementAndGet();
+        call.asyncCalls = asyncCalls;
+        call.server = server;
+      }
+      metrics.incrOutstandingCalls();
+      call.connectionMetrics = metrics;
+      call.startTime = Time.monotonicNow();
       calls.put(call.id, call);
       notify();
       return true;
     }
 
+    /** Get the number of calls waiting for their responses. */
+    private int getOutstandingCalls() {
+      return calls.size();
+    }
+
     /** This class sends a ping to the remote side when timeout on
      * reading. If no failure is detected, it retries until at least
      * a byte is read.
@@ -1033,7 +1136,7 @@ public void sendRpcRequest(final Call call)
       final DataOutputBuffer d = new DataOutputBuffer();
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
+          clientId, call.alignmentContext);
       header.writeDelimitedTo(d);
       call.rpcRequest.write(d);
 
@@ -1108,6 +1211,10 @@ private void receiveRpcResponse() {
           LOG.debug(getName() + " got value #" + callId);
 
         Call call = calls.get(callId);
+        if (call != null && call.alignmentContext != null
+            && header.hasStateId()) {
+          call.alignmentContext.receiveResponseState(header);
+        }
         RpcStatusProto status = header.getStatus();
         if (status == RpcStatusProto.SUCCESS) {
           Writable value = ReflectionUtils.newInstance(valueClass, conf);
@@ -1170,7 +1277,8 @@ private synchronized void close() {
         return;
       }
 
-      connections.invalidate(remoteId);
+      pool.remove(this);
+      clientMetrics.removeConnection(metrics);
 
       // close the streams and therefore the socket
       IOUtils.closeStream(out);
@@ -1213,6 +1321,114 @@ private void cleanupCalls() {
     }
   }
 
+  /**
+   * The connections to one {@link ConnectionId}. Calls to the connection id
+   * are dispatched over up to {@link #connectionPoolSize} connections, each
+   * with its own socket and receiver thread, either in turn or to the
+   * connection with the fewest outstanding calls. A connection is opened in
+   * a slot of the pool the first time a call is dispatched to the slot, and
+   * the slot is emptied when the connection closes. The pool is removed from
+   * {@link #connections} once all its connections are closed, and cannot be
+   * used afterwards.
+   */
+  private class ConnectionPool {
+    private final ConnectionId remoteId;
+    private final Connection[] slots;
+    private int next; // the next slot in the round-robin order
+    private boolean closed;
+
+    ConnectionPool(ConnectionId remoteId) {
+      this.remoteId = remoteId;
+      this.slots = new Connection[connectionPoolSize];
+    }
+
+    /**
+     * Get the connection to send the next call on, opening it if needed.
+     * @return the connection, or null if the pool is closed
+     */
+    synchronized Connection getConnection(int serviceClass)
+        throws IOException {
+      if (closed) {
+        return null;
+      }
+      final int i = leastOutstandingDispatch ? leastOutstandingSlot() : next;
+      next = (i + 1) % slots.length;
+      if (slots[i] == null) {
+        try {
+          slots[i] = new Connection(remoteId, serviceClass, this, i);
+        } catch (IOException e) {
+          if (isEmpty()) {
+            close();
+          }
+          throw e;
+        }
+      }
+      return slots[i];
+    }
+
+    /**
+     * Get the slot of the open connection with the fewest outstanding calls,
+     * or an empty slot if every open connection has outstanding calls.
+     */
+    private int leastOutstandingSlot() {
+      int best = -1;
+      int bestCalls = Integer.MAX_VALUE;
+      int empty = -1;
+      for (int i = 0; i < slots.length; i++) {
+        if (slots[i] == null) {
+          if (empty < 0) {
+            empty = i;
+          }
+        } else {
+          final int outstanding = slots[i].getOutstandingCalls();
+          if (outstanding < bestCalls) {
+            best = i;
+            bestCalls = outstanding;
+          }
+        }
+      }
+      return empty >= 0 && bestCalls > 0 ? empty : best;
+    }
+
+    /**
+     * Remove a closing connection from the pool, closing the pool if it was
+     * the last connection in it.
+     */
+    synchronized void remove(Connection connection) {
+      if (slots[connection.index] != connection) {
+        return;
+      }
+      slots[connection.index] = null;
+      if (isEmpty()) {
+        close();
+      }
+    }
+
+    private boolean isEmpty() {
+      for (Connection c : slots) {
+        if (c != null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void close() {
+      closed = true;
+      connections.asMap().remove(remoteId, this);
+    }
+
+    synchronized List<Connection> getConnections() {
+      List<Connection> open = new ArrayList<Connection>(slots.length);
+      for (Connection c : slots) {
+        if (c != null) {
+          open.add(c);
+        }
+      }
+      return open;
+    }
+  }
+
   /** Construct an IPC client whose values are of the given {@link Writable}
    * class. */
   public Client(Class<? extends Writable> valueClass, Configuration conf, 
@@ -1224,8 +1440,28 @@ public Client(Class<? extends Writable> valueClass, Configuration conf,
         CommonConfigurationKeys.IPC_CLIENT_CONNECT_TIMEOUT_DEFAULT);
     this.fallbackAllowed = conf.getBoolean(CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_KEY,
         CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT);
+    this.maxAsyncCalls = conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT);
+    this.connectionPoolSize = conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_SIZE_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_SIZE_DEFAULT);
+    Preconditions.checkArgument(connectionPoolSize > 0, "%s must be positive",
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_SIZE_KEY);
+    final String dispatch = conf.getTrimmed(
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_DISPATCH_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_DISPATCH_DEFAULT);
+    if ("least-outstanding".equals(dispatch)) {
+      this.leastOutstandingDispatch = true;
+    } else if ("round-robin".equals(dispatch)) {
+      this.leastOutstandingDispatch = false;
+    } else {
+      throw new IllegalArgumentException("Unknown value " + dispatch + " of "
+          + CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_DISPATCH_KEY);
+    }
     this.clientId = ClientId.getClientId();
     this.sendParamsExecutor = clientExcecutorFactory.refAndGetInstance();
+    this.clientMetrics = RpcClientMetrics.create();
   }
 
   /**
@@ -1257,8 +1493,10 @@ public void stop() {
     }
     
     // wake up all connections
-    for (Connection conn : connections.asMap().values()) {
-      conn.interrupt();
+    for (ConnectionPool pool : connections.asMap().values()) {
+      for (Connection conn : pool.getConnections()) {
+        conn.interrupt();
+      }
     }
     
     // wait until all connections are closed
@@ -1270,6 +1508,7 @@ public void stop() {
     }
     
     clientExcecutorFactory.unrefAndCleanup();
+    clientMetrics.shutdown();
   }
 
   /**
@@ -1406,7 +1645,35 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
   public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       ConnectionId remoteId, int serviceClass,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return call(rpcKind, rpcRequest, remoteId, serviceClass,
+        fallbackToSimpleAuth, null);
+  }
+
+  /**
+   * Make a call, passing <code>rpcRequest</code>, to the IPC server defined by
+   * <code>remoteId</code>, returning the rpc response.
+   *
+   * @param rpcKind
+   * @param rpcRequest -  contains serialized method and method parameters
+   * @param remoteId - the target rpc server
+   * @param serviceClass - service class for RPC
+   * @param fallbackToSimpleAuth - set to true or false during this method to
+   *   indicate if a secure client falls back to simple auth
+   * @param alignmentContext - exchanges state ids with the server, may be
+   *   null
+   * @returns the rpc response, or null in asynchronous mode
+   * Throws exceptions if there are network problems or if the remote code
+   * threw an exception.
+   */
+  public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
+      ConnectionId remoteId, int serviceClass,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
     final Call call = createCall(rpcKind, rpcRequest);
+    call.alignmentContext = alignmentContext;
+    if (isAsynchronousMode()) {
+      call.asyncResponse = SettableFuture.create();
+    }
     Connection connection = getConnection(remoteId, call, serviceClass,
       fallbackToSimpleAuth);
     try {
@@ -1419,6 +1686,11 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       throw new IOException(e);
     }
 
+    if (call.asyncResponse != null) {
+      asyncRpcResponse.set(call.asyncResponse);
+      return null;
+    }
+
     boolean interrupted = false;
     synchronized (call) {
       while (!call.done) {
@@ -1436,32 +1708,51 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       }
 
       if (call.error != null) {
-        if (call.error instanceof RemoteException) {
-          call.error.fillInStackTrace();
-          throw call.error;
-        } else { // local exception
-          InetSocketAddress address = connection.getRemoteAddress();
-          throw NetUtils.wrapException(address.getHostName(),
-                  address.getPort(),
-                  NetUtils.getHostname(),
-                  0,
-                  call.error);
-        }
+        throw wrapException(call, connection.getRemoteAddress());
       } else {
         return call.getRpcResponse();
       }
     }
   }
 
+  /** @return the exception of a failed call to throw to the caller */
+  private static IOException wrapException(Call call,
+      InetSocketAddress address) {
+    if (call.error instanceof RemoteException) {
+      call.error.fillInStackTrace();
+      return call.error;
+    } else { // local exception
+      return NetUtils.wrapException(address.getHostName(),
+              address.getPort(),
+              NetUtils.getHostname(),
+              0,
+              call.error);
+    }
+  }
+
   // for unit testing only
   @InterfaceAudience.Private
   @InterfaceStability.Unstable
   Set<ConnectionId> getConnectionIds() {
     return connections.asMap().keySet();
   }
+
+  // for unit testing only
+  @VisibleForTesting
+  int getConnectionCount(ConnectionId remoteId) {
+    ConnectionPool pool = connections.getIfPresent(remoteId);
+    return pool == null ? 0 : pool.getConnections().size();
+  }
+
+  @VisibleForTesting
+  RpcClientMetrics getClientMetrics() {
+    return clientMetrics;
+  }
   
   /** Get a connection from the pool, or create a new one and add it to the
-   * pool.  Connections to a given ConnectionId are reused. */
+   * pool.  Connections to a given ConnectionId are reused; up to
+   * {@link #connectionPoolSize} of them are opened to the same ConnectionId,
+   * see {@link ConnectionPool}. */
   private Connection getConnection(
       final ConnectionId remoteId,
       Call call, final int serviceClass, AtomicBoolean fallbackToSimpleAuth)
@@ -1476,26 +1767,25 @@ private Connection getConnection(
      * refs for keys in HashMap properly. For now its ok.
      */
     while(true) {
+      final ConnectionPool pool;
       try {
-        connection = connections.get(remoteId, new Callable<Connection>() {
+        pool = connections.get(remoteId, new Callable<ConnectionPool>() {
           @Override
-          public Connection call() throws Exception {
-            return new Connection(remoteId, serviceClass);
+          public ConnectionPool call() {
+            return new ConnectionPool(remoteId);
           }
         });
       } catch (ExecutionException e) {
-        Throwable cause = e.getCause();
-        // the underlying exception should normally be IOException
-        if (cause instanceof IOException) {
-          throw (IOException) cause;
-        } else {
-          throw new IOException(cause);
-        }
+        throw new IOException(e.getCause());
+      }
+      connection = pool.getConnection(serviceClass);
+      if (connection == null) {
+        continue; // the pool was closed meanwhile
       }
       if (connection.addCall(call)) {
         break;
       } else {
-        connections.invalidate(remoteId);
+        pool.remove(connection);
       }
     }
     
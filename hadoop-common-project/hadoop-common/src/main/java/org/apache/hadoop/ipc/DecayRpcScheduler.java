@@ -44,6 +44,13 @@
  * decays the counts at a fixed time interval. The scheduler is optimized
  * for large periods (on the order of seconds), as it offloads work to the
  * decay sweep.
+ *
+ * The cost the server reports for each processed call, such as the time it
+ * held a lock, is accumulated and decayed in the same way. If the scheduler
+ * is cost based, identities are prioritized by their share of the total
+ * cost rather than of the total number of calls, so that an identity
+ * making a few expensive calls is pushed back like one making many cheap
+ * ones.
  */
 public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean {
   /**
@@ -77,6 +84,15 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   public static final String IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY =
     "faircallqueue.decay-scheduler.thresholds";
 
+  /**
+   * If true, identities are prioritized by the decayed cost of their calls
+   * instead of by the decayed number of their calls.
+   */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY =
+    "faircallqueue.decay-scheduler.cost-based";
+  public static final boolean IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_DEFAULT =
+    false;
+
   // Specifies the identity to use when the IdentityProvider cannot handle
   // a schedulable.
   public static final String DECAYSCHEDULER_UNKNOWN_IDENTITY =
@@ -91,6 +107,13 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   // Should be the sum of all AtomicLongs in callCounts
   private final AtomicLong totalCalls = new AtomicLong();
 
+  // Track the cost of the calls of each schedulable identity
+  private final ConcurrentHashMap<Object, AtomicLong> callCosts =
+    new ConcurrentHashMap<Object, AtomicLong>();
+
+  // Should be the sum of all AtomicLongs in callCosts
+  private final AtomicLong totalCost = new AtomicLong();
+
   // Pre-computed scheduling decisions during the decay sweep are
   // atomically swapped in as a read-only map
   private final AtomicReference<Map<Object, Integer>> scheduleCacheRef =
@@ -102,6 +125,7 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   private final int numQueues; // affects scheduling decisions, from 0 to numQueues - 1
   private final double[] thresholds;
   private final IdentityProvider identityProvider;
+  private final boolean costBased; // prioritize on callCosts
 
   /**
    * This TimerTask will call decayCurrentCounts until
@@ -147,11 +171,16 @@ public DecayRpcScheduler(int numQueues, String ns, Configuration conf) {
     this.decayPeriodMillis = parseDecayPeriodMillis(ns, conf);
     this.identityProvider = this.parseIdentityProvider(ns, conf);
     this.thresholds = parseThresholds(ns, conf, numQueues);
+    this.costBased = conf.getBoolean(ns + "." +
+        IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY,
+      IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_DEFAULT);
 
     // Setup delay timer
     Timer timer = new Timer();
     DecayTask task = new DecayTask(this, timer);
-    timer.scheduleAtFixedRate(task, 0, this.decayPeriodMillis);
+    // There is nothing to decay until a period has passed
+    timer.scheduleAtFixedRate(task, this.decayPeriodMillis,
+        this.decayPeriodMillis);
 
     MetricsProxy prox = MetricsProxy.getInstance(ns);
     prox.setDelegate(this);
@@ -239,14 +268,27 @@ private static double[] getDefaultThresholds(int numQueues) {
   }
 
   /**
-   * Decay the stored counts for each user and clean as necessary.
+   * Decay the stored counts and costs for each user and clean as necessary.
    * This method should be called periodically in order to keep
    * counts current.
    */
   private void decayCurrentCounts() {
+    // Update the totals so that we remain in sync
+    totalCalls.set(decay(callCounts));
+    totalCost.set(decay(callCosts));
+
+    // Now refresh the cache of scheduling decisions
+    recomputeScheduleCache();
+  }
+
+  /**
+   * Decay the values of the given map.
+   * @return the sum of the decayed values
+   */
+  private long decay(ConcurrentHashMap<Object, AtomicLong> values) {
     long total = 0;
     Iterator<Map.Entry<Object, AtomicLong>> it =
-      callCounts.entrySet().iterator();
+      values.entrySet().iterator();
 
     while (it.hasNext()) {
       Map.Entry<Object, AtomicLong> entry = it.next();
@@ -265,21 +307,18 @@ private void decayCurrentCounts() {
         it.remove();
       }
     }
-
-    // Update the total so that we remain in sync
-    totalCalls.set(total);
-
-    // Now refresh the cache of scheduling decisions
-    recomputeScheduleCache();
+    return total;
   }
 
   /**
-   * Update the scheduleCache to match current conditions in callCounts.
+   * Update the scheduleCache to match current conditions in callCounts, or
+   * in callCosts if the scheduler is cost based.
    */
   private void recomputeScheduleCache() {
     Map<Object, Integer> nextCache = new HashMap<Object, Integer>();
 
-    for (Map.Entry<Object, AtomicLong> entry : callCounts.entrySet()) {
+    for (Map.Entry<Object, AtomicLong> entry :
+        (costBased ? callCosts : callCounts).entrySet()) {
       Object id = entry.getKey();
       AtomicLong value = entry.getValue();
 
@@ -322,12 +361,29 @@ private long getAndIncrement(Object identity) throws InterruptedException {
   }
 
   /**
-   * Given the number of occurrences, compute a scheduling decision.
+   * Add to the cost of an identity.
+   */
+  private void addCost(Object identity, long cost) {
+    AtomicLong value = callCosts.get(identity);
+    if (value == null) {
+      value = new AtomicLong(0);
+      AtomicLong otherValue = callCosts.putIfAbsent(identity, value);
+      if (otherValue != null) {
+        value = otherValue;
+      }
+    }
+    totalCost.addAndGet(cost);
+    value.addAndGet(cost);
+  }
+
+  /**
+   * Given the number of occurrences, or the cost if the scheduler is cost
+   * based, compute a scheduling decision.
    * @param occurrences how many occurrences
    * @return scheduling decision from 0 to numQueues - 1
    */
   private int computePriorityLevel(long occurrences) {
-    long totalCallSnapshot = totalCalls.get();
+    long totalCallSnapshot = costBased ? totalCost.get() : totalCalls.get();
 
     double proportion = 0;
     if (totalCallSnapshot > 0) {
@@ -365,6 +421,10 @@ private int cachedOrComputedPriorityLevel(Object identity) {
       }
 
       // Cache was no good, compute it
+      if (costBased) {
+        AtomicLong cost = callCosts.get(identity);
+        return computePriorityLevel(cost == null ? 0 : cost.get());
+      }
       return computePriorityLevel(occurrences);
     } catch (InterruptedException ie) {
       LOG.warn("Caught InterruptedException, returning low priority queue");
@@ -379,14 +439,21 @@ private int cachedOrComputedPriorityLevel(Object identity) {
    */
   @Override
   public int getPriorityLevel(Schedulable obj) {
-    // First get the identity
+    return cachedOrComputedPriorityLevel(getIdentity(obj));
+  }
+
+  @Override
+  public void addCost(Schedulable obj, long cost) {
+    addCost(getIdentity(obj), cost);
+  }
+
+  private String getIdentity(Schedulable obj) {
     String identity = this.identityProvider.makeIdentity(obj);
     if (identity == null) {
       // Identity provider did not handle this
       identity = DECAYSCHEDULER_UNKNOWN_IDENTITY;
     }
-
-    return cachedOrComputedPriorityLevel(identity);
+    return identity;
   }
 
   // For testing
@@ -418,6 +485,17 @@ public long getTotalCallSnapshot() {
     return totalCalls.get();
   }
 
+  @VisibleForTesting
+  public Map<Object, Long> getCallCostSnapshot() {
+    HashMap<Object, Long> snapshot = new HashMap<Object, Long>();
+
+    for (Map.Entry<Object, AtomicLong> entry : callCosts.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+
+    return Collections.unmodifiableMap(snapshot);
+  }
+
   /**
    * MetricsProxy is a singleton because we may init multiple schedulers and we
    * want to clean up resources when a new scheduler replaces the old one.
@@ -487,6 +565,26 @@ public long getTotalCallVolume() {
         return scheduler.getTotalCallVolume();
       }
     }
+
+    @Override
+    public String getCallCostSummary() {
+      DecayRpcScheduler scheduler = delegate.get();
+      if (scheduler == null) {
+        return "No Active Scheduler";
+      } else {
+        return scheduler.getCallCostSummary();
+      }
+    }
+
+    @Override
+    public long getTotalCallCost() {
+      DecayRpcScheduler scheduler = delegate.get();
+      if (scheduler == null) {
+        return -1;
+      } else {
+        return scheduler.getTotalCallCost();
+      }
+    }
   }
 
   public int getUniqueIdentityCount() {
@@ -519,4 +617,17 @@ public String getCallVolumeSummary() {
       return "Error: " + e.getMessage();
     }
   }
+
+  public String getCallCostSummary() {
+    try {
+      ObjectMapper om = new ObjectMapper();
+      return om.writeValueAsString(callCosts);
+    } catch (Exception e) {
+      return "Error: " + e.getMessage();
+    }
+  }
+
+  public long getTotalCallCost() {
+    return totalCost.get();
+  }
 }
@@ -27,4 +27,7 @@ public interface DecayRpcSchedulerMXBean {
   String getCallVolumeSummary();
   int getUniqueIdentityCount();
   long getTotalCallVolume();
+  // Get the decayed cost of the calls of each identity, and in total.
+  String getCallCostSummary();
+  long getTotalCallCost();
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+
+/**
+ * The DefaultHandlerPoolClassifier routes calls to handler pools by the
+ * protocol, the method or the user of the call, as configured per pool:
+ * <pre>
+ *   ipc.8020.handler.pools = service
+ *   ipc.8020.service.protocols = org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol
+ *   ipc.8020.service.methods = monitorHealth
+ *   ipc.8020.service.users = hdfs
+ * </pre>
+ * A call matching any of the lists of a pool goes to that pool; the pools
+ * are tried in the order they are listed in, and calls matching none of
+ * them go to the default pool.
+ */
+public class DefaultHandlerPoolClassifier implements HandlerPoolClassifier {
+  private static class Rule {
+    final String pool;
+    final Collection<String> protocols;
+    final Collection<String> methods;
+    final Collection<String> users;
+
+    Rule(String pool, String ns, Configuration conf) {
+      this.pool = pool;
+      final String prefix = ns + "." + pool + ".";
+      this.protocols = conf.getTrimmedStringCollection(
+          prefix + CommonConfigurationKeys.IPC_HANDLER_POOL_PROTOCOLS_KEY);
+      this.methods = conf.getTrimmedStringCollection(
+          prefix + CommonConfigurationKeys.IPC_HANDLER_POOL_METHODS_KEY);
+      this.users = conf.getTrimmedStringCollection(
+          prefix + CommonConfigurationKeys.IPC_HANDLER_POOL_USERS_KEY);
+    }
+
+    boolean matches(String protocol, String method, String user) {
+      return protocols.contains(protocol)
+          || (method != null && methods.contains(method))
+          || (user != null && users.contains(user));
+    }
+  }
+
+  private final List<Rule> rules = new ArrayList<Rule>();
+
+  public DefaultHandlerPoolClassifier(String ns, Configuration conf) {
+    for (String pool : conf.getTrimmedStrings(
+        ns + "." + CommonConfigurationKeys.IPC_HANDLER_POOLS_KEY)) {
+      rules.add(new Rule(pool, ns, conf));
+    }
+  }
+
+  @Override
+  public String getHandlerPool(String protocol, String method,
+      Schedulable obj) {
+    UserGroupInformation ugi = obj.getUserGroupInformation();
+    String user = ugi == null ? null : ugi.getShortUserName();
+    for (Rule rule : rules) {
+      if (rule.matches(protocol, method, user)) {
+        return rule.pool;
+      }
+    }
+    return null;
+  }
+}
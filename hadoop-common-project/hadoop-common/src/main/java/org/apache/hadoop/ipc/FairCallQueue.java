@@ -436,6 +436,13 @@ public long[] getOverflowedCalls() {
     return calls;
   }
 
+  /**
+   * Report the cost of a processed call to the scheduler.
+   */
+  public void addCost(E e, long cost) {
+    scheduler.addCost(e, cost);
+  }
+
   // For testing
   @VisibleForTesting
   public void setScheduler(RpcScheduler newScheduler) {
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * The HandlerPoolClassifier assigns the calls received by an RPC server to
+ * its named handler pools, so that calls of different kinds are queued and
+ * processed apart from each other.
+ *
+ * Implementations are created with a constructor taking the namespace of
+ * the server, such as "ipc.8020", and its Configuration, or else with a
+ * default constructor.
+ */
+@InterfaceAudience.Private
+public interface HandlerPoolClassifier {
+  /**
+   * Return the name of the handler pool to process a call in.
+   * @param protocol the name of the protocol called.
+   * @param method the name of the method called, or null if unknown.
+   * @param obj the schedulable call, identifying its user.
+   * @return the name of a handler pool of the server, or null to process
+   *         the call in the default pool.
+   */
+  public String getHandlerPool(String protocol, String method,
+      Schedulable obj);
+}
@@ -53,6 +53,9 @@
 import org.apache.htrace.TraceScope;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.BlockingService;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Descriptors.MethodDescriptor;
@@ -76,6 +79,22 @@ public class ProtobufRpcEngine implements RpcEngine {
 
   private static final ClientCache CLIENTS = new ClientCache();
 
+  private static final ThreadLocal<ListenableFuture<Message>>
+      ASYNC_RETURN_MESSAGE = new ThreadLocal<ListenableFuture<Message>>();
+
+  /**
+   * Get the future of the return message of the last call made by the
+   * current thread in the asynchronous mode of {@link Client}, and forget it.
+   *
+   * @return the future of the return message, or null if there is none
+   */
+  @InterfaceStability.Unstable
+  public static ListenableFuture<Message> getAsyncReturnMessage() {
+    ListenableFuture<Message> message = ASYNC_RETURN_MESSAGE.get();
+    ASYNC_RETURN_MESSAGE.remove();
+    return message;
+  }
+
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout) throws IOException {
@@ -93,14 +112,25 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth, null);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+      InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
+      SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
 
     final Invoker invoker = new Invoker(protocol, addr, ticket, conf, factory,
-        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth,
+        alignmentContext);
     return new ProtocolProxy<T>(protocol, (T) Proxy.newProxyInstance(
         protocol.getClassLoader(), new Class[]{protocol}, invoker), false);
   }
@@ -125,15 +155,18 @@ private static class Invoker implements RpcInvocationHandler {
     private final long clientProtocolVersion;
     private final String protocolName;
     private AtomicBoolean fallbackToSimpleAuth;
+    private AlignmentContext alignmentContext;
 
     private Invoker(Class<?> protocol, InetSocketAddress addr,
         UserGroupInformation ticket, Configuration conf, SocketFactory factory,
         int rpcTimeout, RetryPolicy connectionRetryPolicy,
-        AtomicBoolean fallbackToSimpleAuth) throws IOException {
+        AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+        throws IOException {
       this(protocol, Client.ConnectionId.getConnectionId(
           addr, protocol, ticket, rpcTimeout, connectionRetryPolicy, conf),
           conf, factory);
       this.fallbackToSimpleAuth = fallbackToSimpleAuth;
+      this.alignmentContext = alignmentContext;
     }
     
     /**
@@ -189,7 +222,7 @@ private RequestHeaderProto constructRpcRequestHeader(Method method) {
      * the server.
      */
     @Override
-    public Object invoke(Object proxy, Method method, Object[] args)
+    public Object invoke(Object proxy, final Method method, Object[] args)
         throws ServiceException {
       long startTime = 0;
       if (LOG.isDebugEnabled()) {
@@ -228,7 +261,8 @@ public Object invoke(Object proxy, Method method, Object[] args)
       try {
         val = (RpcResponseWrapper) client.call(RPC.RpcKind.RPC_PROTOCOL_BUFFER,
             new RpcRequestWrapper(rpcRequestHeader, theRequest), remoteId,
-            fallbackToSimpleAuth);
+            RPC.RPC_SERVICE_CLASS_DEFAULT, fallbackToSimpleAuth,
+            alignmentContext);
 
       } catch (Throwable e) {
         if (LOG.isTraceEnabled()) {
@@ -245,11 +279,33 @@ public Object invoke(Object proxy, Method method, Object[] args)
         if (traceScope != null) traceScope.close();
       }
 
+      if (Client.isAsynchronousMode()) {
+        final ListenableFuture<Writable> response =
+            Client.getAsyncRpcResponse();
+        ASYNC_RETURN_MESSAGE.set(Futures.transform(response,
+            new AsyncFunction<Writable, Message>() {
+              @Override
+              public ListenableFuture<Message> apply(Writable value) {
+                try {
+                  return Futures.immediateFuture(getReturnMessage(method,
+                      (RpcResponseWrapper) value));
+                } catch (ServiceException e) {
+                  return Futures.immediateFailedFuture(e.getCause());
+                }
+              }
+            }));
+        return null;
+      }
+
       if (LOG.isDebugEnabled()) {
         long callTime = Time.now() - startTime;
         LOG.debug("Call: " + method.getName() + " took " + callTime + "ms");
       }
-      
+      return getReturnMessage(method, val);
+    }
+
+    private Message getReturnMessage(Method method, RpcResponseWrapper val)
+        throws ServiceException {
       Message prototype = null;
       try {
         prototype = getReturnProtoType(method);
@@ -302,6 +358,12 @@ public ConnectionId getConnectionId() {
 
   interface RpcWrapper extends Writable {
     int getLength();
+
+    /**
+     * Serialize the messages the same way as {@link #write(DataOutput)},
+     * straight into the given stream.
+     */
+    void writeTo(CodedOutputStream out) throws IOException;
   }
   /**
    * Wrapper for Protocol Buffer Requests
@@ -332,6 +394,14 @@ public void write(DataOutput out) throws IOException {
       theRequest.writeDelimitedTo(os);
     }
 
+    @Override
+    public void writeTo(CodedOutputStream out) throws IOException {
+      out.writeRawVarint32(requestHeader.getSerializedSize());
+      requestHeader.writeTo(out);
+      out.writeRawVarint32(theRequest.getSerializedSize());
+      theRequest.writeTo(out);
+    }
+
     @Override
     public void readFields(DataInput in) throws IOException {
       requestHeader = parseHeaderFrom(readVarintBytes(in));
@@ -376,7 +446,7 @@ public int getLength() {
     }
   }
   
-  private static class RpcRequestWrapper
+  static class RpcRequestWrapper
   extends RpcMessageWithHeader<RequestHeaderProto> {
     @SuppressWarnings("unused")
     public RpcRequestWrapper() {}
@@ -390,6 +460,10 @@ public RpcRequestWrapper(
     RequestHeaderProto parseHeaderFrom(byte[] bytes) throws IOException {
       return RequestHeaderProto.parseFrom(bytes);
     }
+
+    RequestHeaderProto getRequestHeader() {
+      return requestHeader;
+    }
     
     @Override
     public String toString() {
@@ -467,6 +541,12 @@ public void write(DataOutput out) throws IOException {
       theResponse.writeDelimitedTo(os);   
     }
 
+    @Override
+    public void writeTo(CodedOutputStream out) throws IOException {
+      out.writeRawVarint32(theResponse.getSerializedSize());
+      theResponse.writeTo(out);
+    }
+
     @Override
     public void readFields(DataInput in) throws IOException {
       int length = ProtoUtil.readRawVarint32(in);
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.ipc.metrics.RpcMetrics;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A pool of the buffers an RPC server reads requests into and serializes
+ * responses into.
+ * <p>
+ * The buffers are heap buffers in size classes of powers of two, from
+ * {@link #MIN_BUFFER_SIZE} up to a maximum size. A buffer is handed out with
+ * its limit set to the requested size, and returned to the pool of its size
+ * class once the request has been decoded or the response written. Each
+ * size class keeps at most an equal share of the capacity of the pool; the
+ * buffers returned beyond it, and those larger than the largest size class,
+ * are left to the garbage collector.
+ * <p>
+ * A disabled pool allocates a buffer of the exact size for every request.
+ * The buffers allocated are counted in the {@link RpcMetrics} either way.
+ */
+@InterfaceAudience.Private
+class RpcBufferPool {
+  /** The size of the smallest size class. */
+  static final int MIN_BUFFER_SIZE = 512;
+  private static final int MIN_SHIFT =
+      Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+
+  private final ArrayBlockingQueue<ByteBuffer>[] sizeClasses;
+  private final RpcMetrics metrics;
+
+  /**
+   * @param enabled whether buffers are pooled at all
+   * @param maxBufferSize the size of the largest buffer pooled, rounded up
+   *                      to a power of two
+   * @param capacity the total size of the buffers kept in the pool
+   * @param metrics the metrics the allocations are counted in, or null
+   */
+  @SuppressWarnings("unchecked")
+  RpcBufferPool(boolean enabled, int maxBufferSize, long capacity,
+      RpcMetrics metrics) {
+    Preconditions.checkArgument(maxBufferSize > 0,
+        "maxBufferSize must be positive: %s", maxBufferSize);
+    final int numClasses = enabled ? sizeClass(maxBufferSize) + 1 : 0;
+    this.sizeClasses = new ArrayBlockingQueue[numClasses];
+    for (int i = 0; i < numClasses; i++) {
+      final long buffers = capacity / numClasses / classSize(i);
+      sizeClasses[i] = new ArrayBlockingQueue<ByteBuffer>(
+          (int) Math.max(1, Math.min(buffers, Integer.MAX_VALUE)));
+    }
+    this.metrics = metrics;
+  }
+
+  /** Get the index of the smallest size class holding the given size. */
+  private static int sizeClass(int size) {
+    if (size <= MIN_BUFFER_SIZE) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+  }
+
+  private static int classSize(int sizeClass) {
+    return MIN_BUFFER_SIZE << sizeClass;
+  }
+
+  /**
+   * Get a buffer with room for the given number of bytes.
+   * @param size the number of bytes
+   * @return a buffer positioned at 0, with its limit set to the size
+   */
+  ByteBuffer getBuffer(int size) {
+    final int sizeClass = sizeClass(size);
+    ByteBuffer buffer = null;
+    if (sizeClass < sizeClasses.length) {
+      buffer = sizeClasses[sizeClass].poll();
+      if (buffer != null) {
+        if (metrics != null) {
+          metrics.incrBufferPoolHits();
+        }
+        buffer.clear();
+      } else {
+        buffer = allocate(classSize(sizeClass));
+      }
+    } else {
+      buffer = allocate(size);
+    }
+    buffer.limit(size);
+    return buffer;
+  }
+
+  private ByteBuffer allocate(int size) {
+    if (metrics != null) {
+      metrics.incrBufferAllocations(size);
+    }
+    return ByteBuffer.allocate(size);
+  }
+
+  /**
+   * Return a buffer got from this pool. The buffer must not be used in any
+   * way afterwards.
+   */
+  void returnBuffer(ByteBuffer buffer) {
+    final int sizeClass = sizeClass(buffer.capacity());
+    if (sizeClass < sizeClasses.length
+        && buffer.capacity() == classSize(sizeClass)) {
+      sizeClasses[sizeClass].offer(buffer);
+    }
+  }
+
+  /** Get the number of buffers pooled with the given capacity. */
+  @VisibleForTesting
+  int countBuffersOfSize(int capacity) {
+    final int sizeClass = sizeClass(capacity);
+    if (sizeClass < sizeClasses.length
+        && capacity == classSize(sizeClass)) {
+      return sizeClasses[sizeClass].size();
+    }
+    return 0;
+  }
+}
@@ -26,4 +26,11 @@ public interface RpcScheduler {
    * Returns priority level greater than zero as a hint for scheduling.
    */
   int getPriorityLevel(Schedulable obj);
+
+  /**
+   * Report the cost of a call that has been processed, such as the time it
+   * took or the time it held a lock, to be taken into account for later
+   * scheduling decisions.
+   */
+  void addCost(Schedulable obj, long cost);
 }
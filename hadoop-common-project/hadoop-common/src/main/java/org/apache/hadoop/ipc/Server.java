@@ -29,6 +29,7 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.BindException;
 import java.net.InetAddress;
@@ -51,18 +52,22 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.security.sasl.Sasl;
@@ -88,6 +93,7 @@
 import org.apache.hadoop.ipc.RPC.RpcInvoker;
 import org.apache.hadoop.ipc.RPC.VersionMismatch;
 import org.apache.hadoop.ipc.metrics.RpcDetailedMetrics;
+import org.apache.hadoop.ipc.metrics.RpcHandlerPoolMetrics;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
 import org.apache.hadoop.ipc.protobuf.IpcConnectionContextProtos.IpcConnectionContextProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcKindProto;
@@ -195,11 +201,6 @@ boolean isTerse(Class<?> t) {
     "It looks like you are making an HTTP request to a Hadoop IPC port. " +
     "This is not the correct port for the web interface on this daemon.\r\n";
 
-  /**
-   * Initial and max size of response buffer
-   */
-  static int INITIAL_RESP_BUF_SIZE = 10240;
-  
   static class RpcKindMapValue {
     final Class<? extends Writable> rpcRequestWrapperClass;
     final RpcInvoker rpcInvoker;
@@ -357,6 +358,20 @@ public static boolean isRpcInvocation() {
     return CurCall.get() != null;
   }
 
+  /**
+   * Add to the cost of the current RPC call, in microseconds, e.g. the time
+   * it held a lock of the server. The cost of a call is reported to the
+   * scheduler of the call queue once it has been processed; a call with no
+   * cost added while it is processed costs the time it took. Does nothing
+   * when not invoked inside an RPC.
+   */
+  public static void addCallCost(long cost) {
+    Call call = CurCall.get();
+    if (call != null) {
+      call.cost = Math.max(call.cost, 0) + cost;
+    }
+  }
+
   private String bindAddress; 
   private int port;                               // port we listen on
   private int handlerCount;                       // number of handler threads
@@ -376,10 +391,18 @@ public static boolean isRpcInvocation() {
   private final int maxRespSize;
   private int socketSendBufferSize;
   private final int maxDataLength;
+  private final RpcBufferPool bufferPool;
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
 
   volatile private boolean running = true;         // true while server runs
   private CallQueueManager<Call> callQueue;
+  // the named handler pools besides the default one, by name
+  private final Map<String, HandlerPool> handlerPools =
+      new LinkedHashMap<String, HandlerPool>();
+  private HandlerPoolClassifier handlerPoolClassifier;
+  private volatile AlignmentContext alignmentContext;
+  // holds the calls waiting for the server to reach their client's state
+  private CallAligner callAligner = null;
 
   // maintains the set of client connections and handles idle timeouts
   private ConnectionManager connectionManager;
@@ -557,6 +580,54 @@ public synchronized void refreshCallQueue(Configuration conf) {
     // Create the next queue
     String prefix = getQueueClassPrefix();
     callQueue.swapQueue(getQueueClass(prefix, conf), maxQueueSize, prefix, conf);
+    for (HandlerPool pool : handlerPools.values()) {
+      pool.callQueue.swapQueue(getQueueClass(pool.prefix, conf),
+          pool.maxQueueSize, pool.prefix, conf);
+    }
+  }
+
+  /**
+   * Get the classifier routing calls to the handler pools configured under
+   * the given prefix.
+   */
+  static HandlerPoolClassifier getHandlerPoolClassifier(String prefix,
+      Configuration conf) {
+    Class<? extends HandlerPoolClassifier> theClass = conf.getClass(
+        prefix + "." + CommonConfigurationKeys.IPC_HANDLER_POOL_CLASSIFIER_KEY,
+        DefaultHandlerPoolClassifier.class, HandlerPoolClassifier.class);
+    try {
+      Constructor<? extends HandlerPoolClassifier> ctor =
+          theClass.getDeclaredConstructor(String.class, Configuration.class);
+      return ctor.newInstance(prefix, conf);
+    } catch (NoSuchMethodException e) {
+      return ReflectionUtils.newInstance(theClass, conf);
+    } catch (Exception e) {
+      throw new RuntimeException(theClass.getName()
+          + " could not be constructed.", e);
+    }
+  }
+
+  /**
+   * Get the call queue of the handler pool the classifier routes a call to.
+   */
+  private CallQueueManager<Call> getCallQueue(Call call) {
+    if (handlerPoolClassifier == null) {
+      return callQueue;
+    }
+    String protocol = call.connection.protocolName;
+    String method = null;
+    if (call.rpcRequest instanceof ProtobufRpcEngine.RpcRequestWrapper) {
+      ProtobufRpcEngine.RpcRequestWrapper wrapper =
+          (ProtobufRpcEngine.RpcRequestWrapper) call.rpcRequest;
+      protocol = wrapper.getRequestHeader().getDeclaringClassProtocolName();
+      method = wrapper.getRequestHeader().getMethodName();
+    } else if (call.rpcRequest instanceof WritableRpcEngine.Invocation) {
+      method = ((WritableRpcEngine.Invocation) call.rpcRequest)
+          .getMethodName();
+    }
+    String name = handlerPoolClassifier.getHandlerPool(protocol, method, call);
+    HandlerPool pool = name == null ? null : handlerPools.get(name);
+    return pool == null ? callQueue : pool.callQueue;
   }
 
   /**
@@ -579,9 +650,19 @@ public static class Call implements Schedulable {
     private long timestamp;               // time received when response is null
                                           // time served when response is not null
     private ByteBuffer rpcResponse;       // the response for this call
+    private boolean pooledResponse;       // if the response is from the pool
     private final RPC.RpcKind rpcKind;
     private final byte[] clientId;
     private final Span traceSpan; // the tracing span on the server side
+    // number of parties, the handler included, that have to agree before
+    // the response is sent; negative once the response has been aborted
+    private final AtomicInteger responseWaitCount = new AtomicInteger(1);
+    // the state id the client has seen, if the call has to wait for this
+    // server to catch up to it before it is processed
+    private long clientStateId = Long.MIN_VALUE;
+    private boolean isCallCoordinated = false;
+    // the cost added by the server while processing the call, -1 if none
+    private long cost = -1;
 
     public Call(int id, int retryCount, Writable param, 
         Connection connection) {
@@ -615,6 +696,70 @@ public String toString() {
 
     public void setResponse(ByteBuffer response) {
       this.rpcResponse = response;
+      this.pooledResponse = false;
+    }
+
+    private void setPooledResponse(ByteBuffer response) {
+      this.rpcResponse = response;
+      this.pooledResponse = true;
+    }
+
+    /**
+     * Defer sending the response of this call until {@link #sendResponse()}
+     * has been called once more. This allows a handler to return while the
+     * call is completed elsewhere, e.g. while its edits are being synced.
+     * Must be called by the handler thread that is processing the call.
+     */
+    @InterfaceStability.Unstable
+    public void postponeResponse() {
+      responseWaitCount.incrementAndGet();
+    }
+
+    /**
+     * Send the response, unless it has been postponed by someone that has
+     * not yet agreed to send it, or it has already been aborted.
+     */
+    @InterfaceStability.Unstable
+    public void sendResponse() throws IOException {
+      if (responseWaitCount.decrementAndGet() == 0) {
+        connection.sendResponse(this);
+      }
+    }
+
+    /**
+     * Replace the response with the given error and send it immediately.
+     * Does nothing if the response has already been sent or aborted.
+     */
+    @InterfaceStability.Unstable
+    public void abortResponse(Throwable t) throws IOException {
+      if (responseWaitCount.getAndSet(-1) > 0) {
+        connection.abortResponse(this, t);
+      }
+    }
+
+    boolean isResponseAborted() {
+      return responseWaitCount.get() < 0;
+    }
+
+    public long getClientStateId() {
+      return clientStateId;
+    }
+
+    public void setClientStateId(long stateId) {
+      this.clientStateId = stateId;
+    }
+
+    public boolean isCallCoordinated() {
+      return isCallCoordinated;
+    }
+
+    public void markCallCoordinated(boolean flag) {
+      this.isCallCoordinated = flag;
+    }
+
+    /** @return the cost added while processing the call, -1 if none */
+    public long getCost() {
+      return cost;
     }
 
     // For Schedulable
@@ -1060,7 +1205,10 @@ private boolean processResponse(LinkedList<Call> responseQueue,
             return true;
           }
           if (!call.rpcResponse.hasRemaining()) {
-            //Clear out the response buffer so it can be collected
+            //Clear out the response buffer so it can be reused or collected
+            if (call.pooledResponse) {
+              bufferPool.returnBuffer(call.rpcResponse);
+            }
             call.rpcResponse = null;
             call.connection.decRpcCount();
             if (numElements == 1) {    // last call fully processes.
@@ -1118,6 +1266,12 @@ private boolean processResponse(LinkedList<Call> responseQueue,
     //
     void doRespond(Call call) throws IOException {
       synchronized (call.connection.responseQueue) {
+        // SASL enforces its own message ordering, so responses are wrapped
+        // in the order they are queued, which may differ from the order
+        // they were set up in if some of them were postponed.
+        if (call.connection.useWrap) {
+          wrapWithSasl(call);
+        }
         call.connection.responseQueue.addLast(call);
         if (call.connection.responseQueue.size() == 1) {
           processResponse(call.connection.responseQueue, true);
@@ -1225,11 +1379,9 @@ public class Connection {
     // Fake 'call' for failed authorization response
     private final Call authFailedCall = new Call(AUTHORIZATION_FAILED_CALL_ID,
         RpcConstants.INVALID_RETRY_COUNT, null, this);
-    private ByteArrayOutputStream authFailedResponse = new ByteArrayOutputStream();
     
     private final Call saslCall = new Call(AuthProtocol.SASL.callId,
         RpcConstants.INVALID_RETRY_COUNT, null, this);
-    private final ByteArrayOutputStream saslResponse = new ByteArrayOutputStream();
     
     private boolean sentNegotiate = false;
     private boolean useWrap = false;
@@ -1544,14 +1696,14 @@ private RpcSaslProto buildSaslResponse(SaslState state, byte[] replyToken) {
     }
     
     private void doSaslReply(Message message) throws IOException {
-      setupResponse(saslResponse, saslCall,
+      setupResponse(saslCall,
           RpcStatusProto.SUCCESS, null,
           new RpcResponseWrapper(message), null, null);
       responder.doRespond(saslCall);
     }
     
     private void doSaslReply(Exception ioe) throws IOException {
-      setupResponse(authFailedResponse, authFailedCall,
+      setupResponse(authFailedCall,
           RpcStatusProto.FATAL, RpcErrorCodeProto.FATAL_UNAUTHORIZED,
           null, ioe.getClass().getName(), ioe.getLocalizedMessage());
       responder.doRespond(authFailedCall);
@@ -1661,7 +1813,7 @@ public int readAndProcess()
           dataLength = dataLengthBuffer.getInt();
           checkDataLength(dataLength);
           // Set buffer for reading EXACTLY the RPC-packet length and no more.
-          data = ByteBuffer.allocate(dataLength);
+          data = bufferPool.getBuffer(dataLength);
         }
         // Now read the RPC packet
         count = channelRead(channel, data);
@@ -1670,8 +1822,13 @@ public int readAndProcess()
           dataLengthBuffer.clear(); // to read length of future rpc packets
           data.flip();
           boolean isHeaderRead = connectionContextRead;
-          processOneRpc(data.array());
-          data = null;
+          try {
+            processOneRpc(data);
+          } finally {
+            // the request has been decoded, or failed to be
+            bufferPool.returnBuffer(data);
+            data = null;
+          }
           // the last rpc-request we processed could have simply been the
           // connectionContext; if so continue to read the first RPC.
           if (!isHeaderRead) {
@@ -1760,7 +1917,7 @@ private void setupBadVersionResponse(int clientVersion) throws IOException {
         // Versions >>9  understand the normal response
         Call fakeCall = new Call(-1, RpcConstants.INVALID_RETRY_COUNT, null,
             this);
-        setupResponse(buffer, fakeCall, 
+        setupResponse(fakeCall,
             RpcStatusProto.FATAL, RpcErrorCodeProto.FATAL_VERSION_MISMATCH,
             null, VersionMismatch.class.getName(), errMsg);
         responder.doRespond(fakeCall);
@@ -1875,7 +2032,7 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
         if (unwrappedData == null) {
           unwrappedDataLengthBuffer.flip();
           int unwrappedDataLength = unwrappedDataLengthBuffer.getInt();
-          unwrappedData = ByteBuffer.allocate(unwrappedDataLength);
+          unwrappedData = bufferPool.getBuffer(unwrappedDataLength);
         }
 
         count = channelRead(ch, unwrappedData);
@@ -1885,8 +2042,12 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
         if (unwrappedData.remaining() == 0) {
           unwrappedDataLengthBuffer.clear();
           unwrappedData.flip();
-          processOneRpc(unwrappedData.array());
-          unwrappedData = null;
+          try {
+            processOneRpc(unwrappedData);
+          } finally {
+            bufferPool.returnBuffer(unwrappedData);
+            unwrappedData = null;
+          }
         }
       }
     }
@@ -1902,7 +2063,8 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
      * if SASL then SASL has been established and the buf we are passed
      * has been unwrapped from SASL.
      * 
-     * @param buf - contains the RPC request header and the rpc request
+     * @param buf - contains the RPC request header and the rpc request, from
+     *        its position to its limit
      * @throws IOException - internal error that should not be returned to
      *         client, typically failure to respond to client
      * @throws WrappedRpcServerException - an exception that is sent back to the
@@ -1910,13 +2072,13 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
      *         Listener thread
      * @throws InterruptedException
      */    
-    private void processOneRpc(byte[] buf)
+    private void processOneRpc(ByteBuffer buf)
         throws IOException, WrappedRpcServerException, InterruptedException {
       int callId = -1;
       int retry = RpcConstants.INVALID_RETRY_COUNT;
       try {
-        final DataInputStream dis =
-            new DataInputStream(new ByteArrayInputStream(buf));
+        final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+            buf.array(), buf.arrayOffset() + buf.position(), buf.remaining()));
         final RpcRequestHeaderProto header =
             decodeProtobufFromStream(RpcRequestHeaderProto.newBuilder(), dis);
         callId = header.getCallId();
@@ -1938,7 +2100,7 @@ private void processOneRpc(byte[] buf)
       } catch (WrappedRpcServerException wrse) { // inform client of error
         Throwable ioe = wrse.getCause();
         final Call call = new Call(callId, retry, null, this);
-        setupResponse(authFailedResponse, call,
+        setupResponse(call,
             RpcStatusProto.FATAL, wrse.getRpcErrorCodeProto(), null,
             ioe.getClass().getName(), ioe.getMessage());
         responder.doRespond(call);
@@ -2028,23 +2190,43 @@ private void processRpcRequest(RpcRequestHeaderProto header,
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceSpan);
 
-      if (callQueue.isClientBackoffEnabled()) {
+      if (alignmentContext != null
+          && rpcRequest instanceof ProtobufRpcEngine.RpcRequestWrapper) {
+        ProtobufRpcEngine.RpcRequestWrapper wrapper =
+            (ProtobufRpcEngine.RpcRequestWrapper) rpcRequest;
+        if (alignmentContext.isCoordinatedCall(
+            wrapper.getRequestHeader().getDeclaringClassProtocolName(),
+            wrapper.getRequestHeader().getMethodName())) {
+          try {
+            call.setClientStateId(
+                alignmentContext.receiveRequestState(header));
+          } catch (IOException ioe) {
+            throw new WrappedRpcServerException(
+                RpcErrorCodeProto.ERROR_RPC_SERVER, ioe);
+          }
+          call.markCallCoordinated(true);
+        }
+      }
+
+      final CallQueueManager<Call> queue = getCallQueue(call);
+      if (queue.isClientBackoffEnabled()) {
         // if RPC queue is full, we will ask the RPC client to back off by
         // throwing RetriableException. Whether RPC client will honor
         // RetriableException and retry depends on client ipc retry policy.
         // For example, FailoverOnNetworkExceptionRetry handles
         // RetriableException.
-        queueRequestOrAskClientToBackOff(call);
+        queueRequestOrAskClientToBackOff(call, queue);
       } else {
-        callQueue.put(call);              // queue the call; maybe blocked here
+        queue.put(call);                  // queue the call; maybe blocked here
       }
       incRpcCount();  // Increment the rpc count
     }
 
-    private void queueRequestOrAskClientToBackOff(Call call)
+    private void queueRequestOrAskClientToBackOff(Call call,
+        CallQueueManager<Call> queue)
         throws WrappedRpcServerException, InterruptedException {
       // If rpc queue is full, we will ask the client to back off.
-      boolean isCallQueued = callQueue.offer(call);
+      boolean isCallQueued = queue.offer(call);
       if (!isCallQueued) {
         rpcMetrics.incrClientBackoff();
         RetriableException retriableException =
@@ -2162,6 +2344,21 @@ public void setServiceClass(int serviceClass) {
       this.serviceClass = serviceClass;
     }
 
+    /** Queue the response of a call that has completed. */
+    private void sendResponse(Call call) throws IOException {
+      responder.doRespond(call);
+    }
+
+    /** Replace the response of a call with an error and queue it. */
+    private void abortResponse(Call call, Throwable t) throws IOException {
+      synchronized (responseQueue) {
+        setupResponse(call,
+            RpcStatusProto.ERROR, RpcErrorCodeProto.ERROR_APPLICATION, null,
+            t.getClass().getName(), StringUtils.stringifyException(t));
+        responder.doRespond(call);
+      }
+    }
+
     private synchronized void close() {
       disposeSasl();
       data = null;
@@ -2178,23 +2375,150 @@ private synchronized void close() {
     }
   }
 
+  /**
+   * A named pool of handlers, processing the calls the
+   * {@link HandlerPoolClassifier} routes to it from a call queue of its own,
+   * so that they do not wait behind the calls of the other pools. The
+   * settings of the pool, including those of its call queue, are under its
+   * own prefix.
+   */
+  private class HandlerPool {
+    private final String name;
+    private final String prefix;
+    private final int handlerCount;
+    private final int maxQueueSize;
+    private final CallQueueManager<Call> callQueue;
+    private RpcHandlerPoolMetrics metrics;
+    private Handler[] handlers;
+
+    HandlerPool(String name, String prefix, Configuration conf) {
+      this.name = name;
+      this.prefix = prefix;
+      this.handlerCount = conf.getInt(prefix + "."
+          + CommonConfigurationKeys.IPC_HANDLER_POOL_HANDLER_COUNT_KEY,
+          CommonConfigurationKeys.IPC_HANDLER_POOL_HANDLER_COUNT_DEFAULT);
+      this.maxQueueSize = handlerCount * conf.getInt(
+          CommonConfigurationKeys.IPC_SERVER_HANDLER_QUEUE_SIZE_KEY,
+          CommonConfigurationKeys.IPC_SERVER_HANDLER_QUEUE_SIZE_DEFAULT);
+      this.callQueue = new CallQueueManager<Call>(getQueueClass(prefix, conf),
+          getClientBackoffEnable(prefix, conf), maxQueueSize, prefix, conf);
+    }
+  }
+
+  /**
+   * Holds the coordinated calls whose client has seen a later state than
+   * the server, off the call queues, and puts them back on their queues
+   * once the state of the server has caught up, as the
+   * {@link AlignmentContext} signals it.
+   */
+  private class CallAligner extends Thread {
+    /**
+     * The longest wait for the state to advance before checking it again,
+     * in case a signal was missed.
+     */
+    private static final long MAX_WAIT_MS = 1000;
+
+    private final PriorityQueue<Call> waiting = new PriorityQueue<Call>(16,
+        new Comparator<Call>() {
+          @Override
+          public int compare(Call c1, Call c2) {
+            return Long.compare(c1.getClientStateId(), c2.getClientStateId());
+          }
+        });
+
+    CallAligner() {
+      this.setDaemon(true);
+      this.setName("IPC Server call aligner on " + port);
+    }
+
+    /**
+     * Hold back a call until the server reaches the state of its client.
+     * @return false if too many calls are held back already
+     */
+    synchronized boolean hold(Call call) {
+      if (waiting.size() >= maxQueueSize) {
+        return false;
+      }
+      waiting.add(call);
+      notify();
+      return true;
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        try {
+          synchronized (this) {
+            while (waiting.isEmpty()) {
+              wait();
+            }
+          }
+          final long stateId = alignmentContext.getLastSeenStateId();
+          for (Call call : release(stateId)) {
+            if (!getCallQueue(call).offer(call)) {
+              abort(call);
+            }
+          }
+          alignmentContext.waitForStateIdAbove(stateId, MAX_WAIT_MS);
+        } catch (InterruptedException e) {
+          if (running) {
+            LOG.info(getName() + " unexpectedly interrupted", e);
+          }
+          break;
+        }
+      }
+      synchronized (this) {
+        waiting.clear();
+      }
+    }
+
+    /** @return the calls the server has reached the state of */
+    private synchronized List<Call> release(long stateId) {
+      final List<Call> released = new ArrayList<Call>();
+      while (!waiting.isEmpty()
+          && waiting.peek().getClientStateId() <= stateId) {
+        released.add(waiting.poll());
+      }
+      return released;
+    }
+
+    private void abort(Call call) {
+      try {
+        call.abortResponse(new RetriableException("Server is too busy."));
+      } catch (IOException e) {
+        LOG.info(getName() + ": failed to abort " + call, e);
+      }
+    }
+  }
+
   /** Handles queued calls . */
   private class Handler extends Thread {
+    private final CallQueueManager<Call> queue;
+    private final RpcHandlerPoolMetrics poolMetrics; // null for default pool
+
     public Handler(int instanceNumber) {
       this.setDaemon(true);
       this.setName("IPC Server handler "+ instanceNumber + " on " + port);
+      this.queue = callQueue;
+      this.poolMetrics = null;
+    }
+
+    Handler(int instanceNumber, HandlerPool pool) {
+      this.setDaemon(true);
+      this.setName("IPC Server " + pool.name + " handler " + instanceNumber
+          + " on " + port);
+      this.queue = pool.callQueue;
+      this.poolMetrics = pool.metrics;
     }
 
     @Override
     public void run() {
       LOG.debug(Thread.currentThread().getName() + ": starting");
       SERVER.set(Server.this);
-      ByteArrayOutputStream buf = 
-        new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
       while (running) {
         TraceScope traceScope = null;
         try {
-          final Call call = callQueue.take(); // pop the queue; maybe blocked here
+          final Call call = queue.take(); // pop the queue; maybe blocked here
           if (LOG.isDebugEnabled()) {
             LOG.debug(Thread.currentThread().getName() + ": " + call + " for RpcKind " + call.rpcKind);
           }
@@ -2202,6 +2526,17 @@ public void run() {
             LOG.info(Thread.currentThread().getName() + ": skipped " + call);
             continue;
           }
+          if (callAligner != null && call.isCallCoordinated() &&
+              call.getClientStateId() > alignmentContext.getLastSeenStateId()) {
+            // The server has not caught up with the state the client has
+            // seen yet; hold the call back until it has.
+            if (!callAligner.hold(call)) {
+              call.abortResponse(new RetriableException(
+                  "Server is too busy to wait for state "
+                  + call.getClientStateId()));
+            }
+            continue;
+          }
           String errorClass = null;
           String error = null;
           RpcStatusProto returnStatus = RpcStatusProto.SUCCESS;
@@ -2209,6 +2544,8 @@ public void run() {
           Writable value = null;
 
           CurCall.set(call);
+          final long startNanos = System.nanoTime();
+          final long startTime = Time.now();
           if (call.traceSpan != null) {
             traceScope = Trace.continueSpan(call.traceSpan);
             traceScope.getSpan().addTimelineAnnotation("called");
@@ -2267,22 +2604,26 @@ public Writable run() throws Exception {
             }
           }
           CurCall.set(null);
+          queue.addCost(call, Math.max(1, call.cost >= 0 ? call.cost :
+              TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos)));
+          if (poolMetrics != null) {
+            poolMetrics.addRpcQueueTime((int) (startTime - call.timestamp));
+            poolMetrics.addRpcProcessingTime((int) (Time.now() - startTime));
+          }
           synchronized (call.connection.responseQueue) {
-            // setupResponse() needs to be sync'ed together with 
-            // responder.doResponse() since setupResponse may use
-            // SASL to encrypt response data and SASL enforces
-            // its own message ordering.
-            setupResponse(buf, call, returnStatus, detailedErr, 
-                value, errorClass, error);
-            
-            // Discard the large buf and reset it back to smaller size 
-            // to free up heap
-            if (buf.size() > maxRespSize) {
-              LOG.warn("Large response size " + buf.size() + " for call "
-                  + call.toString());
-              buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+            // An aborted call already has its error response, which must
+            // not be replaced while the responder may be writing it.
+            if (!call.isResponseAborted()) {
+              setupResponse(call, returnStatus, detailedErr,
+                  value, errorClass, error);
+
+              if (call.rpcResponse.limit() > maxRespSize) {
+                LOG.warn("Large response size " + call.rpcResponse.limit()
+                    + " for call " + call.toString());
+              }
             }
-            responder.doRespond(call);
+            // The response is sent now, unless the call postponed it.
+            call.sendResponse();
           }
         } catch (InterruptedException e) {
           if (running) {                          // unexpected -- log it
@@ -2382,6 +2723,14 @@ protected Server(String bindAddress, int port,
     final String prefix = getQueueClassPrefix();
     this.callQueue = new CallQueueManager<Call>(getQueueClass(prefix, conf),
         getClientBackoffEnable(prefix, conf), maxQueueSize, prefix, conf);
+    for (String name : conf.getTrimmedStrings(
+        prefix + "." + CommonConfigurationKeys.IPC_HANDLER_POOLS_KEY)) {
+      handlerPools.put(name,
+          new HandlerPool(name, prefix + "." + name, conf));
+    }
+    if (!handlerPools.isEmpty()) {
+      this.handlerPoolClassifier = getHandlerPoolClassifier(prefix, conf);
+    }
 
     this.secretManager = (SecretManager<TokenIdentifier>) secretManager;
     this.authorize = 
@@ -2397,7 +2746,21 @@ protected Server(String bindAddress, int port,
     this.port = listener.getAddress().getPort();    
     connectionManager = new ConnectionManager();
     this.rpcMetrics = RpcMetrics.create(this, conf);
+    this.bufferPool = new RpcBufferPool(
+        conf.getBoolean(
+            CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_KEY,
+            CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_DEFAULT),
+        conf.getInt(
+            CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY,
+            CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_DEFAULT),
+        conf.getLong(
+            CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_CAPACITY_KEY,
+            CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_CAPACITY_DEFAULT),
+        rpcMetrics);
     this.rpcDetailedMetrics = RpcDetailedMetrics.create(this.port);
+    for (HandlerPool pool : handlerPools.values()) {
+      pool.metrics = RpcHandlerPoolMetrics.create(this, pool.name);
+    }
     this.tcpNoDelay = conf.getBoolean(
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_KEY,
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_DEFAULT);
@@ -2471,9 +2834,10 @@ private void closeConnection(Connection connection) {
   }
   
   /**
-   * Setup response for the IPC Call.
+   * Setup response for the IPC Call. The response is serialized into a
+   * buffer from the buffer pool, which is returned to the pool once the
+   * response has been written.
    * 
-   * @param responseBuf buffer to serialize the response into
    * @param call {@link Call} to which we are setting up the response
    * @param status of the IPC call
    * @param rv return value for the IPC Call, if the call was successful
@@ -2481,12 +2845,10 @@ private void closeConnection(Connection connection) {
    * @param error error message, if the call failed
    * @throws IOException
    */
-  private void setupResponse(ByteArrayOutputStream responseBuf,
-                             Call call, RpcStatusProto status, RpcErrorCodeProto erCode,
-                             Writable rv, String errorClass, String error) 
+  private void setupResponse(Call call, RpcStatusProto status,
+                             RpcErrorCodeProto erCode, Writable rv,
+                             String errorClass, String error)
   throws IOException {
-    responseBuf.reset();
-    DataOutputStream out = new DataOutputStream(responseBuf);
     RpcResponseHeaderProto.Builder headerBuilder =  
         RpcResponseHeaderProto.newBuilder();
     headerBuilder.setClientId(ByteString.copyFrom(call.clientId));
@@ -2494,55 +2856,76 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (alignmentContext != null) {
+      alignmentContext.updateResponseState(headerBuilder);
+    }
 
+    final ByteBuffer response;
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
-      final int headerLen = header.getSerializedSize();
-      int fullLength  = CodedOutputStream.computeRawVarint32Size(headerLen) +
-          headerLen;
+      ByteBuffer buf = null;
       try {
         if (rv instanceof ProtobufRpcEngine.RpcWrapper) {
+          // serialize the messages straight into the response
           ProtobufRpcEngine.RpcWrapper resWrapper = 
               (ProtobufRpcEngine.RpcWrapper) rv;
-          fullLength += resWrapper.getLength();
-          out.writeInt(fullLength);
-          header.writeDelimitedTo(out);
-          rv.write(out);
+          buf = getResponseBuffer(header, resWrapper.getLength());
+          CodedOutputStream out = CodedOutputStream.newInstance(buf.array(),
+              buf.arrayOffset() + buf.position(), buf.remaining());
+          resWrapper.writeTo(out);
+          out.checkNoSpaceLeft();
         } else { // Have to serialize to buffer to get len
-          final DataOutputBuffer buf = new DataOutputBuffer();
-          rv.write(buf);
-          byte[] data = buf.getData();
-          fullLength += buf.getLength();
-          out.writeInt(fullLength);
-          header.writeDelimitedTo(out);
-          out.write(data, 0, buf.getLength());
+          final DataOutputBuffer data = new DataOutputBuffer();
+          rv.write(data);
+          buf = getResponseBuffer(header, data.getLength());
+          buf.put(data.getData(), 0, data.getLength());
         }
       } catch (Throwable t) {
         LOG.warn("Error serializing call response for call " + call, t);
-        // Call back to same function - this is OK since the
-        // buffer is reset at the top, and since status is changed
+        if (buf != null) {
+          bufferPool.returnBuffer(buf);
+        }
+        // Call back to same function - since status is changed
         // to ERROR it won't infinite loop.
-        setupResponse(responseBuf, call, RpcStatusProto.ERROR,
+        setupResponse(call, RpcStatusProto.ERROR,
             RpcErrorCodeProto.ERROR_SERIALIZING_RESPONSE,
             null, t.getClass().getName(),
             StringUtils.stringifyException(t));
         return;
       }
+      response = buf;
     } else { // Rpc Failure
       headerBuilder.setExceptionClassName(errorClass);
       headerBuilder.setErrorMsg(error);
       headerBuilder.setErrorDetail(erCode);
-      RpcResponseHeaderProto header = headerBuilder.build();
-      int headerLen = header.getSerializedSize();
-      final int fullLength  = 
-          CodedOutputStream.computeRawVarint32Size(headerLen) + headerLen;
-      out.writeInt(fullLength);
-      header.writeDelimitedTo(out);
-    }
-    if (call.connection.useWrap) {
-      wrapWithSasl(responseBuf, call);
+      response = getResponseBuffer(headerBuilder.build(), 0);
     }
-    call.setResponse(ByteBuffer.wrap(responseBuf.toByteArray()));
+    response.rewind();
+    call.setPooledResponse(response);
+  }
+
+  /**
+   * Get a buffer from the buffer pool for a response, and write the length
+   * of the response and its header into it.
+   *
+   * @param header the header of the response
+   * @param payloadLength the length of the response following the header
+   * @return the buffer, positioned where the rest of the response goes and
+   *         limited to the end of the response
+   */
+  private ByteBuffer getResponseBuffer(RpcResponseHeaderProto header,
+      int payloadLength) throws IOException {
+    final int headerLen = header.getSerializedSize();
+    final int fullLength = CodedOutputStream.computeRawVarint32Size(headerLen)
+        + headerLen + payloadLength;
+    final ByteBuffer buf = bufferPool.getBuffer(4 + fullLength);
+    buf.putInt(fullLength);
+    final CodedOutputStream out = CodedOutputStream.newInstance(buf.array(),
+        buf.arrayOffset() + buf.position(), buf.remaining());
+    out.writeRawVarint32(headerLen);
+    header.writeTo(out);
+    buf.position(buf.limit() - out.spaceLeft());
+    return buf;
   }
   
   /**
@@ -2569,27 +2952,28 @@ private void setupResponseOldVersionFatal(ByteArrayOutputStream response,
     out.writeInt(OLD_VERSION_FATAL_STATUS);   // write FATAL_STATUS
     WritableUtils.writeString(out, errorClass);
     WritableUtils.writeString(out, error);
-
-    if (call.connection.useWrap) {
-      wrapWithSasl(response, call);
-    }
     call.setResponse(ByteBuffer.wrap(response.toByteArray()));
   }
   
   
-  private void wrapWithSasl(ByteArrayOutputStream response, Call call)
-      throws IOException {
+  private void wrapWithSasl(Call call) throws IOException {
     if (call.connection.saslServer != null) {
-      byte[] token = response.toByteArray();
+      final ByteBuffer unwrapped = call.rpcResponse;
+      byte[] token;
       // synchronization may be needed since there can be multiple Handler
       // threads using saslServer to wrap responses.
       synchronized (call.connection.saslServer) {
-        token = call.connection.saslServer.wrap(token, 0, token.length);
+        token = call.connection.saslServer.wrap(unwrapped.array(),
+            unwrapped.arrayOffset() + unwrapped.position(),
+            unwrapped.remaining());
+      }
+      if (call.pooledResponse) {
+        bufferPool.returnBuffer(unwrapped);
       }
       if (LOG.isDebugEnabled())
         LOG.debug("Adding saslServer wrapped token of size " + token.length
             + " as call response.");
-      response.reset();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
       // rebuild with sasl header and payload
       RpcResponseHeaderProto saslHeader = RpcResponseHeaderProto.newBuilder()
           .setCallId(AuthProtocol.SASL.callId)
@@ -2605,6 +2989,7 @@ private void wrapWithSasl(ByteArrayOutputStream response, Call call)
       DataOutputStream out = new DataOutputStream(response);
       out.writeInt(saslResponse.getLength());
       saslResponse.write(out);
+      call.setResponse(ByteBuffer.wrap(response.toByteArray()));
     }
   }
   
@@ -2615,16 +3000,35 @@ Configuration getConf() {
   /** Sets the socket buffer size used for responding to RPCs */
   public void setSocketSendBufSize(int size) { this.socketSendBufferSize = size; }
 
+  /**
+   * Set the context used to exchange state ids with clients, or null if
+   * calls are not aligned with any server state.
+   */
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
     listener.start();
+    if (alignmentContext != null) {
+      callAligner = new CallAligner();
+      callAligner.start();
+    }
     handlers = new Handler[handlerCount];
     
     for (int i = 0; i < handlerCount; i++) {
       handlers[i] = new Handler(i);
       handlers[i].start();
     }
+    for (HandlerPool pool : handlerPools.values()) {
+      pool.handlers = new Handler[pool.handlerCount];
+      for (int i = 0; i < pool.handlerCount; i++) {
+        pool.handlers[i] = new Handler(i, pool);
+        pool.handlers[i].start();
+      }
+    }
   }
 
   /** Stops the service.  No new calls will be handled after this is called. */
@@ -2638,6 +3042,17 @@ public synchronized void stop() {
         }
       }
     }
+    for (HandlerPool pool : handlerPools.values()) {
+      if (pool.handlers != null) {
+        for (Handler handler : pool.handlers) {
+          handler.interrupt();
+        }
+      }
+      pool.metrics.shutdown();
+    }
+    if (callAligner != null) {
+      callAligner.interrupt();
+    }
     listener.interrupt();
     listener.doStop();
     responder.interrupt();
@@ -2728,6 +3143,23 @@ public int getNumOpenConnections() {
   public int getCallQueueLen() {
     return callQueue.size();
   }
+
+  /**
+   * The number of rpc calls in the queue of a handler pool.
+   * @param pool the name of a handler pool of this server
+   * @return The number of rpc calls in the queue of the pool, or 0 if the
+   *         server has no such pool.
+   */
+  public int getCallQueueLen(String pool) {
+    HandlerPool handlerPool = handlerPools.get(pool);
+    return handlerPool == null ? 0 : handlerPool.callQueue.size();
+  }
+
+  @VisibleForTesting
+  RpcHandlerPoolMetrics getHandlerPoolMetrics(String pool) {
+    HandlerPool handlerPool = handlerPools.get(pool);
+    return handlerPool == null ? null : handlerPool.metrics;
+  }
   
   /**
    * The maximum size of the rpc call queue of this server.
@@ -85,7 +85,7 @@ private static synchronized void initialize() {
 
   
   /** A method invocation, including the method name and its parameters.*/
-  private static class Invocation implements Writable, Configurable {
+  static class Invocation implements Writable, Configurable {
     private String methodName;
     private Class<?>[] parameterClasses;
     private Object[] parameters;
@@ -287,6 +287,22 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       rpcTimeout, connectionRetryPolicy, null);
   }
 
+  /** Construct a client-side proxy object that implements the named protocol,
+   * talking to a server at the named address. State ids are not exchanged
+   * by this engine, so the alignment context is ignored.
+   * @param <T>*/
+  @Override
+  public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+                         InetSocketAddress addr, UserGroupInformation ticket,
+                         Configuration conf, SocketFactory factory,
+                         int rpcTimeout, RetryPolicy connectionRetryPolicy,
+                         AtomicBoolean fallbackToSimpleAuth,
+                         AlignmentContext alignmentContext)
+    throws IOException {
+    return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+  }
+
   /** Construct a client-side proxy object that implements the named protocol,
    * talking to a server at the named address. 
    * @param <T>*/
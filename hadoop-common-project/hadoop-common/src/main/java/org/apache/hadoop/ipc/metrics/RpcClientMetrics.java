@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc.metrics;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MutableStat;
+
+import com.google.common.collect.Sets;
+
+/**
+ * This class is for maintaining the statistics of the connections of an RPC
+ * client and publishing them through the metrics interfaces, as one record
+ * per open connection.
+ */
+@InterfaceAudience.Private
+public class RpcClientMetrics implements MetricsSource {
+  private static final AtomicInteger CLIENT_COUNT = new AtomicInteger();
+
+  static final String RECORD_NAME = "RpcClientConnection";
+  static final MetricsInfo REMOTE_ADDRESS =
+      info("RemoteAddress", "Address of the RPC server");
+  static final MetricsInfo PROTOCOL = info("Protocol", "RPC protocol");
+  static final MetricsInfo USER = info("User", "User of the connection");
+  static final MetricsInfo CONNECTION_INDEX =
+      info("ConnectionIndex", "Index of the connection in its pool");
+  static final MetricsInfo OUTSTANDING_CALLS =
+      info("OutstandingCalls", "Number of calls waiting for their response");
+
+  /** The statistics of one connection. */
+  public static class ConnectionMetrics {
+    private final String remoteAddress;
+    private final String protocol;
+    private final String user;
+    private final int index;
+    private final AtomicInteger outstandingCalls = new AtomicInteger();
+    private final MutableStat latency = new MutableStat("RpcLatency",
+        "RPC call latency in milli second", "Ops", "Time");
+
+    ConnectionMetrics(String remoteAddress, String protocol, String user,
+        int index) {
+      this.remoteAddress = remoteAddress;
+      this.protocol = protocol;
+      this.user = user;
+      this.index = index;
+    }
+
+    /** One call sent on the connection */
+    public void incrOutstandingCalls() {
+      outstandingCalls.incrementAndGet();
+    }
+
+    /**
+     * One call answered on the connection
+     * @param latency the time from sending the call to receiving its
+     *                response, in milliseconds
+     */
+    public void addCallLatency(long latency) {
+      outstandingCalls.decrementAndGet();
+      this.latency.add(latency);
+    }
+
+    public int getOutstandingCalls() {
+      return outstandingCalls.get();
+    }
+
+    void snapshot(MetricsRecordBuilder rb, boolean all) {
+      rb.tag(REMOTE_ADDRESS, remoteAddress)
+          .tag(PROTOCOL, protocol)
+          .tag(USER, user)
+          .tag(CONNECTION_INDEX, String.valueOf(index))
+          .addGauge(OUTSTANDING_CALLS, outstandingCalls.get());
+      latency.snapshot(rb, all);
+    }
+  }
+
+  private final String name;
+  private final Set<ConnectionMetrics> connections =
+      Sets.newSetFromMap(new ConcurrentHashMap<ConnectionMetrics, Boolean>());
+
+  RpcClientMetrics(String name) {
+    this.name = name;
+  }
+
+  public String name() { return name; }
+
+  public static RpcClientMetrics create() {
+    RpcClientMetrics m = new RpcClientMetrics(
+        "RpcClientActivity" + CLIENT_COUNT.incrementAndGet());
+    return DefaultMetricsSystem.instance().register(m.name,
+        "Per connection RPC client metrics", m);
+  }
+
+  /**
+   * Start keeping the statistics of a new connection
+   * @param remoteAddress the address of the server
+   * @param protocol the protocol of the connection, or null
+   * @param user the user of the connection, or null
+   * @param index the index of the connection among those to the same server
+   *              for the same protocol and user
+   * @return the statistics of the connection
+   */
+  public ConnectionMetrics addConnection(String remoteAddress,
+      String protocol, String user, int index) {
+    ConnectionMetrics m = new ConnectionMetrics(remoteAddress,
+        String.valueOf(protocol), String.valueOf(user), index);
+    connections.add(m);
+    return m;
+  }
+
+  /**
+   * Stop keeping the statistics of a closed connection
+   */
+  public void removeConnection(ConnectionMetrics m) {
+    connections.remove(m);
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    for (ConnectionMetrics m : connections) {
+      m.snapshot(collector.addRecord(RECORD_NAME).setContext("rpc"), all);
+    }
+  }
+
+  /**
+   * Shutdown the instrumentation for the process
+   */
+  public void shutdown() {
+    DefaultMetricsSystem.instance().unregisterSource(name);
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+/**
+ * This class is for maintaining the RPC statistics of a named handler pool
+ * of a server and publishing them through the metrics interfaces. The calls
+ * of the pool are also counted in the {@link RpcMetrics} of the server.
+ */
+@InterfaceAudience.Private
+@Metrics(about="Per handler pool RPC metrics", context="rpc")
+public class RpcHandlerPoolMetrics {
+
+  static final Log LOG = LogFactory.getLog(RpcHandlerPoolMetrics.class);
+  final Server server;
+  final String pool;
+  final MetricsRegistry registry;
+  final String name;
+
+  RpcHandlerPoolMetrics(Server server, String pool) {
+    String port = String.valueOf(server.getListenerAddress().getPort());
+    name = "RpcHandlerPoolActivityForPort" + port + "Pool" + pool;
+    this.server = server;
+    this.pool = pool;
+    registry = new MetricsRegistry("rpchandlerpool")
+        .tag("port", "RPC port", port)
+        .tag("handlerPool", "Handler pool", pool);
+    LOG.debug("Initialized " + registry);
+  }
+
+  public String name() { return name; }
+
+  public static RpcHandlerPoolMetrics create(Server server, String pool) {
+    RpcHandlerPoolMetrics m = new RpcHandlerPoolMetrics(server, pool);
+    return DefaultMetricsSystem.instance().register(m.name, null, m);
+  }
+
+  @Metric("Queue time") MutableRate rpcQueueTime;
+  @Metric("Processing time") MutableRate rpcProcessingTime;
+
+  @Metric("Length of the call queue") public int callQueueLength() {
+    return server.getCallQueueLen(pool);
+  }
+
+  /**
+   * Add an RPC queue time sample
+   * @param qTime the queue time
+   */
+  public void addRpcQueueTime(int qTime) {
+    rpcQueueTime.add(qTime);
+  }
+
+  /**
+   * Add an RPC processing time sample
+   * @param processingTime the processing time
+   */
+  public void addRpcProcessingTime(int processingTime) {
+    rpcProcessingTime.add(processingTime);
+  }
+
+  /**
+   * Shutdown the instrumentation for the process
+   */
+  public void shutdown() {
+    DefaultMetricsSystem.instance().unregisterSource(name);
+  }
+}
@@ -99,6 +99,12 @@ public static RpcMetrics create(Server server, Configuration conf) {
   MutableCounterLong rpcClientBackoff;
   @Metric("Number of Slow RPC calls")
   MutableCounterLong rpcSlowCalls;
+  @Metric("Number of buffers allocated for requests and responses")
+  MutableCounterLong rpcBufferAllocations;
+  @Metric("Number of bytes allocated for requests and responses")
+  MutableCounterLong rpcBufferAllocatedBytes;
+  @Metric("Number of buffers reused from the buffer pool")
+  MutableCounterLong rpcBufferPoolHits;
 
   @Metric("Number of open connections") public int numOpenConnections() {
     return server.getNumOpenConnections();
@@ -145,6 +151,22 @@ public void incrAuthorizationFailures() {
     rpcAuthorizationFailures.incr();
   }
 
+  /**
+   * One buffer allocated for a request or a response
+   * @param bytes the size of the buffer
+   */
+  public void incrBufferAllocations(int bytes) {
+    rpcBufferAllocations.incr();
+    rpcBufferAllocatedBytes.incr(bytes);
+  }
+
+  /**
+   * One buffer reused from the buffer pool
+   */
+  public void incrBufferPoolHits() {
+    rpcBufferPoolHits.incr();
+  }
+
   /**
    * Shutdown the instrumentation for the process
    */
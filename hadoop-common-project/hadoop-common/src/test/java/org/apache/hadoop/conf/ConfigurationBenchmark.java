@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.conf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Measures the throughput of {@link Configuration#get(String)},
+ * {@link Configuration#getInt(String, int)} and of copying a configuration
+ * with {@link Configuration#Configuration(Configuration)}, on a configuration
+ * loaded from the default resources and on its {@link ConfigurationSnapshot}.
+ *
+ * Each operation is run by a number of threads sharing the configuration,
+ * the gets going round the keys of the configuration. A copy is read once
+ * after it is made, since the copies of a snapshot share its settings.
+ *
+ * Usage: ConfigurationBenchmark [-ops N] [-threads N]
+ */
+public class ConfigurationBenchmark extends Configured implements Tool {
+  private static final Log LOG =
+      LogFactory.getLog(ConfigurationBenchmark.class);
+
+  private int numOps = 1000000;
+  private int numThreads = 4;
+
+  /** The operations per second, for the configuration and the snapshot. */
+  private final Map<String, long[]> results =
+      new LinkedHashMap<String, long[]>();
+
+  public ConfigurationBenchmark(Configuration conf) {
+    super(conf);
+  }
+
+  private interface Op {
+    void run(Configuration conf, int i);
+  }
+
+  @Override // Tool
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-ops") && i + 1 < args.length) {
+        numOps = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-threads") && i + 1 < args.length) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: ConfigurationBenchmark"
+            + " [-ops N] [-threads N]");
+        return -1;
+      }
+    }
+    final Configuration conf = getConf();
+    final List<String> names = new ArrayList<String>();
+    for (Map.Entry<String, String> entry : conf) {
+      names.add(entry.getKey());
+    }
+    final String[] keys = names.toArray(new String[names.size()]);
+    final ConfigurationSnapshot snapshot = conf.snapshot();
+
+    measure("get", conf, snapshot, new Op() {
+      @Override
+      public void run(Configuration c, int i) {
+        c.get(keys[i % keys.length]);
+      }
+    });
+    measure("getInt", conf, snapshot, new Op() {
+      @Override
+      public void run(Configuration c, int i) {
+        c.getInt(CommonConfigurationKeysPublic.IO_FILE_BUFFER_SIZE_KEY, 0);
+      }
+    });
+    measure("copy", conf, snapshot, new Op() {
+      @Override
+      public void run(Configuration c, int i) {
+        new Configuration(c).get(keys[i % keys.length]);
+      }
+    });
+    printResults(keys.length);
+    return 0;
+  }
+
+  private void measure(String name, Configuration conf,
+      ConfigurationSnapshot snapshot, Op op) throws Exception {
+    // warm up
+    runThreads(conf, op, Math.min(numOps, 10000));
+    runThreads(snapshot, op, Math.min(numOps, 10000));
+    results.put(name, new long[] {
+        runThreads(conf, op, numOps), runThreads(snapshot, op, numOps)});
+  }
+
+  /** @return the operations per second of all the threads together */
+  private long runThreads(final Configuration conf, final Op op,
+      final int ops) throws Exception {
+    final AtomicReference<Throwable> failure =
+        new AtomicReference<Throwable>();
+    final Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < ops; i++) {
+              op.run(conf, i);
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      };
+    }
+    final long start = Time.monotonicNow();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    final long elapsed = Math.max(1, Time.monotonicNow() - start);
+    if (failure.get() != null) {
+      throw new Exception(failure.get());
+    }
+    return (long) ops * numThreads * 1000 / elapsed;
+  }
+
+  private void printResults(int numKeys) {
+    LOG.info("--- Configuration benchmark ---");
+    LOG.info("# keys: " + numKeys + ", # threads: " + numThreads
+        + ", # ops per thread: " + numOps);
+    for (Map.Entry<String, long[]> result : results.entrySet()) {
+      LOG.info(result.getKey() + " ops/s, configuration: "
+          + result.getValue()[0] + ", snapshot: " + result.getValue()[1]);
+    }
+  }
+
+  Map<String, long[]> getResults() {
+    return results;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new ConfigurationBenchmark(new Configuration()),
+        args));
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.conf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestConfigurationSnapshot {
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = new Configuration(false);
+    conf.set("test.snapshot.name", "snapshot");
+    conf.set("test.snapshot.dir", "/tmp/${test.snapshot.name}");
+    conf.set("test.snapshot.unbound", "${test.snapshot.missing}/x");
+    conf.setInt("test.snapshot.int", 42);
+    conf.set("test.snapshot.loop", "${test.snapshot.loop}");
+  }
+
+  @Test
+  public void testGet() {
+    ConfigurationSnapshot snapshot = conf.snapshot();
+    for (Map.Entry<String, String> entry : conf) {
+      assertEquals(conf.get(entry.getKey()), snapshot.get(entry.getKey()));
+      assertEquals(conf.getRaw(entry.getKey()),
+          snapshot.getRaw(entry.getKey()));
+    }
+    assertEquals("/tmp/snapshot", snapshot.get("test.snapshot.dir"));
+    assertEquals("/tmp/snapshot", snapshot.get(" test.snapshot.dir "));
+    assertEquals("/tmp/${test.snapshot.name}",
+        snapshot.getRaw("test.snapshot.dir"));
+    assertEquals("${test.snapshot.missing}/x",
+        snapshot.get("test.snapshot.unbound"));
+    assertEquals("${test.snapshot.loop}", snapshot.get("test.snapshot.loop"));
+    assertEquals(42, snapshot.getInt("test.snapshot.int", 0));
+    assertEquals(0, snapshot.getInt("test.snapshot.absent", 0));
+    assertNull(snapshot.get("test.snapshot.absent"));
+    assertEquals("snapshot/y",
+        snapshot.get("test.snapshot.absent", "${test.snapshot.name}/y"));
+    assertEquals(conf.size(), snapshot.size());
+
+    // the snapshot does not see the later updates
+    conf.set("test.snapshot.name", "updated");
+    assertEquals("/tmp/updated", conf.get("test.snapshot.dir"));
+    assertEquals("/tmp/snapshot", snapshot.get("test.snapshot.dir"));
+  }
+
+  @Test
+  public void testSubstitutionDepth() {
+    for (int i = 0; i < 30; i++) {
+      conf.set("test.snapshot.depth" + i,
+          "${test.snapshot.depth" + (i + 1) + "}");
+    }
+    ConfigurationSnapshot snapshot = conf.snapshot();
+    try {
+      snapshot.get("test.snapshot.depth0");
+      fail("Expected the substitution to be too deep");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("substitution depth"));
+    }
+  }
+
+  @Test
+  public void testDeprecation() {
+    Configuration.addDeprecation("test.snapshot.old", "test.snapshot.new");
+    Configuration.addDeprecation("test.snapshot.old2",
+        new String[] {"test.snapshot.new2a", "test.snapshot.new2b"});
+    conf.set("test.snapshot.old", "old");
+    conf.set("test.snapshot.new2b", "new");
+    ConfigurationSnapshot snapshot = conf.snapshot();
+
+    assertEquals("old", snapshot.get("test.snapshot.new"));
+    assertEquals("old", snapshot.get("test.snapshot.old"));
+    assertEquals("new", snapshot.get("test.snapshot.old2"));
+    assertEquals("new", snapshot.get("test.snapshot.new2a"));
+    assertEquals(conf.get("test.snapshot.old2"),
+        snapshot.get("test.snapshot.old2"));
+    assertTrue(Configuration.hasWarnedDeprecation("test.snapshot.old2"));
+
+    Configuration.addDeprecation("test.snapshot.old3", "test.snapshot.new3");
+    assertNull(snapshot.get("test.snapshot.old3"));
+    assertEquals("default", snapshot.get("test.snapshot.old3", "default"));
+  }
+
+  @Test
+  public void testImmutable() {
+    ConfigurationSnapshot snapshot = conf.snapshot();
+    assertSame(snapshot, snapshot.snapshot());
+    try {
+      snapshot.set("test.snapshot.name", "updated");
+      fail("Expected a snapshot not to be updated");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      snapshot.setInt("test.snapshot.int", 1);
+      fail("Expected a snapshot not to be updated");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      snapshot.unset("test.snapshot.name");
+      fail("Expected a snapshot not to be updated");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      snapshot.clear();
+      fail("Expected a snapshot not to be updated");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      snapshot.reloadConfiguration();
+      fail("Expected a snapshot not to be updated");
+    } catch (UnsupportedOperationException e) {
+    }
+    assertEquals("snapshot", snapshot.get("test.snapshot.name"));
+  }
+
+  @Test
+  public void testCopyOnWrite() {
+    ConfigurationSnapshot snapshot = conf.snapshot();
+    Configuration copy = new Configuration(snapshot);
+    assertEquals("/tmp/snapshot", copy.get("test.snapshot.dir"));
+    assertEquals(42, copy.getInt("test.snapshot.int", 0));
+    // the copies share the snapshot until they are updated
+    Configuration copyOfCopy = new Configuration(copy);
+    assertSame(snapshot, copy.snapshot());
+    assertSame(snapshot, copyOfCopy.snapshot());
+
+    copy.set("test.snapshot.name", "updated");
+    assertEquals("/tmp/updated", copy.get("test.snapshot.dir"));
+    assertEquals(42, copy.getInt("test.snapshot.int", 0));
+    assertEquals("/tmp/snapshot", snapshot.get("test.snapshot.dir"));
+    assertEquals("/tmp/snapshot", copyOfCopy.get("test.snapshot.dir"));
+    assertTrue(snapshot != copy.snapshot());
+    assertEquals("/tmp/updated", copy.snapshot().get("test.snapshot.dir"));
+
+    copyOfCopy.unset("test.snapshot.name");
+    assertEquals("/tmp/${test.snapshot.name}",
+        copyOfCopy.get("test.snapshot.dir"));
+    assertEquals("snapshot", snapshot.get("test.snapshot.name"));
+  }
+
+  /**
+   * This test runs the configuration benchmark for a few operations.
+   */
+  @Test(timeout = 120000)
+  public void testBenchmark() throws Exception {
+    ConfigurationBenchmark bench =
+        new ConfigurationBenchmark(new Configuration());
+    assertEquals(0, bench.run(new String[] {"-ops", "1000",
+        "-threads", "2"}));
+    assertEquals(3, bench.getResults().size());
+  }
+}
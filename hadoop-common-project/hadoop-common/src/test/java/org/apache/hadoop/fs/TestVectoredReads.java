@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedRange;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Tests the vectored reads of {@link VectoredReadable} streams.
+ */
+public class TestVectoredReads {
+  private static final File TEST_DIR = new File(
+      System.getProperty("test.build.data", "target/test/data"),
+      TestVectoredReads.class.getSimpleName());
+
+  private static final List<FileRange> RANGES = Arrays.asList(
+      new FileRange(1000, 100), new FileRange(0, 10), new FileRange(20, 10),
+      new FileRange(5000, 0), new FileRange(30, 900));
+
+  @Test
+  public void testCombineRanges() {
+    List<Integer> sorted = VectoredReadUtils.sortRanges(RANGES);
+    assertEquals(Arrays.asList(1, 2, 4, 0, 3), sorted);
+
+    List<CombinedRange> combined =
+        VectoredReadUtils.combineRanges(RANGES, sorted, 10, 100);
+    assertEquals(4, combined.size());
+    assertEquals(0, combined.get(0).getOffset());
+    assertEquals(30, combined.get(0).getLength());
+    assertEquals(Arrays.asList(1, 2), combined.get(0).getIndexes());
+    assertEquals(Arrays.asList(4), combined.get(1).getIndexes());
+
+    combined = VectoredReadUtils.combineRanges(RANGES, sorted, 10000, 10000);
+    assertEquals(1, combined.size());
+    assertEquals(5000, combined.get(0).getLength());
+
+    try {
+      VectoredReadUtils.sortRanges(Arrays.asList(
+          new FileRange(0, 10), new FileRange(9, 10)));
+      fail("Overlapping ranges should be rejected");
+    } catch (IllegalArgumentException e) {
+      GenericTestUtils.assertExceptionContains("Overlapping ranges", e);
+    }
+  }
+
+  private static void checkRanges(List<FileRange> ranges,
+      List<Future<ByteBuffer>> futures, byte[] expected,
+      ByteBufferPool pool) throws Exception {
+    assertEquals(ranges.size(), futures.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      FileRange range = ranges.get(i);
+      ByteBuffer buf = futures.get(i).get();
+      byte[] data = new byte[buf.remaining()];
+      buf.get(data);
+      assertArrayEquals(Arrays.copyOfRange(expected, (int) range.getOffset(),
+          (int) range.getEnd()), data);
+      pool.putBuffer(buf);
+    }
+  }
+
+  /**
+   * The ranges of local files are read, both through the checksummed file
+   * system and the raw one.
+   */
+  @Test(timeout = 30000)
+  public void testLocalFileSystem() throws Exception {
+    Configuration conf = new Configuration();
+    LocalFileSystem fs = FileSystem.getLocal(conf);
+    Path file = new Path(TEST_DIR.getAbsolutePath(), "file");
+    byte[] expected = new byte[6000];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = (byte) (i * 31);
+    }
+    try (FSDataOutputStream out = fs.create(file, true)) {
+      out.write(expected);
+    }
+    ByteBufferPool pool = new ElasticByteBufferPool();
+    for (FileSystem f : new FileSystem[] { fs, fs.getRawFileSystem() }) {
+      try (FSDataInputStream in = f.open(file)) {
+        in.seek(10);
+        checkRanges(RANGES, in.readVectored(RANGES, pool), expected, pool);
+        // the position of the stream is unchanged
+        assertEquals(10, in.getPos());
+
+        List<Future<ByteBuffer>> futures = in.readVectored(Arrays.asList(
+            new FileRange(5990, 10), new FileRange(5995, 10)), pool);
+        fail("Overlapping ranges should be rejected: " + futures);
+      } catch (IllegalArgumentException e) {
+        GenericTestUtils.assertExceptionContains("Overlapping ranges", e);
+      }
+
+      try (FSDataInputStream in = f.open(file)) {
+        List<Future<ByteBuffer>> futures = in.readVectored(
+            Collections.singletonList(new FileRange(5995, 10)), pool);
+        futures.get(0).get();
+        fail("A range past the end of the file should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause().toString(),
+            e.getCause() instanceof EOFException);
+      }
+    }
+  }
+}
@@ -220,6 +220,16 @@ public void transitionToStandby(StateChangeRequestInfo req) throws ServiceFailed
       }
       state = HAServiceState.STANDBY;
     }
+
+    @Override
+    public void transitionToObserver(StateChangeRequestInfo req)
+        throws ServiceFailedException, AccessControlException, IOException {
+      checkUnreachable();
+      if (sharedResource != null) {
+        sharedResource.release(DummyHAService.this);
+      }
+      state = HAServiceState.OBSERVER;
+    }
     
     @Override
     public HAServiceStatus getServiceStatus() throws IOException {
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.erasurecode.CodecUtil;
+import org.apache.hadoop.io.erasurecode.ECSchema;
+import org.junit.Test;
+
+/**
+ * Tests the pure Java Reed-Solomon raw coders.
+ */
+public class TestRSRawCoder {
+  private static final int UNIT_LEN = 1024;
+  private final Random random = new Random(0xec);
+
+  private byte[][] newUnits(int num, int len) {
+    byte[][] units = new byte[num][len];
+    for (byte[] unit : units) {
+      random.nextBytes(unit);
+    }
+    return units;
+  }
+
+  /** @return every subset of the given size of the units */
+  private static List<int[]> subsets(int numUnits, int size) {
+    List<int[]> subsets = new ArrayList<int[]>();
+    for (int mask = 0; mask < 1 << numUnits; mask++) {
+      if (Integer.bitCount(mask) != size) {
+        continue;
+      }
+      int[] subset = new int[size];
+      for (int i = 0, n = 0; i < numUnits; i++) {
+        if ((mask & 1 << i) != 0) {
+          subset[n++] = i;
+        }
+      }
+      subsets.add(subset);
+    }
+    return subsets;
+  }
+
+  /**
+   * Erase every combination of as many units as the parity units, and
+   * check they are all recovered.
+   */
+  private void testCoding(int numDataUnits, int numParityUnits) {
+    RawErasureEncoder encoder =
+        new RSRawEncoder(numDataUnits, numParityUnits);
+    RawErasureDecoder decoder =
+        new RSRawDecoder(numDataUnits, numParityUnits);
+    int numAllUnits = numDataUnits + numParityUnits;
+    byte[][] data = newUnits(numDataUnits, UNIT_LEN);
+    byte[][] parity = new byte[numParityUnits][UNIT_LEN];
+    encoder.encode(data, parity);
+
+    byte[][] all = new byte[numAllUnits][];
+    System.arraycopy(data, 0, all, 0, numDataUnits);
+    System.arraycopy(parity, 0, all, numDataUnits, numParityUnits);
+    for (int numErased = 1; numErased <= numParityUnits; numErased++) {
+      for (int[] erased : subsets(numAllUnits, numErased)) {
+        byte[][] inputs = all.clone();
+        for (int e : erased) {
+          inputs[e] = null;
+        }
+        byte[][] outputs = new byte[numErased][UNIT_LEN];
+        decoder.decode(inputs, erased, outputs);
+        for (int i = 0; i < numErased; i++) {
+          assertArrayEquals("unit " + erased[i] + " of erased "
+              + Arrays.toString(erased), all[erased[i]], outputs[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRS63() {
+    testCoding(6, 3);
+  }
+
+  @Test
+  public void testRS32() {
+    testCoding(3, 2);
+  }
+
+  @Test
+  public void testRS104() {
+    testCoding(10, 4);
+  }
+
+  @Test
+  public void testOffsets() {
+    RawErasureEncoder encoder = new RSRawEncoder(6, 3);
+    RawErasureDecoder decoder = new RSRawDecoder(6, 3);
+    byte[][] data = newUnits(6, UNIT_LEN);
+    byte[][] parity = new byte[3][UNIT_LEN];
+    encoder.encode(data, parity);
+
+    // the same units in the middle of larger arrays
+    int len = 100;
+    int[] offsets = new int[9];
+    byte[][] inputs = new byte[9][];
+    for (int i = 0; i < 9; i++) {
+      offsets[i] = i * 7;
+      inputs[i] = new byte[offsets[i] + len + 3];
+      System.arraycopy(i < 6 ? data[i] : parity[i - 6], 0, inputs[i],
+          offsets[i], len);
+    }
+    byte[][] encoded = new byte[][] {new byte[len + 5], new byte[len + 5],
+        new byte[len + 5]};
+    encoder.encode(Arrays.copyOf(inputs, 6), Arrays.copyOf(offsets, 6), len,
+        encoded, new int[] {5, 5, 5});
+    for (int i = 0; i < 3; i++) {
+      assertArrayEquals(Arrays.copyOf(parity[i], len),
+          Arrays.copyOfRange(encoded[i], 5, 5 + len));
+    }
+
+    inputs[1] = null;
+    inputs[7] = null;
+    byte[][] outputs = new byte[][] {new byte[len + 1], new byte[len + 1]};
+    decoder.decode(inputs, offsets, len, new int[] {1, 7}, outputs,
+        new int[] {1, 1});
+    assertArrayEquals(Arrays.copyOf(data[1], len),
+        Arrays.copyOfRange(outputs[0], 1, 1 + len));
+    assertArrayEquals(Arrays.copyOf(parity[1], len),
+        Arrays.copyOfRange(outputs[1], 1, 1 + len));
+  }
+
+  @Test
+  public void testByteBuffers() {
+    Configuration conf = new Configuration();
+    ECSchema schema = new ECSchema(ECSchema.RS_CODEC_NAME, 6, 3);
+    RawErasureEncoder encoder = CodecUtil.createRawEncoder(conf, schema);
+    RawErasureDecoder decoder = CodecUtil.createRawDecoder(conf, schema);
+    assertTrue(encoder instanceof RSRawEncoder);
+    assertEquals(6, decoder.getNumDataUnits());
+    assertEquals(3, decoder.getNumParityUnits());
+
+    byte[][] data = newUnits(6, UNIT_LEN);
+    ByteBuffer[] inputs = new ByteBuffer[6];
+    for (int i = 0; i < 6; i++) {
+      // direct and heap buffers, not at their start
+      inputs[i] = i % 2 == 0 ? ByteBuffer.allocateDirect(UNIT_LEN + 1)
+          : ByteBuffer.allocate(UNIT_LEN + 1);
+      inputs[i].put((byte) 0);
+      inputs[i].put(data[i]);
+      inputs[i].flip();
+      inputs[i].position(1);
+    }
+    ByteBuffer[] parity = new ByteBuffer[] {
+        ByteBuffer.allocateDirect(UNIT_LEN), ByteBuffer.allocate(UNIT_LEN),
+        ByteBuffer.allocateDirect(UNIT_LEN)};
+    encoder.encode(inputs, parity);
+    for (ByteBuffer buf : inputs) {
+      assertEquals(1, buf.position());
+    }
+    assertEquals(0, parity[0].position());
+
+    ByteBuffer[] units = new ByteBuffer[9];
+    System.arraycopy(inputs, 0, units, 0, 6);
+    System.arraycopy(parity, 0, units, 6, 3);
+    units[0] = null;
+    units[3] = null;
+    units[8] = null;
+    ByteBuffer[] outputs = new ByteBuffer[] {
+        ByteBuffer.allocateDirect(UNIT_LEN), ByteBuffer.allocate(UNIT_LEN)};
+    decoder.decode(units, new int[] {0, 3}, outputs);
+    byte[] recovered = new byte[UNIT_LEN];
+    outputs[0].get(recovered);
+    assertArrayEquals(data[0], recovered);
+    outputs[1].get(recovered);
+    assertArrayEquals(data[3], recovered);
+  }
+
+  @Test
+  public void testTooManyErasures() {
+    RawErasureDecoder decoder = new RSRawDecoder(6, 3);
+    byte[][] inputs = newUnits(9, UNIT_LEN);
+    for (int i = 0; i < 4; i++) {
+      inputs[i] = null;
+    }
+    try {
+      decoder.decode(inputs, new int[] {0, 1, 2, 3},
+          new byte[4][UNIT_LEN]);
+      fail("Decoded with less units than the data units");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("Only 5 units available"));
+    }
+  }
+}
@@ -203,6 +203,57 @@ public void testPriority() {
     assertEquals(2, scheduler.getPriorityLevel(mockCall("A")));
   }
 
+  @Test
+  public void testCostBasedPriority() {
+    Configuration conf = new Configuration();
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY,
+      "25, 50, 75");
+    conf.setBoolean("ns." +
+        DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY, true);
+    scheduler = new DecayRpcScheduler(4, "ns", conf);
+
+    // A makes one expensive call, B many cheap ones
+    scheduler.getPriorityLevel(mockCall("A"));
+    scheduler.addCost(mockCall("A"), 90);
+    for (int i = 0; i < 9; i++) {
+      scheduler.getPriorityLevel(mockCall("B"));
+      scheduler.addCost(mockCall("B"), 1);
+    }
+    assertEquals(99, scheduler.getTotalCallCost());
+    assertEquals(90, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(9, scheduler.getCallCountSnapshot().get("B").longValue());
+    assertEquals(3, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("B")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("C")));
+
+    // the costs decay with the counts, and the decisions are cached
+    scheduler.forceDecay();
+    assertEquals(45, scheduler.getCallCostSnapshot().get("A").longValue());
+    assertEquals(4, scheduler.getCallCostSnapshot().get("B").longValue());
+    assertEquals(3, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("B")));
+    assertTrue(scheduler.getCallCostSummary().contains("\"A\":45"));
+  }
+
+  @Test
+  public void testCostTrackedWhenCountBased() {
+    Configuration conf = new Configuration();
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY,
+      "25, 50, 75");
+    scheduler = new DecayRpcScheduler(4, "ns", conf);
+
+    scheduler.getPriorityLevel(mockCall("A"));
+    scheduler.addCost(mockCall("A"), 90);
+    scheduler.getPriorityLevel(mockCall("B"));
+    scheduler.addCost(mockCall("B"), 10);
+    assertEquals(100, scheduler.getTotalCallCost());
+    // the costs do not matter, both made half of the calls
+    assertEquals(1, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(1, scheduler.getPriorityLevel(mockCall("B")));
+  }
+
   @Test(timeout=2000)
   public void testPeriodic() throws InterruptedException {
     Configuration conf = new Configuration();
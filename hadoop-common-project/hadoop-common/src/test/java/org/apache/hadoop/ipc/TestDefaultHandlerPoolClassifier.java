@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Test;
+
+public class TestDefaultHandlerPoolClassifier {
+  private static final String NS = "ipc.8020";
+
+  private static Schedulable callBy(String user) {
+    final UserGroupInformation ugi = user == null ? null
+        : UserGroupInformation.createRemoteUser(user);
+    return new Schedulable() {
+      @Override
+      public UserGroupInformation getUserGroupInformation() {
+        return ugi;
+      }
+    };
+  }
+
+  @Test
+  public void testRouting() {
+    Configuration conf = new Configuration();
+    conf.set(NS + ".handler.pools", "service, admin");
+    conf.set(NS + ".service.protocols", "DatanodeProtocol");
+    conf.set(NS + ".service.methods", "monitorHealth");
+    conf.set(NS + ".admin.users", "hdfs");
+    conf.set(NS + ".admin.methods", "monitorHealth, refreshNodes");
+    HandlerPoolClassifier classifier =
+        new DefaultHandlerPoolClassifier(NS, conf);
+
+    assertEquals("service", classifier.getHandlerPool("DatanodeProtocol",
+        "sendHeartbeat", callBy("hdfs")));
+    // the pools are tried in order
+    assertEquals("service", classifier.getHandlerPool("ClientProtocol",
+        "monitorHealth", callBy("alice")));
+    assertEquals("admin", classifier.getHandlerPool("ClientProtocol",
+        "refreshNodes", callBy("alice")));
+    assertEquals("admin", classifier.getHandlerPool("ClientProtocol",
+        "getFileInfo", callBy("hdfs")));
+    assertNull(classifier.getHandlerPool("ClientProtocol", "getFileInfo",
+        callBy("alice")));
+    assertNull(classifier.getHandlerPool("ClientProtocol", null,
+        callBy(null)));
+  }
+
+  @Test
+  public void testNoPools() {
+    HandlerPoolClassifier classifier =
+        new DefaultHandlerPoolClassifier(NS, new Configuration());
+    assertNull(classifier.getHandlerPool("DatanodeProtocol", "sendHeartbeat",
+        callBy("hdfs")));
+  }
+}
@@ -21,12 +21,16 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
@@ -35,6 +39,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
@@ -47,9 +52,12 @@
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.ObjectName;
 import javax.net.SocketFactory;
 
 import org.apache.commons.logging.Log;
@@ -71,6 +79,7 @@
 import org.apache.hadoop.ipc.RPC.RpcKind;
 import org.apache.hadoop.ipc.Server.Connection;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.ConnectTimeoutException;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.util.StringUtils;
@@ -286,6 +295,211 @@ public void internalTestSerial(int handlerCount, boolean handlerSleep,
     server.stop();
   }
 	
+  @Test(timeout=60000)
+  public void testAsyncCalls() throws Exception {
+    Server server = new TestServer(3, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    Client.setAsynchronousMode(true);
+    try {
+      List<Future<Writable>> responses = new ArrayList<Future<Writable>>();
+      for (int i = 0; i < 50; i++) {
+        assertNull(client.call(new LongWritable(i), addr, null, null, 0, conf));
+        responses.add(Client.getAsyncRpcResponse());
+      }
+      assertNull(Client.getAsyncRpcResponse());
+      for (int i = 0; i < 50; i++) {
+        assertEquals(new LongWritable(i), responses.get(i).get());
+      }
+    } finally {
+      Client.setAsynchronousMode(false);
+      client.stop();
+      server.stop();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testAsyncCallLimit() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY, 2);
+    final CountDownLatch latch = new CountDownLatch(1);
+    TestServer server = new TestServer(3, false);
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    Client.setAsynchronousMode(true);
+    try {
+      client.call(new LongWritable(1), addr, null, null, 0, conf);
+      Future<Writable> first = Client.getAsyncRpcResponse();
+      client.call(new LongWritable(2), addr, null, null, 0, conf);
+      Future<Writable> second = Client.getAsyncRpcResponse();
+      try {
+        client.call(new LongWritable(3), addr, null, null, 0, conf);
+        fail("Expected the limit of asynchronous calls to be exceeded");
+      } catch (AsyncCallLimitExceededException e) {
+        assertNull(Client.getAsyncRpcResponse());
+      }
+
+      // the responses make room for new calls
+      latch.countDown();
+      assertEquals(new LongWritable(1), first.get());
+      assertEquals(new LongWritable(2), second.get());
+      client.call(new LongWritable(3), addr, null, null, 0, conf);
+      assertEquals(new LongWritable(3), Client.getAsyncRpcResponse().get());
+    } finally {
+      Client.setAsynchronousMode(false);
+      client.stop();
+      server.stop();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testAsyncCallFailure() throws Exception {
+    TestServer server = new TestServer(1, false);
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("injected");
+      }
+    };
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    Client.setAsynchronousMode(true);
+    try {
+      client.call(new LongWritable(1), addr, null, null, 0, conf);
+      try {
+        Client.getAsyncRpcResponse().get();
+        fail("Expected the call to fail");
+      } catch (ExecutionException e) {
+        RemoteException re = (RemoteException) e.getCause();
+        assertEquals(IllegalStateException.class.getName(),
+            re.getClassName());
+      }
+    } finally {
+      Client.setAsynchronousMode(false);
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /** Block the handlers of the server until the latch is counted down. */
+  private static Runnable awaitLatch(final CountDownLatch latch) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+
+  @Test(timeout=60000)
+  public void testConnectionPoolRoundRobin() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_SIZE_KEY, 3);
+    Server server = new TestServer(1, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      for (int i = 0; i < 10; i++) {
+        assertEquals(new LongWritable(i),
+            client.call(new LongWritable(i), addr, null, null, 0, conf));
+      }
+      // all the calls share one pool of three connections
+      assertEquals(1, client.getConnectionIds().size());
+      ConnectionId remoteId = client.getConnectionIds().iterator().next();
+      assertEquals(3, client.getConnectionCount(remoteId));
+      assertEquals(3, server.getNumOpenConnections());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+    assertTrue(client.getConnectionIds().isEmpty());
+  }
+
+  @Test(timeout=60000)
+  public void testConnectionPoolLeastOutstanding() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_SIZE_KEY, 3);
+    conf.set(CommonConfigurationKeys.IPC_CLIENT_CONNECTION_POOL_DISPATCH_KEY,
+        "least-outstanding");
+    final CountDownLatch latch = new CountDownLatch(1);
+    TestServer server = new TestServer(4, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      // serial calls leave no call outstanding, so reuse one connection
+      for (int i = 0; i < 10; i++) {
+        client.call(new LongWritable(i), addr, null, null, 0, conf);
+      }
+      ConnectionId remoteId = client.getConnectionIds().iterator().next();
+      assertEquals(1, client.getConnectionCount(remoteId));
+
+      // concurrent calls open connections until every one is busy
+      server.callListener = awaitLatch(latch);
+      Client.setAsynchronousMode(true);
+      List<Future<Writable>> responses = new ArrayList<Future<Writable>>();
+      for (int i = 0; i < 4; i++) {
+        client.call(new LongWritable(i), addr, null, null, 0, conf);
+        responses.add(Client.getAsyncRpcResponse());
+      }
+      assertEquals(3, client.getConnectionCount(remoteId));
+      latch.countDown();
+      for (int i = 0; i < 4; i++) {
+        assertEquals(new LongWritable(i), responses.get(i).get());
+      }
+    } finally {
+      Client.setAsynchronousMode(false);
+      client.stop();
+      server.stop();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testClientConnectionMetrics() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    TestServer server = new TestServer(2, false);
+    server.callListener = awaitLatch(latch);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    Client.setAsynchronousMode(true);
+    try {
+      client.call(new LongWritable(1), addr, null, null, 0, conf);
+      Future<Writable> first = Client.getAsyncRpcResponse();
+      client.call(new LongWritable(2), addr, null, null, 0, conf);
+      Future<Writable> second = Client.getAsyncRpcResponse();
+      MetricsRecordBuilder rb = getMetrics(client.getClientMetrics());
+      assertGauge("OutstandingCalls", 2, rb);
+      assertCounter("RpcLatencyNumOps", 0L, rb);
+
+      latch.countDown();
+      first.get();
+      second.get();
+      rb = getMetrics(client.getClientMetrics());
+      assertGauge("OutstandingCalls", 0, rb);
+      assertCounter("RpcLatencyNumOps", 2L, rb);
+    } finally {
+      Client.setAsynchronousMode(false);
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout=60000)
   public void testStandAloneClient() throws IOException {
     Client client = new Client(LongWritable.class, conf);
@@ -581,6 +795,40 @@ public Socket answer(InvocationOnMock invocation) throws Throwable {
     }
   }
   
+  /**
+   * Check that the cost the server adds to its calls is reported to the
+   * scheduler of a FairCallQueue.
+   */
+  @Test(timeout=60000)
+  public void testCallCostReportedToScheduler() throws Exception {
+    conf.set(CommonConfigurationKeys.IPC_CALLQUEUE_NAMESPACE + ".0."
+        + CommonConfigurationKeys.IPC_CALLQUEUE_IMPL_KEY,
+        FairCallQueue.class.getName());
+    final TestServer server = new TestServer(1, false);
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        Server.addCallCost(1000);
+      }
+    };
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      for (int i = 0; i < 3; i++) {
+        client.call(new LongWritable(RANDOM.nextLong()),
+            addr, null, null, 0, conf);
+      }
+      ObjectName mxbeanName = new ObjectName(
+          "Hadoop:service=ipc.0,name=DecayRpcScheduler");
+      assertEquals(3000L, ManagementFactory.getPlatformMBeanServer()
+          .getAttribute(mxbeanName, "TotalCallCost"));
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout=60000)
   public void testIpcTimeout() throws IOException {
     // start server
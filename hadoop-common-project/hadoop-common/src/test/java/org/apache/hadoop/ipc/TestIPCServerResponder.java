@@ -21,6 +21,15 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import junit.framework.TestCase;
 
@@ -117,7 +126,9 @@ public void run() {
 
   public void testResponseBuffer() 
       throws IOException, InterruptedException {
-    Server.INITIAL_RESP_BUF_SIZE = 1;
+    // most responses are larger than the pooled buffers
+    conf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_MAX_BUFFER_SIZE_KEY, 1);
     conf.setInt(CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY,
                 1);
     testServerResponder(1, true, 1, 1, 5);
@@ -159,4 +170,69 @@ public void testServerResponder(final int handlerCount,
     server.stop();
   }
 
+  /** A server that postpones every response until it is released. */
+  private static class DeferringServer extends Server {
+    private final BlockingQueue<Call> deferredCalls =
+        new LinkedBlockingQueue<Call>();
+
+    public DeferringServer() throws IOException {
+      super(ADDRESS, 0, BytesWritable.class, 1, conf);
+    }
+
+    @Override
+    public Writable call(RPC.RpcKind rpcKind, String protocol, Writable param,
+        long receiveTime) throws IOException {
+      Call call = Server.getCurCall().get();
+      call.postponeResponse();
+      deferredCalls.add(call);
+      return param;
+    }
+  }
+
+  /**
+   * Responses postponed by the handler are only sent once released, and an
+   * aborted response is received as an error.
+   */
+  public void testDeferResponse() throws Exception {
+    DeferringServer server = new DeferringServer();
+    server.start();
+    final InetSocketAddress address = NetUtils.getConnectAddress(server);
+    final Client client = new Client(BytesWritable.class, conf);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Callable<Writable> caller = new Callable<Writable>() {
+        @Override
+        public Writable call() throws Exception {
+          return client.call(new BytesWritable(BYTES), address);
+        }
+      };
+      Future<Writable> sent = executor.submit(caller);
+      Server.Call call = server.deferredCalls.take();
+      // the single handler has returned, but the client is still waiting.
+      Future<Writable> aborted = executor.submit(caller);
+      Server.Call abortedCall = server.deferredCalls.take();
+      try {
+        sent.get(100, TimeUnit.MILLISECONDS);
+        fail("response was sent before it was released");
+      } catch (TimeoutException e) {
+        // expected
+      }
+
+      call.sendResponse();
+      assertEquals(new BytesWritable(BYTES), sent.get());
+
+      abortedCall.abortResponse(new IOException("aborted"));
+      try {
+        aborted.get();
+        fail("aborted call did not fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof RemoteException);
+        assertTrue(e.getCause().getMessage().contains("aborted"));
+      }
+    } finally {
+      executor.shutdownNow();
+      client.stop();
+      server.stop();
+    }
+  }
 }
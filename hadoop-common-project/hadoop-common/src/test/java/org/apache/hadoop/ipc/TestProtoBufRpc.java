@@ -20,16 +20,27 @@
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.apache.hadoop.test.MetricsAsserts.assertCounterGt;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcErrorCodeProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
@@ -40,6 +51,7 @@
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpc2Proto;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
@@ -47,6 +59,7 @@
 
 
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.Message;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
 
@@ -236,6 +249,34 @@ public void testProtoBufRpc2() throws Exception {
     assertCounterGt("Echo2NumOps", 0L, rpcDetailedMetrics);
   }
 
+  @Test (timeout=5000)
+  public void testAsyncProtoBufRpc() throws Exception {
+    TestRpcService client = getClient();
+    EchoRequestProto echoRequest = EchoRequestProto.newBuilder()
+        .setMessage("hello").build();
+    EmptyRequestProto emptyRequest = EmptyRequestProto.newBuilder().build();
+    Client.setAsynchronousMode(true);
+    try {
+      Assert.assertNull(client.echo(null, echoRequest));
+      Future<Message> echo = ProtobufRpcEngine.getAsyncReturnMessage();
+      Assert.assertNull(client.error(null, emptyRequest));
+      Future<Message> error = ProtobufRpcEngine.getAsyncReturnMessage();
+
+      Assert.assertEquals("hello",
+          ((EchoResponseProto) echo.get()).getMessage());
+      try {
+        error.get();
+        Assert.fail("Expected exception is not thrown");
+      } catch (ExecutionException e) {
+        RemoteException re = (RemoteException) e.getCause();
+        Assert.assertEquals(RpcErrorCodeProto.ERROR_RPC_SERVER,
+            re.getErrorCode());
+      }
+    } finally {
+      Client.setAsynchronousMode(false);
+    }
+  }
+
   @Test (timeout=5000)
   public void testProtoBufRandomException() throws Exception {
     TestRpcService client = getClient();
@@ -332,4 +373,142 @@ public void testEnsureNoLogIfDisabled() throws IOException, ServiceException {
     // make sure we never called into Log slow RPC routine.
     assertEquals(before, after);
   }
+
+  /**
+   * Server side of a state id exchange, which holds back echo calls until
+   * the test advances the state.
+   */
+  private static class TestServerAlignmentContext implements AlignmentContext {
+    private final AtomicLong stateId = new AtomicLong(0);
+    private final AtomicInteger checks = new AtomicInteger(0);
+
+    @Override
+    public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public void receiveResponseState(RpcResponseHeaderProto header) {
+    }
+
+    @Override
+    public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    }
+
+    @Override
+    public long receiveRequestState(RpcRequestHeaderProto header) {
+      return header.getStateId();
+    }
+
+    @Override
+    public long getLastSeenStateId() {
+      checks.incrementAndGet();
+      return stateId.get();
+    }
+
+    @Override
+    public synchronized void waitForStateIdAbove(long id, long timeoutMs)
+        throws InterruptedException {
+      if (stateId.get() <= id) {
+        wait(timeoutMs);
+      }
+    }
+
+    @Override
+    public boolean isCoordinatedCall(String protocolName, String methodName) {
+      return "echo".equals(methodName);
+    }
+
+    synchronized void advance(long id) {
+      stateId.set(id);
+      notifyAll();
+    }
+  }
+
+  /** Client side of a state id exchange, which has seen a fixed state. */
+  private static class TestClientAlignmentContext
+      implements AlignmentContext {
+    private final long stateId;
+
+    TestClientAlignmentContext(long stateId) {
+      this.stateId = stateId;
+    }
+
+    @Override
+    public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    }
+
+    @Override
+    public void receiveResponseState(RpcResponseHeaderProto header) {
+    }
+
+    @Override
+    public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+      header.setStateId(stateId);
+    }
+
+    @Override
+    public long receiveRequestState(RpcRequestHeaderProto header) {
+      return 0;
+    }
+
+    @Override
+    public long getLastSeenStateId() {
+      return stateId;
+    }
+
+    @Override
+    public void waitForStateIdAbove(long id, long timeoutMs) {
+    }
+
+    @Override
+    public boolean isCoordinatedCall(String protocolName, String methodName) {
+      return false;
+    }
+  }
+
+  /**
+   * A call from a client ahead of the server is held back, without keeping
+   * a handler busy, until the server reaches the state of the client.
+   */
+  @Test(timeout = 20000)
+  public void testCallHeldBackUntilStateReached() throws Exception {
+    final TestServerAlignmentContext serverContext =
+        new TestServerAlignmentContext();
+    RPC.Server alignedServer = new RPC.Builder(conf)
+        .setProtocol(TestRpcService.class)
+        .setInstance(TestProtobufRpcProto.newReflectiveBlockingService(
+            new PBServerImpl()))
+        .setBindAddress(ADDRESS).setPort(PORT).setNumHandlers(1)
+        .setAlignmentContext(serverContext).build();
+    alignedServer.start();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final TestRpcService client = RPC.getProtocolProxy(
+          TestRpcService.class, 0, NetUtils.getConnectAddress(alignedServer),
+          UserGroupInformation.getCurrentUser(), conf,
+          NetUtils.getDefaultSocketFactory(conf), 0, null, null,
+          new TestClientAlignmentContext(10)).getProxy();
+      Future<String> echo = executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return client.echo(null, EchoRequestProto.newBuilder()
+              .setMessage("hello").build()).getMessage();
+        }
+      });
+      Thread.sleep(500);
+      assertFalse(echo.isDone());
+      // the only handler still serves calls that do not wait
+      client.ping(null, EmptyRequestProto.newBuilder().build());
+      // the call is not checked over and over while held back
+      assertTrue("checks: " + serverContext.checks.get(),
+          serverContext.checks.get() < 20);
+
+      serverContext.advance(10);
+      assertEquals("hello", echo.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+      alignedServer.stop();
+    }
+  }
 }
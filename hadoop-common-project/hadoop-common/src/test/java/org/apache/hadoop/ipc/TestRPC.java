@@ -305,6 +305,16 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       return new ProtocolProxy<T>(protocol, proxy, false);
     }
 
+    @Override
+    public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+        InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
+        SocketFactory factory, int rpcTimeout,
+        RetryPolicy connectionRetryPolicy, AtomicBoolean fallbackToSimpleAuth,
+        AlignmentContext alignmentContext) throws IOException {
+      return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+    }
+
     @Override
     public org.apache.hadoop.ipc.RPC.Server getServer(Class<?> protocol,
         Object instance, String bindAddress, int port, int numHandlers,
@@ -1016,6 +1026,14 @@ public void testRpcMetrics() throws Exception {
           rpcMetrics);
       MetricsAsserts.assertQuantileGauges("RpcProcessingTime" + interval + "s",
           rpcMetrics);
+      // the request and response buffers are reused
+      assertTrue("Expected buffers reused from the pool",
+          getLongCounter("RpcBufferPoolHits", rpcMetrics) > 1000);
+      assertTrue("Expected few buffers allocated",
+          getLongCounter("RpcBufferAllocations", rpcMetrics) < 100);
+      assertTrue("Expected the allocated bytes to be counted",
+          getLongCounter("RpcBufferAllocatedBytes", rpcMetrics)
+              >= RpcBufferPool.MIN_BUFFER_SIZE);
     } finally {
       if (proxy != null) {
         RPC.stopProxy(proxy);
@@ -1143,6 +1161,57 @@ && countThreads(CallQueueManager.class.getName()) != 1) {
     assertTrue("RetriableException not received", succeeded);
   }
 
+  /**
+   * Test that the calls routed to a handler pool are processed while the
+   * handlers of the default pool are busy.
+   */
+  @Test (timeout=30000)
+  public void testHandlerPools() throws Exception {
+    final Configuration conf = new Configuration();
+    final String ns = CommonConfigurationKeys.IPC_CALLQUEUE_NAMESPACE + ".0";
+    conf.set(ns + "." + CommonConfigurationKeys.IPC_HANDLER_POOLS_KEY, "fast");
+    conf.set(ns + ".fast." + CommonConfigurationKeys.IPC_HANDLER_POOL_METHODS_KEY,
+        "ping, echo");
+    conf.setInt(ns + ".fast."
+        + CommonConfigurationKeys.IPC_HANDLER_POOL_HANDLER_COUNT_KEY, 2);
+    final Server server = new RPC.Builder(conf)
+        .setProtocol(TestProtocol.class).setInstance(new TestImpl())
+        .setBindAddress(ADDRESS).setPort(0).setNumHandlers(1).build();
+    server.start();
+    final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    final TestProtocol proxy =
+        RPC.getProxy(TestProtocol.class, TestProtocol.versionID,
+            NetUtils.getConnectAddress(server), conf);
+    try {
+      // occupy the only default handler, and queue another call behind it
+      for (int i = 0; i < 2; i++) {
+        executorService.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException, InterruptedException {
+            proxy.sleep(100000);
+            return null;
+          }
+        });
+      }
+      while (server.getCallQueueLen() != 1) {
+        Thread.sleep(100);
+      }
+      proxy.ping();
+      assertEquals("hello", proxy.echo("hello"));
+      assertEquals(1, server.getCallQueueLen());
+      assertEquals(0, server.getCallQueueLen("fast"));
+
+      MetricsRecordBuilder rb =
+          getMetrics(server.getHandlerPoolMetrics("fast").name());
+      assertCounter("RpcQueueTimeNumOps", 2L, rb);
+      assertCounter("RpcProcessingTimeNumOps", 2L, rb);
+    } finally {
+      server.stop();
+      RPC.stopProxy(proxy);
+      executorService.shutdownNow();
+    }
+  }
+
   public static void main(String[] args) throws IOException {
     new TestRPC().testCallsInternal(conf);
 
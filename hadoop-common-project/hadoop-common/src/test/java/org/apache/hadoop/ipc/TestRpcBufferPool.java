@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.apache.hadoop.ipc.RpcBufferPool.MIN_BUFFER_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestRpcBufferPool {
+  private static final int MAX_BUFFER_SIZE = MIN_BUFFER_SIZE * 4;
+
+  @Test
+  public void testSizeClasses() {
+    RpcBufferPool pool = new RpcBufferPool(true, MAX_BUFFER_SIZE,
+        MAX_BUFFER_SIZE * 30, null);
+    ByteBuffer a = pool.getBuffer(1);
+    assertEquals(MIN_BUFFER_SIZE, a.capacity());
+    assertEquals(0, a.position());
+    assertEquals(1, a.limit());
+    assertEquals(MIN_BUFFER_SIZE, pool.getBuffer(MIN_BUFFER_SIZE).capacity());
+    assertEquals(MIN_BUFFER_SIZE * 2,
+        pool.getBuffer(MIN_BUFFER_SIZE + 1).capacity());
+    assertEquals(MAX_BUFFER_SIZE,
+        pool.getBuffer(MAX_BUFFER_SIZE).capacity());
+    // larger buffers are not pooled
+    ByteBuffer large = pool.getBuffer(MAX_BUFFER_SIZE + 1);
+    assertEquals(MAX_BUFFER_SIZE + 1, large.capacity());
+    pool.returnBuffer(large);
+    assertEquals(0, pool.countBuffersOfSize(MAX_BUFFER_SIZE + 1));
+  }
+
+  @Test
+  public void testReuse() {
+    RpcBufferPool pool = new RpcBufferPool(true, MAX_BUFFER_SIZE,
+        MAX_BUFFER_SIZE * 30, null);
+    ByteBuffer a = pool.getBuffer(100);
+    a.putInt(0xdeadbeef);
+    pool.returnBuffer(a);
+    assertEquals(1, pool.countBuffersOfSize(MIN_BUFFER_SIZE));
+
+    // the buffer is reused for any size of its class, and reset
+    ByteBuffer b = pool.getBuffer(200);
+    assertSame(a, b);
+    assertEquals(0, b.position());
+    assertEquals(200, b.limit());
+    assertNotSame(b, pool.getBuffer(200));
+  }
+
+  @Test
+  public void testCapacity() {
+    // three size classes share the capacity of six of the largest buffers
+    RpcBufferPool pool = new RpcBufferPool(true, MAX_BUFFER_SIZE,
+        MAX_BUFFER_SIZE * 6, null);
+    ByteBuffer[] buffers = new ByteBuffer[3];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = pool.getBuffer(MAX_BUFFER_SIZE);
+    }
+    for (ByteBuffer buffer : buffers) {
+      pool.returnBuffer(buffer);
+    }
+    assertEquals(2, pool.countBuffersOfSize(MAX_BUFFER_SIZE));
+  }
+
+  @Test
+  public void testDisabled() {
+    RpcBufferPool pool = new RpcBufferPool(false, MAX_BUFFER_SIZE,
+        MAX_BUFFER_SIZE * 30, null);
+    ByteBuffer a = pool.getBuffer(100);
+    assertEquals(100, a.capacity());
+    pool.returnBuffer(a);
+    assertNotSame(a, pool.getBuffer(100));
+    assertEquals(0, pool.countBuffersOfSize(100));
+  }
+}
@@ -165,6 +165,8 @@ interface Failover {
     int     CONNECTION_RETRIES_DEFAULT = 0;
     String  CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_KEY = PREFIX + "connection.retries.on.timeouts";
     int     CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_DEFAULT = 0;
+    String  OBSERVER_PROBE_PERIOD_KEY = PREFIX + "observer.probe.period.millis";
+    long    OBSERVER_PROBE_PERIOD_DEFAULT = MINUTE;
   }
   
   /** dfs.client.write configuration properties */
@@ -175,6 +177,10 @@ interface Write {
     int     MAX_PACKETS_IN_FLIGHT_DEFAULT = 80;
     String  EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_KEY = PREFIX + "exclude.nodes.cache.expiry.interval.millis";
     long    EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT = 10*MINUTE;
+    String  PARALLEL_PIPELINES_ENABLED_KEY = PREFIX + "parallel-pipelines.enabled";
+    boolean PARALLEL_PIPELINES_ENABLED_DEFAULT = false;
+    String  PARALLEL_PIPELINES_MAX_PACKETS_IN_FLIGHT_KEY = PREFIX + "parallel-pipelines.max-packets-in-flight";
+    int     PARALLEL_PIPELINES_MAX_PACKETS_IN_FLIGHT_DEFAULT = 2 * MAX_PACKETS_IN_FLIGHT_DEFAULT;
 
     interface ByteArrayManager {
       String PREFIX = Write.PREFIX + "byte-array-manager.";
@@ -219,6 +225,23 @@ interface Read {
     
     String  PREFETCH_SIZE_KEY = PREFIX + "prefetch.size"; 
 
+    interface Vectored {
+      String PREFIX = Read.PREFIX + "vectored.";
+
+      String  MIN_SEEK_SIZE_KEY = PREFIX + "min.seek.size";
+      int     MIN_SEEK_SIZE_DEFAULT = 4 * 1024;
+      String  MAX_MERGED_SIZE_KEY = PREFIX + "max.merged.size";
+      int     MAX_MERGED_SIZE_DEFAULT = 1024 * 1024;
+    }
+
+    interface Striped {
+      String PREFIX = Read.PREFIX + "striped.";
+
+      String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+      // the internal blocks of an RS-6-3 group, for two concurrent reads
+      int     THREADPOOL_SIZE_DEFAULT = 18;
+    }
+
     interface ShortCircuit {
       String PREFIX = Read.PREFIX + "shortcircuit.";
 
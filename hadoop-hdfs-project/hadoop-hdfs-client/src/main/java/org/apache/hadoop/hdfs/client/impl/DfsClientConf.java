@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.client.impl;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
@@ -103,6 +104,8 @@ public class DfsClientConf {
   private final ChecksumOpt defaultChecksumOpt;
   private final int writePacketSize;
   private final int writeMaxPackets;
+  private final boolean writeParallelPipelinesEnabled;
+  private final int writeParallelPipelinesMaxPackets;
   private final ByteArrayManager.Conf writeByteArrayManagerConf;
   private final int socketTimeout;
   private final long excludedNodesCacheExpiry;
@@ -114,6 +117,9 @@ public class DfsClientConf {
   private final int blockWriteLocateFollowingInitialDelayMs;
   private final long defaultBlockSize;
   private final long prefetchSize;
+  private final int vectoredReadMinSeekSize;
+  private final int vectoredReadMaxMergedSize;
+  private final int stripedReadThreadpoolSize;
   private final short defaultReplication;
   private final String taskId;
   private final FsPermission uMask;
@@ -176,10 +182,19 @@ public DfsClientConf(Configuration conf) {
     writeMaxPackets = conf.getInt(
         Write.MAX_PACKETS_IN_FLIGHT_KEY,
         Write.MAX_PACKETS_IN_FLIGHT_DEFAULT);
-
+    writeParallelPipelinesEnabled = conf.getBoolean(
+        Write.PARALLEL_PIPELINES_ENABLED_KEY,
+        Write.PARALLEL_PIPELINES_ENABLED_DEFAULT);
+    writeParallelPipelinesMaxPackets = conf.getInt(
+        Write.PARALLEL_PIPELINES_MAX_PACKETS_IN_FLIGHT_KEY,
+        Write.PARALLEL_PIPELINES_MAX_PACKETS_IN_FLIGHT_DEFAULT);
+
+    // parallel pipelines keep more packets in flight, so reuse their buffers
+    // unless told otherwise
     final boolean byteArrayManagerEnabled = conf.getBoolean(
         Write.ByteArrayManager.ENABLED_KEY,
-        Write.ByteArrayManager.ENABLED_DEFAULT);
+        Write.ByteArrayManager.ENABLED_DEFAULT
+            || writeParallelPipelinesEnabled);
     if (!byteArrayManagerEnabled) {
       writeByteArrayManagerConf = null;
     } else {
@@ -206,6 +221,17 @@ public DfsClientConf(Configuration conf) {
         Write.EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT);
     prefetchSize = conf.getLong(Read.PREFETCH_SIZE_KEY,
         10 * defaultBlockSize);
+    vectoredReadMinSeekSize = conf.getInt(Read.Vectored.MIN_SEEK_SIZE_KEY,
+        Read.Vectored.MIN_SEEK_SIZE_DEFAULT);
+    vectoredReadMaxMergedSize = conf.getInt(
+        Read.Vectored.MAX_MERGED_SIZE_KEY,
+        Read.Vectored.MAX_MERGED_SIZE_DEFAULT);
+    stripedReadThreadpoolSize = conf.getInt(
+        Read.Striped.THREADPOOL_SIZE_KEY,
+        Read.Striped.THREADPOOL_SIZE_DEFAULT);
+    Preconditions.checkArgument(stripedReadThreadpoolSize > 0,
+        "The value of " + Read.Striped.THREADPOOL_SIZE_KEY
+        + " must be greater than 0.");
     numCachedConnRetry = conf.getInt(DFS_CLIENT_CACHED_CONN_RETRY_KEY,
         DFS_CLIENT_CACHED_CONN_RETRY_DEFAULT);
     numBlockWriteRetry = conf.getInt(
@@ -385,6 +411,20 @@ public int getWriteMaxPackets() {
     return writeMaxPackets;
   }
 
+  /**
+   * @return the writeParallelPipelinesEnabled
+   */
+  public boolean isWriteParallelPipelinesEnabled() {
+    return writeParallelPipelinesEnabled;
+  }
+
+  /**
+   * @return the writeParallelPipelinesMaxPackets
+   */
+  public int getWriteParallelPipelinesMaxPackets() {
+    return writeParallelPipelinesMaxPackets;
+  }
+
   /**
    * @return the writeByteArrayManagerConf
    */
@@ -448,6 +488,27 @@ public long getPrefetchSize() {
     return prefetchSize;
   }
 
+  /**
+   * @return the vectoredReadMinSeekSize
+   */
+  public int getVectoredReadMinSeekSize() {
+    return vectoredReadMinSeekSize;
+  }
+
+  /**
+   * @return the vectoredReadMaxMergedSize
+   */
+  public int getVectoredReadMaxMergedSize() {
+    return vectoredReadMaxMergedSize;
+  }
+
+  /**
+   * @return the stripedReadThreadpoolSize
+   */
+  public int getStripedReadThreadpoolSize() {
+    return stripedReadThreadpoolSize;
+  }
+
   /**
    * @return the defaultReplication
    */
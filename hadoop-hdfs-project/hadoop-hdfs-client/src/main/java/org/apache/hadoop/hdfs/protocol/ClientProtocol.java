@@ -37,11 +37,13 @@
 import org.apache.hadoop.fs.permission.AclStatus;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.RollingUpgradeAction;
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSelector;
+import org.apache.hadoop.hdfs.server.namenode.ha.ReadOnly;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
@@ -121,6 +123,7 @@ public interface ClientProtocol {
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   LocatedBlocks getBlockLocations(String src, long offset, long length)
       throws IOException;
 
@@ -130,6 +133,7 @@ LocatedBlocks getBlockLocations(String src, long offset, long length)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   FsServerDefaults getServerDefaults() throws IOException;
 
   /**
@@ -279,6 +283,21 @@ boolean setReplication(String src, short replication)
   void setStoragePolicy(String src, String policyName)
       throws IOException;
 
+  /**
+   * Set the erasure coding policy of a directory: the files created in the
+   * directory and its subdirectories afterwards are striped with it. The
+   * existing files keep their layout.
+   * @param src Path of an existing directory.
+   * @param ecPolicyName The name of the erasure coding policy, or null for
+   *                     the default one
+   * @throws java.io.FileNotFoundException If <code>src</code> is not found
+   * @throws IOException If <code>src</code> is not a directory, or the policy
+   *           is unknown
+   */
+  @Idempotent
+  void setErasureCodingPolicy(String src, String ecPolicyName)
+      throws IOException;
+
   /**
    * Get the storage policy for a file/directory.
    * @param path
@@ -291,6 +310,7 @@ void setStoragePolicy(String src, String policyName)
    *           If file/dir <code>src</code> is not found
    */
   @Idempotent
+  @ReadOnly
   BlockStoragePolicy getStoragePolicy(String path) throws IOException;
 
   /**
@@ -653,6 +673,7 @@ boolean mkdirs(String src, FsPermission masked, boolean createParent)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException;
 
@@ -663,6 +684,7 @@ DirectoryListing getListing(String src, byte[] startAfter,
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   SnapshottableDirectoryStatus[] getSnapshottableDirListing()
       throws IOException;
 
@@ -757,6 +779,7 @@ DatanodeStorageReport[] getDatanodeStorageReport(
    *           a symlink.
    */
   @Idempotent
+  @ReadOnly
   long getPreferredBlockSize(String filename)
       throws IOException;
 
@@ -936,6 +959,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileInfo(String src) throws IOException;
 
   /**
@@ -950,6 +974,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   boolean isFileClosed(String src) throws IOException;
 
   /**
@@ -966,6 +991,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileLinkInfo(String src) throws IOException;
 
   /**
@@ -979,6 +1005,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   ContentSummary getContentSummary(String path) throws IOException;
 
   /**
@@ -1091,6 +1118,7 @@ void createSymlink(String target, String link, FsPermission dirPerm,
    *           or an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   String getLinkTarget(String path) throws IOException;
 
   /**
@@ -1229,6 +1257,7 @@ void disallowSnapshot(String snapshotRoot)
    * @throws IOException on error
    */
   @Idempotent
+  @ReadOnly
   SnapshotDiffReport getSnapshotDiffReport(String snapshotRoot,
       String fromSnapshot, String toSnapshot) throws IOException;
 
@@ -1361,6 +1390,7 @@ void removeAclEntries(String src, List<AclEntry> aclSpec)
    * Gets the ACLs of files and directories.
    */
   @Idempotent
+  @ReadOnly
   AclStatus getAclStatus(String src) throws IOException;
 
   /**
@@ -1374,6 +1404,7 @@ void createEncryptionZone(String src, String keyName)
    * Get the encryption zone for a path.
    */
   @Idempotent
+  @ReadOnly
   EncryptionZone getEZForPath(String src)
     throws IOException;
 
@@ -1418,6 +1449,7 @@ void setXAttr(String src, XAttr xAttr, EnumSet<XAttrSetFlag> flag)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
       throws IOException;
 
@@ -1433,6 +1465,7 @@ List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> listXAttrs(String src)
       throws IOException;
 
@@ -1467,6 +1500,7 @@ List<XAttr> listXAttrs(String src)
    * @throws IOException see specific implementation
    */
   @Idempotent
+  @ReadOnly
   void checkAccess(String path, FsAction mode) throws IOException;
 
   /**
@@ -1483,4 +1517,59 @@ List<XAttr> listXAttrs(String src)
    */
   @Idempotent
   EventBatchList getEditsFromTxid(long txid) throws IOException;
+
+  /**
+   * Get the HA service state of the NameNode, e.g. for a client to find the
+   * observers it can send reads to.
+   */
+  @Idempotent
+  HAServiceState getHAServiceState() throws IOException;
+
+  /**
+   * Create a number of new, empty files under a single acquisition of the
+   * namesystem lock and a single sync of the edit log, as if by
+   * {@link #create} for each of them.
+   * <p>
+   * The call is not retried on failover, as the NameNode does not keep the
+   * results in its retry cache.
+   *
+   * @param srcs the paths of the files to create
+   * @return the file status or the exception {@link #create} would have
+   *         thrown, for each path in order
+   * @throws IOException if the batch as a whole fails, e.g. as the
+   *           NameNode is in safe mode or standby
+   */
+  List<PathResult<HdfsFileStatus>> multiCreate(String[] srcs,
+      FsPermission masked, String clientName, EnumSetWritable<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize,
+      CryptoProtocolVersion[] supportedVersions) throws IOException;
+
+  /**
+   * Delete a number of files or directories under a single acquisition of
+   * the namesystem lock and a single sync of the edit log, as if by
+   * {@link #delete} for each of them.
+   * <p>
+   * The call is not retried on failover, as the NameNode does not keep the
+   * results in its retry cache.
+   *
+   * @return whether each path was removed, or the exception {@link #delete}
+   *         would have thrown for it, in order
+   * @throws IOException if the batch as a whole fails
+   */
+  List<PathResult<Boolean>> multiDelete(String[] srcs, boolean recursive)
+      throws IOException;
+
+  /**
+   * Get the file info of a number of files or directories under a single
+   * acquisition of the namesystem lock, as if by {@link #getFileInfo} for
+   * each of them.
+   *
+   * @return the file info, null if the path is not found, or the exception
+   *         {@link #getFileInfo} would have thrown, for each path in order
+   * @throws IOException if the batch as a whole fails
+   */
+  @Idempotent
+  @ReadOnly
+  List<PathResult<HdfsFileStatus>> multiGetFileInfo(String[] srcs)
+      throws IOException;
 }
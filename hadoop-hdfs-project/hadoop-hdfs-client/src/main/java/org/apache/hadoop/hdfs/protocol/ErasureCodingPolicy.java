@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.erasurecode.ECSchema;
+
+/**
+ * The erasure coding policy of striped files: the data of a block group is
+ * striped over the data blocks of the group in cells of the cell size, and
+ * each stripe of cells is coded into the parity blocks with the schema.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class ErasureCodingPolicy {
+  /** The cell size of the system policies */
+  public static final int DEFAULT_CELL_SIZE = 64 * 1024;
+
+  /** Reed-Solomon with 6 data and 3 parity blocks, the default policy */
+  public static final ErasureCodingPolicy RS_6_3_POLICY =
+      new ErasureCodingPolicy("RS-6-3-64k", (byte) 1,
+          new ECSchema(ECSchema.RS_CODEC_NAME, 6, 3), DEFAULT_CELL_SIZE);
+  /** Reed-Solomon with 3 data and 2 parity blocks, for smaller clusters */
+  public static final ErasureCodingPolicy RS_3_2_POLICY =
+      new ErasureCodingPolicy("RS-3-2-64k", (byte) 2,
+          new ECSchema(ECSchema.RS_CODEC_NAME, 3, 2), DEFAULT_CELL_SIZE);
+
+  private static final List<ErasureCodingPolicy> SYSTEM_POLICIES =
+      Collections.unmodifiableList(Arrays.asList(RS_6_3_POLICY,
+          RS_3_2_POLICY));
+
+  private final String name;
+  private final byte id;
+  private final ECSchema schema;
+  private final int cellSize;
+
+  public ErasureCodingPolicy(String name, byte id, ECSchema schema,
+      int cellSize) {
+    this.name = name;
+    this.id = id;
+    this.schema = schema;
+    this.cellSize = cellSize;
+  }
+
+  /** @return the policies the file system supports */
+  public static List<ErasureCodingPolicy> getSystemPolicies() {
+    return SYSTEM_POLICIES;
+  }
+
+  /** @return the system policy of the given name, or null */
+  public static ErasureCodingPolicy getSystemPolicy(String name) {
+    for (ErasureCodingPolicy policy : SYSTEM_POLICIES) {
+      if (policy.getName().equals(name)) {
+        return policy;
+      }
+    }
+    return null;
+  }
+
+  /** @return the system policy of the given ID, or null */
+  public static ErasureCodingPolicy getSystemPolicy(byte id) {
+    for (ErasureCodingPolicy policy : SYSTEM_POLICIES) {
+      if (policy.getId() == id) {
+        return policy;
+      }
+    }
+    return null;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public byte getId() {
+    return id;
+  }
+
+  public ECSchema getSchema() {
+    return schema;
+  }
+
+  public int getCellSize() {
+    return cellSize;
+  }
+
+  public int getNumDataUnits() {
+    return schema.getNumDataUnits();
+  }
+
+  public int getNumParityUnits() {
+    return schema.getNumParityUnits();
+  }
+
+  /** @return the number of data and parity blocks of a block group */
+  public int getNumAllUnits() {
+    return getNumDataUnits() + getNumParityUnits();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ErasureCodingPolicy)) {
+      return false;
+    }
+    ErasureCodingPolicy that = (ErasureCodingPolicy) o;
+    return name.equals(that.name) && id == that.id
+        && schema.equals(that.schema) && cellSize == that.cellSize;
+  }
+
+  @Override
+  public int hashCode() {
+    return name.hashCode() * 31 + cellSize;
+  }
+
+  @Override
+  public String toString() {
+    return "ErasureCodingPolicy=[Name=" + name + ", Schema=" + schema
+        + ", CellSize=" + cellSize + ", Id=" + id + "]";
+  }
+}
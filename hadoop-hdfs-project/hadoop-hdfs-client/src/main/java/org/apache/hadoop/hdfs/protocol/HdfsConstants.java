@@ -62,6 +62,13 @@ public final class HdfsConstants {
    */
   public static final long GRANDFATHER_INODE_ID = 0;
   public static final byte BLOCK_STORAGE_POLICY_ID_UNSPECIFIED = 0;
+  /**
+   * The internal blocks of a striped block group have the ID of the group
+   * plus their index in the group, in the lowest bits of the ID. Block group
+   * IDs are negative.
+   */
+  public static final int MAX_BLOCKS_IN_GROUP = 16;
+  public static final long BLOCK_GROUP_INDEX_MASK = MAX_BLOCKS_IN_GROUP - 1;
   /**
    * A prefix put before the namenode URI inside the "service" field
    * of a delgation token, indicating that the URI is a logical (HA)
@@ -51,6 +51,8 @@ public class HdfsFileStatus {
   // Used by dir, not including dot and dotdot. Always zero for a regular file.
   private final int childrenNum;
   private final byte storagePolicy;
+  /** The erasure coding policy of a striped file or of a directory */
+  private final ErasureCodingPolicy ecPolicy;
 
   public static final byte[] EMPTY_NAME = new byte[0];
 
@@ -74,6 +76,20 @@ public HdfsFileStatus(long length, boolean isdir, int block_replication,
       FsPermission permission, String owner, String group, byte[] symlink,
       byte[] path, long fileId, int childrenNum, FileEncryptionInfo feInfo,
       byte storagePolicy) {
+    this(length, isdir, block_replication, blocksize, modification_time,
+        access_time, permission, owner, group, symlink, path, fileId,
+        childrenNum, feInfo, storagePolicy, null);
+  }
+
+  /**
+   * Constructor of the status of a file with an erasure coding policy, or
+   * of a directory whose new files get it.
+   */
+  public HdfsFileStatus(long length, boolean isdir, int block_replication,
+      long blocksize, long modification_time, long access_time,
+      FsPermission permission, String owner, String group, byte[] symlink,
+      byte[] path, long fileId, int childrenNum, FileEncryptionInfo feInfo,
+      byte storagePolicy, ErasureCodingPolicy ecPolicy) {
     this.length = length;
     this.isdir = isdir;
     this.block_replication = (short)block_replication;
@@ -93,6 +109,7 @@ public HdfsFileStatus(long length, boolean isdir, int block_replication,
     this.childrenNum = childrenNum;
     this.feInfo = feInfo;
     this.storagePolicy = storagePolicy;
+    this.ecPolicy = ecPolicy;
   }
 
   /**
@@ -259,6 +276,14 @@ public final byte getStoragePolicy() {
     return storagePolicy;
   }
 
+  /**
+   * @return the erasure coding policy of a striped file, or the policy the
+   * new files of a directory get; null otherwise
+   */
+  public final ErasureCodingPolicy getErasureCodingPolicy() {
+    return ecPolicy;
+  }
+
   public final FileStatus makeQualified(URI defaultUri, Path path) {
     return new FileStatus(getLen(), isDir(), getReplication(),
         getBlockSize(), getModificationTime(),
@@ -187,6 +187,11 @@ public void addCachedLoc(DatanodeInfo loc) {
     cachedLocs = cachedList.toArray(cachedLocs);
   }
 
+  /** @return whether the block is a striped block group */
+  public boolean isStriped() {
+    return false;
+  }
+
   /**
    * @return Datanodes with a cached block replica
    */
@@ -37,6 +37,8 @@ public class LocatedBlocks {
   private final LocatedBlock lastLocatedBlock;
   private final boolean isLastBlockComplete;
   private final FileEncryptionInfo fileEncryptionInfo;
+  /** The erasure coding policy of a striped file, or null */
+  private final ErasureCodingPolicy ecPolicy;
 
   public LocatedBlocks() {
     fileLength = 0;
@@ -45,17 +47,27 @@ public LocatedBlocks() {
     lastLocatedBlock = null;
     isLastBlockComplete = false;
     fileEncryptionInfo = null;
+    ecPolicy = null;
   }
 
   public LocatedBlocks(long flength, boolean isUnderConstuction,
     List<LocatedBlock> blks, LocatedBlock lastBlock,
     boolean isLastBlockCompleted, FileEncryptionInfo feInfo) {
+    this(flength, isUnderConstuction, blks, lastBlock, isLastBlockCompleted,
+        feInfo, null);
+  }
+
+  public LocatedBlocks(long flength, boolean isUnderConstuction,
+    List<LocatedBlock> blks, LocatedBlock lastBlock,
+    boolean isLastBlockCompleted, FileEncryptionInfo feInfo,
+    ErasureCodingPolicy ecPolicy) {
     fileLength = flength;
     blocks = blks;
     underConstruction = isUnderConstuction;
     this.lastLocatedBlock = lastBlock;
     this.isLastBlockComplete = isLastBlockCompleted;
     this.fileEncryptionInfo = feInfo;
+    this.ecPolicy = ecPolicy;
   }
 
   /**
@@ -111,6 +123,14 @@ public FileEncryptionInfo getFileEncryptionInfo() {
     return fileEncryptionInfo;
   }
 
+  /**
+   * @return the erasure coding policy of a striped file, whose blocks are
+   * {@link LocatedStripedBlock}s, or null
+   */
+  public ErasureCodingPolicy getErasureCodingPolicy() {
+    return ecPolicy;
+  }
+
   /**
    * Find block containing specified offset.
    *
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The result of a batched operation for one of its paths: either a value,
+ * or the exception the operation failed with for the path.
+ *
+ * @param <T> the type of the value
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class PathResult<T> {
+  private final T value;
+  private final IOException exception;
+
+  private PathResult(T value, IOException exception) {
+    this.value = value;
+    this.exception = exception;
+  }
+
+  public static <T> PathResult<T> success(T value) {
+    return new PathResult<T>(value, null);
+  }
+
+  public static <T> PathResult<T> failure(IOException exception) {
+    Preconditions.checkNotNull(exception);
+    return new PathResult<T>(null, exception);
+  }
+
+  public boolean isSuccess() {
+    return exception == null;
+  }
+
+  /**
+   * @return the value of the operation for the path
+   * @throws IOException the exception the operation failed with for the path
+   */
+  public T get() throws IOException {
+    if (exception != null) {
+      throw exception;
+    }
+    return value;
+  }
+
+  /** @return the value, or null if the operation failed */
+  public T getValue() {
+    return value;
+  }
+
+  /** @return the exception, or null if the operation succeeded */
+  public IOException getException() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccess() ? "success: " + value : "failure: " + exception;
+  }
+}
@@ -23,6 +23,7 @@
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.util.DirectBufferPool;
@@ -195,14 +196,31 @@ private void doRead(ReadableByteChannel ch, InputStream in)
    * Rewrite the last-read packet on the wire to the given output stream.
    */
   public void mirrorPacketTo(DataOutputStream mirrorOut) throws IOException {
-    Preconditions.checkState(!useDirectBuffers,
-        "Currently only supported for non-direct buffers");
-    mirrorOut.write(curPacketBuf.array(),
-        curPacketBuf.arrayOffset(),
-        curPacketBuf.remaining());
+    if (!useDirectBuffers) {
+      mirrorOut.write(curPacketBuf.array(),
+          curPacketBuf.arrayOffset(),
+          curPacketBuf.remaining());
+    } else {
+      // a stream without a channel can only take a copy on the heap
+      byte[] packet = new byte[curPacketBuf.remaining()];
+      curPacketBuf.duplicate().get(packet);
+      mirrorOut.write(packet);
+    }
+  }
+
+
+  /**
+   * Rewrite the last-read packet on the wire to the given channel, without
+   * copying it out of a direct buffer.
+   */
+  public void mirrorPacketTo(WritableByteChannel mirrorOut)
+      throws IOException {
+    ByteBuffer packet = curPacketBuf.duplicate();
+    while (packet.hasRemaining()) {
+      mirrorOut.write(packet);
+    }
   }
 
-  
   private static void doReadFully(ReadableByteChannel ch, InputStream in,
       ByteBuffer buf) throws IOException {
     if (ch != null) {
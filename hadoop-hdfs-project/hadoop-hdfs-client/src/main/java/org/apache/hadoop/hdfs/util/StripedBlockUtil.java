@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfoWithStorage;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The layout of striped block groups. The data of a group is cut into cells,
+ * which go round-robin to its data blocks: the i-th cell of the group is in
+ * the data block i % numDataUnits. A stripe is a row of cells, one per data
+ * block, with the cells of the parity blocks coded from them. Only the last
+ * stripe of a group may be partial; its parity cells are as long as its
+ * first cell, and coded as if its missing bytes were zeros.
+ */
+@InterfaceAudience.Private
+public final class StripedBlockUtil {
+  private StripedBlockUtil() {
+  }
+
+  /** @return whether the block ID is of a striped block group or block */
+  public static boolean isStripedBlockID(long id) {
+    return id < 0;
+  }
+
+  /** @return the ID of the group of an internal block */
+  public static long getBlockGroupId(long internalBlockId) {
+    return internalBlockId & ~HdfsConstants.BLOCK_GROUP_INDEX_MASK;
+  }
+
+  /** @return the index of an internal block in its group */
+  public static int getBlockIndex(Block internalBlock) {
+    return (int) (internalBlock.getBlockId()
+        & HdfsConstants.BLOCK_GROUP_INDEX_MASK);
+  }
+
+  /**
+   * @return the length of an internal block of a group holding the given
+   * bytes of data
+   */
+  public static long getInternalBlockLength(long dataSize,
+      ErasureCodingPolicy policy, int idxInBlockGroup) {
+    return getInternalBlockLength(dataSize, policy.getCellSize(),
+        policy.getNumDataUnits(), idxInBlockGroup);
+  }
+
+  public static long getInternalBlockLength(long dataSize, int cellSize,
+      int numDataBlocks, int idxInBlockGroup) {
+    Preconditions.checkArgument(dataSize >= 0 && idxInBlockGroup >= 0);
+    long stripeSize = (long) cellSize * numDataBlocks;
+    long lastStripeDataLen = dataSize % stripeSize;
+    long fullStripesLen = dataSize / stripeSize * cellSize;
+    // the parity blocks are as long as the first data block
+    int idx = idxInBlockGroup < numDataBlocks ? idxInBlockGroup : 0;
+    long lastCellLen = Math.min(cellSize,
+        Math.max(0, lastStripeDataLen - (long) idx * cellSize));
+    return fullStripesLen + lastCellLen;
+  }
+
+  /**
+   * @return the bytes stored by all the internal blocks of a group holding
+   * the given bytes of data
+   */
+  public static long spaceConsumedByStripedBlock(long dataSize,
+      ErasureCodingPolicy policy) {
+    return dataSize + policy.getNumParityUnits()
+        * getInternalBlockLength(dataSize, policy, policy.getNumDataUnits());
+  }
+
+  /**
+   * @return the internal block of the given index of a group, with its
+   * length
+   */
+  public static ExtendedBlock constructInternalBlock(ExtendedBlock blockGroup,
+      ErasureCodingPolicy policy, int idxInBlockGroup) {
+    ExtendedBlock block = new ExtendedBlock(blockGroup);
+    block.setBlockId(blockGroup.getBlockId() + idxInBlockGroup);
+    block.setNumBytes(getInternalBlockLength(blockGroup.getNumBytes(), policy,
+        idxInBlockGroup));
+    return block;
+  }
+
+  /**
+   * Split a located block group into its internal blocks, with the locations
+   * of each.
+   *
+   * @return the internal blocks, by index in the group; null for the blocks
+   * without any location
+   */
+  public static LocatedBlock[] parseStripedBlockGroup(LocatedStripedBlock bg,
+      ErasureCodingPolicy policy) {
+    int numAllUnits = policy.getNumAllUnits();
+    List<List<Integer>> positions = new ArrayList<List<Integer>>(numAllUnits);
+    for (int i = 0; i < numAllUnits; i++) {
+      positions.add(new ArrayList<Integer>(1));
+    }
+    byte[] indices = bg.getBlockIndices();
+    for (int i = 0; i < indices.length; i++) {
+      if (indices[i] < numAllUnits) {
+        positions.get(indices[i]).add(i);
+      }
+    }
+    LocatedBlock[] blocks = new LocatedBlock[numAllUnits];
+    DatanodeInfoWithStorage[] locs =
+        (DatanodeInfoWithStorage[]) bg.getLocations();
+    for (int idx = 0; idx < numAllUnits; idx++) {
+      List<Integer> pos = positions.get(idx);
+      if (pos.isEmpty()) {
+        continue;
+      }
+      DatanodeInfo[] nodes = new DatanodeInfo[pos.size()];
+      String[] storageIDs = new String[pos.size()];
+      StorageType[] storageTypes = new StorageType[pos.size()];
+      for (int i = 0; i < pos.size(); i++) {
+        nodes[i] = locs[pos.get(i)];
+        storageIDs[i] = locs[pos.get(i)].getStorageID();
+        storageTypes[i] = locs[pos.get(i)].getStorageType();
+      }
+      LocatedBlock block = new LocatedBlock(
+          constructInternalBlock(bg.getBlock(), policy, idx), nodes,
+          storageIDs, storageTypes, bg.getStartOffset(), bg.isCorrupt(),
+          null);
+      block.setBlockToken(bg.getBlockTokens()[pos.get(0)]);
+      blocks[idx] = block;
+    }
+    return blocks;
+  }
+}
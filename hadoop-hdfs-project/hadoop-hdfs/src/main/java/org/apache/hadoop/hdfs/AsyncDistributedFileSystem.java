@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.ParentNotDirectoryException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
+import org.apache.hadoop.hdfs.protocol.QuotaByStorageTypeExceededException;
+import org.apache.hadoop.hdfs.protocol.SnapshotAccessControlException;
+import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
+import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolTranslatorPB;
+import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.security.AccessControlException;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.ForwardingFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Issues a subset of the {@link DistributedFileSystem} operations to the
+ * NameNode without waiting for their responses, returning the futures of
+ * their results instead. Many operations can be in flight at once from a
+ * single thread over the same connection.
+ * <p>
+ * The number of outstanding calls per connection is limited by
+ * {@link org.apache.hadoop.fs.CommonConfigurationKeys#IPC_CLIENT_ASYNC_CALLS_MAX_KEY};
+ * a call beyond the limit fails with
+ * {@link org.apache.hadoop.ipc.AsyncCallLimitExceededException} until
+ * responses come back. Unlike the synchronous operations, the calls are not
+ * retried and symlinks in the paths are not resolved.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class AsyncDistributedFileSystem {
+
+  private final DistributedFileSystem dfs;
+
+  AsyncDistributedFileSystem(final DistributedFileSystem dfs) {
+    this.dfs = dfs;
+  }
+
+  /**
+   * Unwraps the {@link RemoteException}s the future fails with into the
+   * exceptions the synchronous operation throws.
+   */
+  private static class UnwrappingFuture<T>
+      extends ForwardingFuture.SimpleForwardingFuture<T> {
+    private final Class<?>[] lookupTypes;
+
+    UnwrappingFuture(Future<T> delegate, Class<?>... lookupTypes) {
+      super(delegate);
+      this.lookupTypes = lookupTypes;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+      try {
+        return super.get();
+      } catch (ExecutionException e) {
+        throw unwrap(e);
+      }
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      try {
+        return super.get(timeout, unit);
+      } catch (ExecutionException e) {
+        throw unwrap(e);
+      }
+    }
+
+    private ExecutionException unwrap(ExecutionException e) {
+      if (e.getCause() instanceof RemoteException) {
+        return new ExecutionException(
+            ((RemoteException) e.getCause()).unwrapRemoteException(
+                lookupTypes));
+      }
+      return e;
+    }
+  }
+
+  /**
+   * Get the future of the return value of the call just made in the
+   * asynchronous mode.
+   */
+  private static <T> ListenableFuture<T> getReturnValue() throws IOException {
+    ListenableFuture<T> value =
+        ClientNamenodeProtocolTranslatorPB.getAsyncReturnValue();
+    if (value == null) {
+      throw new IOException("The NameNode proxy does not support"
+          + " asynchronous calls");
+    }
+    return value;
+  }
+
+  /**
+   * Asynchronously rename a file or a directory, see
+   * {@link DistributedFileSystem#rename(Path, Path, Options.Rename...)}.
+   *
+   * @return the future of the rename, failing with the exception the rename
+   *         failed with
+   * @throws IOException if the call cannot be issued
+   */
+  public Future<Void> rename(Path src, Path dst, Options.Rename... options)
+      throws IOException {
+    dfs.getClient().stats.incrementWriteOps(1);
+    final String srcName = dfs.getPathName(dfs.makeQualified(src));
+    final String dstName = dfs.getPathName(dfs.makeQualified(dst));
+    final boolean asyncMode = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      dfs.getClient().rename(srcName, dstName, options);
+      return new UnwrappingFuture<Void>(
+          AsyncDistributedFileSystem.<Void>getReturnValue(),
+          AccessControlException.class, DSQuotaExceededException.class,
+          QuotaByStorageTypeExceededException.class,
+          FileAlreadyExistsException.class, FileNotFoundException.class,
+          ParentNotDirectoryException.class, SafeModeException.class,
+          NSQuotaExceededException.class, UnresolvedPathException.class,
+          SnapshotAccessControlException.class);
+    } finally {
+      Client.setAsynchronousMode(asyncMode);
+    }
+  }
+
+  /**
+   * Asynchronously delete a file or a directory, see
+   * {@link DistributedFileSystem#delete(Path, boolean)}.
+   *
+   * @return the future of whether the path was deleted
+   * @throws IOException if the call cannot be issued
+   */
+  public Future<Boolean> delete(Path f, boolean recursive)
+      throws IOException {
+    dfs.getClient().stats.incrementWriteOps(1);
+    final String name = dfs.getPathName(dfs.makeQualified(f));
+    final boolean asyncMode = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      dfs.getClient().delete(name, recursive);
+      return new UnwrappingFuture<Boolean>(
+          AsyncDistributedFileSystem.<Boolean>getReturnValue(),
+          AccessControlException.class, FileNotFoundException.class,
+          SafeModeException.class, UnresolvedPathException.class,
+          SnapshotAccessControlException.class);
+    } finally {
+      Client.setAsynchronousMode(asyncMode);
+    }
+  }
+
+  /**
+   * Asynchronously set the permission of a path, see
+   * {@link DistributedFileSystem#setPermission(Path, FsPermission)}.
+   *
+   * @return the future of the update
+   * @throws IOException if the call cannot be issued
+   */
+  public Future<Void> setPermission(Path p, FsPermission permission)
+      throws IOException {
+    dfs.getClient().stats.incrementWriteOps(1);
+    final String name = dfs.getPathName(dfs.makeQualified(p));
+    final boolean asyncMode = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      dfs.getClient().setPermission(name, permission);
+      return new UnwrappingFuture<Void>(
+          AsyncDistributedFileSystem.<Void>getReturnValue(),
+          AccessControlException.class, FileNotFoundException.class,
+          SafeModeException.class, UnresolvedPathException.class,
+          SnapshotAccessControlException.class);
+    } finally {
+      Client.setAsynchronousMode(asyncMode);
+    }
+  }
+
+  /**
+   * Asynchronously get the status of a path, see
+   * {@link DistributedFileSystem#getFileStatus(Path)}.
+   *
+   * @return the future of the status, failing with a
+   *         {@link FileNotFoundException} if the path does not exist
+   * @throws IOException if the call cannot be issued
+   */
+  public Future<FileStatus> getFileStatus(Path f) throws IOException {
+    dfs.getClient().stats.incrementReadOps(1);
+    final Path absF = dfs.makeQualified(f);
+    final String name = dfs.getPathName(absF);
+    final boolean asyncMode = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      dfs.getClient().getFileInfo(name);
+      ListenableFuture<HdfsFileStatus> info = getReturnValue();
+      ListenableFuture<FileStatus> status = Futures.transform(info,
+          new AsyncFunction<HdfsFileStatus, FileStatus>() {
+            @Override
+            public ListenableFuture<FileStatus> apply(HdfsFileStatus fi) {
+              if (fi == null) {
+                return Futures.immediateFailedFuture(
+                    new FileNotFoundException("File does not exist: " + absF));
+              }
+              return Futures.immediateFuture(
+                  fi.makeQualified(dfs.getUri(), absF));
+            }
+          });
+      return new UnwrappingFuture<FileStatus>(status,
+          AccessControlException.class, FileNotFoundException.class,
+          UnresolvedPathException.class);
+    } finally {
+      Client.setAsynchronousMode(asyncMode);
+    }
+  }
+}
@@ -58,6 +58,7 @@
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.ConfigurationSnapshot;
 import org.apache.hadoop.crypto.CipherSuite;
 import org.apache.hadoop.crypto.CryptoCodec;
 import org.apache.hadoop.crypto.CryptoInputStream;
@@ -116,6 +117,7 @@
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.EncryptionZone;
 import org.apache.hadoop.hdfs.protocol.EncryptionZoneIterator;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
@@ -126,6 +128,7 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.QuotaByStorageTypeExceededException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotAccessControlException;
@@ -205,6 +208,11 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   public static final long SERVER_DEFAULTS_VALIDITY_PERIOD = 60 * 60 * 1000L; // 1 hour
 
   private final Configuration conf;
+  /**
+   * The snapshot of conf the crypto codecs are created with. Like the
+   * settings of dfsClientConf, it is fixed for the life of the client.
+   */
+  private volatile ConfigurationSnapshot codecConf;
   private final DfsClientConf dfsClientConf;
   final ClientProtocol namenode;
   /* The service used for delegation tokens */
@@ -231,6 +239,7 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
+  private static ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
   private final Sampler<?> traceSampler;
   private final int smallBufferSize;
 
@@ -370,6 +379,8 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     if (dfsClientConf.getHedgedReadThreadpoolSize() > 0) {
       this.initThreadsNumForHedgedReads(dfsClientConf.getHedgedReadThreadpoolSize());
     }
+    this.initThreadsNumForStripedReads(
+        dfsClientConf.getStripedReadThreadpoolSize());
     this.saslClient = new SaslDataTransferClient(
       conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
       TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
@@ -969,6 +980,21 @@ private static CryptoCodec getCryptoCodec(Configuration conf,
     return codec;
   }
 
+  /**
+   * Get the configuration the crypto codecs of the encrypted streams are
+   * created with, a snapshot of conf taken on the first use, since creating
+   * a codec looks up many properties. Changes made to conf afterwards are
+   * not seen by the codecs.
+   */
+  private ConfigurationSnapshot getCodecConf() {
+    ConfigurationSnapshot snapshot = codecConf;
+    if (snapshot == null) {
+      snapshot = conf.snapshot();
+      codecConf = snapshot;
+    }
+    return snapshot;
+  }
+
   /**
    * Wraps the stream in a CryptoInputStream if the underlying file is
    * encrypted.
@@ -980,7 +1006,7 @@ public HdfsDataInputStream createWrappedInputStream(DFSInputStream dfsis)
       // File is encrypted, wrap the stream in a crypto stream.
       // Currently only one version, so no special logic based on the version #
       getCryptoProtocolVersion(feInfo);
-      final CryptoCodec codec = getCryptoCodec(conf, feInfo);
+      final CryptoCodec codec = getCryptoCodec(getCodecConf(), feInfo);
       final KeyVersion decrypted = decryptEncryptedDataEncryptionKey(feInfo);
       final CryptoInputStream cryptoIn =
           new CryptoInputStream(dfsis, codec, decrypted.getMaterial(),
@@ -1012,7 +1038,7 @@ public HdfsDataOutputStream createWrappedOutputStream(DFSOutputStream dfsos,
       // File is encrypted, wrap the stream in a crypto stream.
       // Currently only one version, so no special logic based on the version #
       getCryptoProtocolVersion(feInfo);
-      final CryptoCodec codec = getCryptoCodec(conf, feInfo);
+      final CryptoCodec codec = getCryptoCodec(getCodecConf(), feInfo);
       KeyVersion decrypted = decryptEncryptedDataEncryptionKey(feInfo);
       final CryptoOutputStream cryptoOut =
           new CryptoOutputStream(dfsos, codec,
@@ -1056,7 +1082,13 @@ public DFSInputStream open(String src, int buffersize, boolean verifyChecksum)
     //    Get block info from namenode
     TraceScope scope = getPathTraceScope("newDFSInputStream", src);
     try {
-      return new DFSInputStream(this, src, verifyChecksum, null);
+      LocatedBlocks locatedBlocks = getLocatedBlocks(src, 0);
+      if (locatedBlocks != null
+          && locatedBlocks.getErasureCodingPolicy() != null) {
+        return new DFSStripedInputStream(this, src, verifyChecksum,
+            locatedBlocks);
+      }
+      return new DFSInputStream(this, src, verifyChecksum, locatedBlocks);
     } finally {
       scope.close();
     }
@@ -1231,6 +1263,35 @@ public DFSOutputStream create(String src,
     return result;
   }
 
+  /**
+   * Create a number of new dfs files with a single call to the namenode,
+   * and return an output stream for writing into each of them.
+   *
+   * @return the output stream, or the exception the file failed to be
+   *         created with, for each path in order
+   *
+   * @see ClientProtocol#multiCreate for detailed description of exceptions
+   *      thrown
+   */
+  public List<PathResult<DFSOutputStream>> create(String[] srcs,
+      FsPermission permission, EnumSet<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize,
+      Progressable progress, int buffersize, ChecksumOpt checksumOpt)
+      throws IOException {
+    checkOpen();
+    final FsPermission masked = applyUMask(permission);
+    final List<PathResult<DFSOutputStream>> results =
+        DFSOutputStream.newStreamsForCreate(this, srcs, masked, flag,
+            createParent, replication, blockSize, progress, buffersize,
+            dfsClientConf.createChecksum(checksumOpt));
+    for (PathResult<DFSOutputStream> result : results) {
+      if (result.isSuccess()) {
+        beginFileLease(result.getValue().getFileId(), result.getValue());
+      }
+    }
+    return results;
+  }
+
   private String[] getFavoredNodesStr(InetSocketAddress[] favoredNodes) {
     String[] favoredNodeStrs = null;
     if (favoredNodes != null) {
@@ -1462,6 +1523,43 @@ public void setStoragePolicy(String src, String policyName)
     }
   }
 
+  /**
+   * Set the erasure coding policy of an existing directory
+   * @param src directory name
+   * @param ecPolicyName name of the erasure coding policy, or null for the
+   *                     default one
+   */
+  public void setErasureCodingPolicy(String src, String ecPolicyName)
+      throws IOException {
+    checkOpen();
+    TraceScope scope = getPathTraceScope("setErasureCodingPolicy", src);
+    try {
+      namenode.setErasureCodingPolicy(src, ecPolicyName);
+    } catch (RemoteException e) {
+      throw e.unwrapRemoteException(AccessControlException.class,
+                                    FileNotFoundException.class,
+                                    SafeModeException.class,
+                                    UnresolvedPathException.class,
+                                    SnapshotAccessControlException.class);
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * @param src file/directory name
+   * @return the erasure coding policy of a striped file, or the policy the
+   *         new files of a directory get; null if they are replicated
+   */
+  public ErasureCodingPolicy getErasureCodingPolicy(String src)
+      throws IOException {
+    HdfsFileStatus stat = getFileInfo(src);
+    if (stat == null) {
+      throw new FileNotFoundException("File does not exist: " + src);
+    }
+    return stat.getErasureCodingPolicy();
+  }
+
   /**
    * @param path file/directory name
    * @return Get the storage policy for specified path
@@ -1614,6 +1712,26 @@ public boolean delete(String src, boolean recursive) throws IOException {
     }
   }
   
+  /**
+   * Delete a number of files or directories with a single call to the
+   * namenode.
+   *
+   * @see ClientProtocol#multiDelete(String[], boolean)
+   */
+  public List<PathResult<Boolean>> delete(String[] srcs, boolean recursive)
+      throws IOException {
+    checkOpen();
+    TraceScope scope = getPathTraceScope("multiDelete", null);
+    try {
+      return namenode.multiDelete(srcs, recursive);
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+                                     SafeModeException.class);
+    } finally {
+      scope.close();
+    }
+  }
+
   /** Implemented using getFileInfo(src)
    */
   public boolean exists(String src) throws IOException {
@@ -1676,6 +1794,28 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
     }
   }
   
+  /**
+   * Get the file info for a number of files or directories with a single
+   * call to the namenode.
+   *
+   * @return the file info, null if the path is not found, or the exception
+   *         the lookup failed with, for each path in order
+   *
+   * @see ClientProtocol#multiGetFileInfo(String[])
+   */
+  public List<PathResult<HdfsFileStatus>> getFileInfo(String[] srcs)
+      throws IOException {
+    checkOpen();
+    TraceScope scope = getPathTraceScope("multiGetFileInfo", null);
+    try {
+      return namenode.multiGetFileInfo(srcs);
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class);
+    } finally {
+      scope.close();
+    }
+  }
+
   /**
    * Close status of a file
    * @return true if file is already closed
@@ -3070,6 +3210,35 @@ public void rejectedExecution(Runnable runnable,
     }
   }
 
+  /**
+   * Create the thread pool reading the cells of striped files in parallel,
+   * STRIPED_READ_THREAD_POOL, if it does not already exist. The reads run
+   * in the calling thread when all the threads are busy.
+   * @param num Number of threads of the pool.
+   */
+  private synchronized void initThreadsNumForStripedReads(int num) {
+    if (STRIPED_READ_THREAD_POOL != null) return;
+    STRIPED_READ_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex =
+            new AtomicInteger(0);
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("stripedRead-" +
+              threadIndex.getAndIncrement());
+            return t;
+          }
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    STRIPED_READ_THREAD_POOL.allowCoreThreadTimeOut(true);
+  }
+
+  ThreadPoolExecutor getStripedReadsThreadPool() {
+    return STRIPED_READ_THREAD_POOL;
+  }
+
   ThreadPoolExecutor getHedgedReadsThreadPool() {
     return HEDGED_READ_THREAD_POOL;
   }
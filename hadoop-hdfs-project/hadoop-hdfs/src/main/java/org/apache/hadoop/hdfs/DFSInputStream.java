@@ -25,6 +25,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -55,10 +56,14 @@
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.UnresolvedLinkException;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedRange;
+import org.apache.hadoop.fs.VectoredReadable;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -83,6 +88,7 @@
 import org.apache.htrace.TraceScope;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.SettableFuture;
 
 /****************************************************************
  * DFSInputStream provides bytes from a named file.  It handles 
@@ -91,7 +97,7 @@
 @InterfaceAudience.Private
 public class DFSInputStream extends FSInputStream
 implements ByteBufferReadable, CanSetDropBehind, CanSetReadahead,
-    HasEnhancedByteBufferAccess, CanUnbuffer {
+    HasEnhancedByteBufferAccess, CanUnbuffer, VectoredReadable {
   @VisibleForTesting
   public static boolean tcpReadsDisabledForTesting = false;
   private long hedgedReadOpsLoopNumForTesting = 0;
@@ -133,7 +139,7 @@ public class DFSInputStream extends FSInputStream
    */
   private IdentityHashStore<ByteBuffer, Object> extendedReadBuffers;
 
-  private synchronized IdentityHashStore<ByteBuffer, Object>
+  protected synchronized IdentityHashStore<ByteBuffer, Object>
         getExtendedReadBuffers() {
     if (extendedReadBuffers == null) {
       extendedReadBuffers = new IdentityHashStore<ByteBuffer, Object>(0);
@@ -334,7 +340,11 @@ private long fetchLocatedBlocksAndGetLastBlockLength(boolean refresh)
     long lastBlockBeingWrittenLength = 0;
     if (!locatedBlocks.isLastBlockComplete()) {
       final LocatedBlock last = locatedBlocks.getLastLocatedBlock();
-      if (last != null) {
+      if (last != null && last.isStriped()) {
+        // the length of a block group being written is only known once it
+        // is committed; none of its data can be read before
+        return 0;
+      } else if (last != null) {
         if (last.getLocations().length == 0) {
           if (last.getBlockSize() == 0) {
             // if the length is zero, then no data has been written to
@@ -1458,7 +1468,7 @@ public int read(long position, byte[] buffer, int offset, int length)
     }
   }
 
-  private int pread(long position, byte[] buffer, int offset, int length)
+  protected int pread(long position, byte[] buffer, int offset, int length)
       throws IOException {
     // sanity checks
     dfsClient.checkOpen();
@@ -1509,6 +1519,89 @@ private int pread(long position, byte[] buffer, int offset, int length)
     }
     return realLen;
   }
+
+  /**
+   * Read the ranges of the file with positioned reads, combining the nearby
+   * ranges of each block into one read. The combined ranges are read in
+   * parallel on the hedged read thread pool when hedged reads are enabled,
+   * and one after the other in the calling thread otherwise.
+   */
+  @Override
+  public List<Future<ByteBuffer>> readVectored(final List<FileRange> ranges,
+      final ByteBufferPool bufferPool) throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    TraceScope scope =
+        dfsClient.getPathTraceScope("DFSInputStream#readVectored", src);
+    try {
+      final List<SettableFuture<ByteBuffer>> futures =
+          VectoredReadUtils.newFutures(ranges.size());
+      final long fileLen = getFileLength();
+      List<CombinedRange> combined = new ArrayList<CombinedRange>();
+      // the ranges within the current block, in order of offset
+      List<Integer> group = new ArrayList<Integer>();
+      LocatedBlock groupBlock = null;
+      for (int i : VectoredReadUtils.sortRanges(ranges)) {
+        FileRange range = ranges.get(i);
+        if (range.getEnd() > fileLen) {
+          futures.get(i).setException(new EOFException(
+              "End of file reached before reading fully " + range));
+          continue;
+        } else if (range.getLength() == 0) {
+          VectoredReadUtils.setData(range, futures.get(i), new byte[0],
+              range.getOffset(), bufferPool);
+          continue;
+        }
+        List<LocatedBlock> blocks =
+            getBlockRange(range.getOffset(), range.getLength());
+        LocatedBlock block = blocks.size() == 1 ? blocks.get(0) : null;
+        if (block == null || groupBlock == null
+            || block.getStartOffset() != groupBlock.getStartOffset()) {
+          combined.addAll(VectoredReadUtils.combineRanges(ranges, group,
+              dfsClient.getConf().getVectoredReadMinSeekSize(),
+              dfsClient.getConf().getVectoredReadMaxMergedSize()));
+          group.clear();
+        }
+        // a range across blocks is read on its own
+        group.add(i);
+        groupBlock = block;
+      }
+      combined.addAll(VectoredReadUtils.combineRanges(ranges, group,
+          dfsClient.getConf().getVectoredReadMinSeekSize(),
+          dfsClient.getConf().getVectoredReadMaxMergedSize()));
+
+      for (final CombinedRange range : combined) {
+        Runnable read = new Runnable() {
+          @Override
+          public void run() {
+            byte[] data = new byte[range.getLength()];
+            Throwable error = null;
+            try {
+              int nread = pread(range.getOffset(), data, 0, data.length);
+              if (nread < data.length) {
+                throw new EOFException("End of file reached before reading "
+                    + data.length + " bytes at offset " + range.getOffset());
+              }
+            } catch (IOException | RuntimeException e) {
+              error = e;
+            }
+            VectoredReadUtils.setData(range, data, error, ranges, futures,
+                bufferPool);
+          }
+        };
+        if (dfsClient.isHedgedReadsEnabled()) {
+          dfsClient.getHedgedReadsThreadPool().execute(read);
+        } else {
+          read.run();
+        }
+      }
+      return Collections.<Future<ByteBuffer>>unmodifiableList(futures);
+    } finally {
+      scope.close();
+    }
+  }
   
   /**
    * DFSInputStream reports checksum failure.
@@ -21,7 +21,9 @@
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
@@ -45,6 +47,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.QuotaByStorageTypeExceededException;
 import org.apache.hadoop.hdfs.protocol.SnapshotAccessControlException;
 import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
@@ -112,6 +115,10 @@ public class DFSOutputStream extends FSOutputSummer
 
   protected DFSPacket currentPacket = null;
   private DataStreamer streamer;
+  /** The streamer still completing the previous block, with parallel pipelines */
+  private DataStreamer completingStreamer;
+  /** The last block completed by a previous streamer */
+  private ExtendedBlock lastCompletedBlock;
   protected int packetSize = 0; // write packet size, not including the header.
   protected int chunksPerPacket = 0;
   protected long lastFlushOffset = 0; // offset when flush was invoked
@@ -180,8 +187,9 @@ private static DataChecksum getChecksum4Compute(DataChecksum checksum,
     return checksum;
   }
  
-  private DFSOutputStream(DFSClient dfsClient, String src, Progressable progress,
-      HdfsFileStatus stat, DataChecksum checksum) throws IOException {
+  protected DFSOutputStream(DFSClient dfsClient, String src,
+      Progressable progress, HdfsFileStatus stat, DataChecksum checksum)
+      throws IOException {
     super(getChecksum4Compute(checksum, stat));
     this.dfsClient = dfsClient;
     this.src = src;
@@ -270,8 +278,8 @@ static DFSOutputStream newStreamForCreate(DFSClient dfsClient, String src,
         }
       }
       Preconditions.checkNotNull(stat, "HdfsFileStatus should not be null!");
-      final DFSOutputStream out = new DFSOutputStream(dfsClient, src, stat,
-          flag, progress, checksum, favoredNodes);
+      final DFSOutputStream out = newStream(dfsClient, src, stat, flag,
+          progress, checksum, favoredNodes);
       out.start();
       return out;
     } finally {
@@ -279,6 +287,70 @@ static DFSOutputStream newStreamForCreate(DFSClient dfsClient, String src,
     }
   }
 
+  /**
+   * @return a stream for the file just created, striped if the file has an
+   * erasure coding policy
+   */
+  private static DFSOutputStream newStream(DFSClient dfsClient, String src,
+      HdfsFileStatus stat, EnumSet<CreateFlag> flag, Progressable progress,
+      DataChecksum checksum, String[] favoredNodes) throws IOException {
+    if (stat.getErasureCodingPolicy() != null) {
+      return new DFSStripedOutputStream(dfsClient, src, stat, flag, progress,
+          checksum, favoredNodes);
+    }
+    return new DFSOutputStream(dfsClient, src, stat, flag, progress, checksum,
+        favoredNodes);
+  }
+
+  /**
+   * Create a number of files with a single multiCreate call, and open an
+   * output stream for each file created. A file which fails to be created
+   * as an encryption zone changed concurrently is created on its own, with
+   * the retries of {@link #newStreamForCreate}.
+   */
+  static List<PathResult<DFSOutputStream>> newStreamsForCreate(
+      DFSClient dfsClient, String[] srcs, FsPermission masked,
+      EnumSet<CreateFlag> flag, boolean createParent, short replication,
+      long blockSize, Progressable progress, int buffersize,
+      DataChecksum checksum) throws IOException {
+    TraceScope scope =
+        dfsClient.getPathTraceScope("newStreamsForCreate", null);
+    try {
+      List<PathResult<HdfsFileStatus>> stats = dfsClient.namenode.multiCreate(
+          srcs, masked, dfsClient.clientName,
+          new EnumSetWritable<CreateFlag>(flag), createParent, replication,
+          blockSize, SUPPORTED_CRYPTO_VERSIONS);
+      List<PathResult<DFSOutputStream>> results =
+          new ArrayList<PathResult<DFSOutputStream>>(srcs.length);
+      for (int i = 0; i < srcs.length; i++) {
+        PathResult<HdfsFileStatus> stat = stats.get(i);
+        try {
+          DFSOutputStream out;
+          if (stat.getException() instanceof RetryStartFileException) {
+            out = newStreamForCreate(dfsClient, srcs[i], masked, flag,
+                createParent, replication, blockSize, progress, buffersize,
+                checksum, null);
+          } else {
+            Preconditions.checkNotNull(stat.get(),
+                "HdfsFileStatus should not be null!");
+            out = newStream(dfsClient, srcs[i], stat.get(), flag, progress,
+                checksum, null);
+            out.start();
+          }
+          results.add(PathResult.success(out));
+        } catch (IOException e) {
+          results.add(PathResult.<DFSOutputStream>failure(e));
+        }
+      }
+      return results;
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          SafeModeException.class);
+    } finally {
+      scope.close();
+    }
+  }
+
   /** Construct a new output stream for append. */
   private DFSOutputStream(DFSClient dfsClient, String src,
       EnumSet<CreateFlag> flags, Progressable progress, LocatedBlock lastBlock,
@@ -471,11 +543,68 @@ protected void adjustChunkBoundary() {
   protected void endBlock() throws IOException {
     if (getStreamer().getBytesCurBlock() == blockSize) {
       setCurrentPacketToEmpty();
-      enqueueCurrentPacket();
+      if (dfsClient.getConf().isWriteParallelPipelinesEnabled()) {
+        getStreamer().setCloseAfterBlock();
+        enqueueCurrentPacket();
+        startNextStreamer();
+      } else {
+        enqueueCurrentPacket();
+      }
       getStreamer().setBytesCurBlock(0);
       lastFlushOffset = 0;
     }
   }
+
+  /**
+   * Start a new streamer for the next block, while the current streamer
+   * waits for the last acks of its block and closes it. The block before
+   * has to be completed first, so that at most two blocks are written at a
+   * time.
+   */
+  private void startNextStreamer() throws IOException {
+    waitForCompletingStreamer();
+    completingStreamer = streamer;
+    streamer = new DataStreamer(completingStreamer);
+    streamer.start();
+  }
+
+  /**
+   * Wait for the streamer completing the previous block, if any.
+   *
+   * @throws IOException if the previous block could not be written, which
+   *         closes the stream
+   */
+  private synchronized void waitForCompletingStreamer() throws IOException {
+    if (completingStreamer == null) {
+      return;
+    }
+    final DataStreamer completed = completingStreamer;
+    try {
+      completed.join();
+      completed.closeSocket();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for the"
+          + " previous block of " + src);
+    } finally {
+      completed.setSocketToNull();
+    }
+    completingStreamer = null;
+    if (!completed.isBlockWritten()) {
+      try {
+        completed.getLastException().check(false);
+        throw new IOException("Failed to write " + completed.getBlock()
+            + " of " + src);
+      } catch (IOException e) {
+        getStreamer().getLastException().set(e);
+        closeThreads(true);
+        throw e;
+      }
+    }
+    if (completed.getPersistBlocks().get()) {
+      getStreamer().getPersistBlocks().set(true);
+    }
+    lastCompletedBlock = completed.getBlock();
+  }
   
   /**
    * Flushes out to all replicas of the block. The data is in the buffers
@@ -617,6 +746,7 @@ private void flushOrSync(boolean isSync, EnumSet<SyncFlag> syncFlags)
         toWaitFor = getStreamer().getLastQueuedSeqno();
       } // end synchronized
 
+      waitForCompletingStreamer();
       getStreamer().waitForAckedSeqno(toWaitFor);
 
       // update the block length first time irrespective of flag
@@ -713,6 +843,7 @@ protected void flushInternal() throws IOException {
       toWaitFor = getStreamer().getLastQueuedSeqno();
     }
 
+    waitForCompletingStreamer();
     getStreamer().waitForAckedSeqno(toWaitFor);
   }
 
@@ -747,6 +878,13 @@ void setClosed() {
   // interrupt datastreamer if force is true
   protected void closeThreads(boolean force) throws IOException {
     try {
+      if (completingStreamer != null) {
+        completingStreamer.close(force);
+        completingStreamer.join();
+        completingStreamer.closeSocket();
+        completingStreamer.setSocketToNull();
+        completingStreamer = null;
+      }
       getStreamer().close(force);
       getStreamer().join();
       getStreamer().closeSocket();
@@ -793,6 +931,10 @@ protected synchronized void closeImpl() throws IOException {
       flushInternal();             // flush all data to Datanodes
       // get last block before destroying the streamer
       ExtendedBlock lastBlock = getStreamer().getBlock();
+      if (lastBlock == null) {
+        // the file ends with the block of a previous streamer
+        lastBlock = lastCompletedBlock;
+      }
       closeThreads(false);
       TraceScope scope = Trace.startSpan("completeFile", Sampler.NEVER);
       try {
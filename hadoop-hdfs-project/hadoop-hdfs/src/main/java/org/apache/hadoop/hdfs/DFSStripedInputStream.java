@@ -0,0 +1,438 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.ByteBufferUtil;
+import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.erasurecode.CodecUtil;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureDecoder;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.htrace.TraceScope;
+
+/**
+ * DFSStripedInputStream reads files striped with an erasure coding policy.
+ * The file is read a stripe at a time: the cells of a stripe are read from
+ * the data blocks of the group in parallel, on the striped read thread pool
+ * of the client. When a data block cannot be read, the parity cells of the
+ * stripe are read as well, and the missing data cells are decoded from
+ * them; the reads of the rest of the group skip the failed blocks.
+ */
+@InterfaceAudience.Private
+public class DFSStripedInputStream extends DFSInputStream {
+  private final ErasureCodingPolicy ecPolicy;
+  private final int cellSize;
+  private final int numDataUnits;
+  private final int numParityUnits;
+  private final RawErasureDecoder decoder;
+  /** Reads the stripes of the sequential reads; null until the first one */
+  private StripeReader statefulReader;
+
+  DFSStripedInputStream(DFSClient dfsClient, String src,
+      boolean verifyChecksum, LocatedBlocks locatedBlocks) throws IOException {
+    super(dfsClient, src, verifyChecksum, locatedBlocks);
+    this.ecPolicy = locatedBlocks.getErasureCodingPolicy();
+    this.cellSize = ecPolicy.getCellSize();
+    this.numDataUnits = ecPolicy.getNumDataUnits();
+    this.numParityUnits = ecPolicy.getNumParityUnits();
+    this.decoder = CodecUtil.createRawDecoder(dfsClient.getConfiguration(),
+        ecPolicy.getSchema());
+  }
+
+  @Override
+  public synchronized int read(final byte[] buf, int off, int len)
+      throws IOException {
+    TraceScope scope =
+        dfsClient.getPathTraceScope("DFSStripedInputStream#read", src);
+    try {
+      dfsClient.checkOpen();
+      if (closed.get()) {
+        throw new IOException("Stream closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      if (pos >= getFileLength()) {
+        return -1;
+      }
+      if (statefulReader == null) {
+        statefulReader = new StripeReader();
+      }
+      int n = statefulReader.read(pos, buf, off,
+          (int) Math.min(len, getFileLength() - pos));
+      pos += n;
+      if (dfsClient.stats != null) {
+        dfsClient.stats.incrementBytesRead(n);
+      }
+      return n;
+    } finally {
+      scope.close();
+    }
+  }
+
+  @Override
+  public synchronized int read(final ByteBuffer buf) throws IOException {
+    if (buf.hasArray()) {
+      int n = read(buf.array(), buf.arrayOffset() + buf.position(),
+          buf.remaining());
+      if (n > 0) {
+        buf.position(buf.position() + n);
+      }
+      return n;
+    }
+    byte[] tmp = new byte[Math.min(buf.remaining(), cellSize)];
+    int n = read(tmp, 0, tmp.length);
+    if (n > 0) {
+      buf.put(tmp, 0, n);
+    }
+    return n;
+  }
+
+  @Override
+  protected int pread(long position, byte[] buffer, int offset, int length)
+      throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    long filelen = getFileLength();
+    if ((position < 0) || (position >= filelen)) {
+      return -1;
+    }
+    int realLen = (int) Math.min(length, filelen - position);
+    StripeReader reader = new StripeReader();
+    try {
+      int done = 0;
+      while (done < realLen) {
+        done += reader.read(position + done, buffer, offset + done,
+            realLen - done);
+      }
+    } finally {
+      reader.close();
+    }
+    if (dfsClient.stats != null) {
+      dfsClient.stats.incrementBytesRead(realLen);
+    }
+    return realLen;
+  }
+
+  @Override
+  public synchronized void seek(long targetPos) throws IOException {
+    if (targetPos > getFileLength()) {
+      throw new EOFException("Cannot seek after EOF");
+    }
+    if (targetPos < 0) {
+      throw new EOFException("Cannot seek to negative offset");
+    }
+    if (closed.get()) {
+      throw new IOException("Stream is closed!");
+    }
+    // the buffered stripe is kept, for a seek within it
+    pos = targetPos;
+  }
+
+  /** The internal blocks have no replicas to switch to. */
+  @Override
+  public synchronized boolean seekToNewSource(long targetPos) {
+    return false;
+  }
+
+  /** Zero-copy reads are not supported, the data is read into a buffer. */
+  @Override
+  public synchronized ByteBuffer read(ByteBufferPool bufferPool,
+      int maxLength, EnumSet<ReadOption> opts) throws IOException {
+    if (maxLength < 0) {
+      throw new IllegalArgumentException("can't read a negative " +
+          "number of bytes.");
+    }
+    ByteBuffer buffer = ByteBufferUtil.fallbackRead(this, bufferPool,
+        maxLength);
+    if (buffer != null) {
+      getExtendedReadBuffers().put(buffer, bufferPool);
+    }
+    return buffer;
+  }
+
+  @Override
+  protected void closeCurrentBlockReaders() {
+    if (statefulReader != null) {
+      statefulReader.close();
+      statefulReader = null;
+    }
+  }
+
+  /**
+   * Reads the stripes of a file, keeping the last stripe read and the
+   * readers of the internal blocks of its group for the next stripes.
+   */
+  private class StripeReader {
+    private final long stripeSize = (long) cellSize * numDataUnits;
+    /** The data of the buffered stripe, in file order */
+    private final byte[] stripeBuf = new byte[cellSize * numDataUnits];
+    /** The parity cells of the buffered stripe, read on failures only */
+    private byte[][] parityBufs;
+    /** The file offset of the buffered stripe, or -1 */
+    private long stripeStart = -1;
+    private int stripeLen;
+
+    /** The group of the buffered stripe, and its internal blocks */
+    private LocatedBlock group;
+    private LocatedBlock[] blocks;
+    private final BlockReader[] readers =
+        new BlockReader[ecPolicy.getNumAllUnits()];
+    /** The offsets in the internal blocks the readers are at */
+    private final long[] readerOffsets = new long[ecPolicy.getNumAllUnits()];
+    /** The internal blocks failing to be read, skipped for the group */
+    private final boolean[] failed = new boolean[ecPolicy.getNumAllUnits()];
+
+    /**
+     * Copy from the stripe at the position, reading it first unless it is
+     * the buffered one.
+     *
+     * @return the number of bytes copied, up to the end of the stripe
+     */
+    int read(long position, byte[] buf, int off, int len) throws IOException {
+      if (stripeStart < 0 || position < stripeStart
+          || position >= stripeStart + stripeLen) {
+        readStripe(position);
+      }
+      int n = (int) Math.min(len, stripeStart + stripeLen - position);
+      System.arraycopy(stripeBuf, (int) (position - stripeStart), buf, off, n);
+      return n;
+    }
+
+    /** Read the stripe holding the position into the stripe buffer. */
+    private void readStripe(long position) throws IOException {
+      stripeStart = -1;
+      LocatedBlock lb = getBlockAt(position);
+      if (group == null
+          || group.getStartOffset() != lb.getStartOffset()) {
+        close();
+        group = lb;
+        blocks = StripedBlockUtil.parseStripedBlockGroup(
+            (LocatedStripedBlock) lb, ecPolicy);
+      }
+      final long groupLen = group.getBlockSize();
+      final long stripeNo = (position - group.getStartOffset()) / stripeSize;
+      final long stripeOffset = stripeNo * stripeSize;
+      final long offsetInBlock = stripeNo * cellSize;
+      final int[] cellLens = new int[ecPolicy.getNumAllUnits()];
+      for (int i = 0; i < numDataUnits; i++) {
+        cellLens[i] = (int) Math.max(0, Math.min(cellSize,
+            groupLen - stripeOffset - (long) i * cellSize));
+      }
+      for (int i = numDataUnits; i < cellLens.length; i++) {
+        cellLens[i] = cellLens[0];
+      }
+      // the parity of a partial stripe is coded as if padded with zeros
+      for (int i = 0; i < numDataUnits; i++) {
+        if (cellLens[i] < cellLens[0]) {
+          Arrays.fill(stripeBuf, i * cellSize + cellLens[i],
+              i * cellSize + cellLens[0], (byte) 0);
+        }
+      }
+
+      // read the data cells, then as many parity cells as the data cells
+      // failing to be read
+      final boolean[] read = new boolean[cellLens.length];
+      List<Integer> toRead = new ArrayList<Integer>();
+      for (int i = 0; i < numDataUnits; i++) {
+        if (cellLens[i] == 0) {
+          read[i] = true;
+        } else {
+          toRead.add(i);
+        }
+      }
+      int nextParity = numDataUnits;
+      while (true) {
+        readCells(toRead, offsetInBlock, cellLens, read);
+        int numRead = 0;
+        for (boolean r : read) {
+          numRead += r ? 1 : 0;
+        }
+        int missing = numDataUnits - numRead;
+        if (missing <= 0) {
+          break;
+        }
+        toRead.clear();
+        for (; nextParity < cellLens.length && toRead.size() < missing;
+             nextParity++) {
+          toRead.add(nextParity);
+        }
+        if (toRead.isEmpty()) {
+          throw new BlockMissingException(src, "Could not read "
+              + (numDataUnits - numRead + numParityUnits)
+              + " internal blocks of " + group.getBlock() + " of " + src
+              + ", more than the " + numParityUnits + " parity blocks",
+              group.getStartOffset());
+        }
+      }
+      decodeMissingCells(cellLens, read);
+
+      stripeStart = group.getStartOffset() + stripeOffset;
+      stripeLen = (int) Math.min(stripeSize, groupLen - stripeOffset);
+    }
+
+    /**
+     * Read the cells of the given internal blocks in parallel, marking the
+     * cells read, and the blocks failing.
+     */
+    private void readCells(List<Integer> indices, final long offsetInBlock,
+        final int[] cellLens, boolean[] read) throws IOException {
+      List<Integer> submitted = new ArrayList<Integer>(indices.size());
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (final int index : indices) {
+        if (failed[index] || blocks[index] == null) {
+          failed[index] = true;
+          continue;
+        }
+        final byte[] dst;
+        final int dstOffset;
+        if (index < numDataUnits) {
+          dst = stripeBuf;
+          dstOffset = index * cellSize;
+        } else {
+          if (parityBufs == null) {
+            parityBufs = new byte[numParityUnits][cellSize];
+          }
+          dst = parityBufs[index - numDataUnits];
+          dstOffset = 0;
+        }
+        submitted.add(index);
+        futures.add(dfsClient.getStripedReadsThreadPool().submit(
+            new Callable<Void>() {
+              @Override
+              public Void call() throws IOException {
+                readCell(index, offsetInBlock, dst, dstOffset,
+                    cellLens[index]);
+                return null;
+              }
+            }));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        int index = submitted.get(i);
+        try {
+          futures.get(i).get();
+          read[index] = true;
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while reading "
+              + group.getBlock() + " of " + src);
+        } catch (ExecutionException e) {
+          DFSClient.LOG.warn("Failed to read internal block " + index
+              + " of " + group.getBlock() + " of " + src + " from "
+              + Arrays.asList(blocks[index].getLocations()), e.getCause());
+          failed[index] = true;
+          closeReader(index);
+        }
+      }
+    }
+
+    /** Read a cell from an internal block, reusing its reader if it can. */
+    private void readCell(int index, long offsetInBlock, byte[] dst,
+        int dstOffset, int len) throws IOException {
+      if (readers[index] != null && readerOffsets[index] != offsetInBlock) {
+        closeReader(index);
+      }
+      if (readers[index] == null) {
+        LocatedBlock block = blocks[index];
+        DatanodeInfo dn = block.getLocations()[0];
+        InetSocketAddress addr = NetUtils.createSocketAddr(dn.getXferAddr(
+            dfsClient.getConf().isConnectToDnViaHostname()));
+        readers[index] = getBlockReader(block, offsetInBlock,
+            block.getBlockSize() - offsetInBlock, addr,
+            block.getStorageTypes()[0], dn);
+        readerOffsets[index] = offsetInBlock;
+      }
+      readers[index].readFully(dst, dstOffset, len);
+      readerOffsets[index] += len;
+      updateReadStatistics(readStatistics, len, readers[index]);
+    }
+
+    /** Decode the data cells which could not be read into the stripe. */
+    private void decodeMissingCells(int[] cellLens, boolean[] read) {
+      List<Integer> erased = new ArrayList<Integer>();
+      for (int i = 0; i < numDataUnits; i++) {
+        if (!read[i]) {
+          erased.add(i);
+        }
+      }
+      if (erased.isEmpty()) {
+        return;
+      }
+      final byte[][] inputs = new byte[cellLens.length][];
+      final int[] inputOffsets = new int[cellLens.length];
+      for (int i = 0; i < cellLens.length; i++) {
+        if (read[i]) {
+          inputs[i] = i < numDataUnits ? stripeBuf
+              : parityBufs[i - numDataUnits];
+          inputOffsets[i] = i < numDataUnits ? i * cellSize : 0;
+        }
+      }
+      final int[] erasedIndexes = new int[erased.size()];
+      final byte[][] outputs = new byte[erased.size()][];
+      final int[] outputOffsets = new int[erased.size()];
+      for (int i = 0; i < erasedIndexes.length; i++) {
+        erasedIndexes[i] = erased.get(i);
+        outputs[i] = stripeBuf;
+        outputOffsets[i] = erasedIndexes[i] * cellSize;
+      }
+      decoder.decode(inputs, inputOffsets, cellLens[0], erasedIndexes,
+          outputs, outputOffsets);
+    }
+
+    private void closeReader(int index) {
+      if (readers[index] != null) {
+        try {
+          readers[index].close();
+        } catch (IOException e) {
+          DFSClient.LOG.error("error closing blockReader", e);
+        }
+        readers[index] = null;
+      }
+    }
+
+    void close() {
+      for (int i = 0; i < readers.length; i++) {
+        closeReader(i);
+      }
+      Arrays.fill(failed, false);
+      group = null;
+      blocks = null;
+    }
+  }
+}
@@ -0,0 +1,485 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.BlockConstructionStage;
+import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtoUtil;
+import org.apache.hadoop.hdfs.protocol.datatransfer.IOStreamPair;
+import org.apache.hadoop.hdfs.protocol.datatransfer.PipelineAck;
+import org.apache.hadoop.hdfs.protocol.datatransfer.Sender;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.erasurecode.CodecUtil;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureEncoder;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * DFSStripedOutputStream creates files striped with an erasure coding
+ * policy. The data of each block group is cut into cells, which go
+ * round-robin to the data blocks of the group; once a stripe of cells is
+ * buffered, its parity cells are encoded and written to the parity blocks.
+ *
+ * Each internal block of a group is written to a single datanode, with
+ * its own pipeline: the redundancy comes from the parity blocks instead of
+ * replicas. A group survives the failure of as many of its pipelines as it
+ * has parity blocks; the reconstruction of the missing internal blocks is
+ * left to the datanodes.
+ */
+@InterfaceAudience.Private
+public class DFSStripedOutputStream extends DFSOutputStream {
+  private final ErasureCodingPolicy ecPolicy;
+  private final int cellSize;
+  private final int numDataUnits;
+  private final int numParityUnits;
+  private final RawErasureEncoder encoder;
+  private final DataChecksum checksum;
+  private final String[] favoredNodes;
+  /** The cells of the current stripe, data cells first */
+  private final byte[][] cellBuffers;
+  private final byte[] paritySums;
+
+  /** The group being written, or null before its first byte */
+  private ExtendedBlock currentGroup;
+  /** The last group written, with its length */
+  private ExtendedBlock lastGroup;
+  /** The bytes of data written to the current group */
+  private long groupBytes;
+  private final BlockWriter[] writers;
+  private int numFailedWriters;
+  private IOException lastException;
+
+  DFSStripedOutputStream(DFSClient dfsClient, String src, HdfsFileStatus stat,
+      EnumSet<CreateFlag> flag, Progressable progress, DataChecksum checksum,
+      String[] favoredNodes) throws IOException {
+    super(dfsClient, src, progress, stat, checksum);
+    this.shouldSyncBlock = flag.contains(CreateFlag.SYNC_BLOCK);
+    this.ecPolicy = stat.getErasureCodingPolicy();
+    this.cellSize = ecPolicy.getCellSize();
+    this.numDataUnits = ecPolicy.getNumDataUnits();
+    this.numParityUnits = ecPolicy.getNumParityUnits();
+    if (cellSize % bytesPerChecksum != 0) {
+      throw new HadoopIllegalArgumentException("Invalid values: "
+          + "bytesPerChecksum (=" + bytesPerChecksum
+          + ") must divide the cell size (=" + cellSize + ").");
+    }
+    if (blockSize % cellSize != 0) {
+      throw new HadoopIllegalArgumentException("Invalid values: "
+          + "the cell size (=" + cellSize + ") must divide the block size (="
+          + blockSize + ") of striped file " + src);
+    }
+    this.checksum = checksum;
+    this.favoredNodes = favoredNodes;
+    this.encoder = CodecUtil.createRawEncoder(dfsClient.getConfiguration(),
+        ecPolicy.getSchema());
+    this.cellBuffers = new byte[ecPolicy.getNumAllUnits()][cellSize];
+    this.paritySums = new byte[cellSize / bytesPerChecksum
+        * checksum.getChecksumSize()];
+    this.writers = new BlockWriter[ecPolicy.getNumAllUnits()];
+
+    computePacketChunkSize(dfsClient.getConf().getWritePacketSize(),
+        bytesPerChecksum);
+  }
+
+  // @see FSOutputSummer#writeChunk()
+  @Override
+  protected synchronized void writeChunk(byte[] b, int offset, int len,
+      byte[] checksum, int ckoff, int cklen) throws IOException {
+    dfsClient.checkOpen();
+    checkClosed();
+    try {
+      if (currentGroup == null) {
+        allocateGroup();
+      }
+      // chunks never cross cells, as bytesPerChecksum divides the cell size
+      final int index = (int) (groupBytes / cellSize % numDataUnits);
+      final int posInCell = (int) (groupBytes % cellSize);
+      System.arraycopy(b, offset, cellBuffers[index], posInCell, len);
+      writers[index].writeChunk(b, offset, len, checksum, ckoff, cklen);
+      groupBytes += len;
+
+      if (posInCell + len == cellSize && index == numDataUnits - 1) {
+        writeParity(cellSize);
+      }
+      if (groupBytes == blockSize * numDataUnits) {
+        endGroup();
+      }
+    } catch (IOException e) {
+      lastException = e;
+      throw e;
+    }
+  }
+
+  /** Allocate the next block group, after the last group written. */
+  private void allocateGroup() throws IOException {
+    final LocatedBlock lb = DataStreamer.addBlock(dfsClient, src, lastGroup,
+        new DatanodeInfo[0], fileId, favoredNodes);
+    final LocatedBlock[] blocks = StripedBlockUtil.parseStripedBlockGroup(
+        (LocatedStripedBlock) lb, ecPolicy);
+    for (int i = 0; i < writers.length; i++) {
+      writers[i] = new BlockWriter(i, blocks[i]);
+    }
+    numFailedWriters = 0;
+    currentGroup = new ExtendedBlock(lb.getBlock());
+    groupBytes = 0;
+  }
+
+  /**
+   * Encode the parity cells of the current stripe and write them. The data
+   * cells shorter than the parity cells are coded as if padded with zeros.
+   *
+   * @param len the length of the parity cells, that of the first data cell
+   */
+  private void writeParity(int len) throws IOException {
+    final long stripeBytes = groupBytes % ((long) cellSize * numDataUnits);
+    final byte[][] inputs = new byte[numDataUnits][];
+    for (int i = 0; i < numDataUnits; i++) {
+      long cellBytes = stripeBytes == 0 ? cellSize
+          : Math.max(0, Math.min(cellSize, stripeBytes - (long) i * cellSize));
+      if (cellBytes < len) {
+        Arrays.fill(cellBuffers[i], (int) cellBytes, len, (byte) 0);
+      }
+      inputs[i] = cellBuffers[i];
+    }
+    final byte[][] outputs = new byte[numParityUnits][];
+    for (int i = 0; i < numParityUnits; i++) {
+      outputs[i] = cellBuffers[numDataUnits + i];
+    }
+    encoder.encode(inputs, new int[numDataUnits], len, outputs,
+        new int[numParityUnits]);
+
+    final int checksumSize = checksum.getChecksumSize();
+    for (int i = 0; i < numParityUnits; i++) {
+      checksum.calculateChunkedSums(outputs[i], 0, len, paritySums, 0);
+      for (int off = 0, k = 0; off < len; off += bytesPerChecksum, k++) {
+        writers[numDataUnits + i].writeChunk(outputs[i], off,
+            Math.min(bytesPerChecksum, len - off), paritySums,
+            k * checksumSize, checksumSize);
+      }
+    }
+  }
+
+  /** End the internal blocks of the current group. */
+  private void endGroup() throws IOException {
+    for (BlockWriter writer : writers) {
+      writer.endBlock();
+    }
+    lastGroup = currentGroup;
+    lastGroup.setNumBytes(groupBytes);
+    currentGroup = null;
+  }
+
+  /**
+   * Mark a writer failed, and fail the stream if the group cannot be
+   * decoded without the failed internal blocks.
+   */
+  private void failWriter(BlockWriter writer, IOException e)
+      throws IOException {
+    writer.failed = true;
+    writer.close();
+    numFailedWriters++;
+    LOG.warn("Failed to write internal block " + writer.index + " of "
+        + currentGroup + " of " + src + " (" + numFailedWriters
+        + " failed so far)", e);
+    if (numFailedWriters > numParityUnits) {
+      throw new IOException("Failed to write " + numFailedWriters
+          + " internal blocks of " + currentGroup + " of " + src
+          + ", more than the " + numParityUnits + " parity blocks", e);
+    }
+  }
+
+  /**
+   * Writes an internal block of the current group to its datanode, with a
+   * pipeline of a single datanode. It connects at its first chunk, so that
+   * the data blocks a short group leaves empty are never created.
+   */
+  private class BlockWriter {
+    private final int index;
+    /** The internal block with its location, or null if none was chosen */
+    private final LocatedBlock lb;
+    private Socket sock;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private DFSPacket packet;
+    private long bytesCurBlock = 0;
+    private long nextSeqno = 0;
+    private long lastAckedSeqno = -1;
+    private boolean failed = false;
+
+    BlockWriter(int index, LocatedBlock lb) {
+      this.index = index;
+      this.lb = lb;
+    }
+
+    void writeChunk(byte[] b, int offset, int len, byte[] sums, int sumsOffset,
+        int sumsLen) throws IOException {
+      if (failed) {
+        return;
+      }
+      try {
+        if (out == null) {
+          connect();
+        }
+        if (packet == null) {
+          packet = createPacket(packetSize, chunksPerPacket, bytesCurBlock,
+              nextSeqno++, false);
+        }
+        packet.writeChecksum(sums, sumsOffset, sumsLen);
+        packet.writeData(b, offset, len);
+        packet.incNumChunks();
+        bytesCurBlock += len;
+        if (packet.getNumChunks() == packet.getMaxChunks()) {
+          sendPacket();
+          waitForAcks(dfsClient.getConf().getWriteMaxPackets());
+        }
+      } catch (IOException e) {
+        failWriter(this, e);
+      }
+    }
+
+    /** Send the last packet of the block and wait for all the acks. */
+    void endBlock() throws IOException {
+      if (failed || out == null) {
+        return;
+      }
+      try {
+        if (packet != null) {
+          sendPacket();
+        }
+        packet = createPacket(0, 0, bytesCurBlock, nextSeqno++, true);
+        packet.setSyncBlock(shouldSyncBlock);
+        sendPacket();
+        waitForAcks(0);
+        close();
+      } catch (IOException e) {
+        failWriter(this, e);
+      }
+    }
+
+    private void connect() throws IOException {
+      if (lb == null) {
+        throw new IOException("No datanode was chosen for the block");
+      }
+      final DatanodeInfo[] nodes = lb.getLocations();
+      sock = DataStreamer.createSocketForPipeline(nodes[0], 1, dfsClient);
+      OutputStream unbufOut = NetUtils.getOutputStream(sock,
+          dfsClient.getDatanodeWriteTimeout(1));
+      InputStream unbufIn = NetUtils.getInputStream(sock,
+          dfsClient.getDatanodeReadTimeout(1));
+      IOStreamPair saslStreams = dfsClient.saslClient.socketSend(sock,
+          unbufOut, unbufIn, dfsClient, lb.getBlockToken(), nodes[0]);
+      out = new DataOutputStream(new BufferedOutputStream(saslStreams.out,
+          DFSUtil.getSmallBufferSize(dfsClient.getConfiguration())));
+      in = new DataInputStream(saslStreams.in);
+
+      ExtendedBlock blockCopy = new ExtendedBlock(lb.getBlock());
+      blockCopy.setNumBytes(blockSize);
+      new Sender(out).writeBlock(blockCopy, lb.getStorageTypes()[0],
+          lb.getBlockToken(), dfsClient.clientName, nodes,
+          lb.getStorageTypes(), null,
+          BlockConstructionStage.PIPELINE_SETUP_CREATE, nodes.length, 0, 0, 0,
+          checksum, cachingStrategy.get(), false, false, null);
+      BlockOpResponseProto resp = BlockOpResponseProto.parseFrom(
+          PBHelperClient.vintPrefixed(in));
+      DataTransferProtoUtil.checkBlockOpStatus(resp,
+          "ack with firstBadLink as " + resp.getFirstBadLink());
+    }
+
+    private void sendPacket() throws IOException {
+      try {
+        packet.writeTo(out);
+        out.flush();
+      } finally {
+        packet.releaseBuffer(byteArrayManager);
+        packet = null;
+      }
+    }
+
+    /** Read acks until at most the given number of packets are unacked. */
+    private void waitForAcks(int maxUnacked) throws IOException {
+      while (nextSeqno - 1 - lastAckedSeqno > maxUnacked) {
+        PipelineAck ack = new PipelineAck();
+        ack.readFields(in);
+        if (ack.getSeqno() == DFSPacket.HEART_BEAT_SEQNO) {
+          continue;
+        }
+        if (ack.getSeqno() != lastAckedSeqno + 1) {
+          throw new IOException("Expected ack for packet "
+              + (lastAckedSeqno + 1) + " but got " + ack);
+        }
+        for (int i = ack.getNumOfReplies() - 1; i >= 0; i--) {
+          Status reply = PipelineAck.getStatusFromHeader(ack.getHeaderFlag(i));
+          if (reply != Status.SUCCESS) {
+            throw new IOException("Bad response " + reply + " for block "
+                + lb.getBlock() + " from datanode " + lb.getLocations()[i]);
+          }
+        }
+        lastAckedSeqno = ack.getSeqno();
+      }
+    }
+
+    void close() {
+      if (packet != null) {
+        packet.releaseBuffer(byteArrayManager);
+        packet = null;
+      }
+      IOUtils.closeStream(out);
+      IOUtils.closeStream(in);
+      IOUtils.closeSocket(sock);
+      out = null;
+      in = null;
+      sock = null;
+    }
+  }
+
+  @Override
+  protected void checkClosed() throws IOException {
+    if (isClosed()) {
+      throw lastException != null ? lastException
+          : new ClosedChannelException();
+    }
+  }
+
+  @Override
+  boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  void setClosed() {
+    closed = true;
+    for (BlockWriter writer : writers) {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+
+  @Override
+  protected synchronized void start() {
+    // the pipelines are set up as the block groups are allocated
+  }
+
+  @Override
+  synchronized void abort() throws IOException {
+    if (isClosed()) {
+      return;
+    }
+    lastException = new IOException("Lease timeout of "
+        + (dfsClient.getConf().getHdfsTimeout()/1000) + " seconds expired.");
+    setClosed();
+    dfsClient.endFileLease(fileId);
+  }
+
+  @Override
+  public synchronized DatanodeInfo[] getPipeline() {
+    return null;
+  }
+
+  /**
+   * @return the number of internal blocks of the file, as it has no
+   * replicas
+   */
+  @Override
+  public synchronized int getCurrentBlockReplication() throws IOException {
+    dfsClient.checkOpen();
+    checkClosed();
+    return ecPolicy.getNumAllUnits();
+  }
+
+  /**
+   * Not supported: the parity of a stripe can only be written once the
+   * stripe is full, or the file is closed.
+   */
+  @Override
+  public void hflush() {
+    LOG.debug("hflush is not supported by striped file {}", src);
+  }
+
+  @Override
+  public void hsync() {
+    LOG.debug("hsync is not supported by striped file {}", src);
+  }
+
+  @Override
+  public void hsync(EnumSet<SyncFlag> syncFlags) {
+    LOG.debug("hsync is not supported by striped file {}", src);
+  }
+
+  @Override
+  public void setArtificialSlowdown(long period) {
+  }
+
+  @Override
+  protected synchronized void closeImpl() throws IOException {
+    if (isClosed()) {
+      if (lastException != null) {
+        throw lastException;
+      }
+      return;
+    }
+
+    try {
+      flushBuffer();       // flush from all upper layers
+      if (currentGroup != null) {
+        final long stripeBytes = groupBytes % ((long) cellSize * numDataUnits);
+        if (stripeBytes != 0) {
+          writeParity((int) Math.min(cellSize, stripeBytes));
+        }
+        endGroup();
+      }
+      completeFile(lastGroup);
+      dfsClient.endFileLease(fileId);
+    } catch (IOException e) {
+      lastException = e;
+      throw e;
+    } finally {
+      setClosed();
+    }
+  }
+
+  @Override
+  ExtendedBlock getBlock() {
+    return currentGroup;
+  }
+}
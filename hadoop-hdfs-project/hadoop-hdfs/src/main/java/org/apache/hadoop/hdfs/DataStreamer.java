@@ -115,6 +115,11 @@
  * pipeline is setup by eliminating the bad datanode from the original
  * pipeline. The DataStreamer now starts sending packets from the dataQueue.
  *
+ * With parallel pipelines, a DataStreamer writes a single block and closes
+ * once its last packet is acked, while the DataStreamer of the next block
+ * already streams to its own pipeline. See
+ * {@link #DataStreamer(DataStreamer)}.
+ *
  *********************************************************************/
 
 @InterfaceAudience.Private
@@ -396,6 +401,17 @@ synchronized void checkRestartingNodeDeadline(DatanodeInfo[] nodes) {
 
   private final LoadingCache<DatanodeInfo, DatanodeInfo> excludedNodes;
   private final String[] favoredNodes;
+  /** Whether to close once the current block is written */
+  private volatile boolean closeAfterBlock = false;
+  /** Whether the block was written, once closed after the block */
+  private volatile boolean blockWritten = false;
+  /**
+   * The streamer still writing the block the first block of this streamer
+   * follows, until this streamer allocates its first block.
+   */
+  private DataStreamer previousStreamer;
+  /** The maximum number of packets queued or waiting for their ack */
+  private final int maxPacketsInFlight;
 
   private DataStreamer(HdfsFileStatus stat, DFSClient dfsClient, String src,
                        Progressable progress, DataChecksum checksum,
@@ -417,6 +433,9 @@ private DataStreamer(HdfsFileStatus stat, DFSClient dfsClient, String src,
     this.dfsclientSlowLogThresholdMs = conf.getSlowIoWarningThresholdMs();
     this.excludedNodes = initExcludedNodes(conf.getExcludedNodesCacheExpiry());
     this.errorState = new ErrorState(conf.getDatanodeRestartTimeout());
+    this.maxPacketsInFlight = conf.isWriteParallelPipelinesEnabled()
+        ? conf.getWriteParallelPipelinesMaxPackets()
+        : conf.getWriteMaxPackets();
   }
 
   /**
@@ -450,6 +469,24 @@ private DataStreamer(HdfsFileStatus stat, DFSClient dfsClient, String src,
     accessToken = lastBlock.getBlockToken();
   }
 
+  /**
+   * Construct a data streamer for the block following the one the given
+   * streamer writes, while that streamer completes its block. Packets of
+   * the next block are queued to this streamer meanwhile. The previous block
+   * is committed when this streamer allocates the next block, only once all
+   * its packets are acked, so that its pipeline can still be recovered
+   * until then.
+   */
+  DataStreamer(DataStreamer previous) {
+    this(previous.stat, previous.dfsClient, previous.src, previous.progress,
+        previous.checksum4WriteBlock, previous.cachingStrategy,
+        previous.byteArrayManager, false, previous.favoredNodes);
+    stage = BlockConstructionStage.PIPELINE_SETUP_CREATE;
+    this.previousStreamer = previous;
+    this.currentSeqno = previous.currentSeqno;
+    this.artificialSlowdown = previous.artificialSlowdown;
+  }
+
   /**
    * Set pipeline in construction
    *
@@ -497,6 +534,13 @@ private void endBlock() {
     closeStream();
     setPipeline(null, null, null);
     stage = BlockConstructionStage.PIPELINE_SETUP_CREATE;
+    if (closeAfterBlock) {
+      synchronized (dataQueue) {
+        blockWritten = true;
+        streamerClosed = true;
+        dataQueue.notifyAll();
+      }
+    }
   }
 
   private boolean shouldStop() {
@@ -576,6 +620,10 @@ public void run() {
           if(LOG.isDebugEnabled()) {
             LOG.debug("Allocating new block");
           }
+          if (previousStreamer != null) {
+            block = previousStreamer.waitForBlockWritten();
+            previousStreamer = null;
+          }
           setPipeline(nextBlockOutputStream());
           initDataStreaming();
         } else if (stage == BlockConstructionStage.PIPELINE_SETUP_APPEND) {
@@ -784,7 +832,7 @@ void waitAndQueuePacket(DFSPacket packet) throws IOException {
         boolean firstWait = true;
         try {
           while (!streamerClosed && dataQueue.size() + ackQueue.size() >
-              dfsClient.getConf().getWriteMaxPackets()) {
+              maxPacketsInFlight) {
             if (firstWait) {
               Span span = Trace.currentSpan();
               if (span != null) {
@@ -819,6 +867,47 @@ void waitAndQueuePacket(DFSPacket packet) throws IOException {
     }
   }
 
+  /**
+   * Wait for this streamer, closed after its block, to get the acks of all
+   * the packets of the block, recovering its pipeline if needed, so that the
+   * block can be committed by the streamer of the next block.
+   *
+   * @return the block, of its acked length and last generation stamp
+   * @throws IOException if the streamer failed to write the block
+   */
+  ExtendedBlock waitForBlockWritten() throws IOException {
+    synchronized (dataQueue) {
+      while (!blockWritten && !streamerClosed) {
+        try {
+          dataQueue.wait(1000);
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException(
+              "Interrupted while waiting for the acks of " + block);
+        }
+      }
+      if (!blockWritten) {
+        lastException.check(false);
+        throw new IOException("Failed to write the previous block of " + src);
+      }
+      return new ExtendedBlock(block);
+    }
+  }
+
+  /**
+   * Close this streamer once it wrote the current block, rather than wait
+   * for the packets of the next one.
+   */
+  void setCloseAfterBlock() {
+    closeAfterBlock = true;
+  }
+
+  /**
+   * @return whether this streamer, closed after its block, wrote the block
+   */
+  boolean isBlockWritten() {
+    return blockWritten;
+  }
+
   /*
    * close the streamer, should be called only by an external thread
    * and only after all data to be sent has been flushed to datanode.
@@ -1625,6 +1714,17 @@ private boolean[] getPinnings(DatanodeInfo[] nodes, boolean shouldLog) {
 
   protected LocatedBlock locateFollowingBlock(DatanodeInfo[] excludedNodes)
       throws IOException {
+    return addBlock(dfsClient, src, block, excludedNodes, stat.getFileId(),
+        favoredNodes);
+  }
+
+  /**
+   * Allocate the block following the given one from the namenode, retrying
+   * while the previous block is not replicated enough yet.
+   */
+  static LocatedBlock addBlock(DFSClient dfsClient, String src,
+      ExtendedBlock previous, DatanodeInfo[] excludedNodes, long fileId,
+      String[] favoredNodes) throws IOException {
     final DfsClientConf conf = dfsClient.getConf(); 
     int retries = conf.getNumBlockWriteLocateFollowingRetry();
     long sleeptime = conf.getBlockWriteLocateFollowingInitialDelayMs();
@@ -1633,7 +1733,7 @@ protected LocatedBlock locateFollowingBlock(DatanodeInfo[] excludedNodes)
       while (true) {
         try {
           return dfsClient.namenode.addBlock(src, dfsClient.clientName,
-              block, excludedNodes, stat.getFileId(), favoredNodes);
+              previous, excludedNodes, fileId, favoredNodes);
         } catch (RemoteException e) {
           IOException ue =
               e.unwrapRemoteException(FileNotFoundException.class,
@@ -74,11 +74,13 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.EncryptionZone;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.RollingUpgradeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
@@ -192,7 +194,7 @@ public Path getHomeDirectory() {
    * @return path component of {file}
    * @throws IllegalArgumentException if URI does not belong to this DFS
    */
-  private String getPathName(Path file) {
+  String getPathName(Path file) {
     checkPath(file);
     String result = file.toUri().getPath();
     if (!DFSUtil.isValidName(result)) {
@@ -202,6 +204,14 @@ private String getPathName(Path file) {
     return result;
   }
   
+  private String[] getPathNames(Path[] files) {
+    String[] names = new String[files.length];
+    for (int i = 0; i < files.length; i++) {
+      names[i] = getPathName(fixRelativePart(files[i]));
+    }
+    return names;
+  }
+
   @Override
   public BlockLocation[] getFileBlockLocations(FileStatus file, long start,
       long len) throws IOException {
@@ -431,6 +441,41 @@ public FSDataOutputStream next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Create a number of files with a single call to the NameNode, under a
+   * single acquisition of its namesystem lock. Missing parent directories
+   * are created. Unlike {@link #create(Path, FsPermission, boolean, int,
+   * short, long, Progressable)}, symlinks in the paths are not resolved; the
+   * files of such paths fail with an {@link UnresolvedLinkException}.
+   *
+   * @return an output stream, or the exception the file failed to be created
+   *         with, for each path in order
+   * @throws IOException if the batch as a whole fails
+   */
+  public List<PathResult<HdfsDataOutputStream>> create(Path[] files,
+      FsPermission permission, boolean overwrite, int bufferSize,
+      short replication, long blockSize, Progressable progress)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    EnumSet<CreateFlag> flag = overwrite ?
+        EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE) :
+        EnumSet.of(CreateFlag.CREATE);
+    List<PathResult<DFSOutputStream>> streams = dfs.create(
+        getPathNames(files), permission, flag, true, replication, blockSize,
+        progress, bufferSize, null);
+    List<PathResult<HdfsDataOutputStream>> results =
+        new ArrayList<PathResult<HdfsDataOutputStream>>(streams.size());
+    for (PathResult<DFSOutputStream> stream : streams) {
+      try {
+        results.add(PathResult.success(
+            dfs.createWrappedOutputStream(stream.get(), statistics)));
+      } catch (IOException e) {
+        results.add(PathResult.<HdfsDataOutputStream>failure(e));
+      }
+    }
+    return results;
+  }
+
   @Override
   protected HdfsDataOutputStream primitiveCreate(Path f,
     FsPermission absolutePermission, EnumSet<CreateFlag> flag, int bufferSize,
@@ -542,6 +587,68 @@ public BlockStoragePolicySpi next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Set the erasure coding policy of a directory: the files created under
+   * it afterwards are striped with the policy.
+   *
+   * @param path the directory
+   * @param ecPolicyName the name of the policy, or null for the default one
+   */
+  public void setErasureCodingPolicy(final Path path,
+      final String ecPolicyName) throws IOException {
+    statistics.incrementWriteOps(1);
+    Path absF = fixRelativePart(path);
+    new FileSystemLinkResolver<Void>() {
+      @Override
+      public Void doCall(final Path p)
+          throws IOException, UnresolvedLinkException {
+        dfs.setErasureCodingPolicy(getPathName(p), ecPolicyName);
+        return null;
+      }
+
+      @Override
+      public Void next(final FileSystem fs, final Path p)
+          throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+          ((DistributedFileSystem) fs).setErasureCodingPolicy(p,
+              ecPolicyName);
+        } else {
+          throw new UnsupportedOperationException("Cannot set an erasure"
+              + " coding policy through a symlink to a"
+              + " non-DistributedFileSystem: " + path + " -> " + p);
+        }
+        return null;
+      }
+    }.resolve(this, absF);
+  }
+
+  /**
+   * @return the erasure coding policy of a striped file, or the policy the
+   *         files created under a directory get; null if they are replicated
+   */
+  public ErasureCodingPolicy getErasureCodingPolicy(final Path path)
+      throws IOException {
+    statistics.incrementReadOps(1);
+    Path absF = fixRelativePart(path);
+    return new FileSystemLinkResolver<ErasureCodingPolicy>() {
+      @Override
+      public ErasureCodingPolicy doCall(final Path p) throws IOException {
+        return dfs.getErasureCodingPolicy(getPathName(p));
+      }
+
+      @Override
+      public ErasureCodingPolicy next(final FileSystem fs, final Path p)
+          throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+          return ((DistributedFileSystem) fs).getErasureCodingPolicy(p);
+        }
+        throw new UnsupportedOperationException("Cannot get the erasure"
+            + " coding policy through a symlink to a"
+            + " non-DistributedFileSystem: " + path + " -> " + p);
+      }
+    }.resolve(this, absF);
+  }
+
   @Override
   public Collection<BlockStoragePolicy> getAllStoragePolicies()
       throws IOException {
@@ -711,6 +818,21 @@ public Boolean next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
   
+  /**
+   * Delete a number of files or directories with a single call to the
+   * NameNode, under a single acquisition of its namesystem lock. Symlinks in
+   * the paths are not resolved.
+   *
+   * @return whether each path was deleted, or the exception it failed to be
+   *         deleted with, in order
+   * @throws IOException if the batch as a whole fails
+   */
+  public List<PathResult<Boolean>> delete(Path[] files, boolean recursive)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    return dfs.delete(getPathNames(files), recursive);
+  }
+
   @Override
   public ContentSummary getContentSummary(Path f) throws IOException {
     statistics.incrementReadOps(1);
@@ -1087,6 +1209,15 @@ public String toString() {
   public DFSClient getClient() {
     return dfs;
   }        
+
+  /**
+   * Get the view of this file system issuing operations asynchronously.
+   */
+  @InterfaceAudience.Public
+  @InterfaceStability.Unstable
+  public AsyncDistributedFileSystem getAsyncDistributedFileSystem() {
+    return new AsyncDistributedFileSystem(this);
+  }
   
   @Override
   public FsStatus getStatus(Path p) throws IOException {
@@ -1281,6 +1412,39 @@ public FileStatus next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Get the stat information about a number of files or directories with a
+   * single call to the NameNode, under a single acquisition of its
+   * namesystem lock. Symlinks in the paths are not resolved.
+   *
+   * @return the stat information, or the exception the lookup failed with,
+   *         for each path in order; paths which do not exist fail with a
+   *         {@link FileNotFoundException}
+   * @throws IOException if the batch as a whole fails
+   */
+  public List<PathResult<FileStatus>> getFileStatus(Path[] files)
+      throws IOException {
+    statistics.incrementReadOps(1);
+    List<PathResult<HdfsFileStatus>> infos =
+        dfs.getFileInfo(getPathNames(files));
+    List<PathResult<FileStatus>> results =
+        new ArrayList<PathResult<FileStatus>>(infos.size());
+    for (int i = 0; i < files.length; i++) {
+      PathResult<HdfsFileStatus> fi = infos.get(i);
+      Path p = fixRelativePart(files[i]);
+      if (!fi.isSuccess()) {
+        results.add(PathResult.<FileStatus>failure(fi.getException()));
+      } else if (fi.getValue() == null) {
+        results.add(PathResult.<FileStatus>failure(
+            new FileNotFoundException("File does not exist: " + p)));
+      } else {
+        results.add(PathResult.success(
+            fi.getValue().makeQualified(getUri(), p)));
+      }
+    }
+    return results;
+  }
+
   @SuppressWarnings("deprecation")
   @Override
   public void createSymlink(final Path target, final Path link,
@@ -37,6 +37,7 @@
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
 import org.apache.hadoop.hdfs.protocol.CachePoolInfo;
 import org.apache.hadoop.hdfs.protocol.EncryptionZone;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.hdfs.tools.DFSAdmin;
@@ -363,4 +364,29 @@ public void setStoragePolicy(final Path src, final String policyName)
       throws IOException {
     dfs.setStoragePolicy(src, policyName);
   }
+
+  /**
+   * Set the erasure coding policy of a directory. The files created under
+   * the directory afterwards are striped with the policy, instead of being
+   * replicated; the existing files are not changed.
+   *
+   * @param path The directory.
+   * @param ecPolicyName The name of the policy, or null for the default one.
+   */
+  public void setErasureCodingPolicy(final Path path,
+      final String ecPolicyName) throws IOException {
+    dfs.setErasureCodingPolicy(path, ecPolicyName);
+  }
+
+  /**
+   * Get the erasure coding policy of a striped file, or the policy the files
+   * created under a directory get.
+   *
+   * @param path The file or directory.
+   * @return The policy, or null if the files are replicated.
+   */
+  public ErasureCodingPolicy getErasureCodingPolicy(final Path path)
+      throws IOException {
+    return dfs.getErasureCodingPolicy(path);
+  }
 }
@@ -78,6 +78,15 @@ public static Peer peerFromSocket(Socket socket)
     }
   }
 
+  /**
+   * @return the channel of a peer accepted by a TcpPeerServer, which can be
+   * registered with a selector, or null if the peer has no channel.
+   */
+  public static SocketChannel getSocketChannel(Peer peer) {
+    return (peer instanceof NioInetPeer) ?
+        ((NioInetPeer) peer).getChannel() : null;
+  }
+
   public static Peer peerFromSocketAndKey(
         SaslDataTransferClient saslClient, Socket s,
         DataEncryptionKeyFactory keyFactory,
@@ -41,6 +41,7 @@
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
@@ -108,6 +109,14 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetDatanodeStorageReportResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.HAServiceStateRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.HAServiceStateResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiCreateRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiCreateResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiDeleteRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiDeleteResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiGetFileInfoRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiGetFileInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoRequestProto;
@@ -186,6 +195,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetSafeModeResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetStoragePolicyRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetStoragePolicyResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetErasureCodingPolicyRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetErasureCodingPolicyResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetTimesRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetTimesResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.TruncateRequestProto;
@@ -253,6 +264,10 @@ public class ClientNamenodeProtocolServerSideTranslatorPB implements
   static final SetStoragePolicyResponseProto VOID_SET_STORAGE_POLICY_RESPONSE =
       SetStoragePolicyResponseProto.newBuilder().build();
 
+  static final SetErasureCodingPolicyResponseProto
+      VOID_SET_ERASURE_CODING_POLICY_RESPONSE =
+      SetErasureCodingPolicyResponseProto.newBuilder().build();
+
   private static final CreateResponseProto VOID_CREATE_RESPONSE = 
   CreateResponseProto.newBuilder().build();
 
@@ -1460,6 +1475,19 @@ public SetStoragePolicyResponseProto setStoragePolicy(
     return VOID_SET_STORAGE_POLICY_RESPONSE;
   }
 
+  @Override
+  public SetErasureCodingPolicyResponseProto setErasureCodingPolicy(
+      RpcController controller, SetErasureCodingPolicyRequestProto request)
+      throws ServiceException {
+    try {
+      server.setErasureCodingPolicy(request.getSrc(),
+          request.hasEcPolicyName() ? request.getEcPolicyName() : null);
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    return VOID_SET_ERASURE_CODING_POLICY_RESPONSE;
+  }
+
   @Override
   public GetStoragePolicyResponseProto getStoragePolicy(
       RpcController controller, GetStoragePolicyRequestProto request)
@@ -1504,6 +1532,67 @@ public GetCurrentEditLogTxidResponseProto getCurrentEditLogTxid(RpcController co
     }
   }
 
+  @Override
+  public HAServiceStateResponseProto getHAServiceState(
+      RpcController controller, HAServiceStateRequestProto req)
+      throws ServiceException {
+    try {
+      return HAServiceStateResponseProto.newBuilder().setState(
+          PBHelper.convert(server.getHAServiceState())).build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public MultiCreateResponseProto multiCreate(RpcController controller,
+      MultiCreateRequestProto req) throws ServiceException {
+    try {
+      List<PathResult<HdfsFileStatus>> results = server.multiCreate(
+          req.getSrcList().toArray(new String[req.getSrcCount()]),
+          PBHelper.convert(req.getMasked()), req.getClientName(),
+          PBHelper.convertCreateFlag(req.getCreateFlag()),
+          req.getCreateParent(), (short) req.getReplication(),
+          req.getBlockSize(), PBHelper.convertCryptoProtocolVersions(
+              req.getCryptoProtocolVersionList()));
+      return MultiCreateResponseProto.newBuilder()
+          .addAllResults(PBHelper.convertFileStatusResultProtos(results))
+          .build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public MultiDeleteResponseProto multiDelete(RpcController controller,
+      MultiDeleteRequestProto req) throws ServiceException {
+    try {
+      List<PathResult<Boolean>> results = server.multiDelete(
+          req.getSrcList().toArray(new String[req.getSrcCount()]),
+          req.getRecursive());
+      return MultiDeleteResponseProto.newBuilder()
+          .addAllResults(PBHelper.convertDeleteResultProtos(results))
+          .build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public MultiGetFileInfoResponseProto multiGetFileInfo(
+      RpcController controller, MultiGetFileInfoRequestProto req)
+      throws ServiceException {
+    try {
+      List<PathResult<HdfsFileStatus>> results = server.multiGetFileInfo(
+          req.getSrcList().toArray(new String[req.getSrcCount()]));
+      return MultiGetFileInfoResponseProto.newBuilder()
+          .addAllResults(PBHelper.convertFileStatusResultProtos(results))
+          .build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetEditsFromTxidResponseProto getEditsFromTxid(RpcController controller,
       GetEditsFromTxidRequestProto req) throws ServiceException {
@@ -24,7 +24,10 @@
 import java.util.EnumSet;
 import java.util.List;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -45,6 +48,7 @@
 import org.apache.hadoop.fs.permission.AclStatus;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
@@ -68,6 +72,7 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
@@ -93,6 +98,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateSnapshotRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateSymlinkRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DeleteRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DeleteResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DeleteSnapshotRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DisallowSnapshotRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FinalizeUpgradeRequestProto;
@@ -107,6 +113,10 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetDatanodeReportRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetDatanodeStorageReportRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.HAServiceStateRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiCreateRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiDeleteRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.MultiGetFileInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoRequestProto;
@@ -161,6 +171,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.UpdateBlockForPipelineRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.UpdatePipelineRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetStoragePolicyRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SetErasureCodingPolicyRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.EncryptionZonesProtos;
 import org.apache.hadoop.hdfs.protocol.proto.EncryptionZonesProtos.CreateEncryptionZoneRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.EncryptionZonesProtos.GetEZForPathRequestProto;
@@ -176,7 +187,9 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.Client;
 import org.apache.hadoop.ipc.ProtobufHelper;
+import org.apache.hadoop.ipc.ProtobufRpcEngine;
 import org.apache.hadoop.ipc.ProtocolMetaInterface;
 import org.apache.hadoop.ipc.ProtocolTranslator;
 import org.apache.hadoop.ipc.RPC;
@@ -189,6 +202,7 @@
 import org.apache.hadoop.security.token.Token;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
 import com.google.protobuf.ServiceException;
 
 import static org.apache.hadoop.fs.BatchedRemoteIterator.BatchedListEntries;
@@ -206,6 +220,17 @@ public class ClientNamenodeProtocolTranslatorPB implements
     ProtocolMetaInterface, ClientProtocol, Closeable, ProtocolTranslator {
   final private ClientNamenodeProtocolPB rpcProxy;
 
+  private static final ThreadLocal<ListenableFuture<?>> ASYNC_RETURN_VALUE =
+      new ThreadLocal<ListenableFuture<?>>();
+
+  private static final Function<Message, Void> VOID_RETURN_VALUE =
+      new Function<Message, Void>() {
+        @Override
+        public Void apply(Message response) {
+          return null;
+        }
+      };
+
   static final GetServerDefaultsRequestProto VOID_GET_SERVER_DEFAULT_REQUEST = 
   GetServerDefaultsRequestProto.newBuilder().build();
 
@@ -242,6 +267,27 @@ public void close() {
     RPC.stopProxy(rpcProxy);
   }
 
+  /**
+   * Get the future of the return value of the last call made by the current
+   * thread in the asynchronous mode of {@link Client}, and forget it. Only
+   * rename2, delete, setPermission and getFileInfo return their value
+   * asynchronously.
+   *
+   * @return the future of the return value, or null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ListenableFuture<T> getAsyncReturnValue() {
+    ListenableFuture<T> value = (ListenableFuture<T>) ASYNC_RETURN_VALUE.get();
+    ASYNC_RETURN_VALUE.remove();
+    return value;
+  }
+
+  private static <T> void setAsyncReturnValue(
+      Function<Message, T> converter) {
+    ASYNC_RETURN_VALUE.set(Futures.transform(
+        ProtobufRpcEngine.getAsyncReturnMessage(), converter));
+  }
+
   @Override
   public LocatedBlocks getBlockLocations(String src, long offset, long length)
       throws AccessControlException, FileNotFoundException,
@@ -363,6 +409,9 @@ public void setPermission(String src, FsPermission permission)
         .build();
     try {
       rpcProxy.setPermission(null, req);
+      if (Client.isAsynchronousMode()) {
+        setAsyncReturnValue(VOID_RETURN_VALUE);
+      }
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
@@ -512,6 +561,9 @@ public void rename2(String src, String dst, Rename... options)
         build();
     try {
       rpcProxy.rename2(null, req);
+      if (Client.isAsynchronousMode()) {
+        setAsyncReturnValue(VOID_RETURN_VALUE);
+      }
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
@@ -538,6 +590,16 @@ public boolean delete(String src, boolean recursive)
       UnresolvedLinkException, IOException {
     DeleteRequestProto req = DeleteRequestProto.newBuilder().setSrc(src).setRecursive(recursive).build();
     try {
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.delete(null, req);
+        setAsyncReturnValue(new Function<Message, Boolean>() {
+          @Override
+          public Boolean apply(Message response) {
+            return ((DeleteResponseProto) response).getResult();
+          }
+        });
+        return false;
+      }
       return rpcProxy.delete(null, req).getResult();
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
@@ -771,6 +833,17 @@ public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
     GetFileInfoRequestProto req = GetFileInfoRequestProto.newBuilder()
         .setSrc(src).build();
     try {
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.getFileInfo(null, req);
+        setAsyncReturnValue(new Function<Message, HdfsFileStatus>() {
+          @Override
+          public HdfsFileStatus apply(Message response) {
+            GetFileInfoResponseProto res = (GetFileInfoResponseProto) response;
+            return res.hasFs() ? PBHelper.convert(res.getFs()) : null;
+          }
+        });
+        return null;
+      }
       GetFileInfoResponseProto res = rpcProxy.getFileInfo(null, req);
       return res.hasFs() ? PBHelper.convert(res.getFs()) : null;
     } catch (ServiceException e) {
@@ -1485,6 +1558,21 @@ public void setStoragePolicy(String src, String policyName)
     }
   }
 
+  @Override
+  public void setErasureCodingPolicy(String src, String ecPolicyName)
+      throws IOException {
+    SetErasureCodingPolicyRequestProto.Builder builder =
+        SetErasureCodingPolicyRequestProto.newBuilder().setSrc(src);
+    if (ecPolicyName != null) {
+      builder.setEcPolicyName(ecPolicyName);
+    }
+    try {
+      rpcProxy.setErasureCodingPolicy(null, builder.build());
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public BlockStoragePolicy getStoragePolicy(String path) throws IOException {
     GetStoragePolicyRequestProto request = GetStoragePolicyRequestProto
@@ -1518,6 +1606,67 @@ public long getCurrentEditLogTxid() throws IOException {
     }
   }
 
+  @Override
+  public HAServiceState getHAServiceState() throws IOException {
+    HAServiceStateRequestProto req =
+        HAServiceStateRequestProto.getDefaultInstance();
+    try {
+      return PBHelper.convert(
+          rpcProxy.getHAServiceState(null, req).getState());
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public List<PathResult<HdfsFileStatus>> multiCreate(String[] srcs,
+      FsPermission masked, String clientName, EnumSetWritable<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize,
+      CryptoProtocolVersion[] supportedVersions) throws IOException {
+    MultiCreateRequestProto.Builder builder =
+        MultiCreateRequestProto.newBuilder()
+        .addAllSrc(Arrays.asList(srcs))
+        .setMasked(PBHelper.convert(masked))
+        .setClientName(clientName)
+        .setCreateFlag(PBHelper.convertCreateFlag(flag))
+        .setCreateParent(createParent)
+        .setReplication(replication)
+        .setBlockSize(blockSize);
+    builder.addAllCryptoProtocolVersion(PBHelper.convert(supportedVersions));
+    try {
+      return PBHelper.convertFileStatusResults(
+          rpcProxy.multiCreate(null, builder.build()).getResultsList());
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public List<PathResult<Boolean>> multiDelete(String[] srcs,
+      boolean recursive) throws IOException {
+    MultiDeleteRequestProto req = MultiDeleteRequestProto.newBuilder()
+        .addAllSrc(Arrays.asList(srcs)).setRecursive(recursive).build();
+    try {
+      return PBHelper.convertDeleteResults(
+          rpcProxy.multiDelete(null, req).getResultsList());
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public List<PathResult<HdfsFileStatus>> multiGetFileInfo(String[] srcs)
+      throws IOException {
+    MultiGetFileInfoRequestProto req = MultiGetFileInfoRequestProto
+        .newBuilder().addAllSrc(Arrays.asList(srcs)).build();
+    try {
+      return PBHelper.convertFileStatusResults(
+          rpcProxy.multiGetFileInfo(null, req).getResultsList());
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public EventBatchList getEditsFromTxid(long txid) throws IOException {
     GetEditsFromTxidRequestProto req = GetEditsFromTxidRequestProto.newBuilder()
@@ -207,7 +207,8 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
 
   @Override
   public DatanodeCommand cacheReport(DatanodeRegistration registration,
-      String poolId, List<Long> blockIds) throws IOException {
+      String poolId, List<Long> blockIds, List<Long> readCachedBlockIds)
+      throws IOException {
     CacheReportRequestProto.Builder builder =
         CacheReportRequestProto.newBuilder()
         .setRegistration(PBHelper.convert(registration))
@@ -215,6 +216,7 @@ public DatanodeCommand cacheReport(DatanodeRegistration registration,
     for (Long blockId : blockIds) {
       builder.addBlocks(blockId);
     }
+    builder.addAllReadCachedBlocks(readCachedBlockIds);
     
     CacheReportResponseProto resp;
     try {
@@ -184,7 +184,8 @@ public CacheReportResponseProto cacheReport(RpcController controller,
       cmd = impl.cacheReport(
           PBHelper.convert(request.getRegistration()),
           request.getBlockPoolId(),
-          request.getBlocksList());
+          request.getBlocksList(),
+          request.getReadCachedBlocksList());
     } catch (IOException e) {
       throw new ServiceException(e);
     }
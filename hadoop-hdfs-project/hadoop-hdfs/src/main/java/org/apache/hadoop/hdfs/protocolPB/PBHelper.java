@@ -68,6 +68,7 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeLocalInfo;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.EncryptionZone;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.fs.FileEncryptionInfo;
 import org.apache.hadoop.hdfs.protocol.FsPermissionExtension;
@@ -79,6 +80,8 @@
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeStatus;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
@@ -103,14 +106,19 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateFlagProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DatanodeReportTypeProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DatanodeStorageReportProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DeleteResultProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FileStatusResultProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsStatsResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.PathErrorProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.RollingUpgradeActionProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.RollingUpgradeInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.SafeModeActionProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ShortCircuitShmSlotProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BalancerBandwidthCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockECReconstructionCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockECReconstructionInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockIdCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockRecoveryCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeCommandProto;
@@ -145,6 +153,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ExportedBlockKeysProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.FsPermissionProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.FsServerDefaultsProto;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ErasureCodingPolicyProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.HdfsFileStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.HdfsFileStatusProto.FileType;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlockProto;
@@ -187,6 +196,8 @@
 import org.apache.hadoop.hdfs.server.namenode.CheckpointSignature;
 import org.apache.hadoop.hdfs.server.protocol.BalancerBandwidthCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
+import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand;
+import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
 import org.apache.hadoop.hdfs.server.protocol.BlockIdCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
@@ -217,6 +228,8 @@
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.SlotId;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.erasurecode.ECSchema;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
 
@@ -692,6 +705,14 @@ public static LocatedBlockProto convert(LocatedBlock b) {
       builder.addAllStorageIDs(Arrays.asList(storageIDs));
     }
 
+    if (b.isStriped()) {
+      LocatedStripedBlock sb = (LocatedStripedBlock) b;
+      builder.setBlockIndices(ByteString.copyFrom(sb.getBlockIndices()));
+      for (Token<BlockTokenIdentifier> token : sb.getBlockTokens()) {
+        builder.addBlockTokens(PBHelperClient.convert(token));
+      }
+    }
+
     return builder.setB(PBHelperClient.convert(b.getBlock()))
         .setBlockToken(PBHelperClient.convert(b.getBlockToken()))
         .setCorrupt(b.isCorrupt()).setOffset(b.getStartOffset()).build();
@@ -726,9 +747,27 @@ public static LocatedBlock convert(LocatedBlockProto proto) {
       }
     }
 
-    LocatedBlock lb = new LocatedBlock(PBHelperClient.convert(proto.getB()), targets,
-        storageIDs, storageTypes, proto.getOffset(), proto.getCorrupt(),
-        cachedLocs.toArray(new DatanodeInfo[0]));
+    final LocatedBlock lb;
+    if (proto.hasBlockIndices()) {
+      LocatedStripedBlock sb = new LocatedStripedBlock(
+          PBHelperClient.convert(proto.getB()), targets, storageIDs,
+          storageTypes, proto.getBlockIndices().toByteArray(),
+          proto.getOffset(), proto.getCorrupt(),
+          cachedLocs.toArray(new DatanodeInfo[0]));
+      List<TokenProto> tokenProtos = proto.getBlockTokensList();
+      @SuppressWarnings("unchecked")
+      Token<BlockTokenIdentifier>[] blockTokens =
+          new Token[tokenProtos.size()];
+      for (int i = 0; i < blockTokens.length; i++) {
+        blockTokens[i] = PBHelper.convert(tokenProtos.get(i));
+      }
+      sb.setBlockTokens(blockTokens);
+      lb = sb;
+    } else {
+      lb = new LocatedBlock(PBHelperClient.convert(proto.getB()), targets,
+          storageIDs, storageTypes, proto.getOffset(), proto.getCorrupt(),
+          cachedLocs.toArray(new DatanodeInfo[0]));
+    }
     lb.setBlockToken(PBHelper.convert(proto.getBlockToken()));
 
     return lb;
@@ -813,6 +852,8 @@ public static DatanodeCommand convert(DatanodeCommandProto proto) {
       return REG_CMD;
     case BlockIdCommand:
       return PBHelper.convert(proto.getBlkIdCmd());
+    case BlockECReconstructionCommand:
+      return PBHelper.convert(proto.getBlkECReconstructionCmd());
     default:
       return null;
     }
@@ -963,6 +1004,11 @@ public static DatanodeCommandProto convert(DatanodeCommand datanodeCommand) {
       builder.setCmdType(DatanodeCommandProto.Type.BlockIdCommand).
         setBlkIdCmd(PBHelper.convert((BlockIdCommand) datanodeCommand));
       break;
+    case DatanodeProtocol.DNA_ERASURE_CODING_RECONSTRUCTION:
+      builder.setCmdType(DatanodeCommandProto.Type.BlockECReconstructionCommand)
+          .setBlkECReconstructionCmd(PBHelper.convert(
+              (BlockECReconstructionCommand) datanodeCommand));
+      break;
     case DatanodeProtocol.DNA_UNKNOWN: //Not expected
     default:
       builder.setCmdType(DatanodeCommandProto.Type.NullDatanodeCommand);
@@ -1061,6 +1107,66 @@ public static BlockIdCommand convert(BlockIdCommandProto blkIdCmd) {
     return new BlockIdCommand(action, blkIdCmd.getBlockPoolId(), blockIds);
   }
 
+  public static BlockECReconstructionInfoProto convert(
+      BlockECReconstructionInfo info) {
+    BlockECReconstructionInfoProto.Builder builder =
+        BlockECReconstructionInfoProto.newBuilder();
+    builder.setBlock(PBHelperClient.convert(info.getExtendedBlock()));
+    builder.setSourceDnInfos(DatanodeInfosProto.newBuilder()
+        .addAllDatanodes(PBHelperClient.convert(info.getSourceDnInfos())));
+    builder.setLiveBlockIndices(
+        ByteString.copyFrom(info.getLiveBlockIndices()));
+    builder.setTargetDnInfos(DatanodeInfosProto.newBuilder()
+        .addAllDatanodes(PBHelperClient.convert(info.getTargetDnInfos())));
+    builder.setTargetStorageUuids(StorageUuidsProto.newBuilder()
+        .addAllStorageUuids(Arrays.asList(info.getTargetStorageIDs())));
+    builder.setTargetStorageTypes(convert(info.getTargetStorageTypes()));
+    builder.setTargetBlockIndices(
+        ByteString.copyFrom(info.getTargetBlockIndices()));
+    builder.setEcPolicy(convert(info.getErasureCodingPolicy()));
+    return builder.build();
+  }
+
+  public static BlockECReconstructionInfo convert(
+      BlockECReconstructionInfoProto proto) {
+    DatanodeInfo[] targets = convert(proto.getTargetDnInfos());
+    List<String> storageUuids =
+        proto.getTargetStorageUuids().getStorageUuidsList();
+    return new BlockECReconstructionInfo(
+        PBHelperClient.convert(proto.getBlock()),
+        convert(proto.getSourceDnInfos()),
+        proto.getLiveBlockIndices().toByteArray(), targets,
+        storageUuids.toArray(new String[storageUuids.size()]),
+        convertStorageTypes(
+            proto.getTargetStorageTypes().getStorageTypesList(),
+            targets.length),
+        proto.getTargetBlockIndices().toByteArray(),
+        convert(proto.getEcPolicy()));
+  }
+
+  public static BlockECReconstructionCommandProto convert(
+      BlockECReconstructionCommand cmd) {
+    BlockECReconstructionCommandProto.Builder builder =
+        BlockECReconstructionCommandProto.newBuilder();
+    for (BlockECReconstructionInfo info : cmd.getECTasks()) {
+      builder.addBlockECReconstructioninfo(convert(info));
+    }
+    return builder.build();
+  }
+
+  public static BlockECReconstructionCommand convert(
+      BlockECReconstructionCommandProto proto) {
+    List<BlockECReconstructionInfo> infos =
+        new ArrayList<BlockECReconstructionInfo>(
+            proto.getBlockECReconstructioninfoCount());
+    for (BlockECReconstructionInfoProto info :
+        proto.getBlockECReconstructioninfoList()) {
+      infos.add(convert(info));
+    }
+    return new BlockECReconstructionCommand(
+        DatanodeProtocol.DNA_ERASURE_CODING_RECONSTRUCTION, infos);
+  }
+
   public static DatanodeInfo[] convert(DatanodeInfosProto datanodeInfosProto) {
     List<DatanodeInfoProto> proto = datanodeInfosProto.getDatanodesList();
     DatanodeInfo[] infos = new DatanodeInfo[proto.size()];
@@ -1179,7 +1285,8 @@ public static LocatedBlocks convert(LocatedBlocksProto lb) {
         lb.hasLastBlock() ? PBHelper.convert(lb.getLastBlock()) : null,
         lb.getIsLastBlockComplete(),
         lb.hasFileEncryptionInfo() ? convert(lb.getFileEncryptionInfo()) :
-            null);
+            null,
+        lb.hasEcPolicy() ? convert(lb.getEcPolicy()) : null);
   }
   
   public static LocatedBlocksProto convert(LocatedBlocks lb) {
@@ -1194,12 +1301,37 @@ public static LocatedBlocksProto convert(LocatedBlocks lb) {
     if (lb.getFileEncryptionInfo() != null) {
       builder.setFileEncryptionInfo(convert(lb.getFileEncryptionInfo()));
     }
+    if (lb.getErasureCodingPolicy() != null) {
+      builder.setEcPolicy(convert(lb.getErasureCodingPolicy()));
+    }
     return builder.setFileLength(lb.getFileLength())
         .setUnderConstruction(lb.isUnderConstruction())
         .addAllBlocks(PBHelper.convertLocatedBlock2(lb.getLocatedBlocks()))
         .setIsLastBlockComplete(lb.isLastBlockComplete()).build();
   }
   
+  // ErasureCodingPolicy
+  public static ErasureCodingPolicy convert(ErasureCodingPolicyProto proto) {
+    ErasureCodingPolicy policy =
+        ErasureCodingPolicy.getSystemPolicy((byte) proto.getId());
+    if (policy != null) {
+      return policy;
+    }
+    return new ErasureCodingPolicy(proto.getName(), (byte) proto.getId(),
+        new ECSchema(proto.getCodecName(), proto.getDataUnits(),
+            proto.getParityUnits()), proto.getCellSize());
+  }
+
+  public static ErasureCodingPolicyProto convert(ErasureCodingPolicy policy) {
+    return ErasureCodingPolicyProto.newBuilder()
+        .setName(policy.getName())
+        .setId(policy.getId())
+        .setCodecName(policy.getSchema().getCodecName())
+        .setDataUnits(policy.getNumDataUnits())
+        .setParityUnits(policy.getNumParityUnits())
+        .setCellSize(policy.getCellSize()).build();
+  }
+
   // DataEncryptionKey
   public static DataEncryptionKey convert(DataEncryptionKeyProto bet) {
     String encryptionAlgorithm = bet.getEncryptionAlgorithm();
@@ -1336,7 +1468,8 @@ public static HdfsFileStatus convert(HdfsFileStatusProto fs) {
         fs.hasChildrenNum() ? fs.getChildrenNum() : -1,
         fs.hasFileEncryptionInfo() ? convert(fs.getFileEncryptionInfo()) : null,
         fs.hasStoragePolicy() ? (byte) fs.getStoragePolicy()
-            : HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED);
+            : HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED,
+        fs.hasEcPolicy() ? convert(fs.getEcPolicy()) : null);
   }
 
   public static SnapshottableDirectoryStatus convert(
@@ -1390,6 +1523,9 @@ public static HdfsFileStatusProto convert(HdfsFileStatus fs) {
     if (fs.getFileEncryptionInfo() != null) {
       builder.setFileEncryptionInfo(convert(fs.getFileEncryptionInfo()));
     }
+    if (fs.getErasureCodingPolicy() != null) {
+      builder.setEcPolicy(convert(fs.getErasureCodingPolicy()));
+    }
     if (fs instanceof HdfsLocatedFileStatus) {
       final HdfsLocatedFileStatus lfs = (HdfsLocatedFileStatus) fs;
       LocatedBlocks locations = lfs.getBlockLocations();
@@ -1400,6 +1536,84 @@ public static HdfsFileStatusProto convert(HdfsFileStatus fs) {
     return builder.build();
   }
   
+  public static PathErrorProto convertPathError(IOException e) {
+    PathErrorProto.Builder builder = PathErrorProto.newBuilder()
+        .setExceptionClassName(e.getClass().getName());
+    if (e.getMessage() != null) {
+      builder.setMessage(e.getMessage());
+    }
+    return builder.build();
+  }
+
+  public static IOException convert(PathErrorProto error) {
+    return new RemoteException(error.getExceptionClassName(),
+        error.hasMessage() ? error.getMessage() : null)
+        .unwrapRemoteException();
+  }
+
+  public static List<FileStatusResultProto> convertFileStatusResultProtos(
+      List<PathResult<HdfsFileStatus>> results) {
+    List<FileStatusResultProto> protos =
+        new ArrayList<FileStatusResultProto>(results.size());
+    for (PathResult<HdfsFileStatus> r : results) {
+      FileStatusResultProto.Builder builder =
+          FileStatusResultProto.newBuilder();
+      if (!r.isSuccess()) {
+        builder.setError(convertPathError(r.getException()));
+      } else if (r.getValue() != null) {
+        builder.setFs(convert(r.getValue()));
+      }
+      protos.add(builder.build());
+    }
+    return protos;
+  }
+
+  public static List<PathResult<HdfsFileStatus>> convertFileStatusResults(
+      List<FileStatusResultProto> protos) {
+    List<PathResult<HdfsFileStatus>> results =
+        new ArrayList<PathResult<HdfsFileStatus>>(protos.size());
+    for (FileStatusResultProto proto : protos) {
+      if (proto.hasError()) {
+        results.add(PathResult.<HdfsFileStatus>failure(
+            convert(proto.getError())));
+      } else {
+        results.add(PathResult.success(
+            proto.hasFs() ? convert(proto.getFs()) : null));
+      }
+    }
+    return results;
+  }
+
+  public static List<DeleteResultProto> convertDeleteResultProtos(
+      List<PathResult<Boolean>> results) {
+    List<DeleteResultProto> protos =
+        new ArrayList<DeleteResultProto>(results.size());
+    for (PathResult<Boolean> r : results) {
+      DeleteResultProto.Builder builder = DeleteResultProto.newBuilder();
+      if (r.isSuccess()) {
+        builder.setResult(r.getValue());
+      } else {
+        builder.setError(convertPathError(r.getException()));
+      }
+      protos.add(builder.build());
+    }
+    return protos;
+  }
+
+  public static List<PathResult<Boolean>> convertDeleteResults(
+      List<DeleteResultProto> protos) {
+    List<PathResult<Boolean>> results =
+        new ArrayList<PathResult<Boolean>>(protos.size());
+    for (DeleteResultProto proto : protos) {
+      if (proto.hasError()) {
+        results.add(PathResult.<Boolean>failure(convert(proto.getError())));
+      } else {
+        results.add(PathResult.success(proto.getResult()));
+      }
+    }
+    return results;
+  }
+
   public static SnapshottableDirectoryStatusProto convert(
       SnapshottableDirectoryStatus status) {
     if (status == null) {
@@ -1680,6 +1894,36 @@ public static NNHAStatusHeartbeat convert(NNHAStatusHeartbeatProto s) {
     }
   }
 
+  public static HAServiceState convert(
+      HAServiceProtocolProtos.HAServiceStateProto state) {
+    switch (state) {
+    case ACTIVE:
+      return HAServiceState.ACTIVE;
+    case STANDBY:
+      return HAServiceState.STANDBY;
+    case OBSERVER:
+      return HAServiceState.OBSERVER;
+    case INITIALIZING:
+    default:
+      return HAServiceState.INITIALIZING;
+    }
+  }
+
+  public static HAServiceProtocolProtos.HAServiceStateProto convert(
+      HAServiceState state) {
+    switch (state) {
+    case ACTIVE:
+      return HAServiceProtocolProtos.HAServiceStateProto.ACTIVE;
+    case STANDBY:
+      return HAServiceProtocolProtos.HAServiceStateProto.STANDBY;
+    case OBSERVER:
+      return HAServiceProtocolProtos.HAServiceStateProto.OBSERVER;
+    case INITIALIZING:
+    default:
+      return HAServiceProtocolProtos.HAServiceStateProto.INITIALIZING;
+    }
+  }
+
   public static NNHAStatusHeartbeatProto convert(NNHAStatusHeartbeat hb) {
     if (hb == null) return null;
     NNHAStatusHeartbeatProto.Builder builder =
@@ -1689,6 +1933,8 @@ public static NNHAStatusHeartbeatProto convert(NNHAStatusHeartbeat hb) {
         builder.setState(HAServiceProtocolProtos.HAServiceStateProto.ACTIVE);
         break;
       case STANDBY:
+      case OBSERVER:
+        // DataNodes treat an observer like any other standby
         builder.setState(HAServiceProtocolProtos.HAServiceStateProto.STANDBY);
         break;
       default:
@@ -36,9 +36,11 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
@@ -77,6 +79,11 @@ public class QuorumJournalManager implements JournalManager {
   private final int newEpochTimeoutMs;
   private final int writeTxnsTimeoutMs;
 
+  // Whether in-progress edits may be fetched over RPC from the JournalNodes'
+  // edits caches, and how many transactions to fetch per call.
+  private final boolean inProgressTailingEnabled;
+  private final int maxTxnsPerRpc;
+
   // Since these don't occur during normal operation, we can
   // use rather lengthy timeouts, and don't need to make them
   // configurable.
@@ -142,6 +149,15 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
+    Preconditions.checkArgument(maxTxnsPerRpc > 0,
+        "%s must be positive: %s",
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY, maxTxnsPerRpc);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -462,10 +478,81 @@ public void close() throws IOException {
     loggers.close();
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * If in-progress tailing is enabled, in-progress edits are fetched over
+   * RPC from the edits caches of the JournalNodes, falling back to the log
+   * segments if the caches no longer hold them. Either way, only the
+   * transactions of the in-progress segment that are durable on a quorum of
+   * JournalNodes are returned then.
+   */
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk) throws IOException {
+    boolean onlyDurableTxns = inProgressOk && inProgressTailingEnabled;
+    if (onlyDurableTxns) {
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        LOG.info("Could not fetch edits from txid " + fromTxnId
+            + " over RPC, falling back to the log segments: "
+            + ioe.getMessage());
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Exception from fetching edits over RPC", ioe);
+        }
+      }
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk,
+        onlyDurableTxns);
+  }
 
+  /**
+   * Fetch edits from the edits caches of a quorum of JournalNodes. As the
+   * JournalNodes may have written transactions that are not durable yet, only
+   * the number of transactions that a quorum of them returned is read.
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> responseMap =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+    List<Integer> responseCounts = Lists.newArrayList();
+    for (GetJournaledEditsResponseProto resp : responseMap.values()) {
+      responseCounts.add(resp.getTxnCount());
+    }
+    Collections.sort(responseCounts);
+    // the highest count that at least a quorum of responses reach
+    int txnCount = responseCounts.get(
+        responseCounts.size() - loggers.getMajoritySize());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Got transaction counts " + responseCounts + " from txid "
+          + fromTxnId + ", reading " + txnCount + " of them");
+    }
+    if (txnCount == 0) {
+      return;
+    }
+    for (Map.Entry<AsyncLogger, GetJournaledEditsResponseProto> e :
+        responseMap.entrySet()) {
+      GetJournaledEditsResponseProto resp = e.getValue();
+      if (resp.getTxnCount() >= txnCount) {
+        EditLogInputStream elis = EditLogFileInputStream.fromByteString(
+            e.getKey().toString(), resp.getEditLog(), fromTxnId,
+            fromTxnId + txnCount - 1, true);
+        // the edits start at the cached batch holding fromTxnId
+        elis.skipUntil(fromTxnId);
+        streams.add(elis);
+        return;
+      }
+    }
+  }
+
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk, boolean onlyDurableTxns) throws IOException {
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
     Map<AsyncLogger, RemoteEditLogManifest> resps =
@@ -474,6 +561,23 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
     
     LOG.debug("selectInputStream manifests:\n" +
         Joiner.on("\n").withKeyValueSeparator(": ").join(resps));
+
+    // The last txid that a quorum of the nodes has written, which is
+    // durable even if it belongs to the in-progress segment.
+    long highestDurableTxId = Long.MAX_VALUE;
+    if (onlyDurableTxns) {
+      List<Long> endTxIds = Lists.newArrayList();
+      for (RemoteEditLogManifest manifest : resps.values()) {
+        long endTxId = HdfsServerConstants.INVALID_TXID;
+        for (RemoteEditLog remoteLog : manifest.getLogs()) {
+          endTxId = Math.max(endTxId, remoteLog.getEndTxId());
+        }
+        endTxIds.add(endTxId);
+      }
+      Collections.sort(endTxIds);
+      highestDurableTxId = endTxIds.get(
+          endTxIds.size() - loggers.getMajoritySize());
+    }
     
     final PriorityQueue<EditLogInputStream> allStreams = 
         new PriorityQueue<EditLogInputStream>(64,
@@ -483,11 +587,18 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
       RemoteEditLogManifest manifest = e.getValue();
       
       for (RemoteEditLog remoteLog : manifest.getLogs()) {
+        long endTxId = remoteLog.getEndTxId();
+        if (remoteLog.isInProgress()) {
+          if (remoteLog.getStartTxId() > highestDurableTxId) {
+            continue;
+          }
+          endTxId = Math.min(endTxId, highestDurableTxId);
+        }
         URL url = logger.buildURLToFetchLogs(remoteLog.getStartTxId());
 
         EditLogInputStream elis = EditLogFileInputStream.fromUrl(
             connectionFactory, url, remoteLog.getStartTxId(),
-            remoteLog.getEndTxId(), remoteLog.isInProgress());
+            endTxId, remoteLog.isInProgress());
         allStreams.add(elis);
       }
     }
@@ -34,10 +34,12 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -68,6 +70,7 @@
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.TextFormat;
 
 /**
@@ -82,6 +85,7 @@ public class Journal implements Closeable {
   // Current writing state
   private EditLogOutputStream curSegment;
   private long curSegmentTxId = HdfsServerConstants.INVALID_TXID;
+  private int curSegmentLayoutVersion = 0;
   private long nextTxId = HdfsServerConstants.INVALID_TXID;
   private long highestWrittenTxId = 0;
   
@@ -132,6 +136,9 @@ public class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /** Recent edits, served to readers tailing the in-progress segment. */
+  private final JournaledEditsCache cache;
+
   /**
    * Time threshold for sync calls, beyond which a warning should be logged to the console.
    */
@@ -148,6 +155,10 @@ public class Journal implements Closeable {
     this.fjm = storage.getJournalManager();
     
     this.metrics = JournalMetrics.create(this);
+
+    this.cache = new JournaledEditsCache(conf.getInt(
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT));
     
     EditLogFile latest = scanStorageForLatestEdits();
     if (latest != null) {
@@ -216,6 +227,7 @@ void format(NamespaceInfo nsInfo) throws IOException {
         nsInfo);
     storage.format(nsInfo);
     refreshCachedData();
+    cache.clear();
   }
 
   /**
@@ -297,6 +309,8 @@ synchronized NewEpochResponseProto newEpoch(
     
     updateLastPromisedEpoch(epoch);
     abortCurSegment();
+    // the new writer may recover the last segment to a different length.
+    cache.clear();
     
     NewEpochResponseProto.Builder builder =
         NewEpochResponseProto.newBuilder();
@@ -401,6 +415,8 @@ synchronized void journal(RequestInfo reqInfo,
     
     highestWrittenTxId = lastTxnId;
     nextTxId = lastTxnId + 1;
+
+    cache.storeEdits(records, firstTxnId, lastTxnId, curSegmentLayoutVersion);
   }
 
   public void heartbeat(RequestInfo reqInfo) throws IOException {
@@ -547,6 +563,7 @@ public synchronized void startLogSegment(RequestInfo reqInfo, long txid,
     
     curSegment = fjm.startLogSegment(txid, layoutVersion);
     curSegmentTxId = txid;
+    curSegmentLayoutVersion = layoutVersion;
     nextTxId = txid;
   }
   
@@ -663,6 +680,31 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId,
     return new RemoteEditLogManifest(logs);
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // Like getEditLogManifest(), anyone may read the edits.
+    checkFormatted();
+    ByteString.Output output = ByteString.newOutput();
+    int txnCount;
+    try {
+      txnCount = cache.retrieveEdits(sinceTxId, maxTxns, output);
+    } catch (JournaledEditsCache.CacheMissException e) {
+      metrics.rpcRequestCacheMisses.incr(1);
+      throw e;
+    }
+    GetJournaledEditsResponseProto.Builder b =
+        GetJournaledEditsResponseProto.newBuilder().setTxnCount(txnCount);
+    if (txnCount > 0) {
+      b.setEditLog(output.toByteString());
+    }
+    metrics.rpcRequestsServed.incr(1);
+    metrics.rpcTxnsServed.incr(txnCount);
+    return b.build();
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
@@ -747,6 +789,7 @@ public synchronized void acceptRecovery(RequestInfo reqInfo,
     checkRequest(reqInfo);
     
     abortCurSegment();
+    cache.clear();
 
     long segmentTxId = segment.getStartTxId();
 
@@ -1063,6 +1106,7 @@ public synchronized void doRollback() throws IOException {
   }
 
   synchronized void discardSegments(long startTxId) throws IOException {
+    cache.clear();
     storage.getJournalManager().discardSegments(startTxId);
     // we delete all the segments after the startTxId. let's reset committedTxnId 
     committedTxnId.set(startTxId - 1);
@@ -45,6 +45,15 @@ class JournalMetrics {
   
   @Metric("Number of batches written where this node was lagging")
   MutableCounterLong batchesWrittenWhileLagging;
+
+  @Metric("Number of getJournaledEdits requests served from the edits cache")
+  MutableCounterLong rpcRequestsServed;
+
+  @Metric("Number of txns served by getJournaledEdits requests")
+  MutableCounterLong rpcTxnsServed;
+
+  @Metric("Number of getJournaledEdits requests that missed the edits cache")
+  MutableCounterLong rpcRequestCacheMisses;
   
   private final int[] QUANTILE_INTERVALS = new int[] {
       1*60, // 1m
@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+
+/**
+ * An in-memory cache of the most recent edits written to a {@link Journal},
+ * from which readers can fetch edits, including those of the in-progress
+ * segment, without going to disk.
+ *
+ * Edits are stored in the batches they were written in, keyed by the txid
+ * of their first transaction. The batches held are always contiguous; a
+ * batch that does not follow the last one, as after a new writer has
+ * recovered the log, or that has a different layout version, clears the
+ * cache. Once the total size exceeds the capacity, the oldest batches are
+ * evicted.
+ */
+class JournaledEditsCache {
+  private static final Log LOG = LogFactory.getLog(JournaledEditsCache.class);
+
+  private final int capacity;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Batches of serialized edits by the txid of their first transaction */
+  private final TreeMap<Long, byte[]> dataMap = new TreeMap<Long, byte[]>();
+  private long totalSize = 0;
+
+  /**
+   * The last txid held, or, if all batches were evicted, the last one
+   * evicted. Invalid if nothing was stored since the cache was cleared.
+   */
+  private long highestTxnId = HdfsServerConstants.INVALID_TXID;
+  private int layoutVersion = Integer.MAX_VALUE;
+  /** The edit log header for layoutVersion */
+  private ByteString layoutHeader;
+
+  /**
+   * Thrown when the requested transactions are older than any held.
+   */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  JournaledEditsCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Add a batch of edits, as written to the journal, to the cache.
+   *
+   * @param data the serialized transactions, without a header
+   * @param startTxn the txid of the first transaction of the batch
+   * @param endTxn the txid of the last transaction of the batch
+   * @param newLayoutVersion the layout version of the edits
+   */
+  void storeEdits(byte[] data, long startTxn, long endTxn,
+      int newLayoutVersion) {
+    lock.writeLock().lock();
+    try {
+      if (newLayoutVersion != layoutVersion) {
+        if (!dataMap.isEmpty()) {
+          LOG.info("Clearing the edits cache for the new layout version "
+              + newLayoutVersion);
+        }
+        clear();
+        layoutVersion = newLayoutVersion;
+        layoutHeader = createHeader(newLayoutVersion);
+      } else if (!dataMap.isEmpty() && startTxn != highestTxnId + 1) {
+        LOG.info("Clearing the edits cache, which holds transactions "
+            + dataMap.firstKey() + "-" + highestTxnId + ", as transaction "
+            + startTxn + " does not follow them");
+        clear();
+      }
+      dataMap.put(startTxn, data);
+      totalSize += data.length;
+      highestTxnId = endTxn;
+      while (totalSize > capacity && !dataMap.isEmpty()) {
+        totalSize -= dataMap.pollFirstEntry().getValue().length;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Fetch the transactions from the given txid on. The returned edit log
+   * starts at the batch containing the requested transaction, and always
+   * holds whole batches, so it may start before the requested transaction
+   * and end after the last one counted.
+   *
+   * @param requestedStartTxn the first transaction to fetch
+   * @param maxTxns the maximum number of transactions to count
+   * @param output the stream the edit log, including its header, is
+   *          written to, unless no transactions are available
+   * @return the number of transactions available from requestedStartTxn
+   *         on, up to maxTxns
+   * @throws CacheMissException if requestedStartTxn is not held, either as
+   *           it was evicted or as the cache does not know the latest txid
+   */
+  int retrieveEdits(long requestedStartTxn, int maxTxns,
+      ByteString.Output output) throws IOException {
+    lock.readLock().lock();
+    try {
+      if (highestTxnId != HdfsServerConstants.INVALID_TXID
+          && requestedStartTxn > highestTxnId) {
+        return 0;
+      }
+      if (dataMap.isEmpty() || requestedStartTxn < dataMap.firstKey()) {
+        throw new CacheMissException("Transaction " + requestedStartTxn
+            + " is not in the edits cache, which holds transactions "
+            + (dataMap.isEmpty() ? "none" :
+                dataMap.firstKey() + "-" + highestTxnId));
+      }
+      layoutHeader.writeTo(output);
+      long txnCount = 0;
+      long firstBatch = dataMap.floorKey(requestedStartTxn);
+      for (Map.Entry<Long, byte[]> e :
+          dataMap.tailMap(firstBatch, true).entrySet()) {
+        if (txnCount >= maxTxns) {
+          break;
+        }
+        Long next = dataMap.higherKey(e.getKey());
+        long batchEnd = next == null ? highestTxnId : next - 1;
+        output.write(e.getValue());
+        txnCount += batchEnd - Math.max(e.getKey(), requestedStartTxn) + 1;
+      }
+      return (int) Math.min(txnCount, maxTxns);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Drop all edits, e.g. when a new writer takes over. */
+  void clear() {
+    lock.writeLock().lock();
+    try {
+      dataMap.clear();
+      totalSize = 0;
+      highestTxnId = HdfsServerConstants.INVALID_TXID;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static ByteString createHeader(int layoutVersion) {
+    ByteString.Output out = ByteString.newOutput();
+    try {
+      EditLogFileOutputStream.writeHeader(layoutVersion,
+          new DataOutputStream(out));
+    } catch (IOException e) {
+      // cannot happen when writing to memory
+      throw new IllegalStateException(e);
+    }
+    return out.toByteString();
+  }
+
+  @VisibleForTesting
+  long getTotalSize() {
+    lock.readLock().lock();
+    try {
+      return totalSize;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -80,6 +80,11 @@ public interface BlockCollection {
    */
   public boolean isUnderConstruction();
 
+  /**
+   * @return whether the blocks of the collection are striped block groups.
+   */
+  public boolean isStriped();
+
   /**
    * @return the id for the block collection
    */
@@ -55,9 +55,12 @@ public class BlockIdManager {
    */
   private final SequentialBlockIdGenerator blockIdGenerator;
 
+  private final BlockManager blockManager;
+
   public BlockIdManager(BlockManager blockManager) {
     this.generationStampV1Limit = HdfsConstants.GRANDFATHER_GENERATION_STAMP;
     this.blockIdGenerator = new SequentialBlockIdGenerator(blockManager);
+    this.blockManager = blockManager;
   }
 
   /**
@@ -191,6 +194,38 @@ public long nextBlockId() {
     return blockIdGenerator.nextValue();
   }
 
+  /**
+   * Allocate the ID of a new striped block group. It is derived from the
+   * next block ID, so that the group IDs share the persisted sequence of the
+   * block IDs: sequential block IDs are positive, while group IDs are
+   * negative, with their low bits left for the indices of the internal
+   * blocks. Group IDs may collide with randomly generated legacy block IDs,
+   * which are skipped over.
+   */
+  public long nextBlockGroupId() {
+    long groupId;
+    do {
+      groupId = toBlockGroupId(blockIdGenerator.nextValue());
+    } while (hasBlocksInGroup(groupId));
+    return groupId;
+  }
+
+  @VisibleForTesting
+  static long toBlockGroupId(long blockId) {
+    return Long.MIN_VALUE + blockId * HdfsConstants.MAX_BLOCKS_IN_GROUP;
+  }
+
+  private boolean hasBlocksInGroup(long groupId) {
+    Block b = new Block(groupId);
+    for (int i = 0; i < HdfsConstants.MAX_BLOCKS_IN_GROUP; i++) {
+      b.setBlockId(groupId + i);
+      if (blockManager.getStoredBlock(b) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public boolean isGenStampInFuture(Block block) {
     if (isLegacyBlock(block)) {
       return block.getGenerationStamp() > getGenerationStampV1();
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -65,8 +66,18 @@ public abstract class BlockInfo extends Block
    * {@link LinkedList} list to efficiently use memory. With LinkedList the cost
    * per replica is 42 bytes (LinkedList#Entry object per replica) versus 16
    * bytes using the triplets.
+   *
+   * Once the block is added to a {@link BlocksMap} that keeps the triplets
+   * off-heap, this refers to the {@link OffHeapTriplets} holding them at
+   * {@link #tripletsSlot} instead.
    */
-  protected Object[] triplets;
+  private Object triplets;
+
+  /** The slot of the block in the {@link OffHeapTriplets}, if used. */
+  private int tripletsSlot;
+
+  /** Triplets of a block whose off-heap triplets were dropped. */
+  private static final Object[] EMPTY_TRIPLETS = {};
 
   private BlockUnderConstructionFeature uc;
 
@@ -123,12 +134,20 @@ public DatanodeDescriptor getDatanode(int index) {
 
   DatanodeStorageInfo getStorageInfo(int index) {
     assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      return ((OffHeapTriplets) triplets).getStorageInfo(tripletsSlot, index);
+    }
+    Object[] triplets = (Object[]) this.triplets;
     assert index >= 0 && index*3 < triplets.length : "Index is out of bound";
     return (DatanodeStorageInfo)triplets[index*3];
   }
 
   BlockInfo getPrevious(int index) {
     assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      return ((OffHeapTriplets) triplets).getPrevious(tripletsSlot, index);
+    }
+    Object[] triplets = (Object[]) this.triplets;
     assert index >= 0 && index*3+1 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+1];
     assert info == null ||
@@ -139,6 +158,10 @@ BlockInfo getPrevious(int index) {
 
   BlockInfo getNext(int index) {
     assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      return ((OffHeapTriplets) triplets).getNext(tripletsSlot, index);
+    }
+    Object[] triplets = (Object[]) this.triplets;
     assert index >= 0 && index*3+2 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+2];
     assert info == null || info.getClass().getName().startsWith(
@@ -149,6 +172,12 @@ BlockInfo getNext(int index) {
 
   void setStorageInfo(int index, DatanodeStorageInfo storage) {
     assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      ((OffHeapTriplets) triplets).setStorageInfo(tripletsSlot, index,
+          storage);
+      return;
+    }
+    Object[] triplets = (Object[]) this.triplets;
     assert index >= 0 && index*3 < triplets.length : "Index is out of bound";
     triplets[index*3] = storage;
   }
@@ -163,6 +192,10 @@ void setStorageInfo(int index, DatanodeStorageInfo storage) {
    */
   BlockInfo setPrevious(int index, BlockInfo to) {
     assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      return ((OffHeapTriplets) triplets).setPrevious(tripletsSlot, index, to);
+    }
+    Object[] triplets = (Object[]) this.triplets;
     assert index >= 0 && index*3+1 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+1];
     triplets[index*3+1] = to;
@@ -179,6 +212,10 @@ BlockInfo setPrevious(int index, BlockInfo to) {
    */
   BlockInfo setNext(int index, BlockInfo to) {
     assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      return ((OffHeapTriplets) triplets).setNext(tripletsSlot, index, to);
+    }
+    Object[] triplets = (Object[]) this.triplets;
     assert index >= 0 && index*3+2 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+2];
     triplets[index*3+2] = to;
@@ -187,10 +224,87 @@ BlockInfo setNext(int index, BlockInfo to) {
 
   public int getCapacity() {
     assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      return ((OffHeapTriplets) triplets).getCapacity(tripletsSlot);
+    }
+    Object[] triplets = (Object[]) this.triplets;
     assert triplets.length % 3 == 0 : "Malformed BlockInfo";
     return triplets.length / 3;
   }
 
+  /**
+   * Grow the triplets to hold at least the given number of storages,
+   * keeping the current ones.
+   */
+  void ensureTripletsCapacity(int capacity) {
+    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets instanceof OffHeapTriplets) {
+      ((OffHeapTriplets) triplets).ensureCapacity(tripletsSlot, capacity);
+      return;
+    }
+    Object[] old = (Object[]) triplets;
+    if (old.length < capacity*3) {
+      triplets = Arrays.copyOf(old, capacity*3);
+    }
+  }
+
+  boolean isTripletsOffHeap(OffHeapTriplets store) {
+    return triplets == store;
+  }
+
+  int getTripletsSlot() {
+    return tripletsSlot;
+  }
+
+  /**
+   * Move the triplets of the block into the given off-heap store.
+   */
+  void moveTripletsOffHeap(OffHeapTriplets store) {
+    if (triplets == store) {
+      return;
+    }
+    moveTripletsOnHeap();
+    Object[] old = (Object[]) triplets;
+    int capacity = old.length / 3;
+    // take the slot first, so the block can link to itself
+    tripletsSlot = store.allocate(this, capacity);
+    triplets = store;
+    for (int i = 0; i < capacity; i++) {
+      setStorageInfo(i, (DatanodeStorageInfo) old[i*3]);
+      setPrevious(i, (BlockInfo) old[i*3+1]);
+      setNext(i, (BlockInfo) old[i*3+2]);
+    }
+  }
+
+  /**
+   * Move the triplets of the block back onto the heap, if they are held
+   * off-heap, freeing its slot there. No other block may link to the block
+   * through the off-heap store afterwards.
+   */
+  void moveTripletsOnHeap() {
+    if (!(triplets instanceof OffHeapTriplets)) {
+      return;
+    }
+    OffHeapTriplets store = (OffHeapTriplets) triplets;
+    int capacity = getCapacity();
+    Object[] heap = new Object[3*capacity];
+    for (int i = 0; i < capacity; i++) {
+      heap[i*3] = getStorageInfo(i);
+      heap[i*3+1] = getPrevious(i);
+      heap[i*3+2] = getNext(i);
+    }
+    store.release(tripletsSlot);
+    triplets = heap;
+  }
+
+  /**
+   * Drop the off-heap triplets of the block, when the whole store is
+   * cleared.
+   */
+  void resetTriplets() {
+    triplets = EMPTY_TRIPLETS;
+  }
+
   /**
    * Count the number of data-nodes the block belongs to.
    */
@@ -199,7 +313,23 @@ public int getCapacity() {
   /**
    * Add a {@link DatanodeStorageInfo} location for a block.
    */
-  abstract boolean addStorage(DatanodeStorageInfo storage);
+  boolean addStorage(DatanodeStorageInfo storage) {
+    return addStorage(storage, this);
+  }
+
+  /**
+   * Add a {@link DatanodeStorageInfo} location for a block.
+   * @param reportedBlock the block the storage stores, which is an internal
+   *                      block of a striped block group
+   */
+  abstract boolean addStorage(DatanodeStorageInfo storage,
+      Block reportedBlock);
+
+  /**
+   * @return whether the block is a striped block group, see
+   * {@link BlockInfoStriped}
+   */
+  public abstract boolean isStriped();
 
   /**
    * Remove {@link DatanodeStorageInfo} location for a block
@@ -227,6 +357,10 @@ DatanodeStorageInfo findStorageInfo(DatanodeDescriptor dn) {
    * @return index or -1 if not found.
    */
   int findStorageInfo(DatanodeStorageInfo storageInfo) {
+    if (triplets instanceof OffHeapTriplets) {
+      return ((OffHeapTriplets) triplets).findStorageInfo(tripletsSlot,
+          storageInfo);
+    }
     int len = getCapacity();
     for(int idx = 0; idx < len; idx++) {
       DatanodeStorageInfo cur = getStorageInfo(idx);
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+
+/**
+ * Subclass of {@link BlockInfo}, used for a striped block group. The
+ * storages of the group store its internal blocks: the data blocks, which
+ * hold the data of the group striped over them, and the parity blocks coded
+ * from them with the erasure coding policy of the file.
+ *
+ * The ID of an internal block is the ID of the group plus its index in the
+ * group, so the group can be found for any reported internal block. Each
+ * storage stores a single internal block of the group, whose index is kept
+ * next to the storage.
+ */
+@InterfaceAudience.Private
+public class BlockInfoStriped extends BlockInfo {
+  private final ErasureCodingPolicy ecPolicy;
+  /**
+   * The index in the group of the internal block stored at each storage of
+   * the triplets.
+   */
+  private byte[] indices;
+
+  public BlockInfoStriped(Block blk, ErasureCodingPolicy ecPolicy) {
+    super(blk, (short) ecPolicy.getNumAllUnits());
+    this.ecPolicy = ecPolicy;
+    this.indices = new byte[ecPolicy.getNumAllUnits()];
+  }
+
+  /**
+   * Copy construction.
+   * @param from BlockInfoStriped to copy from.
+   */
+  protected BlockInfoStriped(BlockInfoStriped from) {
+    super(from);
+    this.ecPolicy = from.ecPolicy;
+    this.indices = from.indices.clone();
+  }
+
+  public ErasureCodingPolicy getErasureCodingPolicy() {
+    return ecPolicy;
+  }
+
+  public short getDataBlockNum() {
+    return (short) ecPolicy.getNumDataUnits();
+  }
+
+  public short getParityBlockNum() {
+    return (short) ecPolicy.getNumParityUnits();
+  }
+
+  public short getTotalBlockNum() {
+    return (short) ecPolicy.getNumAllUnits();
+  }
+
+  /**
+   * @return the number of data blocks holding any data. A group shorter
+   * than a stripe leaves its last data blocks empty, and they are never
+   * written. The length of a group is only known once it is committed.
+   */
+  public short getRealDataBlockNum() {
+    if (isComplete() || getBlockUCState() == BlockUCState.COMMITTED) {
+      if (getNumBytes() == 0) {
+        return 0;
+      }
+      return (short) Math.min(getDataBlockNum(),
+          (getNumBytes() - 1) / ecPolicy.getCellSize() + 1);
+    }
+    return getDataBlockNum();
+  }
+
+  /** @return the number of internal blocks expected to be stored */
+  public short getRealTotalBlockNum() {
+    return (short) (getRealDataBlockNum() + getParityBlockNum());
+  }
+
+  /** @return the ID of the internal block of the given index */
+  public long getInternalBlockId(int index) {
+    return getBlockId() + index;
+  }
+
+  /** @return the length of the internal block of the given index */
+  public long getInternalBlockLength(int index) {
+    return StripedBlockUtil.getInternalBlockLength(getNumBytes(), ecPolicy,
+        index);
+  }
+
+  /**
+   * @return the index of the internal block stored at the storage, or -1 if
+   * the storage does not store any internal block of the group
+   */
+  public int getStorageBlockIndex(DatanodeStorageInfo storage) {
+    int idx = findStorageInfo(storage);
+    return idx < 0 ? -1 : indices[idx];
+  }
+
+  /**
+   * @return the internal block stored at the storage, with its length, or
+   * null if the storage does not store any internal block of the group
+   */
+  public Block getBlockOnStorage(DatanodeStorageInfo storage) {
+    int index = getStorageBlockIndex(storage);
+    if (index < 0) {
+      return null;
+    }
+    return new Block(getInternalBlockId(index),
+        getInternalBlockLength(index), getGenerationStamp());
+  }
+
+  @Override
+  void ensureTripletsCapacity(int capacity) {
+    super.ensureTripletsCapacity(capacity);
+    if (indices.length < capacity) {
+      indices = Arrays.copyOf(indices, capacity);
+    }
+  }
+
+  @Override
+  boolean addStorage(DatanodeStorageInfo storage, Block reportedBlock) {
+    int index = StripedBlockUtil.getBlockIndex(reportedBlock);
+    // the storages are kept packed at the front, as for contiguous blocks
+    int lastNode = numNodes();
+    ensureTripletsCapacity(lastNode + 1);
+    setStorageInfo(lastNode, storage);
+    setNext(lastNode, null);
+    setPrevious(lastNode, null);
+    indices[lastNode] = (byte) index;
+    return true;
+  }
+
+  @Override
+  boolean removeStorage(DatanodeStorageInfo storage) {
+    int dnIndex = findStorageInfo(storage);
+    if (dnIndex < 0) { // the node is not found
+      return false;
+    }
+    assert getPrevious(dnIndex) == null && getNext(dnIndex) == null :
+        "Block is still in the list and must be removed first.";
+    // replace the current triplet and index by the last ones
+    int lastNode = numNodes() - 1;
+    setStorageInfo(dnIndex, getStorageInfo(lastNode));
+    setNext(dnIndex, getNext(lastNode));
+    setPrevious(dnIndex, getPrevious(lastNode));
+    indices[dnIndex] = indices[lastNode];
+    setStorageInfo(lastNode, null);
+    setNext(lastNode, null);
+    setPrevious(lastNode, null);
+    indices[lastNode] = 0;
+    return true;
+  }
+
+  @Override
+  public boolean isStriped() {
+    return true;
+  }
+
+  @Override
+  public int numNodes() {
+    for (int idx = getCapacity() - 1; idx >= 0; idx--) {
+      if (getDatanode(idx) != null) {
+        return idx + 1;
+      }
+    }
+    return 0;
+  }
+}
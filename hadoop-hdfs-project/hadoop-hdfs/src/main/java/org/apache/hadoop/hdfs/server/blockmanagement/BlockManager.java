@@ -20,8 +20,10 @@
 import static org.apache.hadoop.util.ExitUtil.terminate;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -34,6 +36,10 @@
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -53,10 +59,12 @@
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.fs.FileEncryptionInfo;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
 import org.apache.hadoop.hdfs.protocol.UnregisteredNodeException;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager;
@@ -86,15 +94,18 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.util.LightWeightHashSet;
 import org.apache.hadoop.hdfs.util.LightWeightLinkedSet;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 import org.apache.hadoop.metrics2.util.MBeans;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.LightWeightGSet;
 import org.apache.hadoop.util.Time;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -245,6 +256,15 @@ public int getPendingDataNodeMessageCount() {
   // Max number of blocks to log info about during a block report.
   private final long maxNumBlocksToLog;
 
+  /**
+   * Replicas per chunk of a full block report processed under one hold of
+   * the write lock, or 0 to process every storage report at once.
+   */
+  private final int blockReportChunkSize;
+  /** Classifies the chunks of full block reports, if they are chunked. */
+  private final ExecutorService blockReportClassifier;
+  private final int blockReportClassifierThreads;
+
   /**
    * When running inside a Standby node, the node may receive block reports
    * from datanodes before receiving the corresponding namespace edits from
@@ -271,6 +291,8 @@ public int getPendingDataNodeMessageCount() {
 
   /** for block replicas placement */
   private BlockPlacementPolicy blockplacement;
+  /** for placement of the internal blocks of striped block groups */
+  private final BlockPlacementPolicy placementPolicyStriped;
   private final BlockStoragePolicySuite storagePolicySuite;
 
   /** Check whether name system is running before terminating */
@@ -290,11 +312,18 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
 
     // Compute the map capacity by allocating 2% of total memory
     blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+        LightWeightGSet.computeCapacity(2.0, "BlocksMap"),
+        conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_DEFAULT));
     blockplacement = BlockPlacementPolicy.getInstance(
       conf, datanodeManager.getFSClusterStats(),
       datanodeManager.getNetworkTopology(),
       datanodeManager.getHost2DatanodeMap());
+    placementPolicyStriped = new BlockPlacementPolicyRackFaultTolerant();
+    placementPolicyStriped.initialize(conf,
+        datanodeManager.getFSClusterStats(),
+        datanodeManager.getNetworkTopology(),
+        datanodeManager.getHost2DatanodeMap());
     storagePolicySuite = BlockStoragePolicySuite.createDefaultSuite();
     pendingReplications = new PendingReplicationBlocks(conf.getInt(
       DFSConfigKeys.DFS_NAMENODE_REPLICATION_PENDING_TIMEOUT_SEC_KEY,
@@ -358,6 +387,23 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
     this.blockReportLeaseManager = new BlockReportLeaseManager(conf);
+    this.blockReportChunkSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_DEFAULT);
+    this.blockReportClassifierThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CLASSIFIER_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CLASSIFIER_THREADS_DEFAULT);
+    if (blockReportChunkSize > 0) {
+      Preconditions.checkArgument(blockReportClassifierThreads > 0,
+          DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CLASSIFIER_THREADS_KEY
+          + " must be positive");
+      this.blockReportClassifier = Executors.newFixedThreadPool(
+          blockReportClassifierThreads, new ThreadFactoryBuilder()
+              .setDaemon(true).setNameFormat("BlockReportClassifier-%d")
+              .build());
+    } else {
+      this.blockReportClassifier = null;
+    }
 
     LOG.info("defaultReplication         = " + defaultReplication);
     LOG.info("maxReplication             = " + maxReplication);
@@ -367,6 +413,7 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
+    LOG.info("blockReportChunkSize       = " + blockReportChunkSize);
   }
 
   private static BlockTokenSecretManager createBlockTokenSecretManager(
@@ -483,6 +530,9 @@ public void close() {
     }
     datanodeManager.close();
     pendingReplications.stop();
+    if (blockReportClassifier != null) {
+      blockReportClassifier.shutdownNow();
+    }
     blocksMap.close();
   }
 
@@ -496,6 +546,11 @@ public BlockPlacementPolicy getBlockPlacementPolicy() {
     return blockplacement;
   }
 
+  /** @return the placement policy of the block */
+  private BlockPlacementPolicy getBlockPlacementPolicy(BlockInfo block) {
+    return block.isStriped() ? placementPolicyStriped : blockplacement;
+  }
+
   /** Set BlockPlacementPolicy */
   public void setBlockPlacementPolicy(BlockPlacementPolicy newpolicy) {
     if (newpolicy == null) {
@@ -600,11 +655,23 @@ public int getMaxReplicationStreams() {
     return maxReplicationStreams;
   }
 
+  /**
+   * @return the minimum number of storages the block must be stored at to
+   * be complete: for a striped block group, the number of its data blocks
+   * holding data, which suffice to read the group
+   */
+  public short getMinStorageNum(BlockInfo block) {
+    if (block.isStriped()) {
+      return ((BlockInfoStriped) block).getRealDataBlockNum();
+    }
+    return minReplication;
+  }
+
   /**
    * @return true if the block has minimum replicas
    */
   public boolean checkMinReplication(BlockInfo block) {
-    return (countNodes(block).liveReplicas() >= minReplication);
+    return (countNodes(block).liveReplicas() >= getMinStorageNum(block));
   }
 
   /**
@@ -648,7 +715,7 @@ public boolean commitOrCompleteLastBlock(BlockCollection bc,
       return false; // already completed (e.g. by syncBlock)
     
     final boolean b = commitBlock(lastBlock, commitBlock);
-    if (countNodes(lastBlock).liveReplicas() >= minReplication) {
+    if (countNodes(lastBlock).liveReplicas() >= getMinStorageNum(lastBlock)) {
       completeBlock(lastBlock, false);
     }
     return b;
@@ -666,7 +733,8 @@ private void completeBlock(BlockInfo curBlock, boolean force)
     }
 
     int numNodes = curBlock.numNodes();
-    if (!force && numNodes < minReplication) {
+    final short minStorageNum = getMinStorageNum(curBlock);
+    if (!force && numNodes < minStorageNum) {
       throw new IOException("Cannot complete block: "
           + "block does not satisfy minimal replication requirement.");
     }
@@ -684,7 +752,7 @@ private void completeBlock(BlockInfo curBlock, boolean force)
     // OP_CLOSE edit on the standby).
     namesystem.adjustSafeModeBlockTotals(0, 1);
     namesystem.incrementSafeBlockCount(
-        Math.min(numNodes, minReplication));
+        Math.min(numNodes, minStorageNum), curBlock);
   }
 
   /**
@@ -742,7 +810,7 @@ public LocatedBlock convertLastBlockToUnderConstruction(
     // count in safe-mode.
     namesystem.adjustSafeModeBlockTotals(
         // decrement safe if we had enough
-        targets.length >= minReplication ? -1 : 0,
+        targets.length >= getMinStorageNum(lastBlock) ? -1 : 0,
         // always decrement total blocks
         -1);
 
@@ -831,6 +899,10 @@ private LocatedBlock createLocatedBlock(final BlockInfo blk, final long pos
       final DatanodeStorageInfo[] storages = blk.getUnderConstructionFeature()
           .getExpectedStorageLocations();
       final ExtendedBlock eb = new ExtendedBlock(namesystem.getBlockPoolId(), blk);
+      if (blk.isStriped()) {
+        return newLocatedStripedBlock(eb, storages,
+            blk.getUnderConstructionFeature().getBlockIndices(), pos, false);
+      }
       return newLocatedBlock(eb, storages, pos, false);
     }
 
@@ -848,13 +920,19 @@ private LocatedBlock createLocatedBlock(final BlockInfo blk, final long pos
         numCorruptNodes == numNodes;
     final int numMachines = isCorrupt ? numNodes: numNodes - numCorruptNodes;
     final DatanodeStorageInfo[] machines = new DatanodeStorageInfo[numMachines];
+    final byte[] blockIndices = blk.isStriped() ? new byte[numMachines] : null;
     int j = 0;
     if (numMachines > 0) {
       for(DatanodeStorageInfo storage : blocksMap.getStorages(blk)) {
         final DatanodeDescriptor d = storage.getDatanodeDescriptor();
         final boolean replicaCorrupt = corruptReplicas.isReplicaCorrupt(blk, d);
-        if (isCorrupt || (!replicaCorrupt))
+        if (isCorrupt || (!replicaCorrupt)) {
+          if (blockIndices != null) {
+            blockIndices[j] = (byte) ((BlockInfoStriped) blk)
+                .getStorageBlockIndex(storage);
+          }
           machines[j++] = storage;
+        }
       }
     }
     assert j == machines.length :
@@ -864,6 +942,10 @@ private LocatedBlock createLocatedBlock(final BlockInfo blk, final long pos
       " numCorrupt: " + numCorruptNodes +
       " numCorruptRepls: " + numCorruptReplicas;
     final ExtendedBlock eb = new ExtendedBlock(namesystem.getBlockPoolId(), blk);
+    if (blockIndices != null) {
+      return newLocatedStripedBlock(eb, machines, blockIndices, pos,
+          isCorrupt);
+    }
     return newLocatedBlock(eb, machines, pos, isCorrupt);
   }
 
@@ -872,14 +954,16 @@ public LocatedBlocks createLocatedBlocks(final BlockInfo[] blocks,
       final long fileSizeExcludeBlocksUnderConstruction,
       final boolean isFileUnderConstruction, final long offset,
       final long length, final boolean needBlockToken,
-      final boolean inSnapshot, FileEncryptionInfo feInfo)
+      final boolean inSnapshot, FileEncryptionInfo feInfo,
+      ErasureCodingPolicy ecPolicy)
       throws IOException {
     assert namesystem.hasReadLock();
     if (blocks == null) {
       return null;
     } else if (blocks.length == 0) {
       return new LocatedBlocks(0, isFileUnderConstruction,
-          Collections.<LocatedBlock>emptyList(), null, false, feInfo);
+          Collections.<LocatedBlock>emptyList(), null, false, feInfo,
+          ecPolicy);
     } else {
       if (LOG.isDebugEnabled()) {
         LOG.debug("blocks = " + java.util.Arrays.asList(blocks));
@@ -904,7 +988,7 @@ public LocatedBlocks createLocatedBlocks(final BlockInfo[] blocks,
       }
       return new LocatedBlocks(
           fileSizeExcludeBlocksUnderConstruction, isFileUnderConstruction,
-          locatedblocks, lastlb, isComplete, feInfo);
+          locatedblocks, lastlb, isComplete, feInfo, ecPolicy);
     }
   }
 
@@ -922,6 +1006,21 @@ public void setBlockToken(final LocatedBlock b,
       b.setBlockToken(blockTokenSecretManager.generateToken(
           NameNode.getRemoteUser().getShortUserName(),
           b.getBlock(), EnumSet.of(mode)));
+      if (b.isStriped()) {
+        // the internal blocks are accessed with their own tokens
+        LocatedStripedBlock sb = (LocatedStripedBlock) b;
+        byte[] indices = sb.getBlockIndices();
+        @SuppressWarnings("unchecked")
+        Token<BlockTokenIdentifier>[] tokens = new Token[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+          ExtendedBlock internalBlock = new ExtendedBlock(b.getBlock());
+          internalBlock.setBlockId(b.getBlock().getBlockId() + indices[i]);
+          tokens[i] = blockTokenSecretManager.generateToken(
+              NameNode.getRemoteUser().getShortUserName(), internalBlock,
+              EnumSet.of(mode));
+        }
+        sb.setBlockTokens(tokens);
+      }
     }    
   }
 
@@ -982,8 +1081,8 @@ public void verifyReplication(String src,
    */
   public boolean isSufficientlyReplicated(BlockInfo b) {
     // Compare against the lesser of the minReplication and number of live DNs.
-    final int replication =
-        Math.min(minReplication, getDatanodeManager().getNumLiveDataNodes());
+    final int replication = Math.min(getMinStorageNum(b),
+        getDatanodeManager().getNumLiveDataNodes());
     return countNodes(b).liveReplicas() >= replication;
   }
 
@@ -1033,14 +1132,14 @@ private BlocksWithLocations getBlocksWithLocations(final DatanodeID datanode,
     BlockInfo curBlock;
     while(totalSize<size && iter.hasNext()) {
       curBlock = iter.next();
-      if(!curBlock.isComplete())  continue;
+      if(!curBlock.isComplete() || curBlock.isStriped())  continue;
       totalSize += addBlock(curBlock, results);
     }
     if(totalSize<size) {
       iter = node.getBlockIterator(); // start from the beginning
       for(int i=0; i<startBlock&&totalSize<size; i++) {
         curBlock = iter.next();
-        if(!curBlock.isComplete())  continue;
+        if(!curBlock.isComplete() || curBlock.isStriped())  continue;
         totalSize += addBlock(curBlock, results);
       }
     }
@@ -1098,8 +1197,11 @@ private void addToInvalidates(Block b) {
     StringBuilder datanodes = new StringBuilder();
     for(DatanodeStorageInfo storage : blocksMap.getStorages(b, State.NORMAL)) {
       final DatanodeDescriptor node = storage.getDatanodeDescriptor();
-      invalidateBlocks.add(b, node, false);
-      datanodes.append(node).append(" ");
+      final Block blockOnStorage = getBlockOnStorage(b, storage);
+      if (blockOnStorage != null) {
+        invalidateBlocks.add(blockOnStorage, node, false);
+        datanodes.append(node).append(" ");
+      }
     }
     if (datanodes.length() != 0) {
       blockLog.debug("BLOCK* addToInvalidates: {} {}", b,
@@ -1107,6 +1209,47 @@ private void addToInvalidates(Block b) {
     }
   }
 
+  /**
+   * @return the block stored at the storage: the internal block stored there
+   * for a striped block group
+   */
+  private Block getBlockOnStorage(Block b, DatanodeStorageInfo storage) {
+    if (b instanceof BlockInfoStriped) {
+      Block internal = ((BlockInfoStriped) b).getBlockOnStorage(storage);
+      if (internal != null) {
+        // keep the length, which may tell the block is not to be acked
+        internal.setNumBytes(b.getNumBytes());
+      }
+      return internal;
+    }
+    return b;
+  }
+
+  /**
+   * @return the corrupt block at the node: for a striped block group, the
+   * internal block stored at the node, with the corrupt generation stamp
+   */
+  private Block getCorruptBlockOnNode(BlockToMarkCorrupt b,
+      DatanodeDescriptor node) {
+    if (!b.getStored().isStriped()) {
+      return b.getCorrupted();
+    }
+    BlockInfoStriped stored = (BlockInfoStriped) b.getStored();
+    int index = -1;
+    for (DatanodeStorageInfo storage : blocksMap.getStorages(stored)) {
+      if (storage.getDatanodeDescriptor() == node) {
+        index = stored.getStorageBlockIndex(storage);
+        break;
+      }
+    }
+    if (index < 0) {
+      index = StripedBlockUtil.getBlockIndex(b.getReported());
+    }
+    return new Block(stored.getInternalBlockId(index),
+        stored.getInternalBlockLength(index),
+        b.getCorrupted().getGenerationStamp());
+  }
+
   /**
    * Remove all block invalidation tasks under this datanode UUID;
    * used when a datanode registers with a new UUID and the old one
@@ -1147,8 +1290,10 @@ public void findAndMarkBlockAsCorrupt(final ExtendedBlock blk,
           + ") does not exist");
     }
     
-    markBlockAsCorrupt(new BlockToMarkCorrupt(storedBlock,
-            blk.getGenerationStamp(), reason, Reason.CORRUPTION_REPORTED),
+    BlockToMarkCorrupt b = new BlockToMarkCorrupt(storedBlock,
+        blk.getGenerationStamp(), reason, Reason.CORRUPTION_REPORTED);
+    b.setReported(blk.getLocalBlock());
+    markBlockAsCorrupt(b,
         storageID == null ? null : node.getStorageInfo(storageID),
         node);
   }
@@ -1166,14 +1311,14 @@ private void markBlockAsCorrupt(BlockToMarkCorrupt b,
     if (b.getCorrupted().isDeleted()) {
       blockLog.debug("BLOCK markBlockAsCorrupt: {} cannot be marked as" +
           " corrupt as it does not belong to any file", b);
-      addToInvalidates(b.getCorrupted(), node);
+      addToInvalidates(getCorruptBlockOnNode(b, node), node);
       return;
     } 
-    short expectedReplicas = b.getCorrupted().getReplication();
+    short expectedReplicas = getExpectedReplicaNum(b.getStored());
 
     // Add replica to the data-node if it is not already there
     if (storageInfo != null) {
-      storageInfo.addBlock(b.getStored());
+      storageInfo.addBlock(b.getStored(), b.getReported());
     }
 
     // Add this replica to corruptReplicas Map
@@ -1183,8 +1328,8 @@ private void markBlockAsCorrupt(BlockToMarkCorrupt b,
     NumberReplicas numberOfReplicas = countNodes(b.getStored());
     boolean hasEnoughLiveReplicas = numberOfReplicas.liveReplicas() >=
         expectedReplicas;
-    boolean minReplicationSatisfied =
-        numberOfReplicas.liveReplicas() >= minReplication;
+    boolean minReplicationSatisfied = numberOfReplicas.liveReplicas() >=
+        getMinStorageNum(b.getStored());
     boolean hasMoreCorruptReplicas = minReplicationSatisfied &&
         (numberOfReplicas.liveReplicas() + numberOfReplicas.corruptReplicas()) >
         expectedReplicas;
@@ -1231,7 +1376,7 @@ private boolean invalidateBlock(BlockToMarkCorrupt b, DatanodeInfo dn
       return false;
     } else if (nr.liveReplicas() >= 1) {
       // If we have at least one copy on a live node, then we can delete it.
-      addToInvalidates(b.getCorrupted(), dn);
+      addToInvalidates(getCorruptBlockOnNode(b, node), dn);
       removeStoredBlock(b.getStored(), node);
       blockLog.debug("BLOCK* invalidateBlocks: {} on {} listed for deletion.",
           b, dn);
@@ -1351,7 +1496,8 @@ int computeReplicationWorkForBlocks(List<List<BlockInfo>> blocksToReplicate) {
       // choose replication targets: NOT HOLDING THE GLOBAL LOCK
       // It is costly to extract the filename for which chooseTargets is called,
       // so for now we pass in the block collection itself.
-      rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
+      rw.chooseTargets(getBlockPlacementPolicy(rw.getBlock()),
+          storagePolicySuite, excludedNodes);
     }
 
     namesystem.writeLock();
@@ -1383,8 +1529,13 @@ int computeReplicationWorkForBlocks(List<List<BlockInfo>> blocksToReplicate) {
             targetList.append(' ');
             targetList.append(target.getDatanodeDescriptor());
           }
-          blockLog.debug("BLOCK* ask {} to replicate {} to {}", rw.getSrcNode(),
-              rw.getBlock(), targetList);
+          if (rw.getBlock().isStriped()) {
+            blockLog.debug("BLOCK* ask {} to reconstruct {}", targetList,
+                rw.getBlock());
+          } else {
+            blockLog.debug("BLOCK* ask {} to replicate {} to {}",
+                rw.getSrcNode(), rw.getBlock(), targetList);
+          }
         }
       }
     }
@@ -1406,15 +1557,21 @@ boolean hasEnoughEffectiveReplicas(BlockInfo block,
   private ReplicationWork scheduleReplication(BlockInfo block, int priority) {
     // block should belong to a file
     BlockCollection bc = getBlockCollection(block);
-    // abandoned block or block reopened for append
+    // abandoned block, block reopened for append or block of a deleted
+    // directory which is not reclaimed yet
     if (bc == null
-        || (bc.isUnderConstruction() && block.equals(bc.getLastBlock()))) {
+        || (bc.isUnderConstruction() && block.equals(bc.getLastBlock()))
+        || namesystem.isDeletedInBackground(bc)) {
       // remove from neededReplications
       neededReplications.remove(block, priority);
       return null;
     }
 
     short requiredReplication = getExpectedReplicaNum(block);
+    if (block.isStriped()) {
+      return scheduleReconstruction((BlockInfoStriped) block, bc,
+          requiredReplication, priority);
+    }
 
     // get a source data-node
     List<DatanodeDescriptor> containingNodes = new ArrayList<>();
@@ -1451,15 +1608,139 @@ private ReplicationWork scheduleReplication(BlockInfo block, int priority) {
         liveReplicaNodes, additionalReplRequired, priority);
   }
 
+  /**
+   * Schedule the reconstruction of the missing internal blocks of a block
+   * group: the targets decode them from the live internal blocks, instead of
+   * copying a replica.
+   */
+  private ReplicationWork scheduleReconstruction(BlockInfoStriped block,
+      BlockCollection bc, short requiredBlockNum, int priority) {
+    List<DatanodeDescriptor> containingNodes = new ArrayList<>();
+    List<DatanodeStorageInfo> sources = new ArrayList<>();
+    NumberReplicas numReplicas = countNodes(block);
+    chooseSourcesStriped(block, containingNodes, sources);
+    int pendingNum = pendingReplications.getNumReplicas(block);
+    if (numReplicas.liveReplicas() + pendingNum >= requiredBlockNum) {
+      neededReplications.remove(block, priority);
+      blockLog.debug("BLOCK* Removing {} from neededReplications as" +
+          " it has enough internal blocks", block);
+      return null;
+    }
+    if (sources.size() < block.getDataBlockNum()) {
+      // the missing internal blocks cannot be decoded
+      LOG.debug("Block group " + block + " cannot be reconstructed from "
+          + sources.size() + " internal blocks");
+      return null;
+    }
+    return new ReplicationWork(block, bc,
+        sources.get(0).getDatanodeDescriptor(), containingNodes, sources,
+        requiredBlockNum - numReplicas.liveReplicas() - pendingNum, priority);
+  }
+
+  /**
+   * Find a source for each internal block of a block group that can be read:
+   * an internal block is not read from a corrupt or decommissioned replica,
+   * nor from an excess one.
+   *
+   * @param containingNodes populated with all the nodes storing the group
+   * @param sources populated with a storage of each readable internal block
+   */
+  private void chooseSourcesStriped(BlockInfoStriped block,
+      List<DatanodeDescriptor> containingNodes,
+      List<DatanodeStorageInfo> sources) {
+    Collection<DatanodeDescriptor> nodesCorrupt =
+        corruptReplicas.getNodes(block);
+    BitSet readable = new BitSet(block.getTotalBlockNum());
+    for (DatanodeStorageInfo storage : blocksMap.getStorages(block)) {
+      final DatanodeDescriptor node = storage.getDatanodeDescriptor();
+      containingNodes.add(node);
+      final int index = block.getStorageBlockIndex(storage);
+      if (index < 0 || readable.get(index)
+          || storage.getState() != State.NORMAL
+          || (nodesCorrupt != null && nodesCorrupt.contains(node))
+          || node.isDecommissioned() || isExcess(node, block)) {
+        continue;
+      }
+      readable.set(index);
+      sources.add(storage);
+    }
+  }
+
+  /** @return whether the replica of the block at the node is in excess */
+  private boolean isExcess(DatanodeDescriptor node, Block block) {
+    LightWeightLinkedSet<Block> excessBlocks =
+        excessReplicateMap.get(node.getDatanodeUuid());
+    return excessBlocks != null && excessBlocks.contains(block);
+  }
+
+  /**
+   * Assign the missing internal blocks of a block group to the chosen
+   * targets, each of which reconstructs its block from the readable ones.
+   * @return the targets assigned an internal block
+   */
+  private DatanodeStorageInfo[] scheduleReconstructionTargets(
+      BlockInfoStriped block, DatanodeStorageInfo[] targets) {
+    List<DatanodeDescriptor> containingNodes = new ArrayList<>();
+    List<DatanodeStorageInfo> sources = new ArrayList<>();
+    chooseSourcesStriped(block, containingNodes, sources);
+    if (sources.size() < block.getDataBlockNum()) {
+      return new DatanodeStorageInfo[0];
+    }
+    final DatanodeDescriptor[] sourceNodes =
+        new DatanodeDescriptor[sources.size()];
+    final byte[] liveIndices = new byte[sources.size()];
+    final BitSet live = new BitSet(block.getTotalBlockNum());
+    for (int i = 0; i < sources.size(); i++) {
+      sourceNodes[i] = sources.get(i).getDatanodeDescriptor();
+      liveIndices[i] = (byte) block.getStorageBlockIndex(sources.get(i));
+      live.set(liveIndices[i]);
+    }
+    // the internal blocks still being reconstructed are not known, so the
+    // missing blocks are assigned in order; a block reconstructed twice is
+    // invalidated when reported
+    final List<DatanodeStorageInfo> assigned = new ArrayList<>();
+    final ExtendedBlock group =
+        new ExtendedBlock(namesystem.getBlockPoolId(), block);
+    int index = nextMissingIndex(block, live, 0);
+    for (DatanodeStorageInfo target : targets) {
+      if (index < 0) {
+        break;
+      }
+      target.getDatanodeDescriptor().addBlockToBeErasureCoded(group,
+          sourceNodes, liveIndices, new DatanodeStorageInfo[] {target},
+          new byte[] {(byte) index}, block.getErasureCodingPolicy());
+      assigned.add(target);
+      index = nextMissingIndex(block, live, index + 1);
+    }
+    return assigned.toArray(new DatanodeStorageInfo[assigned.size()]);
+  }
+
+  /**
+   * @return the first index from the given one of an internal block missing
+   * from the group, or -1 if none is missing
+   */
+  private static int nextMissingIndex(BlockInfoStriped block, BitSet live,
+      int fromIndex) {
+    int index = live.nextClearBit(fromIndex);
+    if (index >= block.getRealDataBlockNum()
+        && index < block.getDataBlockNum()) {
+      // the empty data blocks of a short group are not stored
+      index = live.nextClearBit(block.getDataBlockNum());
+    }
+    return index < block.getTotalBlockNum() ? index : -1;
+  }
+
   private boolean validateReplicationWork(ReplicationWork rw) {
     BlockInfo block = rw.getBlock();
     int priority = rw.getPriority();
     // Recheck since global lock was released
     // block should belong to a file
     BlockCollection bc = getBlockCollection(block);
-    // abandoned block or block reopened for append
+    // abandoned block, block reopened for append or block of a deleted
+    // directory which is not reclaimed yet
     if (bc == null
-        || (bc.isUnderConstruction() && block.equals(bc.getLastBlock()))) {
+        || (bc.isUnderConstruction() && block.equals(bc.getLastBlock()))
+        || namesystem.isDeletedInBackground(bc)) {
       neededReplications.remove(block, priority);
       rw.resetTargets();
       return false;
@@ -1488,8 +1769,18 @@ private boolean validateReplicationWork(ReplicationWork rw) {
       }
     }
 
-    // Add block to the to be replicated list
-    rw.getSrcNode().addBlockToBeReplicated(block, targets);
+    if (block.isStriped()) {
+      // Add the reconstruction tasks to the targets
+      targets = scheduleReconstructionTargets((BlockInfoStriped) block,
+          targets);
+      if (targets.length == 0) {
+        rw.resetTargets();
+        return false;
+      }
+    } else {
+      // Add block to the to be replicated list
+      rw.getSrcNode().addBlockToBeReplicated(block, targets);
+    }
     DatanodeStorageInfo.incrementBlocksScheduled(targets);
 
     // Move the block-replication into a "pending" state.
@@ -1544,16 +1835,38 @@ public DatanodeStorageInfo[] chooseTarget4NewBlock(final String src,
       final long blocksize,
       final List<String> favoredNodes,
       final byte storagePolicyID) throws IOException {
+    return chooseTarget4NewBlock(src, numOfReplicas, client, excludedNodes,
+        blocksize, favoredNodes, storagePolicyID, minReplication, false);
+  }
+
+  /**
+   * Choose target datanodes for creating a new block, or for the internal
+   * blocks of a new striped block group, which are placed on as many racks
+   * as possible.
+   *
+   * @param minTargets the minimum number of targets
+   * @throws IOException
+   *           if the number of targets < minTargets.
+   */
+  public DatanodeStorageInfo[] chooseTarget4NewBlock(final String src,
+      final int numOfReplicas, final Node client,
+      final Set<Node> excludedNodes,
+      final long blocksize,
+      final List<String> favoredNodes,
+      final byte storagePolicyID, final int minTargets,
+      final boolean isStriped) throws IOException {
     List<DatanodeDescriptor> favoredDatanodeDescriptors = 
         getDatanodeDescriptors(favoredNodes);
     final BlockStoragePolicy storagePolicy = storagePolicySuite.getPolicy(storagePolicyID);
-    final DatanodeStorageInfo[] targets = blockplacement.chooseTarget(src,
+    final BlockPlacementPolicy placement =
+        isStriped ? placementPolicyStriped : blockplacement;
+    final DatanodeStorageInfo[] targets = placement.chooseTarget(src,
         numOfReplicas, client, excludedNodes, blocksize, 
         favoredDatanodeDescriptors, storagePolicy);
-    if (targets.length < minReplication) {
+    if (targets.length < minTargets) {
       throw new IOException("File " + src + " could only be replicated to "
           + targets.length + " nodes instead of minReplication (="
-          + minReplication + ").  There are "
+          + minTargets + ").  There are "
           + getDatanodeManager().getNetworkTopology().getNumOfLeaves()
           + " datanode(s) running and "
           + (excludedNodes == null? "no": excludedNodes.size())
@@ -1755,6 +2068,22 @@ static class StatefulBlockInfo {
     }
   }
 
+  /**
+   * BlockInfoToAdd is used to build the "toAdd" list, which is a list of
+   * replicas to add to the stored blocks. Besides the stored block, it
+   * provides the reported replica, which tells which internal block of a
+   * striped block group is stored.
+   */
+  static class BlockInfoToAdd {
+    final BlockInfo stored;
+    final Block reported;
+
+    BlockInfoToAdd(BlockInfo stored, Block reported) {
+      this.stored = stored;
+      this.reported = reported;
+    }
+  }
+
   /**
    * The given storage is reporting all its blocks.
    * Update the (storage-->block list) and (block-->storage list) maps.
@@ -1766,6 +2095,12 @@ public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage,
       final BlockListAsLongs newReport, BlockReportContext context,
       boolean lastStorageInRpc) throws IOException {
+    ChunkedBlockReport chunkedReport = null;
+    if (blockReportChunkSize > 0 && newReport != null
+        && newReport.getNumberOfBlocks() > blockReportChunkSize) {
+      // decode the report before taking the lock
+      chunkedReport = new ChunkedBlockReport(newReport, blockReportChunkSize);
+    }
     namesystem.writeLock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
@@ -1787,6 +2122,11 @@ public boolean processReport(final DatanodeID nodeID,
         // We handle this for backwards compatibility.
         storageInfo = node.updateStorage(storage);
       }
+      if (storageInfo.isChunkedBlockReportInProgress()) {
+        throw new IOException("A full block report of storage "
+            + storage.getStorageID() + " on node " + nodeID
+            + " is already being processed");
+      }
       if (namesystem.isInStartupSafeMode()
           && storageInfo.getBlockReportCount() > 0) {
         blockLog.info("BLOCK* processReport: "
@@ -1808,7 +2148,14 @@ public boolean processReport(final DatanodeID nodeID,
         LOG.info("Processing first storage report for " +
             storageInfo.getStorageID() + " from datanode " +
             nodeID.getDatanodeUuid());
-        processFirstBlockReport(storageInfo, newReport);
+        if (chunkedReport != null) {
+          processReportInChunks(storageInfo, chunkedReport, true);
+        } else {
+          processFirstBlockReport(storageInfo, newReport);
+        }
+      } else if (chunkedReport != null) {
+        invalidatedBlocks =
+            processReportInChunks(storageInfo, chunkedReport, false);
       } else {
         invalidatedBlocks = processReport(storageInfo, newReport);
       }
@@ -1856,6 +2203,8 @@ public boolean processReport(final DatanodeID nodeID,
     final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
     if (metrics != null) {
       metrics.addBlockReport((int) (endTime - startTime));
+      metrics.addBlockReportLockHold(endTime - startTime
+          - (chunkedReport == null ? 0 : chunkedReport.unlockedTime));
     }
     blockLog.info("BLOCK* processReport: from storage {} node {}, " +
         "blocks: {}, hasStaleStorage: {}, processing time: {} msecs", storage
@@ -1971,14 +2320,25 @@ private Collection<Block> processReport(
     // Modify the (block-->datanode) map, according to the difference
     // between the old and new block report.
     //
-    Collection<BlockInfo> toAdd = new LinkedList<BlockInfo>();
+    Collection<BlockInfoToAdd> toAdd = new LinkedList<BlockInfoToAdd>();
     Collection<Block> toRemove = new TreeSet<Block>();
     Collection<Block> toInvalidate = new LinkedList<Block>();
     Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<BlockToMarkCorrupt>();
     Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
     reportDiff(storageInfo, report,
         toAdd, toRemove, toInvalidate, toCorrupt, toUC);
-   
+    applyReportDiff(storageInfo, toAdd, toRemove, toInvalidate, toCorrupt,
+        toUC);
+    return toInvalidate;
+  }
+
+  /**
+   * Process the blocks on each queue built by {@link #reportDiff}.
+   */
+  private void applyReportDiff(final DatanodeStorageInfo storageInfo,
+      Collection<BlockInfoToAdd> toAdd, Collection<Block> toRemove,
+      Collection<Block> toInvalidate, Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC) throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
@@ -1988,8 +2348,9 @@ private Collection<Block> processReport(
       removeStoredBlock(b, node);
     }
     int numBlocksLogged = 0;
-    for (BlockInfo b : toAdd) {
-      addStoredBlock(b, storageInfo, null, numBlocksLogged < maxNumBlocksToLog);
+    for (BlockInfoToAdd b : toAdd) {
+      addStoredBlock(b.stored, b.reported, storageInfo, null,
+          numBlocksLogged < maxNumBlocksToLog);
       numBlocksLogged++;
     }
     if (numBlocksLogged > maxNumBlocksToLog) {
@@ -2002,8 +2363,6 @@ private Collection<Block> processReport(
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
-
-    return toInvalidate;
   }
 
   /**
@@ -2065,65 +2424,346 @@ private void processFirstBlockReport(
     assert (storageInfo.getBlockReportCount() == 0);
 
     for (BlockReportReplica iblk : report) {
-      ReplicaState reportedState = iblk.getState();
+      processFirstReportedReplica(storageInfo, iblk, iblk.getState());
+    }
+  }
 
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Initial report of block " + iblk.getBlockName()
-            + " on " + storageInfo.getDatanodeDescriptor() + " size " +
-            iblk.getNumBytes() + " replicaState = " + reportedState);
-      }
-      if (shouldPostponeBlocksFromFuture &&
-          namesystem.isGenStampInFuture(iblk)) {
+  /**
+   * Process a replica of an initial block report.
+   * @see #processFirstBlockReport
+   */
+  private void processFirstReportedReplica(
+      final DatanodeStorageInfo storageInfo, final Block iblk,
+      final ReplicaState reportedState) throws IOException {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Initial report of block " + iblk.getBlockName()
+          + " on " + storageInfo.getDatanodeDescriptor() + " size " +
+          iblk.getNumBytes() + " replicaState = " + reportedState);
+    }
+    if (shouldPostponeBlocksFromFuture &&
+        namesystem.isGenStampInFuture(iblk)) {
+      queueReportedBlock(storageInfo, iblk, reportedState,
+          QUEUE_REASON_FUTURE_GENSTAMP);
+      return;
+    }
+
+    BlockInfo storedBlock = blocksMap.getStoredBlock(iblk);
+    // If block does not belong to any file, we are done.
+    if (storedBlock == null) return;
+
+    // If block is corrupt, mark it and continue to next block.
+    BlockUCState ucState = storedBlock.getBlockUCState();
+    BlockToMarkCorrupt c = checkReplicaCorrupt(
+        iblk, reportedState, storedBlock, ucState,
+        storageInfo.getDatanodeDescriptor());
+    if (c != null) {
+      c.setReported(new Block(iblk));
+      if (shouldPostponeBlocksFromFuture) {
+        // In the Standby, we may receive a block report for a file that we
+        // just have an out-of-date gen-stamp or state for, for example.
         queueReportedBlock(storageInfo, iblk, reportedState,
-            QUEUE_REASON_FUTURE_GENSTAMP);
-        continue;
+            QUEUE_REASON_CORRUPT_STATE);
+      } else {
+        markBlockAsCorrupt(c, storageInfo, storageInfo.getDatanodeDescriptor());
       }
-      
-      BlockInfo storedBlock = blocksMap.getStoredBlock(iblk);
-      // If block does not belong to any file, we are done.
-      if (storedBlock == null) continue;
-      
-      // If block is corrupt, mark it and continue to next block.
-      BlockUCState ucState = storedBlock.getBlockUCState();
-      BlockToMarkCorrupt c = checkReplicaCorrupt(
-          iblk, reportedState, storedBlock, ucState,
-          storageInfo.getDatanodeDescriptor());
-      if (c != null) {
-        if (shouldPostponeBlocksFromFuture) {
-          // In the Standby, we may receive a block report for a file that we
-          // just have an out-of-date gen-stamp or state for, for example.
-          queueReportedBlock(storageInfo, iblk, reportedState,
-              QUEUE_REASON_CORRUPT_STATE);
+      return;
+    }
+
+    // If block is under construction, add this replica to its list
+    if (isBlockUnderConstruction(storedBlock, ucState, reportedState)) {
+      storedBlock.getUnderConstructionFeature()
+          .addReplicaIfNotPresent(storageInfo, iblk, reportedState);
+      // OpenFileBlocks only inside snapshots also will be added to safemode
+      // threshold. So we need to update such blocks to safemode
+      // refer HDFS-5283
+      if (namesystem.isInSnapshot(storedBlock)) {
+        int numOfReplicas = storedBlock.getUnderConstructionFeature()
+            .getNumExpectedLocations();
+        namesystem.incrementSafeBlockCount(numOfReplicas, storedBlock);
+      }
+      //and fall through to next clause
+    }
+    //add replica if appropriate
+    if (reportedState == ReplicaState.FINALIZED) {
+      addStoredBlockImmediate(storedBlock, iblk, storageInfo);
+    }
+  }
+
+  /**
+   * A full block report of a storage, decoded into chunks of at most
+   * blockReportChunkSize replicas before the write lock is taken.
+   */
+  private static class ChunkedBlockReport {
+    final List<BlockReportChunk> chunks = new ArrayList<BlockReportChunk>();
+    /** Time the write lock was released while processing the report. */
+    long unlockedTime = 0;
+
+    ChunkedBlockReport(BlockListAsLongs report, int chunkSize) {
+      int remaining = report.getNumberOfBlocks();
+      BlockReportChunk chunk = null;
+      for (BlockReportReplica replica : report) {
+        if (chunk == null || chunk.size == chunk.blockIds.length) {
+          chunk = new BlockReportChunk(
+              Math.max(1, Math.min(chunkSize, remaining)));
+          chunks.add(chunk);
+        }
+        chunk.add(replica, replica.getState());
+        remaining--;
+      }
+    }
+  }
+
+  /**
+   * The replicas of a chunk of a full block report.
+   */
+  private static class BlockReportChunk {
+    final long[] blockIds;
+    final long[] numBytes;
+    final long[] genStamps;
+    final ReplicaState[] states;
+    /**
+     * The complete stored block each replica was found to match by the
+     * classifier, or null if the replica needs the full processing.
+     */
+    final BlockInfo[] matching;
+    int size = 0;
+
+    BlockReportChunk(int capacity) {
+      blockIds = new long[capacity];
+      numBytes = new long[capacity];
+      genStamps = new long[capacity];
+      states = new ReplicaState[capacity];
+      matching = new BlockInfo[capacity];
+    }
+
+    void add(Block replica, ReplicaState state) {
+      blockIds[size] = replica.getBlockId();
+      numBytes[size] = replica.getNumBytes();
+      genStamps[size] = replica.getGenerationStamp();
+      states[size] = state;
+      size++;
+    }
+
+    void get(int i, Block block) {
+      block.set(blockIds[i], numBytes[i], genStamps[i]);
+    }
+  }
+
+  /**
+   * Process a full block report of a storage chunk by chunk, releasing the
+   * write lock while the next chunk is classified. The replicas the
+   * classifier found to match their stored block, usually nearly all of
+   * them, only need a cheap recheck under the write lock; the others are
+   * processed as by {@link #processFirstBlockReport} or {@link #reportDiff}.
+   *
+   * Must be called with the write lock held, which is held again when this
+   * returns.
+   * @return the blocks to invalidate on the datanode
+   */
+  private Collection<Block> processReportInChunks(
+      final DatanodeStorageInfo storageInfo, final ChunkedBlockReport report,
+      final boolean firstReport) throws IOException {
+    final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    final List<BlockReportChunk> chunks = report.chunks;
+    final List<Future<?>> classified =
+        new ArrayList<Future<?>>(chunks.size());
+    final Collection<Block> toInvalidate = new LinkedList<Block>();
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    storageInfo.setChunkedBlockReportInProgress(true);
+    try {
+      if (!firstReport) {
+        // keep track of the blocks that have not been reported, without
+        // linking a delimiter into the list while the lock is released
+        storageInfo.startTrackingUnreportedBlocks();
+      }
+      for (int c = 0; c < chunks.size(); c++) {
+        // keep the classifiers a few chunks ahead
+        while (classified.size() < chunks.size()
+            && classified.size() <= c + blockReportClassifierThreads) {
+          final BlockReportChunk chunk = chunks.get(classified.size());
+          classified.add(blockReportClassifier.submit(new Runnable() {
+            @Override
+            public void run() {
+              classifyChunk(chunk, node);
+            }
+          }));
+        }
+        awaitClassification(classified.get(c), report);
+        if (!node.isAlive
+            || node.getStorageInfo(storageInfo.getStorageID()) != storageInfo) {
+          throw new IOException(
+              "ProcessReport from dead or unregistered node: " + node);
+        }
+        final long start = Time.monotonicNow();
+        if (firstReport) {
+          reconcileFirstReportChunk(storageInfo, chunks.get(c));
         } else {
-          markBlockAsCorrupt(c, storageInfo, storageInfo.getDatanodeDescriptor());
+          reconcileChunk(storageInfo, chunks.get(c), toInvalidate);
+        }
+        if (metrics != null) {
+          metrics.addBlockReportChunkReconcile(Time.monotonicNow() - start);
         }
-        continue;
       }
-      
-      // If block is under construction, add this replica to its list
-      if (isBlockUnderConstruction(storedBlock, ucState, reportedState)) {
-        storedBlock.getUnderConstructionFeature()
-            .addReplicaIfNotPresent(storageInfo, iblk, reportedState);
-        // OpenFileBlocks only inside snapshots also will be added to safemode
-        // threshold. So we need to update such blocks to safemode
-        // refer HDFS-5283
-        if (namesystem.isInSnapshot(storedBlock)) {
-          int numOfReplicas = storedBlock.getUnderConstructionFeature()
-              .getNumExpectedLocations();
-          namesystem.incrementSafeBlockCount(numOfReplicas);
+      if (!firstReport) {
+        // collect blocks that have not been reported
+        Collection<Block> toRemove = new TreeSet<Block>();
+        Iterator<BlockInfo> it = storageInfo.getUnreportedBlockIterator();
+        while (it.hasNext()) {
+          toRemove.add(it.next());
         }
-        //and fall through to next clause
-      }      
-      //add replica if appropriate
-      if (reportedState == ReplicaState.FINALIZED) {
-        addStoredBlockImmediate(storedBlock, storageInfo);
+        storageInfo.stopTrackingUnreportedBlocks();
+        for (Block b : toRemove) {
+          removeStoredBlock(b, node);
+        }
+      }
+    } finally {
+      for (Future<?> f : classified) {
+        f.cancel(false);
+      }
+      storageInfo.stopTrackingUnreportedBlocks();
+      storageInfo.setChunkedBlockReportInProgress(false);
+    }
+    return toInvalidate;
+  }
+
+  /**
+   * Wait for a chunk of a block report to be classified, with the write
+   * lock released.
+   */
+  private void awaitClassification(Future<?> classified,
+      ChunkedBlockReport report) throws IOException {
+    final long start = Time.monotonicNow();
+    namesystem.writeUnlock();
+    try {
+      classified.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted while classifying a block report");
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to classify a block report",
+          e.getCause());
+    } finally {
+      namesystem.writeLock();
+      report.unlockedTime += Time.monotonicNow() - start;
+    }
+  }
+
+  /**
+   * Find the FINALIZED replicas of a chunk of a block report that match a
+   * complete stored block and are not corrupt. This only needs the read
+   * lock, so chunks are classified in parallel with each other and with
+   * other readers.
+   */
+  private void classifyChunk(BlockReportChunk chunk, DatanodeDescriptor dn) {
+    final long start = Time.monotonicNow();
+    final Block block = new Block();
+    namesystem.readLock();
+    try {
+      for (int i = 0; i < chunk.size; i++) {
+        if (chunk.states[i] != ReplicaState.FINALIZED) {
+          continue;
+        }
+        chunk.get(i, block);
+        BlockInfo storedBlock = blocksMap.getStoredBlock(block);
+        if (storedBlock != null && isMatchingReplica(storedBlock, block)
+            && !corruptReplicas.isReplicaCorrupt(storedBlock, dn)) {
+          chunk.matching[i] = storedBlock;
+        }
+      }
+    } finally {
+      namesystem.readUnlock();
+    }
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addBlockReportChunkClassify(Time.monotonicNow() - start);
+    }
+  }
+
+  /**
+   * @return whether the reported replica is a valid replica of the stored
+   *         block, which is complete and still in the blocksMap
+   */
+  private static boolean isMatchingReplica(BlockInfo storedBlock,
+      Block reported) {
+    return storedBlock.isComplete() && !storedBlock.isDeleted()
+        && storedBlock.getGenerationStamp() == reported.getGenerationStamp()
+        && getExpectedReplicaLength(storedBlock, reported)
+            == reported.getNumBytes();
+  }
+
+  /**
+   * @return the length of the replica of the stored block: the length of
+   *         the reported internal block for a striped block group
+   */
+  private static long getExpectedReplicaLength(BlockInfo storedBlock,
+      Block reported) {
+    if (storedBlock.isStriped()) {
+      return ((BlockInfoStriped) storedBlock).getInternalBlockLength(
+          StripedBlockUtil.getBlockIndex(reported));
+    }
+    return storedBlock.getNumBytes();
+  }
+
+  /**
+   * Add the replicas of a chunk of an initial block report.
+   */
+  private void reconcileFirstReportChunk(
+      final DatanodeStorageInfo storageInfo, final BlockReportChunk chunk)
+      throws IOException {
+    final Block block = new Block();
+    for (int i = 0; i < chunk.size; i++) {
+      chunk.get(i, block);
+      BlockInfo storedBlock = chunk.matching[i];
+      if (storedBlock != null && isMatchingReplica(storedBlock, block)) {
+        addStoredBlockImmediate(storedBlock, block, storageInfo);
+      } else {
+        processFirstReportedReplica(storageInfo, block, chunk.states[i]);
+      }
+    }
+  }
+
+  /**
+   * Diff a chunk of a block report against the storage, moving the reported
+   * blocks in front of the unreported ones, and process the resulting
+   * queues.
+   */
+  private void reconcileChunk(final DatanodeStorageInfo storageInfo,
+      final BlockReportChunk chunk, final Collection<Block> invalidated)
+      throws IOException {
+    Collection<BlockInfoToAdd> toAdd = new LinkedList<BlockInfoToAdd>();
+    Collection<Block> toInvalidate = new LinkedList<Block>();
+    Collection<BlockToMarkCorrupt> toCorrupt =
+        new LinkedList<BlockToMarkCorrupt>();
+    Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
+    // the head of the list may have changed while the lock was released
+    int headIndex = storageInfo.getBlockListHeadIndex();
+    int curIndex;
+    final Block block = new Block();
+    for (int i = 0; i < chunk.size; i++) {
+      chunk.get(i, block);
+      BlockInfo storedBlock = chunk.matching[i];
+      if (storedBlock == null || !isMatchingReplica(storedBlock, block)
+          || (curIndex = storedBlock.findStorageInfo(storageInfo)) < 0) {
+        storedBlock = processReportedBlock(storageInfo, block,
+            chunk.states[i], toAdd, toInvalidate, toCorrupt, toUC);
+        curIndex = storedBlock == null ?
+            -1 : storedBlock.findStorageInfo(storageInfo);
+      }
+      // move block to the head of the list
+      if (curIndex >= 0) {
+        headIndex = storageInfo.moveBlockToHead(storedBlock, curIndex,
+            headIndex);
       }
     }
+    applyReportDiff(storageInfo, toAdd, Collections.<Block>emptyList(),
+        toInvalidate, toCorrupt, toUC);
+    invalidated.addAll(toInvalidate);
   }
 
   private void reportDiff(DatanodeStorageInfo storageInfo, 
       BlockListAsLongs newReport, 
-      Collection<BlockInfo> toAdd,              // add to DatanodeDescriptor
+      Collection<BlockInfoToAdd> toAdd,         // add to DatanodeDescriptor
       Collection<Block> toRemove,           // remove from DatanodeDescriptor
       Collection<Block> toInvalidate,       // should be removed from DN
       Collection<BlockToMarkCorrupt> toCorrupt, // add to corrupt replicas list
@@ -2160,7 +2800,18 @@ private void reportDiff(DatanodeStorageInfo storageInfo,
         storageInfo.new BlockIterator(delimiter.getNext(0));
     while(it.hasNext())
       toRemove.add(it.next());
+    removeDelimiter(storageInfo, delimiter);
+  }
+
+  /**
+   * Remove a delimiter from the block list of a storage. Linking it into the
+   * list may have moved its triplets off-heap along with its neighbours, so
+   * free them too.
+   */
+  private static void removeDelimiter(DatanodeStorageInfo storageInfo,
+      BlockInfo delimiter) {
     storageInfo.removeBlock(delimiter);
+    delimiter.moveTripletsOnHeap();
   }
 
   /**
@@ -2197,7 +2848,7 @@ private void reportDiff(DatanodeStorageInfo storageInfo,
   private BlockInfo processReportedBlock(
       final DatanodeStorageInfo storageInfo,
       final Block block, final ReplicaState reportedState, 
-      final Collection<BlockInfo> toAdd,
+      final Collection<BlockInfoToAdd> toAdd,
       final Collection<Block> toInvalidate, 
       final Collection<BlockToMarkCorrupt> toCorrupt,
       final Collection<StatefulBlockInfo> toUC) {
@@ -2240,6 +2891,7 @@ private BlockInfo processReportedBlock(
     BlockToMarkCorrupt c = checkReplicaCorrupt(
         block, reportedState, storedBlock, ucState, dn);
     if (c != null) {
+      c.setReported(new Block(block));
       if (shouldPostponeBlocksFromFuture) {
         // If the block is an out-of-date generation stamp or state,
         // but we're the standby, we shouldn't treat it as corrupt,
@@ -2266,7 +2918,7 @@ private BlockInfo processReportedBlock(
     if (reportedState == ReplicaState.FINALIZED
         && (storedBlock.findStorageInfo(storageInfo) == -1 ||
             corruptReplicas.isReplicaCorrupt(storedBlock, dn))) {
-      toAdd.add(storedBlock);
+      toAdd.add(new BlockInfoToAdd(storedBlock, new Block(block)));
     }
     return storedBlock;
   }
@@ -2364,11 +3016,13 @@ private BlockToMarkCorrupt checkReplicaCorrupt(
               "block is " + ucState + " and reported genstamp " + reportedGS
               + " does not match genstamp in block map "
               + storedBlock.getGenerationStamp(), Reason.GENSTAMP_MISMATCH);
-        } else if (storedBlock.getNumBytes() != reported.getNumBytes()) {
+        } else if (getExpectedReplicaLength(storedBlock, reported)
+            != reported.getNumBytes()) {
           return new BlockToMarkCorrupt(storedBlock,
               "block is " + ucState + " and reported length " +
               reported.getNumBytes() + " does not match " +
-              "length in block map " + storedBlock.getNumBytes(),
+              "length in block map " +
+              getExpectedReplicaLength(storedBlock, reported),
               Reason.SIZE_MISMATCH);
         } else {
           return null; // not corrupt
@@ -2453,7 +3107,7 @@ void addStoredBlockUnderConstruction(StatefulBlockInfo ucBlock,
 
     if (ucBlock.reportedState == ReplicaState.FINALIZED &&
         (block.findStorageInfo(storageInfo) < 0)) {
-      addStoredBlock(block, storageInfo, null, true);
+      addStoredBlock(block, ucBlock.reportedBlock, storageInfo, null, true);
     }
   } 
 
@@ -2469,29 +3123,29 @@ void addStoredBlockUnderConstruction(StatefulBlockInfo ucBlock,
    * @throws IOException
    */
   private void addStoredBlockImmediate(BlockInfo storedBlock,
-      DatanodeStorageInfo storageInfo)
+      Block reported, DatanodeStorageInfo storageInfo)
   throws IOException {
     assert (storedBlock != null && namesystem.hasWriteLock());
     if (!namesystem.isInStartupSafeMode() 
         || namesystem.isPopulatingReplQueues()) {
-      addStoredBlock(storedBlock, storageInfo, null, false);
+      addStoredBlock(storedBlock, reported, storageInfo, null, false);
       return;
     }
 
     // just add it
-    AddBlockResult result = storageInfo.addBlock(storedBlock);
+    AddBlockResult result = storageInfo.addBlock(storedBlock, reported);
 
     // Now check for completion of blocks and safe block count
     int numCurrentReplica = countLiveNodes(storedBlock);
     if (storedBlock.getBlockUCState() == BlockUCState.COMMITTED
-        && numCurrentReplica >= minReplication) {
+        && numCurrentReplica >= getMinStorageNum(storedBlock)) {
       completeBlock(storedBlock, false);
     } else if (storedBlock.isComplete() && result == AddBlockResult.ADDED) {
       // check whether safe replication is reached for the block
       // only complete blocks are counted towards that.
       // In the case that the block just became complete above, completeBlock()
       // handles the safe block count maintenance.
-      namesystem.incrementSafeBlockCount(numCurrentReplica);
+      namesystem.incrementSafeBlockCount(numCurrentReplica, storedBlock);
     }
   }
 
@@ -2501,6 +3155,7 @@ private void addStoredBlockImmediate(BlockInfo storedBlock,
    * @return the block that is stored in blockMap.
    */
   private Block addStoredBlock(final BlockInfo block,
+                               final Block reportedBlock,
                                DatanodeStorageInfo storageInfo,
                                DatanodeDescriptor delNodeHint,
                                boolean logEveryBlock)
@@ -2526,8 +3181,19 @@ private Block addStoredBlock(final BlockInfo block,
     BlockCollection bc = getBlockCollection(storedBlock);
     assert bc != null : "Block must belong to a file";
 
+    if (storedBlock.isStriped() && storedBlock.isComplete()
+        && storedBlock.findStorageInfo(storageInfo) < 0
+        && hasLiveInternalBlock((BlockInfoStriped) storedBlock,
+            StripedBlockUtil.getBlockIndex(reportedBlock))) {
+      // the internal block was reconstructed elsewhere meanwhile
+      blockLog.info("BLOCK* addStoredBlock: {} on {} is already stored by"
+          + " another node, invalidating it", reportedBlock, node);
+      addToInvalidates(new Block(reportedBlock), node);
+      return storedBlock;
+    }
+
     // add block to the datanode
-    AddBlockResult result = storageInfo.addBlock(storedBlock);
+    AddBlockResult result = storageInfo.addBlock(storedBlock, reportedBlock);
 
     int curReplicaDelta;
     if (result == AddBlockResult.ADDED) {
@@ -2558,7 +3224,7 @@ private Block addStoredBlock(final BlockInfo block,
       + pendingReplications.getNumReplicas(storedBlock);
 
     if(storedBlock.getBlockUCState() == BlockUCState.COMMITTED &&
-        numLiveReplicas >= minReplication) {
+        numLiveReplicas >= getMinStorageNum(storedBlock)) {
       completeBlock(storedBlock, false);
     } else if (storedBlock.isComplete() && result == AddBlockResult.ADDED) {
       // check whether safe replication is reached for the block
@@ -2566,7 +3232,7 @@ private Block addStoredBlock(final BlockInfo block,
       // Is no-op if not in safe mode.
       // In the case that the block just became complete above, completeBlock()
       // handles the safe block count maintenance.
-      namesystem.incrementSafeBlockCount(numCurrentReplica);
+      namesystem.incrementSafeBlockCount(numCurrentReplica, storedBlock);
     }
     
     // if file is under construction, then done for now
@@ -2604,6 +3270,25 @@ private Block addStoredBlock(final BlockInfo block,
     return storedBlock;
   }
 
+  /**
+   * @return whether the internal block of the given index of the group is
+   *         stored at a node where it is live
+   */
+  private boolean hasLiveInternalBlock(BlockInfoStriped block, int index) {
+    Collection<DatanodeDescriptor> nodesCorrupt =
+        corruptReplicas.getNodes(block);
+    for (DatanodeStorageInfo storage : blocksMap.getStorages(block,
+        State.NORMAL)) {
+      final DatanodeDescriptor node = storage.getDatanodeDescriptor();
+      if (block.getStorageBlockIndex(storage) == index && node.isAlive
+          && !node.isDecommissionInProgress() && !node.isDecommissioned()
+          && (nodesCorrupt == null || !nodesCorrupt.contains(node))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void logAddStoredBlock(BlockInfo storedBlock,
       DatanodeDescriptor node) {
     if (!blockLog.isDebugEnabled()) {
@@ -2864,6 +3549,12 @@ private void processOverReplicatedBlock(final Block block,
       final short replication, final DatanodeDescriptor addedNode,
       DatanodeDescriptor delNodeHint) {
     assert namesystem.hasWriteLock();
+    final BlockInfo storedBlock = getStoredBlock(block);
+    if (storedBlock != null && storedBlock.isStriped()) {
+      // the internal blocks of a group are not interchangeable replicas,
+      // and the extra ones are invalidated when reported
+      return;
+    }
     if (addedNode == delNodeHint) {
       delNodeHint = null;
     }
@@ -3146,7 +3837,7 @@ private void processAndHandleReportedBlock(
       ReplicaState reportedState, DatanodeDescriptor delHintNode)
       throws IOException {
     // blockReceived reports a finalized block
-    Collection<BlockInfo> toAdd = new LinkedList<BlockInfo>();
+    Collection<BlockInfoToAdd> toAdd = new LinkedList<BlockInfoToAdd>();
     Collection<Block> toInvalidate = new LinkedList<Block>();
     Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<BlockToMarkCorrupt>();
     Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
@@ -3163,8 +3854,9 @@ private void processAndHandleReportedBlock(
       addStoredBlockUnderConstruction(b, storageInfo);
     }
     long numBlocksLogged = 0;
-    for (BlockInfo b : toAdd) {
-      addStoredBlock(b, storageInfo, delHintNode, numBlocksLogged < maxNumBlocksToLog);
+    for (BlockInfoToAdd b : toAdd) {
+      addStoredBlock(b.stored, b.reported, storageInfo, delHintNode,
+          numBlocksLogged < maxNumBlocksToLog);
       numBlocksLogged++;
     }
     if (numBlocksLogged > maxNumBlocksToLog) {
@@ -3255,6 +3947,9 @@ public NumberReplicas countNodes(BlockInfo b) {
     int corrupt = 0;
     int excess = 0;
     int stale = 0;
+    // a block group is only live as many times as it has distinct live
+    // internal blocks
+    final BitSet liveIndices = b.isStriped() ? new BitSet() : null;
     Collection<DatanodeDescriptor> nodesCorrupt = corruptReplicas.getNodes(b);
     for(DatanodeStorageInfo storage : blocksMap.getStorages(b, State.NORMAL)) {
       final DatanodeDescriptor node = storage.getDatanodeDescriptor();
@@ -3269,6 +3964,14 @@ public NumberReplicas countNodes(BlockInfo b) {
             .getDatanodeUuid());
         if (blocksExcess != null && blocksExcess.contains(b)) {
           excess++;
+        } else if (liveIndices != null) {
+          final int index = ((BlockInfoStriped) b).getStorageBlockIndex(storage);
+          if (liveIndices.get(index)) {
+            excess++;
+          } else {
+            liveIndices.set(index);
+            live++;
+          }
         } else {
           live++;
         }
@@ -3291,7 +3994,7 @@ public NumberReplicas countNodes(BlockInfo b) {
    * @return count of live nodes for this block
    */
   int countLiveNodes(BlockInfo b) {
-    if (!namesystem.isInStartupSafeMode()) {
+    if (!namesystem.isInStartupSafeMode() || b.isStriped()) {
       return countNodes(b).liveReplicas();
     }
     // else proceed with fast case
@@ -3319,7 +4022,7 @@ void processOverReplicatedBlocksOnReCommission(
     int numOverReplicated = 0;
     while(it.hasNext()) {
       final BlockInfo block = it.next();
-      short expectedReplication = block.getReplication();
+      short expectedReplication = getExpectedReplicaNum(block);
       NumberReplicas num = countNodes(block);
       int numCurrentReplica = num.liveReplicas();
       if (numCurrentReplica > expectedReplication) {
@@ -3434,7 +4137,7 @@ private void updateNeededReplications(final BlockInfo block,
    */
   public void checkReplication(BlockCollection bc) {
     for (BlockInfo block : bc.getBlocks()) {
-      final short expected = block.getReplication();
+      final short expected = getExpectedReplicaNum(block);
       final NumberReplicas n = countNodes(block);
       if (isNeededReplication(block, n.liveReplicas())) {
         neededReplications.add(block, n.liveReplicas(),
@@ -3456,8 +4159,8 @@ public boolean checkBlocksProperlyReplicated(
         final int numNodes = b.numNodes();
         LOG.info("BLOCK* " + b + " is not COMPLETE (ucState = "
           + b.getBlockUCState() + ", replication# = " + numNodes
-          + (numNodes < minReplication ? " < ": " >= ")
-          + " minimum = " + minReplication + ") in file " + src);
+          + (numNodes < getMinStorageNum(b) ? " < ": " >= ")
+          + " minimum = " + getMinStorageNum(b) + ") in file " + src);
         return false;
       }
     }
@@ -3513,7 +4216,9 @@ private int invalidateWorkForOneNode(DatanodeInfo dn) {
   }
 
   boolean blockHasEnoughRacks(BlockInfo b) {
-    if (!this.shouldCheckForEnoughRacks) {
+    if (!this.shouldCheckForEnoughRacks || b.isStriped()) {
+      // the internal blocks of a group are placed over the racks when
+      // written, and are not moved to other racks later
       return true;
     }
     boolean enoughRacks = false;;
@@ -3549,11 +4254,14 @@ boolean blockHasEnoughRacks(BlockInfo b) {
    * or if it does not have enough racks.
    */
   boolean isNeededReplication(BlockInfo storedBlock, int current) {
-    int expected = storedBlock.getReplication();
+    int expected = getExpectedReplicaNum(storedBlock);
     return current < expected || !blockHasEnoughRacks(storedBlock);
   }
 
   public short getExpectedReplicaNum(BlockInfo block) {
+    if (block.isStriped()) {
+      return ((BlockInfoStriped) block).getRealTotalBlockNum();
+    }
     return block.getReplication();
   }
   
@@ -3614,6 +4322,14 @@ public int getCapacity() {
     return blocksMap.getCapacity();
   }
 
+  /**
+   * @return the bytes of direct memory holding the block to storage
+   *         triplets, or 0 if they are kept on the heap.
+   */
+  public long getBlocksMapOffHeapBytes() {
+    return blocksMap.getOffHeapBytes();
+  }
+
   /**
    * Return an iterator over the set of blocks for which there are no replicas.
    */
@@ -3740,6 +4456,18 @@ public static LocatedBlock newLocatedBlock(
         null);
   }
 
+  public static LocatedStripedBlock newLocatedStripedBlock(
+      ExtendedBlock b, DatanodeStorageInfo[] storages, byte[] indices,
+      long startOffset, boolean corrupt) {
+    // startOffset is unknown
+    return new LocatedStripedBlock(
+        b, DatanodeStorageInfo.toDatanodeInfos(storages),
+        DatanodeStorageInfo.toStorageIDs(storages),
+        DatanodeStorageInfo.toStorageTypes(storages),
+        indices, startOffset, corrupt,
+        null);
+  }
+
   /**
    * A simple result enum for the result of
    * {@link BlockManager#processMisReplicatedBlock(BlockInfo)}.
@@ -19,6 +19,8 @@
 
 import static org.apache.hadoop.hdfs.server.blockmanagement.CorruptReplicasMap.Reason;
 
+import org.apache.hadoop.hdfs.protocol.Block;
+
 import com.google.common.base.Preconditions;
 
 /**
@@ -34,6 +36,11 @@ class BlockToMarkCorrupt {
   private final String reason;
   /** The reason code to be stored */
   private final CorruptReplicasMap.Reason reasonCode;
+  /**
+   * The replica reported by the datanode, if known: for a striped block
+   * group, it tells which internal block the datanode stores.
+   */
+  private Block reported;
 
   BlockToMarkCorrupt(BlockInfo corrupted, BlockInfo stored, String reason,
       CorruptReplicasMap.Reason reasonCode) {
@@ -53,7 +60,9 @@ class BlockToMarkCorrupt {
 
   BlockToMarkCorrupt(BlockInfo stored, long gs, String reason,
       CorruptReplicasMap.Reason reasonCode) {
-    this(new BlockInfoContiguous((BlockInfoContiguous)stored), stored,
+    this(stored.isStriped() ?
+        new BlockInfoStriped((BlockInfoStriped) stored) :
+        new BlockInfoContiguous((BlockInfoContiguous) stored), stored,
         reason, reasonCode);
     //the corrupted block in datanode has a different generation stamp
     corrupted.setGenerationStamp(gs);
@@ -71,6 +80,15 @@ public BlockInfo getStored() {
     return stored;
   }
 
+  /** @return the reported replica, or the stored block if not known */
+  public Block getReported() {
+    return reported != null ? reported : stored;
+  }
+
+  void setReported(Block reported) {
+    this.reported = reported;
+  }
+
   public String getReason() {
     return reason;
   }
@@ -21,6 +21,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -65,12 +66,19 @@ assert getBlockUCState() != COMPLETE :
     setExpectedLocations(blk, targets);
   }
 
-  /** Set expected locations */
+  /**
+   * Set expected locations. The i-th target of a striped block group is
+   * expected to store its internal block of index i.
+   */
   public void setExpectedLocations(Block block, DatanodeStorageInfo[] targets) {
     int numLocations = targets == null ? 0 : targets.length;
+    boolean striped = block instanceof BlockInfo
+        && ((BlockInfo) block).isStriped();
     this.replicas = new ReplicaUnderConstruction[numLocations];
     for(int i = 0; i < numLocations; i++) {
-      replicas[i] = new ReplicaUnderConstruction(block, targets[i],
+      Block replica = striped ? new Block(block.getBlockId() + i,
+          0, block.getGenerationStamp()) : block;
+      replicas[i] = new ReplicaUnderConstruction(replica, targets[i],
           ReplicaState.RBW);
     }
   }
@@ -88,6 +96,19 @@ public DatanodeStorageInfo[] getExpectedStorageLocations() {
     return storages;
   }
 
+  /**
+   * @return the indices of the internal blocks of a striped block group at
+   * the expected locations
+   */
+  public byte[] getBlockIndices() {
+    int numLocations = getNumExpectedLocations();
+    byte[] indices = new byte[numLocations];
+    for (int i = 0; i < numLocations; i++) {
+      indices[i] = (byte) StripedBlockUtil.getBlockIndex(replicas[i]);
+    }
+    return indices;
+  }
+
   /** Get the number of expected locations */
   public int getNumExpectedLocations() {
     return replicas == null ? 0 : replicas.length;
@@ -22,9 +22,11 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 
@@ -32,6 +34,9 @@
  * This class maintains the map from a block to its metadata.
  * block's metadata currently includes blockCollection it belongs to and
  * the datanodes that store the block.
+ *
+ * The triplets of the blocks in the map, which link the blocks to their
+ * storages, can optionally be kept off-heap, see {@link OffHeapTriplets}.
  */
 class BlocksMap {
   private static class StorageIterator implements Iterator<DatanodeStorageInfo> {
@@ -64,7 +69,14 @@ public void remove()  {
   
   private GSet<Block, BlockInfo> blocks;
 
+  /** The off-heap triplets of the blocks, or null if kept on the heap. */
+  private final OffHeapTriplets offHeapTriplets;
+
   BlocksMap(int capacity) {
+    this(capacity, false);
+  }
+
+  BlocksMap(int capacity, boolean offHeap) {
     // Use 2% of total memory to size the GSet capacity
     this.capacity = capacity;
     this.blocks = new LightWeightGSet<Block, BlockInfo>(capacity) {
@@ -81,6 +93,7 @@ public Iterator<BlockInfo> iterator() {
         return iterator;
       }
     };
+    this.offHeapTriplets = offHeap ? new OffHeapTriplets() : null;
   }
 
 
@@ -93,6 +106,9 @@ void clear() {
     if (blocks != null) {
       blocks.clear();
     }
+    if (offHeapTriplets != null) {
+      offHeapTriplets.clear();
+    }
   }
 
   /**
@@ -104,6 +120,9 @@ BlockInfo addBlockCollection(BlockInfo b, BlockCollection bc) {
       info = b;
       blocks.put(info);
     }
+    if (offHeapTriplets != null) {
+      info.moveTripletsOffHeap(offHeapTriplets);
+    }
     info.setBlockCollectionId(bc.getId());
     return info;
   }
@@ -123,11 +142,23 @@ void removeBlock(Block block) {
       DatanodeDescriptor dn = blockInfo.getDatanode(idx);
       dn.removeBlock(blockInfo); // remove from the list and wipe the location
     }
+    if (offHeapTriplets != null) {
+      blockInfo.moveTripletsOnHeap();
+    }
   }
   
   /** Returns the block object it it exists in the map. */
   BlockInfo getStoredBlock(Block b) {
-    return blocks.get(b);
+    BlockInfo info = blocks.get(b);
+    if (info == null && StripedBlockUtil.isStripedBlockID(b.getBlockId())) {
+      // an internal block is stored as its block group
+      BlockInfo group = blocks.get(
+          new Block(StripedBlockUtil.getBlockGroupId(b.getBlockId())));
+      if (group != null && group.isStriped()) {
+        info = group;
+      }
+    }
+    return info;
   }
 
   /**
@@ -135,7 +166,7 @@ BlockInfo getStoredBlock(Block b) {
    * returns {@link Iterable} of the storages the block belongs to.
    */
   Iterable<DatanodeStorageInfo> getStorages(Block b) {
-    return getStorages(blocks.get(b));
+    return getStorages(getStoredBlock(b));
   }
 
   /**
@@ -146,7 +177,7 @@ Iterable<DatanodeStorageInfo> getStorages(Block b) {
    * @param state DatanodeStorage state by which to filter the returned Iterable
    */
   Iterable<DatanodeStorageInfo> getStorages(Block b, final DatanodeStorage.State state) {
-    return Iterables.filter(getStorages(blocks.get(b)), new Predicate<DatanodeStorageInfo>() {
+    return Iterables.filter(getStorages(getStoredBlock(b)), new Predicate<DatanodeStorageInfo>() {
       @Override
       public boolean apply(DatanodeStorageInfo storage) {
         return storage.getState() == state;
@@ -169,7 +200,7 @@ public Iterator<DatanodeStorageInfo> iterator() {
 
   /** counts number of containing nodes. Better than using iterator. */
   int numNodes(Block b) {
-    BlockInfo info = blocks.get(b);
+    BlockInfo info = getStoredBlock(b);
     return info == null ? 0 : info.numNodes();
   }
 
@@ -179,7 +210,7 @@ int numNodes(Block b) {
    * only if it does not belong to any file and data-nodes.
    */
   boolean removeNode(Block b, DatanodeDescriptor node) {
-    BlockInfo info = blocks.get(b);
+    BlockInfo info = getStoredBlock(b);
     if (info == null)
       return false;
 
@@ -188,7 +219,10 @@ boolean removeNode(Block b, DatanodeDescriptor node) {
 
     if (info.getDatanode(0) == null     // no datanodes left
               && info.isDeleted()) {  // does not belong to a file
-      blocks.remove(b);  // remove block from the map
+      blocks.remove(info);  // remove block from the map
+      if (offHeapTriplets != null) {
+        info.moveTripletsOnHeap();
+      }
     }
     return removed;
   }
@@ -205,6 +239,19 @@ Iterable<BlockInfo> getBlocks() {
     return blocks;
   }
   
+  /**
+   * @return the bytes of direct memory holding the triplets of the blocks,
+   *         or 0 if they are kept on the heap.
+   */
+  long getOffHeapBytes() {
+    return offHeapTriplets == null ? 0 : offHeapTriplets.getAllocatedBytes();
+  }
+
+  @VisibleForTesting
+  OffHeapTriplets getOffHeapTriplets() {
+    return offHeapTriplets;
+  }
+
   /** Get the capacity of the HashMap that stores blocks */
   int getCapacity() {
     return capacity;
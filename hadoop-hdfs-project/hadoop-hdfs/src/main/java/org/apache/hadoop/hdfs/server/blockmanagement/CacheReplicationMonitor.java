@@ -369,6 +369,10 @@ private void rescanCacheDirectives() {
    * @param file The file.
    */
   private void rescanFile(CacheDirective directive, INodeFile file) {
+    if (file.isStriped()) {
+      // no replica of a striped file holds its data, so none is cached
+      return;
+    }
     BlockInfo[] blockInfos = file.getBlocks();
 
     // Increment the "needed" statistics
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
@@ -39,8 +40,11 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.CachedBlock;
+import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
 import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
@@ -200,6 +204,28 @@ public CachedBlocksList getPendingUncached() {
     return pendingUncached;
   }
 
+  /**
+   * The sorted IDs of the blocks with ranges in the block read cache of this
+   * datanode, replaced by each cache report. Unlike the cached blocks of the
+   * directives, they are not uncached by the CacheReplicationMonitor.
+   */
+  private volatile long[] readCachedBlocks = new long[0];
+
+  public void setReadCachedBlocks(List<Long> blockIds) {
+    long[] sorted = new long[blockIds.size()];
+    int i = 0;
+    for (Long blockId : blockIds) {
+      sorted[i++] = blockId;
+    }
+    Arrays.sort(sorted);
+    readCachedBlocks = sorted;
+  }
+
+  /** @return whether the block has ranges in the read cache of the node */
+  public boolean isReadCached(long blockId) {
+    return Arrays.binarySearch(readCachedBlocks, blockId) >= 0;
+  }
+
   /**
    * The time when the last batch of caching directives was sent, in
    * monotonic milliseconds.
@@ -223,6 +249,9 @@ public CachedBlocksList getPendingUncached() {
   /** A queue of blocks to be replicated by this datanode */
   private final BlockQueue<BlockTargetPair> replicateBlocks =
       new BlockQueue<>();
+  /** A queue of block groups to be reconstructed by this datanode */
+  private final BlockQueue<BlockECReconstructionInfo> erasurecodeBlocks =
+      new BlockQueue<>();
   /** A queue of blocks to be recovered by this datanode */
   private final BlockQueue<BlockInfo> recoverBlocks = new BlockQueue<>();
   /** A set of blocks to be invalidated by this datanode */
@@ -372,6 +401,7 @@ public void resetBlocks() {
     this.pendingCached.clear();
     this.cached.clear();
     this.pendingUncached.clear();
+    this.readCachedBlocks = new long[0];
   }
   
   public void clearBlockQueues() {
@@ -379,6 +409,7 @@ public void clearBlockQueues() {
       this.invalidateBlocks.clear();
       this.recoverBlocks.clear();
       this.replicateBlocks.clear();
+      this.erasurecodeBlocks.clear();
     }
     // pendingCached, cached, and pendingUncached are protected by the
     // FSN lock.
@@ -600,6 +631,21 @@ void addBlockToBeReplicated(Block block, DatanodeStorageInfo[] targets) {
     replicateBlocks.offer(new BlockTargetPair(block, targets));
   }
 
+  /**
+   * Store block erasure coding reconstruction work.
+   */
+  void addBlockToBeErasureCoded(ExtendedBlock block,
+      DatanodeDescriptor[] sources, byte[] liveBlockIndices,
+      DatanodeStorageInfo[] targets, byte[] targetBlockIndices,
+      ErasureCodingPolicy ecPolicy) {
+    assert (block != null && sources != null && sources.length > 0);
+    erasurecodeBlocks.offer(new BlockECReconstructionInfo(block, sources,
+        liveBlockIndices, DatanodeStorageInfo.toDatanodeInfos(targets),
+        DatanodeStorageInfo.toStorageIDs(targets),
+        DatanodeStorageInfo.toStorageTypes(targets), targetBlockIndices,
+        ecPolicy));
+  }
+
   /**
    * Store block recovery work.
    */
@@ -631,6 +677,14 @@ int getNumberOfBlocksToBeReplicated() {
     return PendingReplicationWithoutTargets + replicateBlocks.size();
   }
 
+  /**
+   * The number of block groups pending to be reconstructed
+   */
+  @VisibleForTesting
+  public int getNumberOfBlocksToBeErasureCoded() {
+    return erasurecodeBlocks.size();
+  }
+
   /**
    * The number of block invalidation items that are pending to 
    * be sent to the datanode
@@ -645,6 +699,11 @@ public List<BlockTargetPair> getReplicationCommand(int maxTransfers) {
     return replicateBlocks.poll(maxTransfers);
   }
 
+  public List<BlockECReconstructionInfo> getErasureCodeCommand(
+      int maxTransfers) {
+    return erasurecodeBlocks.poll(maxTransfers);
+  }
+
   public BlockInfo[] getLeaseRecoveryCommand(int maxTransfers) {
     List<BlockInfo> blocks = recoverBlocks.poll(maxTransfers);
     if(blocks == null)
@@ -868,6 +927,10 @@ public String dumpDatanode() {
     if (repl > 0) {
       sb.append(" ").append(repl).append(" blocks to be replicated;");
     }
+    int ec = erasurecodeBlocks.size();
+    if (ec > 0) {
+      sb.append(" ").append(ec).append(" blocks to be erasure coded;");
+    }
     int inval = invalidateBlocks.size();
     if (inval > 0) {
       sb.append(" ").append(inval).append(" blocks to be invalidated;");      
@@ -24,6 +24,7 @@
 import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
@@ -122,6 +123,18 @@ public void remove() {
   private volatile BlockInfo blockList = null;
   private int numBlocks = 0;
 
+  /** Whether a full block report is being processed in chunks. */
+  private boolean chunkedBlockReportInProgress = false;
+
+  /**
+   * While a full block report is processed in chunks, the first block of
+   * the list which has not been reported yet, or null if there is none.
+   * The blocks in front of it have been reported or added since the report
+   * started. It is kept up to date as the list changes, instead of linking a
+   * delimiter into the list while the lock is released between chunks.
+   */
+  private BlockInfo firstUnreportedBlock = null;
+
   // The ID of the last full block report which updated this storage.
   private long lastBlockReportId = 0;
 
@@ -234,6 +247,14 @@ long getBlockPoolUsed() {
   }
 
   public AddBlockResult addBlock(BlockInfo b) {
+    return addBlock(b, b);
+  }
+
+  /**
+   * Add the block to the storage, which stores the given reported block of
+   * it: an internal block of a striped block group.
+   */
+  public AddBlockResult addBlock(BlockInfo b, Block reportedBlock) {
     // First check whether the block belongs to a different storage
     // on the same DN.
     AddBlockResult result = AddBlockResult.ADDED;
@@ -252,13 +273,16 @@ public AddBlockResult addBlock(BlockInfo b) {
     }
 
     // add to the head of the data-node list
-    b.addStorage(this);
+    b.addStorage(this, reportedBlock);
     blockList = b.listInsert(blockList, this);
     numBlocks++;
     return result;
   }
 
   public boolean removeBlock(BlockInfo b) {
+    if (b == firstUnreportedBlock) {
+      firstUnreportedBlock = b.getNext(b.findStorageInfo(this));
+    }
     blockList = b.listRemove(blockList, this);
     if (b.removeStorage(this)) {
       numBlocks--;
@@ -282,10 +306,47 @@ Iterator<BlockInfo> getBlockIterator() {
    * @return the index of the head of the blockList
    */
   int moveBlockToHead(BlockInfo b, int curIndex, int headIndex) {
+    if (b == firstUnreportedBlock) {
+      firstUnreportedBlock = b.getNext(curIndex);
+    }
     blockList = b.moveBlockToHead(blockList, this, curIndex, headIndex);
     return curIndex;
   }
 
+  /**
+   * @return the index of this storage in the head of the blockList, or -1
+   *         if the list is empty
+   */
+  int getBlockListHeadIndex() {
+    return blockList == null ? -1 : blockList.findStorageInfo(this);
+  }
+
+  boolean isChunkedBlockReportInProgress() {
+    return chunkedBlockReportInProgress;
+  }
+
+  void setChunkedBlockReportInProgress(boolean inProgress) {
+    this.chunkedBlockReportInProgress = inProgress;
+  }
+
+  /**
+   * Start tracking the blocks not reported by a full block report: all the
+   * blocks currently in the list. Reported blocks are moved to the head of
+   * the list, in front of the unreported ones.
+   */
+  void startTrackingUnreportedBlocks() {
+    firstUnreportedBlock = blockList;
+  }
+
+  /** @return an iterator over the blocks which have not been reported */
+  Iterator<BlockInfo> getUnreportedBlockIterator() {
+    return new BlockIterator(firstUnreportedBlock);
+  }
+
+  void stopTrackingUnreportedBlocks() {
+    firstUnreportedBlock = null;
+  }
+
   /**
    * Used for testing only
    * @return the head of the blockList
@@ -0,0 +1,366 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Holds the triplets of {@link BlockInfo}s outside of the Java heap.
+ *
+ * Every block moved here is given an int slot. The triplets of the block
+ * are kept in a record in one of a number of direct memory slabs, addressed
+ * by a long offset: the number of triplets, followed by the storage id, the
+ * slot of the previous block and the slot of the next block for each of
+ * them. The only per block state left on the heap is a reference from the
+ * slot to the block and the address of its record, both held in arrays, so
+ * that the garbage collector no longer has to trace an array of references
+ * per block.
+ *
+ * Storages are given ids the first time a block is added to them, and lose
+ * them again once no block refers to them, so that removed storages are not
+ * held here. Records of freed blocks are reused for blocks with the same
+ * number of triplets.
+ *
+ * Like the {@link BlocksMap}, this class is not thread safe; it relies on
+ * the namesystem lock.
+ */
+final class OffHeapTriplets {
+  /** 16MB slabs by default. */
+  static final int DEFAULT_SLAB_SHIFT = 24;
+
+  /** A null storage or block in a record. */
+  private static final int NONE = -1;
+  private static final long NO_RECORD = -1L;
+
+  private static final int HEADER_SIZE = 4;
+  private static final int TRIPLET_SIZE = 12;
+  private static final int PREVIOUS = 4;
+  private static final int NEXT = 8;
+
+  private final int slabShift;
+  private final int slabSize;
+  private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+  /** The first free byte of the last slab. */
+  private int slabPosition;
+  /** Freed records, linked through their first triplet, by capacity. */
+  private long[] freeRecords = new long[0];
+
+  private BlockInfo[] blocks = new BlockInfo[0];
+  private long[] addresses = new long[0];
+  /** The number of slots ever used. */
+  private int numSlots = 0;
+  private int[] freeSlots = new int[0];
+  private int numFreeSlots = 0;
+
+  private final Map<DatanodeStorageInfo, Integer> storageIds =
+      new IdentityHashMap<DatanodeStorageInfo, Integer>();
+  private final List<DatanodeStorageInfo> storages =
+      new ArrayList<DatanodeStorageInfo>();
+  /** The number of triplets referring to each storage id. */
+  private int[] storageRefs = new int[0];
+  private final List<Integer> freeStorageIds = new ArrayList<Integer>();
+
+  OffHeapTriplets() {
+    this(DEFAULT_SLAB_SHIFT);
+  }
+
+  OffHeapTriplets(int slabShift) {
+    this.slabShift = slabShift;
+    this.slabSize = 1 << slabShift;
+    this.slabPosition = slabSize;
+  }
+
+  /**
+   * Allocate a slot with empty triplets for the given block.
+   * @return the slot of the block
+   */
+  int allocate(BlockInfo block, int capacity) {
+    int slot;
+    if (numFreeSlots > 0) {
+      slot = freeSlots[--numFreeSlots];
+    } else {
+      if (numSlots == blocks.length) {
+        int newLength = Math.max(1024, blocks.length * 2);
+        blocks = Arrays.copyOf(blocks, newLength);
+        addresses = Arrays.copyOf(addresses, newLength);
+      }
+      slot = numSlots++;
+    }
+    blocks[slot] = block;
+    addresses[slot] = allocateRecord(Math.max(1, capacity));
+    return slot;
+  }
+
+  /** Free the slot and the triplets of a block. */
+  void release(int slot) {
+    long address = addresses[slot];
+    int capacity = getInt(address);
+    for (int i = 0; i < capacity; i++) {
+      unreferenceStorage(getInt(address + HEADER_SIZE + i * TRIPLET_SIZE));
+    }
+    freeRecord(address);
+    blocks[slot] = null;
+    addresses[slot] = NO_RECORD;
+    if (numFreeSlots == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, Math.max(16, numFreeSlots * 2));
+    }
+    freeSlots[numFreeSlots++] = slot;
+  }
+
+  /**
+   * Grow the triplets of a block, keeping their contents.
+   */
+  void ensureCapacity(int slot, int capacity) {
+    long address = addresses[slot];
+    int oldCapacity = getInt(address);
+    if (oldCapacity >= capacity) {
+      return;
+    }
+    long newAddress = allocateRecord(capacity);
+    for (int i = 0; i < oldCapacity * TRIPLET_SIZE; i += 4) {
+      putInt(newAddress + HEADER_SIZE + i, getInt(address + HEADER_SIZE + i));
+    }
+    freeRecord(address);
+    addresses[slot] = newAddress;
+  }
+
+  int getCapacity(int slot) {
+    return getInt(addresses[slot]);
+  }
+
+  DatanodeStorageInfo getStorageInfo(int slot, int index) {
+    int id = getInt(tripletAddress(slot, index));
+    return id == NONE ? null : storages.get(id);
+  }
+
+  void setStorageInfo(int slot, int index, DatanodeStorageInfo storage) {
+    long address = tripletAddress(slot, index);
+    int old = getInt(address);
+    int id = getStorageId(storage);
+    if (id != NONE) {
+      storageRefs[id]++;
+    }
+    putInt(address, id);
+    unreferenceStorage(old);
+  }
+
+  BlockInfo getPrevious(int slot, int index) {
+    return getBlock(tripletAddress(slot, index) + PREVIOUS);
+  }
+
+  BlockInfo getNext(int slot, int index) {
+    return getBlock(tripletAddress(slot, index) + NEXT);
+  }
+
+  /** @return the previous block before the change */
+  BlockInfo setPrevious(int slot, int index, BlockInfo to) {
+    return setBlock(tripletAddress(slot, index) + PREVIOUS, to);
+  }
+
+  /** @return the next block before the change */
+  BlockInfo setNext(int slot, int index, BlockInfo to) {
+    return setBlock(tripletAddress(slot, index) + NEXT, to);
+  }
+
+  /**
+   * Find the given storage in the triplets of a block.
+   * @return index or -1 if not found.
+   */
+  int findStorageInfo(int slot, DatanodeStorageInfo storage) {
+    Integer id = storageIds.get(storage);
+    if (id == null) {
+      return -1;
+    }
+    long address = addresses[slot];
+    int capacity = getInt(address);
+    for (int idx = 0; idx < capacity; idx++) {
+      int cur = getInt(address + HEADER_SIZE + idx * TRIPLET_SIZE);
+      if (cur == id) {
+        return idx;
+      }
+      if (cur == NONE) {
+        break;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Move the triplets of all blocks back onto the heap, empty, and free the
+   * slabs.
+   */
+  void clear() {
+    for (int slot = 0; slot < numSlots; slot++) {
+      if (blocks[slot] != null) {
+        blocks[slot].resetTriplets();
+      }
+    }
+    slabs.clear();
+    slabPosition = slabSize;
+    freeRecords = new long[0];
+    blocks = new BlockInfo[0];
+    addresses = new long[0];
+    numSlots = 0;
+    freeSlots = new int[0];
+    numFreeSlots = 0;
+    storageIds.clear();
+    storages.clear();
+    storageRefs = new int[0];
+    freeStorageIds.clear();
+  }
+
+  /** @return the number of blocks holding a slot */
+  int size() {
+    return numSlots - numFreeSlots;
+  }
+
+  /** @return the number of storages blocks are stored on */
+  int getNumStorages() {
+    return storageIds.size();
+  }
+
+  /** @return the number of bytes of direct memory allocated */
+  long getAllocatedBytes() {
+    return (long) slabs.size() * slabSize;
+  }
+
+  private long tripletAddress(int slot, int index) {
+    long address = addresses[slot];
+    assert index >= 0 && index < getInt(address) : "Index is out of bound";
+    return address + HEADER_SIZE + index * TRIPLET_SIZE;
+  }
+
+  private BlockInfo getBlock(long address) {
+    int slot = getInt(address);
+    return slot == NONE ? null : blocks[slot];
+  }
+
+  private BlockInfo setBlock(long address, BlockInfo to) {
+    BlockInfo old = getBlock(address);
+    putInt(address, to == null ? NONE : getSlot(to));
+    return old;
+  }
+
+  /**
+   * A block linked to from here must itself be held here, which normally
+   * is the case for all blocks in the {@link BlocksMap}.
+   */
+  private int getSlot(BlockInfo block) {
+    if (!block.isTripletsOffHeap(this)) {
+      block.moveTripletsOffHeap(this);
+    }
+    return block.getTripletsSlot();
+  }
+
+  private int getStorageId(DatanodeStorageInfo storage) {
+    if (storage == null) {
+      return NONE;
+    }
+    Integer id = storageIds.get(storage);
+    if (id == null) {
+      if (!freeStorageIds.isEmpty()) {
+        id = freeStorageIds.remove(freeStorageIds.size() - 1);
+        storages.set(id, storage);
+      } else {
+        id = storages.size();
+        storages.add(storage);
+        if (id == storageRefs.length) {
+          storageRefs = Arrays.copyOf(storageRefs, Math.max(16, id * 2));
+        }
+      }
+      storageIds.put(storage, id);
+    }
+    return id;
+  }
+
+  /**
+   * Drop a reference to a storage id, forgetting the storage once no
+   * triplet refers to it.
+   */
+  private void unreferenceStorage(int id) {
+    if (id == NONE || --storageRefs[id] > 0) {
+      return;
+    }
+    storageIds.remove(storages.get(id));
+    storages.set(id, null);
+    freeStorageIds.add(id);
+  }
+
+  private long allocateRecord(int capacity) {
+    long address;
+    if (capacity < freeRecords.length && freeRecords[capacity] != NO_RECORD) {
+      address = freeRecords[capacity];
+      freeRecords[capacity] = getLong(address + HEADER_SIZE);
+    } else {
+      int size = HEADER_SIZE + capacity * TRIPLET_SIZE;
+      Preconditions.checkArgument(size <= slabSize,
+          "Block with %s triplets does not fit in a slab", capacity);
+      if (slabPosition + size > slabSize) {
+        slabs.add(ByteBuffer.allocateDirect(slabSize)
+            .order(ByteOrder.nativeOrder()));
+        slabPosition = 0;
+      }
+      address = ((long) (slabs.size() - 1) << slabShift) | slabPosition;
+      slabPosition += size;
+    }
+    putInt(address, capacity);
+    for (int i = 0; i < capacity * TRIPLET_SIZE; i += 4) {
+      putInt(address + HEADER_SIZE + i, NONE);
+    }
+    return address;
+  }
+
+  private void freeRecord(long address) {
+    int capacity = getInt(address);
+    if (capacity >= freeRecords.length) {
+      int oldLength = freeRecords.length;
+      freeRecords = Arrays.copyOf(freeRecords, capacity + 1);
+      Arrays.fill(freeRecords, oldLength, freeRecords.length, NO_RECORD);
+    }
+    putLong(address + HEADER_SIZE, freeRecords[capacity]);
+    freeRecords[capacity] = address;
+  }
+
+  private int getInt(long address) {
+    return slabs.get((int) (address >>> slabShift))
+        .getInt((int) (address & (slabSize - 1)));
+  }
+
+  private void putInt(long address, int value) {
+    slabs.get((int) (address >>> slabShift))
+        .putInt((int) (address & (slabSize - 1)), value);
+  }
+
+  private long getLong(long address) {
+    return slabs.get((int) (address >>> slabShift))
+        .getLong((int) (address & (slabSize - 1)));
+  }
+
+  private void putLong(long address, long value) {
+    slabs.get((int) (address >>> slabShift))
+        .putLong((int) (address & (slabSize - 1)), value);
+  }
+}
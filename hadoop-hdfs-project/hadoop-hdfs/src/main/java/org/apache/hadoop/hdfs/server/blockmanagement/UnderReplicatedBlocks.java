@@ -34,7 +34,7 @@
  *
  * <p/>
  * The policy for choosing which priority to give added blocks
- * is implemented in {@link #getPriority(int, int, int)}.
+ * is implemented in {@link #getPriority(BlockInfo, int, int, int)}.
  * </p>
  * <p>The queue order is as follows:</p>
  * <ol>
@@ -141,14 +141,20 @@ synchronized boolean contains(BlockInfo block) {
   }
 
   /** Return the priority of a block
+   * @param block the block
    * @param curReplicas current number of replicas of the block
    * @param expectedReplicas expected number of replicas of the block
    * @return the priority for the blocks, between 0 and ({@link #LEVEL}-1)
    */
-  private int getPriority(int curReplicas,
+  private int getPriority(BlockInfo block,
+                          int curReplicas,
                           int decommissionedReplicas,
                           int expectedReplicas) {
     assert curReplicas >= 0 : "Negative replicas!";
+    if (block.isStriped()) {
+      return getPriorityStriped(curReplicas, decommissionedReplicas,
+          ((BlockInfoStriped) block).getRealDataBlockNum(), expectedReplicas);
+    }
     if (curReplicas >= expectedReplicas) {
       // Block has enough copies, but not enough racks
       return QUEUE_REPLICAS_BADLY_DISTRIBUTED;
@@ -174,6 +180,30 @@ private int getPriority(int curReplicas,
     }
   }
 
+  /**
+   * Return the priority of a striped block group, by how many more of its
+   * internal blocks it can lose: with only as many as the data blocks left,
+   * losing one more loses the group.
+   * @param curReplicas the number of live internal blocks of the group
+   * @param dataBlkNum the number of internal blocks needed to read the group
+   */
+  private int getPriorityStriped(int curReplicas, int decommissionedReplicas,
+      int dataBlkNum, int expectedReplicas) {
+    if (curReplicas >= expectedReplicas) {
+      return QUEUE_REPLICAS_BADLY_DISTRIBUTED;
+    } else if (curReplicas + decommissionedReplicas < dataBlkNum) {
+      // the group cannot be read, even from the decommissioned nodes
+      return QUEUE_WITH_CORRUPT_BLOCKS;
+    } else if (curReplicas <= dataBlkNum) {
+      return QUEUE_HIGHEST_PRIORITY;
+    } else if ((curReplicas - dataBlkNum) * 3
+        < (expectedReplicas - dataBlkNum)) {
+      return QUEUE_VERY_UNDER_REPLICATED;
+    } else {
+      return QUEUE_UNDER_REPLICATED;
+    }
+  }
+
   /** add a block to a under replication queue according to its priority
    * @param block a under replication block
    * @param curReplicas current number of replicas of the block
@@ -186,7 +216,7 @@ synchronized boolean add(BlockInfo block,
                            int decomissionedReplicas,
                            int expectedReplicas) {
     assert curReplicas >= 0 : "Negative replicas!";
-    int priLevel = getPriority(curReplicas, decomissionedReplicas,
+    int priLevel = getPriority(block, curReplicas, decomissionedReplicas,
                                expectedReplicas);
     if(priorityQueues.get(priLevel).add(block)) {
       if (priLevel == QUEUE_WITH_CORRUPT_BLOCKS &&
@@ -209,7 +239,7 @@ synchronized boolean remove(BlockInfo block,
                               int oldReplicas,
                               int decommissionedReplicas,
                               int oldExpectedReplicas) {
-    int priLevel = getPriority(oldReplicas,
+    int priLevel = getPriority(block, oldReplicas,
                                decommissionedReplicas,
                                oldExpectedReplicas);
     boolean removedBlock = remove(block, priLevel);
@@ -283,9 +313,9 @@ synchronized void update(BlockInfo block, int curReplicas,
                            int curReplicasDelta, int expectedReplicasDelta) {
     int oldReplicas = curReplicas-curReplicasDelta;
     int oldExpectedReplicas = curExpectedReplicas-expectedReplicasDelta;
-    int curPri = getPriority(curReplicas, decommissionedReplicas,
+    int curPri = getPriority(block, curReplicas, decommissionedReplicas,
         curExpectedReplicas);
-    int oldPri = getPriority(oldReplicas, decommissionedReplicas,
+    int oldPri = getPriority(block, oldReplicas, decommissionedReplicas,
         oldExpectedReplicas);
     if(NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("UnderReplicationBlocks.update " + 
@@ -387,4 +387,6 @@ enum BlockUCState {
       "raw.hdfs.crypto.file.encryption.info";
   String SECURITY_XATTR_UNREADABLE_BY_SUPERUSER =
       "security.hdfs.unreadable.by.superuser";
+  String XATTR_ERASURECODING_POLICY =
+      "system.hdfs.erasurecoding.policy";
 }
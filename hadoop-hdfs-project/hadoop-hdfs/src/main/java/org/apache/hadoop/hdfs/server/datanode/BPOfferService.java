@@ -669,8 +669,14 @@ private boolean processCommandFromActive(DatanodeCommand cmd,
         // Exceptions caught here are not expected to be disk-related.
         throw e;
       }
+      dn.invalidateBlockReadCache(bcmd.getBlockPoolId(), toDelete);
       dn.metrics.incrBlocksRemoved(toDelete.length);
       break;
+    case DatanodeProtocol.DNA_ERASURE_CODING_RECONSTRUCTION:
+      LOG.info("DatanodeCommand action: DNA_ERASURE_CODING_RECONSTRUCTION");
+      dn.getErasureCodingWorker().processErasureCodingTasks(
+          ((BlockECReconstructionCommand) cmd).getECTasks());
+      break;
     case DatanodeProtocol.DNA_CACHE:
       LOG.info("DatanodeCommand action: DNA_CACHE for " +
         blockIdCmd.getBlockPoolId() + " of [" +
@@ -750,6 +756,7 @@ private boolean processCommandFromStandby(DatanodeCommand cmd,
     case DatanodeProtocol.DNA_BALANCERBANDWIDTHUPDATE:
     case DatanodeProtocol.DNA_CACHE:
     case DatanodeProtocol.DNA_UNCACHE:
+    case DatanodeProtocol.DNA_ERASURE_CODING_RECONSTRUCTION:
       LOG.warn("Got a command from standby NN - ignoring command:" + cmd.getAction());
       break;
     default:
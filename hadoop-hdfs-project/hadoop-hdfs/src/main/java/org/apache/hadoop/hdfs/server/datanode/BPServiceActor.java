@@ -25,6 +25,7 @@
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -506,7 +507,8 @@ List<DatanodeCommand> blockReport(long fullBrLeaseId) throws IOException {
 
   DatanodeCommand cacheReport() throws IOException {
     // If caching is disabled, do not send a cache report
-    if (dn.getFSDataset().getCacheCapacity() == 0) {
+    final BlockReadCache readCache = dn.getBlockReadCache();
+    if (dn.getFSDataset().getCacheCapacity() == 0 && readCache == null) {
       return null;
     }
     // send cache report if timer has expired.
@@ -520,17 +522,21 @@ DatanodeCommand cacheReport() throws IOException {
 
       String bpid = bpos.getBlockPoolId();
       List<Long> blockIds = dn.getFSDataset().getCacheReport(bpid);
+      List<Long> readCachedBlockIds = readCache == null
+          ? Collections.<Long>emptyList() : readCache.getCachedBlockIds(bpid);
       long createTime = monotonicNow();
 
-      cmd = bpNamenode.cacheReport(bpRegistration, bpid, blockIds);
+      cmd = bpNamenode.cacheReport(bpRegistration, bpid, blockIds,
+          readCachedBlockIds);
       long sendTime = monotonicNow();
       long createCost = createTime - startTime;
       long sendCost = sendTime - createTime;
       dn.getMetrics().addCacheReport(sendCost);
       if (LOG.isDebugEnabled()) {
-        LOG.debug("CacheReport of " + blockIds.size()
-            + " block(s) took " + createCost + " msec to generate and "
-            + sendCost + " msecs for RPC and NN processing");
+        LOG.debug("CacheReport of " + blockIds.size() + " block(s) and "
+            + readCachedBlockIds.size() + " read cached block(s) took "
+            + createCost + " msec to generate and " + sendCost
+            + " msecs for RPC and NN processing");
       }
     }
     return cmd;
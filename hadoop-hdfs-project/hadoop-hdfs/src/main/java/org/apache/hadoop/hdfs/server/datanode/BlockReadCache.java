@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.util.DirectBufferPool;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An off-heap cache of the ranges of finalized replicas recently read by
+ * clients, with their checksums.
+ *
+ * A replica is cached by ranges of {@link #RANGE_SIZE} bytes, aligned to the
+ * checksum chunks. {@link BlockSender} cuts the packets of short reads at the
+ * range boundaries, serves them from the cache when their range is cached,
+ * and adds the ones it read from disk. The least recently read ranges are
+ * evicted once the cached bytes would exceed the capacity.
+ *
+ * Unlike {@link org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.FsDatasetCache},
+ * which caches the blocks of the cache directives, this cache is filled by
+ * the reads themselves. Its blocks are reported to the NameNode separately
+ * from the cached blocks of the directives, since the NameNode uncaches the
+ * blocks no directive asks for.
+ */
+class BlockReadCache {
+  /** The size of the cached ranges, rounded down to the checksum chunks. */
+  static final int RANGE_SIZE = 64 * 1024;
+
+  private static final DirectBufferPool bufferPool = new DirectBufferPool();
+
+  /** A cached range of a replica, also its own key. */
+  private static final class Range {
+    private final ExtendedBlock block;
+    private final long index;
+    /** The offset in the replica of the first byte */
+    private long offset;
+    private int dataLen;
+    /** The checksums of the chunks, followed by their data */
+    private ByteBuffer buf;
+
+    private Range(ExtendedBlock block, long index) {
+      this.block = block;
+      this.index = index;
+    }
+
+    @Override
+    public int hashCode() {
+      return block.hashCode() * 31 + (int) (index ^ (index >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Range)) {
+        return false;
+      }
+      Range that = (Range) o;
+      return index == that.index && block.equals(that.block)
+          && block.getGenerationStamp() == that.block.getGenerationStamp();
+    }
+  }
+
+  private final long capacity;
+  private final DataNodeMetrics metrics;
+  /** The ranges in order of access, the least recently read first */
+  private final LinkedHashMap<Range, Range> ranges =
+      new LinkedHashMap<Range, Range>(16, 0.75f, true);
+  /** The cached ranges of each block, regardless of the generation stamp */
+  private final Map<ExtendedBlock, Set<Range>> blocks =
+      new HashMap<ExtendedBlock, Set<Range>>();
+  private long used;
+
+  BlockReadCache(long capacity, DataNodeMetrics metrics) {
+    if (capacity <= 0) {
+      throw new HadoopIllegalArgumentException(
+          "The capacity of the block read cache must be positive: "
+          + capacity);
+    }
+    this.capacity = capacity;
+    this.metrics = metrics;
+  }
+
+  /** @return the size of the ranges of a replica with the given chunks */
+  static int getRangeSize(int chunkSize) {
+    return Math.max(chunkSize, RANGE_SIZE / chunkSize * chunkSize);
+  }
+
+  private static Range newKey(ExtendedBlock block, long offset,
+      int chunkSize) {
+    return new Range(new ExtendedBlock(block),
+        offset / getRangeSize(chunkSize));
+  }
+
+  private static int numChunks(int dataLen, int chunkSize) {
+    return (dataLen + chunkSize - 1) / chunkSize;
+  }
+
+  /**
+   * Copy a cached packet into the given buffer, its checksums at
+   * checksumOff followed by its data.
+   *
+   * @param offset the offset of the packet, at a chunk boundary
+   * @param dataLen the length of the packet data, within one range
+   * @return whether the packet was cached
+   */
+  boolean get(ExtendedBlock block, int chunkSize, int checksumSize,
+      long offset, int dataLen, byte[] dst, int checksumOff) {
+    final Range range;
+    synchronized (this) {
+      range = ranges.get(newKey(block, offset, chunkSize));
+    }
+    if (range != null) {
+      synchronized (range) {
+        // the range may have been evicted or replaced meanwhile
+        if (range.buf != null && range.offset <= offset
+            && offset + dataLen <= range.offset + range.dataLen) {
+          final int skip = (int) (offset - range.offset);
+          final int checksumLen = numChunks(dataLen, chunkSize) * checksumSize;
+          final ByteBuffer b = range.buf.duplicate();
+          b.position(skip / chunkSize * checksumSize);
+          b.get(dst, checksumOff, checksumLen);
+          b.position(numChunks(range.dataLen, chunkSize) * checksumSize
+              + skip);
+          b.get(dst, checksumOff + checksumLen, dataLen);
+          metrics.incrBlockReadCacheHits();
+          return true;
+        }
+      }
+    }
+    metrics.incrBlockReadCacheMisses();
+    return false;
+  }
+
+  /**
+   * Cache a packet read from disk, with its checksums at checksumOff
+   * followed by its data, unless its range is already cached.
+   *
+   * @param offset the offset of the packet, at a chunk boundary
+   * @param dataLen the length of the packet data, within one range
+   */
+  void put(ExtendedBlock block, int chunkSize, int checksumSize,
+      long offset, int dataLen, byte[] src, int checksumOff) {
+    final int size = numChunks(dataLen, chunkSize) * checksumSize + dataLen;
+    if (dataLen == 0 || size > capacity) {
+      return;
+    }
+    final Range key = newKey(block, offset, chunkSize);
+    key.offset = offset;
+    key.dataLen = dataLen;
+    key.buf = bufferPool.getBuffer(size);
+    key.buf.put(src, checksumOff, size);
+    key.buf.flip();
+    synchronized (this) {
+      Range old = ranges.get(key);
+      if (old != null) {
+        if (old.offset <= offset
+            && offset + dataLen <= old.offset + old.dataLen) {
+          bufferPool.returnBuffer(key.buf);
+          return;
+        }
+        remove(old);
+      }
+      while (used + size > capacity) {
+        Iterator<Range> eldest = ranges.keySet().iterator();
+        remove(eldest.next());
+        metrics.incrBlockReadCacheEvictions();
+      }
+      ranges.put(key, key);
+      Set<Range> cached = blocks.get(key.block);
+      if (cached == null) {
+        cached = new HashSet<Range>();
+        blocks.put(key.block, cached);
+      }
+      cached.add(key);
+      used += size;
+    }
+  }
+
+  /** Remove a range, which is cached. */
+  private void remove(Range range) {
+    ranges.remove(range);
+    Set<Range> cached = blocks.get(range.block);
+    cached.remove(range);
+    if (cached.isEmpty()) {
+      blocks.remove(range.block);
+    }
+    synchronized (range) {
+      used -= range.buf.capacity();
+      bufferPool.returnBuffer(range.buf);
+      range.buf = null;
+    }
+  }
+
+  /** Remove the cached ranges of a block, of any generation stamp. */
+  synchronized void invalidate(ExtendedBlock block) {
+    Set<Range> cached = blocks.get(block);
+    if (cached != null) {
+      for (Range range : new ArrayList<Range>(cached)) {
+        remove(range);
+      }
+    }
+  }
+
+  /** @return the IDs of the blocks of a block pool with cached ranges */
+  synchronized List<Long> getCachedBlockIds(String bpid) {
+    List<Long> blockIds = new ArrayList<Long>();
+    for (ExtendedBlock block : blocks.keySet()) {
+      if (block.getBlockPoolId().equals(bpid)) {
+        blockIds.add(block.getBlockId());
+      }
+    }
+    return blockIds;
+  }
+
+  @VisibleForTesting
+  synchronized long getUsed() {
+    return used;
+  }
+
+  long getCapacity() {
+    return capacity;
+  }
+}
@@ -26,10 +26,14 @@
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.zip.Checksum;
@@ -90,7 +94,15 @@ class BlockReceiver implements Closeable {
   private final int bytesPerChecksum;
   private final int checksumSize;
   
-  private final PacketReceiver packetReceiver = new PacketReceiver(false);
+  private PacketReceiver packetReceiver = new PacketReceiver(false);
+  /**
+   * With direct I/O, the channels the packets are read from, mirrored to and
+   * written to. Null otherwise, or when a stream has no channel.
+   */
+  private ReadableByteChannel inChannel;
+  private WritableByteChannel mirrorChannel;
+  private FileChannel outChannel;
+  private FileChannel checksumOutChannel;
   
   protected final String inAddr;
   protected final String myAddr;
@@ -276,6 +288,72 @@ class BlockReceiver implements Closeable {
     }
   }
 
+  /**
+   * Receive the packets into pooled direct buffers read from a channel, and
+   * mirror and write them through channels, so that they are not copied on
+   * the heap. The checksums are verified over the direct buffers.
+   * @param in the channel under the input stream, which is read once the
+   *           data buffered by the stream is consumed.
+   * @param mirror the channel under the mirror output stream, or null if
+   *               there is no mirror or it has no channel.
+   */
+  void setDirectIO(ReadableByteChannel in, WritableByteChannel mirror)
+      throws IOException {
+    packetReceiver.close();
+    packetReceiver = new PacketReceiver(true);
+    inChannel = new BufferedInputChannel(this.in, in);
+    mirrorChannel = mirror;
+    if (out instanceof FileOutputStream) {
+      outChannel = ((FileOutputStream) out).getChannel();
+    }
+    if (streams.getChecksumOut() instanceof FileOutputStream) {
+      checksumOutChannel =
+          ((FileOutputStream) streams.getChecksumOut()).getChannel();
+    }
+  }
+
+  /**
+   * A channel which reads the data buffered by an input stream before
+   * reading from the channel under it.
+   */
+  private static class BufferedInputChannel implements ReadableByteChannel {
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private byte[] buf;
+
+    BufferedInputChannel(InputStream in, ReadableByteChannel channel) {
+      this.in = in;
+      this.channel = channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      final int buffered = in.available();
+      if (buffered <= 0) {
+        return channel.read(dst);
+      }
+      final int n = Math.min(buffered, dst.remaining());
+      if (buf == null || buf.length < n) {
+        buf = new byte[n];
+      }
+      final int read = in.read(buf, 0, n);
+      if (read > 0) {
+        dst.put(buf, 0, read);
+      }
+      return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
   /** Return the datanode object. */
   DataNode getDataNode() {return datanode;}
 
@@ -472,7 +550,11 @@ private boolean shouldVerifyChecksum() {
    */
   private int receivePacket() throws IOException {
     // read the next packet
-    packetReceiver.receiveNextPacket(in);
+    if (inChannel != null) {
+      packetReceiver.receiveNextPacket(inChannel);
+    } else {
+      packetReceiver.receiveNextPacket(in);
+    }
 
     PacketHeader header = packetReceiver.getHeader();
     if (LOG.isDebugEnabled()){
@@ -521,7 +603,13 @@ private int receivePacket() throws IOException {
     if (mirrorOut != null && !mirrorError) {
       try {
         long begin = Time.monotonicNow();
-        packetReceiver.mirrorPacketTo(mirrorOut);
+        if (mirrorChannel != null) {
+          // after what the stream has buffered
+          mirrorOut.flush();
+          packetReceiver.mirrorPacketTo(mirrorChannel);
+        } else {
+          packetReceiver.mirrorPacketTo(mirrorOut);
+        }
         mirrorOut.flush();
         long duration = Time.monotonicNow() - begin;
         if (duration > datanodeSlowLogThresholdMs) {
@@ -647,14 +735,14 @@ private int receivePacket() throws IOException {
           // data and on-disk data have no overlap, this will not be at the
           // beginning of the buffer.
           int startByteToDisk = (int)(onDiskLen-firstByteInBlock) 
-              + dataBuf.arrayOffset() + dataBuf.position();
+              + dataBuf.position();
 
           // Actual number of data bytes to write.
           int numBytesToDisk = (int)(offsetInBlock-onDiskLen);
           
           // Write data to disk.
           long begin = Time.monotonicNow();
-          out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
+          writeTo(out, outChannel, dataBuf, startByteToDisk, numBytesToDisk);
           long duration = Time.monotonicNow() - begin;
           if (duration > datanodeSlowLogThresholdMs) {
             LOG.warn("Slow BlockReceiver write data to disk cost:" + duration
@@ -684,8 +772,11 @@ private int receivePacket() throws IOException {
                 bytesToReadForRecalc = numBytesToDisk;
               }
 
-              partialCrc.update(dataBuf.array(), startByteToDisk,
-                  bytesToReadForRecalc);
+              byte[] partialChunk = new byte[bytesToReadForRecalc];
+              ByteBuffer chunk = dataBuf.duplicate();
+              chunk.position(startByteToDisk);
+              chunk.get(partialChunk);
+              partialCrc.update(partialChunk, 0, bytesToReadForRecalc);
               byte[] buf = FSOutputSummer.convertToByteStream(partialCrc,
                   checksumSize);
               crcBytes = copyLastChunkChecksum(buf, checksumSize, buf.length);
@@ -710,8 +801,7 @@ private int receivePacket() throws IOException {
             skip *= checksumSize; // Convert to number of bytes
 
             // write the rest of checksum
-            final int offset = checksumBuf.arrayOffset() +
-                checksumBuf.position() + skip;
+            final int offset = checksumBuf.position() + skip;
             final int end = offset + checksumLen - skip;
             // If offset > end, there is no more checksum to write.
             // I.e. a partial chunk checksum rewrite happened and there is no
@@ -721,9 +811,9 @@ private int receivePacket() throws IOException {
               lastCrc = crcBytes;
             } else {
               final int remainingBytes = checksumLen - skip;
-              lastCrc = copyLastChunkChecksum(checksumBuf.array(),
-                  checksumSize, end);
-              checksumOut.write(checksumBuf.array(), offset, remainingBytes);
+              lastCrc = copyLastChunkChecksum(checksumBuf, checksumSize, end);
+              writeTo(checksumOut, checksumOutChannel, checksumBuf, offset,
+                  remainingBytes);
             }
           }
 
@@ -775,6 +865,41 @@ private static byte[] copyLastChunkChecksum(byte[] array, int size, int end) {
     return Arrays.copyOfRange(array, end - size, end);
   }
 
+  private static byte[] copyLastChunkChecksum(ByteBuffer buf, int size,
+      int end) {
+    byte[] crc = new byte[size];
+    ByteBuffer last = buf.duplicate();
+    last.position(end - size);
+    last.get(crc);
+    return crc;
+  }
+
+  /**
+   * Write a range of a packet buffer to a file. The range of a direct buffer
+   * is written through the channel of the file, after what the stream has
+   * buffered, or copied out if the file has no channel.
+   */
+  private static void writeTo(OutputStream stream, FileChannel channel,
+      ByteBuffer buf, int offset, int len) throws IOException {
+    if (buf.hasArray()) {
+      stream.write(buf.array(), buf.arrayOffset() + offset, len);
+      return;
+    }
+    ByteBuffer range = buf.duplicate();
+    range.limit(offset + len);
+    range.position(offset);
+    if (channel != null) {
+      stream.flush();
+      while (range.hasRemaining()) {
+        channel.write(range);
+      }
+    } else {
+      byte[] bytes = new byte[len];
+      range.get(bytes);
+      stream.write(bytes);
+    }
+  }
+
   private void manageWriterOsCache(long offsetInBlock) {
     try {
       if (outFd != null &&
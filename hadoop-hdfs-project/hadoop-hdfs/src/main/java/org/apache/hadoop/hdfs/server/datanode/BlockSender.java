@@ -38,6 +38,7 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
@@ -168,6 +169,13 @@ class BlockSender implements java.io.Closeable {
   private final boolean dropCacheBehindAllReads;
   
   private long lastCacheDropOffset;
+
+  /** Whether the replica can be cached by the block read cache */
+  private boolean readCacheable;
+  /** The read cache serving this read, null if it is not used */
+  private BlockReadCache readCache;
+  /** The size of the ranges cached by the read cache */
+  private int readCacheRangeSize;
   
   @VisibleForTesting
   static long CACHE_DROP_INTERVAL_BYTES = 1024 * 1024; // 1MB
@@ -391,6 +399,9 @@ class BlockSender implements java.io.Closeable {
         DataNode.LOG.debug("replica=" + replica);
       }
       blockIn = datanode.data.getBlockInputStream(block, offset); // seek to offset
+      // only the finalized data and its on-disk checksums are cached
+      readCacheable = replica.getState() == ReplicaState.FINALIZED
+          && checksumIn != null && lastChunkChecksum == null;
       if (blockIn instanceof FileInputStream) {
         blockInFd = ((FileInputStream)blockIn).getFD();
       } else {
@@ -403,6 +414,22 @@ class BlockSender implements java.io.Closeable {
     }
   }
 
+  /**
+   * Serve the packets of a short read of a finalized replica from the block
+   * read cache, and add the ones read from disk to it. The packets are then
+   * cut at the boundaries of the cached ranges, and sent without transferTo.
+   * Long reads are left to the OS cache, with readahead and drop-behind.
+   *
+   * @param cache the read cache of the DataNode, or null if it is disabled
+   */
+  void setReadCache(BlockReadCache cache) {
+    if (cache != null && readCacheable
+        && endOffset - offset <= LONG_READ_THRESHOLD_BYTES) {
+      readCache = cache;
+      readCacheRangeSize = BlockReadCache.getRangeSize(chunkSize);
+    }
+  }
+
   /**
    * close opened files.
    */
@@ -526,6 +553,11 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
       boolean transferTo, DataTransferThrottler throttler) throws IOException {
     int dataLen = (int) Math.min(endOffset - offset,
                              (chunkSize * (long) maxChunks));
+    if (readCache != null) {
+      // a packet does not cross the ranges of the read cache
+      long rangeEnd = (offset / readCacheRangeSize + 1) * readCacheRangeSize;
+      dataLen = (int) Math.min(dataLen, rangeEnd - offset);
+    }
     
     int numChunks = numberOfChunks(dataLen); // Number of chunks be sent in the packet
     int checksumDataLen = numChunks * checksumSize;
@@ -551,7 +583,20 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     int checksumOff = pkt.position();
     byte[] buf = pkt.array();
     
-    if (checksumSize > 0 && checksumIn != null) {
+    int dataOff = checksumOff + checksumDataLen;
+    boolean cached = readCache != null && dataLen > 0
+        && readCache.get(block, chunkSize, checksumSize, offset, dataLen, buf,
+            checksumOff);
+    if (cached) {
+      // keep the files at the offset of the next packet
+      if (checksumIn != null) {
+        IOUtils.skipFully(checksumIn, checksumDataLen);
+      }
+      IOUtils.skipFully(blockIn, dataLen);
+      if (verifyChecksum) {
+        verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
+      }
+    } else if (checksumSize > 0 && checksumIn != null) {
       readChecksum(buf, checksumOff, checksumDataLen);
 
       // write in progress that we need to use to get last checksum
@@ -565,13 +610,17 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
       }
     }
     
-    int dataOff = checksumOff + checksumDataLen;
-    if (!transferTo) { // normal transfer
+    if (!transferTo && !cached) { // normal transfer
       IOUtils.readFully(blockIn, buf, dataOff, dataLen);
 
       if (verifyChecksum) {
         verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
       }
+      // checksumIn is closed if its checksums could not be read
+      if (readCache != null && dataLen > 0 && checksumIn != null) {
+        readCache.put(block, chunkSize, checksumSize, offset, dataLen, buf,
+            checksumOff);
+      }
     }
     
     try {
@@ -742,6 +791,7 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
       int maxChunksPerPacket;
       int pktBufSize = PacketHeader.PKT_MAX_HEADER_LEN;
       boolean transferTo = transferToAllowed && !verifyChecksum
+          && readCache == null
           && baseStream instanceof SocketOutputStream
           && blockIn instanceof FileInputStream;
       if (transferTo) {
@@ -752,6 +802,10 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         
         // Smaller packet size to only hold checksum when doing transferTo
         pktBufSize += checksumSize * maxChunksPerPacket;
+      } else if (readCache != null) {
+        // a packet per cached range
+        maxChunksPerPacket = readCacheRangeSize / chunkSize;
+        pktBufSize += (chunkSize + checksumSize) * maxChunksPerPacket;
       } else {
         maxChunksPerPacket = Math.max(1,
             numberOfChunks(IO_FILE_BUFFER_SIZE));
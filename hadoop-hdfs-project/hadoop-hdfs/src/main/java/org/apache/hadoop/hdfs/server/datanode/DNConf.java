@@ -73,6 +73,8 @@ public class DNConf {
   final int socketKeepaliveTimeout;
   
   final boolean transferToAllowed;
+  final boolean writeDirectBuffers;
+  final long blockReadCacheSize;
   final boolean dropCacheBehindWrites;
   final boolean syncBehindWrites;
   final boolean syncBehindWritesInBackground;
@@ -120,6 +122,12 @@ public DNConf(Configuration conf) {
     transferToAllowed = conf.getBoolean(
         DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
         DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT);
+    writeDirectBuffers = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_DEFAULT);
+    blockReadCacheSize = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_BLOCK_READ_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_BLOCK_READ_CACHE_SIZE_DEFAULT);
 
     writePacketSize = conf.getInt(DFS_CLIENT_WRITE_PACKET_SIZE_KEY, 
         DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT);
@@ -342,6 +342,9 @@ public static InetSocketAddress createSocketAddr(String target) {
   private final List<String> usersWithLocalPathAccess;
   private final boolean connectToDnViaHostname;
   ReadaheadPool readaheadPool;
+  /** Null unless the block read cache is enabled */
+  private BlockReadCache blockReadCache;
+  private ErasureCodingWorker ecWorker;
   SaslDataTransferClient saslClient;
   SaslDataTransferServer saslServer;
   private ObjectName dataNodeInfoBeanName;
@@ -1142,6 +1145,9 @@ void startDataNode(Configuration conf,
 
     metrics = DataNodeMetrics.create(conf, getDisplayName());
     metrics.getJvmMetrics().setPauseMonitor(pauseMonitor);
+    if (dnConf.blockReadCacheSize > 0) {
+      blockReadCache = new BlockReadCache(dnConf.blockReadCacheSize, metrics);
+    }
     
     blockPoolManager = new BlockPoolManager(this);
     blockPoolManager.refreshNamenodes(conf);
@@ -1152,6 +1158,7 @@ void startDataNode(Configuration conf,
     saslClient = new SaslDataTransferClient(dnConf.conf, 
         dnConf.saslPropsResolver, dnConf.trustedChannelResolver);
     saslServer = new SaslDataTransferServer(dnConf, blockPoolTokenSecretManager);
+    ecWorker = new ErasureCodingWorker(conf, this);
   }
 
   /**
@@ -1514,6 +1521,24 @@ public InterDatanodeProtocol run() throws IOException {
   public DataNodeMetrics getMetrics() {
     return metrics;
   }
+
+  /** @return the block read cache, or null if it is disabled */
+  BlockReadCache getBlockReadCache() {
+    return blockReadCache;
+  }
+
+  ErasureCodingWorker getErasureCodingWorker() {
+    return ecWorker;
+  }
+
+  /** Drop the cached ranges of invalidated blocks from the read cache. */
+  void invalidateBlockReadCache(String bpid, Block[] blocks) {
+    if (blockReadCache != null) {
+      for (Block b : blocks) {
+        blockReadCache.invalidate(new ExtendedBlock(bpid, b));
+      }
+    }
+  }
   
   /** Ensure the authentication method is kerberos */
   private void checkKerberosAuthMethod(String msg) throws IOException {
@@ -1667,6 +1692,10 @@ public void shutdown() {
       }
     }
 
+    if (ecWorker != null) {
+      ecWorker.shutdown();
+    }
+
     // Interrupt the checkDiskErrorThread and terminate it.
     if(this.checkDiskErrorThread != null) {
       this.checkDiskErrorThread.interrupt();
@@ -1831,7 +1860,8 @@ private void handleDiskError(String errMsgr) {
   /** Number of concurrent xceivers per node. */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
-    return threadGroup == null ? 0 : threadGroup.activeCount();
+    return threadGroup == null ? 0 : threadGroup.activeCount()
+        + xserver.getNumPooledXceivers();
   }
 
   @Override // DataNodeMXBean
@@ -43,6 +43,8 @@
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.util.Arrays;
 
@@ -84,6 +86,7 @@
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 
 import com.google.common.base.Preconditions;
@@ -107,7 +110,11 @@ class DataXceiver extends Receiver implements Runnable {
   private final DataXceiverServer dataXceiverServer;
   private final boolean connectToDnViaHostname;
   private long opStartTime; //the start time of receiving an Op
+  private int opsProcessed = 0; // the number of ops processed so far
+  private Op op = null; // the op being processed
   private final InputStream socketIn;
+  /** The channel of socketIn, if it is not wrapped by SASL. */
+  private ReadableByteChannel socketInChannel;
   private OutputStream socketOut;
   private BlockReceiver blockReceiver = null;
   private final int ioFileBufferSize;
@@ -184,113 +191,248 @@ public void sendOOB() throws IOException, InterruptedException {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
-    Op op = null;
-
     try {
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption");
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at " + peer.getRemoteAddressString() + 
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection");
-        }
+      if (!setUpStreams()) {
         return;
       }
-      
-      super.initialize(new DataInputStream(input));
-      
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
+      runOps();
+    } catch (Throwable t) {
+      logOpError(t);
+    } finally {
+      updateCurrentThreadName("Cleaning up");
+      close();
+    }
+  }
+
+  /** Process ops until the connection is closed or idle for too long. */
+  private void runOps() throws IOException {
+    do {
+      if (!readNextOp()) {
+        break;
+      }
+      runOp();
+    } while (isKeptAlive());
+  }
+
+  /**
+   * Run the ops which have been sent on the connection on a thread of the
+   * {@link DataXceiverPool}. Unlike {@link #run()}, this returns instead of
+   * waiting for the next op of a kept alive connection.
+   *
+   * @return true if the connection is kept alive for the next op, false if
+   *         it has been closed.
+   */
+  boolean runAvailableOps() {
+    boolean keepAlive = false;
+    boolean handedOff = false;
+    try {
+      if (in == null) {
+        if (!setUpStreams()) {
+          return false;
+        }
+      } else {
+        dataXceiverServer.setPeerThread(peer, Thread.currentThread());
+      }
       do {
-        updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
+        if (!readNextOp()) {
+          break;
+        }
+        if (waitsOnOtherDataNodes(op)) {
+          handedOff = true;
+          runOnOwnThread();
+          return false;
+        }
+        runOp();
+        keepAlive = isKeptAlive();
+        // the next op may have been read into the buffer already
+      } while (keepAlive && in.available() > 0);
+    } catch (Throwable t) {
+      keepAlive = false;
+      logOpError(t);
+    } finally {
+      // a connection handed off belongs to the new thread now
+      if (keepAlive) {
+        dataXceiverServer.setPeerThread(peer, null);
+      } else if (!handedOff) {
+        updateCurrentThreadName("Cleaning up");
+        close();
+      }
+    }
+    return keepAlive;
+  }
 
+  /**
+   * A pipeline write holds its thread until the downstream DataNodes ack
+   * the block, and a replace until the proxy DataNode has sent it. If those
+   * ran on the bounded pools, the pools of two DataNodes could fill up with
+   * ops waiting on each other, so they get a thread of their own.
+   */
+  private static boolean waitsOnOtherDataNodes(Op op) {
+    return op == Op.WRITE_BLOCK || op == Op.REPLACE_BLOCK;
+  }
+
+  /**
+   * Process the op just read, and the later ops of the connection, on a new
+   * thread as {@link #run()} does.
+   */
+  private void runOnOwnThread() {
+    final Daemon daemon = new Daemon(datanode.threadGroup, new Runnable() {
+      @Override
+      public void run() {
         try {
-          if (opsProcessed != 0) {
-            assert dnConf.socketKeepaliveTimeout > 0;
-            peer.setReadTimeout(dnConf.socketKeepaliveTimeout);
-          } else {
-            peer.setReadTimeout(dnConf.socketTimeout);
-          }
-          op = readOp();
-        } catch (InterruptedIOException ignored) {
-          // Time out while we wait for client rpc
-          break;
-        } catch (IOException err) {
-          // Since we optimistically expect the next op, it's quite normal to get EOF here.
-          if (opsProcessed > 0 &&
-              (err instanceof EOFException || err instanceof ClosedChannelException)) {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Cached " + peer + " closing after " + opsProcessed + " ops");
-            }
-          } else {
-            incrDatanodeNetworkErrors();
-            throw err;
+          runOp();
+          if (isKeptAlive()) {
+            runOps();
           }
-          break;
+        } catch (Throwable t) {
+          logOpError(t);
+        } finally {
+          updateCurrentThreadName("Cleaning up");
+          close();
         }
+      }
+    });
+    dataXceiverServer.setPeerThread(peer, daemon);
+    daemon.start();
+  }
 
-        // restore normal timeout
-        if (opsProcessed != 0) {
-          peer.setReadTimeout(dnConf.socketTimeout);
-        }
+  /**
+   * Register the peer with the server and negotiate SASL.
+   * @return false if the peer failed the handshake
+   */
+  private boolean setUpStreams() throws IOException {
+    dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      input = new BufferedInputStream(saslStreams.in,
+          smallBufferSize);
+      socketOut = saslStreams.out;
+      if (saslStreams.in == socketIn) {
+        socketInChannel = peer.getInputStreamChannel();
+      }
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption");
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at " + peer.getRemoteAddressString() + 
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection");
+      }
+      return false;
+    }
+    
+    super.initialize(new DataInputStream(input));
+    return true;
+  }
 
-        opStartTime = monotonicNow();
-        processOp(op);
-        ++opsProcessed;
-      } while ((peer != null) &&
-          (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
-    } catch (Throwable t) {
-      String s = datanode.getDisplayName() + ":DataXceiver error processing "
-          + ((op == null) ? "unknown" : op.name()) + " operation "
-          + " src: " + remoteAddress + " dst: " + localAddress;
-      if (op == Op.WRITE_BLOCK && t instanceof ReplicaAlreadyExistsException) {
-        // For WRITE_BLOCK, it is okay if the replica already exists since
-        // client and replication may write the same block to the same datanode
-        // at the same time.
-        if (LOG.isTraceEnabled()) {
-          LOG.trace(s, t);
-        } else {
-          LOG.info(s + "; " + t);
-        }
-      } else if (op == Op.READ_BLOCK && t instanceof SocketTimeoutException) {
-        String s1 =
-            "Likely the client has stopped reading, disconnecting it";
-        s1 += " (" + s + ")";
-        if (LOG.isTraceEnabled()) {
-          LOG.trace(s1, t);
-        } else {
-          LOG.info(s1 + "; " + t);          
+  /**
+   * Wait for the next op and read it.
+   * @return false if no op has come before the timeout, or the peer has
+   *         closed a kept alive connection.
+   */
+  private boolean readNextOp() throws IOException {
+    updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
+
+    try {
+      if (opsProcessed != 0) {
+        assert dnConf.socketKeepaliveTimeout > 0;
+        peer.setReadTimeout(dnConf.socketKeepaliveTimeout);
+      } else {
+        peer.setReadTimeout(dnConf.socketTimeout);
+      }
+      op = readOp();
+    } catch (InterruptedIOException ignored) {
+      // Time out while we wait for client rpc
+      return false;
+    } catch (IOException err) {
+      // Since we optimistically expect the next op, it's quite normal to get EOF here.
+      if (opsProcessed > 0 &&
+          (err instanceof EOFException || err instanceof ClosedChannelException)) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Cached " + peer + " closing after " + opsProcessed + " ops");
         }
       } else {
-        LOG.error(s, t);
+        incrDatanodeNetworkErrors();
+        throw err;
       }
-    } finally {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
-            + datanode.getXceiverCount());
+      return false;
+    }
+
+    // restore normal timeout
+    if (opsProcessed != 0) {
+      peer.setReadTimeout(dnConf.socketTimeout);
+    }
+    return true;
+  }
+
+  /** Process the op read last. */
+  private void runOp() throws IOException {
+    opStartTime = monotonicNow();
+    processOp(op);
+    ++opsProcessed;
+  }
+
+  private boolean isKeptAlive() {
+    return (peer != null) &&
+        (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0);
+  }
+
+  /** @return the number of ops processed on the connection */
+  int getOpsProcessed() {
+    return opsProcessed;
+  }
+
+  Peer getPeer() {
+    return peer;
+  }
+
+  private void logOpError(Throwable t) {
+    String s = datanode.getDisplayName() + ":DataXceiver error processing "
+        + ((op == null) ? "unknown" : op.name()) + " operation "
+        + " src: " + remoteAddress + " dst: " + localAddress;
+    if (op == Op.WRITE_BLOCK && t instanceof ReplicaAlreadyExistsException) {
+      // For WRITE_BLOCK, it is okay if the replica already exists since
+      // client and replication may write the same block to the same datanode
+      // at the same time.
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(s, t);
+      } else {
+        LOG.info(s + "; " + t);
       }
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+    } else if (op == Op.READ_BLOCK && t instanceof SocketTimeoutException) {
+      String s1 =
+          "Likely the client has stopped reading, disconnecting it";
+      s1 += " (" + s + ")";
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(s1, t);
+      } else {
+        LOG.info(s1 + "; " + t);          
       }
+    } else {
+      LOG.error(s, t);
+    }
+  }
+
+  /** Close the connection and unregister it from the server. */
+  void close() {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
+          + datanode.getXceiverCount());
+    }
+    if (peer != null) {
+      dataXceiverServer.closePeer(peer);
+      IOUtils.closeStream(in);
     }
   }
 
@@ -541,6 +683,7 @@ public void readBlock(final ExtendedBlock block,
         blockSender = new BlockSender(block, blockOffset, length,
             true, false, sendChecksum, datanode, clientTraceFmt,
             cachingStrategy);
+        blockSender.setReadCache(datanode.getBlockReadCache());
       } catch(IOException e) {
         String msg = "opReadBlock " + block + " received exception " + e; 
         LOG.info(msg);
@@ -667,6 +810,7 @@ public void writeBlock(final ExtendedBlock block,
         Op.WRITE_BLOCK, BlockTokenIdentifier.AccessMode.WRITE);
 
     DataOutputStream mirrorOut = null;  // stream to next target
+    WritableByteChannel mirrorChannel = null; // its channel, if not wrapped
     DataInputStream mirrorIn = null;    // reply from next target
     Socket mirrorSock = null;           // socket to next target
     String mirrorNode = null;           // the name:port of next target
@@ -718,6 +862,10 @@ public void writeBlock(final ExtendedBlock block,
             datanode.getDataEncryptionKeyFactoryForBlock(block);
           IOStreamPair saslStreams = datanode.saslClient.socketSend(mirrorSock,
             unbufMirrorOut, unbufMirrorIn, keyFactory, blockToken, targets[0]);
+          if (saslStreams.out == unbufMirrorOut
+              && unbufMirrorOut instanceof WritableByteChannel) {
+            mirrorChannel = (WritableByteChannel) unbufMirrorOut;
+          }
           unbufMirrorOut = saslStreams.out;
           unbufMirrorIn = saslStreams.in;
           mirrorOut = new DataOutputStream(new BufferedOutputStream(unbufMirrorOut,
@@ -803,6 +951,10 @@ public void writeBlock(final ExtendedBlock block,
       // receive the block and mirror to the next target
       if (blockReceiver != null) {
         String mirrorAddr = (mirrorSock == null) ? null : mirrorNode;
+        if (dnConf.writeDirectBuffers && socketInChannel != null) {
+          blockReceiver.setDirectIO(socketInChannel,
+              mirrorOut == null ? null : mirrorChannel);
+        }
         blockReceiver.receiveBlock(mirrorOut, mirrorIn, replyOut,
             mirrorAddr, null, targets, false);
 
@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the ops of data transfer connections on a bounded pool of threads,
+ * instead of a thread per connection.
+ *
+ * A connection waiting for an op, either new or kept alive after earlier
+ * ops, is registered with a selector and costs no thread. Once data arrives
+ * on it, it is taken off the selector and queued for a pool thread, which
+ * runs the ops on it with the blocking {@link DataXceiver} code, until no
+ * more data is buffered. A kept alive connection then goes back to the
+ * selector, which closes connections idle for longer than their timeout.
+ * Ops which wait on other DataNodes, such as pipeline writes, are handed
+ * off to a thread of their own, so that the pools of several DataNodes
+ * cannot deadlock.
+ *
+ * The time ops wait in the queue is recorded in the DataNode metrics. The
+ * connection of an op which does not fit in the queue is closed.
+ */
+class DataXceiverPool implements Runnable {
+  public static final Log LOG = DataNode.LOG;
+
+  /** The longest the selector sleeps before checking for idle timeouts. */
+  private static final long MAX_SELECT_MS = 1000;
+
+  private final DataNode datanode;
+  private final DNConf dnConf;
+  private final ThreadPoolExecutor executor;
+  private final Selector selector;
+  private final Daemon selectorThread;
+  /** Connections to be registered with the selector. */
+  private final Queue<Connection> pending =
+      new ConcurrentLinkedQueue<Connection>();
+  private volatile boolean running = true;
+
+  /** A connection waiting for its next op. */
+  private static class Connection {
+    private final DataXceiver xceiver;
+    private final SocketChannel channel;
+    private final long deadline;
+
+    Connection(DataXceiver xceiver, SocketChannel channel, long timeout) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+      this.deadline = monotonicNow() + timeout;
+    }
+  }
+
+  /** Runs the ops of a connection on a pool thread. */
+  private class OpRunner implements Runnable {
+    private final Connection connection;
+    private final long queuedNanos = System.nanoTime();
+
+    OpRunner(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public void run() {
+      datanode.getMetrics().addXceiverQueueTimeNanos(
+          System.nanoTime() - queuedNanos);
+      final Thread thread = Thread.currentThread();
+      final String name = thread.getName();
+      try {
+        if (connection.xceiver.runAvailableOps()) {
+          park(connection.xceiver, connection.channel);
+        }
+      } finally {
+        thread.setName(name);
+      }
+    }
+  }
+
+  DataXceiverPool(DataNode datanode, Configuration conf) throws IOException {
+    this.datanode = datanode;
+    this.dnConf = datanode.getDnConf();
+    final int threads = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_THREADS_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_THREADS_DEFAULT);
+    final int queueSize = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_QUEUE_SIZE_DEFAULT);
+    this.executor = new ThreadPoolExecutor(threads, threads,
+        60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("DataXceiver pool thread #%d").build());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.selector = Selector.open();
+    this.selectorThread = new Daemon(this);
+    this.selectorThread.setName("DataXceiver selector");
+    LOG.info("Running data transfer ops on " + threads
+        + " pooled threads with a queue of " + queueSize);
+  }
+
+  void start() {
+    selectorThread.start();
+  }
+
+  /**
+   * Wait on the selector for the first op of a new connection.
+   * @return false if the connection cannot be registered with a selector.
+   */
+  boolean add(DataXceiver xceiver) {
+    SocketChannel channel = TcpPeerServer.getSocketChannel(xceiver.getPeer());
+    if (channel == null) {
+      return false;
+    }
+    enqueue(new Connection(xceiver, channel, dnConf.socketTimeout));
+    return true;
+  }
+
+  /** Wait on the selector for the next op of a kept alive connection. */
+  private void park(DataXceiver xceiver, SocketChannel channel) {
+    enqueue(new Connection(xceiver, channel, dnConf.socketKeepaliveTimeout));
+  }
+
+  private void enqueue(Connection c) {
+    pending.add(c);
+    if (running) {
+      selector.wakeup();
+    } else {
+      closePending();
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        // flush the cancelled keys before their channels are registered again
+        selector.selectNow();
+        registerPending();
+        final long timeout = closeIdle();
+        if (selector.selectedKeys().isEmpty()) {
+          selector.select(timeout);
+        }
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          SelectionKey key = it.next();
+          it.remove();
+          key.cancel();
+          dispatch((Connection) key.attachment());
+        }
+      }
+    } catch (Throwable t) {
+      if (running) {
+        LOG.error("DataXceiver selector exiting", t);
+      }
+    } finally {
+      running = false;
+      closeAll();
+    }
+  }
+
+  private void registerPending() {
+    Connection c;
+    while ((c = pending.poll()) != null) {
+      try {
+        c.channel.register(selector, SelectionKey.OP_READ, c);
+      } catch (ClosedChannelException e) {
+        c.xceiver.close();
+      } catch (CancelledKeyException e) {
+        c.xceiver.close();
+      }
+    }
+  }
+
+  /**
+   * Close the connections which have waited too long for an op.
+   * @return the time until the next connection times out
+   */
+  private long closeIdle() {
+    final long now = monotonicNow();
+    long next = MAX_SELECT_MS;
+    for (SelectionKey key : selector.keys()) {
+      if (!key.isValid()) {
+        continue;
+      }
+      Connection c = (Connection) key.attachment();
+      if (now >= c.deadline) {
+        key.cancel();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Closing " + c.xceiver.getPeer() + " after "
+              + c.xceiver.getOpsProcessed() + " ops");
+        }
+        c.xceiver.close();
+      } else {
+        next = Math.min(next, c.deadline - now);
+      }
+    }
+    return Math.max(1, next);
+  }
+
+  private void dispatch(Connection c) {
+    try {
+      executor.execute(new OpRunner(c));
+    } catch (RejectedExecutionException e) {
+      datanode.getMetrics().incrXceiverPoolRejections();
+      LOG.warn("Closing " + c.xceiver.getPeer() + " since "
+          + executor.getQueue().size() + " data transfer ops are waiting"
+          + " for a thread already");
+      c.xceiver.close();
+    }
+  }
+
+  private void closePending() {
+    Connection c;
+    while ((c = pending.poll()) != null) {
+      c.xceiver.close();
+    }
+  }
+
+  /** Close all the waiting connections, in the selector thread. */
+  private void closeAll() {
+    closePending();
+    for (SelectionKey key : selector.keys()) {
+      key.cancel();
+      ((Connection) key.attachment()).xceiver.close();
+    }
+  }
+
+  /**
+   * Close the idle connections and stop taking new ops. The ops running
+   * keep on until they complete or {@link #shutdownNow()}.
+   */
+  void shutdown() {
+    running = false;
+    selector.wakeup();
+    try {
+      selectorThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close the DataXceiver selector", e);
+    }
+    executor.shutdown();
+  }
+
+  /** Interrupt the running ops. */
+  void shutdownNow() {
+    executor.shutdownNow();
+  }
+
+  /** @return the number of threads running ops */
+  int getActiveCount() {
+    return executor.getActiveCount();
+  }
+}
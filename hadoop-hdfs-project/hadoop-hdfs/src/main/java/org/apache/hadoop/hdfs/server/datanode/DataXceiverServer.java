@@ -27,6 +27,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -44,6 +45,8 @@ class DataXceiverServer implements Runnable {
   
   private final PeerServer peerServer;
   private final DataNode datanode;
+  /** Runs the ops on pooled threads, or null for a thread per connection. */
+  private final DataXceiverPool pool;
   private final HashMap<Peer, Thread> peers = new HashMap<Peer, Thread>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<Peer, DataXceiver>();
   private boolean closed = false;
@@ -107,10 +110,15 @@ synchronized void release() {
   
   
   DataXceiverServer(PeerServer peerServer, Configuration conf,
-      DataNode datanode) {
+      DataNode datanode) throws IOException {
     
     this.peerServer = peerServer;
     this.datanode = datanode;
+    // only TCP connections have a channel to register with a selector
+    this.pool = (peerServer instanceof TcpPeerServer) && conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_ENABLED_DEFAULT) ?
+        new DataXceiverPool(datanode, conf) : null;
     
     this.maxXceiverCount = 
       conf.getInt(DFSConfigKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY,
@@ -129,6 +137,9 @@ synchronized void release() {
 
   @Override
   public void run() {
+    if (pool != null) {
+      pool.start();
+    }
     Peer peer = null;
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
@@ -142,9 +153,10 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (pool == null || !pool.add(xceiver)) {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -182,6 +194,10 @@ public void run() {
       LOG.warn(datanode.getDisplayName()
           + " :DataXceiverServer: close exception", ie);
     }
+    if (pool != null) {
+      // close the idle connections
+      pool.shutdown();
+    }
 
     // if in restart prep stage, notify peers before closing them.
     if (datanode.shutdownForUpgrade) {
@@ -201,6 +217,9 @@ public void run() {
     }
     // Close all peers.
     closeAllPeers();
+    if (pool != null) {
+      pool.shutdownNow();
+    }
   }
 
   void kill() {
@@ -224,6 +243,16 @@ synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
     peersXceiver.put(peer, xceiver);
   }
 
+  /**
+   * Set the pool thread running the ops of a peer, or null while the peer
+   * waits for its next op.
+   */
+  synchronized void setPeerThread(Peer peer, Thread t) {
+    if (peers.containsKey(peer)) {
+      peers.put(peer, t);
+    }
+  }
+
   synchronized void closePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
@@ -254,7 +283,10 @@ synchronized void restartNotifyPeers() {
     assert (datanode.shouldRun == true && datanode.shutdownForUpgrade);
     for (Thread t : peers.values()) {
       // interrupt each and every DataXceiver thread.
-      t.interrupt();
+      // A pooled connection waiting for its next op has no thread.
+      if (t != null) {
+        t.interrupt();
+      }
     }
   }
 
@@ -279,6 +311,11 @@ synchronized int getNumPeersXceiver() {
     return peersXceiver.size();
   }
   
+  /** @return the number of pooled threads running ops */
+  int getNumPooledXceivers() {
+    return pool == null ? 0 : pool.getActiveCount();
+  }
+
   synchronized void releasePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
@@ -20,11 +20,14 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -38,6 +41,7 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
@@ -52,6 +56,14 @@
 /**
  * Periodically scans the data directories for block and block metadata files.
  * Reconciles the differences with block information maintained in the dataset.
+ *
+ * With {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY}
+ * set, most scans are incremental: they only list the subdirectories of the
+ * finalized directories in which the volumes added or removed replicas since
+ * the previous scan, and compare the replicas in memory which belong there.
+ * The whole directories are still scanned at a long interval, to find the
+ * changes made by other processes, and when a volume does not know its
+ * changes, as after an unclean shutdown.
  */
 @InterfaceAudience.Private
 public class DirectoryScanner implements Runnable {
@@ -61,6 +73,10 @@ public class DirectoryScanner implements Runnable {
   private final ExecutorService reportCompileThreadPool;
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
+  private final boolean incremental;
+  private final long fullScanPeriodMsecs;
+  private final int throttleLimitMsPerSec;
+  private long lastFullScanMsecs;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
@@ -319,6 +335,22 @@ public long getGenStamp() {
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
 
+    incremental = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_DEFAULT);
+    fullScanPeriodMsecs = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_DEFAULT) * 1000L;
+    throttleLimitMsPerSec = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT);
+    if (throttleLimitMsPerSec <= 0) {
+      throw new HadoopIllegalArgumentException(
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY
+          + " must be positive: " + throttleLimitMsPerSec);
+    }
+    lastFullScanMsecs = Time.monotonicNow();
+
     reportCompileThreadPool = Executors.newFixedThreadPool(threads, 
         new Daemon.DaemonFactory());
     masterThread = new ScheduledThreadPoolExecutor(1,
@@ -423,7 +455,16 @@ void reconcile() throws IOException {
    */
   void scan() {
     clear();
-    Map<String, ScanInfo[]> diskReport = getDiskReport();
+    final long start = Time.monotonicNow();
+    final boolean full = !incremental
+        || start - lastFullScanMsecs >= fullScanPeriodMsecs;
+    if (full) {
+      lastFullScanMsecs = start;
+    }
+    // The directories listed by incremental scans of volumes, per blockpool
+    final Map<String, Map<FsVolumeSpi, IncrementalScan>> incrementalScans =
+        new HashMap<String, Map<FsVolumeSpi, IncrementalScan>>();
+    Map<String, ScanInfo[]> diskReport = getDiskReport(full, incrementalScans);
 
     // Hold FSDataset lock to prevent further changes to the block map
     synchronized(dataset) {
@@ -438,6 +479,11 @@ void scan() {
         
         statsRecord.totalBlocks = blockpoolReport.length;
         List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
+        Map<FsVolumeSpi, IncrementalScan> scanned =
+            incrementalScans.get(bpid);
+        if (scanned != null) {
+          bl = filterScanned(bl, scanned);
+        }
         FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
         Arrays.sort(memReport); // Sort based on blockId
   
@@ -508,6 +554,24 @@ void scan() {
     } //end synchronized
   }
 
+  /**
+   * @return the replicas in memory which the scan of their volume listed:
+   *         all of them for a full scan, or those in the changed
+   *         directories for an incremental scan.
+   */
+  private static List<FinalizedReplica> filterScanned(
+      List<FinalizedReplica> replicas,
+      Map<FsVolumeSpi, IncrementalScan> scanned) {
+    List<FinalizedReplica> result = new LinkedList<FinalizedReplica>();
+    for (FinalizedReplica replica : replicas) {
+      IncrementalScan scan = scanned.get(replica.getVolume());
+      if (scan == null || scan.contains(replica.getBlockId())) {
+        result.add(replica);
+      }
+    }
+    return result;
+  }
+
   /**
    * Block is found on the disk. In-memory block is missing or does not match
    * the block on the disk
@@ -528,10 +592,18 @@ private void addDifference(LinkedList<ScanInfo> diffRecord,
     diffRecord.add(new ScanInfo(blockId, null, null, vol));
   }
 
-  /** Get lists of blocks on the disk sorted by blockId, per blockpool */
-  private Map<String, ScanInfo[]> getDiskReport() {
+  /**
+   * Get lists of blocks on the disk sorted by blockId, per blockpool.
+   * @param full whether to list all the directories of every volume
+   * @param incrementalScans filled with the directories listed by the
+   *                         incremental scans of volumes, per blockpool
+   */
+  private Map<String, ScanInfo[]> getDiskReport(boolean full,
+      Map<String, Map<FsVolumeSpi, IncrementalScan>> incrementalScans) {
+    final long start = Time.monotonicNow();
     ScanInfoPerBlockPool list = new ScanInfoPerBlockPool();
     ScanInfoPerBlockPool[] dirReports = null;
+    ReportCompiler[] compilers = null;
     // First get list of data directories
     try (FsDatasetSpi.FsVolumeReferences volumes =
         dataset.getFsVolumeReferences()) {
@@ -539,13 +611,15 @@ private Map<String, ScanInfo[]> getDiskReport() {
       // Use an array since the threads may return out of order and
       // compilersInProgress#keySet may return out of order as well.
       dirReports = new ScanInfoPerBlockPool[volumes.size()];
+      compilers = new ReportCompiler[volumes.size()];
 
       Map<Integer, Future<ScanInfoPerBlockPool>> compilersInProgress =
           new HashMap<Integer, Future<ScanInfoPerBlockPool>>();
 
       for (int i = 0; i < volumes.size(); i++) {
-        ReportCompiler reportCompiler =
-            new ReportCompiler(datanode, volumes.get(i));
+        ReportCompiler reportCompiler = new ReportCompiler(datanode,
+            volumes.get(i), full, throttleLimitMsPerSec);
+        compilers[i] = reportCompiler;
         Future<ScanInfoPerBlockPool> result =
             reportCompileThreadPool.submit(reportCompiler);
         compilersInProgress.put(i, result);
@@ -570,9 +644,52 @@ private Map<String, ScanInfo[]> getDiskReport() {
         list.addAll(report);
       }
     }
+    long listings = 0;
+    boolean incrementalOnly = !full;
+    if (compilers != null) {
+      for (ReportCompiler compiler : compilers) {
+        listings += compiler.listings;
+        for (Entry<String, IncrementalScan> e :
+            compiler.incrementalScans.entrySet()) {
+          Map<FsVolumeSpi, IncrementalScan> scans =
+              incrementalScans.get(e.getKey());
+          if (scans == null) {
+            scans = new HashMap<FsVolumeSpi, IncrementalScan>();
+            incrementalScans.put(e.getKey(), scans);
+          }
+          scans.put(compiler.volume, e.getValue());
+        }
+        incrementalOnly &= compiler.fullScans == 0;
+      }
+    }
+    final long timeMs = Time.monotonicNow() - start;
+    LOG.info((incrementalOnly ? "Incremental" : "Full")
+        + " directory scan listed " + listings + " directories in " + timeMs
+        + " ms (" + (listings * 1000 / Math.max(1, timeMs))
+        + " listings/s)");
+    if (datanode != null && datanode.getMetrics() != null) {
+      datanode.getMetrics().addDirectoryScan(!incrementalOnly, timeMs,
+          listings);
+    }
     return list.toSortedArrays();
   }
 
+  /** The directories listed by the incremental scan of a blockpool. */
+  private static class IncrementalScan {
+    private final File finalizedDir;
+    private final Set<File> dirs;
+
+    IncrementalScan(File finalizedDir, Collection<File> dirs) {
+      this.finalizedDir = finalizedDir;
+      this.dirs = new HashSet<File>(dirs);
+    }
+
+    /** @return whether a finalized replica belongs to a listed directory */
+    boolean contains(long blockId) {
+      return dirs.contains(DatanodeUtil.idToBlockDir(finalizedDir, blockId));
+    }
+  }
+
   private static boolean isBlockMetaFile(String blockId, String metaFile) {
     return metaFile.startsWith(blockId)
         && metaFile.endsWith(Block.METADATA_EXTENSION);
@@ -582,30 +699,80 @@ private static class ReportCompiler
   implements Callable<ScanInfoPerBlockPool> {
     private final FsVolumeSpi volume;
     private final DataNode datanode;
-
-    public ReportCompiler(DataNode datanode, FsVolumeSpi volume) {
+    private final boolean full;
+    private final int throttleLimitMsPerSec;
+    /** The incremental scans of the volume, by blockpool. */
+    final Map<String, IncrementalScan> incrementalScans =
+        new HashMap<String, IncrementalScan>();
+    /** The number of blockpools scanned in full. */
+    int fullScans = 0;
+    /** The number of directories listed. */
+    long listings = 0;
+    /** The start of the current throttling period. */
+    private long periodStart;
+
+    public ReportCompiler(DataNode datanode, FsVolumeSpi volume, boolean full,
+        int throttleLimitMsPerSec) {
       this.datanode = datanode;
       this.volume = volume;
+      this.full = full;
+      this.throttleLimitMsPerSec = throttleLimitMsPerSec;
     }
 
     @Override
     public ScanInfoPerBlockPool call() throws Exception {
+      periodStart = Time.monotonicNow();
       String[] bpList = volume.getBlockPoolList();
       ScanInfoPerBlockPool result = new ScanInfoPerBlockPool(bpList.length);
       for (String bpid : bpList) {
         LinkedList<ScanInfo> report = new LinkedList<ScanInfo>();
         File bpFinalizedDir = volume.getFinalizedDir(bpid);
-        result.put(bpid,
-            compileReport(volume, bpFinalizedDir, bpFinalizedDir, report));
+        // Start tracking the changes anew before the directories are listed,
+        // so that a change made during the scan is listed again next time.
+        Collection<File> changedDirs =
+            volume.pollChangedFinalizedDirs(bpid);
+        if (full || changedDirs == null) {
+          fullScans++;
+          compileReport(volume, bpFinalizedDir, bpFinalizedDir, report);
+        } else {
+          incrementalScans.put(bpid,
+              new IncrementalScan(bpFinalizedDir, changedDirs));
+          for (File dir : changedDirs) {
+            if (dir.isDirectory()) {
+              compileReport(volume, bpFinalizedDir, dir, report);
+            }
+          }
+        }
+        result.put(bpid, report);
       }
       return result;
     }
 
+    /**
+     * Sleep for the rest of the second once the scan has listed directories
+     * for longer than the throttle limit in it.
+     */
+    private void throttle() throws InterruptedException {
+      if (throttleLimitMsPerSec >= 1000) {
+        return;
+      }
+      final long elapsed = Time.monotonicNow() - periodStart;
+      if (elapsed >= throttleLimitMsPerSec) {
+        if (elapsed < 1000) {
+          Thread.sleep(1000 - elapsed);
+        }
+        periodStart = Time.monotonicNow();
+      }
+    }
+
     /** Compile list {@link ScanInfo} for the blocks in the directory <dir> */
     private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
-        File bpFinalizedDir, File dir, LinkedList<ScanInfo> report) {
+        File bpFinalizedDir, File dir, LinkedList<ScanInfo> report)
+        throws InterruptedException {
+      throttle();
       File[] files;
       try {
+        listings++;
         files = FileUtil.listFiles(dir);
       } catch (IOException ioe) {
         LOG.warn("Exception occured while compiling report: ", ioe);
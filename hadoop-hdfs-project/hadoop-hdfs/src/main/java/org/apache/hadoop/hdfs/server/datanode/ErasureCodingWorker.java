@@ -0,0 +1,457 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CHECKSUM_TYPE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CHECKSUM_TYPE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_THREADS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_THREADS_KEY;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.BlockReader;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.RemoteBlockReader2;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.hdfs.server.protocol.BlockECReconstructionCommand.BlockECReconstructionInfo;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.erasurecode.CodecUtil;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureDecoder;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.DataChecksum;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reconstructs the lost internal blocks of striped block groups on this
+ * DataNode, as scheduled by the NameNode in place of re-replication. A task
+ * reads the cells of each stripe from as many live internal blocks of the
+ * group as its data blocks, in parallel, decodes the cell of the lost block
+ * and stores the block as a new finalized replica, which is then reported to
+ * the NameNode like a replicated one.
+ */
+@InterfaceAudience.Private
+public class ErasureCodingWorker {
+  private static final Log LOG = DataNode.LOG;
+
+  private final DataNode datanode;
+  private final Configuration conf;
+  private final ThreadPoolExecutor reconstructionPool;
+  /** The pool reading the cells of the stripes of all the tasks */
+  private final ThreadPoolExecutor readPool;
+
+  ErasureCodingWorker(Configuration conf, DataNode datanode) {
+    this.datanode = datanode;
+    this.conf = conf;
+    final int threads = conf.getInt(DFS_DN_EC_RECONSTRUCTION_THREADS_KEY,
+        DFS_DN_EC_RECONSTRUCTION_THREADS_DEFAULT);
+    Preconditions.checkArgument(threads > 0,
+        DFS_DN_EC_RECONSTRUCTION_THREADS_KEY + " should be positive");
+    reconstructionPool = newPool(threads, "ECReconstruction-%d");
+    // a task reads at most one internal block per other index of its group
+    readPool = newPool(threads * HdfsConstants.MAX_BLOCKS_IN_GROUP,
+        "ECStripedRead-%d");
+  }
+
+  private static ThreadPoolExecutor newPool(int threads, String nameFormat) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat(nameFormat).build());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /** Queue a reconstruction task for each of the given internal blocks. */
+  public void processErasureCodingTasks(
+      Collection<BlockECReconstructionInfo> ecTasks) {
+    for (BlockECReconstructionInfo info : ecTasks) {
+      try {
+        reconstructionPool.submit(new ReconstructionTask(info));
+      } catch (Throwable e) {
+        LOG.warn("Failed to queue the reconstruction of "
+            + info.getExtendedBlock(), e);
+      }
+    }
+  }
+
+  void shutdown() {
+    reconstructionPool.shutdownNow();
+    readPool.shutdownNow();
+  }
+
+  /** @return the number of queued and running reconstruction tasks */
+  int getNumPendingTasks() {
+    return reconstructionPool.getQueue().size()
+        + reconstructionPool.getActiveCount();
+  }
+
+  /** Reads the cells of a live internal block of the group. */
+  private class StripedReader {
+    private final int index;
+    private final DatanodeInfo source;
+    private final ExtendedBlock block;
+    private final byte[] buffer;
+    private BlockReader reader;
+
+    StripedReader(int index, DatanodeInfo source, ExtendedBlock block,
+        int cellSize) {
+      this.index = index;
+      this.source = source;
+      this.block = block;
+      this.buffer = new byte[cellSize];
+    }
+
+    /** Connect to the source to read the block from the given offset. */
+    void open(long offset) throws IOException {
+      if (offset >= block.getNumBytes()) {
+        // the rest of the block is the zero padding of its last stripe
+        return;
+      }
+      Token<BlockTokenIdentifier> token = BlockTokenSecretManager.DUMMY_TOKEN;
+      if (datanode.isBlockTokenEnabled) {
+        token = datanode.blockPoolTokenSecretManager.generateToken(block,
+            EnumSet.of(BlockTokenIdentifier.AccessMode.READ));
+      }
+      final DNConf dnConf = datanode.getDnConf();
+      final InetSocketAddress addr = NetUtils.createSocketAddr(
+          source.getXferAddr(dnConf.connectToDnViaHostname));
+      Socket sock = null;
+      Peer peer = null;
+      try {
+        sock = datanode.newSocket();
+        NetUtils.connect(sock, addr, dnConf.socketTimeout);
+        peer = TcpPeerServer.peerFromSocketAndKey(datanode.saslClient, sock,
+            datanode.getDataEncryptionKeyFactoryForBlock(block), token,
+            source);
+        peer.setReadTimeout(dnConf.socketTimeout);
+        reader = RemoteBlockReader2.newBlockReader("dummy", block, token,
+            offset, block.getNumBytes() - offset, true, "", peer, source,
+            null, new CachingStrategy(true, dnConf.readaheadLength));
+      } catch (IOException e) {
+        IOUtils.cleanup(LOG, peer);
+        IOUtils.closeSocket(sock);
+        throw e;
+      }
+    }
+
+    /**
+     * Read the cell at the given offset of the block into the buffer, padded
+     * with zeros to the given length.
+     */
+    void readCell(long offset, int len) throws IOException {
+      int toRead = (int) Math.max(0,
+          Math.min(len, block.getNumBytes() - offset));
+      if (toRead > 0) {
+        reader.readFully(buffer, 0, toRead);
+      }
+      Arrays.fill(buffer, toRead, len, (byte) 0);
+    }
+
+    void close() {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          LOG.debug("Failed to close the reader of " + this, e);
+        }
+        reader = null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return block + " on " + source;
+    }
+  }
+
+  /** Reconstructs one internal block of a group on this DataNode. */
+  private class ReconstructionTask implements Runnable {
+    private final ExtendedBlock blockGroup;
+    private final ErasureCodingPolicy ecPolicy;
+    private final DatanodeInfo[] sources;
+    private final byte[] liveIndices;
+    private final int targetIndex;
+    private final StorageType targetStorageType;
+
+    ReconstructionTask(BlockECReconstructionInfo info) {
+      Preconditions.checkArgument(info.getTargetBlockIndices().length == 1,
+          "Only one internal block is reconstructed per task");
+      this.blockGroup = info.getExtendedBlock();
+      this.ecPolicy = info.getErasureCodingPolicy();
+      this.sources = info.getSourceDnInfos();
+      this.liveIndices = info.getLiveBlockIndices();
+      this.targetIndex = info.getTargetBlockIndices()[0];
+      this.targetStorageType = info.getTargetStorageTypes()[0];
+    }
+
+    @Override
+    public void run() {
+      datanode.xmitsInProgress.getAndIncrement();
+      try {
+        reconstruct();
+        datanode.getMetrics().incrECReconstructionTasks();
+      } catch (Throwable e) {
+        datanode.getMetrics().incrECFailedReconstructionTasks();
+        LOG.warn("Failed to reconstruct the internal block " + targetIndex
+            + " of " + blockGroup, e);
+      } finally {
+        datanode.xmitsInProgress.getAndDecrement();
+      }
+    }
+
+    private void reconstruct() throws IOException {
+      final int cellSize = ecPolicy.getCellSize();
+      final int dataBlkNum = ecPolicy.getNumDataUnits();
+      final long groupLen = blockGroup.getNumBytes();
+      // the longest internal blocks, which set the number of stripes
+      final long maxLen =
+          StripedBlockUtil.getInternalBlockLength(groupLen, ecPolicy, 0);
+      final ExtendedBlock target = StripedBlockUtil.constructInternalBlock(
+          blockGroup, ecPolicy, targetIndex);
+      final long targetLen = target.getNumBytes();
+
+      // The data blocks without any data, in a group shorter than a stripe,
+      // are known to be zeros and need not be read.
+      final byte[][] inputs = new byte[ecPolicy.getNumAllUnits()][];
+      final byte[] zeros = new byte[cellSize];
+      int toOpen = dataBlkNum;
+      for (int i = 0; i < dataBlkNum; i++) {
+        if (StripedBlockUtil.getInternalBlockLength(groupLen, ecPolicy, i)
+            == 0) {
+          inputs[i] = zeros;
+          toOpen--;
+        }
+      }
+      final List<StripedReader> candidates = new ArrayList<StripedReader>();
+      final boolean[] seen = new boolean[inputs.length];
+      for (int i = 0; i < sources.length; i++) {
+        int index = liveIndices[i];
+        if (index != targetIndex && inputs[index] == null && !seen[index]) {
+          seen[index] = true;
+          candidates.add(new StripedReader(index, sources[i],
+              StripedBlockUtil.constructInternalBlock(blockGroup, ecPolicy,
+                  index), cellSize));
+        }
+      }
+      final Iterator<StripedReader> spares = candidates.iterator();
+      final List<StripedReader> active = new ArrayList<StripedReader>();
+      try {
+        for (int i = 0; i < toOpen; i++) {
+          active.add(openNext(spares, 0));
+        }
+        writeTarget(target, targetLen, maxLen, inputs, active, spares);
+      } finally {
+        for (StripedReader r : active) {
+          r.close();
+        }
+      }
+      LOG.info("Reconstructed the internal block " + targetIndex + " of "
+          + blockGroup + " (numBytes=" + targetLen + ")");
+    }
+
+    /**
+     * Decode the target block stripe by stripe and store it as a finalized
+     * replica, with its checksums.
+     */
+    private void writeTarget(ExtendedBlock target, long targetLen,
+        long maxLen, byte[][] inputs, List<StripedReader> active,
+        Iterator<StripedReader> spares) throws IOException {
+      final int cellSize = ecPolicy.getCellSize();
+      final RawErasureDecoder decoder =
+          CodecUtil.createRawDecoder(conf, ecPolicy.getSchema());
+      final DataChecksum checksum = newChecksum(cellSize);
+      final int checksumSize = checksum.getChecksumSize();
+      final int bytesPerChecksum = checksum.getBytesPerChecksum();
+      final byte[] output = new byte[cellSize];
+      final byte[] sums =
+          new byte[(cellSize / bytesPerChecksum + 1) * checksumSize];
+      final int[] offsets = new int[inputs.length];
+      final int[] erased = new int[] {targetIndex};
+
+      final FsDatasetSpi<?> dataset = datanode.getFSDataset();
+      boolean finalized = false;
+      String storageUuid;
+      try (ReplicaHandler handler =
+               dataset.createTemporary(targetStorageType, target)) {
+        final ReplicaInPipelineInterface replica = handler.getReplica();
+        storageUuid = replica.getStorageUuid();
+        try {
+          final ReplicaOutputStreams streams =
+              replica.createStreams(true, checksum);
+          try {
+            final OutputStream dataOut = streams.getDataOut();
+            final DataOutputStream checksumOut = new DataOutputStream(
+                new BufferedOutputStream(streams.getChecksumOut(),
+                    DFSUtil.getSmallBufferSize(conf)));
+            BlockMetadataHeader.writeHeader(checksumOut, checksum);
+            byte[] lastChecksum = new byte[0];
+            for (long pos = 0; pos < targetLen; pos += cellSize) {
+              final int len = (int) Math.min(cellSize, maxLen - pos);
+              readStripe(active, spares, pos, len, inputs);
+              decoder.decode(inputs, offsets, len, erased,
+                  new byte[][] {output}, new int[] {0});
+              final int toWrite = (int) Math.min(len, targetLen - pos);
+              dataOut.write(output, 0, toWrite);
+              final int numChunks =
+                  (toWrite + bytesPerChecksum - 1) / bytesPerChecksum;
+              checksum.calculateChunkedSums(output, 0, toWrite, sums, 0);
+              checksumOut.write(sums, 0, numChunks * checksumSize);
+              lastChecksum = Arrays.copyOfRange(sums,
+                  (numChunks - 1) * checksumSize, numChunks * checksumSize);
+            }
+            checksumOut.flush();
+            replica.setNumBytes(targetLen);
+            replica.setBytesAcked(targetLen);
+            replica.setLastChecksumAndDataLen(targetLen, lastChecksum);
+          } finally {
+            streams.close();
+          }
+          dataset.finalizeBlock(target);
+          finalized = true;
+        } finally {
+          if (!finalized) {
+            try {
+              dataset.unfinalizeBlock(target);
+            } catch (IOException e) {
+              LOG.warn("Failed to clean up " + target, e);
+            }
+          }
+        }
+      }
+      datanode.closeBlock(target, DataNode.EMPTY_DEL_HINT, storageUuid);
+    }
+
+    /**
+     * Read the cells at the given offset of the active blocks in parallel.
+     * A block failing to be read is replaced by one of the spare blocks.
+     */
+    private void readStripe(List<StripedReader> active,
+        Iterator<StripedReader> spares, final long offset, final int len,
+        byte[][] inputs) throws IOException {
+      final List<Future<Void>> reads = new ArrayList<Future<Void>>();
+      for (final StripedReader r : active) {
+        reads.add(readPool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            r.readCell(offset, len);
+            return null;
+          }
+        }));
+      }
+      final List<StripedReader> failed = new ArrayList<StripedReader>();
+      for (int i = 0; i < reads.size(); i++) {
+        try {
+          reads.get(i).get();
+        } catch (ExecutionException e) {
+          LOG.warn("Failed to read " + active.get(i), e.getCause());
+          failed.add(active.get(i));
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException(
+              "Interrupted while reconstructing " + blockGroup);
+        }
+      }
+      for (StripedReader r : failed) {
+        r.close();
+        inputs[r.index] = null;
+        active.remove(r);
+        while (true) {
+          final StripedReader spare = openNext(spares, offset);
+          try {
+            spare.readCell(offset, len);
+            active.add(spare);
+            break;
+          } catch (IOException e) {
+            LOG.warn("Failed to read " + spare, e);
+            spare.close();
+          }
+        }
+      }
+      for (StripedReader r : active) {
+        inputs[r.index] = r.buffer;
+      }
+    }
+
+    /** Open the next spare block which can be read from the offset. */
+    private StripedReader openNext(Iterator<StripedReader> spares,
+        long offset) throws IOException {
+      while (spares.hasNext()) {
+        final StripedReader r = spares.next();
+        try {
+          r.open(offset);
+          return r;
+        } catch (IOException e) {
+          LOG.warn("Failed to connect to " + r, e);
+        }
+      }
+      throw new IOException("Not enough live internal blocks of "
+          + blockGroup + " to reconstruct the internal block " + targetIndex);
+    }
+  }
+
+  /**
+   * @return the checksum of the reconstructed blocks. Each stripe is written
+   * separately, so its chunks must not span cells.
+   */
+  private DataChecksum newChecksum(int cellSize) {
+    int bytesPerChecksum = conf.getInt(DFS_BYTES_PER_CHECKSUM_KEY,
+        DFS_BYTES_PER_CHECKSUM_DEFAULT);
+    if (cellSize % bytesPerChecksum != 0) {
+      bytesPerChecksum = cellSize;
+    }
+    return DataChecksum.newDataChecksum(DataChecksum.Type.valueOf(
+        conf.get(DFS_CHECKSUM_TYPE_KEY, DFS_CHECKSUM_TYPE_DEFAULT)),
+        bytesPerChecksum);
+  }
+}
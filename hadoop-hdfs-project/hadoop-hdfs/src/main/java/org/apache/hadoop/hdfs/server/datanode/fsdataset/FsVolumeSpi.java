@@ -21,6 +21,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.Collection;
 
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -55,6 +56,17 @@ public interface FsVolumeSpi {
 
   /** @return the directory for the finalized blocks in the block pool. */
   File getFinalizedDir(String bpid) throws IOException;
+
+  /**
+   * Get the subdirectories of the finalized directory of a block pool in
+   * which replicas were added or removed since the previous call, and start
+   * tracking the changes anew.
+   *
+   * @return the changed directories, or null if the changes are not known,
+   *         such as after an unclean shutdown, and the whole finalized
+   *         directory has to be scanned.
+   */
+  Collection<File> pollChangedFinalizedDirs(String bpid) throws IOException;
   
   StorageType getStorageType();
 
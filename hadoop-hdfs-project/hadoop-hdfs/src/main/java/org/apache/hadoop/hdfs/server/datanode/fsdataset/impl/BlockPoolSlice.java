@@ -28,7 +28,10 @@
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Scanner;
 
 import org.apache.commons.io.FileUtils;
@@ -85,6 +88,19 @@ class BlockPoolSlice {
   private final boolean deleteDuplicateReplicas;
   private static final String REPLICA_CACHE_FILE = "replicas";
   private final long replicaCacheExpiry = 5*60*1000;
+  private static final String CHANGED_DIRS_FILE = "changedDirs";
+  /** The number of subdirectories of the finalized directory. */
+  private static final int NUM_BLOCK_DIRS = 1 << 16;
+
+  /**
+   * The subdirectories of the finalized directory in which replicas were
+   * added or removed since the last directory scan, indexed by the bits of
+   * the block IDs which {@link DatanodeUtil#idToBlockDir} maps to them.
+   * Guarded by itself.
+   */
+  private final BitSet changedDirs = new BitSet(NUM_BLOCK_DIRS);
+  /** Whether every change since the last directory scan is in changedDirs */
+  private boolean changedDirsKnown;
 
   // TODO:FEDERATION scalability issue - a thread per DU is needed
   private final DU dfsUsage;
@@ -141,6 +157,7 @@ class BlockPoolSlice {
     // block until the initial du command completes.
     this.dfsUsage = new DU(bpDir, conf, loadDfsUsed());
     this.dfsUsage.start();
+    this.changedDirsKnown = loadChangedDirs();
 
     // Make the dfs usage to be saved during shutdown.
     ShutdownHookManager.get().addShutdownHook(
@@ -255,6 +272,119 @@ void saveDfsUsed() {
     }
   }
 
+  private static int getBlockDirIndex(long blockId) {
+    // the two levels of subdirectories, as in DatanodeUtil#idToBlockDir
+    return (int) ((blockId >> 8) & (NUM_BLOCK_DIRS - 1));
+  }
+
+  /**
+   * Record that a replica was added to or removed from the finalized
+   * directory, so that the next incremental directory scan lists its
+   * subdirectory.
+   */
+  void markChangedDir(long blockId) {
+    synchronized (changedDirs) {
+      changedDirs.set(getBlockDirIndex(blockId));
+    }
+  }
+
+  /**
+   * Get the subdirectories of the finalized directory changed since the
+   * previous call, and start tracking the changes anew.
+   * @return the changed directories, or null if the changes are not known.
+   */
+  List<File> pollChangedDirs() {
+    synchronized (changedDirs) {
+      List<File> dirs = null;
+      if (changedDirsKnown) {
+        dirs = new ArrayList<File>(changedDirs.cardinality());
+        for (int i = changedDirs.nextSetBit(0); i >= 0;
+             i = changedDirs.nextSetBit(i + 1)) {
+          dirs.add(DatanodeUtil.idToBlockDir(finalizedDir, (long) i << 8));
+        }
+      }
+      changedDirs.clear();
+      changedDirsKnown = true;
+      return dirs;
+    }
+  }
+
+  /**
+   * Read in the changed subdirectories saved at the last shutdown. The file
+   * is deleted after reading, so that after an unclean shutdown, when the
+   * changes since are not known, the whole directory is scanned.
+   * @return whether the changed subdirectories were read.
+   */
+  private boolean loadChangedDirs() {
+    File inFile = new File(currentDir, CHANGED_DIRS_FILE);
+    Scanner sc;
+    try {
+      sc = new Scanner(inFile, "UTF-8");
+    } catch (FileNotFoundException fnfe) {
+      return false;
+    }
+    BitSet dirs = new BitSet(NUM_BLOCK_DIRS);
+    try {
+      // the indexes of the directories are followed by their count, so that
+      // truncated writes won't be valid.
+      int last = -1;
+      boolean valid = false;
+      while (sc.hasNextInt()) {
+        if (last >= 0) {
+          dirs.set(last);
+        }
+        last = sc.nextInt();
+        valid = last >= 0 && last < NUM_BLOCK_DIRS;
+        if (!valid) {
+          break;
+        }
+      }
+      if (!valid || sc.hasNext() || last != dirs.cardinality()) {
+        FsDatasetImpl.LOG.warn("Ignoring the corrupt " + inFile);
+        return false;
+      }
+      synchronized (changedDirs) {
+        changedDirs.or(dirs);
+      }
+      return true;
+    } finally {
+      sc.close();
+      if (!inFile.delete()) {
+        FsDatasetImpl.LOG.warn("Failed to delete " + inFile);
+      }
+    }
+  }
+
+  /**
+   * Write the changed subdirectories to a file, for the first directory
+   * scan after a restart.
+   */
+  private void saveChangedDirs() {
+    File outFile = new File(currentDir, CHANGED_DIRS_FILE);
+    synchronized (changedDirs) {
+      if (!changedDirsKnown) {
+        return;
+      }
+      try (Writer out = new OutputStreamWriter(
+          new FileOutputStream(outFile), "UTF-8")) {
+        for (int i = changedDirs.nextSetBit(0); i >= 0;
+             i = changedDirs.nextSetBit(i + 1)) {
+          out.write(Integer.toString(i));
+          out.write(' ');
+        }
+        out.write(Integer.toString(changedDirs.cardinality()));
+        out.flush();
+      } catch (IOException ioe) {
+        // The next scan will be a full one without the file.
+        FsDatasetImpl.LOG.warn("Failed to write the changed directories to "
+            + outFile, ioe);
+        if (outFile.exists() && !outFile.delete()) {
+          FsDatasetImpl.LOG.warn("Failed to delete " + outFile);
+        }
+      }
+    }
+  }
+
   /**
    * Temporary files. They get moved to the finalized block directory when
    * the block is finalized.
@@ -283,6 +413,7 @@ File addFinalizedBlock(Block b, File f) throws IOException {
     File blockFile = FsDatasetImpl.moveBlockFiles(b, f, blockDir);
     File metaFile = FsDatasetUtil.getMetaFile(blockFile, b.getGenerationStamp());
     dfsUsage.incDfsUsed(b.getNumBytes()+metaFile.length());
+    markChangedDir(b.getBlockId());
     return blockFile;
   }
 
@@ -299,6 +430,7 @@ File activateSavedReplica(Block b, File metaFile, File blockFile)
     FsDatasetImpl.LOG.info("Moved " + blockFile + " to " + targetBlockFile);
     FileUtils.moveFile(metaFile, targetMetaFile);
     FsDatasetImpl.LOG.info("Moved " + metaFile + " to " + targetMetaFile);
+    markChangedDir(b.getBlockId());
     return targetBlockFile;
   }
 
@@ -695,6 +827,7 @@ void shutdown(BlockListAsLongs blocksListToPersist) {
     saveReplicas(blocksListToPersist);
     saveDfsUsed();
     dfsUsedSaved = true;
+    saveChangedDirs();
     dfsUsage.shutdown();
   }
 
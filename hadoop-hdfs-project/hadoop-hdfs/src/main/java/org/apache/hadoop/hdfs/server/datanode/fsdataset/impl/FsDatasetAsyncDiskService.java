@@ -293,6 +293,7 @@ public void run() {
         }
         volume.onBlockFileDeletion(block.getBlockPoolId(), blockLength);
         volume.onMetaFileDeletion(block.getBlockPoolId(), metaLength);
+        volume.markChangedDir(block.getBlockPoolId(), block.getBlockId());
         LOG.info("Deleted " + block.getBlockPoolId() + " "
             + block.getLocalBlock() + " file " + blockFile);
       }
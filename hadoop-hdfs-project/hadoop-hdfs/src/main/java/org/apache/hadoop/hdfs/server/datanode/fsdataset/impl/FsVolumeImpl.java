@@ -27,6 +27,7 @@
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -398,6 +399,23 @@ public File getFinalizedDir(String bpid) throws IOException {
     return getBlockPoolSlice(bpid).getFinalizedDir();
   }
 
+  @Override
+  public Collection<File> pollChangedFinalizedDirs(String bpid)
+      throws IOException {
+    return getBlockPoolSlice(bpid).pollChangedDirs();
+  }
+
+  /**
+   * Record that a finalized replica was added to or removed from the block
+   * pool, for the incremental directory scans.
+   */
+  void markChangedDir(String bpid, long blockId) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.markChangedDir(blockId);
+    }
+  }
+
   /**
    * Make a deep copy of the list of currently active BPIDs
    */
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+
+/**
+ * Locks of the replicas of a {@link FsDatasetImpl}, striped by block ID.
+ *
+ * An op on a replica holds the lock of its block ID for the whole op,
+ * including the file creation and renames on its volume, while the dataset
+ * lock is only taken for short updates of the shared state. A slow disk then
+ * holds up the ops on the blocks of the same stripe, instead of every op of
+ * the DataNode.
+ *
+ * The lock of a replica is always taken before the dataset lock, never
+ * while holding it.
+ */
+class ReplicaLocks {
+  /** A held lock of a stripe, released by {@link #close()}. */
+  static class ReplicaLock implements AutoCloseable {
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Override
+    public void close() {
+      lock.unlock();
+    }
+  }
+
+  private final ReplicaLock[] stripes;
+  /** Null when the DataNode is mocked in unit tests. */
+  private final DataNodeMetrics metrics;
+
+  ReplicaLocks(int numStripes, DataNodeMetrics metrics) {
+    if (numStripes <= 0) {
+      throw new HadoopIllegalArgumentException(
+          "The number of replica lock stripes must be positive: "
+          + numStripes);
+    }
+    this.stripes = new ReplicaLock[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new ReplicaLock();
+    }
+    this.metrics = metrics;
+  }
+
+  private ReplicaLock getStripe(long blockId) {
+    final int i = (int) (blockId % stripes.length);
+    return stripes[i < 0 ? i + stripes.length : i];
+  }
+
+  /**
+   * Lock the replica of a block, waiting for the ops on the other blocks of
+   * the stripe. The time waited is recorded in the DataNode metrics.
+   */
+  ReplicaLock lock(long blockId) {
+    final ReplicaLock stripe = getStripe(blockId);
+    if (!stripe.lock.tryLock()) {
+      final long start = System.nanoTime();
+      stripe.lock.lock();
+      if (metrics != null) {
+        metrics.addReplicaLockWaitNanos(System.nanoTime() - start);
+      }
+    }
+    return stripe;
+  }
+
+  /**
+   * Lock the replica of a block if no other thread holds its stripe.
+   * @return the held lock, or null if the stripe is busy.
+   */
+  ReplicaLock tryLock(long blockId) {
+    final ReplicaLock stripe = getStripe(blockId);
+    return stripe.lock.tryLock() ? stripe : null;
+  }
+
+  /** @return whether the current thread holds the lock of the replica */
+  boolean isLockedByCurrentThread(long blockId) {
+    return getStripe(blockId).lock.isHeldByCurrentThread();
+  }
+
+  int getNumStripes() {
+    return stripes.length;
+  }
+}
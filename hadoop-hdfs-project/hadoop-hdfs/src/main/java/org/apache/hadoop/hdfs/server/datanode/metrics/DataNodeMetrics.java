@@ -60,6 +60,10 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong blocksRead;
   @Metric MutableCounterLong blocksReplicated;
   @Metric MutableCounterLong blocksRemoved;
+  @Metric("Count of erasure coding reconstruction tasks")
+  MutableCounterLong ecReconstructionTasks;
+  @Metric("Count of failed erasure coding reconstruction tasks")
+  MutableCounterLong ecFailedReconstructionTasks;
   @Metric MutableCounterLong blocksVerified;
   @Metric MutableCounterLong blockVerificationFailures;
   @Metric MutableCounterLong blocksCached;
@@ -123,6 +127,25 @@ public class DataNodeMetrics {
   final MutableQuantiles[] sendDataPacketBlockedOnNetworkNanosQuantiles;
   @Metric MutableRate sendDataPacketTransferNanos;
   final MutableQuantiles[] sendDataPacketTransferNanosQuantiles;
+  @Metric("Time a data transfer op waited for a pooled thread in ns")
+  MutableRate xceiverQueueTimeNanos;
+  final MutableQuantiles[] xceiverQueueTimeNanosQuantiles;
+  @Metric("Connections closed since the data transfer op queue was full")
+  MutableCounterLong xceiverPoolRejections;
+  @Metric("Time an op waited for the lock of a replica held by another op in ns")
+  MutableRate replicaLockWaitNanos;
+  @Metric("Time of a full scan of the data directories in ms")
+  MutableRate directoryScanFullMs;
+  @Metric("Time of a scan of the changed data directories only in ms")
+  MutableRate directoryScanIncrementalMs;
+  @Metric("Directories listed by the directory scanner")
+  MutableCounterLong directoryScanListings;
+  @Metric("Packets of client reads served from the block read cache")
+  MutableCounterLong blockReadCacheHits;
+  @Metric("Packets of client reads not found in the block read cache")
+  MutableCounterLong blockReadCacheMisses;
+  @Metric("Ranges evicted from the block read cache")
+  MutableCounterLong blockReadCacheEvictions;
 
   final MetricsRegistry registry = new MetricsRegistry("datanode");
   final String name;
@@ -140,6 +163,7 @@ public DataNodeMetrics(String name, String sessionId, int[] intervals,
     fsyncNanosQuantiles = new MutableQuantiles[len];
     sendDataPacketBlockedOnNetworkNanosQuantiles = new MutableQuantiles[len];
     sendDataPacketTransferNanosQuantiles = new MutableQuantiles[len];
+    xceiverQueueTimeNanosQuantiles = new MutableQuantiles[len];
     ramDiskBlocksEvictionWindowMsQuantiles = new MutableQuantiles[len];
     ramDiskBlocksLazyPersistWindowMsQuantiles = new MutableQuantiles[len];
     
@@ -162,6 +186,10 @@ public DataNodeMetrics(String name, String sessionId, int[] intervals,
           "sendDataPacketTransferNanos" + interval + "s", 
           "Time reading from disk and writing to network while sending " +
           "a packet in ns", "ops", "latency", interval);
+      xceiverQueueTimeNanosQuantiles[i] = registry.newQuantiles(
+          "xceiverQueueTimeNanos" + interval + "s",
+          "Time a data transfer op waited for a pooled thread in ns",
+          "ops", "latency", interval);
       ramDiskBlocksEvictionWindowMsQuantiles[i] = registry.newQuantiles(
           "ramDiskBlocksEvictionWindows" + interval + "s",
           "Time between the RamDisk block write and eviction in ms",
@@ -215,6 +243,14 @@ public void incrBlocksReplicated() {
     blocksReplicated.incr();
   }
 
+  public void incrECReconstructionTasks() {
+    ecReconstructionTasks.incr();
+  }
+
+  public void incrECFailedReconstructionTasks() {
+    ecFailedReconstructionTasks.incr();
+  }
+
   public void incrBlocksWritten() {
     blocksWritten.incr();
   }
@@ -356,6 +392,42 @@ public void addSendDataPacketTransferNanos(long latencyNanos) {
     }
   }
 
+  public void addXceiverQueueTimeNanos(long latencyNanos) {
+    xceiverQueueTimeNanos.add(latencyNanos);
+    for (MutableQuantiles q : xceiverQueueTimeNanosQuantiles) {
+      q.add(latencyNanos);
+    }
+  }
+
+  public void incrXceiverPoolRejections() {
+    xceiverPoolRejections.incr();
+  }
+
+  public void addReplicaLockWaitNanos(long waitNanos) {
+    replicaLockWaitNanos.add(waitNanos);
+  }
+
+  public void addDirectoryScan(boolean full, long timeMs, long listings) {
+    if (full) {
+      directoryScanFullMs.add(timeMs);
+    } else {
+      directoryScanIncrementalMs.add(timeMs);
+    }
+    directoryScanListings.incr(listings);
+  }
+
+  public void incrBlockReadCacheHits() {
+    blockReadCacheHits.incr();
+  }
+
+  public void incrBlockReadCacheMisses() {
+    blockReadCacheMisses.incr();
+  }
+
+  public void incrBlockReadCacheEvictions() {
+    blockReadCacheEvictions.incr();
+  }
+
   public void incrRamDiskBlocksWrite() {
     ramDiskBlocksWrite.incr();
   }
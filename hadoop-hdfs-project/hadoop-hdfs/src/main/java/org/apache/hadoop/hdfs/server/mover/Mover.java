@@ -370,6 +370,10 @@ private void processFile(String fullPath, HdfsLocatedFileStatus status,
           continue;
         }
         LocatedBlock lb = lbs.get(i);
+        if (lb.isStriped()) {
+          // the internal blocks of a group are not moved yet
+          continue;
+        }
         final StorageTypeDiff diff = new StorageTypeDiff(types,
             lb.getStorageTypes());
         if (!diff.removeOverlap(true)) {
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot.CURRENT_STATE_ID;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo;
+import org.apache.hadoop.hdfs.server.namenode.INode.ReclaimContext;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.util.ChunkedArrayList;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.ExitUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Reclaims the inodes and blocks of the directories removed by recursive
+ * deletes in the background.
+ * <p>
+ * A large directory is detached from the namespace, and its delete logged,
+ * holding the {@link FSNamesystem} lock once, see
+ * {@link FSDirDeleteOp#delete}. The quota usage of the whole subtree is
+ * taken off its ancestors at the same time. The subtree is then walked
+ * depth-first here, removing at most a batch of inodes from the inode map
+ * each time the lock is held. The blocks collected by a batch are removed
+ * from the block manager incrementally once the lock is released, as for
+ * synchronous deletes, while the next batch is reclaimed.
+ * <p>
+ * The inodes of a detached subtree stay in the inode map until they are
+ * reclaimed, but are not resolved by their id any more, see
+ * {@link #isDetached}. The leases of its files are removed, and its blocks
+ * are not replicated, at the time it is detached.
+ * <p>
+ * The detached subtrees are only held in memory. The deletes are replayed
+ * synchronously from the edit log after a restart, and the pending subtrees
+ * are reclaimed before the namespace is saved or the NameNode leaves the
+ * active state.
+ */
+@InterfaceAudience.Private
+class BackgroundDeleter implements Runnable {
+  static final Logger LOG = LoggerFactory.getLogger(BackgroundDeleter.class);
+
+  /** A directory being reclaimed and the position of its next child. */
+  private static class Cursor {
+    private final INodeDirectory dir;
+    private int next = 0;
+
+    Cursor(INodeDirectory dir) {
+      this.dir = dir;
+    }
+  }
+
+  private final FSNamesystem fsn;
+  private final int batchSize;
+
+  /** The detached directories not reclaimed yet, guarded by the FSN lock. */
+  private final Deque<INodeDirectory> pending = new ArrayDeque<>();
+  /** The path to the directory being reclaimed, guarded by the FSN lock. */
+  private final Deque<Cursor> cursors = new ArrayDeque<>();
+  /**
+   * The roots of the detached directories whose inodes are not all removed
+   * from the inode map yet. Read without the lock.
+   */
+  private final Set<INodeDirectory> detached =
+      Collections.newSetFromMap(
+          new ConcurrentHashMap<INodeDirectory, Boolean>());
+
+  /** The number of detached directories not completely reclaimed. */
+  private volatile int pendingDeletes = 0;
+  /** The number of inodes of the detached directories not reclaimed yet. */
+  private volatile long pendingINodes = 0;
+
+  /** The thread reclaiming the detached directories in the active state. */
+  @VisibleForTesting
+  Daemon thread = null;
+
+  BackgroundDeleter(FSNamesystem fsn, int batchSize) {
+    this.fsn = fsn;
+    this.batchSize = batchSize;
+  }
+
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  int getPendingDeletes() {
+    return pendingDeletes;
+  }
+
+  long getPendingINodes() {
+    return pendingINodes;
+  }
+
+  /**
+   * Add a directory detached from the namespace to be reclaimed.
+   * @param dir the root of the detached subtree
+   * @param numINodes the number of inodes in the subtree
+   */
+  void add(INodeDirectory dir, long numINodes) {
+    assert fsn.hasWriteLock();
+    detached.add(dir);
+    pending.add(dir);
+    pendingINodes += numINodes;
+    pendingDeletes++;
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * @return whether the inode is in a directory detached from the namespace
+   *         and not reclaimed yet. This walks up to the root of the inode
+   *         while any directory is pending.
+   */
+  boolean isDetached(INode inode) {
+    if (detached.isEmpty()) {
+      return false;
+    }
+    for (INode i = inode; i != null; ) {
+      if (detached.contains(i)) {
+        return true;
+      }
+      final INodeReference ref = i.getParentReference();
+      i = ref != null ? ref : i.getParent();
+    }
+    return false;
+  }
+
+  /**
+   * Reclaim a batch of the inodes of the detached directories, and remove
+   * their blocks afterwards.
+   * @return whether any detached directory is left to reclaim
+   */
+  @VisibleForTesting
+  boolean reclaimBatch() {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    final BlocksMapUpdateInfo collectedBlocks = new BlocksMapUpdateInfo();
+    final List<INode> removedINodes = new ChunkedArrayList<>();
+    final List<Long> removedUCFiles = new ChunkedArrayList<>();
+    final ReclaimContext context = new ReclaimContext(
+        fsd.getBlockStoragePolicySuite(), collectedBlocks, removedINodes,
+        removedUCFiles);
+    final List<INodeDirectory> reclaimed = new ArrayList<>();
+    final int numINodes;
+    final boolean more;
+    fsn.writeLock();
+    try {
+      reclaim(context, reclaimed);
+      numINodes = removedINodes.size();
+      fsd.writeLock();
+      try {
+        fsd.updateReplicationFactor(collectedBlocks.toUpdateReplicationInfo());
+        // The usage of the subtree was taken off its ancestors when it was
+        // detached; only the usage of renamed inodes in snapshots is left.
+        final INode.QuotaDelta delta = context.quotaDelta();
+        for (Map.Entry<INode, QuotaCounts> entry :
+            delta.getUpdateMap().entrySet()) {
+          INodesInPath iip = INodesInPath.fromINode(entry.getKey());
+          fsd.updateCountNoQuotaCheck(iip, iip.length() - 1,
+              entry.getValue().negation());
+        }
+        for (Map.Entry<INodeDirectory, QuotaCounts> entry :
+            delta.getQuotaDirMap().entrySet()) {
+          entry.getKey().getDirectoryWithQuotaFeature()
+              .addSpaceConsumed2Cache(entry.getValue().negation());
+        }
+      } finally {
+        fsd.writeUnlock();
+      }
+      fsn.removeLeasesAndINodes(removedUCFiles, removedINodes, true);
+      detached.removeAll(reclaimed);
+      more = !cursors.isEmpty() || !pending.isEmpty();
+      pendingINodes = more ? Math.max(pendingINodes - numINodes, 0) : 0;
+    } finally {
+      fsn.writeUnlock();
+    }
+    fsn.removeBlocks(collectedBlocks);
+
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.incrBackgroundDeletedINodes(numINodes);
+      metrics.incrBackgroundDeletedBlocks(
+          collectedBlocks.getToDeleteList().size());
+    }
+    return more;
+  }
+
+  /**
+   * Destroy the inodes of the detached directories depth-first, until a
+   * batch of inodes is collected. A directory is destroyed once all its
+   * children are.
+   * @param reclaimed the detached directories completely destroyed
+   */
+  private void reclaim(ReclaimContext context,
+      List<INodeDirectory> reclaimed) {
+    while (context.removedINodes.size() < batchSize) {
+      if (cursors.isEmpty()) {
+        final INodeDirectory dir = pending.poll();
+        if (dir == null) {
+          return;
+        }
+        cursors.push(new Cursor(dir));
+      }
+
+      final Cursor cursor = cursors.peek();
+      final ReadOnlyList<INode> children =
+          cursor.dir.getChildrenList(CURRENT_STATE_ID);
+      if (cursor.next < children.size()) {
+        final INode child = children.get(cursor.next++);
+        if (child.isDirectory() && !child.isReference()
+            && !child.asDirectory().getChildrenList(CURRENT_STATE_ID)
+                .isEmpty()) {
+          cursors.push(new Cursor(child.asDirectory()));
+        } else {
+          child.destroyAndCollectBlocks(context);
+        }
+      } else {
+        cursors.pop();
+        cursor.dir.clearChildren();
+        cursor.dir.destroyAndCollectBlocks(context);
+        if (cursors.isEmpty()) {
+          reclaimed.add(cursor.dir);
+          pendingDeletes--;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reclaim all the detached directories in the calling thread.
+   */
+  void drain() {
+    if (pendingDeletes == 0) {
+      return;
+    }
+    LOG.info("Reclaiming {} inodes of {} deleted directories",
+        pendingINodes, pendingDeletes);
+    while (reclaimBatch()) {
+      // keep reclaiming
+    }
+  }
+
+  void startThread() {
+    thread = new Daemon(this);
+    thread.start();
+  }
+
+  /**
+   * Interrupt the thread. A batch being reclaimed is completed first.
+   */
+  void stopThread() {
+    if (thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        synchronized (this) {
+          while (pendingDeletes == 0) {
+            wait();
+          }
+        }
+        reclaimBatch();
+      } catch (InterruptedException ie) {
+        LOG.info("BackgroundDeleter was interrupted, exiting");
+        break;
+      } catch (Throwable t) {
+        LOG.error("Exception in BackgroundDeleter", t);
+        ExitUtil.terminate(1, t);
+      }
+    }
+  }
+}
@@ -163,6 +163,12 @@ public final class CacheManager {
    */
   private final GSet<CachedBlock, CachedBlock> cachedBlocks;
 
+  /**
+   * Whether any datanode has reported blocks in its block read cache. Until
+   * then there are no read cached locations to look up.
+   */
+  private volatile boolean readCacheReported = false;
+
   /**
    * Lock which protects the CacheReplicationMonitor.
    */
@@ -901,6 +907,7 @@ public void setCachedLocations(LocatedBlock block) {
             (short)0, false);
     cachedBlock = cachedBlocks.get(cachedBlock);
     if (cachedBlock == null) {
+      setReadCachedLocations(block);
       return;
     }
     List<DatanodeDescriptor> cachedDNs = cachedBlock.getDatanodes(Type.CACHED);
@@ -924,10 +931,30 @@ public void setCachedLocations(LocatedBlock block) {
             datanode, block.getBlock().getBlockName());
       }
     }
+    setReadCachedLocations(block);
+  }
+
+  /**
+   * Add the locations of a block which have some of its ranges in their
+   * block read cache to its cached locations.
+   */
+  private void setReadCachedLocations(LocatedBlock block) {
+    if (!readCacheReported) {
+      return;
+    }
+    final long blockId = block.getBlock().getBlockId();
+    for (DatanodeInfo loc : block.getLocations()) {
+      DatanodeDescriptor datanode = blockManager.getDatanodeManager()
+          .getDatanode(loc.getDatanodeUuid());
+      if (datanode != null && datanode.isReadCached(blockId)) {
+        block.addCachedLoc(loc);
+      }
+    }
   }
 
   public final void processCacheReport(final DatanodeID datanodeID,
-      final List<Long> blockIds) throws IOException {
+      final List<Long> blockIds, final List<Long> readCachedBlockIds)
+      throws IOException {
     namesystem.writeLock();
     final long startTime = Time.monotonicNow();
     final long endTime;
@@ -940,6 +967,10 @@ public final void processCacheReport(final DatanodeID datanodeID,
             datanode);
       }
       processCacheReportImpl(datanode, blockIds);
+      datanode.setReadCachedBlocks(readCachedBlockIds);
+      if (!readCachedBlockIds.isEmpty()) {
+        readCacheReported = true;
+      }
     } finally {
       endTime = Time.monotonicNow();
       namesystem.writeUnlock();
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -44,7 +45,8 @@ public Builder() {
       this.quota = new QuotaCounts.Builder().nameSpace(DEFAULT_NAMESPACE_QUOTA).
           storageSpace(DEFAULT_STORAGE_SPACE_QUOTA).
           typeSpaces(DEFAULT_STORAGE_SPACE_QUOTA).build();
-      this.usage = new QuotaCounts.Builder().nameSpace(1).build();
+      this.usage = new QuotaCounts.Builder().nameSpace(1).directoryCount(1)
+          .build();
     }
 
     public Builder nameSpaceQuota(long nameSpaceQuota) {
@@ -191,6 +193,7 @@ void setSpaceConsumed(QuotaCounts c) {
     usage.setNameSpace(c.getNameSpace());
     usage.setStorageSpace(c.getStorageSpace());
     usage.setTypeSpaces(c.getTypeSpaces());
+    usage.setContentCounts(c);
   }
 
   /** @return the namespace and storagespace and typespace consumed. */
@@ -198,6 +201,24 @@ public QuotaCounts getSpaceConsumed() {
     return new QuotaCounts.Builder().quotaCount(usage).build();
   }
 
+  /**
+   * @return the content summary of the directory from the cached usage,
+   * without walking the subtree. The usage includes the files and
+   * directories which are only in snapshots.
+   */
+  ContentSummary getContentSummary() {
+    return new ContentSummary.Builder().
+        length(usage.getLength()).
+        fileCount(usage.getFileCount() + usage.getSymlinkCount()).
+        directoryCount(usage.getDirectoryCount()).
+        quota(quota.getNameSpace()).
+        spaceConsumed(usage.getStorageSpace()).
+        spaceQuota(quota.getStorageSpace()).
+        typeConsumed(usage.getTypeSpaces().asArray()).
+        typeQuota(quota.getTypeSpaces().asArray()).
+        build();
+  }
+
   /** Verify if the namespace quota is violated after applying delta. */
   private void verifyNamespaceQuota(long delta) throws NSQuotaExceededException {
     if (Quota.isViolated(quota.getNameSpace(), usage.getNameSpace(), delta)) {
@@ -48,6 +48,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.protobuf.ByteString;
 
 /**
  * An implementation of the abstract class {@link EditLogInputStream}, which
@@ -121,6 +122,24 @@ public static EditLogInputStream fromUrl(
         startTxId, endTxId, inProgress);
   }
   
+  /**
+   * Open an EditLogInputStream over an edit log held in memory, such as
+   * one fetched from the edits cache of a JournalNode.
+   *
+   * @param name the name of the log, for messages
+   * @param data the edit log, including its header
+   * @param startTxId the expected starting txid
+   * @param endTxId the last txid to read; any transactions after it in
+   *          the log are skipped
+   * @param inProgress whether the log is in-progress
+   * @return a stream from which edits may be read
+   */
+  public static EditLogInputStream fromByteString(String name,
+      ByteString data, long startTxId, long endTxId, boolean inProgress) {
+    return new EditLogFileInputStream(new ByteStringLog(name, data),
+        startTxId, endTxId, inProgress);
+  }
+
   private EditLogFileInputStream(LogSource log,
       long firstTxId, long lastTxId,
       boolean isInProgress) {
@@ -435,6 +454,31 @@ public String getName() {
     }
   }
 
+  private static class ByteStringLog implements LogSource {
+    private final String name;
+    private final ByteString data;
+
+    public ByteStringLog(String name, ByteString data) {
+      this.name = name;
+      this.data = data;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return data.newInput();
+    }
+
+    @Override
+    public long length() {
+      return data.size();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+  }
+
   private static class URLLog implements LogSource {
     private final URL url;
     private long advertisedSize = -1;
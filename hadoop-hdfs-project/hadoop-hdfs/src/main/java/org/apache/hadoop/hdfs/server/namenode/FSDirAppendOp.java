@@ -113,6 +113,10 @@ static LastBlockWithStatus appendFile(final FSNamesystem fsn,
         throw new UnsupportedOperationException(
             "Cannot append to lazy persist file " + path);
       }
+      if (file.isStriped()) {
+        throw new UnsupportedOperationException(
+            "Cannot append to striped file " + path);
+      }
       // Opening an existing file for append - may need to recover lease.
       fsn.recoverLeaseInternal(RecoverLeaseOp.APPEND_FILE, iip, path, holder,
           clientMachine, false);
@@ -409,6 +409,10 @@ static BlockInfo[] unprotectedSetReplication(
       return null;
     }
     INodeFile file = inode.asFile();
+    if (file.isStriped()) {
+      // the redundancy of a striped file is fixed by its erasure coding policy
+      return null;
+    }
 
     // Make sure the directory has sufficient quotas
     short oldBR = file.getPreferredBlockReplication();
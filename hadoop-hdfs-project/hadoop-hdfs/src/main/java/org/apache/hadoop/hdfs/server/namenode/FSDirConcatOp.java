@@ -99,6 +99,10 @@ private static void verifyTargetFile(FSDirectory fsd, final String target,
       throw new HadoopIllegalArgumentException("concat: target file "
           + target + " is under construction");
     }
+    if (targetINode.isStriped()) {
+      throw new HadoopIllegalArgumentException("concat: target file "
+          + target + " is striped");
+    }
   }
 
   private static INodeFile[] verifySrcFiles(FSDirectory fsd, String[] srcs,
@@ -144,6 +148,10 @@ private static INodeFile[] verifySrcFiles(FSDirectory fsd, String[] srcs,
         throw new HadoopIllegalArgumentException("concat: source file " + src
             + " is invalid or empty or underConstruction");
       }
+      if (srcINodeFile.isStriped()) {
+        throw new HadoopIllegalArgumentException("concat: source file " + src
+            + " is striped");
+      }
       // source file's preferred block size cannot be greater than the target
       // file
       if (srcINodeFile.getPreferredBlockSize() >
@@ -169,6 +177,8 @@ private static QuotaCounts computeQuotaDeltas(FSDirectory fsd,
       INodeFile target, INodeFile[] srcList) {
     QuotaCounts deltas = new QuotaCounts.Builder().build();
     final short targetRepl = target.getPreferredBlockReplication();
+    // the source files are removed, their blocks move to the target
+    deltas.addFileCount(-srcList.length);
     for (INodeFile src : srcList) {
       short srcRepl = src.getFileReplication();
       long fileSize = src.computeFileSize();
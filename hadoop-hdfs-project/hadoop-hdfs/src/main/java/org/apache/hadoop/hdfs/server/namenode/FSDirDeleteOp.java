@@ -57,16 +57,19 @@ static long delete(FSDirectory fsd, INodesInPath iip,
       if (deleteAllowed(iip, iip.getPath()) ) {
         List<INodeDirectory> snapshottableDirs = new ArrayList<>();
         FSDirSnapshotOp.checkSnapshot(iip.getLastINode(), snapshottableDirs);
-        ReclaimContext context = new ReclaimContext(
-            fsd.getBlockStoragePolicySuite(), collectedBlocks, removedINodes,
-            removedUCFiles);
-        if (unprotectedDelete(fsd, iip, context, mtime)) {
-          filesRemoved = context.quotaDelta().getNsDelta();
+        filesRemoved = detachForBackgroundDelete(fsd, iip, mtime);
+        if (filesRemoved < 0) {
+          ReclaimContext context = new ReclaimContext(
+              fsd.getBlockStoragePolicySuite(), collectedBlocks,
+              removedINodes, removedUCFiles);
+          if (unprotectedDelete(fsd, iip, context, mtime)) {
+            filesRemoved = context.quotaDelta().getNsDelta();
+          }
+          fsd.updateReplicationFactor(context.collectedBlocks()
+                                          .toUpdateReplicationInfo());
+          fsd.updateCount(iip, context.quotaDelta(), false);
         }
-        fsd.updateReplicationFactor(context.collectedBlocks()
-                                        .toUpdateReplicationInfo());
         fsn.removeSnapshottableDirs(snapshottableDirs);
-        fsd.updateCount(iip, context.quotaDelta(), false);
       }
     } finally {
       fsd.writeUnlock();
@@ -270,6 +273,64 @@ private static boolean unprotectedDelete(FSDirectory fsd, INodesInPath iip,
     return true;
   }
 
+  /**
+   * Detach a large directory from the namespace, leaving its inodes and
+   * blocks to be reclaimed by the {@link BackgroundDeleter}. The quota usage
+   * of the whole directory is taken off its ancestors.
+   * <p>
+   * Files, directories in snapshots and directories with no more inodes
+   * than a batch of the deleter are deleted synchronously instead.
+   *
+   * @param fsd the FSDirectory instance
+   * @param iip the inodes resolved from the path
+   * @param mtime the time the inode is removed
+   * @return the number of inodes detached, or -1 if the directory is to be
+   *         deleted synchronously
+   */
+  private static long detachForBackgroundDelete(FSDirectory fsd,
+      INodesInPath iip, long mtime) {
+    assert fsd.hasWriteLock();
+    final BackgroundDeleter deleter =
+        fsd.getFSNamesystem().getBackgroundDeleter();
+    final INode targetNode = iip.getLastINode();
+    final int latestSnapshot = iip.getLatestSnapshotId();
+    if (deleter == null || !targetNode.isDirectory()
+        || targetNode.isReference()
+        || targetNode.isInLatestSnapshot(latestSnapshot)) {
+      return -1;
+    }
+    final QuotaCounts usage =
+        targetNode.computeQuotaUsage(fsd.getBlockStoragePolicySuite());
+    if (usage.getNameSpace() <= deleter.getBatchSize()) {
+      return -1;
+    }
+
+    // The files being written are deleted now, not when they are reclaimed.
+    final FSNamesystem fsn = fsd.getFSNamesystem();
+    final List<Long> openFiles = fsn.getLeaseManager()
+        .getINodeIdWithLeases(targetNode.asDirectory());
+
+    targetNode.recordModification(latestSnapshot);
+    if (fsd.removeLastINode(iip) == -1) {
+      return -1;
+    }
+    final INodeDirectory parent = targetNode.getParent();
+    parent.updateModificationTime(mtime, latestSnapshot);
+    fsd.updateCountNoQuotaCheck(iip, iip.length() - 1, usage.negation());
+    // Without a parent the detached inodes do not resolve to a path, so the
+    // files being written are seen as deleted and never recovered.
+    targetNode.setParent(null);
+    deleter.add(targetNode.asDirectory(), usage.getNameSpace());
+    fsn.getLeaseManager().removeLeases(openFiles);
+
+    if (NameNode.stateChangeLog.isDebugEnabled()) {
+      NameNode.stateChangeLog.debug("DIR* FSDirectory.unprotectedDelete: "
+          + iip.getPath() + " is detached with " + usage.getNameSpace()
+          + " inodes");
+    }
+    return usage.getNameSpace();
+  }
+
   /**
    * Throw if the given directory has any non-empty protected descendants
    * (including itself).
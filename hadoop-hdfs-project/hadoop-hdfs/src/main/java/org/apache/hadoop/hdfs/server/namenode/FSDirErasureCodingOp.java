@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.XATTR_ERASURECODING_POLICY;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.fs.XAttr;
+import org.apache.hadoop.fs.XAttrSetFlag;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.hdfs.XAttrHelper;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Helper methods for the erasure coding policies of directories. The policy
+ * of a directory is kept in a system xattr, so that it is persisted and
+ * logged like any xattr; the files created under the directory are striped
+ * with the policy of their nearest ancestor having one.
+ */
+final class FSDirErasureCodingOp {
+  private FSDirErasureCodingOp() {}
+
+  /**
+   * Set the erasure coding policy of a directory.
+   *
+   * @param src the path of the directory
+   * @param ecPolicyName the name of the policy, or null for the default one
+   * @return the file status of the directory, for the audit log
+   */
+  static HdfsFileStatus setErasureCodingPolicy(FSDirectory fsd, String src,
+      String ecPolicyName, boolean logRetryCache) throws IOException {
+    final ErasureCodingPolicy ecPolicy = ecPolicyName == null ?
+        ErasureCodingPolicy.RS_6_3_POLICY :
+        ErasureCodingPolicy.getSystemPolicy(ecPolicyName);
+    if (ecPolicy == null) {
+      throw new HadoopIllegalArgumentException(
+          "Cannot find an erasure coding policy with the name " + ecPolicyName
+          + ", the supported policies are "
+          + ErasureCodingPolicy.getSystemPolicies());
+    }
+    FSPermissionChecker pc = fsd.getPermissionChecker();
+    byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(src);
+    List<XAttr> xAttrs = Lists.newArrayListWithCapacity(1);
+    INodesInPath iip;
+    fsd.writeLock();
+    try {
+      src = fsd.resolvePath(pc, src, pathComponents);
+      iip = fsd.getINodesInPath4Write(src, false);
+      if (fsd.isPermissionEnabled()) {
+        fsd.checkPathAccess(pc, iip, FsAction.WRITE);
+      }
+      INode inode = FSDirectory.resolveLastINode(iip);
+      if (!inode.isDirectory()) {
+        throw new IOException("Cannot set an erasure coding policy on "
+            + src + ": it is not a directory");
+      }
+      xAttrs.add(XAttrHelper.buildXAttr(XATTR_ERASURECODING_POLICY,
+          ecPolicy.getName().getBytes(Charsets.UTF_8)));
+      FSDirXAttrOp.unprotectedSetXAttrs(fsd, src, xAttrs,
+          EnumSet.of(XAttrSetFlag.CREATE, XAttrSetFlag.REPLACE));
+    } finally {
+      fsd.writeUnlock();
+    }
+    fsd.getEditLog().logSetXAttrs(src, xAttrs, logRetryCache);
+    return fsd.getAuditFileInfo(iip);
+  }
+
+  /**
+   * @return the erasure coding policy of the last inode of the path: the
+   * policy of a file if it is striped, or else the policy of the nearest
+   * ancestor directory having one. Null if the files created at the path
+   * are replicated.
+   */
+  static ErasureCodingPolicy getErasureCodingPolicy(FSDirectory fsd,
+      INodesInPath iip) throws IOException {
+    assert fsd.hasReadLock();
+    INode last = iip.getLastINode();
+    if (last != null && last.isFile()) {
+      return last.asFile().getErasureCodingPolicy();
+    }
+    final int snapshotId = iip.getPathSnapshotId();
+    for (int i = iip.length() - 1; i >= 0; i--) {
+      INode inode = iip.getINode(i);
+      if (inode == null) {
+        continue;
+      }
+      XAttr xAttr = XAttrStorage.readINodeXAttrByPrefixedName(inode,
+          snapshotId, XATTR_ERASURECODING_POLICY);
+      if (xAttr != null) {
+        return ErasureCodingPolicy.getSystemPolicy(
+            new String(xAttr.getValue(), Charsets.UTF_8));
+      }
+    }
+    return null;
+  }
+}
@@ -51,38 +51,59 @@ static HdfsFileStatus mkdirs(FSNamesystem fsn, String src,
       throw new InvalidPathException(src);
     }
     FSPermissionChecker pc = fsd.getPermissionChecker();
+    if (fsd.isPathLockingEnabled(src)) {
+      PathLockManager.PathLock lock = fsd.lockPathForCreate(src);
+      try {
+        INodesInPath iip = fsd.getINodesInPath4Write(src);
+        return mkdirs(fsn, pc, src, iip, permissions, createParent);
+      } finally {
+        lock.unlock();
+      }
+    }
     byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(src);
     fsd.writeLock();
     try {
       src = fsd.resolvePath(pc, src, pathComponents);
       INodesInPath iip = fsd.getINodesInPath4Write(src);
+      return mkdirs(fsn, pc, src, iip, permissions, createParent);
+    } finally {
+      fsd.writeUnlock();
+    }
+  }
+
+  private static HdfsFileStatus mkdirs(FSNamesystem fsn,
+      FSPermissionChecker pc, String src, INodesInPath iip,
+      PermissionStatus permissions, boolean createParent) throws IOException {
+    FSDirectory fsd = fsn.getFSDirectory();
+    if (fsd.isPermissionEnabled()) {
+      fsd.checkTraverse(pc, iip);
+    }
+
+    final INode lastINode = iip.getLastINode();
+    if (lastINode != null && lastINode.isFile()) {
+      throw new FileAlreadyExistsException("Path is not a directory: " + src);
+    }
+
+    INodesInPath existing = lastINode != null ? iip : iip.getExistingINodes();
+    if (lastINode == null) {
       if (fsd.isPermissionEnabled()) {
-        fsd.checkTraverse(pc, iip);
+        fsd.checkAncestorAccess(pc, iip, FsAction.WRITE);
       }
 
-      final INode lastINode = iip.getLastINode();
-      if (lastINode != null && lastINode.isFile()) {
-        throw new FileAlreadyExistsException("Path is not a directory: " + src);
+      if (!createParent) {
+        fsd.verifyParentDir(iip, src);
       }
 
-      INodesInPath existing = lastINode != null ? iip : iip.getExistingINodes();
-      if (lastINode == null) {
-        if (fsd.isPermissionEnabled()) {
-          fsd.checkAncestorAccess(pc, iip, FsAction.WRITE);
-        }
+      // validate that we have enough inodes. This is, at best, a
+      // heuristic because the mkdirs() operation might need to
+      // create multiple inodes.
+      fsn.checkFsObjectLimit();
 
-        if (!createParent) {
-          fsd.verifyParentDir(iip, src);
-        }
-
-        // validate that we have enough inodes. This is, at best, a
-        // heuristic because the mkdirs() operation might need to
-        // create multiple inodes.
-        fsn.checkFsObjectLimit();
-
-        List<String> nonExisting = iip.getPath(existing.length(),
-            iip.length() - existing.length());
-        int length = nonExisting.size();
+      List<String> nonExisting = iip.getPath(existing.length(),
+          iip.length() - existing.length());
+      int length = nonExisting.size();
+      fsd.updateLock();
+      try {
         if (length > 1) {
           List<String> ancestors = nonExisting.subList(0, length - 1);
           // Ensure that the user can traversal the path by adding implicit
@@ -98,11 +119,11 @@ static HdfsFileStatus mkdirs(FSNamesystem fsn, String src,
             nonExisting.subList(length - 1, length), permissions)) == null) {
           throw new IOException("Failed to create directory: " + src);
         }
+      } finally {
+        fsd.updateUnlock();
       }
-      return fsd.getAuditFileInfo(existing);
-    } finally {
-      fsd.writeUnlock();
     }
+    return fsd.getAuditFileInfo(existing);
   }
 
   /**
@@ -233,6 +254,7 @@ private static INodesInPath unprotectedMkdir(FSDirectory fsd, long inodeId,
     }
     final INodeDirectory dir = new INodeDirectory(inodeId, name, permission,
         timestamp);
+    fsd.cacheName(dir);
 
     INodesInPath iip = fsd.addLastINode(parent, dir, true);
     if (iip != null && aclEntries != null) {
@@ -30,6 +30,7 @@
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.FsPermissionExtension;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
@@ -136,7 +137,23 @@ static ContentSummary getContentSummary(
       fsd.checkPermission(pc, iip, false, null, null, null,
           FsAction.READ_EXECUTE);
     }
-    return getContentSummaryInt(fsd, iip);
+    return getContentSummaryInt(fsd, iip,
+        isSummaryFromAggregates(fsd, pc, iip.getLastINode()));
+  }
+
+  /**
+   * Whether the content summary of the inode is answered from the counts its
+   * quota feature keeps up to date, instead of walking its subtree. Only
+   * callers who skip the access check of the subtree may do so, since that
+   * check walks the subtree anyway. The counts include the files which are
+   * only in snapshots, hence the walk while there are any.
+   */
+  private static boolean isSummaryFromAggregates(FSDirectory fsd,
+      FSPermissionChecker pc, INode inode) {
+    return inode != null && fsd.isContentSummaryAggregatesEnabled()
+        && (!fsd.isPermissionEnabled() || pc.isSuperUser())
+        && inode.isQuotaSet()
+        && fsd.getFSNamesystem().getSnapshotManager().getNumSnapshots() == 0;
   }
 
   /**
@@ -182,7 +199,8 @@ static GetBlockLocationsResult getBlockLocations(
 
       final LocatedBlocks blocks = bm.createLocatedBlocks(
           inode.getBlocks(iip.getPathSnapshotId()), fileSize, isUc, offset,
-          length, needBlockToken, iip.isSnapshot(), feInfo);
+          length, needBlockToken, iip.isSnapshot(), feInfo,
+          inode.getErasureCodingPolicy());
 
       // Set caching information for the located blocks.
       for (LocatedBlock lb : blocks.getLocatedBlocks()) {
@@ -442,6 +460,7 @@ static HdfsFileStatus createFileStatus(
     final FileEncryptionInfo feInfo = isRawPath ? null :
         fsd.getFileEncryptionInfo(node, snapshot, iip);
 
+    final ErasureCodingPolicy ecPolicy = getErasureCodingPolicy(fsd, node);
     if (node.isFile()) {
       final INodeFile fileNode = node.asFile();
       size = fileNode.computeFileSize(snapshot);
@@ -471,7 +490,23 @@ static HdfsFileStatus createFileStatus(
         node.getId(),
         childrenNum,
         feInfo,
-        storagePolicy);
+        storagePolicy,
+        ecPolicy);
+  }
+
+  /**
+   * @return the erasure coding policy of a striped file, or the policy the
+   * new files of a directory get
+   */
+  private static ErasureCodingPolicy getErasureCodingPolicy(FSDirectory fsd,
+      INode node) throws IOException {
+    if (node.isFile()) {
+      return node.asFile().getErasureCodingPolicy();
+    } else if (node.isDirectory()) {
+      return FSDirErasureCodingOp.getErasureCodingPolicy(fsd,
+          INodesInPath.fromINode(node));
+    }
+    return null;
   }
 
   private static INodeAttributes getINodeAttributes(
@@ -494,6 +529,7 @@ private static HdfsLocatedFileStatus createLocatedFileStatus(
     final boolean isEncrypted;
     final FileEncryptionInfo feInfo = isRawPath ? null :
         fsd.getFileEncryptionInfo(node, snapshot, iip);
+    final ErasureCodingPolicy ecPolicy = getErasureCodingPolicy(fsd, node);
     if (node.isFile()) {
       final INodeFile fileNode = node.asFile();
       size = fileNode.computeFileSize(snapshot);
@@ -507,7 +543,7 @@ private static HdfsLocatedFileStatus createLocatedFileStatus(
 
       loc = fsd.getBlockManager().createLocatedBlocks(
           fileNode.getBlocks(snapshot), fileSize, isUc, 0L, size, false,
-          inSnapshot, feInfo);
+          inSnapshot, feInfo, ecPolicy);
       if (loc == null) {
         loc = new LocatedBlocks();
       }
@@ -526,7 +562,7 @@ private static HdfsLocatedFileStatus createLocatedFileStatus(
           getPermissionForFileStatus(nodeAttrs, isEncrypted),
           nodeAttrs.getUserName(), nodeAttrs.getGroupName(),
           node.isSymlink() ? node.asSymlink().getSymlink() : null, path,
-          node.getId(), loc, childrenNum, feInfo, storagePolicy);
+          node.getId(), loc, childrenNum, feInfo, storagePolicy, ecPolicy);
     // Set caching information for the located blocks.
     if (loc != null) {
       CacheManager cacheManager = fsd.getFSNamesystem().getCacheManager();
@@ -558,14 +594,16 @@ private static FsPermission getPermissionForFileStatus(
   }
 
   private static ContentSummary getContentSummaryInt(FSDirectory fsd,
-      INodesInPath iip) throws IOException {
+      INodesInPath iip, boolean fromAggregates) throws IOException {
     fsd.readLock();
     try {
       INode targetNode = iip.getLastINode();
       if (targetNode == null) {
         throw new FileNotFoundException("File does not exist: " + iip.getPath());
-      }
-      else {
+      } else if (fromAggregates) {
+        return targetNode.asDirectory().getDirectoryWithQuotaFeature()
+            .getContentSummary();
+      } else {
         // Make it relinquish locks everytime contentCountLimit entries are
         // processed. 0 means disabled. I.e. blocking for the entire duration.
         ContentSummaryComputationContext cscc =
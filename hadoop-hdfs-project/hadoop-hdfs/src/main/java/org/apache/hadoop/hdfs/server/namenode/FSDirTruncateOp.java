@@ -91,6 +91,10 @@ static TruncateResult truncate(final FSNamesystem fsn, final String srcArg,
         throw new UnsupportedOperationException(
             "Cannot truncate lazy persist file " + src);
       }
+      if (file.isStriped()) {
+        throw new UnsupportedOperationException(
+            "Cannot truncate striped file " + src);
+      }
 
       // Check if the file is already being truncated with the same length
       final BlockInfo last = file.getLastBlock();
@@ -133,6 +137,7 @@ static TruncateResult truncate(final FSNamesystem fsn, final String srcArg,
       }
 
       // update the quota: use the preferred block size for UC block
+      delta.addLength(file.computeFileSize() - oldLength);
       fsd.updateCountNoQuotaCheck(iip, iip.length() - 1, delta);
     } finally {
       fsd.writeUnlock();
@@ -36,6 +36,7 @@
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.EncryptionZone;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
@@ -44,6 +45,7 @@
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoStriped;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockUnderConstructionFeature;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStorageInfo;
@@ -87,8 +89,16 @@ static boolean unprotectedRemoveBlock(
     }
 
     // update space consumed
-    fsd.updateCount(iip, 0, -fileNode.getPreferredBlockSize(),
-                    fileNode.getPreferredBlockReplication(), true);
+    if (fileNode.isStriped()) {
+      ErasureCodingPolicy ecPolicy = fileNode.getErasureCodingPolicy();
+      long blockSize = fileNode.getPreferredBlockSize();
+      fsd.updateStripedCount(iip, -uc.getNumBytes(),
+          -blockSize * ecPolicy.getNumAllUnits(), true);
+    } else {
+      fsd.updateCount(iip, 0, -fileNode.getPreferredBlockSize(),
+                      fileNode.getPreferredBlockReplication(), true);
+      fsd.updateLength(iip, -uc.getNumBytes());
+    }
     return true;
   }
 
@@ -169,6 +179,8 @@ static ValidateAddBlockResult validateAddBlock(
       ExtendedBlock previous, LocatedBlock[] onRetryBlock) throws IOException {
     final long blockSize;
     final int replication;
+    final int minTargets;
+    final boolean isStriped;
     final byte storagePolicyID;
     String clientMachine;
 
@@ -196,16 +208,32 @@ static ValidateAddBlockResult validateAddBlock(
     blockSize = pendingFile.getPreferredBlockSize();
     clientMachine = pendingFile.getFileUnderConstructionFeature()
         .getClientMachine();
-    replication = pendingFile.getFileReplication();
+    isStriped = pendingFile.isStriped();
+    if (isStriped) {
+      // a target for each internal block, at least for all the data blocks
+      ErasureCodingPolicy ecPolicy = pendingFile.getErasureCodingPolicy();
+      replication = ecPolicy.getNumAllUnits();
+      minTargets = ecPolicy.getNumDataUnits();
+    } else {
+      replication = pendingFile.getFileReplication();
+      minTargets = fsn.getBlockManager().minReplication;
+    }
     storagePolicyID = pendingFile.getStoragePolicyID();
-    return new ValidateAddBlockResult(blockSize, replication, storagePolicyID,
-                                    clientMachine);
+    return new ValidateAddBlockResult(blockSize, replication, minTargets,
+        isStriped, storagePolicyID, clientMachine);
   }
 
-  static LocatedBlock makeLocatedBlock(FSNamesystem fsn, Block blk,
+  static LocatedBlock makeLocatedBlock(FSNamesystem fsn, BlockInfo blk,
       DatanodeStorageInfo[] locs, long offset) throws IOException {
-    LocatedBlock lBlk = BlockManager.newLocatedBlock(fsn.getExtendedBlock(blk),
-                                                     locs, offset, false);
+    final LocatedBlock lBlk;
+    if (blk.isStriped()) {
+      lBlk = BlockManager.newLocatedStripedBlock(fsn.getExtendedBlock(blk),
+          locs, blk.getUnderConstructionFeature().getBlockIndices(), offset,
+          false);
+    } else {
+      lBlk = BlockManager.newLocatedBlock(fsn.getExtendedBlock(blk), locs,
+          offset, false);
+    }
     fsn.getFSDirectory().getBlockManager()
         .setBlockToken(lBlk, BlockTokenIdentifier.AccessMode.WRITE);
     return lBlk;
@@ -249,15 +277,16 @@ static LocatedBlock storeAllocatedBlock(FSNamesystem fsn, String src,
                                   ExtendedBlock.getLocalBlock(previous));
 
     // allocate new block, record block locations in INode.
-    Block newBlock = fsn.createNewBlock();
+    Block newBlock = fsn.createNewBlock(pendingFile.isStriped());
     INodesInPath inodesInPath = INodesInPath.fromINode(pendingFile);
-    saveAllocatedBlock(fsn, src, inodesInPath, newBlock, targets);
+    BlockInfo newBlockInfo = saveAllocatedBlock(fsn, src, inodesInPath,
+        newBlock, targets);
 
     persistNewBlock(fsn, src, pendingFile);
     offset = pendingFile.computeFileSize();
 
     // Return located block
-    return makeLocatedBlock(fsn, newBlock, targets, offset);
+    return makeLocatedBlock(fsn, newBlockInfo, targets, offset);
   }
 
   static DatanodeStorageInfo[] chooseTargetForNewBlock(
@@ -280,7 +309,8 @@ static DatanodeStorageInfo[] chooseTargetForNewBlock(
     // choose targets for the new block to be allocated.
     return bm.chooseTarget4NewBlock(src, r.replication, clientNode,
                                     excludedNodesSet, r.blockSize,
-                                    favoredNodesList, r.storagePolicyID);
+                                    favoredNodesList, r.storagePolicyID,
+                                    r.minTargets, r.isStriped);
   }
 
   /**
@@ -318,7 +348,7 @@ static HdfsFileStatus startFile(
       EncryptionKeyInfo ezInfo, INode.BlocksMapUpdateInfo toRemoveBlocks,
       boolean logRetryEntry)
       throws IOException {
-    assert fsn.hasWriteLock();
+    assert fsn.hasWriteLock() || fsn.getFSDirectory().hasPathWriteLock();
 
     boolean create = flag.contains(CreateFlag.CREATE);
     boolean overwrite = flag.contains(CreateFlag.OVERWRITE);
@@ -409,26 +439,34 @@ static HdfsFileStatus startFile(
     }
     fsn.checkFsObjectLimit();
     INodeFile newNode = null;
-    Map.Entry<INodesInPath, String> parent = FSDirMkdirOp
-        .createAncestorDirectories(fsd, iip, permissions);
-    if (parent != null) {
-      iip = addFile(fsd, parent.getKey(), parent.getValue(), permissions,
-                    replication, blockSize, holder, clientMachine);
-      newNode = iip != null ? iip.getLastINode().asFile() : null;
-    }
-    if (newNode == null) {
-      throw new IOException("Unable to add " + src +  " to namespace");
-    }
-    fsn.leaseManager.addLease(
-        newNode.getFileUnderConstructionFeature().getClientName(),
-        newNode.getId());
-    if (feInfo != null) {
-      fsd.setFileEncryptionInfo(src, feInfo);
-      newNode = fsd.getInode(newNode.getId()).asFile();
-    }
-    setNewINodeStoragePolicy(fsd.getBlockManager(), newNode, iip,
-                             isLazyPersist);
-    fsd.getEditLog().logOpenFile(src, newNode, overwrite, logRetryEntry);
+    fsd.updateLock();
+    try {
+      Map.Entry<INodesInPath, String> parent = FSDirMkdirOp
+          .createAncestorDirectories(fsd, iip, permissions);
+      if (parent != null) {
+        ErasureCodingPolicy ecPolicy =
+            FSDirErasureCodingOp.getErasureCodingPolicy(fsd, iip);
+        iip = addFile(fsd, parent.getKey(), parent.getValue(), permissions,
+                      replication, blockSize, ecPolicy, holder,
+                      clientMachine);
+        newNode = iip != null ? iip.getLastINode().asFile() : null;
+      }
+      if (newNode == null) {
+        throw new IOException("Unable to add " + src +  " to namespace");
+      }
+      fsn.leaseManager.addLease(
+          newNode.getFileUnderConstructionFeature().getClientName(),
+          newNode.getId());
+      if (feInfo != null) {
+        fsd.setFileEncryptionInfo(src, feInfo);
+        newNode = fsd.getInode(newNode.getId()).asFile();
+      }
+      setNewINodeStoragePolicy(fsd.getBlockManager(), newNode, iip,
+                               isLazyPersist);
+      fsd.getEditLog().logOpenFile(src, newNode, overwrite, logRetryEntry);
+    } finally {
+      fsd.updateUnlock();
+    }
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* NameSystem.startFile: added " +
           src + " inode " + newNode.getId() + " " + holder);
@@ -436,6 +474,37 @@ static HdfsFileStatus startFile(
     return FSDirStatAndListingOp.getFileInfo(fsd, src, false, isRawPath);
   }
 
+  /**
+   * Create a new file while holding the namesystem lock in shared mode and
+   * a path lock on the directory that receives it, see
+   * {@link FSDirectory#isPathLockingEnabled(String)}.
+   *
+   * @return the status of the new file, or null if the file already exists.
+   * Overwriting an existing file or recovering its lease is not protected by
+   * path locks, so the caller has to retry under the namesystem write lock.
+   */
+  static HdfsFileStatus startNewFileWithPathLock(
+      FSNamesystem fsn, FSPermissionChecker pc, String src,
+      PermissionStatus permissions, String holder, String clientMachine,
+      EnumSet<CreateFlag> flag, boolean createParent,
+      short replication, long blockSize,
+      EncryptionKeyInfo ezInfo, boolean logRetryEntry)
+      throws IOException {
+    assert fsn.hasReadLock();
+    FSDirectory fsd = fsn.getFSDirectory();
+    PathLockManager.PathLock lock = fsd.lockPathForCreate(src);
+    try {
+      if (fsd.getINode4Write(src) != null) {
+        return null;
+      }
+      return startFile(fsn, pc, src, permissions, holder, clientMachine,
+          flag, createParent, replication, blockSize, ezInfo,
+          new INode.BlocksMapUpdateInfo(), logRetryEntry);
+    } finally {
+      lock.unlock();
+    }
+  }
+
   static EncryptionKeyInfo getEncryptionKeyInfo(FSNamesystem fsn,
       FSPermissionChecker pc, String src,
       CryptoProtocolVersion[] supportedVersions)
@@ -467,19 +536,19 @@ static INodeFile addFileForEditLog(
       PermissionStatus permissions, List<AclEntry> aclEntries,
       List<XAttr> xAttrs, short replication, long modificationTime, long atime,
       long preferredBlockSize, boolean underConstruction, String clientName,
-      String clientMachine, byte storagePolicyId) {
+      String clientMachine, byte storagePolicyId, byte ecPolicyId) {
     final INodeFile newNode;
     assert fsd.hasWriteLock();
     if (underConstruction) {
       newNode = newINodeFile(id, permissions, modificationTime,
                                               modificationTime, replication,
-                                              preferredBlockSize,
+                                              preferredBlockSize, ecPolicyId,
                                               storagePolicyId);
       newNode.toUnderConstruction(clientName, clientMachine);
     } else {
       newNode = newINodeFile(id, permissions, modificationTime,
                                               atime, replication,
-                                              preferredBlockSize,
+                                              preferredBlockSize, ecPolicyId,
                                               storagePolicyId);
     }
 
@@ -517,12 +586,22 @@ private static BlockInfo addBlock(
       Preconditions.checkState(fileINode.isUnderConstruction());
 
       // check quota limits and updated space consumed
-      fsd.updateCount(inodesInPath, 0, fileINode.getPreferredBlockSize(),
-          fileINode.getFileReplication(), true);
+      final BlockInfo blockInfo;
+      if (fileINode.isStriped()) {
+        // a block group holds up to a block in each internal block
+        ErasureCodingPolicy ecPolicy = fileINode.getErasureCodingPolicy();
+        long blockSize = fileINode.getPreferredBlockSize();
+        fsd.updateStripedCount(inodesInPath, 0,
+            blockSize * ecPolicy.getNumAllUnits(), true);
+        blockInfo = new BlockInfoStriped(block, ecPolicy);
+      } else {
+        fsd.updateCount(inodesInPath, 0, fileINode.getPreferredBlockSize(),
+            fileINode.getFileReplication(), true);
+        blockInfo = new BlockInfoContiguous(block,
+            fileINode.getFileReplication());
+      }
 
       // associate new last block for the file
-      BlockInfo blockInfo = new BlockInfoContiguous(block,
-          fileINode.getFileReplication());
       blockInfo.convertToBlockUnderConstruction(
           HdfsServerConstants.BlockUCState.UNDER_CONSTRUCTION, targets);
       fsd.getBlockManager().addBlockCollection(blockInfo, fileINode);
@@ -547,12 +626,13 @@ private static BlockInfo addBlock(
   private static INodesInPath addFile(
       FSDirectory fsd, INodesInPath existing, String localName,
       PermissionStatus permissions, short replication, long preferredBlockSize,
-      String clientName, String clientMachine)
+      ErasureCodingPolicy ecPolicy, String clientName, String clientMachine)
       throws IOException {
 
     long modTime = now();
     INodeFile newNode = newINodeFile(fsd.allocateNewInodeId(), permissions,
-                                     modTime, modTime, replication, preferredBlockSize);
+        modTime, modTime, replication, preferredBlockSize,
+        ecPolicy == null ? 0 : ecPolicy.getId(), (byte) 0);
     newNode.setLocalName(localName.getBytes(Charsets.UTF_8));
     newNode.toUnderConstruction(clientName, clientMachine);
 
@@ -759,18 +839,13 @@ private static boolean completeFileInternal(
 
   private static INodeFile newINodeFile(
       long id, PermissionStatus permissions, long mtime, long atime,
-      short replication, long preferredBlockSize, byte storagePolicyId) {
+      short replication, long preferredBlockSize, byte ecPolicyId,
+      byte storagePolicyId) {
     return new INodeFile(id, null, permissions, mtime, atime,
-        BlockInfo.EMPTY_ARRAY, replication, preferredBlockSize,
+        BlockInfo.EMPTY_ARRAY, replication, preferredBlockSize, ecPolicyId,
         storagePolicyId);
   }
 
-  private static INodeFile newINodeFile(long id, PermissionStatus permissions,
-      long mtime, long atime, short replication, long preferredBlockSize) {
-    return newINodeFile(id, permissions, mtime, atime, replication,
-        preferredBlockSize, (byte)0);
-  }
-
   /**
    * Persist the new block (the last block of the given file).
    */
@@ -796,7 +871,7 @@ private static void persistNewBlock(
    * @param targets target datanodes where replicas of the new block is placed
    * @throws QuotaExceededException If addition of block exceeds space quota
    */
-  private static void saveAllocatedBlock(
+  private static BlockInfo saveAllocatedBlock(
       FSNamesystem fsn, String src, INodesInPath inodesInPath, Block newBlock,
       DatanodeStorageInfo[] targets)
       throws IOException {
@@ -805,6 +880,7 @@ private static void saveAllocatedBlock(
                                      targets);
     NameNode.stateChangeLog.info("BLOCK* allocate " + b + " for " + src);
     DatanodeStorageInfo.incrementBlocksScheduled(targets);
+    return b;
   }
 
   private static void setNewINodeStoragePolicy(BlockManager bm, INodeFile
@@ -852,14 +928,18 @@ private static class FileState {
   static class ValidateAddBlockResult {
     final long blockSize;
     final int replication;
+    final int minTargets;
+    final boolean isStriped;
     final byte storagePolicyID;
     final String clientMachine;
 
     ValidateAddBlockResult(
-        long blockSize, int replication, byte storagePolicyID,
-        String clientMachine) {
+        long blockSize, int replication, int minTargets, boolean isStriped,
+        byte storagePolicyID, String clientMachine) {
       this.blockSize = blockSize;
       this.replication = replication;
+      this.minTargets = minTargets;
+      this.isStriped = isStriped;
       this.storagePolicyID = storagePolicyID;
       this.clientMachine = clientMachine;
     }
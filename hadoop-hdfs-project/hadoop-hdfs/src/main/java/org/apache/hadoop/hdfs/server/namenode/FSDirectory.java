@@ -64,9 +64,11 @@
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -86,6 +88,7 @@
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.CRYPTO_XATTR_FILE_ENCRYPTION_INFO;
 import static org.apache.hadoop.hdfs.server.common.HdfsServerConstants.SECURITY_XATTR_UNREADABLE_BY_SUPERUSER;
 import static org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot.CURRENT_STATE_ID;
+import static org.apache.hadoop.util.Time.monotonicNow;
 
 /**
  * Both FSDirectory and FSNamesystem manage the state of the namespace.
@@ -135,6 +138,7 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  private final boolean contentSummaryAggregatesEnabled;
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
 
@@ -150,6 +154,9 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   // lock to protect the directory and BlockMap
   private final ReentrantReadWriteLock dirLock;
 
+  // locks on path prefixes, only used with fine-grained locking
+  private final PathLockManager pathLockManager;
+
   private final boolean isPermissionEnabled;
   /**
    * Support for ACLs is controlled by a configuration flag. If the
@@ -212,6 +219,82 @@ public int getWriteHoldCount() {
     return this.dirLock.getWriteHoldCount();
   }
 
+  /**
+   * Acquire the locks for an update of the namespace. With fine-grained
+   * locking, an operation that holds the namesystem lock in shared mode
+   * and has locked its paths through {@link #lockPathForCreate(String)}
+   * must call this before changing any namespace state, since the inode
+   * map, quota counts and the edit log are shared between paths. Otherwise
+   * the caller already holds the write lock and this only re-enters it.
+   */
+  void updateLock() {
+    namesystem.lockUpdatesExclusive();
+    writeLock();
+  }
+
+  void updateUnlock() {
+    writeUnlock();
+    namesystem.unlockUpdatesExclusive();
+  }
+
+  /**
+   * @return true if the given path can be modified under path locks, see
+   * {@link DFSConfigKeys#DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY}.
+   * Reserved paths are resolved through the inode map rather than by
+   * name, so they always need the namesystem write lock.
+   */
+  boolean isPathLockingEnabled(String src) {
+    return pathLockManager != null && !isReservedName(src);
+  }
+
+  /**
+   * Lock a path for an operation that creates its last component, along
+   * with any missing ancestors. The directory that receives the new
+   * children is locked for writing and its ancestors for reading. Since it
+   * is only known which ancestors exist once the path has been resolved,
+   * the parent is locked first and the lock is moved up to the deepest
+   * existing ancestor if needed.
+   *
+   * @param src a path for which {@link #isPathLockingEnabled(String)}
+   * @return the held lock, which the caller has to release
+   */
+  PathLockManager.PathLock lockPathForCreate(String src)
+      throws UnresolvedLinkException {
+    Preconditions.checkState(pathLockManager != null);
+    final byte[][] components = INode.getPathComponents(src);
+    int writeIndex = Math.max(components.length - 2, 0);
+    while (true) {
+      final PathLockManager.PathLock lock = pathLockManager.lock(
+          components, writeIndex);
+      boolean locked = false;
+      try {
+        final INodesInPath iip = INodesInPath.resolve(rootDir, components,
+            false);
+        int deepest = 0;
+        while (deepest + 1 < iip.length()
+            && iip.getINode(deepest + 1) != null) {
+          deepest++;
+        }
+        if (iip.isSnapshot() || iip.getLastINode() != null
+            || deepest >= writeIndex) {
+          locked = true;
+          return lock;
+        }
+        writeIndex = deepest;
+      } finally {
+        if (!locked) {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /** @return true if the current thread holds a path lock for writing. */
+  boolean hasPathWriteLock() {
+    return pathLockManager != null
+        && pathLockManager.isWriteLockedByCurrentThread();
+  }
+
   @VisibleForTesting
   public final EncryptionZoneManager ezManager;
 
@@ -220,6 +303,16 @@ public int getWriteHoldCount() {
    * byte[] objects and reduce heap usage.
    */
   private final NameCache<ByteArray> nameCache;
+  /**
+   * The number of names the name cache tracks when directory names are
+   * interned.
+   */
+  private static final int INTERNED_NAME_CACHE_TRACKED_NAMES = 1 << 20;
+  /**
+   * Whether to intern the names of directories as well as files and to trim
+   * the children lists once loaded.
+   */
+  private final boolean internNamesAndTrim;
 
   FSDirectory(FSNamesystem ns, Configuration conf) throws IOException {
     this.dirLock = new ReentrantReadWriteLock(true); // fair
@@ -276,6 +369,9 @@ public int getWriteHoldCount() {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryAggregatesEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_AGGREGATES_ENABLED_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_AGGREGATES_ENABLED_DEFAULT);
     
     // filesystem limits
     this.maxComponentLength = conf.getInt(
@@ -307,7 +403,22 @@ public int getWriteHoldCount() {
         DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT);
     NameNode.LOG.info("Caching file names occuring more than " + threshold
         + " times");
-    nameCache = new NameCache<ByteArray>(threshold);
+    this.internNamesAndTrim = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INTERN_NAMES_AND_TRIM_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INTERN_NAMES_AND_TRIM_ENABLED_DEFAULT);
+    nameCache = new NameCache<ByteArray>(threshold,
+        internNamesAndTrim ? INTERNED_NAME_CACHE_TRACKED_NAMES : 0);
+
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_DEFAULT)) {
+      pathLockManager = new PathLockManager(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_KEY,
+          DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_DEFAULT),
+          conf.getBoolean("dfs.namenode.fslock.fair", true));
+    } else {
+      pathLockManager = null;
+    }
     namesystem = ns;
     this.editLog = ns.getEditLog();
     ezManager = new EncryptionZoneManager(this, conf);
@@ -385,6 +496,10 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  boolean isContentSummaryAggregatesEnabled() {
+    return contentSummaryAggregatesEnabled;
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -403,11 +518,37 @@ void markNameCacheInitialized() {
     writeLock();
     try {
       nameCache.initialized();
+      if (internNamesAndTrim) {
+        trimChildrenLists();
+      }
     } finally {
       writeUnlock();
     }
   }
 
+  /**
+   * Trim the children lists of all directories of the current tree to their
+   * size.
+   */
+  private void trimChildrenLists() {
+    final long start = monotonicNow();
+    long numDirs = 0;
+    final Deque<INodeDirectory> dirs = new ArrayDeque<INodeDirectory>();
+    dirs.push(rootDir);
+    while (!dirs.isEmpty()) {
+      INodeDirectory dir = dirs.pop();
+      dir.trimChildren();
+      numDirs++;
+      for (INode child : dir.getChildrenList(CURRENT_STATE_ID)) {
+        if (child.isDirectory()) {
+          dirs.push(child.asDirectory());
+        }
+      }
+    }
+    NameNode.LOG.info("Trimmed the children lists of " + numDirs
+        + " directories in " + (monotonicNow() - start) + " ms");
+  }
+
   boolean shouldSkipQuotaChecks() {
     return skipQuotaCheck;
   }
@@ -572,6 +713,41 @@ void updateCount(INodesInPath iip, long nsDelta, long ssDelta, short replication
         checkQuota);
   }
 
+  /**
+   * Update the length counted for a file whose blocks hold a different number
+   * of bytes, while the space charged for them does not change, e.g. when the
+   * length of a block under construction is reported.
+   */
+  void updateLength(INodesInPath iip, long lengthDelta) {
+    if (lengthDelta == 0) {
+      return;
+    }
+    writeLock();
+    try {
+      updateCountNoQuotaCheck(iip, iip.length() - 1,
+          new QuotaCounts.Builder().length(lengthDelta).build());
+    } finally {
+      writeUnlock();
+    }
+  }
+
+  /**
+   * Update usage count for a block group of a striped file: the storage space
+   * covers all the internal blocks of the group, while the length only
+   * covers the data it holds.
+   */
+  void updateStripedCount(INodesInPath iip, long lengthDelta, long ssDelta,
+      boolean checkQuota) throws QuotaExceededException {
+    final INodeFile fileINode = iip.getLastINode().asFile();
+    EnumCounters<StorageType> typeSpaceDeltas =
+        getStorageTypeDeltas(fileINode.getStoragePolicyID(), ssDelta,
+            (short) 1, (short) 1);
+    updateCount(iip, iip.length() - 1,
+        new QuotaCounts.Builder().storageSpace(ssDelta).
+            typeSpaces(typeSpaceDeltas).length(lengthDelta).build(),
+        checkQuota);
+  }
+
   /**
    * Update usage count with replication factor change due to setReplication
    */
@@ -735,9 +911,12 @@ static String getFullPathName(INode inode) {
    */
   INodesInPath addINode(INodesInPath existing, INode child)
       throws QuotaExceededException, UnresolvedLinkException {
-    cacheName(child);
     writeLock();
     try {
+      // the name cache is guarded by the directory lock, as with
+      // fine-grained locking new files are added under the shared
+      // namesystem lock
+      cacheName(child);
       return addLastINode(existing, child, true);
     } finally {
       writeUnlock();
@@ -1044,6 +1223,15 @@ public INode getInode(long id) {
       readUnlock();
     }
   }
+
+  /**
+   * @return whether the inode is in a directory deleted in the background,
+   *         whose inodes are still in the inodeMap until they are reclaimed
+   */
+  boolean isDeletedInBackground(INode inode) {
+    final BackgroundDeleter deleter = namesystem.getBackgroundDeleter();
+    return deleter != null && deleter.isDetached(inode);
+  }
   
   @VisibleForTesting
   int getInodeMapSize() {
@@ -1221,8 +1409,9 @@ static INode resolveLastINode(INodesInPath iip) throws FileNotFoundException {
    * reduce heap size.
    */
   void cacheName(INode inode) {
-    // Name is cached only for files
-    if (!inode.isFile()) {
+    // Name is cached only for files, and for directories when interned
+    if (!inode.isFile() && !(internNamesAndTrim && inode.isDirectory()
+        && !inode.isReference())) {
       return;
     }
     ByteArray name = new ByteArray(inode.getLocalNameBytes());
@@ -1350,7 +1539,7 @@ private static String resolveDotInodesPath(String src,
       return Path.SEPARATOR;
     }
     INode inode = fsd.getInode(id);
-    if (inode == null) {
+    if (inode == null || fsd.isDeletedInBackground(inode)) {
       throw new FileNotFoundException(
           "File for given inode path does not exist: " + src);
     }
@@ -185,7 +185,7 @@ private enum State {
       new ThreadLocal<OpInstanceCache>() {
     @Override
     protected OpInstanceCache initialValue() {
-      return new OpInstanceCache();
+      return new OpInstanceCache(cacheOpInstances());
     }
   };
   
@@ -217,6 +217,21 @@ protected synchronized TransactionId initialValue() {
     }
   };
 
+  /**
+   * Create an edit log that writes edits synchronously, or asynchronously
+   * if {@link DFSConfigKeys#DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY} is set.
+   */
+  static FSEditLog newInstance(Configuration conf, NNStorage storage,
+      List<URI> editsDirs) {
+    boolean asyncEditLogging = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT);
+    LOG.info("Edit logging is async: " + asyncEditLogging);
+    return asyncEditLogging
+        ? new FSEditLogAsync(conf, storage, editsDirs)
+        : new FSEditLog(conf, storage, editsDirs);
+  }
+
   /**
    * Constructor for FSEditLog. Underlying journals are constructed, but 
    * no streams are opened until open() is called.
@@ -418,27 +433,7 @@ synchronized List<FormatConfirmable> getFormatConfirmables() {
   void logEdit(final FSEditLogOp op) {
     boolean needsSync = false;
     synchronized (this) {
-      assert isOpenForWrite() :
-        "bad state: " + state;
-      
-      // wait if an automatic sync is scheduled
-      waitIfAutoSyncScheduled();
-      
-      long start = beginTransaction();
-      op.setTransactionId(txid);
-
-      try {
-        editLogStream.write(op);
-      } catch (IOException ex) {
-        // All journals failed, it is handled in logSync.
-      } finally {
-        op.reset();
-      }
-
-      endTransaction(start);
-      
-      // check if it is time to schedule an automatic sync
-      needsSync = shouldForceSync();
+      needsSync = doEditTransaction(op);
       if (needsSync) {
         isAutoSyncScheduled = true;
       }
@@ -450,6 +445,45 @@ assert isOpenForWrite() :
     }
   }
 
+  /**
+   * Assign the next transaction ID to the op and write it to the current
+   * output stream.
+   *
+   * @return true if the output stream asks for a sync, e.g. because its
+   * buffer is full
+   */
+  synchronized boolean doEditTransaction(final FSEditLogOp op) {
+    assert isOpenForWrite() :
+      "bad state: " + state;
+
+    // wait if an automatic sync is scheduled
+    waitIfAutoSyncScheduled();
+
+    long start = beginTransaction();
+    op.setTransactionId(txid);
+
+    try {
+      editLogStream.write(op);
+    } catch (IOException ex) {
+      // All journals failed, it is handled in logSync.
+    } finally {
+      op.reset();
+    }
+
+    endTransaction(start);
+
+    // check if it is time to schedule an automatic sync
+    return shouldForceSync();
+  }
+
+  /**
+   * @return whether op instances may be reused by a thread once its call
+   * to {@link #logEdit} has returned
+   */
+  boolean cacheOpInstances() {
+    return true;
+  }
+
   /**
    * Wait if an automatic sync is scheduled
    */
@@ -582,11 +616,17 @@ void logSyncAll() {
    * waitForSyncToFinish() before assuming they are running alone.
    */
   public void logSync() {
-    long syncStart = 0;
-
     // Fetch the transactionId of this thread. 
-    long mytxid = myTransactionId.get().txid;
-    
+    logSync(myTransactionId.get().txid);
+  }
+
+  /**
+   * Sync all modifications up to the given transaction ID, as described
+   * for {@link #logSync()}.
+   */
+  void logSync(long mytxid) {
+    long syncStart = 0;
+    long numTxnsToSync = 0;
     boolean sync = false;
     try {
       EditLogOutputStream logStream = null;
@@ -616,6 +656,7 @@ public void logSync() {
      
           // now, this thread will do the sync
           syncStart = txid;
+          numTxnsToSync = txid - synctxid;
           isSyncRunning = true;
           sync = true;
   
@@ -667,6 +708,7 @@ public void logSync() {
   
       if (metrics != null) { // Metrics non-null only when used inside name node
         metrics.addSync(elapsed);
+        metrics.addSyncBatchSize(numTxnsToSync);
       }
       
     } finally {
@@ -1461,7 +1503,9 @@ public synchronized void journal(long firstTxId, int numTxns, byte[] data) {
         firstTxId, expectedTxId);
     setNextTxId(firstTxId + numTxns - 1);
     logEdit(data.length, data);
-    logSync();
+    // raw edits are written by this thread, even if ops are logged
+    // asynchronously, so sync up to its own transaction.
+    logSync(myTransactionId.get().txid);
   }
 
   /**
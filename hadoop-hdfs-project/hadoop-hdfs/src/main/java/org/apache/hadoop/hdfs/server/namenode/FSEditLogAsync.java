@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.util.ExitUtil;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * An edit log that writes edits from a dedicated thread.
+ *
+ * Threads logging an edit only queue the op. The sync thread takes ops from
+ * the queue, writes them to the current output stream and syncs whenever
+ * the queue runs dry or the stream asks for it, so that a single sync makes
+ * a whole batch of edits durable.
+ *
+ * An edit logged by an RPC handler postpones the response of its call. The
+ * handler does not wait in {@link #logSync()}, and the response is sent by
+ * the sync thread once the edit has been synced. Any other thread waits in
+ * {@link #logSync()} for its last edit, as with the synchronous edit log.
+ */
+class FSEditLogAsync extends FSEditLog implements Runnable {
+
+  // use a separate mutex, so that the thread can be stopped while the
+  // edit log monitor is held.
+  private final Object syncThreadLock = new Object();
+  private Thread syncThread;
+
+  // the last edit queued by the current thread, if not waited for yet.
+  private static final ThreadLocal<Edit> threadEdit = new ThreadLocal<Edit>();
+
+  // accessed by the logging threads and the sync thread.
+  private final BlockingQueue<Edit> editPendingQ;
+
+  // edits written but not yet synced; only accessed by the sync thread.
+  // It is effectively bounded by the buffer size of the output stream,
+  // since a full buffer forces a sync.
+  private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
+
+  FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
+    super(conf, storage, editsDirs);
+    int queueSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_DEFAULT);
+    Preconditions.checkArgument(queueSize > 0, "%s must be positive: %s",
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_KEY,
+        queueSize);
+    editPendingQ = new ArrayBlockingQueue<Edit>(queueSize);
+  }
+
+  /**
+   * Ops are written after {@link #logEdit} returns, so they cannot be
+   * reused by the logging thread.
+   */
+  @Override
+  boolean cacheOpInstances() {
+    return false;
+  }
+
+  private boolean isSyncThreadAlive() {
+    synchronized (syncThreadLock) {
+      return syncThread != null && syncThread.isAlive();
+    }
+  }
+
+  private void startSyncThread() {
+    synchronized (syncThreadLock) {
+      if (!isSyncThreadAlive()) {
+        syncThread = new Thread(this, getClass().getSimpleName());
+        syncThread.setDaemon(true);
+        syncThread.start();
+      }
+    }
+  }
+
+  private void stopSyncThread() {
+    synchronized (syncThreadLock) {
+      if (syncThread != null) {
+        try {
+          syncThread.interrupt();
+          syncThread.join();
+        } catch (InterruptedException e) {
+          // we're quitting anyway.
+        } finally {
+          syncThread = null;
+        }
+      }
+    }
+  }
+
+  @Override
+  void openForWrite(int layoutVersion) throws IOException {
+    try {
+      startSyncThread();
+      super.openForWrite(layoutVersion);
+    } catch (IOException ioe) {
+      stopSyncThread();
+      throw ioe;
+    }
+  }
+
+  @Override
+  void close() {
+    super.close();
+    stopSyncThread();
+  }
+
+  @Override
+  void logEdit(final FSEditLogOp op) {
+    final Edit edit;
+    final Server.Call call = Server.getCurCall().get();
+    // A caller that holds the edit log monitor, e.g. to roll the log,
+    // expects its edits to be synced before it continues.
+    if (call != null && !Thread.holdsLock(this)) {
+      edit = new RpcEdit(this, op, call);
+    } else {
+      edit = new SyncEdit(this, op);
+    }
+    threadEdit.set(edit);
+    enqueueEdit(edit);
+  }
+
+  @Override
+  public void logSync() {
+    Edit edit = threadEdit.get();
+    if (edit != null) {
+      threadEdit.set(null);
+      edit.logSyncWait();
+    }
+  }
+
+  @Override
+  void logSyncAll() {
+    // Queue an edit without an op, which is synced once all the edits
+    // queued before it are.
+    Edit edit = new SyncEdit(this, null) {
+      @Override
+      boolean logEdit() {
+        return true;
+      }
+    };
+    enqueueEdit(edit);
+    edit.logSyncWait();
+  }
+
+  private void enqueueEdit(Edit edit) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("logEdit " + edit);
+    }
+    try {
+      if (!editPendingQ.offer(edit)) {
+        Preconditions.checkState(isSyncThreadAlive(),
+            "sync thread is not alive");
+        if (Thread.holdsLock(this)) {
+          // The sync thread needs the monitor to write edits, so release it
+          // while waiting for space. Every sync notifies the monitor.
+          do {
+            this.wait(1000);
+          } while (!editPendingQ.offer(edit));
+        } else {
+          editPendingQ.put(edit);
+        }
+      }
+    } catch (Throwable t) {
+      // failure to queue an edit is fatal, as it would be lost.
+      terminate(t);
+    }
+  }
+
+  private Edit dequeueEdit() throws InterruptedException {
+    // only block for the next edit if no edits are waiting for a sync.
+    return syncWaitQ.isEmpty() ? editPendingQ.take() : editPendingQ.poll();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        boolean doSync;
+        Edit edit = dequeueEdit();
+        if (edit != null) {
+          // sync if the output stream asks for it.
+          doSync = edit.logEdit();
+          syncWaitQ.add(edit);
+        } else {
+          // sync when no more edits are queued.
+          doSync = !syncWaitQ.isEmpty();
+        }
+        if (doSync) {
+          // Failing to sync terminates the namenode, but tests that disable
+          // ExitUtil.terminate need the exception to be passed on.
+          RuntimeException syncEx = null;
+          try {
+            logSync(getLastWrittenTxId());
+          } catch (RuntimeException ex) {
+            syncEx = ex;
+          }
+          NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+          long now = monotonicNow();
+          while ((edit = syncWaitQ.poll()) != null) {
+            if (metrics != null) {
+              metrics.addAsyncEditSyncLatency(now - edit.queueTime);
+            }
+            edit.logSyncNotify(syncEx);
+          }
+        }
+      }
+    } catch (InterruptedException ie) {
+      LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
+    } catch (Throwable t) {
+      terminate(t);
+    }
+  }
+
+  private void terminate(Throwable t) {
+    String message = "Exception while edit logging: " + t.getMessage();
+    LOG.fatal(message, t);
+    ExitUtil.terminate(1, message);
+  }
+
+  @VisibleForTesting
+  int getNumPendingEdits() {
+    return editPendingQ.size();
+  }
+
+  /** An op queued for the sync thread. */
+  private static abstract class Edit {
+    final FSEditLog log;
+    final FSEditLogOp op;
+    final long queueTime = monotonicNow();
+
+    Edit(FSEditLog log, FSEditLogOp op) {
+      this.log = log;
+      this.op = op;
+    }
+
+    /** @return whether the edit log wants to sync. */
+    boolean logEdit() {
+      return log.doEditTransaction(op);
+    }
+
+    /** Called by the logging thread to wait for the edit to be synced. */
+    abstract void logSyncWait();
+
+    /** Called by the sync thread once the edit is synced or failed. */
+    abstract void logSyncNotify(RuntimeException syncEx);
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "[op:" + op + "]";
+    }
+  }
+
+  /**
+   * An edit whose logging thread waits in logSync. It waits on the edit log
+   * monitor, which releases the monitor for the sync thread if the logging
+   * thread holds it.
+   */
+  private static class SyncEdit extends Edit {
+    private boolean done = false;
+    private RuntimeException syncEx;
+
+    SyncEdit(FSEditLog log, FSEditLogOp op) {
+      super(log, op);
+    }
+
+    @Override
+    void logSyncWait() {
+      synchronized (log) {
+        while (!done) {
+          try {
+            log.wait(10);
+          } catch (InterruptedException e) {
+          }
+        }
+        if (syncEx != null) {
+          syncEx.fillInStackTrace();
+          throw syncEx;
+        }
+      }
+    }
+
+    @Override
+    void logSyncNotify(RuntimeException ex) {
+      synchronized (log) {
+        done = true;
+        syncEx = ex;
+        log.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * An edit logged by an RPC handler. The handler is released immediately
+   * and the response of its call is sent once the edit is synced.
+   */
+  private static class RpcEdit extends Edit {
+    private final Server.Call call;
+
+    RpcEdit(FSEditLog log, FSEditLogOp op, Server.Call call) {
+      super(log, op);
+      this.call = call;
+      call.postponeResponse();
+    }
+
+    @Override
+    void logSyncWait() {
+      // the response is sent by the sync thread, don't block the handler.
+    }
+
+    @Override
+    void logSyncNotify(RuntimeException syncEx) {
+      try {
+        if (syncEx == null) {
+          call.sendResponse();
+        } else {
+          call.abortResponse(syncEx);
+        }
+      } catch (Exception e) {
+        // the client is gone, nothing to do.
+      }
+    }
+  }
+}
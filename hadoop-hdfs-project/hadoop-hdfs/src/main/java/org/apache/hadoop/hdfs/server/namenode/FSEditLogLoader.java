@@ -40,11 +40,13 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LayoutVersion;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoStriped;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.RollingUpgradeStartupOption;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
@@ -362,6 +364,12 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
             .adjustReplication(addCloseOp.replication);
         assert addCloseOp.blocks.length == 0;
 
+        // the op does not record the layout of the file: a new file is
+        // striped with the erasure coding policy of its directory, which is
+        // logged before as an xattr
+        final ErasureCodingPolicy ecPolicy =
+            FSDirErasureCodingOp.getErasureCodingPolicy(fsDir, iip);
+
         // add to the file tree
         inodeId = getAndUpdateLastInodeId(addCloseOp.inodeId, logVersion, lastInodeId);
         newFile = FSDirWriteFileOp.addFileForEditLog(fsDir, inodeId,
@@ -370,7 +378,8 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
             addCloseOp.xAttrs, replication, addCloseOp.mtime,
             addCloseOp.atime, addCloseOp.blockSize, true,
             addCloseOp.clientName, addCloseOp.clientMachine,
-            addCloseOp.storagePolicyId);
+            addCloseOp.storagePolicyId,
+            ecPolicy == null ? 0 : ecPolicy.getId());
         iip = INodesInPath.replace(iip, iip.length() - 1, newFile);
         fsNamesys.leaseManager.addLease(addCloseOp.clientName, newFile.getId());
 
@@ -967,7 +976,7 @@ private void addNewBlock(AddBlockOp op, INodeFile file)
       Preconditions.checkState(oldBlocks == null || oldBlocks.length == 0);
     }
     // add the new block
-    BlockInfo newBI = new BlockInfoContiguous(newBlock,
+    BlockInfo newBI = newBlockInfo(newBlock, file,
         file.getPreferredBlockReplication());
     newBI.convertToBlockUnderConstruction(
         HdfsServerConstants.BlockUCState.UNDER_CONSTRUCTION, null);
@@ -1048,7 +1057,7 @@ private void updateBlocks(FSDirectory fsDir, BlockListUpdatingOp op,
           // TODO: shouldn't this only be true for the last block?
           // what about an old-version fsync() where fsync isn't called
           // until several blocks in?
-          newBI = new BlockInfoContiguous(newBlock,
+          newBI = newBlockInfo(newBlock, file,
               file.getPreferredBlockReplication());
           newBI.convertToBlockUnderConstruction(
               HdfsServerConstants.BlockUCState.UNDER_CONSTRUCTION, null);
@@ -1057,8 +1066,7 @@ private void updateBlocks(FSDirectory fsDir, BlockListUpdatingOp op,
           // is only executed when loading edits written by prior
           // versions of Hadoop. Current versions always log
           // OP_ADD operations as each block is allocated.
-          newBI = new BlockInfoContiguous(newBlock,
-              file.getFileReplication());
+          newBI = newBlockInfo(newBlock, file, file.getFileReplication());
         }
         fsNamesys.getBlockManager().addBlockCollection(newBI, file);
         file.addBlock(newBI);
@@ -1067,6 +1075,18 @@ private void updateBlocks(FSDirectory fsDir, BlockListUpdatingOp op,
     }
   }
 
+  /**
+   * @return a block group for a block of a striped file, or else a block
+   * with the given replication
+   */
+  private static BlockInfo newBlockInfo(Block block, INodeFile file,
+      short replication) {
+    if (file.isStriped()) {
+      return new BlockInfoStriped(block, file.getErasureCodingPolicy());
+    }
+    return new BlockInfoContiguous(block, replication);
+  }
+
   private static void dumpOpCounts(
       EnumMap<FSEditLogOpCodes, Holder<Integer>> opCounts) {
     StringBuilder sb = new StringBuilder();
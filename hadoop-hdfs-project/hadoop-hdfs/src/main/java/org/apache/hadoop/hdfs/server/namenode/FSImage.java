@@ -151,7 +151,7 @@ protected FSImage(Configuration conf,
         DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_KEY,
         DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_DEFAULT);
 
-    this.editLog = new FSEditLog(conf, storage, editsDirs);
+    this.editLog = FSEditLog.newInstance(conf, storage, editsDirs);
     
     archivalManager = new NNStorageRetentionManager(conf, storage, editLog);
   }
@@ -856,6 +856,9 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
       // update the counts
       updateCountForQuota(target.getBlockManager().getStoragePolicySuite(),
           target.dir.rootDir, quotaInitThreads);
+      if (lastAppliedTxId > prevLastAppliedTxId) {
+        target.getGlobalStateIdContext().stateIdAdvanced();
+      }
     }
     prog.endPhase(Phase.LOADING_EDITS);
     return lastAppliedTxId - prevLastAppliedTxId;
@@ -961,8 +964,7 @@ public void compute() {
         if (LOG.isDebugEnabled()) {
           LOG.debug("Setting quota for " + dir + "\n" + myCounts);
         }
-        dir.getDirectoryWithQuotaFeature().setSpaceConsumed(nsConsumed,
-            ssConsumed, tsConsumed);
+        dir.getDirectoryWithQuotaFeature().setSpaceConsumed(myCounts);
       }
 
       synchronized(counts) {
@@ -1026,7 +1028,8 @@ void saveFSImage(SaveNamespaceContext context, StorageDirectory sd,
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context,
+        conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     saver.save(newFile, compression);
     
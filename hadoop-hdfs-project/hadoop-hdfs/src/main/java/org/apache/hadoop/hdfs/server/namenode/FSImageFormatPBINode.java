@@ -18,13 +18,22 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,12 +48,14 @@
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.BlockProto;
 import org.apache.hadoop.hdfs.protocolPB.PBHelper;
 import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoStriped;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.LoaderContext;
@@ -63,10 +74,12 @@
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress.Counter;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
+import org.apache.hadoop.hdfs.server.namenode.startupprogress.StepType;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.protobuf.ByteString;
 
@@ -224,9 +237,18 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       }
     }
 
+    /** The number of inodes added to the inode map at once. */
+    private static final int INODE_MAP_BATCH_SIZE = 1000;
+
     private final FSDirectory dir;
     private final FSNamesystem fsn;
     private final FSImageFormatProtobuf.Loader parent;
+    /**
+     * Guards the namespace structures shared by threads loading sub-sections
+     * in parallel: the inode map, the name cache and the blocks map.
+     */
+    private final Object loadLock = new Object();
+    private long numInodes;
 
     Loader(FSNamesystem fsn, final FSImageFormatProtobuf.Loader parent) {
       this.fsn = fsn;
@@ -235,6 +257,31 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
     }
 
     void loadINodeDirectorySection(InputStream in) throws IOException {
+      List<FileSummary.Section> subSections = parent.getSubSections(
+          FSImageFormatProtobuf.SectionName.INODE_DIR, numInodes);
+      if (subSections == null) {
+        loadINodeDirectories(in, false);
+        return;
+      }
+      parent.loadSubSections(FSImageFormatProtobuf.SectionName.INODE_DIR,
+          StepType.INODES, subSections, null,
+          new FSImageFormatProtobuf.Loader.SubSectionLoader() {
+            @Override
+            public void load(InputStream in, Counter counter)
+                throws IOException {
+              loadINodeDirectories(in, true);
+            }
+          });
+    }
+
+    /**
+     * Load directory entries until the end of the stream. Every entry has a
+     * distinct parent, so entries may be loaded concurrently as long as the
+     * shared name cache and blocks map are only updated under
+     * {@link #loadLock}.
+     */
+    private void loadINodeDirectories(InputStream in, boolean concurrent)
+        throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
       while (true) {
@@ -247,11 +294,11 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
         INodeDirectory p = dir.getInode(e.getParent()).asDirectory();
         for (long id : e.getChildrenList()) {
           INode child = dir.getInode(id);
-          addToParent(p, child);
+          addToParent(p, child, concurrent);
         }
         for (int refId : e.getRefChildrenList()) {
           INodeReference ref = refList.get(refId);
-          addToParent(p, ref);
+          addToParent(p, ref, concurrent);
         }
       }
     }
@@ -260,20 +307,82 @@ void loadINodeSection(InputStream in, StartupProgress prog,
         Step currentStep) throws IOException {
       INodeSection s = INodeSection.parseDelimitedFrom(in);
       fsn.dir.resetLastInodeId(s.getLastInodeId());
-      long numInodes = s.getNumInodes();
+      numInodes = s.getNumInodes();
       LOG.info("Loading " + numInodes + " INodes.");
       prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, numInodes);
       Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
-      for (int i = 0; i < numInodes; ++i) {
+      List<FileSummary.Section> subSections = parent.getSubSections(
+          FSImageFormatProtobuf.SectionName.INODE, numInodes);
+      if (subSections == null) {
+        for (int i = 0; i < numInodes; ++i) {
+          INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+          if (p.getId() == INodeId.ROOT_INODE_ID) {
+            loadRootINode(p);
+          } else {
+            INode n = loadINode(p);
+            dir.addToInodeMap(n);
+          }
+          counter.increment();
+        }
+        return;
+      }
+
+      final AtomicLong numLoaded = new AtomicLong();
+      parent.loadSubSections(FSImageFormatProtobuf.SectionName.INODE,
+          StepType.INODES, subSections, counter,
+          new FSImageFormatProtobuf.Loader.SubSectionLoader() {
+            @Override
+            public void load(InputStream in, Counter counter)
+                throws IOException {
+              numLoaded.addAndGet(loadINodes(in, counter));
+            }
+          });
+      if (numLoaded.get() != numInodes) {
+        throw new IOException("Loaded " + numLoaded.get() + " INodes from "
+            + subSections.size() + " sub-sections, but the INode section "
+            + "has " + numInodes);
+      }
+    }
+
+    /**
+     * Load inodes until the end of the stream, adding them to the inode map
+     * in batches under {@link #loadLock}.
+     *
+     * @return the number of inodes loaded
+     */
+    private long loadINodes(InputStream in, Counter counter)
+        throws IOException {
+      List<INode> batch = new ArrayList<INode>(INODE_MAP_BATCH_SIZE);
+      long n = 0;
+      while (true) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        if (p == null) {
+          break;
+        }
         if (p.getId() == INodeId.ROOT_INODE_ID) {
-          loadRootINode(p);
+          synchronized (loadLock) {
+            loadRootINode(p);
+          }
         } else {
-          INode n = loadINode(p);
-          dir.addToInodeMap(n);
+          batch.add(loadINode(p));
+          if (batch.size() == INODE_MAP_BATCH_SIZE) {
+            addToInodeMap(batch);
+          }
         }
+        ++n;
         counter.increment();
       }
+      addToInodeMap(batch);
+      return n;
+    }
+
+    private void addToInodeMap(List<INode> batch) {
+      synchronized (loadLock) {
+        for (INode n : batch) {
+          dir.addToInodeMap(n);
+        }
+      }
+      batch.clear();
     }
 
     /**
@@ -295,7 +404,8 @@ void loadFilesUnderConstructionSection(InputStream in) throws IOException {
       }
     }
 
-    private void addToParent(INodeDirectory parent, INode child) {
+    private void addToParent(INodeDirectory parent, INode child,
+        boolean concurrent) {
       if (parent == dir.rootDir && FSDirectory.isReservedName(child)) {
         throw new HadoopIllegalArgumentException("File name \""
             + child.getLocalName() + "\" is reserved. Please "
@@ -306,6 +416,16 @@ private void addToParent(INodeDirectory parent, INode child) {
       if (!parent.addChild(child)) {
         return;
       }
+      if (concurrent) {
+        synchronized (loadLock) {
+          addToNameCacheAndBlocksMap(child);
+        }
+      } else {
+        addToNameCacheAndBlocksMap(child);
+      }
+    }
+
+    private void addToNameCacheAndBlocksMap(INode child) {
       dir.cacheName(child);
 
       if (child.isFile()) {
@@ -332,12 +452,16 @@ private INodeFile loadINodeFile(INodeSection.INode n) {
       INodeSection.INodeFile f = n.getFile();
       List<BlockProto> bp = f.getBlocksList();
       short replication = (short) f.getReplication();
+      byte ecPolicyID = (byte) f.getErasureCodingPolicyID();
+      ErasureCodingPolicy ecPolicy = ecPolicyID == 0 ? null :
+          ErasureCodingPolicy.getSystemPolicy(ecPolicyID);
       LoaderContext state = parent.getLoaderContext();
 
       BlockInfo[] blocks = new BlockInfo[bp.size()];
       for (int i = 0, e = bp.size(); i < e; ++i) {
-        blocks[i] =
-            new BlockInfoContiguous(PBHelper.convert(bp.get(i)), replication);
+        Block b = PBHelper.convert(bp.get(i));
+        blocks[i] = ecPolicy != null ? new BlockInfoStriped(b, ecPolicy) :
+            new BlockInfoContiguous(b, replication);
       }
       final PermissionStatus permissions = loadPermission(f.getPermission(),
           parent.getLoaderContext().getStringTable());
@@ -345,7 +469,7 @@ private INodeFile loadINodeFile(INodeSection.INode n) {
       final INodeFile file = new INodeFile(n.getId(),
           n.getName().toByteArray(), permissions, f.getModificationTime(),
           f.getAccessTime(), blocks, replication, f.getPreferredBlockSize(),
-          (byte)f.getStoragePolicyID());
+          ecPolicyID, (byte)f.getStoragePolicyID());
 
       if (f.hasAcl()) {
         int[] entries = AclEntryStatusFormat.toInt(loadAclEntries(
@@ -480,6 +604,9 @@ public static INodeSection.INodeFile.Builder buildINodeFile(
           .setPreferredBlockSize(file.getPreferredBlockSize())
           .setReplication(file.getFileReplication())
           .setStoragePolicyID(file.getLocalStoragePolicyID());
+      if (file.getErasureCodingPolicyID() != 0) {
+        b.setErasureCodingPolicyID(file.getErasureCodingPolicyID());
+      }
 
       AclFeature f = file.getAclFeature();
       if (f != null) {
@@ -516,6 +643,9 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
       return b;
     }
 
+    /** The number of inodes serialized by a task of a parallel save. */
+    private static final int SAVE_BATCH_SIZE = 4096;
+
     private final FSNamesystem fsn;
     private final FileSummary.Builder summary;
     private final SaveNamespaceContext context;
@@ -533,9 +663,19 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           .getINodeMap().getMapIterator();
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
+      parent.startSubSection();
+      long subSectionSize = parent.getSubSectionSize(
+          fsn.dir.getINodeMap().size());
       int i = 0;
+      long numScanned = 0;
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
+        // sub-sections are cut by the number of inodes scanned, as the
+        // number of directories is not known up front.
+        if (subSectionSize > 0 && ++numScanned % subSectionSize == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_DIR);
+        }
         if (!n.isDirectory()) {
           continue;
         }
@@ -562,6 +702,8 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR);
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -574,19 +716,89 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
-      Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
+      parent.startSubSection();
+      long subSectionSize = parent.getSubSectionSize(inodesMap.size());
+      ExecutorService executor = parent.getExecutorService();
+      if (executor != null) {
+        serializeINodesInParallel(out, executor, subSectionSize);
+      } else {
+        int i = 0;
+        Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          save(out, n);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          if (subSectionSize > 0 && i % subSectionSize == 0) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE);
+          }
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE);
       parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
 
+    /**
+     * Serialize batches of inodes on the given executor and write the
+     * results in the order of the inode map, so that the section is the same
+     * as when written sequentially. At most two batches per thread are in
+     * flight at a time.
+     */
+    private void serializeINodesInParallel(OutputStream out,
+        ExecutorService executor, long subSectionSize) throws IOException {
+      final int maxPending = 2 * parent.getNumSaverThreads();
+      Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+      Iterator<INodeWithAdditionalFields> iter = fsn.dir.getINodeMap()
+          .getMapIterator();
+      long numWritten = 0;
+      long nextSubSection = subSectionSize;
+      try {
+        while (iter.hasNext() || !pending.isEmpty()) {
+          if (iter.hasNext() && pending.size() < maxPending) {
+            final List<INodeWithAdditionalFields> batch =
+                new ArrayList<INodeWithAdditionalFields>(SAVE_BATCH_SIZE);
+            while (iter.hasNext() && batch.size() < SAVE_BATCH_SIZE) {
+              batch.add(iter.next());
+            }
+            pending.add(executor.submit(new Callable<byte[]>() {
+              @Override
+              public byte[] call() throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                for (INodeWithAdditionalFields n : batch) {
+                  save(bytes, n);
+                }
+                return bytes.toByteArray();
+              }
+            }));
+            continue;
+          }
+          out.write(pending.remove().get());
+          numWritten += SAVE_BATCH_SIZE;
+          context.checkCancelled();
+          if (subSectionSize > 0 && numWritten >= nextSubSection) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE);
+            nextSubSection = numWritten + subSectionSize;
+          }
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException(
+            "Interrupted while saving the INode section");
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), IOException.class);
+        throw new IOException("Failed to save the INode section",
+            e.getCause());
+      } finally {
+        for (Future<byte[]> f : pending) {
+          f.cancel(true);
+        }
+      }
+    }
+
     void serializeFilesUCSection(OutputStream out) throws IOException {
       Collection<Long> filesWithUC = fsn.getLeaseManager()
               .getINodeIdWithLeases();
@@ -25,6 +25,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -34,14 +35,21 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
@@ -65,8 +73,10 @@
 import org.apache.hadoop.util.LimitInputStream;
 import org.apache.hadoop.util.Time;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -98,7 +108,9 @@ static <T> DeduplicationMap<T> newMap() {
         return new DeduplicationMap<T>();
       }
 
-      int getId(E value) {
+      // synchronized, as the INODE section may be serialized by several
+      // threads.
+      synchronized int getId(E value) {
         if (value == null) {
           return 0;
         }
@@ -111,7 +123,7 @@ int getId(E value) {
         return v;
       }
 
-      int size() {
+      synchronized int size() {
         return map.size();
       }
 
@@ -148,6 +160,11 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** The image file, opened once more for each sub-section loaded */
+    private File imageFile;
+    /** Sub-sections of the image by section, if loading in parallel */
+    private Map<String, List<FileSummary.Section>> subSections;
+    private ExecutorService executorService;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -176,11 +193,16 @@ void load(File file) throws IOException {
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
+      imageFile = file;
       try {
         loadInternal(raFile, fin);
         long end = Time.monotonicNow();
         LOG.info("Loaded FSImage in " + (end - start) / 1000 + " seconds.");
       } finally {
+        if (executorService != null) {
+          executorService.shutdownNow();
+          executorService = null;
+        }
         fin.close();
         raFile.close();
       }
@@ -200,6 +222,7 @@ private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
       }
 
       FileChannel channel = fin.getChannel();
+      initParallelLoad(summary);
 
       FSImageFormatPBINode.Loader inodeLoader = new FSImageFormatPBINode.Loader(
           fsn, this);
@@ -240,8 +263,13 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
             summary.getCodec(), in);
 
         String n = s.getName();
+        SectionName sectionName = SectionName.fromString(n);
+        if (sectionName == null) {
+          LOG.warn("Unrecognized section " + n);
+          continue;
+        }
 
-        switch (SectionName.fromString(n)) {
+        switch (sectionName) {
         case NS_INFO:
           loadNameSystemSection(in);
           break;
@@ -291,6 +319,124 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
       }
     }
 
+    private void initParallelLoad(FileSummary summary) {
+      if (!conf.getBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT)
+          || summary.getSubSectionsCount() == 0) {
+        return;
+      }
+      if (summary.hasCodec()) {
+        LOG.warn("Ignoring the sub-sections of the compressed image "
+            + imageFile);
+        return;
+      }
+      subSections = Maps.newHashMap();
+      for (FileSummary.Section s : summary.getSubSectionsList()) {
+        List<FileSummary.Section> l = subSections.get(s.getName());
+        if (l == null) {
+          l = Lists.newArrayList();
+          subSections.put(s.getName(), l);
+        }
+        l.add(s);
+      }
+    }
+
+    /**
+     * @return the sub-sections of the given section, or null if the section
+     * has to be loaded sequentially, because parallel loading is disabled,
+     * the image has no sub-sections or it is too small.
+     */
+    List<FileSummary.Section> getSubSections(SectionName name,
+        long numInodes) {
+      if (subSections == null) {
+        return null;
+      }
+      List<FileSummary.Section> l = subSections.get(name.name);
+      int threshold = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
+      if (l == null || l.size() < 2 || numInodes < threshold) {
+        return null;
+      }
+      return l;
+    }
+
+    /** Loads the records of a sub-section from the given stream. */
+    interface SubSectionLoader {
+      void load(InputStream in, Counter counter) throws IOException;
+    }
+
+    /**
+     * Load sub-sections of a section in parallel. The progress of each
+     * sub-section is reported as a step of its own.
+     *
+     * @param counter the counter of the step of the whole section, which
+     *          is incremented as well, may be null
+     */
+    void loadSubSections(SectionName name, StepType stepType,
+        List<FileSummary.Section> sections, final Counter counter,
+        final SubSectionLoader loader) throws IOException {
+      if (executorService == null) {
+        int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+        executorService = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("FSImageLoader-%d").build());
+      }
+      LOG.info("Loading " + sections.size() + " sub-sections of section "
+          + name.name + " in parallel");
+      final StartupProgress prog = NameNode.getStartupProgress();
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (int i = 0; i < sections.size(); i++) {
+        final FileSummary.Section s = sections.get(i);
+        final Step step = new Step(stepType, name.name + " sub-section "
+            + (i + 1) + " of " + sections.size(), s.getLength());
+        futures.add(executorService.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            prog.beginStep(Phase.LOADING_FSIMAGE, step);
+            final Counter stepCounter =
+                prog.getCounter(Phase.LOADING_FSIMAGE, step);
+            FileInputStream fin = new FileInputStream(imageFile);
+            try {
+              fin.getChannel().position(s.getOffset());
+              InputStream in = new BufferedInputStream(
+                  new LimitInputStream(fin, s.getLength()));
+              loader.load(in, new Counter() {
+                @Override
+                public void increment() {
+                  stepCounter.increment();
+                  if (counter != null) {
+                    counter.increment();
+                  }
+                }
+              });
+            } finally {
+              fin.close();
+            }
+            prog.endStep(Phase.LOADING_FSIMAGE, step);
+            return null;
+          }
+        }));
+      }
+      try {
+        for (Future<Void> f : futures) {
+          f.get();
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while loading section "
+            + name.name);
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), IOException.class);
+        throw new IOException("Failed to load section " + name.name,
+            e.getCause());
+      } finally {
+        for (Future<Void> f : futures) {
+          f.cancel(true);
+        }
+      }
+    }
+
     private void loadNameSystemSection(InputStream in) throws IOException {
       NameSystemSection s = NameSystemSection.parseDelimitedFrom(in);
       BlockIdManager blockIdManager = fsn.getBlockIdManager();
@@ -368,6 +514,11 @@ public static final class Saver {
     private final SaverContext saverContext;
     private long currentOffset = FSImageUtil.MAGIC_HEADER.length;
     private MD5Hash savedDigest;
+    private final Configuration conf;
+    /** Start of the current sub-section, if sub-sections are written */
+    private long subSectionOffset;
+    private boolean writeSubSections;
+    private ExecutorService executorService;
 
     private FileChannel fileChannel;
     // OutputStream for the section data
@@ -375,8 +526,9 @@ public static final class Saver {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
 
-    Saver(SaveNamespaceContext context) {
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
+      this.conf = conf;
       this.saverContext = new SaverContext();
     }
 
@@ -408,6 +560,69 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       currentOffset += length;
     }
 
+    /**
+     * @return the number of records of a section after which a sub-section
+     * ends, or 0 if no sub-sections are written.
+     */
+    long getSubSectionSize(long numRecords) {
+      if (!writeSubSections) {
+        return 0;
+      }
+      int target = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT);
+      return Math.max(1, (numRecords + target - 1) / Math.max(1, target));
+    }
+
+    /** Start the first sub-section of a section at the current position. */
+    void startSubSection() throws IOException {
+      if (writeSubSections) {
+        sectionOutputStream.flush();
+        subSectionOffset = fileChannel.position();
+      }
+    }
+
+    /**
+     * End the current sub-section at the current position and start the next
+     * one. A sub-section may only end on a record boundary.
+     */
+    void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      sectionOutputStream.flush();
+      long position = fileChannel.position();
+      if (position > subSectionOffset) {
+        summary.addSubSections(FileSummary.Section.newBuilder()
+            .setName(name.name).setLength(position - subSectionOffset)
+            .setOffset(subSectionOffset));
+      }
+      subSectionOffset = position;
+    }
+
+    /**
+     * @return the executor to serialize records in parallel with, or null if
+     * the image is saved sequentially.
+     */
+    ExecutorService getExecutorService() {
+      if (executorService == null && conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_DEFAULT)) {
+        int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+        executorService = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("FSImageSaver-%d").build());
+      }
+      return executorService;
+    }
+
+    int getNumSaverThreads() {
+      return conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+    }
+
     private void flushSectionOutputStream() throws IOException {
       if (codec != null) {
         ((CompressorStream) sectionOutputStream).finish();
@@ -421,6 +636,10 @@ void save(File file, FSImageCompression compression) throws IOException {
       try {
         saveInternal(fout, compression, file.getAbsolutePath());
       } finally {
+        if (executorService != null) {
+          executorService.shutdownNow();
+          executorService = null;
+        }
         fout.close();
       }
     }
@@ -475,6 +694,11 @@ private void saveInternal(FileOutputStream fout,
       } else {
         sectionOutputStream = underlyingOutputStream;
       }
+      // The offsets of sub-sections within a compressed section cannot be
+      // used to read them.
+      writeSubSections = codec == null && conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
 
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
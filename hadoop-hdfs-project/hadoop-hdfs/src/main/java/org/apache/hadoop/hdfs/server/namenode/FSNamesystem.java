@@ -58,8 +58,14 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_EDIT_LOG_AUTOROLL_MULTIPLIER_THRESHOLD_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ENABLE_RETRY_CACHE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ENABLE_RETRY_CACHE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELETE_BACKGROUND_BATCH_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELETE_BACKGROUND_BATCH_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELETE_BACKGROUND_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELETE_BACKGROUND_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LAZY_PERSIST_FILE_SCRUB_INTERVAL_SEC;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LAZY_PERSIST_FILE_SCRUB_INTERVAL_SEC_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_KEY;
@@ -176,6 +182,7 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.EncryptionZone;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
@@ -184,6 +191,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.RecoveryInProgressException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
@@ -198,6 +206,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockCollection;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockIdManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoStriped;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockUnderConstructionFeature;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
@@ -248,8 +257,10 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.ObserverRetryOnActiveException;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCache;
 import org.apache.hadoop.ipc.Server;
@@ -439,6 +450,13 @@ private void logAuditEvent(boolean succeeded,
   // A daemon to periodically clean up corrupt lazyPersist files
   // from the name space.
   Daemon lazyPersistFileScrubber = null;
+
+  // Reclaims the inodes and blocks of large deleted directories, if enabled.
+  private final BackgroundDeleter backgroundDeleter;
+
+  // Exchanges the last applied or written txid with the clients.
+  private final GlobalStateIdContext globalStateIdContext =
+      new GlobalStateIdContext(this);
   /**
    * When an active namenode will roll its own edit log, in # edits
    */
@@ -723,7 +741,11 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     }
     boolean fair = conf.getBoolean("dfs.namenode.fslock.fair", true);
     LOG.info("fsLock is fair:" + fair);
-    fsLock = new FSNamesystemLock(fair);
+    boolean fineGrained = conf.getBoolean(
+        DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY,
+        DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_DEFAULT);
+    LOG.info("Fine-grained locking enabled? " + fineGrained);
+    fsLock = new FSNamesystemLock(fair, fineGrained);
     cond = fsLock.writeLock().newCondition();
     cpLock = new ReentrantLock();
 
@@ -816,6 +838,21 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
                 + " must be zero (for disable) or greater than zero.");
       }
 
+      if (conf.getBoolean(DFS_NAMENODE_DELETE_BACKGROUND_ENABLED_KEY,
+          DFS_NAMENODE_DELETE_BACKGROUND_ENABLED_DEFAULT)) {
+        final int batchSize = conf.getInt(
+            DFS_NAMENODE_DELETE_BACKGROUND_BATCH_SIZE_KEY,
+            DFS_NAMENODE_DELETE_BACKGROUND_BATCH_SIZE_DEFAULT);
+        if (batchSize <= 0) {
+          throw new IllegalArgumentException(
+              DFS_NAMENODE_DELETE_BACKGROUND_BATCH_SIZE_KEY
+                  + " must be greater than zero.");
+        }
+        this.backgroundDeleter = new BackgroundDeleter(this, batchSize);
+      } else {
+        this.backgroundDeleter = null;
+      }
+
       // For testing purposes, allow the DT secret manager to be started regardless
       // of whether security is enabled.
       alwaysUseDelegationTokensForTests = conf.getBoolean(
@@ -1151,6 +1188,10 @@ void startActiveServices() throws IOException {
             + " configured scrub interval is zero.");
       }
 
+      if (backgroundDeleter != null) {
+        backgroundDeleter.startThread();
+      }
+
       cacheManager.startMonitorThread();
       blockManager.getDatanodeManager().setShouldSendCachingCommands(true);
     } finally {
@@ -1208,6 +1249,13 @@ void stopActiveServices() {
         ((LazyPersistFileScrubber) lazyPersistFileScrubber.getRunnable()).stop();
         lazyPersistFileScrubber.interrupt();
       }
+      if (backgroundDeleter != null) {
+        backgroundDeleter.stopThread();
+        if (fsRunning) {
+          // The deleted directories are not in the namespace of the standby.
+          backgroundDeleter.drain();
+        }
+      }
       if (dir != null && getFSImage() != null) {
         if (getFSImage().editLog != null) {
           getFSImage().editLog.close();
@@ -1237,8 +1285,10 @@ void stopActiveServices() {
    * 
    * @throws IOException
    */
-  void startStandbyServices(final Configuration conf) throws IOException {
-    LOG.info("Starting services required for standby state");
+  void startStandbyServices(final Configuration conf, boolean isObserver)
+      throws IOException {
+    LOG.info("Starting services required for "
+        + (isObserver ? "observer" : "standby") + " state");
     if (!getFSImage().editLog.isOpenForRead()) {
       // During startup, we're already open for read.
       getFSImage().editLog.initSharedJournalsForRead();
@@ -1250,7 +1300,9 @@ void startStandbyServices(final Configuration conf) throws IOException {
     dir.disableQuotaChecks();
     editLogTailer = new EditLogTailer(this, conf);
     editLogTailer.start();
-    if (standbyShouldCheckpoint) {
+    // Leave the checkpoints to the standbys, so that the observer keeps up
+    // with the edits.
+    if (standbyShouldCheckpoint && !isObserver) {
       standbyCheckpointer = new StandbyCheckpointer(conf, this);
       standbyCheckpointer.start();
     }
@@ -1467,22 +1519,50 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
   @Override
   public void readLock() {
     this.fsLock.readLock().lock();
+    this.fsLock.lockUpdatesShared();
+    this.fsLock.lockAcquired();
   }
   @Override
   public void readUnlock() {
+    this.fsLock.unlockUpdatesShared();
+    this.fsLock.readLock().unlock();
+    this.fsLock.lockReleased();
+  }
+
+  /**
+   * Acquire the lock for an operation that protects the paths it modifies
+   * with {@link PathLockManager} locks. Such an operation holds the
+   * namesystem lock in shared mode, and has to call
+   * {@link FSDirectory#updateLock()} around any change to the namespace.
+   */
+  void pathOperationLock() {
+    this.fsLock.readLock().lock();
+    this.fsLock.lockAcquired();
+  }
+  void pathOperationUnlock() {
     this.fsLock.readLock().unlock();
+    this.fsLock.lockReleased();
+  }
+  void lockUpdatesExclusive() {
+    this.fsLock.lockUpdatesExclusive();
+  }
+  void unlockUpdatesExclusive() {
+    this.fsLock.unlockUpdatesExclusive();
   }
   @Override
   public void writeLock() {
     this.fsLock.writeLock().lock();
+    this.fsLock.lockAcquired();
   }
   @Override
   public void writeLockInterruptibly() throws InterruptedException {
     this.fsLock.writeLock().lockInterruptibly();
+    this.fsLock.lockAcquired();
   }
   @Override
   public void writeUnlock() {
     this.fsLock.writeLock().unlock();
+    this.fsLock.lockReleased();
   }
   @Override
   public boolean hasWriteLock() {
@@ -1572,7 +1652,21 @@ public boolean isInStandbyState() {
       return haEnabled;
     }
 
-    return HAServiceState.STANDBY == haContext.getState().getServiceState();
+    HAServiceState state = haContext.getState().getServiceState();
+    return HAServiceState.STANDBY == state || HAServiceState.OBSERVER == state;
+  }
+
+  GlobalStateIdContext getGlobalStateIdContext() {
+    return globalStateIdContext;
+  }
+
+  /**
+   * @return true if the NameNode is an observer, which serves reads while
+   *         otherwise acting as a standby
+   */
+  boolean isInObserverState() {
+    return haContext != null && haContext.getState() != null &&
+        HAServiceState.OBSERVER == haContext.getState().getServiceState();
   }
 
   /**
@@ -1683,6 +1777,15 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
       checkOperation(OperationCategory.READ);
       res = FSDirStatAndListingOp.getBlockLocations(
           dir, pc, srcArg, offset, length, true);
+      if (isInObserverState()) {
+        for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
+          // the observer may not have heard of the replicas yet
+          if (b.getLocations() == null || b.getLocations().length == 0) {
+            throw new ObserverRetryOnActiveException(
+                "Zero blocklocations for " + srcArg);
+          }
+        }
+      }
       if (isInSafeMode()) {
         for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
           // if safemode & no block locations yet then throw safemodeException
@@ -1707,7 +1810,7 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
 
     logAuditEvent(true, "open", srcArg);
 
-    if (!isInSafeMode() && res.updateAccessTime()) {
+    if (!isInSafeMode() && !isInStandbyState() && res.updateAccessTime()) {
       byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(
           srcArg);
       String src = srcArg;
@@ -1957,6 +2060,33 @@ void setStoragePolicy(String src, String policyName) throws IOException {
     logAuditEvent(true, "setStoragePolicy", src, null, auditStat);
   }
 
+  /**
+   * Set the erasure coding policy of a directory.
+   *
+   * @param src the path of the directory
+   * @param ecPolicyName the name of the policy, or null for the default one
+   */
+  void setErasureCodingPolicy(String src, String ecPolicyName)
+      throws IOException {
+    HdfsFileStatus auditStat;
+    waitForLoadingFSImage();
+    checkOperation(OperationCategory.WRITE);
+    writeLock();
+    try {
+      checkOperation(OperationCategory.WRITE);
+      checkNameNodeSafeMode("Cannot set erasure coding policy for " + src);
+      auditStat = FSDirErasureCodingOp.setErasureCodingPolicy(dir, src,
+          ecPolicyName, false);
+    } catch (AccessControlException e) {
+      logAuditEvent(false, "setErasureCodingPolicy", src);
+      throw e;
+    } finally {
+      writeUnlock();
+    }
+    getEditLog().logSync();
+    logAuditEvent(true, "setErasureCodingPolicy", src, null, auditStat);
+  }
+
   /**
    * Get the storage policy for a file or a directory.
    *
@@ -2090,6 +2220,19 @@ HdfsFileStatus startFile(String src, PermissionStatus permissions,
     return status;
   }
 
+  private void checkStartFileArgs(String src, String clientMachine,
+      short replication, long blockSize) throws IOException {
+    if (!DFSUtil.isValidName(src)) {
+      throw new InvalidPathException(src);
+    }
+    blockManager.verifyReplication(src, replication, clientMachine);
+    if (blockSize < minBlockSize) {
+      throw new IOException("Specified block size is less than configured" +
+          " minimum value (" + DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY
+          + "): " + blockSize + " < " + minBlockSize);
+    }
+  }
+
   private HdfsFileStatus startFileInt(final String src,
       PermissionStatus permissions, String holder, String clientMachine,
       EnumSet<CreateFlag> flag, boolean createParent, short replication,
@@ -2110,15 +2253,7 @@ private HdfsFileStatus startFileInt(final String src,
               (supportedVersions));
       NameNode.stateChangeLog.debug(builder.toString());
     }
-    if (!DFSUtil.isValidName(src)) {
-      throw new InvalidPathException(src);
-    }
-    blockManager.verifyReplication(src, replication, clientMachine);
-    if (blockSize < minBlockSize) {
-      throw new IOException("Specified block size is less than configured" +
-          " minimum value (" + DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY
-          + "): " + blockSize + " < " + minBlockSize);
-    }
+    checkStartFileArgs(src, clientMachine, replication, blockSize);
 
     FSPermissionChecker pc = getPermissionChecker();
     waitForLoadingFSImage();
@@ -2160,24 +2295,42 @@ private HdfsFileStatus startFileInt(final String src,
     // Proceed with the create, using the computed cipher suite and
     // generated EDEK
     BlocksMapUpdateInfo toRemoveBlocks = new BlocksMapUpdateInfo();
-    writeLock();
     try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot create file" + src);
-      dir.writeLock();
-      try {
-        stat = FSDirWriteFileOp.startFile(this, pc, src, permissions, holder,
-                                          clientMachine, flag, createParent,
-                                          replication, blockSize, ezInfo,
-                                          toRemoveBlocks, logRetryCache);
-      } finally {
-        dir.writeUnlock();
+      if (dir.isPathLockingEnabled(src)) {
+        pathOperationLock();
+        try {
+          checkOperation(OperationCategory.WRITE);
+          checkNameNodeSafeMode("Cannot create file" + src);
+          stat = FSDirWriteFileOp.startNewFileWithPathLock(this, pc, src,
+              permissions, holder, clientMachine, flag, createParent,
+              replication, blockSize, ezInfo, logRetryCache);
+        } finally {
+          pathOperationUnlock();
+        }
+      }
+      // Overwriting an existing file or recovering its lease is always done
+      // under the write lock.
+      if (stat == null) {
+        writeLock();
+        try {
+          checkOperation(OperationCategory.WRITE);
+          checkNameNodeSafeMode("Cannot create file" + src);
+          dir.writeLock();
+          try {
+            stat = FSDirWriteFileOp.startFile(this, pc, src, permissions,
+                holder, clientMachine, flag, createParent, replication,
+                blockSize, ezInfo, toRemoveBlocks, logRetryCache);
+          } finally {
+            dir.writeUnlock();
+          }
+        } finally {
+          writeUnlock();
+        }
       }
     } catch (IOException e) {
       skipSync = e instanceof StandbyException;
       throw e;
     } finally {
-      writeUnlock();
       // There might be transactions logged while trying to recover the lease.
       // They need to be sync'ed even when an exception was thrown.
       if (!skipSync) {
@@ -2190,6 +2343,117 @@ private HdfsFileStatus startFileInt(final String src,
     return stat;
   }
 
+  /**
+   * Create a number of new file entries in the namespace under a single
+   * acquisition of the write lock and a single sync of the edit log. The
+   * retry cache is not used.
+   *
+   * @see ClientProtocol#multiCreate
+   */
+  List<PathResult<HdfsFileStatus>> startFiles(String[] srcs,
+      PermissionStatus permissions, String holder, String clientMachine,
+      EnumSet<CreateFlag> flag, boolean createParent, short replication,
+      long blockSize, CryptoProtocolVersion[] supportedVersions)
+      throws IOException {
+    final HdfsFileStatus[] stats = new HdfsFileStatus[srcs.length];
+    final IOException[] errors = new IOException[srcs.length];
+    for (int i = 0; i < srcs.length; i++) {
+      try {
+        checkStartFileArgs(srcs[i], clientMachine, replication, blockSize);
+      } catch (IOException e) {
+        errors[i] = e;
+      }
+    }
+
+    FSPermissionChecker pc = getPermissionChecker();
+    waitForLoadingFSImage();
+
+    // As in startFileInt, the EDEKs are generated without holding the lock.
+    final FSDirWriteFileOp.EncryptionKeyInfo[] ezInfos =
+        new FSDirWriteFileOp.EncryptionKeyInfo[srcs.length];
+    if (provider != null) {
+      readLock();
+      try {
+        checkOperation(OperationCategory.READ);
+        for (int i = 0; i < srcs.length; i++) {
+          if (errors[i] == null) {
+            try {
+              ezInfos[i] = FSDirWriteFileOp.getEncryptionKeyInfo(this, pc,
+                  srcs[i], supportedVersions);
+            } catch (IOException e) {
+              errors[i] = e;
+            }
+          }
+        }
+      } finally {
+        readUnlock();
+      }
+      for (int i = 0; i < srcs.length; i++) {
+        if (ezInfos[i] != null) {
+          try {
+            ezInfos[i].edek =
+                generateEncryptedDataEncryptionKey(ezInfos[i].ezKeyName);
+          } catch (IOException e) {
+            errors[i] = e;
+          }
+        }
+      }
+    }
+
+    boolean skipSync = false;
+    BlocksMapUpdateInfo toRemoveBlocks = new BlocksMapUpdateInfo();
+    try {
+      writeLock();
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot create " + srcs.length + " files");
+        dir.writeLock();
+        try {
+          for (int i = 0; i < srcs.length; i++) {
+            if (errors[i] == null) {
+              try {
+                stats[i] = FSDirWriteFileOp.startFile(this, pc, srcs[i],
+                    permissions, holder, clientMachine, flag, createParent,
+                    replication, blockSize, ezInfos[i], toRemoveBlocks,
+                    false);
+              } catch (IOException e) {
+                errors[i] = e;
+              }
+            }
+          }
+        } finally {
+          dir.writeUnlock();
+        }
+      } finally {
+        writeUnlock();
+      }
+    } catch (IOException e) {
+      skipSync = e instanceof StandbyException;
+      throw e;
+    } finally {
+      if (!skipSync) {
+        getEditLog().logSync();
+        removeBlocks(toRemoveBlocks);
+        toRemoveBlocks.clear();
+      }
+    }
+
+    List<PathResult<HdfsFileStatus>> results =
+        new ArrayList<PathResult<HdfsFileStatus>>(srcs.length);
+    for (int i = 0; i < srcs.length; i++) {
+      if (errors[i] == null) {
+        logAuditEvent(true, "create", srcs[i], null, stats[i]);
+        results.add(PathResult.success(stats[i]));
+      } else {
+        if (errors[i] instanceof AccessControlException) {
+          logAuditEvent(false, "create", srcs[i]);
+        }
+        results.add(PathResult.<HdfsFileStatus>failure(errors[i]));
+      }
+    }
+    return results;
+  }
+
   /**
    * Recover lease;
    * Immediately revoke the lease of the current lease holder and start lease
@@ -2596,8 +2860,16 @@ boolean completeFile(final String src, String holder,
    * Create new block with a unique block id and a new generation stamp.
    */
   Block createNewBlock() throws IOException {
+    return createNewBlock(false);
+  }
+
+  /**
+   * Create a new block, or a new striped block group, with a unique ID and a
+   * new generation stamp.
+   */
+  Block createNewBlock(boolean isStriped) throws IOException {
     assert hasWriteLock();
-    Block b = new Block(nextBlockId(), 0, 0);
+    Block b = new Block(isStriped ? nextBlockGroupId() : nextBlockId(), 0, 0);
     // Increment the generation stamp for every new block.
     b.setGenerationStamp(nextGenerationStamp(false));
     return b;
@@ -2683,6 +2955,54 @@ void renameTo(final String src, final String dst,
         ")", src, dst, auditStat);
   }
 
+  /**
+   * Remove a number of files or directories from the namespace under a
+   * single acquisition of the write lock and a single sync of the edit log.
+   * The retry cache is not used.
+   *
+   * @see ClientProtocol#multiDelete(String[], boolean)
+   */
+  List<PathResult<Boolean>> delete(String[] srcs, boolean recursive)
+      throws IOException {
+    waitForLoadingFSImage();
+    final BlocksMapUpdateInfo[] toRemovedBlocks =
+        new BlocksMapUpdateInfo[srcs.length];
+    final IOException[] errors = new IOException[srcs.length];
+    writeLock();
+    try {
+      checkOperation(OperationCategory.WRITE);
+      checkNameNodeSafeMode("Cannot delete " + srcs.length + " paths");
+      for (int i = 0; i < srcs.length; i++) {
+        try {
+          toRemovedBlocks[i] = FSDirDeleteOp.delete(
+              this, srcs[i], recursive, false);
+        } catch (IOException e) {
+          errors[i] = e;
+        }
+      }
+    } finally {
+      writeUnlock();
+    }
+    getEditLog().logSync();
+    List<PathResult<Boolean>> results =
+        new ArrayList<PathResult<Boolean>>(srcs.length);
+    for (int i = 0; i < srcs.length; i++) {
+      if (errors[i] != null) {
+        if (errors[i] instanceof AccessControlException) {
+          logAuditEvent(false, "delete", srcs[i]);
+        }
+        results.add(PathResult.<Boolean>failure(errors[i]));
+        continue;
+      }
+      if (toRemovedBlocks[i] != null) {
+        removeBlocks(toRemovedBlocks[i]); // Incremental deletion of blocks
+      }
+      logAuditEvent(true, "delete", srcs[i]);
+      results.add(PathResult.success(toRemovedBlocks[i] != null));
+    }
+    return results;
+  }
+
   /**
    * Remove the indicated file from namespace.
    * 
@@ -2852,6 +3172,40 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
     return stat;
   }
 
+  /**
+   * Get the file info of a number of paths under a single acquisition of
+   * the read lock.
+   *
+   * @see ClientProtocol#multiGetFileInfo(String[])
+   */
+  List<PathResult<HdfsFileStatus>> getFileInfo(final String[] srcs,
+      boolean resolveLink) throws IOException {
+    checkOperation(OperationCategory.READ);
+    List<PathResult<HdfsFileStatus>> results =
+        new ArrayList<PathResult<HdfsFileStatus>>(srcs.length);
+    readLock();
+    try {
+      checkOperation(OperationCategory.READ);
+      for (String src : srcs) {
+        try {
+          results.add(PathResult.success(
+              FSDirStatAndListingOp.getFileInfo(dir, src, resolveLink)));
+        } catch (IOException e) {
+          results.add(PathResult.<HdfsFileStatus>failure(e));
+        }
+      }
+    } finally {
+      readUnlock();
+    }
+    for (int i = 0; i < srcs.length; i++) {
+      IOException e = results.get(i).getException();
+      if (e == null || e instanceof AccessControlException) {
+        logAuditEvent(e == null, "getfileinfo", srcs[i]);
+      }
+    }
+    return results;
+  }
+
   /**
    * Returns true if the file is closed
    */
@@ -2876,7 +3230,12 @@ boolean mkdirs(String src, PermissionStatus permissions,
       boolean createParent) throws IOException {
     HdfsFileStatus auditStat = null;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    final boolean pathLocked = dir.isPathLockingEnabled(src);
+    if (pathLocked) {
+      pathOperationLock();
+    } else {
+      writeLock();
+    }
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create directory " + src);
@@ -2885,7 +3244,11 @@ boolean mkdirs(String src, PermissionStatus permissions,
       logAuditEvent(false, "mkdirs", src);
       throw e;
     } finally {
-      writeUnlock();
+      if (pathLocked) {
+        pathOperationUnlock();
+      } else {
+        writeUnlock();
+      }
     }
     getEditLog().logSync();
     logAuditEvent(true, "mkdirs", src, null, auditStat);
@@ -2983,8 +3346,11 @@ void fsync(String src, long fileId, String clientName, long lastBlockLength)
       }
       final INodeFile pendingFile = checkLease(src, clientName, inode, fileId);
       if (lastBlockLength > 0) {
+        final long oldLength = pendingFile.getLastBlock().getNumBytes();
         pendingFile.getFileUnderConstructionFeature().updateLengthOfLastBlock(
             pendingFile, lastBlockLength);
+        dir.updateLength(INodesInPath.fromINode(pendingFile),
+            lastBlockLength - oldLength);
       }
       FSDirWriteFileOp.persistBlocks(dir, src, pendingFile, false);
     } finally {
@@ -3119,6 +3485,15 @@ boolean internalReleaseLease(Lease lease, String src, INodesInPath iip,
             + "Removed empty last block and closed file.");
         return true;
       }
+      if (lastBlock.isStriped()) {
+        // the internal blocks would have to be recovered to a common length
+        String msg = "DIR* NameSystem.internalReleaseLease: " +
+            "Failed to release lease for file " + src +
+            ". The recovery of a striped block group under construction" +
+            " is not supported.";
+        NameNode.stateChangeLog.warn(msg);
+        throw new AlreadyBeingCreatedException(msg);
+      }
       // start recovery of the last block for this file
       long blockRecoveryId = nextGenerationStamp(
           blockIdManager.isLegacyBlock(lastBlock));
@@ -3164,11 +3539,34 @@ void commitOrCompleteLastBlock(
       final Block commitBlock) throws IOException {
     assert hasWriteLock();
     Preconditions.checkArgument(fileINode.isUnderConstruction());
+    final BlockInfo lastBlock = fileINode.getLastBlock();
+    final long oldLength = lastBlock == null ? 0 : lastBlock.getNumBytes();
     if (!blockManager.commitOrCompleteLastBlock(fileINode, commitBlock)) {
       return;
     }
+    final long lengthDelta = commitBlock.getNumBytes() - oldLength;
 
     // Adjust disk space consumption if required
+    if (fileINode.isStriped()) {
+      // the group was charged for full internal blocks
+      ErasureCodingPolicy ecPolicy = fileINode.getErasureCodingPolicy();
+      long blockSize = fileINode.getPreferredBlockSize();
+      long ssDiff = blockSize * ecPolicy.getNumAllUnits()
+          - StripedBlockUtil.spaceConsumedByStripedBlock(
+              commitBlock.getNumBytes(), ecPolicy);
+      if (ssDiff > 0 || lengthDelta != 0) {
+        dir.writeLock();
+        try {
+          dir.updateStripedCount(iip, lengthDelta, -ssDiff, true);
+        } catch (IOException e) {
+          LOG.warn("Unexpected exception while updating disk space.", e);
+        } finally {
+          dir.writeUnlock();
+        }
+      }
+      return;
+    }
+    dir.updateLength(iip, lengthDelta);
     final long diff = fileINode.getPreferredBlockSize() - commitBlock.getNumBytes();    
     if (diff > 0) {
       try {
@@ -3244,6 +3642,11 @@ public BlockCollection getBlockCollection(long id) {
     return inode == null ? null : inode.asFile();
   }
 
+  @Override
+  public boolean isDeletedInBackground(BlockCollection bc) {
+    return dir.isDeletedInBackground((INode) bc);
+  }
+
   void commitBlockSynchronization(ExtendedBlock oldBlock,
       long newgenerationstamp, long newlength,
       boolean closeFile, boolean deleteblock, DatanodeID[] newtargets,
@@ -3332,14 +3735,19 @@ void commitBlockSynchronization(ExtendedBlock oldBlock,
         Block blockToDel = ExtendedBlock.getLocalBlock(oldBlock);
         boolean remove = iFile.removeLastBlock(blockToDel) != null;
         if (remove) {
+          dir.updateLength(INodesInPath.fromINode(iFile),
+              -storedBlock.getNumBytes());
           blockManager.removeBlock(storedBlock);
         }
       }
       else {
         // update last block
         if(!copyTruncate) {
+          final long oldLength = storedBlock.getNumBytes();
           storedBlock.setGenerationStamp(newgenerationstamp);
           storedBlock.setNumBytes(newlength);
+          dir.updateLength(INodesInPath.fromINode(iFile),
+              newlength - oldLength);
         }
 
         // find the DatanodeDescriptor objects
@@ -3999,6 +4407,10 @@ boolean saveNamespace(final long timeWindow, final long txGap)
     checkSuperuserPrivilege();
 
     boolean saved = false;
+    if (backgroundDeleter != null) {
+      // The image must not contain the inodes of deleted directories.
+      backgroundDeleter.drain();
+    }
     cpLock();  // Block if a checkpointing is in progress on standby.
     readLock();
     try {
@@ -4375,13 +4787,26 @@ private synchronized void setBlockTotal(int total) {
       checkMode();
     }
       
+    /**
+     * @return the number of storages a complete block needs to be safe: the
+     * data blocks holding data of a block group, which suffice to read it
+     */
+    private int getSafeStorageNum(BlockInfo b) {
+      if (b.isStriped() && safeReplication <= Short.MAX_VALUE) {
+        return ((BlockInfoStriped) b).getRealDataBlockNum();
+      }
+      return safeReplication;
+    }
+
     /**
      * Increment number of safe blocks if current block has 
      * reached minimal replication.
-     * @param replication current replication 
+     * @param storageNum current number of storages storing the block
+     * @param storedBlock the block
      */
-    private synchronized void incrementSafeBlockCount(short replication) {
-      if (replication == safeReplication) {
+    private synchronized void incrementSafeBlockCount(short storageNum,
+        BlockInfo storedBlock) {
+      if (storageNum == getSafeStorageNum(storedBlock)) {
         this.blockSafe++;
 
         // Report startup progress only if we haven't completed startup yet.
@@ -4401,10 +4826,12 @@ private synchronized void incrementSafeBlockCount(short replication) {
     /**
      * Decrement number of safe blocks if current block has 
      * fallen below minimal replication.
-     * @param replication current replication 
+     * @param storageNum current number of storages storing the block
+     * @param storedBlock the block
      */
-    private synchronized void decrementSafeBlockCount(short replication) {
-      if (replication == safeReplication-1) {
+    private synchronized void decrementSafeBlockCount(short storageNum,
+        BlockInfo storedBlock) {
+      if (storageNum == getSafeStorageNum(storedBlock) - 1) {
         this.blockSafe--;
         //blockSafe is set to -1 in manual / low resources safemode
         assert blockSafe >= 0 || isManual() || areResourcesLow();
@@ -4674,12 +5101,13 @@ private boolean shouldPopulateReplQueues() {
   }
 
   @Override
-  public void incrementSafeBlockCount(int replication) {
+  public void incrementSafeBlockCount(int storageNum,
+      BlockInfo storedBlock) {
     // safeMode is volatile, and may be set to null at any time
     SafeModeInfo safeMode = this.safeMode;
     if (safeMode == null)
       return;
-    safeMode.incrementSafeBlockCount((short)replication);
+    safeMode.incrementSafeBlockCount((short) storageNum, storedBlock);
   }
 
   @Override
@@ -4690,7 +5118,9 @@ public void decrementSafeBlockCount(BlockInfo b) {
       return;
     BlockInfo storedBlock = getStoredBlock(b);
     if (storedBlock.isComplete()) {
-      safeMode.decrementSafeBlockCount((short)blockManager.countNodes(b).liveReplicas());
+      safeMode.decrementSafeBlockCount(
+          (short) blockManager.countNodes(storedBlock).liveReplicas(),
+          storedBlock);
     }
   }
   
@@ -4746,6 +5176,25 @@ public long getNumActiveClients() {
     return leaseManager.countLease();
   }
 
+  @Metric({ "PendingBackgroundDeletes",
+      "Number of deleted directories not reclaimed yet" })
+  public int getPendingBackgroundDeletes() {
+    return backgroundDeleter == null ? 0
+        : backgroundDeleter.getPendingDeletes();
+  }
+
+  @Metric({ "PendingBackgroundDeleteINodes",
+      "Number of inodes of deleted directories not reclaimed yet" })
+  public long getPendingBackgroundDeleteINodes() {
+    return backgroundDeleter == null ? 0
+        : backgroundDeleter.getPendingINodes();
+  }
+
+  /** @return the deleter of large directories, or null if disabled */
+  BackgroundDeleter getBackgroundDeleter() {
+    return backgroundDeleter;
+  }
+
   /**
    * Get the total number of COMPLETE blocks in the system.
    * For safe mode only complete blocks are counted.
@@ -5189,6 +5638,19 @@ private long nextBlockId() throws IOException {
     return blockId;
   }
 
+  /**
+   * Increments the block ID, logs it and then returns the ID of a new
+   * striped block group derived from it.
+   */
+  private long nextBlockGroupId() throws IOException {
+    assert hasWriteLock();
+    checkNameNodeSafeMode("Cannot get next block group ID");
+    final long groupId = blockIdManager.nextBlockGroupId();
+    getEditLog().logAllocateBlockId(blockIdManager.getLastAllocatedBlockId());
+    // NB: callers sync the log
+    return groupId;
+  }
+
   private boolean isFileDeleted(INodeFile file) {
     // Not in the inodeMap or in the snapshot but marked deleted.
     if (dir.getInode(file.getId()) == null) {
@@ -5376,6 +5838,8 @@ private void updatePipelineInternal(String clientName, ExtendedBlock oldBlock,
     }
 
     // Update old block with the new generation stamp and new length
+    dir.updateLength(INodesInPath.fromINode(pendingFile),
+        newBlock.getNumBytes() - blockinfo.getNumBytes());
     blockinfo.setNumBytes(newBlock.getNumBytes());
     blockinfo.setGenerationStampAndVerifyReplicas(newBlock.getGenerationStamp());
 
@@ -6529,6 +6993,9 @@ private void startRollingUpgradeInternalForNonHA(long startTime)
     checkRollingUpgrade("start rolling upgrade");
     getFSImage().checkUpgrade();
     // in non-HA setup, we do an extra checkpoint to generate a rollback image
+    if (backgroundDeleter != null) {
+      backgroundDeleter.drain();
+    }
     getFSImage().saveNamespace(this, NameNodeFile.IMAGE_ROLLBACK, null);
     LOG.info("Successfully saved namespace for preparing rolling upgrade.");
 
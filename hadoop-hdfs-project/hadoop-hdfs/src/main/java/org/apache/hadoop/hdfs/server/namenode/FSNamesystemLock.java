@@ -19,11 +19,14 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.hadoop.ipc.Server;
+
 import com.google.common.annotations.VisibleForTesting;
 
 /**
@@ -33,9 +36,80 @@
 class FSNamesystemLock implements ReadWriteLock {
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
+
+  /**
+   * Only used with fine-grained locking, see {@link PathLockManager}.
+   * Operations that hold the coarse lock in shared mode either read the
+   * namesystem, in which case they also hold this lock in shared mode, or
+   * modify the paths they have locked with a {@link PathLockManager}, in
+   * which case they hold this lock exclusively for the time it takes to
+   * update namespace state that is shared between paths.
+   */
+  private final ReentrantReadWriteLock updateLock;
+
+  /**
+   * When the current thread, processing an RPC call, first took the lock.
+   * The time it holds the lock is added to the cost of the call, which the
+   * RPC scheduler may prioritize users on.
+   */
+  private final ThreadLocal<long[]> heldSinceNanos =
+      new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+          return new long[1];
+        }
+      };
   
   FSNamesystemLock(boolean fair) {
+    this(fair, false);
+  }
+
+  FSNamesystemLock(boolean fair, boolean fineGrained) {
     this.coarseLock = new ReentrantReadWriteLock(fair);
+    this.updateLock = fineGrained ? new ReentrantReadWriteLock(fair) : null;
+  }
+
+  boolean isFineGrained() {
+    return updateLock != null;
+  }
+
+  void lockAcquired() {
+    if (Server.isRpcInvocation()
+        && getReadHoldCount() + getWriteHoldCount() == 1) {
+      heldSinceNanos.get()[0] = System.nanoTime();
+    }
+  }
+
+  void lockReleased() {
+    if (Server.isRpcInvocation()
+        && getReadHoldCount() + getWriteHoldCount() == 0) {
+      Server.addCallCost(TimeUnit.NANOSECONDS.toMicros(
+          System.nanoTime() - heldSinceNanos.get()[0]));
+    }
+  }
+
+  void lockUpdatesShared() {
+    if (updateLock != null) {
+      updateLock.readLock().lock();
+    }
+  }
+
+  void unlockUpdatesShared() {
+    if (updateLock != null) {
+      updateLock.readLock().unlock();
+    }
+  }
+
+  void lockUpdatesExclusive() {
+    if (updateLock != null) {
+      updateLock.writeLock().lock();
+    }
+  }
+
+  void unlockUpdatesExclusive() {
+    if (updateLock != null) {
+      updateLock.writeLock().unlock();
+    }
   }
   
   @Override
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.ha.ReadOnly;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * Server side of the state id exchange with clients. The state id is the
+ * last transaction id the NameNode has applied or written. An observer
+ * holds back the {@link ReadOnly} calls of {@link ClientProtocol} until it
+ * has caught up with the transaction id the client has seen. The calls held
+ * back wait for {@link #stateIdAdvanced}, called as edits are applied.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+class GlobalStateIdContext implements AlignmentContext {
+  private final FSNamesystem namesystem;
+  private final Set<String> coordinatedMethods;
+
+  GlobalStateIdContext(FSNamesystem namesystem) {
+    this.namesystem = namesystem;
+    this.coordinatedMethods = new HashSet<String>();
+    for (Method method : ClientProtocol.class.getDeclaredMethods()) {
+      if (method.isAnnotationPresent(ReadOnly.class)) {
+        coordinatedMethods.add(method.getName());
+      }
+    }
+  }
+
+  /**
+   * Server side implementation for providing state alignment info in
+   * responses.
+   */
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    header.setStateId(getLastSeenStateId());
+  }
+
+  /**
+   * Server side implementation only provides state alignment info.
+   * It does not receive state alignment info therefore this does nothing.
+   */
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    // Do nothing.
+  }
+
+  /**
+   * Server side implementation only receives state alignment info.
+   * It does not build RPC requests therefore this does nothing.
+   */
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    // Do nothing.
+  }
+
+  /**
+   * Server side implementation for processing state alignment info in
+   * requests. A request without a state id does not wait.
+   */
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    return header.hasStateId() ? header.getStateId() : Long.MIN_VALUE;
+  }
+
+  @Override
+  public long getLastSeenStateId() {
+    return namesystem.getFSImage().getLastAppliedOrWrittenTxId();
+  }
+
+  @Override
+  public synchronized void waitForStateIdAbove(long stateId, long timeoutMs)
+      throws InterruptedException {
+    if (getLastSeenStateId() <= stateId) {
+      wait(timeoutMs);
+    }
+  }
+
+  /**
+   * Wake the server to serve the calls held back, once the state id has
+   * advanced.
+   */
+  synchronized void stateIdAdvanced() {
+    notifyAll();
+  }
+
+  /**
+   * Only reads served by an observer wait for the observer to catch up.
+   */
+  @Override
+  public boolean isCoordinatedCall(String protocolName, String methodName) {
+    return namesystem.isInObserverState()
+        && HdfsConstants.CLIENT_NAMENODE_PROTOCOL_NAME.equals(protocolName)
+        && coordinatedMethods.contains(methodName);
+  }
+}
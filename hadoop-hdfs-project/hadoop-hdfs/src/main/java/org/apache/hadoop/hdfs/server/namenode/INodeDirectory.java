@@ -584,6 +584,7 @@ public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
             lastSnapshotId));
       }
       counts.addNameSpace(1);
+      counts.addDirectoryCount(1);
       return counts;
     }
     
@@ -617,6 +618,7 @@ private QuotaCounts computeDirectoryQuotaUsage(BlockStoragePolicySuite bsps,
   public QuotaCounts computeQuotaUsage4CurrentDirectory(
       BlockStoragePolicySuite bsps, byte storagePolicyId, QuotaCounts counts) {
     counts.addNameSpace(1);
+    counts.addDirectoryCount(1);
     // include the diff list
     DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     if (sf != null) {
@@ -738,6 +740,18 @@ public void undoRename4DstParent(final BlockStoragePolicySuite bsps,
     }
   }
 
+  /**
+   * Trim the capacity of the children list to its size, dropping the list
+   * if it is empty.
+   */
+  void trimChildren() {
+    if (children != null && children.isEmpty()) {
+      children = null;
+    } else if (children instanceof ArrayList) {
+      ((ArrayList<INode>) children).trimToSize();
+    }
+  }
+
   /** Set the children list to null. */
   public void clearChildren() {
     this.children = null;
@@ -771,7 +785,7 @@ public void cleanSubtreeRecursively(
   @Override
   public void destroyAndCollectBlocks(ReclaimContext reclaimContext) {
     reclaimContext.quotaDelta().add(
-        new QuotaCounts.Builder().nameSpace(1).build());
+        new QuotaCounts.Builder().nameSpace(1).directoryCount(1).build());
     final DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     if (sf != null) {
       sf.clear(reclaimContext, this);
@@ -34,6 +34,7 @@
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockCollection;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
@@ -46,6 +47,7 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.FileWithSnapshotFeature;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.LongBitFormat;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -79,12 +81,17 @@ public static INodeFile valueOf(INode inode, String path, boolean acceptNull)
 
   /** 
    * Bit format:
-   * [4-bit storagePolicyID][12-bit replication][48-bit preferredBlockSize]
+   * [4-bit storagePolicyID][1-bit isStriped]
+   * [11-bit replication][48-bit preferredBlockSize]
+   *
+   * The replication bits of a striped file hold the ID of its erasure coding
+   * policy instead.
    */
   enum HeaderFormat {
     PREFERRED_BLOCK_SIZE(null, 48, 1),
-    REPLICATION(PREFERRED_BLOCK_SIZE.BITS, 12, 1),
-    STORAGE_POLICY_ID(REPLICATION.BITS, BlockStoragePolicySuite.ID_BIT_LENGTH,
+    REPLICATION(PREFERRED_BLOCK_SIZE.BITS, 11, 1),
+    IS_STRIPED(REPLICATION.BITS, 1, 0),
+    STORAGE_POLICY_ID(IS_STRIPED.BITS, BlockStoragePolicySuite.ID_BIT_LENGTH,
         0);
 
     private final LongBitFormat BITS;
@@ -94,9 +101,21 @@ enum HeaderFormat {
     }
 
     static short getReplication(long header) {
+      if (isStriped(header)) {
+        // the internal blocks of a striped file are not replicated
+        return 1;
+      }
       return (short)REPLICATION.BITS.retrieve(header);
     }
 
+    static boolean isStriped(long header) {
+      return IS_STRIPED.BITS.retrieve(header) != 0;
+    }
+
+    static byte getErasureCodingPolicyID(long header) {
+      return isStriped(header) ? (byte)REPLICATION.BITS.retrieve(header) : 0;
+    }
+
     static long getPreferredBlockSize(long header) {
       return PREFERRED_BLOCK_SIZE.BITS.retrieve(header);
     }
@@ -107,12 +126,27 @@ static byte getStoragePolicyID(long header) {
 
     static long toLong(long preferredBlockSize, short replication,
         byte storagePolicyID) {
+      return toLong(preferredBlockSize, replication, (byte) 0,
+          storagePolicyID);
+    }
+
+    /**
+     * @param ecPolicyID the ID of the erasure coding policy of a striped
+     *                   file, or 0 for a replicated file
+     */
+    static long toLong(long preferredBlockSize, short replication,
+        byte ecPolicyID, byte storagePolicyID) {
       long h = 0;
       if (preferredBlockSize == 0) {
         preferredBlockSize = PREFERRED_BLOCK_SIZE.BITS.getMin();
       }
       h = PREFERRED_BLOCK_SIZE.BITS.combine(preferredBlockSize, h);
-      h = REPLICATION.BITS.combine(replication, h);
+      if (ecPolicyID != 0) {
+        h = REPLICATION.BITS.combine(ecPolicyID, h);
+        h = IS_STRIPED.BITS.combine(1, h);
+      } else {
+        h = REPLICATION.BITS.combine(replication, h);
+      }
       h = STORAGE_POLICY_ID.BITS.combine(storagePolicyID, h);
       return h;
     }
@@ -133,8 +167,20 @@ static long toLong(long preferredBlockSize, short replication,
   INodeFile(long id, byte[] name, PermissionStatus permissions, long mtime,
       long atime, BlockInfo[] blklist, short replication,
       long preferredBlockSize, byte storagePolicyID) {
+    this(id, name, permissions, mtime, atime, blklist, replication,
+        preferredBlockSize, (byte) 0, storagePolicyID);
+  }
+
+  /**
+   * @param ecPolicyID the ID of the erasure coding policy of a striped file,
+   *                   or 0 for a replicated file
+   */
+  INodeFile(long id, byte[] name, PermissionStatus permissions, long mtime,
+      long atime, BlockInfo[] blklist, short replication,
+      long preferredBlockSize, byte ecPolicyID, byte storagePolicyID) {
     super(id, name, permissions, mtime, atime);
-    header = HeaderFormat.toLong(preferredBlockSize, replication, storagePolicyID);
+    header = HeaderFormat.toLong(preferredBlockSize, replication, ecPolicyID,
+        storagePolicyID);
     this.blocks = blklist;
   }
   
@@ -369,6 +415,8 @@ public short getPreferredBlockReplication() {
 
   /** Set the replication factor of this file. */
   private void setFileReplication(short replication) {
+    Preconditions.checkState(!isStriped(),
+        "Cannot set the replication of a striped file");
     header = HeaderFormat.REPLICATION.BITS.combine(replication, header);
   }
 
@@ -380,6 +428,27 @@ public final INodeFile setFileReplication(short replication,
     return this;
   }
 
+  /** @return whether the blocks of the file are striped block groups. */
+  @Override // BlockCollection
+  public boolean isStriped() {
+    return HeaderFormat.isStriped(header);
+  }
+
+  /**
+   * @return the ID of the erasure coding policy of a striped file, or 0 for a
+   * replicated file.
+   */
+  @Override // INodeFileAttributes
+  public byte getErasureCodingPolicyID() {
+    return HeaderFormat.getErasureCodingPolicyID(header);
+  }
+
+  /** @return the erasure coding policy of a striped file, or null. */
+  public ErasureCodingPolicy getErasureCodingPolicy() {
+    return isStriped() ?
+        ErasureCodingPolicy.getSystemPolicy(getErasureCodingPolicyID()) : null;
+  }
+
   /** @return preferred block size (in bytes) of the file. */
   @Override
   public long getPreferredBlockSize() {
@@ -566,7 +635,8 @@ public String getName() {
   @Override
   public final QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
       byte blockStoragePolicyId, boolean useCache, int lastSnapshotId) {
-    final QuotaCounts counts = new QuotaCounts.Builder().nameSpace(1).build();
+    final QuotaCounts counts = new QuotaCounts.Builder().nameSpace(1)
+        .fileCount(1).build();
 
     final BlockStoragePolicy bsp = bsps.getPolicy(blockStoragePolicyId);
     FileWithSnapshotFeature sf = getFileWithSnapshotFeature();
@@ -596,6 +666,7 @@ public final QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
     }
 
     counts.addStorageSpace(ssDeltaNoReplication * replication);
+    counts.addLength(ssDeltaNoReplication);
     if (bsp != null) {
       List<StorageType> storageTypes = bsp.chooseStorageTypes(replication);
       for (StorageType t : storageTypes) {
@@ -732,10 +803,33 @@ public final QuotaCounts storagespaceConsumed(BlockStoragePolicy bsp) {
     }
 
     final short replication = getPreferredBlockReplication();
+    final ErasureCodingPolicy ecPolicy = getErasureCodingPolicy();
     for (BlockInfo b : blocks) {
-      long blockSize = b.isComplete() ? b.getNumBytes() :
+      long blockSize;
+      if (ecPolicy != null) {
+        // the storage space of a block group includes its parity blocks
+        long spaceConsumed;
+        if (b.isComplete()) {
+          spaceConsumed = StripedBlockUtil.spaceConsumedByStripedBlock(
+              b.getNumBytes(), ecPolicy);
+        } else {
+          spaceConsumed = getPreferredBlockSize()
+              * ecPolicy.getNumAllUnits();
+        }
+        counts.addStorageSpace(spaceConsumed);
+        counts.addLength(b.getNumBytes());
+        if (bsp != null) {
+          StorageType t = bsp.chooseStorageTypes((short) 1).get(0);
+          if (t.supportTypeQuota()) {
+            counts.addTypeSpace(t, spaceConsumed);
+          }
+        }
+        continue;
+      }
+      blockSize = b.isComplete() ? b.getNumBytes() :
           getPreferredBlockSize();
       counts.addStorageSpace(blockSize * replication);
+      counts.addLength(b.getNumBytes());
       if (bsp != null) {
         List<StorageType> types = bsp.chooseStorageTypes(replication);
         for (StorageType t : types) {
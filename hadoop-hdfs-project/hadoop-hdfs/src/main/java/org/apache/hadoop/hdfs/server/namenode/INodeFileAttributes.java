@@ -39,6 +39,9 @@ public interface INodeFileAttributes extends INodeAttributes {
 
   public byte getLocalStoragePolicyID();
 
+  /** @return the erasure coding policy ID of a striped file, or 0. */
+  public byte getErasureCodingPolicyID();
+
   /** A copy of the inode file attributes */
   public static class SnapshotCopy extends INodeAttributes.SnapshotCopy
       implements INodeFileAttributes {
@@ -48,10 +51,19 @@ public SnapshotCopy(byte[] name, PermissionStatus permissions,
         AclFeature aclFeature, long modificationTime, long accessTime,
         short replication, long preferredBlockSize,
         byte storagePolicyID, XAttrFeature xAttrsFeature) {
+      this(name, permissions, aclFeature, modificationTime, accessTime,
+          replication, preferredBlockSize, (byte) 0, storagePolicyID,
+          xAttrsFeature);
+    }
+
+    public SnapshotCopy(byte[] name, PermissionStatus permissions,
+        AclFeature aclFeature, long modificationTime, long accessTime,
+        short replication, long preferredBlockSize, byte ecPolicyID,
+        byte storagePolicyID, XAttrFeature xAttrsFeature) {
       super(name, permissions, aclFeature, modificationTime, accessTime, 
           xAttrsFeature);
       header = HeaderFormat.toLong(preferredBlockSize, replication,
-          storagePolicyID);
+          ecPolicyID, storagePolicyID);
     }
 
     public SnapshotCopy(INodeFile file) {
@@ -79,6 +91,11 @@ public byte getLocalStoragePolicyID() {
       return HeaderFormat.getStoragePolicyID(header);
     }
 
+    @Override
+    public byte getErasureCodingPolicyID() {
+      return HeaderFormat.getErasureCodingPolicyID(header);
+    }
+
     @Override
     public long getHeaderLong() {
       return header;
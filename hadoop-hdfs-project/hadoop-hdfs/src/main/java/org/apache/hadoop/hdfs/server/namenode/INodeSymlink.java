@@ -84,13 +84,13 @@ public void cleanSubtree(ReclaimContext reclaimContext, final int snapshotId,
   public void destroyAndCollectBlocks(ReclaimContext reclaimContext) {
     reclaimContext.removedINodes.add(this);
     reclaimContext.quotaDelta().add(
-        new QuotaCounts.Builder().nameSpace(1).build());
+        new QuotaCounts.Builder().nameSpace(1).symlinkCount(1).build());
   }
 
   @Override
   public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
       byte blockStoragePolicyId, boolean useCache, int lastSnapshotId) {
-    return new QuotaCounts.Builder().nameSpace(1).build();
+    return new QuotaCounts.Builder().nameSpace(1).symlinkCount(1).build();
   }
 
   @Override
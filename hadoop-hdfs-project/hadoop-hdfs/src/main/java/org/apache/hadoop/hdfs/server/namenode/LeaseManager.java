@@ -124,6 +124,21 @@ synchronized long getNumUnderConstructionBlocks() {
 
   Collection<Long> getINodeIdWithLeases() {return leasesById.keySet();}
 
+  /**
+   * @return the ids of the files with leases in the given directory tree
+   */
+  synchronized List<Long> getINodeIdWithLeases(INodeDirectory ancestorDir) {
+    final FSDirectory fsd = fsnamesystem.getFSDirectory();
+    final List<Long> ids = new ArrayList<>();
+    for (Long id : leasesById.keySet()) {
+      final INode inode = fsd.getInode(id);
+      if (inode != null && inode.isAncestorDirectory(ancestorDir)) {
+        ids.add(id);
+      }
+    }
+    return ids;
+  }
+
   /** @return the lease containing src */
   public synchronized Lease getLease(INodeFile src) {return leasesById.get(src.getId());}
 
@@ -33,7 +33,9 @@
  * 
  * One all the names are added, {@link #initialized()} should be called to
  * finish initialization. The transient map where use count is tracked is
- * discarded and cache is ready for use.
+ * discarded and cache is ready for use. If a maximum number of tracked names
+ * is given, the use count keeps being tracked after initialization instead,
+ * in a transient map that is cleared whenever it reaches that size.
  * 
  * <p>
  * This class must be synchronized externally.
@@ -70,6 +72,12 @@ int get() {
   /** names used more than {@code useThreshold} is added to the cache */
   private final int useThreshold;
 
+  /**
+   * the number of names tracked after initialization; 0 to stop tracking
+   * once initialized
+   */
+  private final int maxTracked;
+
   /** of times a cache look up was successful */
   private int lookups = 0;
 
@@ -85,7 +93,19 @@ int get() {
    *          cache
    */
   NameCache(int useThreshold) {
+    this(useThreshold, 0);
+  }
+
+  /**
+   * Constructor
+   * @param useThreshold names occurring more than this is promoted to the
+   *          cache
+   * @param maxTracked the number of names whose use count is tracked after
+   *          initialization
+   */
+  NameCache(int useThreshold, int maxTracked) {
     this.useThreshold = useThreshold;
+    this.maxTracked = maxTracked;
   }
   
   /**
@@ -102,13 +122,18 @@ K put(final K name) {
       return internal;
     }
 
-    // Track the usage count only during initialization
-    if (!initialized) {
+    // Track the usage count only during initialization, unless asked to
+    // keep tracking a bounded number of names
+    if (!initialized || maxTracked > 0) {
+      if (initialized && transientMap.size() >= maxTracked) {
+        // a new map, as clear() keeps the capacity
+        transientMap = new HashMap<K, UseCount>();
+      }
       UseCount useCount = transientMap.get(name);
       if (useCount != null) {
         useCount.increment();
         if (useCount.get() >= useThreshold) {
-          promote(name);
+          promote(useCount.value);
         }
         return useCount.value;
       }
@@ -143,10 +168,13 @@ void initialized() {
     LOG.info("initialized with " + size() + " entries " + lookups + " lookups");
     this.initialized = true;
     transientMap.clear();
-    transientMap = null;
+    transientMap = maxTracked == 0 ? null : new HashMap<K, UseCount>();
   }
   
-  /** Promote a frequently used name to the cache */
+  /**
+   * Promote a frequently used name to the cache, keeping the internal value
+   * already handed out for it
+   */
   private void promote(final K name) {
     transientMap.remove(name);
     cache.put(name, name);
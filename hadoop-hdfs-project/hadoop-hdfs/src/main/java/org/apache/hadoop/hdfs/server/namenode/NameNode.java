@@ -48,6 +48,7 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.BootstrapStandby;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
+import org.apache.hadoop.hdfs.server.namenode.ha.ObserverState;
 import org.apache.hadoop.hdfs.server.namenode.ha.StandbyState;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress;
@@ -322,6 +323,7 @@ public long getProtocolVersion(String protocol,
       LoggerFactory.getLogger("BlockStateChange");
   public static final HAState ACTIVE_STATE = new ActiveState();
   public static final HAState STANDBY_STATE = new StandbyState();
+  public static final HAState OBSERVER_STATE = new ObserverState();
 
   public static final Log MetricsLog =
       LogFactory.getLog("NameNodeMetricsLog");
@@ -1675,6 +1677,15 @@ synchronized void transitionToStandby()
     state.setState(haContext, STANDBY_STATE);
   }
 
+  synchronized void transitionToObserver()
+      throws ServiceFailedException, AccessControlException {
+    namesystem.checkSuperuserPrivilege();
+    if (!haEnabled) {
+      throw new ServiceFailedException("HA for namenode is not enabled");
+    }
+    state.setState(haContext, OBSERVER_STATE);
+  }
+
   synchronized HAServiceStatus getServiceStatus()
       throws ServiceFailedException, AccessControlException {
     namesystem.checkSuperuserPrivilege();
@@ -1812,7 +1823,7 @@ public void stopActiveServices() throws IOException {
     @Override
     public void startStandbyServices() throws IOException {
       try {
-        namesystem.startStandbyServices(conf);
+        namesystem.startStandbyServices(conf, isObserverState());
       } catch (Throwable t) {
         doImmediateShutdown(t);
       }
@@ -1872,6 +1883,10 @@ public boolean isActiveState() {
     return (state.equals(ACTIVE_STATE));
   }
 
+  public boolean isObserverState() {
+    return (state.equals(OBSERVER_STATE));
+  }
+
   /**
    * Returns whether the NameNode is completely started
    */
@@ -28,10 +28,12 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -60,6 +62,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
 import org.apache.hadoop.ha.HAServiceStatus;
 import org.apache.hadoop.ha.HealthCheckFailedException;
 import org.apache.hadoop.ha.ServiceFailedException;
@@ -94,6 +97,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.PathResult;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.QuotaByStorageTypeExceededException;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
@@ -217,6 +221,9 @@ class NameNodeRpcServer implements NamenodeProtocols {
   
   private final String minimumDataNodeVersion;
 
+  /** The maximum number of paths of a batched operation. */
+  private final int maxMultiOpPaths;
+
   public NameNodeRpcServer(Configuration conf, NameNode nn)
       throws IOException {
     this.nn = nn;
@@ -354,6 +361,7 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         .setNumHandlers(handlerCount)
         .setVerbose(false)
         .setSecretManager(namesystem.getDelegationTokenSecretManager())
+        .setAlignmentContext(namesystem.getGlobalStateIdContext())
         .build();
 
     // Add all the RPC protocols that the namenode implements
@@ -395,6 +403,9 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
     minimumDataNodeVersion = conf.get(
         DFSConfigKeys.DFS_NAMENODE_MIN_SUPPORTED_DATANODE_VERSION_KEY,
         DFSConfigKeys.DFS_NAMENODE_MIN_SUPPORTED_DATANODE_VERSION_DEFAULT);
+    maxMultiOpPaths = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_MULTI_OP_MAX_PATHS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_MULTI_OP_MAX_PATHS_DEFAULT);
 
     // Set terse exception whose stack trace won't be logged
     clientRpcServer.addTerseExceptions(SafeModeException.class,
@@ -690,6 +701,13 @@ public void setStoragePolicy(String src, String policyName)
     namesystem.setStoragePolicy(src, policyName);
   }
 
+  @Override // ClientProtocol
+  public void setErasureCodingPolicy(String src, String ecPolicyName)
+      throws IOException {
+    checkNNStartup();
+    namesystem.setErasureCodingPolicy(src, ecPolicyName);
+  }
+
   @Override
   public BlockStoragePolicy getStoragePolicy(String path) throws IOException {
     checkNNStartup();
@@ -1331,14 +1349,17 @@ public DatanodeCommand blockReport(DatanodeRegistration nodeReg,
 
   @Override
   public DatanodeCommand cacheReport(DatanodeRegistration nodeReg,
-      String poolId, List<Long> blockIds) throws IOException {
+      String poolId, List<Long> blockIds, List<Long> readCachedBlockIds)
+      throws IOException {
     checkNNStartup();
     verifyRequest(nodeReg);
     if (blockStateChangeLog.isDebugEnabled()) {
       blockStateChangeLog.debug("*BLOCK* NameNode.cacheReport: "
-           + "from " + nodeReg + " " + blockIds.size() + " blocks");
+           + "from " + nodeReg + " " + blockIds.size() + " blocks, "
+           + readCachedBlockIds.size() + " read cached blocks");
     }
-    namesystem.getCacheManager().processCacheReport(nodeReg, blockIds);
+    namesystem.getCacheManager().processCacheReport(nodeReg, blockIds,
+        readCachedBlockIds);
     return null;
   }
 
@@ -1481,6 +1502,14 @@ public synchronized void transitionToStandby(StateChangeRequestInfo req)
     nn.transitionToStandby();
   }
 
+  @Override // HAServiceProtocol
+  public synchronized void transitionToObserver(StateChangeRequestInfo req)
+      throws ServiceFailedException, AccessControlException, IOException {
+    checkNNStartup();
+    nn.checkHaStateChange(req);
+    nn.transitionToObserver();
+  }
+
   @Override // HAServiceProtocol
   public synchronized HAServiceStatus getServiceStatus() 
       throws AccessControlException, ServiceFailedException, IOException {
@@ -1935,6 +1964,100 @@ private static FSEditLogOp readOp(EditLogInputStream elis)
     }
   }
 
+  @Override // ClientProtocol
+  public HAServiceState getHAServiceState() throws IOException {
+    checkNNStartup();
+    namesystem.checkOperation(OperationCategory.UNCHECKED);
+    return nn.getServiceState();
+  }
+
+  @Override // ClientProtocol
+  public List<PathResult<HdfsFileStatus>> multiCreate(String[] srcs,
+      FsPermission masked, String clientName, EnumSetWritable<CreateFlag> flag,
+      boolean createParent, short replication, long blockSize,
+      CryptoProtocolVersion[] supportedVersions) throws IOException {
+    checkNNStartup();
+    checkMultiOpPaths(srcs);
+    String clientMachine = getClientMachine();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.multiCreate: " + srcs.length
+          + " files for " + clientName + " at " + clientMachine);
+    }
+    namesystem.checkOperation(OperationCategory.WRITE);
+    metrics.incrMultiOps();
+    // Paths which are too long fail on their own, the others are created
+    // as a batch.
+    List<PathResult<HdfsFileStatus>> results =
+        new ArrayList<PathResult<HdfsFileStatus>>(srcs.length);
+    List<String> batch = new ArrayList<String>(srcs.length);
+    for (String src : srcs) {
+      if (checkPathLength(src)) {
+        batch.add(src);
+      }
+    }
+    PermissionStatus perm = new PermissionStatus(getRemoteUser()
+        .getShortUserName(), null, masked);
+    Iterator<PathResult<HdfsFileStatus>> created = namesystem.startFiles(
+        batch.toArray(new String[batch.size()]), perm, clientName,
+        clientMachine, flag.get(), createParent, replication, blockSize,
+        supportedVersions).iterator();
+    for (String src : srcs) {
+      if (!checkPathLength(src)) {
+        results.add(PathResult.<HdfsFileStatus>failure(new IOException(
+            "create: Pathname too long.  Limit " + MAX_PATH_LENGTH
+            + " characters, " + MAX_PATH_DEPTH + " levels.")));
+        continue;
+      }
+      PathResult<HdfsFileStatus> result = created.next();
+      if (result.isSuccess()) {
+        metrics.incrFilesCreated();
+        metrics.incrCreateFileOps();
+      }
+      results.add(result);
+    }
+    return results;
+  }
+
+  @Override // ClientProtocol
+  public List<PathResult<Boolean>> multiDelete(String[] srcs,
+      boolean recursive) throws IOException {
+    checkNNStartup();
+    checkMultiOpPaths(srcs);
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* Namenode.multiDelete: " + srcs.length
+          + " paths, recursive=" + recursive);
+    }
+    namesystem.checkOperation(OperationCategory.WRITE);
+    metrics.incrMultiOps();
+    List<PathResult<Boolean>> results = namesystem.delete(srcs, recursive);
+    for (PathResult<Boolean> result : results) {
+      if (Boolean.TRUE.equals(result.getValue())) {
+        metrics.incrDeleteFileOps();
+      }
+    }
+    return results;
+  }
+
+  @Override // ClientProtocol
+  public List<PathResult<HdfsFileStatus>> multiGetFileInfo(String[] srcs)
+      throws IOException {
+    checkNNStartup();
+    checkMultiOpPaths(srcs);
+    metrics.incrMultiOps();
+    for (int i = 0; i < srcs.length; i++) {
+      metrics.incrFileInfoOps();
+    }
+    return namesystem.getFileInfo(srcs, true);
+  }
+
+  private void checkMultiOpPaths(String[] srcs) throws IOException {
+    if (srcs.length > maxMultiOpPaths) {
+      throw new IOException("Too many paths: " + srcs.length + " > "
+          + maxMultiOpPaths + " ("
+          + DFSConfigKeys.DFS_NAMENODE_MULTI_OP_MAX_PATHS_KEY + ")");
+    }
+  }
+
   @Override // ClientProtocol
   public EventBatchList getEditsFromTxid(long txid) throws IOException {
     checkNNStartup();
@@ -44,6 +44,12 @@ public interface Namesystem extends RwLock, SafeMode {
 
   BlockCollection getBlockCollection(long id);
 
+  /**
+   * @return whether the block collection was deleted and is being reclaimed
+   *         in the background, so that its blocks need not be replicated
+   */
+  boolean isDeletedInBackground(BlockCollection bc);
+
   void adjustSafeModeBlockTotals(int deltaSafe, int deltaTotal);
 
   void checkOperation(OperationCategory read) throws StandbyException;
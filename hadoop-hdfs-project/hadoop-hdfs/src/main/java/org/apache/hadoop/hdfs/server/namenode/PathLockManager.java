@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Striped read/write locks over path prefixes, used by namespace operations
+ * when fine-grained locking is enabled.
+ *
+ * A path /a/b/c is represented by its prefixes /, /a, /a/b and /a/b/c, each
+ * of which is hashed onto one of a fixed number of lock stripes. An
+ * operation that adds children to the directory at some prefix holds the
+ * write lock of that prefix and the read locks of all its ancestors. This
+ * excludes every other such operation that resolves a path through the same
+ * directory, while operations on disjoint subtrees proceed in parallel.
+ *
+ * The stripes needed by an operation are acquired in ascending order, so
+ * that two operations can never wait for each other. A stripe needed in
+ * both modes is acquired in write mode only.
+ */
+class PathLockManager {
+  private final ReentrantReadWriteLock[] stripes;
+
+  PathLockManager(int numStripes, boolean fair) {
+    Preconditions.checkArgument(numStripes > 0,
+        "The number of path lock stripes must be positive: %s", numStripes);
+    stripes = new ReentrantReadWriteLock[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new ReentrantReadWriteLock(fair);
+    }
+  }
+
+  /**
+   * Lock the prefix of the given path that ends at {@code writeIndex} for
+   * writing, and all its ancestors for reading. Components after
+   * {@code writeIndex} are not locked, since every operation that reaches
+   * them has to read lock the prefix at {@code writeIndex} first.
+   *
+   * @param components the path components, starting with the root
+   * @param writeIndex index of the component whose directory is modified
+   * @return the held lock
+   */
+  PathLock lock(byte[][] components, int writeIndex) {
+    Preconditions.checkArgument(writeIndex >= 0
+        && writeIndex < components.length);
+    // Each entry is the stripe index shifted left by one, with the lowest
+    // bit set for write mode. Sorting them orders the stripes and puts the
+    // write request of a stripe after any read request for the same stripe.
+    final long[] requests = new long[writeIndex + 1];
+    int hash = 0;
+    for (int i = 0; i <= writeIndex; i++) {
+      hash = updateHash(hash, components, i);
+      requests[i] = ((long) getStripeIndex(hash) << 1)
+          | (i == writeIndex ? 1 : 0);
+    }
+    Arrays.sort(requests);
+
+    final Lock[] locks = new Lock[requests.length];
+    int numLocks = 0;
+    for (int i = 0; i < requests.length; i++) {
+      final int stripe = (int) (requests[i] >>> 1);
+      if (i + 1 < requests.length && (requests[i + 1] >>> 1) == stripe) {
+        // The strongest request for this stripe comes last.
+        continue;
+      }
+      final boolean write = (requests[i] & 1) != 0;
+      final Lock l = write ? stripes[stripe].writeLock()
+          : stripes[stripe].readLock();
+      l.lock();
+      locks[numLocks++] = l;
+    }
+    return new PathLock(locks, numLocks);
+  }
+
+  /**
+   * Extend the hash of the prefix ending before {@code index} with the
+   * component at {@code index}.
+   */
+  private static int updateHash(int hash, byte[][] components, int index) {
+    int h = 31 * hash + '/';
+    for (byte b : components[index]) {
+      h = 31 * h + b;
+    }
+    return h;
+  }
+
+  private int getStripeIndex(int hash) {
+    // Spread the higher bits, as for HashMap, before taking the modulus.
+    final int h = hash ^ (hash >>> 16);
+    return (h & Integer.MAX_VALUE) % stripes.length;
+  }
+
+  @VisibleForTesting
+  int getNumStripes() {
+    return stripes.length;
+  }
+
+  /**
+   * @return true if the current thread holds any stripe in write mode. This
+   * scans every stripe and is only meant to be used by assertions.
+   */
+  boolean isWriteLockedByCurrentThread() {
+    for (ReentrantReadWriteLock stripe : stripes) {
+      if (stripe.isWriteLockedByCurrentThread()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The set of stripe locks held by an operation.
+   */
+  static class PathLock {
+    private final Lock[] locks;
+    private int numLocks;
+
+    private PathLock(Lock[] locks, int numLocks) {
+      this.locks = locks;
+      this.numLocks = numLocks;
+    }
+
+    /** Release the held stripes in the reverse order of acquisition. */
+    void unlock() {
+      while (numLocks > 0) {
+        locks[--numLocks].unlock();
+      }
+    }
+  }
+}
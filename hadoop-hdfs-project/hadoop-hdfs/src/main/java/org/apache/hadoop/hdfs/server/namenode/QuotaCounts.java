@@ -23,6 +23,14 @@
 
 /**
  * Counters for namespace, storage space and storage type space quota and usage.
+ *
+ * The usage also carries the number of files, directories and symlinks and
+ * the total length, which are not subject to any quota. They are kept in the
+ * cached usage of directories with quota so that a content summary can be
+ * answered without walking the subtree. The length is the number of bytes
+ * the files hold, as a walk counts it: unlike the storage space, it counts
+ * the bytes known so far of a block under construction rather than a full
+ * block.
  */
 public class QuotaCounts {
   // Name space and storage space counts (HDFS-7775 refactors the original disk
@@ -30,14 +38,18 @@ public class QuotaCounts {
   private EnumCounters<Quota> nsSsCounts;
   // Storage type space counts
   private EnumCounters<StorageType> tsCounts;
+  // File, directory and symlink counts and length
+  private EnumCounters<Content> contentCounts;
 
   public static class Builder {
     private EnumCounters<Quota> nsSsCounts;
     private EnumCounters<StorageType> tsCounts;
+    private EnumCounters<Content> contentCounts;
 
     public Builder() {
       this.nsSsCounts = new EnumCounters<Quota>(Quota.class);
       this.tsCounts = new EnumCounters<StorageType>(StorageType.class);
+      this.contentCounts = new EnumCounters<Content>(Content.class);
     }
 
     public Builder nameSpace(long val) {
@@ -62,9 +74,30 @@ public Builder typeSpaces(long val) {
       return this;
     }
 
+    public Builder fileCount(long val) {
+      this.contentCounts.set(Content.FILE, val);
+      return this;
+    }
+
+    public Builder directoryCount(long val) {
+      this.contentCounts.set(Content.DIRECTORY, val);
+      return this;
+    }
+
+    public Builder symlinkCount(long val) {
+      this.contentCounts.set(Content.SYMLINK, val);
+      return this;
+    }
+
+    public Builder length(long val) {
+      this.contentCounts.set(Content.LENGTH, val);
+      return this;
+    }
+
     public Builder quotaCount(QuotaCounts that) {
       this.nsSsCounts.set(that.nsSsCounts);
       this.tsCounts.set(that.tsCounts);
+      this.contentCounts.set(that.contentCounts);
       return this;
     }
 
@@ -76,17 +109,20 @@ public QuotaCounts build() {
   private QuotaCounts(Builder builder) {
     this.nsSsCounts = builder.nsSsCounts;
     this.tsCounts = builder.tsCounts;
+    this.contentCounts = builder.contentCounts;
   }
 
   public QuotaCounts add(QuotaCounts that) {
     this.nsSsCounts.add(that.nsSsCounts);
     this.tsCounts.add(that.tsCounts);
+    this.contentCounts.add(that.contentCounts);
     return this;
   }
 
   public QuotaCounts subtract(QuotaCounts that) {
     this.nsSsCounts.subtract(that.nsSsCounts);
     this.tsCounts.subtract(that.tsCounts);
+    this.contentCounts.subtract(that.contentCounts);
     return this;
   }
 
@@ -99,6 +135,7 @@ public QuotaCounts negation() {
     QuotaCounts ret = new QuotaCounts.Builder().quotaCount(this).build();
     ret.nsSsCounts.negation();
     ret.tsCounts.negation();
+    ret.contentCounts.negation();
     return ret;
   }
 
@@ -151,6 +188,38 @@ public void addTypeSpace(StorageType type, long delta) {
     this.tsCounts.add(type, delta);
   }
 
+  public long getFileCount() {
+    return contentCounts.get(Content.FILE);
+  }
+
+  public void addFileCount(long delta) {
+    this.contentCounts.add(Content.FILE, delta);
+  }
+
+  public long getDirectoryCount() {
+    return contentCounts.get(Content.DIRECTORY);
+  }
+
+  public void addDirectoryCount(long delta) {
+    this.contentCounts.add(Content.DIRECTORY, delta);
+  }
+
+  public long getSymlinkCount() {
+    return contentCounts.get(Content.SYMLINK);
+  }
+
+  public long getLength() {
+    return contentCounts.get(Content.LENGTH);
+  }
+
+  public void addLength(long delta) {
+    this.contentCounts.add(Content.LENGTH, delta);
+  }
+
+  void setContentCounts(QuotaCounts that) {
+    this.contentCounts.set(that.contentCounts);
+  }
+
   public boolean anyNsSsCountGreaterOrEqual(long val) {
     return nsSsCounts.anyGreaterOrEqual(val);
   }
@@ -174,6 +243,7 @@ public boolean equals(Object obj) {
       return false;
     }
     final QuotaCounts that = (QuotaCounts)obj;
+    // the content counts are not subject to quota and are left out
     return this.nsSsCounts.equals(that.nsSsCounts)
         && this.tsCounts.equals(that.tsCounts);
   }
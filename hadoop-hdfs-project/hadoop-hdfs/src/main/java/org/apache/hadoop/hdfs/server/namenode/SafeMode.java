@@ -44,9 +44,11 @@ public interface SafeMode {
     
   /**
    * Increment number of blocks that reached minimal replication.
-   * @param replication current replication 
+   * @param storageNum current number of storages storing the block
+   * @param storedBlock the block, a striped block group being safe when
+   *          enough of its internal blocks are stored to read it
    */
-  public void incrementSafeBlockCount(int replication);
+  public void incrementSafeBlockCount(int storageNum, BlockInfo storedBlock);
 
   /** Decrement number of blocks that reached minimal replication. */
   public void decrementSafeBlockCount(BlockInfo b);
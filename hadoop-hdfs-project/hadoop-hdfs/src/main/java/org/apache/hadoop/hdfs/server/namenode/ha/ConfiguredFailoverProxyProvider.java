@@ -72,7 +72,7 @@ public T createProxy(Configuration conf, InetSocketAddress nnAddr,
   protected final Configuration conf;
   protected final List<AddressRpcProxyPair<T>> proxies =
       new ArrayList<AddressRpcProxyPair<T>>();
-  private final UserGroupInformation ugi;
+  protected final UserGroupInformation ugi;
   protected final Class<T> xface;
 
   private int currentProxyIndex = 0;
@@ -146,16 +146,23 @@ public Class<T> getInterface() {
   @Override
   public synchronized ProxyInfo<T> getProxy() {
     AddressRpcProxyPair<T> current = proxies.get(currentProxyIndex);
-    if (current.namenode == null) {
+    return new ProxyInfo<T>(getProxy(current), current.address.toString());
+  }
+
+  /**
+   * Lazily initialize the RPC proxy object of the given NameNode.
+   */
+  protected synchronized T getProxy(AddressRpcProxyPair<T> pair) {
+    if (pair.namenode == null) {
       try {
-        current.namenode = factory.createProxy(conf,
-            current.address, xface, ugi, false, fallbackToSimpleAuth);
+        pair.namenode = factory.createProxy(conf,
+            pair.address, xface, ugi, false, fallbackToSimpleAuth);
       } catch (IOException e) {
         LOG.error("Failed to create RPC proxy to NameNode", e);
         throw new RuntimeException(e);
       }
     }
-    return new ProxyInfo<T>(current.namenode, current.address.toString());
+    return pair.namenode;
   }
 
   @Override
@@ -171,7 +178,7 @@ synchronized void incrementProxyIndex() {
    * A little pair object to store the address and connected RPC proxy object to
    * an NN. Note that {@link AddressRpcProxyPair#namenode} may be null.
    */
-  private static class AddressRpcProxyPair<T> {
+  protected static class AddressRpcProxyPair<T> {
     public final InetSocketAddress address;
     public T namenode;
     
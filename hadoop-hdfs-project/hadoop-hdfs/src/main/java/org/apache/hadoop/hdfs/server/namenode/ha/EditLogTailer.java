@@ -27,6 +27,7 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
@@ -107,6 +108,12 @@ public class EditLogTailer {
    */
   private final long sleepTimeMs;
 
+  /**
+   * Whether the Standby should also read the in-progress segment, so that it
+   * need not wait for the active to roll its log.
+   */
+  private final boolean inProgressOk;
+
   private final int nnCount;
   private NamenodeProtocol cachedActiveProxy = null;
   // count of the number of NNs we have attempted in the current lookup loop
@@ -151,8 +158,22 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
           DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY + " is negative.");
     }
     
-    sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
-        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    String tailPeriod = conf.getTrimmed(
+        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY);
+    if (tailPeriod == null || tailPeriod.matches("\\d+")) {
+      // a period without a unit is in seconds
+      sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000L;
+    } else {
+      sleepTimeMs = conf.getTimeDuration(
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT * 1000L,
+          TimeUnit.MILLISECONDS);
+    }
+
+    inProgressOk = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
 
     maxRetries = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_ALL_NAMESNODES_RETRY_KEY,
       DFSConfigKeys.DFS_HA_TAILEDITS_ALL_NAMESNODES_RETRY_DEFAULT);
@@ -236,7 +257,8 @@ void doTailEdits() throws IOException, InterruptedException {
       }
       Collection<EditLogInputStream> streams;
       try {
-        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null, false);
+        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null,
+            inProgressOk);
       } catch (IOException ioe) {
         // This is acceptable. If we try to tail edits in the middle of an edits
         // log roll, i.e. the last one has been finalized but the new inprogress
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.NameNodeProxies;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.ObserverRetryOnActiveException;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A {@link ConfiguredFailoverProxyProvider} that sends the {@link ReadOnly}
+ * calls of {@link ClientProtocol} to the observer NameNodes, and all other
+ * calls to the active NameNode, failing over between the NameNodes as its
+ * parent does.
+ *
+ * All proxies share one {@link ClientGSIContext}, so every request carries
+ * the highest transaction id the client has seen from any NameNode, and an
+ * observer only serves a read once it has caught up with it. A read that
+ * no observer can serve, e.g. as none is reachable or as the observer does
+ * not know the locations of a new block yet, goes to the active.
+ *
+ * The observers are found by asking each NameNode for its HA state, at most
+ * once every {@link HdfsClientConfigKeys.Failover#OBSERVER_PROBE_PERIOD_KEY}
+ * milliseconds.
+ */
+public class ObserverReadProxyProvider<T> extends
+    ConfiguredFailoverProxyProvider<T> {
+
+  private static final Log LOG =
+      LogFactory.getLog(ObserverReadProxyProvider.class);
+
+  /** Creates proxies that exchange state ids through a shared context. */
+  private static class AlignedProxyFactory<T> implements ProxyFactory<T> {
+    private final AlignmentContext alignmentContext;
+
+    AlignedProxyFactory(AlignmentContext alignmentContext) {
+      this.alignmentContext = alignmentContext;
+    }
+
+    @Override
+    public T createProxy(Configuration conf, InetSocketAddress nnAddr,
+        Class<T> xface, UserGroupInformation ugi, boolean withRetries,
+        AtomicBoolean fallbackToSimpleAuth) throws IOException {
+      return NameNodeProxies.createNonHAProxy(conf, nnAddr, xface, ugi, false,
+          fallbackToSimpleAuth, alignmentContext).getProxy();
+    }
+  }
+
+  private final ClientGSIContext alignmentContext;
+  private final long observerProbePeriodMs;
+  private final T readProxy;
+
+  private List<AddressRpcProxyPair<T>> observers =
+      new ArrayList<AddressRpcProxyPair<T>>();
+  /** When the observers were last probed, 0 to probe on the next read */
+  private long lastObserverProbeMs = 0;
+
+  public ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    this(conf, uri, xface, new ClientGSIContext());
+  }
+
+  private ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface, ClientGSIContext alignmentContext) {
+    super(conf, uri, xface, new AlignedProxyFactory<T>(alignmentContext));
+    this.alignmentContext = alignmentContext;
+    this.observerProbePeriodMs = conf.getLong(
+        HdfsClientConfigKeys.Failover.OBSERVER_PROBE_PERIOD_KEY,
+        HdfsClientConfigKeys.Failover.OBSERVER_PROBE_PERIOD_DEFAULT);
+    if (ClientProtocol.class.equals(xface)) {
+      @SuppressWarnings("unchecked")
+      T proxy = (T) Proxy.newProxyInstance(xface.getClassLoader(),
+          new Class<?>[] { xface }, new ObserverReadInvocationHandler());
+      this.readProxy = proxy;
+    } else {
+      // Only client calls may go to an observer.
+      this.readProxy = null;
+    }
+  }
+
+  @Override
+  public synchronized ProxyInfo<T> getProxy() {
+    ProxyInfo<T> active = super.getProxy();
+    if (readProxy == null) {
+      return active;
+    }
+    return new ProxyInfo<T>(readProxy, active.proxyInfo);
+  }
+
+  @VisibleForTesting
+  AlignmentContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  /**
+   * Get the proxies of the observers, asking the NameNodes for their state
+   * if the last answer is too old.
+   */
+  private synchronized List<AddressRpcProxyPair<T>> getObservers() {
+    long now = Time.monotonicNow();
+    if (lastObserverProbeMs == 0
+        || now - lastObserverProbeMs >= observerProbePeriodMs) {
+      List<AddressRpcProxyPair<T>> found =
+          new ArrayList<AddressRpcProxyPair<T>>();
+      for (AddressRpcProxyPair<T> pair : proxies) {
+        try {
+          HAServiceState state =
+              ((ClientProtocol) getProxy(pair)).getHAServiceState();
+          if (state == HAServiceState.OBSERVER) {
+            found.add(pair);
+          }
+        } catch (IOException e) {
+          LOG.debug("Failed to get the HA state of " + pair.address, e);
+        }
+      }
+      observers = found;
+      lastObserverProbeMs = now;
+    }
+    return observers;
+  }
+
+  private synchronized void reprobeObservers() {
+    lastObserverProbeMs = 0;
+  }
+
+  /**
+   * @return true if the observer could not serve the call, but the active
+   *         may
+   */
+  private static boolean shouldRetryOnActive(Throwable t) {
+    if (t instanceof RemoteException) {
+      String className = ((RemoteException) t).getClassName();
+      return StandbyException.class.getName().equals(className)
+          || ObserverRetryOnActiveException.class.getName().equals(className)
+          || RetriableException.class.getName().equals(className);
+    }
+    return t instanceof IOException;
+  }
+
+  private static boolean isReadOnly(Method method) {
+    return method.isAnnotationPresent(ReadOnly.class);
+  }
+
+  private class ObserverReadInvocationHandler implements InvocationHandler {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (isReadOnly(method)) {
+        for (AddressRpcProxyPair<T> observer : getObservers()) {
+          try {
+            return method.invoke(getProxy(observer), args);
+          } catch (InvocationTargetException ite) {
+            Throwable t = ite.getCause();
+            if (!shouldRetryOnActive(t)) {
+              throw t;
+            }
+            if (!(t instanceof RemoteException)) {
+              // the observer may be gone, look for the observers again
+              reprobeObservers();
+            }
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Observer " + observer.address + " failed to serve "
+                  + method.getName() + ", trying the next NameNode", t);
+            }
+          }
+        }
+      }
+      T active = ObserverReadProxyProvider.super.getProxy().proxy;
+      try {
+        return method.invoke(active, args);
+      } catch (InvocationTargetException ite) {
+        throw ite.getCause();
+      }
+    }
+  }
+}
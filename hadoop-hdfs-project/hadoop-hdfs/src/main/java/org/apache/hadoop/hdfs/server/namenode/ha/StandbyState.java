@@ -43,9 +43,13 @@ public StandbyState() {
     super(HAServiceState.STANDBY);
   }
 
+  protected StandbyState(HAServiceState state) {
+    super(state);
+  }
+
   @Override
   public void setState(HAContext context, HAState s) throws ServiceFailedException {
-    if (s == NameNode.ACTIVE_STATE) {
+    if (s == NameNode.ACTIVE_STATE || s == NameNode.OBSERVER_STATE) {
       setStateInternal(context, s);
       return;
     }
@@ -32,6 +32,7 @@
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
 /**
@@ -52,7 +53,13 @@ public class NameNodeMetrics {
   @Metric MutableCounterLong deleteFileOps;
   @Metric("Number of files/dirs deleted by delete or rename operations")
   MutableCounterLong filesDeleted;
+  @Metric("Number of inodes of deleted directories removed in the background")
+  MutableCounterLong backgroundDeletedINodes;
+  @Metric("Number of blocks of deleted directories removed in the background")
+  MutableCounterLong backgroundDeletedBlocks;
   @Metric MutableCounterLong fileInfoOps;
+  @Metric("Number of multiCreate, multiDelete and multiGetFileInfo calls")
+  MutableCounterLong multiOps;
   @Metric MutableCounterLong addBlockOps;
   @Metric MutableCounterLong getAdditionalDatanodeOps;
   @Metric MutableCounterLong createSymlinkOps;
@@ -107,8 +114,20 @@ public long totalFileOps(){
   final MutableQuantiles[] syncsQuantiles;
   @Metric("Journal transactions batched in sync")
   MutableCounterLong transactionsBatchedInSync;
+  final MutableStat syncBatchSize;
+  final MutableQuantiles[] syncBatchSizeQuantiles;
+  @Metric("Time from queueing an edit until it is synced, when edits are" +
+      " logged asynchronously")
+  MutableRate asyncEditSyncLatency;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
+  @Metric("Time a full block report of a storage holds the write lock")
+  MutableRate blockReportLockHold;
+  @Metric("Time to classify a chunk of a full block report outside of the" +
+      " write lock")
+  MutableRate blockReportChunkClassify;
+  @Metric("Time a chunk of a full block report holds the write lock")
+  MutableRate blockReportChunkReconcile;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
 
@@ -133,6 +152,9 @@ public long totalFileOps(){
     
     final int len = intervals.length;
     syncsQuantiles = new MutableQuantiles[len];
+    syncBatchSize = registry.newStat("syncBatchSize",
+        "Journal transactions flushed per sync", "syncs", "txns");
+    syncBatchSizeQuantiles = new MutableQuantiles[len];
     blockReportQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     
@@ -141,6 +163,10 @@ public long totalFileOps(){
       syncsQuantiles[i] = registry.newQuantiles(
           "syncs" + interval + "s",
           "Journal syncs", "ops", "latency", interval);
+      syncBatchSizeQuantiles[i] = registry.newQuantiles(
+          "syncBatchSize" + interval + "s",
+          "Journal transactions flushed per sync", "syncs", "txns",
+          interval);
       blockReportQuantiles[i] = registry.newQuantiles(
           "blockReport" + interval + "s", 
           "Block report", "ops", "latency", interval);
@@ -207,6 +233,14 @@ public void incrFilesDeleted(long delta) {
     filesDeleted.incr(delta);
   }
 
+  public void incrBackgroundDeletedINodes(long delta) {
+    backgroundDeletedINodes.incr(delta);
+  }
+
+  public void incrBackgroundDeletedBlocks(long delta) {
+    backgroundDeletedBlocks.incr(delta);
+  }
+
   public void incrDeleteFileOps() {
     deleteFileOps.incr();
   }
@@ -223,6 +257,10 @@ public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  public void incrMultiOps() {
+    multiOps.incr();
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -282,6 +320,17 @@ public void addSync(long elapsed) {
     }
   }
 
+  public void addSyncBatchSize(long numTransactions) {
+    syncBatchSize.add(numTransactions);
+    for (MutableQuantiles q : syncBatchSizeQuantiles) {
+      q.add(numTransactions);
+    }
+  }
+
+  public void addAsyncEditSyncLatency(long latency) {
+    asyncEditSyncLatency.add(latency);
+  }
+
   public void setFsImageLoadTime(long elapsed) {
     fsImageLoadTime.set((int) elapsed);
   }
@@ -293,6 +342,18 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addBlockReportLockHold(long latency) {
+    blockReportLockHold.add(latency);
+  }
+
+  public void addBlockReportChunkClassify(long latency) {
+    blockReportChunkClassify.add(latency);
+  }
+
+  public void addBlockReportChunkReconcile(long latency) {
+    blockReportChunkReconcile.add(latency);
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
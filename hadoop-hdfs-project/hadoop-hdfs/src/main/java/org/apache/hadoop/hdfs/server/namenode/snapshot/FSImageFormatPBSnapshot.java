@@ -44,6 +44,7 @@
 import org.apache.hadoop.hdfs.protocolPB.PBHelper;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoStriped;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.namenode.AclEntryStatusFormat;
 import org.apache.hadoop.hdfs.server.namenode.AclFeature;
@@ -236,6 +237,7 @@ private void loadFileDiffList(InputStream in, INodeFile file, int size)
               .toByteArray(), permission, acl, fileInPb.getModificationTime(),
               fileInPb.getAccessTime(), (short) fileInPb.getReplication(),
               fileInPb.getPreferredBlockSize(),
+              (byte)fileInPb.getErasureCodingPolicyID(),
               (byte)fileInPb.getStoragePolicyID(), xAttrs);
         }
 
@@ -247,7 +249,8 @@ private void loadFileDiffList(InputStream in, INodeFile file, int size)
           Block blk = PBHelper.convert(bpl.get(j));
           BlockInfo storedBlock = bm.getStoredBlock(blk);
           if(storedBlock == null) {
-            storedBlock = bm.addBlockCollection(
+            storedBlock = bm.addBlockCollection(file.isStriped() ?
+                new BlockInfoStriped(blk, file.getErasureCodingPolicy()) :
                 new BlockInfoContiguous(blk, copy.getFileReplication()), file);
           }
           blocks[j] = storedBlock;
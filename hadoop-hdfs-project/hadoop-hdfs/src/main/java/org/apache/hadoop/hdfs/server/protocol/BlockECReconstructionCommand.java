@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+
+/****************************************************
+ * A BlockECReconstructionCommand is an instruction to a datanode to
+ * reconstruct the missing internal blocks of striped block groups, by
+ * decoding them from the internal blocks stored at other datanodes.
+ *
+ * Reconstructing an internal block replaces its re-replication: the
+ * datanode reads the live internal blocks from their sources, and writes
+ * the decoded blocks to the targets.
+ ****************************************************/
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class BlockECReconstructionCommand extends DatanodeCommand {
+  private final Collection<BlockECReconstructionInfo> ecTasks;
+
+  /**
+   * Create BlockECReconstructionCommand from a collection of
+   * {@link BlockECReconstructionInfo}, each representing a reconstruction
+   * task
+   */
+  public BlockECReconstructionCommand(int action,
+      Collection<BlockECReconstructionInfo> blockECReconstructionInfoList) {
+    super(action);
+    this.ecTasks = blockECReconstructionInfoList;
+  }
+
+  public Collection<BlockECReconstructionInfo> getECTasks() {
+    return this.ecTasks;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("BlockECReconstructionCommand(\n  ");
+    for (BlockECReconstructionInfo task : ecTasks) {
+      sb.append(task).append("\n  ");
+    }
+    sb.append(")");
+    return sb.toString();
+  }
+
+  /** Block and targets pair */
+  @InterfaceAudience.Private
+  @InterfaceStability.Evolving
+  public static class BlockECReconstructionInfo {
+    private final ExtendedBlock block;
+    private final DatanodeInfo[] sources;
+    private final byte[] liveBlockIndices;
+    private final DatanodeInfo[] targets;
+    private final String[] targetStorageIDs;
+    private final StorageType[] targetStorageTypes;
+    private final byte[] targetBlockIndices;
+    private final ErasureCodingPolicy ecPolicy;
+
+    /**
+     * @param block the block group
+     * @param sources a datanode storing each live internal block
+     * @param liveBlockIndices the index of the internal block stored at
+     *          each source
+     * @param targets the datanodes to store the reconstructed blocks
+     * @param targetStorageIDs the storage at each target
+     * @param targetStorageTypes the storage type at each target
+     * @param targetBlockIndices the index of the internal block to
+     *          reconstruct to each target
+     * @param ecPolicy the erasure coding policy of the block group
+     */
+    public BlockECReconstructionInfo(ExtendedBlock block,
+        DatanodeInfo[] sources, byte[] liveBlockIndices,
+        DatanodeInfo[] targets, String[] targetStorageIDs,
+        StorageType[] targetStorageTypes, byte[] targetBlockIndices,
+        ErasureCodingPolicy ecPolicy) {
+      this.block = block;
+      this.sources = sources;
+      this.liveBlockIndices = liveBlockIndices;
+      this.targets = targets;
+      this.targetStorageIDs = targetStorageIDs;
+      this.targetStorageTypes = targetStorageTypes;
+      this.targetBlockIndices = targetBlockIndices;
+      this.ecPolicy = ecPolicy;
+    }
+
+    public ExtendedBlock getExtendedBlock() {
+      return block;
+    }
+
+    public DatanodeInfo[] getSourceDnInfos() {
+      return sources;
+    }
+
+    public byte[] getLiveBlockIndices() {
+      return liveBlockIndices;
+    }
+
+    public DatanodeInfo[] getTargetDnInfos() {
+      return targets;
+    }
+
+    public String[] getTargetStorageIDs() {
+      return targetStorageIDs;
+    }
+
+    public StorageType[] getTargetStorageTypes() {
+      return targetStorageTypes;
+    }
+
+    public byte[] getTargetBlockIndices() {
+      return targetBlockIndices;
+    }
+
+    public ErasureCodingPolicy getErasureCodingPolicy() {
+      return ecPolicy;
+    }
+
+    @Override
+    public String toString() {
+      return "BlockECReconstructionInfo(\n  "
+          + "Recovering " + block
+          + " From: " + Arrays.asList(sources)
+          + " with live indices: " + Arrays.toString(liveBlockIndices)
+          + " To: " + Arrays.asList(targets)
+          + " with indices: " + Arrays.toString(targetBlockIndices)
+          + ")\n";
+    }
+  }
+}
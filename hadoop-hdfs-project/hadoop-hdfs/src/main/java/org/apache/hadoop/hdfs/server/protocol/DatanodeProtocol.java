@@ -76,6 +76,7 @@ public interface DatanodeProtocol {
   final static int DNA_BALANCERBANDWIDTHUPDATE = 8; // update balancer bandwidth
   final static int DNA_CACHE = 9;      // cache blocks
   final static int DNA_UNCACHE = 10;   // uncache blocks
+  final static int DNA_ERASURE_CODING_RECONSTRUCTION = 11; // erasure coding reconstruction command
 
   /** 
    * Register Datanode.
@@ -152,12 +153,15 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
    * @param            The datanode registration.
    * @param poolId     The block pool ID for the blocks.
    * @param blockIds   A list of block IDs.
+   * @param readCachedBlockIds The IDs of the blocks with ranges in the
+   *                   block read cache of the DataNode.
    * @return           The DatanodeCommand.
    * @throws IOException
    */
   @Idempotent
   public DatanodeCommand cacheReport(DatanodeRegistration registration,
-      String poolId, List<Long> blockIds) throws IOException;
+      String poolId, List<Long> blockIds, List<Long> readCachedBlockIds)
+      throws IOException;
 
   /**
    * blockReceivedAndDeleted() allows the DataNode to tell the NameNode about
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Measures the throughput of a single stream writing a large file to a
+ * MiniDFSCluster, with and without
+ * {@link HdfsClientConfigKeys.Write#PARALLEL_PIPELINES_ENABLED_KEY}.
+ *
+ * Small blocks make the time spent between blocks, waiting for the last
+ * acks of a block and setting up the pipeline of the next one, stand out.
+ *
+ * Usage: PipelineWriteBenchmark [-fileSize MB] [-blockSize KB]
+ *   [-datanodes N] [-replication N]
+ */
+public class PipelineWriteBenchmark extends Configured implements Tool {
+  private static final Log LOG =
+      LogFactory.getLog(PipelineWriteBenchmark.class);
+  private static final int MB = 1024 * 1024;
+
+  private long fileSize = 512L * MB;
+  private long blockSize = 16 * MB;
+  private int numDataNodes = 3;
+  private short replication = 3;
+
+  /** The throughput in MB/s with one pipeline and parallel pipelines. */
+  private double serialThroughput;
+  private double parallelThroughput;
+
+  public PipelineWriteBenchmark(Configuration conf) {
+    super(conf);
+  }
+
+  @Override // Tool
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-fileSize") && i + 1 < args.length) {
+        fileSize = Long.parseLong(args[++i]) * MB;
+      } else if (args[i].equals("-blockSize") && i + 1 < args.length) {
+        blockSize = Long.parseLong(args[++i]) * 1024;
+      } else if (args[i].equals("-datanodes") && i + 1 < args.length) {
+        numDataNodes = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-replication") && i + 1 < args.length) {
+        replication = Short.parseShort(args[++i]);
+      } else {
+        System.err.println("Usage: PipelineWriteBenchmark [-fileSize MB]"
+            + " [-blockSize KB] [-datanodes N] [-replication N]");
+        return -1;
+      }
+    }
+    Configuration conf = new Configuration(getConf());
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(numDataNodes).build();
+    try {
+      cluster.waitActive();
+      // warm up the DataNodes and the JIT
+      writeFile(cluster, false, new Path("/warmup"));
+      serialThroughput = writeFile(cluster, false, new Path("/serial"));
+      parallelThroughput = writeFile(cluster, true, new Path("/parallel"));
+    } finally {
+      cluster.shutdown();
+    }
+    printResults();
+    return 0;
+  }
+
+  /** @return the throughput of writing the file, in MB/s */
+  private double writeFile(MiniDFSCluster cluster, boolean parallel,
+      Path file) throws IOException {
+    Configuration conf = new Configuration(cluster.getConfiguration(0));
+    conf.setBoolean(HdfsClientConfigKeys.Write.PARALLEL_PIPELINES_ENABLED_KEY,
+        parallel);
+    FileSystem fs = FileSystem.newInstance(cluster.getURI(), conf);
+    try {
+      byte[] buf = new byte[64 * 1024];
+      long start = Time.monotonicNow();
+      FSDataOutputStream out = fs.create(file, true, 4096, replication,
+          blockSize);
+      try {
+        for (long written = 0; written < fileSize; written += buf.length) {
+          out.write(buf, 0, (int) Math.min(buf.length, fileSize - written));
+        }
+      } finally {
+        out.close();
+      }
+      long elapsed = Math.max(Time.monotonicNow() - start, 1);
+      return (double) fileSize / MB * 1000 / elapsed;
+    } finally {
+      fs.close();
+    }
+  }
+
+  private void printResults() {
+    LOG.info("--- Single stream writes ---");
+    LOG.info("File size (MB): " + fileSize / MB);
+    LOG.info("Block size (KB): " + blockSize / 1024);
+    LOG.info("Replication: " + replication);
+    LOG.info(String.format("Throughput, one pipeline (MB/s): %.1f",
+        serialThroughput));
+    LOG.info(String.format("Throughput, parallel pipelines (MB/s): %.1f",
+        parallelThroughput));
+  }
+
+  double getSerialThroughput() {
+    return serialThroughput;
+  }
+
+  double getParallelThroughput() {
+    return parallelThroughput;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(
+        new PipelineWriteBenchmark(new HdfsConfiguration()), args));
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Options.Rename;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.ipc.AsyncCallLimitExceededException;
+import org.apache.hadoop.ipc.Client;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the operations of {@link AsyncDistributedFileSystem}.
+ */
+public class TestAsyncDFS {
+  private static final int NUM_FILES = 50;
+  private static final int ASYNC_CALLS_MAX = 200;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private AsyncDistributedFileSystem adfs;
+  private final Path dir = new Path("/async");
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        ASYNC_CALLS_MAX);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    adfs = fs.getAsyncDistributedFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private Path createFiles() throws IOException {
+    for (int i = 0; i < NUM_FILES; i++) {
+      DFSTestUtil.createFile(fs, new Path(dir, "file" + i), 10, (short) 1, 0);
+    }
+    return dir;
+  }
+
+  @Test(timeout = 60000)
+  public void testRenameAndDelete() throws Exception {
+    createFiles();
+    List<Future<Void>> renames = new ArrayList<Future<Void>>();
+    for (int i = 0; i < NUM_FILES; i++) {
+      renames.add(adfs.rename(new Path(dir, "file" + i),
+          new Path(dir, "renamed" + i)));
+    }
+    // the calling thread is left in the synchronous mode
+    assertFalse(Client.isAsynchronousMode());
+    for (Future<Void> rename : renames) {
+      rename.get();
+    }
+    for (int i = 0; i < NUM_FILES; i++) {
+      assertFalse(fs.exists(new Path(dir, "file" + i)));
+      assertTrue(fs.exists(new Path(dir, "renamed" + i)));
+    }
+
+    List<Future<Boolean>> deletes = new ArrayList<Future<Boolean>>();
+    for (int i = 0; i < NUM_FILES; i++) {
+      deletes.add(adfs.delete(new Path(dir, "renamed" + i), false));
+    }
+    Future<Boolean> missing = adfs.delete(new Path(dir, "missing"), false);
+    for (Future<Boolean> delete : deletes) {
+      assertTrue(delete.get());
+    }
+    assertFalse(missing.get());
+    assertEquals(0, fs.listStatus(dir).length);
+  }
+
+  @Test(timeout = 60000)
+  public void testRenameFailure() throws Exception {
+    createFiles();
+    Future<Void> rename = adfs.rename(new Path(dir, "file0"),
+        new Path(dir, "file1"));
+    try {
+      rename.get();
+      fail("Expected the rename to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileAlreadyExistsException);
+    }
+    adfs.rename(new Path(dir, "file0"), new Path(dir, "file1"),
+        Rename.OVERWRITE).get();
+    assertFalse(fs.exists(new Path(dir, "file0")));
+  }
+
+  @Test(timeout = 60000)
+  public void testPermissionAndFileStatus() throws Exception {
+    createFiles();
+    List<Future<Void>> updates = new ArrayList<Future<Void>>();
+    for (int i = 0; i < NUM_FILES; i++) {
+      updates.add(adfs.setPermission(new Path(dir, "file" + i),
+          new FsPermission((short) i)));
+    }
+    for (Future<Void> update : updates) {
+      update.get();
+    }
+
+    List<Future<FileStatus>> statuses = new ArrayList<Future<FileStatus>>();
+    for (int i = 0; i < NUM_FILES; i++) {
+      statuses.add(adfs.getFileStatus(new Path(dir, "file" + i)));
+    }
+    for (int i = 0; i < NUM_FILES; i++) {
+      FileStatus status = statuses.get(i).get();
+      assertEquals(fs.getFileStatus(new Path(dir, "file" + i)), status);
+      assertEquals(new FsPermission((short) i), status.getPermission());
+      assertEquals(10, status.getLen());
+    }
+
+    try {
+      adfs.getFileStatus(new Path(dir, "missing")).get();
+      fail("Expected the file not to be found");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+    try {
+      adfs.setPermission(new Path(dir, "missing"),
+          FsPermission.getDefault()).get();
+      fail("Expected the file not to be found");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testAsyncCallLimit() throws Exception {
+    createFiles();
+    List<Future<FileStatus>> statuses = new ArrayList<Future<FileStatus>>();
+    try {
+      for (int i = 0; i <= ASYNC_CALLS_MAX * 10; i++) {
+        statuses.add(adfs.getFileStatus(
+            new Path(dir, "file" + (i % NUM_FILES))));
+      }
+      // the responses may come back as fast as the calls are made
+    } catch (AsyncCallLimitExceededException e) {
+      assertTrue(statuses.size() >= ASYNC_CALLS_MAX);
+    }
+    for (Future<FileStatus> status : statuses) {
+      assertEquals(10, status.get().getLen());
+    }
+    // the connection is usable after the limit was reached
+    assertEquals(10, adfs.getFileStatus(new Path(dir, "file0")).get()
+        .getLen());
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.protocol.PathResult;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the batched create, delete and getFileStatus of
+ * {@link DistributedFileSystem}.
+ */
+public class TestBatchedMetadataOps {
+  private static final int NUM_FILES = 10;
+  private static final int MAX_PATHS = 20;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_MULTI_OP_MAX_PATHS_KEY, MAX_PATHS);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static Path[] getPaths(Path dir, int n) {
+    Path[] paths = new Path[n];
+    for (int i = 0; i < n; i++) {
+      paths[i] = new Path(dir, "file" + i);
+    }
+    return paths;
+  }
+
+  @Test(timeout = 60000)
+  public void testCreate() throws Exception {
+    Path[] files = getPaths(new Path("/dir"), NUM_FILES);
+    DFSTestUtil.createFile(fs, files[3], 10, (short) 1, 0L);
+
+    List<PathResult<HdfsDataOutputStream>> results = fs.create(files,
+        FsPermission.getFileDefault(), false, 4096, (short) 1,
+        fs.getDefaultBlockSize(), null);
+    assertEquals(NUM_FILES, results.size());
+    for (int i = 0; i < NUM_FILES; i++) {
+      if (i == 3) {
+        assertFalse(results.get(i).isSuccess());
+        assertTrue(results.get(i).getException()
+            instanceof FileAlreadyExistsException);
+        continue;
+      }
+      HdfsDataOutputStream out = results.get(i).get();
+      out.write(new byte[i]);
+      out.close();
+    }
+    for (int i = 0; i < NUM_FILES; i++) {
+      assertEquals(i == 3 ? 10 : i, fs.getFileStatus(files[i]).getLen());
+    }
+    assertCounter("MultiOps", 1L, getMetrics("NameNodeActivity"));
+
+    // with overwrite, the existing file is replaced
+    results = fs.create(new Path[] { files[3] },
+        FsPermission.getFileDefault(), true, 4096, (short) 1,
+        fs.getDefaultBlockSize(), null);
+    results.get(0).get().close();
+    assertEquals(0, fs.getFileStatus(files[3]).getLen());
+  }
+
+  @Test(timeout = 60000)
+  public void testGetFileStatusAndDelete() throws Exception {
+    Path dir = new Path("/dir");
+    Path[] files = getPaths(dir, NUM_FILES);
+    for (int i = 0; i < NUM_FILES; i += 2) {
+      DFSTestUtil.createFile(fs, files[i], i, (short) 1, 0L);
+    }
+
+    List<PathResult<FileStatus>> stats = fs.getFileStatus(files);
+    for (int i = 0; i < NUM_FILES; i++) {
+      if (i % 2 == 0) {
+        FileStatus stat = stats.get(i).get();
+        assertEquals(fs.makeQualified(files[i]), stat.getPath());
+        assertEquals(i, stat.getLen());
+      } else {
+        assertTrue(stats.get(i).getException()
+            instanceof FileNotFoundException);
+      }
+    }
+
+    // a non-empty directory is not removed unless recursive
+    Path[] toDelete = new Path[] { files[0], files[1], dir };
+    List<PathResult<Boolean>> deleted = fs.delete(toDelete, false);
+    assertTrue(deleted.get(0).get());
+    assertFalse(deleted.get(1).get());
+    assertFalse(deleted.get(2).isSuccess());
+    assertFalse(fs.exists(files[0]));
+    assertTrue(fs.exists(files[2]));
+
+    deleted = fs.delete(new Path[] { dir }, true);
+    assertTrue(deleted.get(0).get());
+    assertFalse(fs.exists(dir));
+  }
+
+  @Test(timeout = 60000)
+  public void testTooManyPaths() throws Exception {
+    try {
+      fs.getFileStatus(getPaths(new Path("/dir"), MAX_PATHS + 1));
+      fail("Expected the batch to be rejected");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Too many paths", e);
+    }
+  }
+}
@@ -17,20 +17,33 @@
  */
 package org.apache.hadoop.hdfs;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.hamcrest.CoreMatchers.equalTo;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.net.unix.TemporarySocketDirectory;
 import org.junit.Assume;
@@ -136,4 +149,69 @@ public void testSeekToNewSource() throws IOException {
       cluster.shutdown();
     }
   }
+
+  private void testReadVectoredInner(MiniDFSCluster cluster)
+      throws Exception {
+    final int blockSize = 64 * 1024;
+    DistributedFileSystem fs = cluster.getFileSystem();
+    Path file = new Path("/testfile");
+    DFSTestUtil.createFile(fs, file, 4096, 3 * blockSize, blockSize,
+        (short) 1, 0L);
+    byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+    // ranges within a block, nearby ones, one across blocks, an empty one
+    List<FileRange> ranges = Arrays.asList(
+        new FileRange(2 * blockSize + 100, 1000), new FileRange(10, 100),
+        new FileRange(200, 300), new FileRange(blockSize - 50, 100),
+        new FileRange(blockSize + 100, 0), new FileRange(blockSize / 2, 10));
+    ByteBufferPool pool = new ElasticByteBufferPool();
+    FSDataInputStream in = fs.open(file);
+    try {
+      List<Future<ByteBuffer>> futures = in.readVectored(ranges, pool);
+      for (int i = 0; i < ranges.size(); i++) {
+        FileRange range = ranges.get(i);
+        ByteBuffer buf = futures.get(i).get();
+        byte[] data = new byte[buf.remaining()];
+        buf.get(data);
+        assertArrayEquals(Arrays.copyOfRange(expected,
+            (int) range.getOffset(), (int) range.getEnd()), data);
+        pool.putBuffer(buf);
+      }
+      assertEquals(0, in.getPos());
+
+      futures = in.readVectored(Arrays.asList(new FileRange(0, 10),
+          new FileRange(3 * blockSize - 10, 20)), pool);
+      assertEquals(10, futures.get(0).get().remaining());
+      try {
+        futures.get(1).get();
+        fail("A range past the end of the file should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof EOFException);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testReadVectored() throws Exception {
+    Configuration conf = new Configuration();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      testReadVectoredInner(cluster);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testReadVectoredWithHedgedReads() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY, 5);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      testReadVectoredInner(cluster);
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test writing, reading and reconstructing files striped with an erasure
+ * coding policy.
+ */
+public class TestErasureCodedFiles {
+  private static final ErasureCodingPolicy POLICY =
+      ErasureCodingPolicy.RS_3_2_POLICY;
+  private static final int CELL_SIZE = POLICY.getCellSize();
+  private static final int NUM_DATA = POLICY.getNumDataUnits();
+  private static final int BLOCK_SIZE = 2 * CELL_SIZE;
+  private static final int GROUP_SIZE = BLOCK_SIZE * NUM_DATA;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private final Path dir = new Path("/ec");
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(POLICY.getNumAllUnits() + 1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fs.mkdirs(dir);
+    fs.setErasureCodingPolicy(dir, POLICY.getName());
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static byte[] generateData(int len) {
+    byte[] data = new byte[len];
+    new Random(len).nextBytes(data);
+    return data;
+  }
+
+  private byte[] writeFile(Path path, int len) throws IOException {
+    byte[] data = generateData(len);
+    FSDataOutputStream out = fs.create(path);
+    try {
+      // write in pieces not aligned with the chunks or the cells
+      for (int off = 0; off < len; off += 1000) {
+        out.write(data, off, Math.min(1000, len - off));
+      }
+    } finally {
+      out.close();
+    }
+    return data;
+  }
+
+  private void verifyRead(Path path, byte[] expected) throws IOException {
+    assertEquals(expected.length, fs.getFileStatus(path).getLen());
+    assertArrayEquals(expected, DFSTestUtil.readFileAsBytes(fs, path));
+
+    FSDataInputStream in = fs.open(path);
+    try {
+      byte[] buf = new byte[expected.length];
+      // positioned reads across the cells
+      for (int off = 0; off < expected.length; off += CELL_SIZE / 3) {
+        int len = Math.min(CELL_SIZE, expected.length - off);
+        in.readFully(off, buf, off, len);
+      }
+      assertArrayEquals(expected, buf);
+      if (expected.length > CELL_SIZE) {
+        in.seek(CELL_SIZE - 10);
+        assertEquals(expected[CELL_SIZE - 10] & 0xff, in.read());
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testPolicy() throws IOException {
+    assertEquals(POLICY, fs.getErasureCodingPolicy(dir));
+    Path file = new Path(dir, "file");
+    writeFile(file, 1);
+    assertEquals(POLICY, fs.getErasureCodingPolicy(file));
+    Path replicated = new Path("/replicated");
+    DFSTestUtil.createFile(fs, replicated, 1, (short) 1, 0);
+    assertNull(fs.getErasureCodingPolicy(replicated));
+  }
+
+  @Test(timeout = 120000)
+  public void testWriteRead() throws IOException {
+    int[] lengths = {0, 1, CELL_SIZE - 1, CELL_SIZE, CELL_SIZE * 2 + 7,
+        CELL_SIZE * NUM_DATA, CELL_SIZE * NUM_DATA * 3 / 2, GROUP_SIZE,
+        GROUP_SIZE * 2 + CELL_SIZE + 123};
+    for (int len : lengths) {
+      Path file = new Path(dir, "file" + len);
+      byte[] data = writeFile(file, len);
+      verifyRead(file, data);
+
+      LocatedBlocks blocks = fs.getClient().getLocatedBlocks(file.toString(),
+          0);
+      assertEquals(POLICY, blocks.getErasureCodingPolicy());
+      assertEquals((len + GROUP_SIZE - 1) / GROUP_SIZE,
+          blocks.locatedBlockCount());
+    }
+    // the space consumed includes the parity blocks only
+    long len = GROUP_SIZE * 2 + CELL_SIZE + 123;
+    long expected = StripedBlockUtil.spaceConsumedByStripedBlock(GROUP_SIZE,
+        POLICY) * 2 + StripedBlockUtil.spaceConsumedByStripedBlock(
+            CELL_SIZE + 123, POLICY);
+    assertEquals(expected, fs.getContentSummary(
+        new Path(dir, "file" + len)).getSpaceConsumed());
+  }
+
+  /** Stop the datanodes storing the given internal blocks of a group. */
+  private List<DatanodeInfo> stopDataNodes(LocatedStripedBlock group,
+      int... indices) throws IOException {
+    List<DatanodeInfo> stopped = new ArrayList<DatanodeInfo>();
+    for (int index : indices) {
+      byte[] groupIndices = group.getBlockIndices();
+      for (int i = 0; i < groupIndices.length; i++) {
+        if (groupIndices[i] == index) {
+          DatanodeInfo dn = group.getLocations()[i];
+          cluster.stopDataNode(dn.getXferAddr());
+          cluster.setDataNodeDead(dn);
+          stopped.add(dn);
+        }
+      }
+    }
+    return stopped;
+  }
+
+  @Test(timeout = 120000)
+  public void testDegradedRead() throws IOException {
+    int len = CELL_SIZE * NUM_DATA * 3 + CELL_SIZE / 2;
+    Path file = new Path(dir, "file");
+    byte[] data = writeFile(file, len);
+    LocatedStripedBlock group = (LocatedStripedBlock) fs.getClient()
+        .getLocatedBlocks(file.toString(), 0).get(0);
+    // as many data blocks as parity blocks fail
+    stopDataNodes(group, 0, 2);
+    verifyRead(file, data);
+  }
+
+  @Test(timeout = 120000)
+  public void testWriteWithFailedDataNode() throws Exception {
+    // one datanode less than the internal blocks of a group
+    cluster.stopDataNode(0);
+    cluster.stopDataNode(0);
+    Path file = new Path(dir, "file");
+    byte[] data = writeFile(file, GROUP_SIZE + CELL_SIZE * 2);
+    verifyRead(file, data);
+  }
+
+  @Test(timeout = 120000)
+  public void testReconstruction() throws Exception {
+    int len = CELL_SIZE * NUM_DATA * 2 + CELL_SIZE + 100;
+    final Path file = new Path(dir, "file");
+    byte[] data = writeFile(file, len);
+    LocatedStripedBlock group = (LocatedStripedBlock) fs.getClient()
+        .getLocatedBlocks(file.toString(), 0).get(0);
+    final Set<DatanodeInfo> stopped =
+        new HashSet<DatanodeInfo>(stopDataNodes(group, 0));
+
+    // the internal block is reconstructed on the datanode left
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          LocatedStripedBlock lb = (LocatedStripedBlock) fs.getClient()
+              .getLocatedBlocks(file.toString(), 0).get(0);
+          Set<Byte> indices = new HashSet<Byte>();
+          for (int i = 0; i < lb.getLocations().length; i++) {
+            if (!stopped.contains(lb.getLocations()[i])) {
+              indices.add(lb.getBlockIndices()[i]);
+            }
+          }
+          return indices.size() == POLICY.getNumAllUnits();
+        } catch (IOException e) {
+          return false;
+        }
+      }
+    }, 500, 60000);
+    long tasks = 0;
+    for (DataNode dn : cluster.getDataNodes()) {
+      tasks += getLongCounter("EcReconstructionTasks",
+          getMetrics(dn.getMetrics().name()));
+    }
+    assertTrue(tasks > 0);
+
+    // the reconstructed block is used to decode the blocks failing next
+    group = (LocatedStripedBlock) fs.getClient()
+        .getLocatedBlocks(file.toString(), 0).get(0);
+    stopDataNodes(group, 1, 2);
+    verifyRead(file, data);
+  }
+
+  @Test
+  public void testParseStripedBlockGroup() throws IOException {
+    Path file = new Path(dir, "file");
+    writeFile(file, CELL_SIZE + 1);
+    LocatedBlock group = fs.getClient().getLocatedBlocks(file.toString(), 0)
+        .get(0);
+    LocatedBlock[] blocks = StripedBlockUtil.parseStripedBlockGroup(
+        (LocatedStripedBlock) group, POLICY);
+    assertEquals(CELL_SIZE, blocks[0].getBlockSize());
+    assertEquals(1, blocks[1].getBlockSize());
+    // the empty data block is never written
+    assertNull(blocks[2]);
+    assertEquals(CELL_SIZE, blocks[NUM_DATA].getBlockSize());
+    assertEquals(group.getBlock().getBlockId() + 1,
+        blocks[1].getBlock().getBlockId());
+  }
+}
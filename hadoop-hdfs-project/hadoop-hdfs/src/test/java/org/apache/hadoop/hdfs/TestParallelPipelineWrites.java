@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests writes with
+ * {@link HdfsClientConfigKeys.Write#PARALLEL_PIPELINES_ENABLED_KEY}, which
+ * stream the next block while the previous one completes.
+ */
+public class TestParallelPipelineWrites {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem fs;
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    conf.setBoolean(HdfsClientConfigKeys.Write.PARALLEL_PIPELINES_ENABLED_KEY,
+        true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static byte[] randomBytes(int len) {
+    byte[] data = new byte[len];
+    new Random(len).nextBytes(data);
+    return data;
+  }
+
+  /** Write a file, calling hflush after the given offsets. */
+  private static void writeAndCheck(Path file, byte[] data, int... flushes)
+      throws IOException {
+    FSDataOutputStream out = fs.create(file, true, 4096, (short) 3,
+        BLOCK_SIZE);
+    try {
+      int off = 0;
+      for (int flush : flushes) {
+        out.write(data, off, flush - off);
+        out.hflush();
+        off = flush;
+      }
+      out.write(data, off, data.length - off);
+    } finally {
+      out.close();
+    }
+    assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, file));
+    LocatedBlocks blocks = fs.getClient().getLocatedBlocks(file.toString(), 0);
+    assertEquals((data.length + BLOCK_SIZE - 1) / BLOCK_SIZE,
+        blocks.locatedBlockCount());
+    assertTrue(blocks.isLastBlockComplete());
+  }
+
+  @Test(timeout = 120000)
+  public void testWrite() throws IOException {
+    writeAndCheck(new Path("/partial"), randomBytes(5 * BLOCK_SIZE + 1000));
+    // the file ends with the block of the streamer before the last one
+    writeAndCheck(new Path("/full"), randomBytes(3 * BLOCK_SIZE));
+    writeAndCheck(new Path("/small"), randomBytes(1000));
+  }
+
+  @Test(timeout = 120000)
+  public void testHflush() throws IOException {
+    // flushes within a block, at a block boundary, and in the next block
+    writeAndCheck(new Path("/hflush"), randomBytes(4 * BLOCK_SIZE + 1000),
+        1000, BLOCK_SIZE, 2 * BLOCK_SIZE + 10, 2 * BLOCK_SIZE + 20);
+  }
+
+  /**
+   * A block is committed only once all its packets are acked, so a failure
+   * of its pipeline while the next block is streamed is still recovered.
+   */
+  @Test(timeout = 120000)
+  public void testRecoveryOfCompletingBlock() throws IOException {
+    DFSClientFaultInjector oldInjector = DFSClientFaultInjector.instance;
+    DFSClientFaultInjector faultInjector =
+        Mockito.mock(DFSClientFaultInjector.class);
+    // fail the ack of the last packet of every block
+    Mockito.when(faultInjector.failPacket()).thenReturn(true);
+    DFSClientFaultInjector.instance = faultInjector;
+    try {
+      writeAndCheck(new Path("/recovery"), randomBytes(3 * BLOCK_SIZE + 1000));
+    } finally {
+      DFSClientFaultInjector.instance = oldInjector;
+    }
+  }
+}
@@ -304,11 +304,12 @@ public static void checksumContentsHelper(NodeType nodeType, File dir,
         continue;
       }
 
-      // skip VERSION and dfsUsed and replicas file for DataNodes
+      // skip VERSION, dfsUsed, replicas and changedDirs file for DataNodes
       if (nodeType == DATA_NODE &&
           (list[i].getName().equals("VERSION") ||
               list[i].getName().equals("dfsUsed") ||
-              list[i].getName().equals("replicas"))) {
+              list[i].getName().equals("replicas") ||
+              list[i].getName().equals("changedDirs"))) {
         continue;
       }
 
@@ -44,6 +44,7 @@
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -206,6 +207,65 @@ public void testReaderWhileAnotherWrites() throws Exception {
     }
   }
   
+  /**
+   * With in-progress tailing enabled, a reader fetches the durable edits of
+   * the in-progress segment over RPC, and falls back to the log segments if
+   * the JournalNodes no longer cache the requested edits.
+   */
+  @Test
+  public void testReaderWhileAnotherWritesInProgressTailing()
+      throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY, 4);
+    QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    readerQjm.selectInputStreams(streams, 1, true);
+    assertEquals(0, streams.size());
+
+    writeSegment(cluster, qjm, 1, 3, true);
+    EditLogOutputStream stm = writeSegment(cluster, qjm, 4, 3, false);
+    waitForAllPendingCalls(qjm.getLoggerSetForTests());
+    try {
+      // at most 4 transactions are fetched per call
+      readerQjm.selectInputStreams(streams, 1, true);
+      verifyEdits(streams, 1, 4);
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+
+      readerQjm.selectInputStreams(streams, 5, true);
+      verifyEdits(streams, 5, 6);
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+
+      readerQjm.selectInputStreams(streams, 7, true);
+      assertEquals(0, streams.size());
+
+      writeTxns(stm, 7, 2);
+      waitForAllPendingCalls(qjm.getLoggerSetForTests());
+      readerQjm.selectInputStreams(streams, 7, true);
+      verifyEdits(streams, 7, 8);
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+      stm.abort();
+    }
+
+    // A new writer clears the caches, so the reader has to fall back to
+    // the segments, reading only the durable part of the in-progress one.
+    qjm = createSpyingQJM();
+    qjm.recoverUnfinalizedSegments();
+    stm = writeSegment(cluster, qjm, 9, 3, false);
+    stm.abort();
+    readerQjm.selectInputStreams(streams, 1, true);
+    try {
+      verifyEdits(streams, 1, 11);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+    }
+  }
+
   /**
    * Regression test for HDFS-3725. One of the journal nodes is down
    * during the writing of one segment, then comes back up later to
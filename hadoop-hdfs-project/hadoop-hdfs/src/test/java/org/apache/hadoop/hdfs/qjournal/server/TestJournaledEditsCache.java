@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class TestJournaledEditsCache {
+  private static final int LAYOUT_VERSION =
+      NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+
+  @Test
+  public void testRetrieveEdits() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 5, LAYOUT_VERSION);
+    storeTxns(cache, 6, 5, LAYOUT_VERSION);
+
+    // from the start of a batch
+    assertTxns(cache, 1, 100, 1, 10);
+    // from the middle of a batch, with the count capped
+    assertTxns(cache, 3, 4, 3, 6);
+    assertTxns(cache, 8, 100, 8, 10);
+    // nothing written yet
+    ByteString.Output out = ByteString.newOutput();
+    assertEquals(0, cache.retrieveEdits(11, 100, out));
+    assertEquals(0, out.size());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    // room for the last two batches only
+    JournaledEditsCache cache = new JournaledEditsCache(
+        createTxnData(11, 10).length + createTxnData(21, 10).length);
+    storeTxns(cache, 1, 10, LAYOUT_VERSION);
+    storeTxns(cache, 11, 10, LAYOUT_VERSION);
+    storeTxns(cache, 21, 10, LAYOUT_VERSION);
+    assertTxns(cache, 11, 100, 11, 30);
+    assertCacheMiss(cache, 5);
+
+    // a batch larger than the cache is not held at all
+    storeTxns(cache, 31, 30, LAYOUT_VERSION);
+    assertEquals(0, cache.getTotalSize());
+    assertCacheMiss(cache, 31);
+  }
+
+  @Test
+  public void testNonContiguousBatchClearsCache() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 5, LAYOUT_VERSION);
+    storeTxns(cache, 10, 5, LAYOUT_VERSION);
+    assertCacheMiss(cache, 1);
+    assertTxns(cache, 10, 100, 10, 14);
+  }
+
+  @Test
+  public void testLayoutVersionChangeClearsCache() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 5, LAYOUT_VERSION - 1);
+    storeTxns(cache, 6, 5, LAYOUT_VERSION);
+    assertCacheMiss(cache, 1);
+    assertTxns(cache, 6, 100, 6, 10);
+  }
+
+  private static void storeTxns(JournaledEditsCache cache, int startTxn,
+      int numTxns, int layoutVersion) throws Exception {
+    cache.storeEdits(createTxnData(startTxn, numTxns), startTxn,
+        startTxn + numTxns - 1, layoutVersion);
+  }
+
+  private static void assertCacheMiss(JournaledEditsCache cache, long txn)
+      throws IOException {
+    try {
+      cache.retrieveEdits(txn, 100, ByteString.newOutput());
+      fail("Transaction " + txn + " should not be cached");
+    } catch (JournaledEditsCache.CacheMissException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Check that fetching maxTxns transactions from startTxn returns the
+   * transactions firstTxn to lastTxn.
+   */
+  private static void assertTxns(JournaledEditsCache cache, long startTxn,
+      int maxTxns, long firstTxn, long lastTxn) throws IOException {
+    ByteString.Output out = ByteString.newOutput();
+    int count = cache.retrieveEdits(startTxn, maxTxns, out);
+    assertEquals(lastTxn - firstTxn + 1, count);
+    EditLogInputStream in = EditLogFileInputStream.fromByteString("test",
+        out.toByteString(), startTxn, startTxn + count - 1, true);
+    try {
+      // the stream starts at the batch holding startTxn
+      FSEditLogOp op = in.readOp();
+      while (op.getTransactionId() < firstTxn) {
+        op = in.readOp();
+      }
+      for (long txid = firstTxn; txid <= lastTxn; txid++) {
+        assertEquals(txid, op.getTransactionId());
+        op = in.readOp();
+      }
+      assertNull(op);
+    } finally {
+      in.close();
+    }
+  }
+}
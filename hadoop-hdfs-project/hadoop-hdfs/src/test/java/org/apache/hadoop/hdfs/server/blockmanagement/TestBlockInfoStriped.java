@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
+import org.junit.Test;
+
+/**
+ * Test the storages of the internal blocks of a {@link BlockInfoStriped}.
+ */
+public class TestBlockInfoStriped {
+  private static final ErasureCodingPolicy POLICY =
+      ErasureCodingPolicy.RS_6_3_POLICY;
+  private static final long GROUP_ID = -1024L * 16;
+
+  private static DatanodeStorageInfo[] createStorages(int num) {
+    DatanodeStorageInfo[] storages = new DatanodeStorageInfo[num];
+    for (int i = 0; i < num; i++) {
+      storages[i] = DFSTestUtil.createDatanodeStorageInfo("storage" + i,
+          "127.0.0." + (i + 1));
+    }
+    return storages;
+  }
+
+  @Test
+  public void testAddRemoveStorage() {
+    BlockInfoStriped info = new BlockInfoStriped(
+        new Block(GROUP_ID, POLICY.getCellSize() * 6L, 1), POLICY);
+    DatanodeStorageInfo[] storages = createStorages(POLICY.getNumAllUnits());
+    // report the internal blocks in reverse order
+    for (int i = storages.length - 1; i >= 0; i--) {
+      int index = storages.length - 1 - i;
+      assertTrue(info.addStorage(storages[i],
+          new Block(GROUP_ID + index, 0, 1)));
+    }
+    assertEquals(POLICY.getNumAllUnits(), info.numNodes());
+    for (int i = 0; i < storages.length; i++) {
+      assertEquals(storages.length - 1 - i,
+          info.getStorageBlockIndex(storages[i]));
+    }
+
+    // the last storage takes the place of the removed one
+    assertTrue(info.removeStorage(storages[2]));
+    assertFalse(info.removeStorage(storages[2]));
+    assertEquals(POLICY.getNumAllUnits() - 1, info.numNodes());
+    assertEquals(-1, info.getStorageBlockIndex(storages[2]));
+    assertNull(info.getBlockOnStorage(storages[2]));
+    assertEquals(0, info.getStorageBlockIndex(storages[8]));
+    Block internal = info.getBlockOnStorage(storages[0]);
+    assertEquals(GROUP_ID + 8, internal.getBlockId());
+    assertEquals(POLICY.getCellSize(), internal.getNumBytes());
+  }
+
+  @Test
+  public void testExtraStorages() {
+    BlockInfoStriped info = new BlockInfoStriped(new Block(GROUP_ID, 0, 1),
+        POLICY);
+    DatanodeStorageInfo[] storages =
+        createStorages(POLICY.getNumAllUnits() + 2);
+    for (int i = 0; i < storages.length; i++) {
+      // two internal blocks are stored twice
+      info.addStorage(storages[i],
+          new Block(GROUP_ID + i % POLICY.getNumAllUnits(), 0, 1));
+    }
+    assertEquals(storages.length, info.numNodes());
+    assertEquals(1, info.getStorageBlockIndex(storages[10]));
+  }
+
+  @Test
+  public void testRealBlockNum() {
+    BlockInfoStriped info = new BlockInfoStriped(
+        new Block(GROUP_ID, POLICY.getCellSize() * 2L + 1, 1), POLICY);
+    // the length is not final before the group is committed
+    info.convertToBlockUnderConstruction(BlockUCState.UNDER_CONSTRUCTION,
+        null);
+    assertEquals(6, info.getRealDataBlockNum());
+    info.convertToCompleteBlock();
+    assertEquals(3, info.getRealDataBlockNum());
+    assertEquals(6, info.getRealTotalBlockNum());
+  }
+
+  @Test
+  public void testRealBlockNumOfCommittedGroup() throws Exception {
+    final int cellSize = POLICY.getCellSize();
+    final int dataBlocks = POLICY.getNumDataUnits();
+    // empty, shorter than a cell, one cell, and one or more full stripes
+    long[] lengths = {0, 1, cellSize - 1, cellSize, cellSize + 1,
+        (long) cellSize * dataBlocks, (long) cellSize * dataBlocks * 3 + 1};
+    int[] expected = {0, 1, 1, 1, 2, dataBlocks, dataBlocks};
+    for (int i = 0; i < lengths.length; i++) {
+      BlockInfoStriped info = new BlockInfoStriped(
+          new Block(GROUP_ID, lengths[i], 1), POLICY);
+      info.convertToBlockUnderConstruction(BlockUCState.UNDER_CONSTRUCTION,
+          null);
+      info.commitBlock(new Block(GROUP_ID, lengths[i], 1));
+      assertEquals("length " + lengths[i], expected[i],
+          info.getRealDataBlockNum());
+      info.convertToCompleteBlock();
+      assertEquals("length " + lengths[i], expected[i],
+          info.getRealDataBlockNum());
+      assertEquals(expected[i] + POLICY.getNumParityUnits(),
+          info.getRealTotalBlockNum());
+    }
+  }
+}
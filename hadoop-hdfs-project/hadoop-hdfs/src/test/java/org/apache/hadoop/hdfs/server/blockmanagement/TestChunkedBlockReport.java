@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounterGt;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests full block reports processed in chunks, with
+ * {@link DFSConfigKeys#DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY} set.
+ */
+public class TestChunkedBlockReport {
+  private static final int BLOCK_SIZE = 1024;
+  private static final int NUM_BLOCKS = 45;
+
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+  private BlockManager bm;
+  private final Path file = new Path("/file");
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY, 10);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CLASSIFIER_THREADS_KEY,
+        2);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1)
+        .storagesPerDatanode(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    bm = cluster.getNamesystem().getBlockManager();
+    DFSTestUtil.createFile(fs, file, BLOCK_SIZE, NUM_BLOCKS * BLOCK_SIZE,
+        BLOCK_SIZE, (short) 1, 0L);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testFirstReportInChunks() throws Exception {
+    cluster.restartDataNodes();
+    cluster.waitActive();
+    DFSTestUtil.waitReplication(fs, file, (short) 1);
+    List<LocatedBlock> blocks = DFSTestUtil.getAllBlocks(fs, file);
+    assertEquals(NUM_BLOCKS, blocks.size());
+    for (LocatedBlock lb : blocks) {
+      assertEquals(1, lb.getLocations().length);
+    }
+    assertCounterGt("BlockReportChunkClassifyNumOps", 0L,
+        getMetrics("NameNodeActivity"));
+    assertCounterGt("BlockReportChunkReconcileNumOps", 0L,
+        getMetrics("NameNodeActivity"));
+  }
+
+  /**
+   * Send a report which leaves out some replicas and has the wrong
+   * generation stamp for another, and check that the replicas left out are
+   * removed and the other one is marked corrupt.
+   */
+  @Test(timeout = 120000)
+  public void testReportDiffInChunks() throws Exception {
+    DataNode dn = cluster.getDataNodes().get(0);
+    String poolId = cluster.getNamesystem().getBlockPoolId();
+    DatanodeRegistration dnR = dn.getDNRegistrationForBP(poolId);
+    Map<DatanodeStorage, BlockListAsLongs> lists =
+        dn.getFSDataset().getBlockReports(poolId);
+    assertEquals(1, lists.size());
+    Map.Entry<DatanodeStorage, BlockListAsLongs> e =
+        lists.entrySet().iterator().next();
+
+    List<LocatedBlock> blocks = DFSTestUtil.getAllBlocks(fs, file);
+    long corruptId = blocks.get(20).getBlock().getBlockId();
+    if (corruptId % 7 == 0) {
+      corruptId = blocks.get(21).getBlock().getBlockId();
+    }
+    BlockListAsLongs.Builder builder = BlockListAsLongs.builder();
+    int skipped = 0;
+    for (BlockReportReplica replica : e.getValue()) {
+      if (replica.getBlockId() % 7 == 0) {
+        skipped++;
+        continue;
+      }
+      if (replica.getBlockId() == corruptId) {
+        replica.setGenerationStamp(replica.getGenerationStamp() + 1);
+      }
+      builder.add(new BlockReportReplica(replica));
+    }
+    StorageBlockReport[] reports = { new StorageBlockReport(e.getKey(),
+        builder.build()) };
+    cluster.getNameNodeRpc().blockReport(dnR, poolId, reports,
+        new BlockReportContext(1, 0, System.nanoTime(), 0L));
+
+    int missing = 0;
+    for (LocatedBlock lb : blocks) {
+      BlockInfo stored = bm.getStoredBlock(lb.getBlock().getLocalBlock());
+      if (lb.getBlock().getBlockId() % 7 == 0) {
+        assertEquals(0, stored.numNodes());
+        missing++;
+      } else if (lb.getBlock().getBlockId() == corruptId) {
+        assertEquals(1, bm.countNodes(stored).corruptReplicas());
+      } else {
+        assertEquals(1, stored.numNodes());
+        assertEquals(0, bm.countNodes(stored).corruptReplicas());
+      }
+    }
+    assertEquals(skipped, missing);
+    assertEquals(NUM_BLOCKS - skipped, bm.getDatanodeManager()
+        .getDatanode(dnR).getStorageInfo(e.getKey().getStorageID())
+        .numBlocks());
+  }
+
+  /**
+   * Check that the unreported blocks of a storage are tracked as blocks are
+   * reported, added and removed, without anything linked into its list.
+   */
+  @Test
+  public void testTrackUnreportedBlocks() throws Exception {
+    DatanodeStorageInfo storage = DFSTestUtil.createDatanodeStorageInfo(
+        "s1", "1.1.1.1");
+    BlockInfo[] blocks = new BlockInfo[5];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = new BlockInfoContiguous(new Block(i), (short) 1);
+      storage.addBlock(blocks[i]);
+    }
+    // the list is 4, 3, 2, 1, 0
+    storage.startTrackingUnreportedBlocks();
+    assertEquals(blocks.length, storage.numBlocks());
+
+    // report the first unreported block and one in the middle
+    int headIndex = storage.getBlockListHeadIndex();
+    headIndex = storage.moveBlockToHead(blocks[4], 0, headIndex);
+    headIndex = storage.moveBlockToHead(blocks[1], 0, headIndex);
+    // a block added while the lock is released is not unreported
+    BlockInfo added = new BlockInfoContiguous(new Block(10), (short) 1);
+    storage.addBlock(added);
+    // remove the first unreported block
+    storage.removeBlock(blocks[3]);
+    assertEquals(blocks.length, storage.numBlocks());
+
+    Iterator<BlockInfo> it = storage.getUnreportedBlockIterator();
+    assertSame(blocks[2], it.next());
+    assertSame(blocks[0], it.next());
+    assertFalse(it.hasNext());
+
+    // removing the last unreported ones leaves none
+    storage.removeBlock(blocks[0]);
+    storage.removeBlock(blocks[2]);
+    assertFalse(storage.getUnreportedBlockIterator().hasNext());
+    storage.stopTrackingUnreportedBlocks();
+    assertEquals(3, storage.numBlocks());
+  }
+}
@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.server.common.GenerationStamp;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the {@link BlocksMap} with the triplets of its blocks kept in
+ * {@link OffHeapTriplets}.
+ */
+public class TestOffHeapTriplets {
+  private static final int NUM_BLOCKS = 100;
+
+  private static BlockCollection mockBlockCollection() {
+    BlockCollection bc = Mockito.mock(BlockCollection.class);
+    Mockito.when(bc.getId()).thenReturn(1000L);
+    return bc;
+  }
+
+  private static BlockInfo[] addBlocks(BlocksMap map, int numBlocks) {
+    BlockCollection bc = mockBlockCollection();
+    BlockInfo[] blocks = new BlockInfo[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      blocks[i] = map.addBlockCollection(new BlockInfoContiguous(
+          new Block(i, 0, GenerationStamp.LAST_RESERVED_STAMP), (short) 3), bc);
+    }
+    return blocks;
+  }
+
+  @Test
+  public void testBlockLists() throws Exception {
+    BlocksMap map = new BlocksMap(1024, true);
+    BlockInfo[] blocks = addBlocks(map, NUM_BLOCKS);
+    assertTrue(map.getOffHeapBytes() > 0);
+
+    DatanodeStorageInfo s1 = DFSTestUtil.createDatanodeStorageInfo(
+        "s1", "1.1.1.1");
+    DatanodeStorageInfo s2 = new DatanodeStorageInfo(
+        s1.getDatanodeDescriptor(), new DatanodeStorage("s2"));
+    DatanodeStorageInfo s3 = DFSTestUtil.createDatanodeStorageInfo(
+        "s3", "1.1.1.3");
+    for (BlockInfo b : blocks) {
+      s1.addBlock(b);
+      s3.addBlock(b);
+    }
+    for (BlockInfo b : blocks) {
+      assertSame(s1, b.getStorageInfo(0));
+      assertSame(s3, b.getStorageInfo(1));
+      assertNull(b.getStorageInfo(2));
+      assertEquals(2, b.numNodes());
+      assertEquals(1, b.findStorageInfo(s3));
+      assertEquals(-1, b.findStorageInfo(s2));
+    }
+    assertBlockList(s1, blocks);
+
+    // move every block to the head of the list, reversing it
+    int headIndex = s1.getBlockListHeadForTesting().findStorageInfo(s1);
+    for (BlockInfo b : blocks) {
+      headIndex = s1.moveBlockToHead(b, b.findStorageInfo(s1), headIndex);
+      assertSame(b, s1.getBlockListHeadForTesting());
+    }
+    BlockInfo expected = blocks[NUM_BLOCKS - 1];
+    int count = 0;
+    for (BlockInfo b = s1.getBlockListHeadForTesting(); b != null;
+        b = b.getNext(b.findStorageInfo(s1))) {
+      assertSame(blocks[NUM_BLOCKS - 1 - count], b);
+      count++;
+    }
+    assertEquals(NUM_BLOCKS, count);
+    assertSame(expected, s1.getBlockListHeadForTesting());
+
+    // moving a replica to another storage of the same datanode replaces it
+    s2.addBlock(blocks[0]);
+    assertSame(s2, blocks[0].getStorageInfo(1));
+    assertEquals(NUM_BLOCKS - 1, s1.numBlocks());
+    assertEquals(1, s2.numBlocks());
+
+    // removing the block drops it from all lists and frees its slot
+    map.removeBlock(blocks[1]);
+    assertEquals(0, blocks[1].numNodes());
+    assertEquals(NUM_BLOCKS - 2, s1.numBlocks());
+    assertEquals(NUM_BLOCKS - 1, s3.numBlocks());
+    for (Iterator<BlockInfo> it = s3.getBlockIterator(); it.hasNext();) {
+      assertFalse(it.next() == blocks[1]);
+    }
+    // a removed block keeps working on the heap
+    assertTrue(blocks[1].addStorage(s3));
+    assertSame(s3, blocks[1].getStorageInfo(0));
+  }
+
+  private static void assertBlockList(DatanodeStorageInfo storage,
+      BlockInfo[] blocks) {
+    assertEquals(blocks.length, storage.numBlocks());
+    // blocks are inserted at the head of the list
+    int i = blocks.length - 1;
+    for (Iterator<BlockInfo> it = storage.getBlockIterator(); it.hasNext();) {
+      assertSame(blocks[i--], it.next());
+    }
+    assertEquals(-1, i);
+  }
+
+  @Test
+  public void testGrowAndReuseRecords() throws Exception {
+    // slabs too small for more than a few records
+    OffHeapTriplets store = new OffHeapTriplets(8);
+    BlockInfo[] blocks = new BlockInfo[NUM_BLOCKS];
+    DatanodeStorageInfo[] storages = new DatanodeStorageInfo[5];
+    for (int i = 0; i < storages.length; i++) {
+      storages[i] = DFSTestUtil.createDatanodeStorageInfo("s" + i,
+          "1.1.1." + i);
+    }
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      blocks[i] = new BlockInfoContiguous((short) 2);
+      blocks[i].moveTripletsOffHeap(store);
+      // more replicas than the replication factor grow the record
+      for (DatanodeStorageInfo s : storages) {
+        s.addBlock(blocks[i]);
+      }
+    }
+    assertEquals(NUM_BLOCKS, store.size());
+    assertEquals(storages.length, store.getNumStorages());
+    assertTrue(store.getAllocatedBytes() > 256);
+    for (BlockInfo b : blocks) {
+      assertEquals(storages.length, b.numNodes());
+      for (int i = 0; i < storages.length; i++) {
+        assertSame(storages[i], b.getStorageInfo(i));
+      }
+    }
+    for (DatanodeStorageInfo s : storages) {
+      assertBlockList(s, blocks);
+    }
+
+    // remove a replica in the middle, which swaps in the last one
+    storages[1].removeBlock(blocks[0]);
+    assertEquals(storages.length - 1, blocks[0].numNodes());
+    assertSame(storages[storages.length - 1], blocks[0].getStorageInfo(1));
+
+    long allocated = store.getAllocatedBytes();
+    for (BlockInfo b : blocks) {
+      for (DatanodeStorageInfo s : storages) {
+        s.removeBlock(b);
+      }
+      b.moveTripletsOnHeap();
+    }
+    assertEquals(0, store.size());
+    // storages without blocks are dropped
+    assertEquals(0, store.getNumStorages());
+    // freed records are reused
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      BlockInfo b = new BlockInfoContiguous((short) 5);
+      b.moveTripletsOffHeap(store);
+    }
+    assertEquals(allocated, store.getAllocatedBytes());
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    BlocksMap map = new BlocksMap(1024, true);
+    BlockInfo[] blocks = addBlocks(map, 10);
+    DatanodeStorageInfo storage = DFSTestUtil.createDatanodeStorageInfo(
+        "s1", "1.1.1.1");
+    for (BlockInfo b : blocks) {
+      storage.addBlock(b);
+    }
+    map.clear();
+    assertEquals(0, map.getOffHeapBytes());
+    assertEquals(0, blocks[0].getCapacity());
+    assertTrue(blocks[0].addStorage(storage));
+    assertSame(storage, blocks[0].getStorageInfo(0));
+  }
+
+  /**
+   * Run a cluster with the off-heap triplets, and check that the block
+   * locations survive full block reports.
+   */
+  @Test(timeout = 120000)
+  public void testFullBlockReports() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_KEY,
+        true);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, 10 * 1024, (short) 3, 0L);
+      DFSTestUtil.waitReplication(fs, file, (short) 3);
+      BlockManager bm = cluster.getNamesystem().getBlockManager();
+      assertTrue(bm.getBlocksMapOffHeapBytes() > 0);
+
+      cluster.restartDataNodes();
+      cluster.waitActive();
+      DFSTestUtil.waitReplication(fs, file, (short) 3);
+      LocatedBlock lb = DFSTestUtil.getAllBlocks(fs, file).get(0);
+      assertEquals(3, lb.getLocations().length);
+      assertEquals(3, bm.getStoredBlock(lb.getBlock().getLocalBlock())
+          .numNodes());
+
+      // the delimiters of the reports do not keep slots
+      OffHeapTriplets triplets = bm.blocksMap.getOffHeapTriplets();
+      for (int i = 0; i < 3; i++) {
+        final int reports = getBlockReportCount(cluster);
+        cluster.triggerBlockReports();
+        GenericTestUtils.waitFor(new Supplier<Boolean>() {
+          @Override
+          public Boolean get() {
+            return getBlockReportCount(cluster) >= reports + 3;
+          }
+        }, 100, 10000);
+      }
+      assertEquals(1, triplets.size());
+      assertEquals(3, triplets.getNumStorages());
+
+      fs.delete(file, true);
+      assertNull(bm.getStoredBlock(lb.getBlock().getLocalBlock()));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static int getBlockReportCount(MiniDFSCluster cluster) {
+    int count = 0;
+    for (DatanodeDescriptor dn : cluster.getNamesystem().getBlockManager()
+        .getDatanodeManager().getDatanodeListForReport(
+            HdfsConstants.DatanodeReportType.LIVE)) {
+      for (DatanodeStorageInfo storage : dn.getStorageInfos()) {
+        count += storage.getBlockReportCount();
+      }
+    }
+    return count;
+  }
+}
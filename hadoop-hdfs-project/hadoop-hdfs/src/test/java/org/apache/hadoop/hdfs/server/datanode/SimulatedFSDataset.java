@@ -23,6 +23,7 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.ClosedChannelException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -481,6 +482,12 @@ public File getFinalizedDir(String bpid) throws IOException {
       return null;
     }
 
+    @Override
+    public Collection<File> pollChangedFinalizedDirs(String bpid)
+        throws IOException {
+      return null;
+    }
+
     @Override
     public StorageType getStorageType() {
       return null;
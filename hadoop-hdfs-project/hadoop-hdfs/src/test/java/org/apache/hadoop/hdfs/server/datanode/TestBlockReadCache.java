@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the {@link BlockReadCache} of the ranges of recently read replicas.
+ */
+public class TestBlockReadCache {
+  private static final int CHUNK_SIZE = 512;
+  private static final int CHECKSUM_SIZE = 4;
+  private static final int RANGE_SIZE =
+      BlockReadCache.getRangeSize(CHUNK_SIZE);
+  /** The size of a cached full range with its checksums */
+  private static final int CACHED_RANGE_SIZE =
+      RANGE_SIZE + RANGE_SIZE / CHUNK_SIZE * CHECKSUM_SIZE;
+
+  /** @return the checksums of a packet followed by its data */
+  private static byte[] newPacket(long offset, int dataLen) {
+    int checksumLen = (dataLen + CHUNK_SIZE - 1) / CHUNK_SIZE * CHECKSUM_SIZE;
+    byte[] packet = new byte[checksumLen + dataLen];
+    for (int i = 0; i < checksumLen; i++) {
+      packet[i] = (byte) ~((offset / CHUNK_SIZE * CHECKSUM_SIZE) + i);
+    }
+    for (int i = 0; i < dataLen; i++) {
+      packet[checksumLen + i] = (byte) (offset + i);
+    }
+    return packet;
+  }
+
+  private static boolean get(BlockReadCache cache, ExtendedBlock block,
+      long offset, int dataLen) {
+    byte[] packet = new byte[newPacket(offset, dataLen).length + 1];
+    if (!cache.get(block, CHUNK_SIZE, CHECKSUM_SIZE, offset, dataLen, packet,
+        1)) {
+      return false;
+    }
+    assertArrayEquals(newPacket(offset, dataLen),
+        Arrays.copyOfRange(packet, 1, packet.length));
+    return true;
+  }
+
+  private static void put(BlockReadCache cache, ExtendedBlock block,
+      long offset, int dataLen) {
+    cache.put(block, CHUNK_SIZE, CHECKSUM_SIZE, offset, dataLen,
+        newPacket(offset, dataLen), 0);
+  }
+
+  @Test
+  public void testRanges() {
+    DataNodeMetrics metrics = Mockito.mock(DataNodeMetrics.class);
+    BlockReadCache cache = new BlockReadCache(2 * CACHED_RANGE_SIZE, metrics);
+    ExtendedBlock block = new ExtendedBlock("bp", 1L, 4 * RANGE_SIZE, 1L);
+
+    assertFalse(get(cache, block, 0, RANGE_SIZE));
+    put(cache, block, CHUNK_SIZE, RANGE_SIZE - CHUNK_SIZE);
+    // the packets within the cached part of the range are served
+    assertTrue(get(cache, block, CHUNK_SIZE, RANGE_SIZE - CHUNK_SIZE));
+    assertTrue(get(cache, block, 2 * CHUNK_SIZE, 100));
+    assertFalse(get(cache, block, 0, RANGE_SIZE));
+    // a larger packet of the range replaces it
+    put(cache, block, 0, RANGE_SIZE);
+    assertTrue(get(cache, block, 0, RANGE_SIZE));
+    assertEquals(CACHED_RANGE_SIZE, cache.getUsed());
+
+    // other generation stamps of the block are other replicas
+    ExtendedBlock appended = new ExtendedBlock(block);
+    appended.setGenerationStamp(2L);
+    assertFalse(get(cache, appended, 0, RANGE_SIZE));
+
+    // the least recently read range is evicted
+    put(cache, block, RANGE_SIZE, RANGE_SIZE);
+    assertTrue(get(cache, block, 0, RANGE_SIZE));
+    put(cache, block, 2 * RANGE_SIZE, RANGE_SIZE);
+    assertTrue(get(cache, block, 0, RANGE_SIZE));
+    assertFalse(get(cache, block, RANGE_SIZE, RANGE_SIZE));
+    assertTrue(get(cache, block, 2 * RANGE_SIZE, RANGE_SIZE));
+    Mockito.verify(metrics).incrBlockReadCacheEvictions();
+    assertEquals(Arrays.asList(1L), cache.getCachedBlockIds("bp"));
+    assertTrue(cache.getCachedBlockIds("other").isEmpty());
+
+    cache.invalidate(appended);
+    assertFalse(get(cache, block, 0, RANGE_SIZE));
+    assertEquals(0, cache.getUsed());
+    assertTrue(cache.getCachedBlockIds("bp").isEmpty());
+  }
+
+  /**
+   * Short reads are served from the read cache after the first one, and the
+   * DataNode is reported as a cached location of the block.
+   */
+  @Test(timeout = 60000)
+  public void testShortReads() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_BLOCK_READ_CACHE_SIZE_KEY,
+        1024 * 1024);
+    conf.setLong(DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_KEY, 100);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final Path file = new Path("/file");
+      final int len = 3 * RANGE_SIZE;
+      DFSTestUtil.createFile(fs, file, len, (short) 1, 0L);
+      byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+      final String metrics = dn.getMetrics().name();
+      assertCounter("BlockReadCacheHits", 0L, getMetrics(metrics));
+      assertCounter("BlockReadCacheMisses", 3L, getMetrics(metrics));
+
+      // a read within a range and a read across ranges
+      try (FSDataInputStream in = fs.open(file)) {
+        byte[] buf = new byte[RANGE_SIZE];
+        in.readFully(1000, buf, 0, 1000);
+        assertArrayEquals(Arrays.copyOfRange(expected, 1000, 2000),
+            Arrays.copyOf(buf, 1000));
+        in.readFully(RANGE_SIZE / 2, buf);
+        assertArrayEquals(Arrays.copyOfRange(expected, RANGE_SIZE / 2,
+            RANGE_SIZE / 2 + RANGE_SIZE), buf);
+      }
+      assertCounter("BlockReadCacheHits", 3L, getMetrics(metrics));
+      assertCounter("BlockReadCacheMisses", 3L, getMetrics(metrics));
+
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          try {
+            BlockLocation[] locs = fs.getFileBlockLocations(file, 0, len);
+            return locs[0].getCachedHosts().length == 1;
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, 100, 10000);
+
+      // the ranges of deleted blocks are dropped
+      fs.delete(file, false);
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return dn.getBlockReadCache().getUsed() == 0;
+        }
+      }, 100, 10000);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
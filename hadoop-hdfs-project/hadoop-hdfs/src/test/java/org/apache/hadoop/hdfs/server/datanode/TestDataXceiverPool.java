@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CONTEXT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY;
+import static org.apache.hadoop.test.MetricsAsserts.assertCounterGt;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.ClientContext;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.PeerCache;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the data transfer ops run on a {@link DataXceiverPool}, with
+ * {@link DFSConfigKeys#DFS_DATANODE_XCEIVER_POOL_ENABLED_KEY} set.
+ */
+public class TestDataXceiverPool {
+  private static final int KEEPALIVE_TIMEOUT = 1000;
+  private static final int NUM_CLIENTS = 8;
+
+  private final Configuration conf = new HdfsConfiguration();
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_XCEIVER_POOL_THREADS_KEY, 2);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        KEEPALIVE_TIMEOUT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Write and read files from more clients than there are pooled threads.
+   */
+  @Test(timeout = 120000)
+  public void testConcurrentClients() throws Exception {
+    final FileSystem fs = cluster.getFileSystem();
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_CLIENTS);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < NUM_CLIENTS; i++) {
+        final Path file = new Path("/file" + i);
+        final long seed = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            DFSTestUtil.createFile(fs, file, 1024, 100 * 1024, 1024,
+                (short) 3, seed);
+            byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+            for (int j = 0; j < 3; j++) {
+              assertArrayEquals(expected,
+                  DFSTestUtil.readFileBuffer(fs, file));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    for (DataNode dn : cluster.getDataNodes()) {
+      assertCounterGt("XceiverQueueTimeNanosNumOps", 0L,
+          getMetrics(dn.getMetrics().name()));
+    }
+  }
+
+  /**
+   * A kept alive connection is reused for the next op, and closed once the
+   * DataNode keepalive timeout expires.
+   */
+  @Test(timeout = 60000)
+  public void testKeepalive() throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setLong(DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY, 60000L);
+    clientConf.set(DFS_CLIENT_CONTEXT, "testKeepalive");
+    DistributedFileSystem fs = (DistributedFileSystem) FileSystem.get(
+        cluster.getURI(), clientConf);
+    PeerCache peerCache = ClientContext.getFromConf(clientConf).getPeerCache();
+    Path file = new Path("/file");
+    DFSTestUtil.createFile(fs, file, 1L, (short) 1, 0L);
+
+    DFSTestUtil.readFile(fs, file);
+    assertEquals(1, peerCache.size());
+    // the cached connection serves the next read
+    DFSTestUtil.readFile(fs, file);
+    assertEquals(1, peerCache.size());
+
+    Thread.sleep(KEEPALIVE_TIMEOUT + 500);
+    Peer peer = null;
+    for (DataNode dn : cluster.getDataNodes()) {
+      if (peer == null) {
+        peer = peerCache.get(dn.getDatanodeId(), false);
+      }
+    }
+    assertNotNull(peer);
+    assertEquals(-1, peer.getInputStream().read());
+  }
+}
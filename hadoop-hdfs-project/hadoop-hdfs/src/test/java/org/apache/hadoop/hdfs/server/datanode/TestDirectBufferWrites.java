@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.util.DataChecksum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests block writes received into direct buffers, with
+ * {@link DFSConfigKeys#DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_KEY} set.
+ */
+public class TestDirectBufferWrites {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int BYTES_PER_CHECKSUM = 512;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_ENABLED_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, BYTES_PER_CHECKSUM);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /** Blocks are mirrored down the pipeline and written on every DataNode. */
+  @Test(timeout = 60000)
+  public void testPipelineWrite() throws Exception {
+    Path file = new Path("/file");
+    final long len = 3 * BLOCK_SIZE + 1234;
+    DFSTestUtil.createFile(fs, file, 4096, len, BLOCK_SIZE, (short) 3, 0L);
+    byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+    assertEquals(len, expected.length);
+
+    // every replica has the data and valid checksums
+    int offset = 0;
+    for (LocatedBlock lb : DFSTestUtil.getAllBlocks(fs, file)) {
+      ExtendedBlock block = lb.getBlock();
+      byte[] data = Arrays.copyOfRange(expected, offset,
+          offset + (int) block.getNumBytes());
+      offset += data.length;
+      for (int i = 0; i < 3; i++) {
+        assertArrayEquals(data,
+            Files.readAllBytes(cluster.getBlockFile(i, block).toPath()));
+        try (DataInputStream meta = new DataInputStream(new FileInputStream(
+            cluster.getBlockMetadataFile(i, block)))) {
+          DataChecksum checksum =
+              BlockMetadataHeader.readHeader(meta).getChecksum();
+          byte[] sums = new byte[checksum.getChecksumSize(data.length)];
+          meta.readFully(sums);
+          assertEquals(-1, meta.read());
+          checksum.verifyChunkedSums(ByteBuffer.wrap(data),
+              ByteBuffer.wrap(sums), block.toString(), 0);
+        }
+      }
+    }
+    assertEquals(len, offset);
+  }
+
+  /**
+   * Writes which do not end at a chunk boundary are resumed by appends and
+   * hflushes, which recompute the checksum of the partial chunk on disk.
+   */
+  @Test(timeout = 60000)
+  public void testPartialChunks() throws Exception {
+    Path file = new Path("/partial");
+    Random random = new Random(0L);
+    byte[] data = new byte[3 * BYTES_PER_CHECKSUM + 100];
+    random.nextBytes(data);
+
+    FSDataOutputStream out = fs.create(file, (short) 3);
+    out.write(data, 0, 100);
+    out.hflush();
+    out.write(data, 100, BYTES_PER_CHECKSUM);
+    out.hflush();
+    out.close();
+
+    out = fs.append(file);
+    out.write(data, 100 + BYTES_PER_CHECKSUM, 7);
+    out.hflush();
+    out.write(data, 107 + BYTES_PER_CHECKSUM,
+        data.length - 107 - BYTES_PER_CHECKSUM);
+    out.close();
+
+    assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, file));
+  }
+}
@@ -17,6 +17,9 @@
  */
 package org.apache.hadoop.hdfs.server.datanode;
 
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
@@ -30,6 +33,7 @@
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -395,6 +399,77 @@ public void testDeleteBlockOnTransientStorage() throws Exception {
     }
   }
 
+  /**
+   * Incremental scans only list the directories in which the DataNode
+   * changed replicas, also across a clean restart, and full scans list all.
+   */
+  @Test (timeout=300000)
+  public void testIncrementalScan() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        500);
+    // a single volume, in which the blocks share a directory
+    cluster = new MiniDFSCluster.Builder(conf).storagesPerDatanode(1).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      client = cluster.getFileSystem().getClient();
+      DataNode dataNode = cluster.getDataNodes().get(0);
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+      createFile(GenericTestUtils.getMethodName(), BLOCK_LENGTH * 10, false);
+
+      // The changes before the first scan are not known
+      scan(10, 0, 0, 0, 0, 0);
+      // Nothing changed since
+      scan(0, 0, 0, 0, 0, 0);
+      assertCounter("DirectoryScanFullMsNumOps", 1L,
+          getMetrics(dataNode.getMetrics().name()));
+      assertCounter("DirectoryScanIncrementalMsNumOps", 1L,
+          getMetrics(dataNode.getMetrics().name()));
+
+      // A change by another process is not found until the directory of
+      // the block is changed by the DataNode.
+      deleteBlockFile();
+      scan(0, 0, 0, 0, 0, 0);
+      createFile(GenericTestUtils.getMethodName() + "2", BLOCK_LENGTH, false);
+      scan(11, 1, 0, 1, 0, 0);
+      scan(0, 0, 0, 0, 0, 0);
+
+      // The changes are saved on a clean shutdown
+      scanner.shutdown();
+      createFile(GenericTestUtils.getMethodName() + "3", BLOCK_LENGTH, false);
+      cluster.restartDataNode(0, true);
+      cluster.waitActive();
+      dataNode = cluster.getDataNodes().get(0);
+      fds = DataNodeTestUtils.getFSDataset(dataNode);
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+      scan(11, 0, 0, 0, 0, 0);
+      scan(0, 0, 0, 0, 0, 0);
+
+      // Full scans list all the directories
+      scanner.shutdown();
+      conf.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_INTERVAL_KEY, 0);
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+      scan(11, 0, 0, 0, 0, 0);
+      scan(11, 0, 0, 0, 0, 0);
+      assertTrue(getLongCounter("DirectoryScanListings",
+          getMetrics(dataNode.getMetrics().name())) > 0);
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
   @Test (timeout=600000)
   public void testDirectoryScanner() throws Exception {
     // Run the test with and without parallel scanning
@@ -596,6 +671,11 @@ public File getFinalizedDir(String bpid) throws IOException {
       return new File("/base/current/" + bpid + "/finalized");
     }
 
+    @Override
+    public Collection<File> pollChangedFinalizedDirs(String bpid) {
+      return null;
+    }
+
     @Override
     public StorageType getStorageType() {
       return StorageType.DEFAULT;
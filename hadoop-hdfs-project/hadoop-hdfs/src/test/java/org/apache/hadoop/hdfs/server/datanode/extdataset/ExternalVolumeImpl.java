@@ -21,6 +21,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.Collection;
 
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
@@ -58,6 +59,12 @@ public File getFinalizedDir(String bpid) throws IOException {
     return null;
   }
 
+  @Override
+  public Collection<File> pollChangedFinalizedDirs(String bpid)
+      throws IOException {
+    return null;
+  }
+
   @Override
   public String getStorageID() {
     return null;
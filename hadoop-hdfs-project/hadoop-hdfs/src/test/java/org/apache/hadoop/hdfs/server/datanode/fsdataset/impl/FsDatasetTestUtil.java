@@ -75,6 +75,14 @@ public static Collection<ReplicaInfo> getReplicas(FsDatasetSpi<?> fsd,
     return ((FsDatasetImpl)fsd).volumeMap.replicas(bpid);
   }
 
+  /**
+   * Lock the replica of a block, holding up the ops on it until the returned
+   * lock is closed by the same thread.
+   */
+  public static AutoCloseable lockReplica(FsDatasetSpi<?> fsd, long blockId) {
+    return ((FsDatasetImpl)fsd).replicaLocks.lock(blockId);
+  }
+
   /**
    * Stop the lazy writer daemon that saves RAM disk files to persistent storage.
    * @param dn
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.ReplicaLocks.ReplicaLock;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Tests the replica locks of {@link FsDatasetImpl}, striped by block ID.
+ */
+public class TestReplicaLocks {
+  private static final int NUM_STRIPES = 16;
+
+  @Test(timeout = 30000)
+  public void testStripes() throws Exception {
+    final ReplicaLocks locks = new ReplicaLocks(NUM_STRIPES, null);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (ReplicaLock lock = locks.lock(3)) {
+      assertTrue(locks.isLockedByCurrentThread(3));
+      assertTrue(locks.isLockedByCurrentThread(3 + NUM_STRIPES));
+      assertTrue(locks.isLockedByCurrentThread(3 - NUM_STRIPES));
+      assertFalse(locks.isLockedByCurrentThread(4));
+      // the lock is reentrant
+      try (ReplicaLock again = locks.lock(3 + NUM_STRIPES)) {
+        assertTrue(locks.isLockedByCurrentThread(3));
+      }
+      assertTrue(locks.isLockedByCurrentThread(3));
+
+      // other threads find the stripe busy, but not the others
+      assertNull(executor.submit(tryLock(locks, 3 + 2 * NUM_STRIPES)).get());
+      assertEquals(Boolean.TRUE,
+          executor.submit(tryLock(locks, Long.MIN_VALUE)).get());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertFalse(locks.isLockedByCurrentThread(3));
+  }
+
+  /** @return null if the stripe is busy, or whether it was released. */
+  private static Callable<Boolean> tryLock(final ReplicaLocks locks,
+      final long blockId) {
+    return new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        ReplicaLock lock = locks.tryLock(blockId);
+        if (lock == null) {
+          return null;
+        }
+        lock.close();
+        return !locks.isLockedByCurrentThread(blockId);
+      }
+    };
+  }
+
+  /**
+   * An op on a replica held up, as by a slow disk, does not hold up the
+   * writes and reads of other blocks, and the ops waiting for its lock are
+   * counted in the DataNode metrics.
+   */
+  @Test(timeout = 60000)
+  public void testHeldReplicaDoesNotBlockOthers() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_REPLICA_LOCK_STRIPES_KEY,
+        NUM_STRIPES);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      DataNode dn = cluster.getDataNodes().get(0);
+      final FsDatasetImpl dataset = (FsDatasetImpl) dn.getFSDataset();
+      assertEquals(NUM_STRIPES, dataset.replicaLocks.getNumStripes());
+
+      Path held = new Path("/held");
+      DFSTestUtil.createFile(fs, held, 1024, (short) 1, 0L);
+      final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, held);
+      assertCounter("ReplicaLockWaitNanosNumOps", 0L,
+          getMetrics(dn.getMetrics().name()));
+
+      Future<ReplicaInputStreams> waiting;
+      try (ReplicaLock lock = dataset.replicaLocks.lock(block.getBlockId())) {
+        // blocks in other stripes are written and read meanwhile
+        for (int i = 0; i < NUM_STRIPES - 1; i++) {
+          Path file = new Path("/file" + i);
+          DFSTestUtil.createFile(fs, file, 1024, (short) 1, i);
+          DFSTestUtil.readFile(fs, file);
+        }
+
+        waiting = executor.submit(new Callable<ReplicaInputStreams>() {
+          @Override
+          public ReplicaInputStreams call() throws Exception {
+            return dataset.getTmpInputStreams(block, 0, 0);
+          }
+        });
+        try {
+          waiting.get(500, TimeUnit.MILLISECONDS);
+          throw new AssertionError("The replica lock was not waited for");
+        } catch (TimeoutException e) {
+          // expected
+        }
+      }
+      ReplicaInputStreams streams = waiting.get();
+      assertNotNull(streams);
+      IOUtils.cleanup(null, streams);
+      assertTrue(getLongCounter("ReplicaLockWaitNanosNumOps",
+          getMetrics(dn.getMetrics().name())) >= 1);
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+}
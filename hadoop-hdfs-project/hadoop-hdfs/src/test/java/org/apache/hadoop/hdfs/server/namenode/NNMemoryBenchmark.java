@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Measures the heap used by the namespace of a NameNode loaded from an
+ * fsimage, with and without
+ * {@link DFSConfigKeys#DFS_NAMENODE_INTERN_NAMES_AND_TRIM_ENABLED_KEY}.
+ *
+ * A synthetic namespace is created in the layout MapReduce jobs leave
+ * behind, with many directories of the same name holding files of recurring
+ * names, and saved to an fsimage. The NameNode is then restarted from the
+ * image in each mode, and the heap it takes beyond that of the NameNode
+ * with an empty namespace is measured after a full GC.
+ *
+ * Usage: NNMemoryBenchmark [-jobs N] [-filesPerJob N]
+ */
+public class NNMemoryBenchmark extends Configured implements Tool {
+  private static final Log LOG = LogFactory.getLog(NNMemoryBenchmark.class);
+
+  private int numJobs = 1000;
+  private int filesPerJob = 100;
+
+  /**
+   * The heap used by the namespace by default and with directory names
+   * interned and children lists trimmed.
+   */
+  private long defaultHeap;
+  private long internedHeap;
+
+  public NNMemoryBenchmark(Configuration conf) {
+    super(conf);
+  }
+
+  @Override // Tool
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-jobs") && i + 1 < args.length) {
+        numJobs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-filesPerJob") && i + 1 < args.length) {
+        filesPerJob = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: NNMemoryBenchmark"
+            + " [-jobs N] [-filesPerJob N]");
+        return -1;
+      }
+    }
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(getConf())
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      final long emptyHeap = measureNameNodeHeap(cluster, false);
+      createNamespace(cluster.getFileSystem());
+      NameNode nn = cluster.getNameNode();
+      NameNodeAdapter.enterSafeMode(nn, false);
+      NameNodeAdapter.saveNamespace(nn);
+      NameNodeAdapter.leaveSafeMode(nn);
+
+      defaultHeap = measureNameNodeHeap(cluster, false) - emptyHeap;
+      internedHeap = measureNameNodeHeap(cluster, true) - emptyHeap;
+    } finally {
+      cluster.shutdown();
+    }
+    printResults();
+    return 0;
+  }
+
+  /**
+   * Create numJobs job directories, each with an output directory holding
+   * filesPerJob empty part files.
+   */
+  private void createNamespace(FileSystem fs) throws IOException {
+    LOG.info("Creating " + numJobs + " jobs of " + filesPerJob + " files");
+    for (int i = 0; i < numJobs; i++) {
+      Path output = new Path("/user/bench/job_" + i + "/output");
+      fs.mkdirs(output);
+      fs.create(new Path(output, "_SUCCESS"), (short) 1).close();
+      for (int j = 0; j < filesPerJob; j++) {
+        fs.create(new Path(output, String.format("part-%05d", j)), (short) 1)
+            .close();
+      }
+    }
+  }
+
+  /**
+   * Restart the NameNode from the saved image and measure the heap it
+   * takes.
+   */
+  private static long measureNameNodeHeap(MiniDFSCluster cluster,
+      boolean intern) throws IOException {
+    cluster.shutdownNameNode(0);
+    long baseline = usedHeapAfterGC();
+    cluster.getConfiguration(0).setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INTERN_NAMES_AND_TRIM_ENABLED_KEY, intern);
+    cluster.restartNameNode(0);
+    return usedHeapAfterGC() - baseline;
+  }
+
+  private static long usedHeapAfterGC() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+        .getUsed();
+  }
+
+  private void printResults() {
+    long numINodes = (long) numJobs * (filesPerJob + 3);
+    LOG.info("--- NameNode memory ---");
+    LOG.info("# inodes: " + numINodes);
+    LOG.info("Namespace heap, default (bytes): " + defaultHeap);
+    LOG.info("Namespace heap, interned (bytes): " + internedHeap);
+    LOG.info("Bytes per inode, default: " + defaultHeap / numINodes);
+    LOG.info("Bytes per inode, interned: " + internedHeap / numINodes);
+    if (defaultHeap > 0) {
+      LOG.info("Saved: " + (defaultHeap - internedHeap) * 100 / defaultHeap
+          + "%");
+    }
+  }
+
+  long getDefaultHeap() {
+    return defaultHeap;
+  }
+
+  long getInternedHeap() {
+    return internedHeap;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new NNMemoryBenchmark(new HdfsConfiguration()),
+        args));
+  }
+}
@@ -20,6 +20,9 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -911,6 +914,137 @@ long executeOp(int daemonId, int inputIdx, String ignore)
     }
   }
 
+  /**
+   * Lock scaling statistics.
+   *
+   * Runs the create, mkdirs and rename benchmarks once for each of the
+   * given thread counts. Each thread simulates an RPC handler, so the
+   * results show how namespace write throughput scales with the number of
+   * handlers under the locking mode the name-node is configured with, see
+   * {@link DFSConfigKeys#DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY}.
+   */
+  class LockScalingStats extends OperationStatsBase {
+    // Operation types
+    static final String OP_LOCK_SCALING_NAME = "lockScaling";
+    static final String OP_LOCK_SCALING_USAGE =
+      "-op " + OP_LOCK_SCALING_NAME +
+      " [-threadCounts T1,T2,...] [-ops N] [-filesPerDir P]";
+
+    private int[] threadCounts = new int[] {1, 4, 16, 64};
+    private int nrFilesPerDir = 4;
+    private final List<String> results = new ArrayList<String>();
+
+    LockScalingStats(List<String> args) {
+      super();
+      parseArguments(args);
+      keepResults = true;
+    }
+
+    @Override
+    String getOpName() {
+      return OP_LOCK_SCALING_NAME;
+    }
+
+    @Override
+    void parseArguments(List<String> args) {
+      boolean ignoreUnrelatedOptions = verifyOpArgument(args);
+      numOpsRequired = 1000;
+      for (int i = 2; i < args.size(); i++) {       // parse command line
+        if(args.get(i).equals("-threadCounts")) {
+          if(i+1 == args.size())  printUsage();
+          String[] counts = StringUtils.getStrings(args.get(++i));
+          threadCounts = new int[counts.length];
+          for(int j = 0; j < counts.length; j++)
+            threadCounts[j] = Integer.parseInt(counts[j].trim());
+        } else if(args.get(i).equals("-ops")) {
+          if(i+1 == args.size())  printUsage();
+          numOpsRequired = Integer.parseInt(args.get(++i));
+        } else if(args.get(i).equals("-filesPerDir")) {
+          if(i+1 == args.size())  printUsage();
+          nrFilesPerDir = Integer.parseInt(args.get(++i));
+        } else if(!ignoreUnrelatedOptions)
+          printUsage();
+      }
+    }
+
+    private List<String> getOpArgs(String opName, int threads,
+        String countOption, String perDirOption) {
+      return new ArrayList<String>(Arrays.asList(
+          "-op", opName,
+          "-threads", String.valueOf(threads),
+          countOption, String.valueOf(numOpsRequired),
+          perDirOption, String.valueOf(nrFilesPerDir),
+          "-logLevel", logLevel.toString()));
+    }
+
+    /**
+     * Run each of the write benchmarks for every thread count.
+     */
+    @Override
+    void benchmark() throws IOException {
+      results.clear();
+      long start = Time.now();
+      for(int threads : threadCounts) {
+        List<OperationStatsBase> ops = new ArrayList<OperationStatsBase>();
+        ops.add(new CreateFileStats(getOpArgs(
+            CreateFileStats.OP_CREATE_NAME, threads, "-files",
+            "-filesPerDir")));
+        ops.add(new MkdirsStats(getOpArgs(
+            MkdirsStats.OP_MKDIRS_NAME, threads, "-dirs", "-dirsPerDir")));
+        ops.add(new RenameFileStats(getOpArgs(
+            RenameFileStats.OP_RENAME_NAME, threads, "-files",
+            "-filesPerDir")));
+        for(OperationStatsBase op : ops) {
+          LOG.info("Starting " + op.getOpName() + " with " + threads
+              + " threads.");
+          op.benchmark();
+          op.cleanUp();
+          incrementStats(op.getNumOpsExecuted(), op.getCumulativeTime());
+          results.add(String.format(
+              "%-8s threads = %4d  ops/sec = %10.2f  avg time = %d",
+              op.getOpName(), threads, op.getOpsPerSecond(),
+              op.getAverageTime()));
+        }
+      }
+      elapsedTime = Time.now() - start;
+    }
+
+    @Override
+    void generateInputs(int[] opsPerThread) throws IOException {
+      // inputs are generated by each of the benchmarks run
+    }
+
+    /**
+     * Does not require the argument
+     */
+    @Override
+    String getExecutionArgument(int daemonId) {
+      return null;
+    }
+
+    @Override
+    long executeOp(int daemonId, int inputIdx, String ignore)
+    throws IOException {
+      throw new UnsupportedOperationException(
+          getOpName() + " only runs other benchmarks");
+    }
+
+    @Override
+    void printResults() {
+      LOG.info("--- " + getOpName() + " inputs ---");
+      LOG.info("nrOpsPerRun = " + numOpsRequired);
+      LOG.info("threadCounts = " + Arrays.toString(threadCounts));
+      LOG.info("nrFilesPerDir = " + nrFilesPerDir);
+      LOG.info("fineGrainedLocking = " + config.getBoolean(
+          DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY,
+          DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_DEFAULT));
+      for(String result : results) {
+        LOG.info(result);
+      }
+      printStats();
+    }
+  }
+
   /**
    * Minimal data-node simulator.
    */
@@ -1081,17 +1215,28 @@ private int transferBlocks( Block blocks[],
    * Each thread here represents its own data-node.
    * Data-nodes send the same block report each time.
    * The block report may contain missing or non-existing blocks.
+   *
+   * With -offHeap the name-node keeps the block to storage triplets
+   * off-heap; comparing the GC and heap figures printed with a run without
+   * it shows the cost of the on-heap BlocksMap.
    */
   class BlockReportStats extends OperationStatsBase {
     static final String OP_BLOCK_REPORT_NAME = "blockReport";
     static final String OP_BLOCK_REPORT_USAGE = 
       "-op blockReport [-datanodes T] [-reports N] " +
-      "[-blocksPerReport B] [-blocksPerFile F]";
+      "[-blocksPerReport B] [-blocksPerFile F] [-offHeap]";
 
     private int blocksPerReport;
     private int blocksPerFile;
+    private boolean offHeap = false;
     private TinyDatanode[] datanodes; // array of data-nodes sorted by name
 
+    // garbage collection during the reports, and memory used afterwards
+    private long gcCount;
+    private long gcTime;
+    private long heapUsed = -1;
+    private long offHeapBytes = -1;
+
     BlockReportStats(List<String> args) {
       super();
       this.blocksPerReport = 100;
@@ -1131,6 +1276,10 @@ void parseArguments(List<String> args) {
         } else if(args.get(i).equals("-blocksPerFile")) {
           if(i+1 == args.size())  printUsage();
           blocksPerFile = Integer.parseInt(args.get(++i));
+        } else if(args.get(i).equals("-offHeap")) {
+          offHeap = true;
+          config.setBoolean(
+              DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_KEY, true);
         } else if(!ignoreUnrelatedOptions)
           printUsage();
       }
@@ -1173,6 +1322,45 @@ void generateInputs(int[] ignore) throws IOException {
       for(int idx=0; idx < nrDatanodes; idx++) {
         datanodes[idx].formBlockReport();
       }
+      gcCount = getGcCount();
+      gcTime = getGcTime();
+    }
+
+    /**
+     * Also measure the garbage collection during the reports, and the memory
+     * used by the name-node, if it runs in this process, with all blocks
+     * reported.
+     */
+    @Override
+    void benchmark() throws IOException {
+      super.benchmark();
+      gcCount = getGcCount() - gcCount;
+      gcTime = getGcTime() - gcTime;
+      if (nameNode != null) {
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        heapUsed = memory.getHeapMemoryUsage().getUsed();
+        offHeapBytes = nameNode.getNamesystem().getBlockManager()
+            .getBlocksMapOffHeapBytes();
+      }
+    }
+
+    private long getGcCount() {
+      long count = 0;
+      for (GarbageCollectorMXBean gc :
+          ManagementFactory.getGarbageCollectorMXBeans()) {
+        count += Math.max(0, gc.getCollectionCount());
+      }
+      return count;
+    }
+
+    private long getGcTime() {
+      long time = 0;
+      for (GarbageCollectorMXBean gc :
+          ManagementFactory.getGarbageCollectorMXBeans()) {
+        time += Math.max(0, gc.getCollectionTime());
+      }
+      return time;
     }
 
     private ExtendedBlock addBlocks(String fileName, String clientName)
@@ -1232,7 +1420,14 @@ void printResults() {
       LOG.info("datanodes = " + numThreads + " " + blockDistribution);
       LOG.info("blocksPerReport = " + blocksPerReport);
       LOG.info("blocksPerFile = " + blocksPerFile);
+      LOG.info("blocksMap = " + (offHeap ? "off-heap" : "heap"));
       printStats();
+      LOG.info("    GC count: " + gcCount);
+      LOG.info("     GC time: " + gcTime);
+      if (heapUsed >= 0) {
+        LOG.info("   Heap used: " + heapUsed);
+        LOG.info("Off-heap map: " + offHeapBytes);
+      }
     }
   }   // end BlockReportStats
 
@@ -1404,6 +1599,7 @@ static void printUsage() {
         + " | \n\t" + DeleteFileStats.OP_DELETE_USAGE
         + " | \n\t" + FileStatusStats.OP_FILE_STATUS_USAGE
         + " | \n\t" + RenameFileStats.OP_RENAME_USAGE
+        + " | \n\t" + LockScalingStats.OP_LOCK_SCALING_USAGE
         + " | \n\t" + BlockReportStats.OP_BLOCK_REPORT_USAGE
         + " | \n\t" + ReplicationStats.OP_REPLICATION_USAGE
         + " | \n\t" + CleanAllStats.OP_CLEAN_USAGE
@@ -1467,6 +1663,10 @@ public int run(String[] aArgs) throws Exception {
         opStat = new RenameFileStats(args);
         ops.add(opStat);
       }
+      if(LockScalingStats.OP_LOCK_SCALING_NAME.equals(type)) {
+        opStat = new LockScalingStats(args);
+        ops.add(opStat);
+      }
       if(runAll || BlockReportStats.OP_BLOCK_REPORT_NAME.equals(type)) {
         opStat = new BlockReportStats(args);
         ops.add(opStat);
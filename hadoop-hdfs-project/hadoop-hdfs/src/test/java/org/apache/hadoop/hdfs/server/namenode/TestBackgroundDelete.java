@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test deleting large directories with their inodes and blocks reclaimed in
+ * the background.
+ */
+public class TestBackgroundDelete {
+  private static final int BATCH_SIZE = 10;
+  private static final String NN_METRICS = "NameNodeActivity";
+  private static final String NS_METRICS = "FSNamesystem";
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private FSNamesystem fsn;
+  private final Path quotaDir = new Path("/quota");
+  private final Path dir = new Path(quotaDir, "dir");
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_DELETE_BACKGROUND_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_DELETE_BACKGROUND_BATCH_SIZE_KEY,
+        BATCH_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fsn = cluster.getNamesystem();
+    fs.mkdirs(quotaDir);
+    fs.setQuota(quotaDir, 1000, 1L << 40);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /** Create a tree of directories with files of one block each. */
+  private void createTree(Path root, int depth, int width) throws IOException {
+    for (int i = 0; i < width; i++) {
+      DFSTestUtil.createFile(fs, new Path(root, "file" + i), 10, (short) 1, 0);
+      if (depth > 0) {
+        createTree(new Path(root, "dir" + i), depth - 1, width);
+      }
+    }
+    fs.mkdirs(new Path(root, "empty"));
+  }
+
+  private QuotaCounts getQuotaUsage(Path path) throws IOException {
+    return fsn.getFSDirectory().getINode(path.toString()).asDirectory()
+        .getDirectoryWithQuotaFeature().getSpaceConsumed();
+  }
+
+  /** Stop the deleter thread so that the batches are run by the test. */
+  private BackgroundDeleter stopDeleterThread() throws InterruptedException {
+    BackgroundDeleter deleter = fsn.getBackgroundDeleter();
+    Thread thread = deleter.thread;
+    deleter.stopThread();
+    thread.join();
+    return deleter;
+  }
+
+  @Test(timeout = 60000)
+  public void testDeleteInBatches() throws Exception {
+    final BackgroundDeleter deleter = stopDeleterThread();
+    final int inodes = fsn.getFSDirectory().getInodeMapSize();
+    final long blocks = fsn.getBlocksTotal();
+    createTree(dir, 2, 3);
+    // one file is still being written
+    FSDataOutputStream out = fs.create(new Path(dir, "dir0/open"));
+    out.write(1);
+    out.hflush();
+    assertEquals(1, fsn.getLeaseManager().countLease());
+    final int numINodes = fsn.getFSDirectory().getInodeMapSize() - inodes;
+    final long numBlocks = fsn.getBlocksTotal() - blocks;
+    final INodeFile file = fsn.getFSDirectory()
+        .getINode(new Path(dir, "dir1/file0").toString()).asFile();
+
+    // the directory is detached and the quota usage updated at once
+    assertTrue(fs.delete(dir, true));
+    assertFalse(fs.exists(dir));
+    // the inodes are not resolved by id, the leases are removed and the
+    // blocks are not replicated any more
+    try {
+      fs.getFileStatus(new Path("/.reserved/.inodes/" + file.getId()));
+      fail("A deleted file was resolved by its inode id");
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+    assertEquals(0, fsn.getLeaseManager().countLease());
+    assertTrue(fsn.isDeletedInBackground(file));
+    try {
+      out.close();
+      fail("A deleted file was closed");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(1, getQuotaUsage(quotaDir).getNameSpace());
+    assertEquals(0, getQuotaUsage(quotaDir).getStorageSpace());
+    assertGauge("PendingBackgroundDeletes", 1, getMetrics(NS_METRICS));
+    assertGauge("PendingBackgroundDeleteINodes", (long) numINodes,
+        getMetrics(NS_METRICS));
+    assertEquals(inodes + numINodes, fsn.getFSDirectory().getInodeMapSize());
+    // a new directory can be created in its place
+    createTree(dir, 0, 2);
+
+    int batches = 0;
+    while (deleter.reclaimBatch()) {
+      batches++;
+      assertTrue(deleter.getPendingINodes() < numINodes);
+    }
+    assertTrue("batches: " + batches, batches >= numINodes / BATCH_SIZE - 1);
+    assertGauge("PendingBackgroundDeletes", 0, getMetrics(NS_METRICS));
+    assertGauge("PendingBackgroundDeleteINodes", 0L, getMetrics(NS_METRICS));
+    assertEquals(numINodes, getLongCounter("BackgroundDeletedINodes",
+        getMetrics(NN_METRICS)));
+    assertEquals(numBlocks, getLongCounter("BackgroundDeletedBlocks",
+        getMetrics(NN_METRICS)));
+
+    // only the new directory is left
+    assertEquals(inodes + 4, fsn.getFSDirectory().getInodeMapSize());
+    assertEquals(blocks + 2, fsn.getBlocksTotal());
+    assertEquals(5, getQuotaUsage(quotaDir).getNameSpace());
+    assertFalse(fsn.isDeletedInBackground(file));
+    assertEquals(fs.getContentSummary(quotaDir).getSpaceConsumed(),
+        getQuotaUsage(quotaDir).getStorageSpace());
+  }
+
+  @Test(timeout = 60000)
+  public void testSmallDirectoryDeletedSynchronously() throws Exception {
+    final BackgroundDeleter deleter = stopDeleterThread();
+    final int inodes = fsn.getFSDirectory().getInodeMapSize();
+    createTree(dir, 0, 3);
+    assertTrue(fs.delete(dir, true));
+    assertEquals(0, deleter.getPendingDeletes());
+    assertEquals(inodes, fsn.getFSDirectory().getInodeMapSize());
+  }
+
+  @Test(timeout = 60000)
+  public void testDeleterThread() throws Exception {
+    final int inodes = fsn.getFSDirectory().getInodeMapSize();
+    final long blocks = fsn.getBlocksTotal();
+    createTree(dir, 2, 3);
+    assertTrue(fs.delete(dir, true));
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return fsn.getBackgroundDeleter().getPendingDeletes() == 0;
+      }
+    }, 100, 30000);
+    assertEquals(inodes, fsn.getFSDirectory().getInodeMapSize());
+    assertEquals(blocks, fsn.getBlocksTotal());
+  }
+
+  @Test(timeout = 60000)
+  public void testSaveNamespaceWithPendingDeletes() throws Exception {
+    final BackgroundDeleter deleter = stopDeleterThread();
+    final int inodes = fsn.getFSDirectory().getInodeMapSize();
+    createTree(dir, 2, 3);
+    assertTrue(fs.delete(dir, true));
+    assertEquals(1, deleter.getPendingDeletes());
+
+    // the pending deletes are reclaimed before the image is saved
+    fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    fs.saveNamespace();
+    fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+    assertEquals(0, deleter.getPendingDeletes());
+    assertEquals(inodes, fsn.getFSDirectory().getInodeMapSize());
+
+    cluster.restartNameNode();
+    fsn = cluster.getNamesystem();
+    assertEquals(inodes, fsn.getFSDirectory().getInodeMapSize());
+    assertEquals(1, getQuotaUsage(quotaDir).getNameSpace());
+  }
+
+  @Test(timeout = 60000)
+  public void testRestartWithPendingDeletes() throws Exception {
+    stopDeleterThread();
+    final int inodes = fsn.getFSDirectory().getInodeMapSize();
+    createTree(dir, 2, 3);
+    assertTrue(fs.delete(dir, true));
+
+    // the delete is replayed from the edit log
+    cluster.restartNameNode();
+    fsn = cluster.getNamesystem();
+    assertFalse(cluster.getFileSystem().exists(dir));
+    assertEquals(inodes, fsn.getFSDirectory().getInodeMapSize());
+    assertEquals(1, getQuotaUsage(quotaDir).getNameSpace());
+  }
+}
@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the content summary answered from the counts kept for directories
+ * with quota, with
+ * {@link DFSConfigKeys#DFS_CONTENT_SUMMARY_AGGREGATES_ENABLED_KEY} set.
+ */
+public class TestContentSummaryAggregates {
+  private static final int BLOCK_SIZE = 1024;
+  private static final short REPLICATION = 2;
+
+  private final Path dir = new Path("/dir");
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_CONTENT_SUMMARY_AGGREGATES_ENABLED_KEY,
+        true);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fs.mkdirs(dir);
+    fs.setQuota(dir, Long.MAX_VALUE - 1, HdfsConstants.QUOTA_DONT_SET);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /** Check the cached summary against the one from a walk of the subtree. */
+  private void assertSummary(long fileCount, long dirCount, long length)
+      throws Exception {
+    ContentSummary cached = fs.getContentSummary(dir);
+    FSDirectory fsd = cluster.getNamesystem().getFSDirectory();
+    ContentSummary computed = fsd.getINode(dir.toString())
+        .computeContentSummary(fsd.getBlockStoragePolicySuite());
+    assertEquals(fileCount, cached.getFileCount());
+    assertEquals(dirCount, cached.getDirectoryCount());
+    assertEquals(length, cached.getLength());
+    assertEquals(length * REPLICATION, cached.getSpaceConsumed());
+    assertEquals(computed.getFileCount(), cached.getFileCount());
+    assertEquals(computed.getDirectoryCount(), cached.getDirectoryCount());
+    assertEquals(computed.getLength(), cached.getLength());
+    assertEquals(computed.getSpaceConsumed(), cached.getSpaceConsumed());
+    assertEquals(Long.MAX_VALUE - 1, cached.getQuota());
+  }
+
+  /**
+   * Check the cached length against the one from a walk of the subtree.
+   * @return the cached length
+   */
+  private long assertLengthAsWalk() throws Exception {
+    ContentSummary cached = fs.getContentSummary(dir);
+    FSDirectory fsd = cluster.getNamesystem().getFSDirectory();
+    ContentSummary computed = fsd.getINode(dir.toString())
+        .computeContentSummary(fsd.getBlockStoragePolicySuite());
+    assertEquals(computed.getLength(), cached.getLength());
+    return cached.getLength();
+  }
+
+  @Test(timeout = 120000)
+  public void testCountsFollowChanges() throws Exception {
+    Path sub = new Path(dir, "sub");
+    Path file1 = new Path(sub, "file1");
+    Path file2 = new Path(dir, "file2");
+    DFSTestUtil.createFile(fs, file1, 3 * BLOCK_SIZE + 100, REPLICATION, 0L);
+    DFSTestUtil.createFile(fs, file2, 500, REPLICATION, 0L);
+    fs.createSymlink(file2, new Path(dir, "link"), false);
+    assertSummary(3, 2, 3 * BLOCK_SIZE + 600);
+
+    // append, which reopens the last block
+    FSDataOutputStream out = fs.append(file2);
+    out.write(new byte[300]);
+    out.close();
+    assertSummary(3, 2, 3 * BLOCK_SIZE + 900);
+
+    // truncate on a block boundary
+    assertTrue(fs.truncate(file1, 2 * BLOCK_SIZE));
+    assertSummary(3, 2, 2 * BLOCK_SIZE + 800);
+
+    // concat removes the sources
+    Path file3 = new Path(sub, "file3");
+    Path file4 = new Path(sub, "file4");
+    DFSTestUtil.createFile(fs, file3, BLOCK_SIZE, REPLICATION, 0L);
+    DFSTestUtil.createFile(fs, file4, 10, REPLICATION, 0L);
+    fs.concat(file1, new Path[] { file3, file4 });
+    assertSummary(3, 2, 3 * BLOCK_SIZE + 810);
+
+    // rename out of and into the directory
+    Path outside = new Path("/outside");
+    fs.rename(sub, outside);
+    assertSummary(2, 1, 800);
+    fs.rename(outside, new Path(dir, "moved"));
+    assertSummary(3, 2, 3 * BLOCK_SIZE + 810);
+
+    fs.delete(new Path(dir, "moved"), true);
+    assertSummary(2, 1, 800);
+  }
+
+  @Test(timeout = 120000)
+  public void testCountsAfterRestart() throws Exception {
+    DFSTestUtil.createFile(fs, new Path(dir, "a/b/file1"), 2 * BLOCK_SIZE,
+        REPLICATION, 0L);
+    DFSTestUtil.createFile(fs, new Path(dir, "a/file2"), 10, REPLICATION, 0L);
+    assertSummary(2, 3, 2 * BLOCK_SIZE + 10);
+
+    // the counts are initialized from the image and the edits
+    cluster.restartNameNode(true);
+    fs = cluster.getFileSystem();
+    assertSummary(2, 3, 2 * BLOCK_SIZE + 10);
+    NameNodeAdapter.enterSafeMode(cluster.getNameNode(), false);
+    NameNodeAdapter.saveNamespace(cluster.getNameNode());
+    cluster.restartNameNode(true);
+    fs = cluster.getFileSystem();
+    assertSummary(2, 3, 2 * BLOCK_SIZE + 10);
+  }
+
+  /**
+   * The last block of a file being written is charged a full block, but the
+   * length only counts the bytes the NameNode knows of, as the walk does.
+   */
+  @Test(timeout = 120000)
+  public void testFileUnderConstruction() throws Exception {
+    Path file = new Path(dir, "file");
+    FSDataOutputStream out = fs.create(file, REPLICATION);
+    try {
+      // addBlock
+      out.write(new byte[100]);
+      out.hflush();
+      assertLengthAsWalk();
+
+      // the length of the last block is updated by hsync
+      ((HdfsDataOutputStream) out)
+          .hsync(EnumSet.of(SyncFlag.UPDATE_LENGTH));
+      assertEquals(100, assertLengthAsWalk());
+
+      // addBlock commits and completes the previous block
+      out.write(new byte[BLOCK_SIZE]);
+      out.hflush();
+      assertLengthAsWalk();
+      ((HdfsDataOutputStream) out)
+          .hsync(EnumSet.of(SyncFlag.UPDATE_LENGTH));
+      assertEquals(BLOCK_SIZE + 100, assertLengthAsWalk());
+    } finally {
+      out.close();
+    }
+    assertSummary(1, 1, BLOCK_SIZE + 100);
+
+    // append reopens the last block
+    out = fs.append(file);
+    try {
+      out.write(new byte[50]);
+      out.hflush();
+      assertLengthAsWalk();
+    } finally {
+      out.close();
+    }
+    assertSummary(1, 1, BLOCK_SIZE + 150);
+
+    // truncate within a block recovers the last block
+    assertFalse(fs.truncate(file, BLOCK_SIZE + 20));
+    TestFileTruncate.checkBlockRecovery(file, fs);
+    assertSummary(1, 1, BLOCK_SIZE + 20);
+  }
+
+  /**
+   * Other users than the superuser still need access to the whole subtree,
+   * whether or not the directory has a quota.
+   */
+  @Test(timeout = 120000)
+  public void testNonSuperUserChecksSubtree() throws Exception {
+    Path hidden = new Path(dir, "hidden");
+    DFSTestUtil.createFile(fs, new Path(hidden, "file"), 10, REPLICATION, 0L);
+    fs.setPermission(hidden, new FsPermission((short) 0700));
+
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "user1", new String[] { "group1" });
+    FileSystem userFs = DFSTestUtil.getFileSystemAs(user, conf);
+    try {
+      userFs.getContentSummary(dir);
+      fail("The summary should need access to the whole subtree");
+    } catch (AccessControlException e) {
+      // expected
+    }
+
+    // the superuser is answered from the counts
+    assertSummary(1, 2, 10);
+
+    fs.setPermission(hidden, new FsPermission((short) 0755));
+    ContentSummary summary = userFs.getContentSummary(dir);
+    assertEquals(1, summary.getFileCount());
+    assertEquals(2, summary.getDirectoryCount());
+    assertEquals(10, summary.getLength());
+  }
+
+  /**
+   * With a snapshot, the subtree is walked, so that files only in the
+   * snapshot are counted as before.
+   */
+  @Test(timeout = 120000)
+  public void testWalkWithSnapshots() throws Exception {
+    Path file = new Path(dir, "file");
+    DFSTestUtil.createFile(fs, file, BLOCK_SIZE, REPLICATION, 0L);
+    fs.allowSnapshot(dir);
+    fs.createSnapshot(dir, "s1");
+    fs.delete(file, true);
+    ContentSummary summary = fs.getContentSummary(dir);
+    assertEquals(1, summary.getFileCount());
+    assertEquals(BLOCK_SIZE, summary.getLength());
+
+    fs.deleteSnapshot(dir, "s1");
+    assertSummary(0, 1, 0);
+  }
+}
@@ -46,7 +46,9 @@
 import com.google.common.collect.Lists;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot.CURRENT_STATE_ID;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -111,6 +113,39 @@ public void tearDown() throws Exception {
     }
   }
 
+  /**
+   * With directory names interned, they are shared as well as file names,
+   * both when loaded from the image and when created later on.
+   */
+  @Test
+  public void testInternDirectoryNames() throws Exception {
+    cluster.getConfiguration(0).setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INTERN_NAMES_AND_TRIM_ENABLED_KEY, true);
+    // more than the name cache threshold
+    final int numJobs = 12;
+    for (int i = 0; i < numJobs; i++) {
+      hdfs.mkdirs(new Path(dir, "job" + i + "/output"));
+    }
+    NameNodeAdapter.enterSafeMode(cluster.getNameNode(), false);
+    NameNodeAdapter.saveNamespace(cluster.getNameNode());
+    cluster.restartNameNode();
+    fsdir = cluster.getNamesystem().getFSDirectory();
+
+    final byte[] name = getOutputName(0);
+    for (int i = 1; i < numJobs; i++) {
+      assertSame(name, getOutputName(i));
+    }
+    hdfs.mkdirs(new Path(dir, "job" + numJobs + "/output"));
+    assertSame(name, getOutputName(numJobs));
+    // the empty directory dropped its children list
+    assertEquals(0, fsdir.getINode(sub2.toString()).asDirectory()
+        .getChildrenNum(CURRENT_STATE_ID));
+  }
+
+  private byte[] getOutputName(int job) throws Exception {
+    return fsdir.getINode(dir + "/job" + job + "/output").getLocalNameBytes();
+  }
+
   /** Dump the tree, make some changes, and then dump the tree again. */
   @Test
   public void testDumpTree() throws Exception {
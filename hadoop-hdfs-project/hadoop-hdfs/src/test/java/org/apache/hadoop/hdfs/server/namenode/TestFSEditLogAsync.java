@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests namespace operations with
+ * {@link DFSConfigKeys#DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY} enabled.
+ */
+public class TestFSEditLogAsync {
+  private static final int NUM_THREADS = 16;
+  private static final int NUM_OPS = 50;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY, true);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_KEY, 16);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_KEY, NUM_THREADS);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testAsyncEditLogIsUsed() {
+    assertTrue(cluster.getNamesystem().getEditLog()
+        instanceof FSEditLogAsync);
+  }
+
+  /**
+   * Log edits from many handlers at once, rolling the log in between,
+   * and check that every acknowledged operation survives a restart.
+   */
+  @Test(timeout = 120000)
+  public void testConcurrentEdits() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    try {
+      for (int t = 0; t < NUM_THREADS; t++) {
+        final int id = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            for (int i = 0; i < NUM_OPS; i++) {
+              Path dir = new Path("/t" + id + "/d" + i);
+              assertTrue(fs.mkdirs(dir));
+              DFSTestUtil.createFile(fs, new Path(dir, "file"), 1, (short) 1,
+                  0L);
+              fs.setReplication(new Path(dir, "file"), (short) 2);
+              if (i % 2 == 0) {
+                assertTrue(fs.delete(dir, true));
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      cluster.getNameNodeRpc().rollEditLog();
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    MetricsRecordBuilder rb = getMetrics("NameNodeActivity");
+    long numSyncs = getLongCounter("SyncBatchSizeNumSyncs", rb);
+    assertTrue(numSyncs > 0);
+    assertTrue(getLongCounter("AsyncEditSyncLatencyNumOps", rb) > 0);
+
+    checkNamespace();
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    checkNamespace();
+  }
+
+  private void checkNamespace() throws Exception {
+    for (int t = 0; t < NUM_THREADS; t++) {
+      assertEquals(NUM_OPS / 2, fs.listStatus(new Path("/t" + t)).length);
+      for (int i = 1; i < NUM_OPS; i += 2) {
+        Path file = new Path("/t" + t + "/d" + i + "/file");
+        assertEquals(2, fs.getFileStatus(file).getReplication());
+      }
+    }
+  }
+
+  /**
+   * Edits logged outside of RPC handlers, like saving the namespace, wait
+   * for their own sync.
+   */
+  @Test(timeout = 60000)
+  public void testSaveNamespace() throws Exception {
+    fs.mkdirs(new Path("/dir"));
+    fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    fs.saveNamespace();
+    fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+    FSNamesystem fsn = cluster.getNamesystem();
+    fs.mkdirs(new Path("/dir2"));
+    FSEditLog editLog = fsn.getEditLog();
+    assertEquals(editLog.getLastWrittenTxId(),
+        fsn.getFSImage().getStorage().getMostRecentCheckpointTxId() + 2);
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    assertTrue(fs.exists(new Path("/dir")));
+    assertTrue(fs.exists(new Path("/dir2")));
+  }
+}
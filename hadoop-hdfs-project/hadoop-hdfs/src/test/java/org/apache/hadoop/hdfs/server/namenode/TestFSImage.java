@@ -17,13 +17,19 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.fs.permission.AclEntryScope.ACCESS;
+import static org.apache.hadoop.fs.permission.AclEntryType.USER;
+import static org.apache.hadoop.fs.permission.FsAction.READ_EXECUTE;
+import static org.apache.hadoop.hdfs.server.namenode.AclTestHelpers.aclEntry;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
+import java.util.List;
 
 import org.junit.Assert;
 
@@ -32,6 +38,7 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSOutputStream;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
@@ -44,12 +51,15 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 public class TestFSImage {
 
   private static final String HADOOP_2_7_ZER0_BLOCK_SIZE_TGZ =
@@ -120,6 +130,109 @@ private void testPersistHelper(Configuration conf) throws IOException {
     }
   }
 
+  /**
+   * Save an image with a sub-section index and check that it loads the same
+   * with and without parallel loading.
+   */
+  @Test(timeout=120000)
+  public void testParallelLoad() throws IOException {
+    Configuration conf = getParallelConf();
+    testParallelPersist(conf, 20, 5);
+  }
+
+  /**
+   * Serialize the INode section with several threads, using enough inodes
+   * for more than one batch per thread.
+   */
+  @Test(timeout=120000)
+  public void testParallelSave() throws IOException {
+    Configuration conf = getParallelConf();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY, true);
+    testParallelPersist(conf, 50, 200);
+  }
+
+  private static Configuration getParallelConf() {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+    return conf;
+  }
+
+  private void testParallelPersist(Configuration conf, int numDirs,
+      int numFiles) throws IOException {
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      List<AclEntry> acl = Lists.newArrayList(aclEntry(ACCESS, USER, "foo",
+          READ_EXECUTE));
+      for (int i = 0; i < numDirs; i++) {
+        Path dir = new Path("/dir" + i);
+        fs.mkdirs(dir);
+        fs.modifyAclEntries(dir, acl);
+        for (int j = 0; j < numFiles; j++) {
+          fs.create(new Path(dir, "file" + j)).close();
+        }
+      }
+
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      File image = cluster.getNameNode().getFSImage().getStorage()
+          .getHighestFsImageName();
+      FileSummary summary;
+      RandomAccessFile raf = new RandomAccessFile(image, "r");
+      try {
+        summary = FSImageUtil.loadSummary(raf);
+      } finally {
+        raf.close();
+      }
+      assertTrue(countSubSections(summary,
+          FSImageFormatProtobuf.SectionName.INODE) > 1);
+      assertTrue(countSubSections(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR) > 1);
+
+      cluster.restartNameNode();
+      checkParallelNamespace(cluster.getFileSystem(), numDirs, numFiles, acl);
+
+      // the index is ignored when parallel loading is disabled
+      cluster.getConfiguration(0).setBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, false);
+      cluster.restartNameNode();
+      checkParallelNamespace(cluster.getFileSystem(), numDirs, numFiles, acl);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  private static int countSubSections(FileSummary summary,
+      FSImageFormatProtobuf.SectionName name) {
+    int count = 0;
+    for (FileSummary.Section s : summary.getSubSectionsList()) {
+      if (FSImageFormatProtobuf.SectionName.fromString(s.getName()) == name) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void checkParallelNamespace(DistributedFileSystem fs,
+      int numDirs, int numFiles, List<AclEntry> acl) throws IOException {
+    assertEquals(numDirs, fs.listStatus(new Path("/")).length);
+    for (int i = 0; i < numDirs; i++) {
+      Path dir = new Path("/dir" + i);
+      assertEquals(numFiles, fs.listStatus(dir).length);
+      assertEquals(acl, fs.getAclStatus(dir).getEntries().subList(0, 1));
+    }
+  }
+
    /**
    * On checkpointing , stale fsimage checkpoint file should be deleted.
    */
@@ -168,7 +281,7 @@ public void testDigest() throws IOException {
     Configuration conf = new Configuration();
     MiniDFSCluster cluster = null;
     try {
-      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
       DistributedFileSystem fs = cluster.getFileSystem();
       fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
       fs.saveNamespace();
@@ -36,6 +36,7 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.ipc.Server;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
@@ -201,6 +202,32 @@ public void testFSNamesystemLockCompatibility() {
     assertEquals(0, rwLock.getWriteHoldCount());
   }
 
+  /**
+   * The time an RPC call holds the namesystem lock is added to its cost,
+   * once the outermost hold of the lock is released.
+   */
+  @Test
+  public void testLockHoldTimeAddedToCallCost() throws Exception {
+    FSNamesystemLock rwLock = new FSNamesystemLock(true);
+    Server.Call call = new Server.Call(0, 0, null, null);
+    Server.getCurCall().set(call);
+    try {
+      rwLock.writeLock().lock();
+      rwLock.lockAcquired();
+      rwLock.readLock().lock();
+      rwLock.lockAcquired();
+      Thread.sleep(10);
+      rwLock.writeLock().unlock();
+      rwLock.lockReleased();
+      assertEquals(-1, call.getCost());
+      rwLock.readLock().unlock();
+      rwLock.lockReleased();
+      assertTrue(call.getCost() >= 10000);
+    } finally {
+      Server.getCurCall().set(null);
+    }
+  }
+
   @Test
   public void testReset() throws Exception {
     Configuration conf = new Configuration();
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests namespace operations with
+ * {@link DFSConfigKeys#DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY}.
+ */
+public class TestFineGrainedLocking {
+  private static final int NUM_THREADS = 8;
+  private static final int NUM_OPS = 50;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_KEY,
+        64);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Create directories and files from several threads, both in disjoint
+   * subtrees and in a shared directory, and check that the namespace and
+   * its quota counts are consistent before and after a restart.
+   */
+  @Test(timeout = 120000)
+  public void testConcurrentCreates() throws Exception {
+    final Path shared = new Path("/shared");
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    try {
+      for (int t = 0; t < NUM_THREADS; t++) {
+        final int id = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            for (int i = 0; i < NUM_OPS; i++) {
+              Path own = new Path("/t" + id + "/d" + (i % 5) + "/sub" + i);
+              assertTrue(fs.mkdirs(own));
+              DFSTestUtil.createFile(fs, new Path(own, "file"), 0, (short) 1,
+                  0L);
+              assertTrue(fs.mkdirs(new Path(shared, "t" + id + "-" + i)));
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    checkNamespace();
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    checkNamespace();
+  }
+
+  private void checkNamespace() throws Exception {
+    assertEquals(NUM_THREADS * NUM_OPS,
+        fs.listStatus(new Path("/shared")).length);
+    for (int t = 0; t < NUM_THREADS; t++) {
+      ContentSummary summary = fs.getContentSummary(new Path("/t" + t));
+      // /tN, five /tN/dM directories and one directory per operation
+      assertEquals(1 + 5 + NUM_OPS, summary.getDirectoryCount());
+      assertEquals(NUM_OPS, summary.getFileCount());
+    }
+    // The cached quota counts of the root have to match the tree.
+    ContentSummary root = fs.getContentSummary(new Path("/"));
+    FSDirectory fsd = cluster.getNamesystem().getFSDirectory();
+    QuotaCounts counts = fsd.getRoot().getDirectoryWithQuotaFeature()
+        .getSpaceConsumed();
+    assertEquals(root.getDirectoryCount() + root.getFileCount(),
+        counts.getNameSpace());
+  }
+
+  /**
+   * Overwriting an existing file is not done under path locks, so it has to
+   * fall back to the namesystem write lock.
+   */
+  @Test(timeout = 60000)
+  public void testOverwriteAndReservedPaths() throws Exception {
+    Path file = new Path("/dir/file");
+    DFSTestUtil.createFile(fs, file, 10, (short) 1, 0L);
+    FSDataOutputStream out = fs.create(file, true);
+    out.write(1);
+    out.close();
+    assertEquals(1, fs.getFileStatus(file).getLen());
+
+    long dirId = cluster.getNamesystem().getFSDirectory()
+        .getINode("/dir").getId();
+    Path viaInodePath = new Path("/.reserved/.inodes/" + dirId + "/sub");
+    assertTrue(fs.mkdirs(viaInodePath));
+    assertTrue(fs.exists(new Path("/dir/sub")));
+  }
+
+  /**
+   * A write lock on one directory excludes operations below it but not
+   * operations on a sibling subtree.
+   */
+  @Test(timeout = 60000)
+  public void testPathLockExclusion() throws Exception {
+    final PathLockManager locks = new PathLockManager(1024, true);
+    final byte[][] a = INode.getPathComponents("/a");
+    final byte[][] b = INode.getPathComponents("/b");
+    final byte[][] ax = INode.getPathComponents("/a/x");
+
+    PathLockManager.PathLock held = locks.lock(a, 1);
+    try {
+      assertFalse(tryLock(locks, ax, 2));
+      assertTrue(tryLock(locks, b, 1));
+      // Locking the root for writing conflicts with every path.
+      assertFalse(tryLock(locks, b, 0));
+    } finally {
+      held.unlock();
+    }
+    assertTrue(tryLock(locks, ax, 2));
+  }
+
+  /**
+   * @return true if the lock could be taken and released by another thread
+   * within a short time.
+   */
+  private static boolean tryLock(final PathLockManager locks,
+      final byte[][] components, final int writeIndex) throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Void> f = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          locks.lock(components, writeIndex).unlock();
+          return null;
+        }
+      });
+      try {
+        f.get(1, TimeUnit.SECONDS);
+        return true;
+      } catch (TimeoutException e) {
+        return false;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
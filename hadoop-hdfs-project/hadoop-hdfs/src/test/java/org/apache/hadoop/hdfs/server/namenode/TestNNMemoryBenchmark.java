@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.junit.Test;
+
+public class TestNNMemoryBenchmark {
+
+  /**
+   * This test runs the memory benchmark on a small namespace.
+   */
+  @Test(timeout = 120000)
+  public void testNNMemory() throws Exception {
+    NNMemoryBenchmark bench = new NNMemoryBenchmark(new HdfsConfiguration());
+    assertEquals(0, bench.run(new String[] {"-jobs", "20",
+        "-filesPerJob", "20"}));
+    assertTrue(bench.getDefaultHeap() != 0);
+  }
+}
@@ -52,4 +52,40 @@ public void testNNThroughput() throws Exception {
     String[] args = new String[] {"-op", "all"};
     NNThroughputBenchmark.runBenchmark(conf, Arrays.asList(args));
   }
+
+  /**
+   * This test runs the lock scaling benchmark with fine-grained locking.
+   */
+  @Test
+  public void testNNThroughputLockScaling() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY, true);
+    FileSystem.setDefaultUri(conf, "hdfs://localhost:" + 0);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
+    DFSTestUtil.formatNameNode(conf);
+    String[] args = new String[] {"-op", "lockScaling",
+        "-threadCounts", "1,4", "-ops", "100"};
+    NNThroughputBenchmark.runBenchmark(conf, Arrays.asList(args));
+  }
+
+  /**
+   * This test runs the block report benchmark with the off-heap BlocksMap.
+   */
+  @Test
+  public void testNNThroughputOffHeapBlockReport() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    FileSystem.setDefaultUri(conf, "hdfs://localhost:" + 0);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
+    DFSTestUtil.formatNameNode(conf);
+    String[] args = new String[] {"-op", "blockReport", "-datanodes", "3",
+        "-reports", "6", "-blocksPerReport", "100", "-offHeap"};
+    NNThroughputBenchmark.runBenchmark(conf, Arrays.asList(args));
+  }
 }
@@ -71,6 +71,29 @@ public void testDictionary() throws Exception {
     }
   }
 
+  @Test
+  public void testTrackingAfterInitialization() throws Exception {
+    // Track at most 3 names once initialized
+    NameCache<String> cache = new NameCache<String>(2, 3);
+    cache.initialized();
+
+    String s = "part-00000";
+    assertNull(cache.put(s));
+    // The second use promotes the name
+    assertTrue(s == cache.put(new String(s)));
+    verifyNameReuse(cache, s, true);
+    assertEquals(1, cache.size());
+
+    // Tracking more than 3 names starts counting afresh
+    String[] others = {"a", "b", "c"};
+    for (String o : others) {
+      cache.put(o);
+    }
+    assertNull(cache.put("d"));
+    assertNull(cache.put("a"));
+    assertEquals(1, cache.size());
+  }
+
   private void verifyNameReuse(NameCache<String> cache, String s, boolean reused) {
     cache.put(s);
     int lookupCount = cache.getLookupCount();
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
+import org.apache.hadoop.ha.ServiceFailedException;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.ipc.StandbyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reads served by an observer NameNode, through the
+ * {@link ObserverReadProxyProvider}.
+ */
+public class TestObserverNode {
+  private MiniQJMHACluster qjmhaCluster;
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.set(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, "500ms");
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+    MiniQJMHACluster.Builder builder = new MiniQJMHACluster.Builder(conf)
+        .setNumNameNodes(3);
+    builder.getDfsBuilder().numDataNodes(1);
+    qjmhaCluster = builder.build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+    cluster.transitionToObserver(2);
+
+    Configuration clientConf = new Configuration(conf);
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, clientConf, logicalName);
+    clientConf.set(HdfsClientConfigKeys.Failover.PROXY_PROVIDER_KEY_PREFIX
+        + "." + logicalName, ObserverReadProxyProvider.class.getName());
+    fs = FileSystem.get(new URI("hdfs://" + logicalName), clientConf);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (fs != null) {
+      fs.close();
+    }
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testObserverState() throws Exception {
+    assertEquals(HAServiceState.OBSERVER, cluster.getNameNode(2)
+        .getRpcServer().getServiceStatus().getState());
+    assertTrue(cluster.getNameNode(2).isObserverState());
+    try {
+      cluster.getNameNodeRpc(2).mkdirs("/fail", null, true);
+      fail("An observer should not accept writes");
+    } catch (StandbyException e) {
+      // expected
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testTransitions() throws Exception {
+    try {
+      cluster.transitionToActive(2);
+      fail("An observer should not become active");
+    } catch (ServiceFailedException e) {
+      // expected
+    }
+    try {
+      cluster.transitionToObserver(0);
+      fail("The active should not become an observer");
+    } catch (ServiceFailedException e) {
+      // expected
+    }
+    cluster.transitionToStandby(2);
+    assertTrue(cluster.getNameNode(2).isStandbyState());
+    cluster.transitionToObserver(2);
+    assertTrue(cluster.getNameNode(2).isObserverState());
+  }
+
+  /**
+   * A read right after a write sees the write, even though the observer
+   * only tails the edits every so often.
+   */
+  @Test(timeout = 60000)
+  public void testReadYourWrites() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      Path dir = new Path("/testDir" + i);
+      assertTrue(fs.mkdirs(dir));
+      assertTrue(fs.getFileStatus(dir).isDirectory());
+    }
+    Path file = new Path("/testFile");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    assertEquals(1024, DFSTestUtil.readFileBuffer(fs, file).length);
+  }
+
+  /**
+   * Reads are served by the observer, so they still succeed once the active
+   * is gone.
+   */
+  @Test(timeout = 60000)
+  public void testReadsServedByObserver() throws Exception {
+    Path dir = new Path("/testDir");
+    assertTrue(fs.mkdirs(dir));
+    assertTrue(fs.exists(dir));
+    cluster.shutdownNameNode(0);
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+    assertEquals(0, fs.listStatus(dir).length);
+  }
+}
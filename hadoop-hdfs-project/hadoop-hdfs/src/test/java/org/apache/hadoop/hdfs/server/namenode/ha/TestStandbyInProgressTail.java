@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounterGt;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the standby tailing the in-progress segment of the shared edits,
+ * with {@link DFSConfigKeys#DFS_HA_TAILEDITS_INPROGRESS_KEY} enabled.
+ */
+public class TestStandbyInProgressTail {
+  private MiniQJMHACluster qjmhaCluster;
+  private MiniDFSCluster cluster;
+  private NameNode nn0;
+  private NameNode nn1;
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    // tail manually, and never roll the log
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 3600);
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+  }
+
+  private void startCluster() throws Exception {
+    MiniQJMHACluster.Builder builder = new MiniQJMHACluster.Builder(conf);
+    builder.getDfsBuilder().numDataNodes(0);
+    qjmhaCluster = builder.build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+    nn0 = cluster.getNameNode(0);
+    nn1 = cluster.getNameNode(1);
+  }
+
+  @After
+  public void tearDownCluster() throws Exception {
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testStandbyTailsInProgressSegment() throws Exception {
+    startCluster();
+    FileSystem fs = cluster.getFileSystem(0);
+    for (int i = 0; i < 3; i++) {
+      fs.mkdirs(new Path("/test" + i), FsPermission.createImmutable(
+          (short) 0755));
+    }
+    nn1.getNamesystem().getEditLogTailer().doTailEdits();
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(NameNodeAdapter.getFileInfo(nn1, "/test" + i, true));
+    }
+    assertEquals(nn0.getNamesystem().getEditLog().getLastWrittenTxId(),
+        nn1.getNamesystem().getFSImage().getLastAppliedTxId());
+
+    // Later edits are fetched from where the last tail left off.
+    fs.delete(new Path("/test0"), true);
+    nn1.getNamesystem().getEditLogTailer().doTailEdits();
+    assertNull(NameNodeAdapter.getFileInfo(nn1, "/test0", true));
+    assertCounterGt("RpcRequestsServed", 0L,
+        getMetrics("Journal-" + MiniQJMHACluster.NAMESERVICE));
+  }
+
+  /**
+   * If the JournalNodes no longer cache the edits, the standby reads the
+   * in-progress segment from the segment files instead.
+   */
+  @Test(timeout = 60000)
+  public void testFallbackToSegmentsOnCacheMiss() throws Exception {
+    // too small to hold any batch of edits
+    conf.setInt(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY, 1);
+    startCluster();
+    FileSystem fs = cluster.getFileSystem(0);
+    fs.mkdirs(new Path("/test0"));
+    nn1.getNamesystem().getEditLogTailer().doTailEdits();
+    assertNotNull(NameNodeAdapter.getFileInfo(nn1, "/test0", true));
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.junit.Test;
+
+public class TestStripedBlockUtil {
+  private static final ErasureCodingPolicy POLICY =
+      ErasureCodingPolicy.RS_6_3_POLICY;
+  private static final int CELL = POLICY.getCellSize();
+  private static final int DATA = POLICY.getNumDataUnits();
+
+  @Test
+  public void testBlockIds() {
+    long groupId = -1024L * 16;
+    Block internal = new Block(groupId + 7, 0, 1);
+    assertTrue(StripedBlockUtil.isStripedBlockID(groupId));
+    assertFalse(StripedBlockUtil.isStripedBlockID(1024));
+    assertEquals(groupId, StripedBlockUtil.getBlockGroupId(groupId + 7));
+    assertEquals(7, StripedBlockUtil.getBlockIndex(internal));
+  }
+
+  @Test
+  public void testInternalBlockLength() {
+    // a partial first stripe: the parity blocks are as long as block 0
+    long len = CELL * 2 + 10;
+    assertEquals(CELL, StripedBlockUtil.getInternalBlockLength(len, POLICY, 0));
+    assertEquals(CELL, StripedBlockUtil.getInternalBlockLength(len, POLICY, 1));
+    assertEquals(10, StripedBlockUtil.getInternalBlockLength(len, POLICY, 2));
+    assertEquals(0, StripedBlockUtil.getInternalBlockLength(len, POLICY, 5));
+    assertEquals(CELL,
+        StripedBlockUtil.getInternalBlockLength(len, POLICY, DATA));
+
+    // full stripes and a short last cell of block 0
+    len = (long) CELL * DATA * 3 + 5;
+    assertEquals(CELL * 3 + 5,
+        StripedBlockUtil.getInternalBlockLength(len, POLICY, 0));
+    assertEquals(CELL * 3,
+        StripedBlockUtil.getInternalBlockLength(len, POLICY, 1));
+    assertEquals(CELL * 3 + 5,
+        StripedBlockUtil.getInternalBlockLength(len, POLICY, DATA + 2));
+
+    long total = 0;
+    for (int i = 0; i < DATA; i++) {
+      total += StripedBlockUtil.getInternalBlockLength(len, POLICY, i);
+    }
+    assertEquals(len, total);
+  }
+
+  @Test
+  public void testSpaceConsumed() {
+    // 1.5 times the data for RS-6-3 with full stripes
+    long len = (long) CELL * DATA * 4;
+    assertEquals(len * 3 / 2,
+        StripedBlockUtil.spaceConsumedByStripedBlock(len, POLICY));
+    assertEquals(1 + 3,
+        StripedBlockUtil.spaceConsumedByStripedBlock(1, POLICY));
+  }
+
+  @Test
+  public void testConstructInternalBlock() {
+    ExtendedBlock group = new ExtendedBlock("bp", -1024L * 16, CELL + 1, 5);
+    ExtendedBlock block =
+        StripedBlockUtil.constructInternalBlock(group, POLICY, 1);
+    assertEquals(-1024L * 16 + 1, block.getBlockId());
+    assertEquals(1, block.getNumBytes());
+    assertEquals(5, block.getGenerationStamp());
+    assertEquals("bp", block.getBlockPoolId());
+  }
+}
@@ -76,6 +76,13 @@ public void initializeMemberVariables() {
 
     // Some properties have moved to HdfsClientConfigKeys
     xmlPropsToSkipCompare.add("dfs.client.short.circuit.replica.stale.threshold.ms");
+    xmlPropsToSkipCompare.add("dfs.client.failover.observer.probe.period.millis");
+    xmlPropsToSkipCompare.add("dfs.client.read.vectored.min.seek.size");
+    xmlPropsToSkipCompare.add("dfs.client.read.vectored.max.merged.size");
+    xmlPropsToSkipCompare.add("dfs.client.read.striped.threadpool.size");
+    xmlPropsToSkipCompare.add("dfs.client.write.parallel-pipelines.enabled");
+    xmlPropsToSkipCompare.add(
+        "dfs.client.write.parallel-pipelines.max-packets-in-flight");
 
     // Ignore SpanReceiveHost properties
     xmlPropsToSkipCompare.add("dfs.htrace.spanreceiver.classes");
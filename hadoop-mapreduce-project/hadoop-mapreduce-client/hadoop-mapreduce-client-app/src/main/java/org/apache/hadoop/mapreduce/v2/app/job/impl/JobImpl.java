@@ -1478,9 +1478,14 @@ public JobStateInternal transition(JobImpl job, JobEvent event) {
         job.allowedReduceFailuresPercent =
             job.conf.getInt(MRJobConfig.REDUCE_FAILURES_MAXPERCENT, 0);
 
+        // The job configuration is not updated once the job is initialized,
+        // so the tasks share a snapshot of it that they read without locking
+        JobConf taskConf = new JobConf(job.conf.snapshot());
+        taskConf.setCredentials(job.conf.getCredentials());
+
         // create the Tasks but don't start them yet
-        createMapTasks(job, inputLength, taskSplitMetaInfo);
-        createReduceTasks(job);
+        createMapTasks(job, taskConf, inputLength, taskSplitMetaInfo);
+        createReduceTasks(job, taskConf);
 
         job.metrics.endPreparingJob(job);
         return JobStateInternal.INITED;
@@ -1534,14 +1539,14 @@ protected void setup(JobImpl job) throws IOException {
       }
     }
 
-    private void createMapTasks(JobImpl job, long inputLength,
-                                TaskSplitMetaInfo[] splits) {
+    private void createMapTasks(JobImpl job, JobConf taskConf,
+        long inputLength, TaskSplitMetaInfo[] splits) {
       for (int i=0; i < job.numMapTasks; ++i) {
         TaskImpl task =
             new MapTaskImpl(job.jobId, i,
                 job.eventHandler, 
                 job.remoteJobConfFile, 
-                job.conf, splits[i], 
+                taskConf, splits[i], 
                 job.taskAttemptListener, 
                 job.jobToken, job.jobCredentials,
                 job.clock,
@@ -1553,13 +1558,13 @@ private void createMapTasks(JobImpl job, long inputLength,
           + ". Number of splits = " + splits.length);
     }
 
-    private void createReduceTasks(JobImpl job) {
+    private void createReduceTasks(JobImpl job, JobConf taskConf) {
       for (int i = 0; i < job.numReduceTasks; i++) {
         TaskImpl task =
             new ReduceTaskImpl(job.jobId, i,
                 job.eventHandler, 
                 job.remoteJobConfFile, 
-                job.conf, job.numMapTasks, 
+                taskConf, job.numMapTasks, 
                 job.taskAttemptListener, job.jobToken,
                 job.jobCredentials, job.clock,
                 job.applicationAttemptId.getAttemptId(),
@@ -24,7 +24,15 @@
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import org.apache.hadoop.fs.FSExceptionMessages;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedRange;
+import org.apache.hadoop.fs.VectoredReadable;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.IOUtils;
+
+import com.google.common.util.concurrent.SettableFuture;
 
 import org.slf4j.Logger;
 
@@ -32,8 +40,12 @@
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
 
-public class S3AInputStream extends FSInputStream {
+public class S3AInputStream extends FSInputStream implements VectoredReadable {
   private long pos;
   private boolean closed;
   private S3ObjectInputStream wrappedStream;
@@ -44,6 +56,10 @@ public class S3AInputStream extends FSInputStream {
   private long contentLength;
   public static final Logger LOG = S3AFileSystem.LOG;
   public static final long CLOSE_THRESHOLD = 4096;
+  /** Ranges of a vectored read at most this far apart share one request */
+  public static final int VECTORED_READ_MIN_SEEK = 1024 * 1024;
+  /** The maximum size of the ranges of a vectored read in one request */
+  public static final int VECTORED_READ_MAX_MERGED = 8 * 1024 * 1024;
 
   public S3AInputStream(String bucket, String key, long contentLength, AmazonS3Client client,
                         FileSystem.Statistics stats) {
@@ -179,6 +195,62 @@ public synchronized int read(byte[] buf, int off, int len) throws IOException {
     return byteRead;
   }
 
+  /**
+   * Read the ranges of a vectored read with one ranged GET request for each
+   * group of nearby ranges, rather than one for every range.
+   */
+  @Override
+  public List<Future<ByteBuffer>> readVectored(List<FileRange> ranges,
+      ByteBufferPool bufferPool) throws IOException {
+    checkNotClosed();
+
+    List<SettableFuture<ByteBuffer>> futures =
+        VectoredReadUtils.newFutures(ranges.size());
+    List<CombinedRange> combined = VectoredReadUtils.combineRanges(ranges,
+        VectoredReadUtils.sortRanges(ranges), VECTORED_READ_MIN_SEEK,
+        VECTORED_READ_MAX_MERGED);
+    for (CombinedRange range : combined) {
+      byte[] data = new byte[range.getLength()];
+      IOException error = null;
+      try {
+        if (range.getOffset() + data.length > contentLength) {
+          throw new EOFException(FSExceptionMessages.CANNOT_SEEK_PAST_EOF
+              + " " + (range.getOffset() + data.length));
+        }
+        if (data.length > 0) {
+          readRange(range.getOffset(), data);
+        }
+      } catch (IOException e) {
+        error = e;
+      }
+      VectoredReadUtils.setData(range, data, error, ranges, futures,
+          bufferPool);
+    }
+    return Collections.<Future<ByteBuffer>>unmodifiableList(futures);
+  }
+
+  private void readRange(long offset, byte[] data) throws IOException {
+    LOG.debug("Reading range of " + data.length + " bytes of " + key
+        + " at pos " + offset);
+
+    GetObjectRequest request = new GetObjectRequest(bucket, key);
+    request.setRange(offset, offset + data.length - 1);
+
+    S3ObjectInputStream in = client.getObject(request).getObjectContent();
+    if (in == null) {
+      throw new IOException("Null IO stream");
+    }
+    try {
+      IOUtils.readFully(in, data, 0, data.length);
+    } finally {
+      in.close();
+    }
+
+    if (stats != null) {
+      stats.incrementBytesRead(data.length);
+    }
+  }
+
   private void checkNotClosed() throws IOException {
     if (closed) {
       throw new IOException(FSExceptionMessages.STREAM_IS_CLOSED);
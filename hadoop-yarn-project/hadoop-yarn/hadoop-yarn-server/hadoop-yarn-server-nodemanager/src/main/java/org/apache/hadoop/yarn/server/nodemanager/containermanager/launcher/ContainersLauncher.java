@@ -28,6 +28,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.ConfigurationSnapshot;
 import org.apache.hadoop.fs.FileContext;
 import org.apache.hadoop.fs.UnsupportedFileSystemException;
 import org.apache.hadoop.service.AbstractService;
@@ -63,6 +64,11 @@ public class ContainersLauncher extends AbstractService
   private final ContainerManagerImpl containerManager;
 
   private LocalDirsHandlerService dirsHandler;
+  /**
+   * The snapshot of the configuration the containers are launched with,
+   * taken on the first launch.
+   */
+  private ConfigurationSnapshot launchConf;
   @VisibleForTesting
   public ExecutorService containerLauncher =
     Executors.newCachedThreadPool(
@@ -95,6 +101,17 @@ protected void serviceInit(Configuration conf) throws Exception {
     super.serviceInit(conf);
   }
 
+  /**
+   * @return a copy-on-write copy of the snapshot of the configuration for a
+   *         container launch, which may update it
+   */
+  private Configuration getLaunchConf() {
+    if (launchConf == null) {
+      launchConf = getConfig().snapshot();
+    }
+    return new Configuration(launchConf);
+  }
+
   @Override
   protected  void serviceStop() throws Exception {
     containerLauncher.shutdownNow();
@@ -113,16 +130,17 @@ public void handle(ContainersLauncherEvent event) {
               containerId.getApplicationAttemptId().getApplicationId());
 
         ContainerLaunch launch =
-            new ContainerLaunch(context, getConfig(), dispatcher, exec, app,
-              event.getContainer(), dirsHandler, containerManager);
+            new ContainerLaunch(context, getLaunchConf(), dispatcher, exec,
+              app, event.getContainer(), dirsHandler, containerManager);
         containerLauncher.submit(launch);
         running.put(containerId, launch);
         break;
       case RECOVER_CONTAINER:
         app = context.getApplications().get(
             containerId.getApplicationAttemptId().getApplicationId());
-        launch = new RecoveredContainerLaunch(context, getConfig(), dispatcher,
-            exec, app, event.getContainer(), dirsHandler, containerManager);
+        launch = new RecoveredContainerLaunch(context, getLaunchConf(),
+            dispatcher, exec, app, event.getContainer(), dirsHandler,
+            containerManager);
         containerLauncher.submit(launch);
         running.put(containerId, launch);
         break;
@@ -362,6 +362,14 @@ public synchronized void transitionToStandby(
     }
   }
 
+  @Override
+  public synchronized void transitionToObserver(
+      HAServiceProtocol.StateChangeRequestInfo reqInfo) throws IOException {
+    // The RM has no observer state
+    throw new ServiceFailedException(
+        "Transitioning to Observer is not supported by the ResourceManager");
+  }
+
   @Override
   public synchronized HAServiceStatus getServiceStatus() throws IOException {
     checkAccess("getServiceState");